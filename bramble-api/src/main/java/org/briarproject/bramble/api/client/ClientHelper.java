@@ -61,6 +61,14 @@ public interface ClientHelper {
 	BdfList getMessageAsList(Transaction txn, MessageId m, boolean canonical)
 			throws DbException, FormatException;
 
+	/**
+	 * Returns the messages with the given IDs as lists, in the same order as
+	 * the IDs. The messages are read from the database in batches rather
+	 * than one at a time.
+	 */
+	Map<MessageId, BdfList> getMessagesAsLists(Transaction txn,
+			Collection<MessageId> m) throws DbException, FormatException;
+
 	BdfDictionary getGroupMetadataAsDictionary(GroupId g) throws DbException,
 			FormatException;
 
@@ -9,6 +9,8 @@ import org.briarproject.bramble.api.plugin.duplex.DuplexTransportConnection;
 import org.briarproject.bramble.api.sync.OutgoingSessionRecord;
 import org.briarproject.nullsafety.NotNullByDefault;
 
+import java.util.Map;
+
 @NotNullByDefault
 public interface ConnectionManager {
 
@@ -54,6 +56,15 @@ public interface ConnectionManager {
 	void manageOutgoingConnection(ContactId c, TransportId t,
 			TransportConnectionWriter w, OutgoingSessionRecord sessionRecord);
 
+	/**
+	 * Manages outgoing connections to several contacts over a simplex
+	 * transport, one connection per contact. The data for all the contacts
+	 * is sent in a single pass, so each message is only read from the
+	 * database once, however many of the contacts it's sent to.
+	 */
+	void manageOutgoingConnections(TransportId t,
+			Map<ContactId, TransportConnectionWriter> writers);
+
 	/**
 	 * Manages an outgoing connection to a contact over a duplex transport.
 	 */
@@ -195,6 +195,23 @@ public interface CryptoComponent {
 	 */
 	boolean isEncryptedWithStrengthenedKey(byte[] ciphertext);
 
+	/**
+	 * Encrypts and authenticates the given plaintext with the given key so
+	 * it can be written to storage. The ciphertext can be decrypted with
+	 * {@link #decryptWithKey(byte[], SecretKey)}.
+	 */
+	byte[] encryptWithKey(byte[] plaintext, SecretKey key);
+
+	/**
+	 * Decrypts and authenticates the given ciphertext that has been read from
+	 * storage.
+	 *
+	 * @throws DecryptionException If the ciphertext cannot be decrypted and
+	 * authenticated (for example, if the key is wrong).
+	 */
+	byte[] decryptWithKey(byte[] ciphertext, SecretKey key)
+			throws DecryptionException;
+
 	/**
 	 * Encrypts the given plaintext to the given public key.
 	 */
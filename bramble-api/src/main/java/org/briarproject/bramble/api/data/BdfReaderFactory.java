@@ -19,4 +19,10 @@ public interface BdfReaderFactory {
 
 	BdfReader createReader(InputStream in, int nestedLimit,
 			int maxBufferSize, boolean canonical);
+
+	/**
+	 * Returns a reader that reads directly from the given array, without
+	 * the overhead of an input stream.
+	 */
+	BdfReader createReader(byte[] b, int off, int len, boolean canonical);
 }
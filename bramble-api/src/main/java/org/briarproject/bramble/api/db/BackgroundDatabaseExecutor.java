@@ -0,0 +1,28 @@
+package org.briarproject.bramble.api.db;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import javax.inject.Qualifier;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Annotation for injecting the background lane of the
+ * {@link DatabaseExecutor}. This lane is used for bulk work that the user
+ * isn't waiting for, such as validating messages and deleting messages.
+ * <p>
+ * Tasks submitted to this lane run on the database executor's thread, in the
+ * order they're submitted to this lane. Tasks submitted to the
+ * {@link DatabaseExecutor} itself or the {@link SyncDatabaseExecutor sync
+ * lane} may run before tasks that were submitted earlier to this lane, but
+ * tasks in this lane will not be delayed indefinitely.
+ */
+@Qualifier
+@Target({FIELD, METHOD, PARAMETER})
+@Retention(RUNTIME)
+public @interface BackgroundDatabaseExecutor {
+}
@@ -18,6 +18,7 @@ import org.briarproject.bramble.api.sync.Group;
 import org.briarproject.bramble.api.sync.Group.Visibility;
 import org.briarproject.bramble.api.sync.GroupId;
 import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageFilter;
 import org.briarproject.bramble.api.sync.MessageId;
 import org.briarproject.bramble.api.sync.MessageStatus;
 import org.briarproject.bramble.api.sync.Offer;
@@ -141,6 +142,13 @@ public interface DatabaseComponent extends TransactionManager {
 	boolean containsContact(Transaction txn, AuthorId remote, AuthorId local)
 			throws DbException;
 
+	/**
+	 * Returns true if the database contains the given contact.
+	 * <p/>
+	 * Read-only.
+	 */
+	boolean containsContact(Transaction txn, ContactId c) throws DbException;
+
 	/**
 	 * Returns true if the database contains the given group.
 	 * <p/>
@@ -226,6 +234,22 @@ public interface DatabaseComponent extends TransactionManager {
 	Offer generateOffer(Transaction txn, ContactId c, int maxMessages,
 			long maxLatency) throws DbException;
 
+	/**
+	 * Returns an offer for the given contact for transmission over a
+	 * transport with the given maximum latency, or null if there are no
+	 * messages to offer.
+	 * <p/>
+	 * Messages that the given filters say the contact may already have are
+	 * not included in the offer, but their retransmission times are updated
+	 * as though they had been offered, and they're queued to be acked so the
+	 * contact can mark them as seen. The filters must have been received
+	 * from the contact.
+	 */
+	@Nullable
+	Offer generateOffer(Transaction txn, ContactId c, int maxMessages,
+			long maxLatency, Collection<MessageFilter> filters)
+			throws DbException;
+
 	/**
 	 * Returns a request for the given contact, or null if there are no
 	 * messages to request.
@@ -234,6 +258,36 @@ public interface DatabaseComponent extends TransactionManager {
 	Request generateRequest(Transaction txn, ContactId c, int maxMessages)
 			throws DbException;
 
+	/**
+	 * Returns an acknowledgement for each of the given contacts that has
+	 * messages to acknowledge, up to the given number of messages per
+	 * contact. Contacts with no messages to acknowledge, or that don't
+	 * exist, are not included in the returned map.
+	 */
+	Map<ContactId, Ack> generateAcks(Transaction txn,
+			Collection<ContactId> contacts, int maxMessages)
+			throws DbException;
+
+	/**
+	 * Returns an offer for each of the given contacts that has messages to
+	 * offer over a transport with the given maximum latency, up to the given
+	 * number of messages per contact. Contacts with no messages to offer, or
+	 * that don't exist, are not included in the returned map.
+	 */
+	Map<ContactId, Offer> generateOffers(Transaction txn,
+			Collection<ContactId> contacts, int maxMessages, long maxLatency)
+			throws DbException;
+
+	/**
+	 * Returns a request for each of the given contacts that has messages to
+	 * request, up to the given number of messages per contact. Contacts
+	 * with no messages to request, or that don't exist, are not included in
+	 * the returned map.
+	 */
+	Map<ContactId, Request> generateRequests(Transaction txn,
+			Collection<ContactId> contacts, int maxMessages)
+			throws DbException;
+
 	/**
 	 * Returns a batch of messages for the given contact, for transmission over
 	 * a transport with the given maximum latency. Only messages that have been
@@ -337,6 +391,19 @@ public interface DatabaseComponent extends TransactionManager {
 	 */
 	Message getMessage(Transaction txn, MessageId m) throws DbException;
 
+	/**
+	 * Returns the messages with the given IDs, in the same order as the IDs.
+	 * This is cheaper than calling
+	 * {@link #getMessage(Transaction, MessageId)} for each message.
+	 * <p/>
+	 * Read-only.
+	 *
+	 * @throws MessageDeletedException if any of the messages has been
+	 * deleted
+	 */
+	Map<MessageId, Message> getMessages(Transaction txn,
+			Collection<MessageId> m) throws DbException;
+
 	/**
 	 * Returns the IDs of all delivered messages in the given group.
 	 * <p/>
@@ -414,6 +481,16 @@ public interface DatabaseComponent extends TransactionManager {
 	Map<GroupId, Collection<MessageId>> getMessagesToDelete(Transaction txn)
 			throws DbException;
 
+	/**
+	 * Returns the IDs of up to the given number of messages that are due for
+	 * deletion, along with their group IDs. The messages that have been due
+	 * for longest are returned first.
+	 * <p/>
+	 * Read-only.
+	 */
+	Map<GroupId, Collection<MessageId>> getMessagesToDelete(Transaction txn,
+			int maxMessages) throws DbException;
+
 	/**
 	 * Returns the metadata for all delivered messages in the given group.
 	 * <p/>
@@ -510,6 +587,20 @@ public interface DatabaseComponent extends TransactionManager {
 	Message getMessageToSend(Transaction txn, ContactId c, MessageId m,
 			long maxLatency, boolean markAsSent) throws DbException;
 
+	/**
+	 * Returns those of the given contacts that the given message is still
+	 * visible to. Contacts that no longer exist are ignored.
+	 * <p/>
+	 * Together with {@link #getMessage(Transaction, MessageId)} and
+	 * {@link #setMessagesSent(Transaction, ContactId, Collection, long)}
+	 * this allows a message to be sent to several contacts while only being
+	 * read from the database once.
+	 * <p/>
+	 * Read-only.
+	 */
+	Collection<ContactId> getContactsToSendMessageTo(Transaction txn,
+			MessageId m, Collection<ContactId> contacts) throws DbException;
+
 	/**
 	 * Returns the IDs of all messages that are eligible to be sent to the
 	 * given contact.
@@ -541,6 +632,28 @@ public interface DatabaseComponent extends TransactionManager {
 	long getUnackedMessageBytesToSend(Transaction txn, ContactId c)
 			throws DbException;
 
+	/**
+	 * Returns the IDs of the delivered, shared messages in groups shared
+	 * with the given contact that the contact is not known to have seen,
+	 * grouped by group. Deleted messages are not included. These are the
+	 * messages the contact may offer us that we already have.
+	 * <p/>
+	 * Read-only.
+	 */
+	Map<GroupId, Collection<MessageId>> getUnseenMessages(Transaction txn,
+			ContactId c) throws DbException;
+
+	/**
+	 * Returns the IDs of the delivered, shared messages in the given group,
+	 * if the group is shared with the given contact, mapped to true if the
+	 * contact is known to have seen each message. Deleted messages are not
+	 * included. These are the messages that are reconciled with the contact.
+	 * <p/>
+	 * Read-only.
+	 */
+	Map<MessageId, Boolean> getMessagesToReconcile(Transaction txn,
+			ContactId c, GroupId g) throws DbException;
+
 	/**
 	 * Returns the next time (in milliseconds since the Unix epoch) when a
 	 * message is due to be deleted, or {@link #NO_CLEANUP_DEADLINE}
@@ -586,6 +699,15 @@ public interface DatabaseComponent extends TransactionManager {
 	 */
 	Settings getSettings(Transaction txn, String namespace) throws DbException;
 
+	/**
+	 * Returns the number of bytes in the database's files that hold live
+	 * data, and the number that could be reclaimed by
+	 * {@link #reclaimSpace(Transaction, long)}.
+	 * <p/>
+	 * Read-only.
+	 */
+	DatabaseSpaceUsage getSpaceUsage(Transaction txn) throws DbException;
+
 	/**
 	 * Returns the versions of the sync protocol supported by the given contact.
 	 * <p/>
@@ -654,12 +776,35 @@ public interface DatabaseComponent extends TransactionManager {
 	 */
 	void receiveOffer(Transaction txn, ContactId c, Offer o) throws DbException;
 
+	/**
+	 * Processes the result of reconciling a group with the given contact.
+	 * The contact has the messages in {@code seen}, which will no longer be
+	 * offered, and lacks the messages in {@code missing}, which will be sent
+	 * without being offered first.
+	 */
+	void receiveReconciliation(Transaction txn, ContactId c,
+			Collection<MessageId> seen, Collection<MessageId> missing)
+			throws DbException;
+
 	/**
 	 * Processes a request from the given contact.
 	 */
 	void receiveRequest(Transaction txn, ContactId c, Request r)
 			throws DbException;
 
+	/**
+	 * Reclaims some of the space in the database's files that no longer holds
+	 * live data, writing no more than approximately the given number of bytes.
+	 * This can be called while the database is open, so space left behind by
+	 * deleted messages doesn't have to wait until the database is closed.
+	 * Returns true if any space was reclaimed, in which case calling this
+	 * method again may reclaim more space.
+	 * <p/>
+	 * The transaction must not be read-only, so that no other transactions
+	 * are running while space is reclaimed.
+	 */
+	boolean reclaimSpace(Transaction txn, long maxBytes) throws DbException;
+
 	/**
 	 * Removes a contact (and all associated state) from the database.
 	 */
@@ -810,6 +955,13 @@ public interface DatabaseComponent extends TransactionManager {
 	 */
 	void stopCleanupTimer(Transaction txn, MessageId m) throws DbException;
 
+	/**
+	 * Stops the cleanup timers for the given messages, if the timers have
+	 * been started. Any messages that are not in the DB are ignored.
+	 */
+	void stopCleanupTimers(Transaction txn, Collection<MessageId> ids)
+			throws DbException;
+
 	/**
 	 * Stores the given transport keys, deleting any keys they have replaced.
 	 */
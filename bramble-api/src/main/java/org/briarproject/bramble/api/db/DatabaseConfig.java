@@ -26,4 +26,12 @@ public interface DatabaseConfig {
 	 */
 	@Nullable
 	KeyStrengthener getKeyStrengthener();
+
+	/**
+	 * Returns true if large messages should be stored in encrypted files next
+	 * to the database, rather than inside the database. If this changes
+	 * between runs, messages are moved accordingly when the database is
+	 * opened.
+	 */
+	boolean useMessageFileStore();
 }
@@ -14,14 +14,27 @@ import static java.lang.annotation.RetentionPolicy.RUNTIME;
  * Annotation for injecting the executor for database tasks. Also used for
  * annotating methods that should run on the database executor.
  * <p>
- * The contract of this executor is that tasks are run in the order they're
- * submitted, tasks are not run concurrently, and submitting a task will never
- * block. Tasks must not run indefinitely. Tasks submitted during shutdown are
- * discarded.
+ * The database executor has three lanes: this executor, which is the
+ * interactive lane, and the {@link SyncDatabaseExecutor sync} and
+ * {@link BackgroundDatabaseExecutor background} lanes. All tasks submitted
+ * to any of the lanes run on a single thread, so tasks are never run
+ * concurrently.
+ * <p>
+ * The contract of this executor is that tasks submitted to it are run in the
+ * order they're submitted, and submitting a task will never block. Tasks
+ * must not run indefinitely. Tasks submitted during shutdown are discarded.
+ * <p>
+ * Tasks submitted to this executor take priority over tasks submitted to the
+ * other lanes, so a task submitted here may run before a task that was
+ * submitted earlier to another lane. The order of tasks is only guaranteed
+ * within a lane. A lower priority lane whose tasks have waited too long is
+ * allowed to run a task, so no lane is delayed indefinitely.
  * <p>
  * It is not mandatory to use this executor for database tasks. The database
  * can be accessed from any thread, but this executor's guarantee that tasks
- * are run in the order they're submitted may be useful in some cases.
+ * are run in the order they're submitted may be useful in some cases. Tasks
+ * that depend on the order of other tasks should be submitted to the same
+ * lane.
  */
 @Qualifier
 @Target({FIELD, METHOD, PARAMETER})
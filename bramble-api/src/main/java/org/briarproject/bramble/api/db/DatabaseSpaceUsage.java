@@ -0,0 +1,44 @@
+package org.briarproject.bramble.api.db;
+
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Describes how the space in the database's files is being used.
+ */
+@Immutable
+@NotNullByDefault
+public class DatabaseSpaceUsage {
+
+	private final long fileBytes, liveBytes;
+
+	public DatabaseSpaceUsage(long fileBytes, long liveBytes) {
+		if (fileBytes < 0 || liveBytes < 0 || liveBytes > fileBytes)
+			throw new IllegalArgumentException();
+		this.fileBytes = fileBytes;
+		this.liveBytes = liveBytes;
+	}
+
+	/**
+	 * Returns the total size of the database's files in bytes.
+	 */
+	public long getFileBytes() {
+		return fileBytes;
+	}
+
+	/**
+	 * Returns the number of bytes that hold live data.
+	 */
+	public long getLiveBytes() {
+		return liveBytes;
+	}
+
+	/**
+	 * Returns the number of bytes that don't hold live data, such as space
+	 * left behind by deleted messages, and could be reclaimed.
+	 */
+	public long getDeadBytes() {
+		return fileBytes - liveBytes;
+	}
+}
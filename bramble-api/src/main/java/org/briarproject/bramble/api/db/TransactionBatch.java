@@ -0,0 +1,50 @@
+package org.briarproject.bramble.api.db;
+
+import org.briarproject.bramble.api.event.EventExecutor;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Runs many small read-write tasks in a smaller number of transactions.
+ * <p>
+ * Tasks are queued when they are {@link #add(long, DbRunnable) added} and
+ * run together in a single transaction when the number of queued tasks or
+ * their total size reaches the batch's limits, when the batch is
+ * {@link #flush() flushed}, or when it is {@link #close() closed}. The
+ * database lock is only held while queued tasks are running, so the caller
+ * can do slow work, such as creating and signing messages, between calls
+ * to {@link #add(long, DbRunnable)}.
+ * <p>
+ * Any {@link Transaction#attach events and tasks} attached to the
+ * transactions are held back until the batch is closed, and then submitted
+ * to the {@link EventExecutor} together.
+ * <p>
+ * If a transaction fails, the tasks that were queued for it are discarded
+ * and the exception is thrown by the method that started the transaction.
+ */
+@NotThreadSafe
+@NotNullByDefault
+public interface TransactionBatch extends AutoCloseable {
+
+	/**
+	 * Queues a task, running all the queued tasks if this takes the batch
+	 * to its limits.
+	 *
+	 * @param bytes An estimate of the amount of data the task will write,
+	 * used for deciding when to commit.
+	 */
+	void add(long bytes, DbRunnable<DbException> task) throws DbException;
+
+	/**
+	 * Runs any queued tasks in a single transaction.
+	 */
+	void flush() throws DbException;
+
+	/**
+	 * Runs any queued tasks and then broadcasts the events that were held
+	 * back. The batch must not be used after it has been closed.
+	 */
+	@Override
+	void close() throws DbException;
+}
@@ -95,4 +95,12 @@ public interface TransactionManager {
 	<R, E extends Exception> R transactionWithNullableResult(boolean readOnly,
 			NullableDbCallable<R, E> task) throws DbException, E;
 
+	/**
+	 * Returns a {@link TransactionBatch} that runs tasks in read-write
+	 * transactions of at most the given number of tasks. A transaction is
+	 * also committed as soon as the estimated size of its tasks reaches the
+	 * given number of bytes.
+	 */
+	TransactionBatch startBatch(int maxTasks, long maxBytes);
+
 }
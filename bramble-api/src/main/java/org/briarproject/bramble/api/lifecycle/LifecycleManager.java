@@ -8,6 +8,7 @@ import org.briarproject.bramble.api.system.Clock;
 import org.briarproject.bramble.api.system.Wakeful;
 import org.briarproject.nullsafety.NotNullByDefault;
 
+import java.util.Collection;
 import java.util.concurrent.ExecutorService;
 
 /**
@@ -59,11 +60,34 @@ public interface LifecycleManager {
 	void registerOpenDatabaseHook(OpenDatabaseHook hook);
 
 	/**
-	 * Registers a {@link Service} to be started and stopped. This method
-	 * should be called before {@link #startServices(SecretKey)}.
+	 * Registers a hook to be called after the database is opened and before
+	 * {@link Service services} are started. This method should be called
+	 * before {@link #startServices(SecretKey)}.
+	 * <p>
+	 * If {@code separateTransaction} is true, the hook is called in its own
+	 * transaction after the hooks that share a transaction have been called.
+	 * This is only safe for hooks that don't need to be atomic with any
+	 * other hook.
+	 */
+	void registerOpenDatabaseHook(OpenDatabaseHook hook,
+			boolean separateTransaction);
+
+	/**
+	 * Registers a {@link Service} to be started and stopped. The service
+	 * will be started after all previously registered services have started.
+	 * This method should be called before {@link #startServices(SecretKey)}.
 	 */
 	void registerService(Service s);
 
+	/**
+	 * Registers a {@link Service} to be started and stopped. The service
+	 * will be started after the given services have started, and may be
+	 * started concurrently with any other services. The dependencies must
+	 * already have been registered. This method should be called before
+	 * {@link #startServices(SecretKey)}.
+	 */
+	void registerService(Service s, Collection<Service> dependencies);
+
 	/**
 	 * Registers an {@link ExecutorService} to be shut down. This method
 	 * should be called before {@link #startServices(SecretKey)}.
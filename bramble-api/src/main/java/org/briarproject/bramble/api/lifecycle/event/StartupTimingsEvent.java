@@ -0,0 +1,41 @@
+package org.briarproject.bramble.api.lifecycle.event;
+
+import org.briarproject.bramble.api.event.Event;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.Map;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * An event that is broadcast when the app has finished starting, reporting
+ * how long each phase of startup took.
+ */
+@Immutable
+@NotNullByDefault
+public class StartupTimingsEvent extends Event {
+
+	private final Map<String, Long> durations;
+	private final long totalDuration;
+
+	public StartupTimingsEvent(Map<String, Long> durations,
+			long totalDuration) {
+		this.durations = durations;
+		this.totalDuration = totalDuration;
+	}
+
+	/**
+	 * Returns the duration of each phase of startup in milliseconds, in the
+	 * order in which the phases finished.
+	 */
+	public Map<String, Long> getDurations() {
+		return durations;
+	}
+
+	/**
+	 * Returns the total duration of startup in milliseconds.
+	 */
+	public long getTotalDuration() {
+		return totalDuration;
+	}
+}
@@ -5,6 +5,8 @@ import org.briarproject.bramble.api.db.DbException;
 import org.briarproject.bramble.api.properties.TransportProperties;
 import org.briarproject.nullsafety.NotNullByDefault;
 
+import java.util.Map;
+
 import javax.annotation.Nullable;
 
 @NotNullByDefault
@@ -39,6 +41,17 @@ public interface RemovableDriveManager {
 	 */
 	RemovableDriveTask startWriterTask(ContactId c, TransportProperties p);
 
+	/**
+	 * Starts and returns a writer task for the given contacts, writing a
+	 * separate stream to each contact. Each stream is described by the
+	 * transport properties the contact is mapped to. Each message is read
+	 * once, however many of the contacts it's written to, and the progress
+	 * of the task is the total progress of all the streams. If a writer
+	 * task is already running, it will be returned and the argument will
+	 * be ignored.
+	 */
+	RemovableDriveTask startWriterTask(Map<ContactId, TransportProperties> p);
+
 	/**
 	 * Returns true if the given contact has indicated support for the
 	 * removable drive transport.
@@ -0,0 +1,44 @@
+package org.briarproject.bramble.api.sync;
+
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import javax.annotation.concurrent.Immutable;
+
+import static org.briarproject.bramble.api.sync.SyncConstants.ESTIMATOR_BYTES;
+
+/**
+ * A record containing a strata estimator of the IDs of the messages in a
+ * group that the sender shares with the recipient. The recipient compares
+ * it with an estimator of its own messages to estimate how many messages
+ * differ between the peers, and replies with {@link MessageSketch
+ * MessageSketches} large enough to list the differences.
+ */
+@Immutable
+@NotNullByDefault
+public class MessageEstimator {
+
+	private final GroupId groupId;
+	private final long salt;
+	private final byte[] cells;
+
+	public MessageEstimator(GroupId groupId, long salt, byte[] cells) {
+		if (salt < 0) throw new IllegalArgumentException();
+		if (cells.length != ESTIMATOR_BYTES)
+			throw new IllegalArgumentException();
+		this.groupId = groupId;
+		this.salt = salt;
+		this.cells = cells;
+	}
+
+	public GroupId getGroupId() {
+		return groupId;
+	}
+
+	public long getSalt() {
+		return salt;
+	}
+
+	public byte[] getCells() {
+		return cells;
+	}
+}
@@ -0,0 +1,131 @@
+package org.briarproject.bramble.api.sync;
+
+import org.briarproject.bramble.api.UniqueId;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.Collection;
+
+import javax.annotation.concurrent.Immutable;
+
+import static org.briarproject.bramble.api.sync.SyncConstants.FILTER_BITS_PER_MESSAGE;
+import static org.briarproject.bramble.api.sync.SyncConstants.FILTER_HASH_FUNCTIONS;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_FILTER_BYTES;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_FILTER_HASH_FUNCTIONS;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_FILTER_MESSAGES;
+
+/**
+ * A record containing a Bloom filter of the IDs of messages in a group that
+ * the sender has, and that the recipient may therefore skip offering.
+ * <p>
+ * The filter may contain false positives, so the recipient must not assume
+ * that the sender has a message just because the filter contains its ID.
+ * Each filter is salted so that false positives differ between filters.
+ */
+@Immutable
+@NotNullByDefault
+public class MessageFilter {
+
+	private final GroupId groupId;
+	private final long salt;
+	private final int hashFunctions;
+	private final byte[] bits;
+
+	public MessageFilter(GroupId groupId, long salt, int hashFunctions,
+			byte[] bits) {
+		if (salt < 0) throw new IllegalArgumentException();
+		if (hashFunctions < 1 || hashFunctions > MAX_FILTER_HASH_FUNCTIONS)
+			throw new IllegalArgumentException();
+		if (bits.length == 0 || bits.length > MAX_FILTER_BYTES)
+			throw new IllegalArgumentException();
+		this.groupId = groupId;
+		this.salt = salt;
+		this.hashFunctions = hashFunctions;
+		this.bits = bits;
+	}
+
+	/**
+	 * Creates a filter containing the given message IDs, which must all
+	 * belong to the given group.
+	 *
+	 * @param salt A non-negative salt, which should be chosen at random.
+	 */
+	public static MessageFilter create(GroupId groupId, long salt,
+			Collection<MessageId> ids) {
+		if (ids.size() > MAX_FILTER_MESSAGES)
+			throw new IllegalArgumentException();
+		int bytes = Math.max(1, (ids.size() * FILTER_BITS_PER_MESSAGE + 7) / 8);
+		byte[] bits = new byte[bytes];
+		long bitCount = bytes * 8L;
+		for (MessageId m : ids) {
+			long h1 = hash(salt, m), h2 = mix(h1 ^ salt) | 1;
+			for (int i = 0; i < FILTER_HASH_FUNCTIONS; i++) {
+				int index = getIndex(h1, h2, i, bitCount);
+				bits[index >> 3] |= 1 << (index & 7);
+			}
+		}
+		return new MessageFilter(groupId, salt, FILTER_HASH_FUNCTIONS, bits);
+	}
+
+	public GroupId getGroupId() {
+		return groupId;
+	}
+
+	public long getSalt() {
+		return salt;
+	}
+
+	public int getHashFunctions() {
+		return hashFunctions;
+	}
+
+	public byte[] getBits() {
+		return bits;
+	}
+
+	/**
+	 * Returns true if the filter may contain the given message ID, or false
+	 * if it definitely doesn't.
+	 */
+	public boolean mightContain(MessageId m) {
+		long bitCount = bits.length * 8L;
+		long h1 = hash(salt, m), h2 = mix(h1 ^ salt) | 1;
+		for (int i = 0; i < hashFunctions; i++) {
+			int index = getIndex(h1, h2, i, bitCount);
+			if ((bits[index >> 3] & (1 << (index & 7))) == 0) return false;
+		}
+		return true;
+	}
+
+	private static long hash(long salt, MessageId m) {
+		byte[] id = m.getBytes();
+		long h = salt;
+		for (int off = 0; off < UniqueId.LENGTH; off += 8) {
+			long word = 0;
+			for (int i = 0; i < 8; i++)
+				word = (word << 8) | (id[off + i] & 0xFF);
+			h = mix(h ^ word);
+		}
+		return h;
+	}
+
+	/**
+	 * Derives the index of the i-th bit from two hashes, as described by
+	 * Kirsch and Mitzenmacher.
+	 */
+	private static int getIndex(long h1, long h2, int i, long bitCount) {
+		return (int) (((h1 + i * h2) >>> 1) % bitCount);
+	}
+
+	/**
+	 * The finalisation step of MurmurHash3, which mixes the bits of the
+	 * input so that each input bit affects every output bit.
+	 */
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,78 @@
+package org.briarproject.bramble.api.sync;
+
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import javax.annotation.concurrent.Immutable;
+
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_SKETCH_CELLS;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_SKETCH_PARTITIONS;
+import static org.briarproject.bramble.api.sync.SyncConstants.SKETCH_CELL_BYTES;
+import static org.briarproject.bramble.api.sync.SyncConstants.SKETCH_HASH_FUNCTIONS;
+
+/**
+ * A record containing an invertible Bloom lookup table of the IDs of the
+ * messages in a group that the sender shares with the recipient. The
+ * recipient subtracts a table of its own messages to find out which of its
+ * messages the sender has and which the sender lacks.
+ * <p>
+ * If there are too many differences to list in one record, the messages
+ * are divided into partitions by hashing their IDs, and each partition is
+ * sent in its own record.
+ */
+@Immutable
+@NotNullByDefault
+public class MessageSketch {
+
+	private final GroupId groupId;
+	private final long salt;
+	private final int partition, partitions;
+	private final byte[] cells;
+
+	public MessageSketch(GroupId groupId, long salt, int partition,
+			int partitions, byte[] cells) {
+		if (salt < 0) throw new IllegalArgumentException();
+		if (partitions < 1 || partitions > MAX_SKETCH_PARTITIONS)
+			throw new IllegalArgumentException();
+		if (partition < 0 || partition >= partitions)
+			throw new IllegalArgumentException();
+		if (cells.length % SKETCH_CELL_BYTES != 0)
+			throw new IllegalArgumentException();
+		int cellCount = cells.length / SKETCH_CELL_BYTES;
+		if (cellCount == 0 || cellCount > MAX_SKETCH_CELLS)
+			throw new IllegalArgumentException();
+		if (cellCount % SKETCH_HASH_FUNCTIONS != 0)
+			throw new IllegalArgumentException();
+		this.groupId = groupId;
+		this.salt = salt;
+		this.partition = partition;
+		this.partitions = partitions;
+		this.cells = cells;
+	}
+
+	public GroupId getGroupId() {
+		return groupId;
+	}
+
+	public long getSalt() {
+		return salt;
+	}
+
+	public int getPartition() {
+		return partition;
+	}
+
+	public int getPartitions() {
+		return partitions;
+	}
+
+	public byte[] getCells() {
+		return cells;
+	}
+
+	/**
+	 * Returns the number of cells in the table.
+	 */
+	public int getCellCount() {
+		return cells.length / SKETCH_CELL_BYTES;
+	}
+}
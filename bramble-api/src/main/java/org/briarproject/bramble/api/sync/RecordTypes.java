@@ -11,4 +11,7 @@ public interface RecordTypes {
 	byte REQUEST = 3;
 	byte VERSIONS = 4;
 	byte PRIORITY = 5;
+	byte FILTER = 6;
+	byte ESTIMATOR = 7;
+	byte SKETCH = 8;
 }
@@ -4,7 +4,7 @@ import org.briarproject.bramble.api.UniqueId;
 
 import java.util.List;
 
-import static java.util.Collections.singletonList;
+import static java.util.Arrays.asList;
 import static java.util.concurrent.TimeUnit.DAYS;
 import static org.briarproject.bramble.api.record.Record.MAX_RECORD_PAYLOAD_BYTES;
 
@@ -15,10 +15,38 @@ public interface SyncConstants {
 	 */
 	byte PROTOCOL_VERSION = 0;
 
+	/**
+	 * A version of the sync protocol that has the same records as
+	 * {@link #PROTOCOL_VERSION}. Peers that advertise support for this
+	 * version can also read transport streams that use large frames. Records
+	 * are still written with {@link #PROTOCOL_VERSION}.
+	 */
+	byte LARGE_FRAMES_VERSION = 1;
+
+	/**
+	 * A version of the sync protocol that adds {@link MessageFilter} records
+	 * to the records of {@link #PROTOCOL_VERSION}. Peers that advertise
+	 * support for this version will be sent filters of the messages we have,
+	 * so they can skip offering those messages. Records are still written
+	 * with {@link #PROTOCOL_VERSION}, as peers that don't support filters
+	 * ignore the unknown record type.
+	 */
+	byte FILTERS_VERSION = 2;
+
+	/**
+	 * A version of the sync protocol that adds {@link MessageEstimator} and
+	 * {@link MessageSketch} records to the records of
+	 * {@link #PROTOCOL_VERSION}. Peers that both support this version can
+	 * reconcile the messages in large groups without offering every
+	 * message. Records are still written with {@link #PROTOCOL_VERSION}.
+	 */
+	byte RECONCILIATION_VERSION = 3;
+
 	/**
 	 * The versions of the sync protocol this peer supports.
 	 */
-	List<Byte> SUPPORTED_VERSIONS = singletonList(PROTOCOL_VERSION);
+	List<Byte> SUPPORTED_VERSIONS = asList(PROTOCOL_VERSION,
+			LARGE_FRAMES_VERSION, FILTERS_VERSION, RECONCILIATION_VERSION);
 
 	/**
 	 * The maximum length of a group descriptor in bytes.
@@ -45,6 +73,89 @@ public interface SyncConstants {
 	 */
 	int MAX_MESSAGE_IDS = MAX_RECORD_PAYLOAD_BYTES / UniqueId.LENGTH;
 
+	/**
+	 * The number of bits per message ID in the message filters we create,
+	 * which gives a false positive rate of about 0.05%.
+	 */
+	int FILTER_BITS_PER_MESSAGE = 16;
+
+	/**
+	 * The number of hash functions used by the message filters we create.
+	 */
+	int FILTER_HASH_FUNCTIONS = 11;
+
+	/**
+	 * The maximum number of hash functions a message filter may use.
+	 */
+	int MAX_FILTER_HASH_FUNCTIONS = 32;
+
+	/**
+	 * The length of a message filter's group ID, salt and number of hash
+	 * functions in bytes.
+	 */
+	int FILTER_HEADER_BYTES = UniqueId.LENGTH + 8 + 1;
+
+	/**
+	 * The maximum length of a message filter's bit array in bytes.
+	 */
+	int MAX_FILTER_BYTES = MAX_RECORD_PAYLOAD_BYTES - FILTER_HEADER_BYTES;
+
+	/**
+	 * The maximum number of message IDs in a message filter.
+	 */
+	int MAX_FILTER_MESSAGES = MAX_FILTER_BYTES * 8 / FILTER_BITS_PER_MESSAGE;
+
+	/**
+	 * The number of hash functions used by message estimators and sketches.
+	 * The number of cells in a sketch must be a multiple of this.
+	 */
+	int SKETCH_HASH_FUNCTIONS = 3;
+
+	/**
+	 * The length of a cell of a message estimator or sketch in bytes: a
+	 * count, a sum of keys and a sum of key hashes.
+	 */
+	int SKETCH_CELL_BYTES = 4 + 8 + 8;
+
+	/**
+	 * The number of strata in a message estimator.
+	 */
+	int ESTIMATOR_STRATA = 16;
+
+	/**
+	 * The number of cells in each stratum of a message estimator.
+	 */
+	int ESTIMATOR_CELLS_PER_STRATUM = 30;
+
+	/**
+	 * The length of a message estimator's group ID and salt in bytes.
+	 */
+	int ESTIMATOR_HEADER_BYTES = UniqueId.LENGTH + 8;
+
+	/**
+	 * The length of a message estimator's cells in bytes.
+	 */
+	int ESTIMATOR_BYTES =
+			ESTIMATOR_STRATA * ESTIMATOR_CELLS_PER_STRATUM * SKETCH_CELL_BYTES;
+
+	/**
+	 * The length of a message sketch's group ID, salt, partition and number
+	 * of partitions in bytes.
+	 */
+	int SKETCH_HEADER_BYTES = UniqueId.LENGTH + 8 + 1 + 1;
+
+	/**
+	 * The maximum number of cells in a message sketch.
+	 */
+	int MAX_SKETCH_CELLS = (MAX_RECORD_PAYLOAD_BYTES - SKETCH_HEADER_BYTES)
+			/ SKETCH_CELL_BYTES;
+
+	/**
+	 * The maximum number of partitions into which a group's messages may be
+	 * divided when sketching them.
+	 */
+	int MAX_SKETCH_PARTITIONS = 16;
+
 	/**
 	 * The maximum number of versions of the sync protocol a peer may support
 	 * simultaneously.
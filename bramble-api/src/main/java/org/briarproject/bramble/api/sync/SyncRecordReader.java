@@ -32,4 +32,16 @@ public interface SyncRecordReader {
 	boolean hasPriority() throws IOException;
 
 	Priority readPriority() throws IOException;
+
+	boolean hasFilter() throws IOException;
+
+	MessageFilter readFilter() throws IOException;
+
+	boolean hasEstimator() throws IOException;
+
+	MessageEstimator readEstimator() throws IOException;
+
+	boolean hasSketch() throws IOException;
+
+	MessageSketch readSketch() throws IOException;
 }
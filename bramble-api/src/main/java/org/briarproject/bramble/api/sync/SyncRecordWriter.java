@@ -19,6 +19,12 @@ public interface SyncRecordWriter {
 
 	void writePriority(Priority p) throws IOException;
 
+	void writeFilter(MessageFilter f) throws IOException;
+
+	void writeEstimator(MessageEstimator e) throws IOException;
+
+	void writeSketch(MessageSketch s) throws IOException;
+
 	void flush() throws IOException;
 
 	long getBytesWritten();
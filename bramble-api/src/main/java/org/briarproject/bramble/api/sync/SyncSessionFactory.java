@@ -6,6 +6,7 @@ import org.briarproject.bramble.api.transport.StreamWriter;
 import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.io.InputStream;
+import java.util.Map;
 
 import javax.annotation.Nullable;
 
@@ -13,10 +14,11 @@ import javax.annotation.Nullable;
 public interface SyncSessionFactory {
 
 	/**
-	 * Creates a session for receiving data from a contact.
+	 * Creates a session for receiving data from a contact over the given
+	 * transport.
 	 */
-	SyncSession createIncomingSession(ContactId c, InputStream in,
-			PriorityHandler handler);
+	SyncSession createIncomingSession(ContactId c, TransportId t,
+			InputStream in, PriorityHandler handler);
 
 	/**
 	 * Creates a session for sending data to a contact over a simplex transport.
@@ -36,6 +38,15 @@ public interface SyncSessionFactory {
 			long maxLatency, StreamWriter streamWriter,
 			OutgoingSessionRecord sessionRecord);
 
+	/**
+	 * Creates a session for sending data to several contacts over a simplex
+	 * transport, writing a separate stream to each contact. Messages are
+	 * sent eagerly, and each message is read from the database once,
+	 * however many of the contacts it's sent to.
+	 */
+	SyncSession createSimplexOutgoingSession(TransportId t, long maxLatency,
+			Map<ContactId, StreamWriter> streamWriters);
+
 	SyncSession createDuplexOutgoingSession(ContactId c, TransportId t,
 			long maxLatency, int maxIdleTime, StreamWriter streamWriter,
 			@Nullable Priority priority);
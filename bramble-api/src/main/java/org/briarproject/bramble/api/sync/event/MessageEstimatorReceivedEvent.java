@@ -0,0 +1,34 @@
+package org.briarproject.bramble.api.sync.event;
+
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.event.Event;
+import org.briarproject.bramble.api.sync.MessageEstimator;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * An event that is broadcast when a message estimator is received from a
+ * contact and needs to be answered with message sketches.
+ */
+@Immutable
+@NotNullByDefault
+public class MessageEstimatorReceivedEvent extends Event {
+
+	private final ContactId contactId;
+	private final MessageEstimator estimator;
+
+	public MessageEstimatorReceivedEvent(ContactId contactId,
+			MessageEstimator estimator) {
+		this.contactId = contactId;
+		this.estimator = estimator;
+	}
+
+	public ContactId getContactId() {
+		return contactId;
+	}
+
+	public MessageEstimator getEstimator() {
+		return estimator;
+	}
+}
@@ -0,0 +1,68 @@
+package org.briarproject.bramble.api.sync.metrics;
+
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A snapshot of the distribution of a series of non-negative values.
+ * <p>
+ * Each bucket counts the values that are greater than the previous
+ * bucket's upper bound and less than or equal to its own upper bound. The
+ * last bucket has no upper bound, so there is one more bucket than there
+ * are upper bounds.
+ */
+@Immutable
+@NotNullByDefault
+public class Histogram {
+
+	private final long count, sum, max;
+	private final long[] upperBounds, bucketCounts;
+
+	public Histogram(long count, long sum, long max, long[] upperBounds,
+			long[] bucketCounts) {
+		if (bucketCounts.length != upperBounds.length + 1)
+			throw new IllegalArgumentException();
+		this.count = count;
+		this.sum = sum;
+		this.max = max;
+		this.upperBounds = upperBounds.clone();
+		this.bucketCounts = bucketCounts.clone();
+	}
+
+	/**
+	 * Returns the number of values.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the sum of the values.
+	 */
+	public long getSum() {
+		return sum;
+	}
+
+	/**
+	 * Returns the largest value, or zero if there are no values.
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * Returns the mean of the values, or zero if there are no values.
+	 */
+	public double getMean() {
+		return count == 0 ? 0 : (double) sum / count;
+	}
+
+	public long[] getUpperBounds() {
+		return upperBounds.clone();
+	}
+
+	public long[] getBucketCounts() {
+		return bucketCounts.clone();
+	}
+}
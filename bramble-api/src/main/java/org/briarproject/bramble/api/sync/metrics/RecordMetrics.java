@@ -0,0 +1,34 @@
+package org.briarproject.bramble.api.sync.metrics;
+
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The number of sync records of one type that have been sent or received,
+ * and their total size.
+ */
+@Immutable
+@NotNullByDefault
+public class RecordMetrics {
+
+	private final long records, bytes;
+
+	public RecordMetrics(long records, long bytes) {
+		if (records < 0 || bytes < 0) throw new IllegalArgumentException();
+		this.records = records;
+		this.bytes = bytes;
+	}
+
+	public long getRecords() {
+		return records;
+	}
+
+	/**
+	 * Returns the total size of the records in bytes, including their
+	 * headers.
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+}
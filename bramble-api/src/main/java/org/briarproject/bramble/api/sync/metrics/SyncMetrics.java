@@ -0,0 +1,99 @@
+package org.briarproject.bramble.api.sync.metrics;
+
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.plugin.TransportId;
+import org.briarproject.bramble.api.sync.RecordTypes;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.Map;
+
+import javax.annotation.concurrent.Immutable;
+
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * A snapshot of the metrics for the sync sessions with a contact over a
+ * transport since the app started.
+ */
+@Immutable
+@NotNullByDefault
+public class SyncMetrics {
+
+	private final ContactId contactId;
+	private final TransportId transportId;
+	private final Map<Byte, RecordMetrics> sent, received;
+	private final Histogram batchDbTime, batchIoTime, writerQueueDepth;
+	private final Histogram timeToFirstRecord;
+
+	public SyncMetrics(ContactId contactId, TransportId transportId,
+			Map<Byte, RecordMetrics> sent, Map<Byte, RecordMetrics> received,
+			Histogram batchDbTime, Histogram batchIoTime,
+			Histogram writerQueueDepth, Histogram timeToFirstRecord) {
+		this.contactId = contactId;
+		this.transportId = transportId;
+		this.sent = unmodifiableMap(sent);
+		this.received = unmodifiableMap(received);
+		this.batchDbTime = batchDbTime;
+		this.batchIoTime = batchIoTime;
+		this.writerQueueDepth = writerQueueDepth;
+		this.timeToFirstRecord = timeToFirstRecord;
+	}
+
+	public ContactId getContactId() {
+		return contactId;
+	}
+
+	public TransportId getTransportId() {
+		return transportId;
+	}
+
+	/**
+	 * Returns the metrics for the records that have been sent, keyed by
+	 * {@link RecordTypes record type}. Types that haven't been sent are
+	 * omitted.
+	 */
+	public Map<Byte, RecordMetrics> getSent() {
+		return sent;
+	}
+
+	/**
+	 * Returns the metrics for the records that have been received, keyed by
+	 * {@link RecordTypes record type}. Types that haven't been received are
+	 * omitted.
+	 */
+	public Map<Byte, RecordMetrics> getReceived() {
+		return received;
+	}
+
+	/**
+	 * Returns the time in milliseconds spent in the database generating
+	 * each batch of messages.
+	 */
+	public Histogram getBatchDbTime() {
+		return batchDbTime;
+	}
+
+	/**
+	 * Returns the time in milliseconds spent writing each batch of
+	 * messages to the transport.
+	 */
+	public Histogram getBatchIoTime() {
+		return batchIoTime;
+	}
+
+	/**
+	 * Returns the number of records that were waiting to be written each
+	 * time a duplex session took a record from its queue.
+	 */
+	public Histogram getWriterQueueDepth() {
+		return writerQueueDepth;
+	}
+
+	/**
+	 * Returns the time in milliseconds from the start of each outgoing
+	 * session until its first record after the versions record was written.
+	 */
+	public Histogram getTimeToFirstRecord() {
+		return timeToFirstRecord;
+	}
+}
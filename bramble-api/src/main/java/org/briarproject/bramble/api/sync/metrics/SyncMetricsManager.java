@@ -0,0 +1,28 @@
+package org.briarproject.bramble.api.sync.metrics;
+
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.Collection;
+
+/**
+ * Keeps metrics for sync sessions, such as the number of bytes and records
+ * of each type that have been sent and received, for each contact and
+ * transport. Metrics are kept in memory and are reset when the app
+ * restarts or the contact is removed.
+ */
+@NotNullByDefault
+public interface SyncMetricsManager {
+
+	/**
+	 * Returns the metrics for every contact and transport that have had a
+	 * sync session since the app started.
+	 */
+	Collection<SyncMetrics> getSyncMetrics();
+
+	/**
+	 * Returns the metrics for every transport over which the given contact
+	 * has had a sync session since the app started.
+	 */
+	Collection<SyncMetrics> getSyncMetrics(ContactId c);
+}
@@ -22,12 +22,20 @@ public class StreamContext {
 	private final TransportId transportId;
 	private final SecretKey tagKey, headerKey;
 	private final long streamNumber;
-	private final boolean handshakeMode;
+	private final boolean handshakeMode, largeFrames;
 
 	public StreamContext(@Nullable ContactId contactId,
 			@Nullable PendingContactId pendingContactId,
 			TransportId transportId, SecretKey tagKey, SecretKey headerKey,
 			long streamNumber, boolean handshakeMode) {
+		this(contactId, pendingContactId, transportId, tagKey, headerKey,
+				streamNumber, handshakeMode, false);
+	}
+
+	public StreamContext(@Nullable ContactId contactId,
+			@Nullable PendingContactId pendingContactId,
+			TransportId transportId, SecretKey tagKey, SecretKey headerKey,
+			long streamNumber, boolean handshakeMode, boolean largeFrames) {
 		requireExactlyOneNull(contactId, pendingContactId);
 		this.contactId = contactId;
 		this.pendingContactId = pendingContactId;
@@ -36,6 +44,7 @@ public class StreamContext {
 		this.headerKey = headerKey;
 		this.streamNumber = streamNumber;
 		this.handshakeMode = handshakeMode;
+		this.largeFrames = largeFrames;
 	}
 
 	@Nullable
@@ -67,4 +76,14 @@ public class StreamContext {
 	public boolean isHandshakeMode() {
 		return handshakeMode;
 	}
+
+	/**
+	 * Returns true if an outgoing stream should use large frames. This is
+	 * only true if the contact has advertised support for large frames.
+	 * Incoming streams may use either frame format, as indicated by the
+	 * stream header.
+	 */
+	public boolean useLargeFrames() {
+		return largeFrames;
+	}
 }
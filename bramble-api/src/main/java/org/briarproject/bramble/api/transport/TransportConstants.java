@@ -9,6 +9,17 @@ public interface TransportConstants {
 	 */
 	int PROTOCOL_VERSION = 4;
 
+	/**
+	 * The version of the transport protocol that uses large frames. Streams
+	 * using this version have the same tags as streams using
+	 * {@link #PROTOCOL_VERSION}, but the stream header contains this version
+	 * and the frames may be up to {@link #MAX_LARGE_FRAME_LENGTH} bytes long.
+	 * <p>
+	 * Large frames are only sent to contacts that have advertised support
+	 * for them.
+	 */
+	int LARGE_FRAME_PROTOCOL_VERSION = 5;
+
 	/**
 	 * The length of the pseudo-random tag in bytes.
 	 */
@@ -63,6 +74,32 @@ public interface TransportConstants {
 	int MAX_PAYLOAD_LENGTH = MAX_FRAME_LENGTH - FRAME_HEADER_LENGTH
 			- MAC_LENGTH;
 
+	/**
+	 * The length of the plaintext frame header in bytes, for streams that
+	 * use large frames.
+	 */
+	int LARGE_FRAME_HEADER_PLAINTEXT_LENGTH = 8;
+
+	/**
+	 * The length of the encrypted and authenticated frame header in bytes,
+	 * for streams that use large frames.
+	 */
+	int LARGE_FRAME_HEADER_LENGTH =
+			LARGE_FRAME_HEADER_PLAINTEXT_LENGTH + MAC_LENGTH;
+
+	/**
+	 * The maximum length of an encrypted and authenticated frame in bytes,
+	 * including the header, for streams that use large frames.
+	 */
+	int MAX_LARGE_FRAME_LENGTH = 64 * 1024; // 64 KiB
+
+	/**
+	 * The maximum total length of the frame payload and padding in bytes,
+	 * for streams that use large frames.
+	 */
+	int MAX_LARGE_PAYLOAD_LENGTH = MAX_LARGE_FRAME_LENGTH
+			- LARGE_FRAME_HEADER_LENGTH - MAC_LENGTH;
+
 	/**
 	 * The maximum difference in milliseconds between two peers' clocks.
 	 */
@@ -0,0 +1,97 @@
+package org.briarproject.bramble.api.sync;
+
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.Collections.emptyList;
+import static org.briarproject.bramble.api.sync.SyncConstants.FILTER_BITS_PER_MESSAGE;
+import static org.briarproject.bramble.api.sync.SyncConstants.FILTER_HASH_FUNCTIONS;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_FILTER_BYTES;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_FILTER_MESSAGES;
+import static org.briarproject.bramble.test.TestUtils.getRandomId;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MessageFilterTest extends BrambleTestCase {
+
+	private final GroupId groupId = new GroupId(getRandomId());
+
+	@Test
+	public void testFilterContainsAllMessages() {
+		List<MessageId> ids = createMessageIds(1000);
+		MessageFilter filter = MessageFilter.create(groupId, 123, ids);
+
+		assertEquals(groupId, filter.getGroupId());
+		assertEquals(123, filter.getSalt());
+		assertEquals(FILTER_HASH_FUNCTIONS, filter.getHashFunctions());
+		assertEquals(1000 * FILTER_BITS_PER_MESSAGE / 8,
+				filter.getBits().length);
+		for (MessageId m : ids) assertTrue(filter.mightContain(m));
+	}
+
+	@Test
+	public void testEmptyFilterContainsNoMessages() {
+		MessageFilter filter = MessageFilter.create(groupId, 123, emptyList());
+
+		assertEquals(1, filter.getBits().length);
+		for (MessageId m : createMessageIds(100))
+			assertFalse(filter.mightContain(m));
+	}
+
+	@Test
+	public void testFalsePositiveRateIsLow() {
+		MessageFilter filter =
+				MessageFilter.create(groupId, 123, createMessageIds(10_000));
+
+		int falsePositives = 0;
+		for (MessageId m : createMessageIds(100_000)) {
+			if (filter.mightContain(m)) falsePositives++;
+		}
+		// The expected false positive rate is about 0.05%
+		assertTrue(falsePositives < 200);
+	}
+
+	@Test
+	public void testFalsePositivesDependOnSalt() {
+		List<MessageId> ids = createMessageIds(10_000);
+		MessageFilter filter1 = MessageFilter.create(groupId, 123, ids);
+		MessageFilter filter2 = MessageFilter.create(groupId, 456, ids);
+		assertFalse(Arrays.equals(filter1.getBits(), filter2.getBits()));
+
+		int both = 0;
+		for (MessageId m : createMessageIds(100_000)) {
+			if (filter1.mightContain(m) && filter2.mightContain(m)) both++;
+		}
+		assertTrue(both < 5);
+	}
+
+	@Test
+	public void testMaximumSizeFilterFitsInRecord() {
+		MessageFilter filter = MessageFilter.create(groupId, 123,
+				createMessageIds(MAX_FILTER_MESSAGES));
+
+		assertTrue(filter.getBits().length <= MAX_FILTER_BYTES);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTooManyMessagesAreRejected() {
+		MessageFilter.create(groupId, 123,
+				createMessageIds(MAX_FILTER_MESSAGES + 1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeSaltIsRejected() {
+		MessageFilter.create(groupId, -1, createMessageIds(1));
+	}
+
+	private List<MessageId> createMessageIds(int count) {
+		List<MessageId> ids = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) ids.add(new MessageId(getRandomId()));
+		return ids;
+	}
+}
@@ -4,6 +4,7 @@ import org.briarproject.bramble.cleanup.CleanupModule;
 import org.briarproject.bramble.contact.ContactModule;
 import org.briarproject.bramble.crypto.CryptoExecutorModule;
 import org.briarproject.bramble.db.DatabaseExecutorModule;
+import org.briarproject.bramble.db.DatabaseModule;
 import org.briarproject.bramble.identity.IdentityModule;
 import org.briarproject.bramble.lifecycle.LifecycleModule;
 import org.briarproject.bramble.mailbox.MailboxModule;
@@ -25,6 +26,8 @@ public interface BrambleCoreEagerSingletons {
 
 	void inject(DatabaseExecutorModule.EagerSingletons init);
 
+	void inject(DatabaseModule.EagerSingletons init);
+
 	void inject(IdentityModule.EagerSingletons init);
 
 	void inject(LifecycleModule.EagerSingletons init);
@@ -52,6 +55,7 @@ public interface BrambleCoreEagerSingletons {
 			c.inject(new ContactModule.EagerSingletons());
 			c.inject(new CryptoExecutorModule.EagerSingletons());
 			c.inject(new DatabaseExecutorModule.EagerSingletons());
+			c.inject(new DatabaseModule.EagerSingletons());
 			c.inject(new IdentityModule.EagerSingletons());
 			c.inject(new LifecycleModule.EagerSingletons());
 			c.inject(new MailboxModule.EagerSingletons());
@@ -3,8 +3,8 @@ package org.briarproject.bramble.cleanup;
 import org.briarproject.bramble.api.cleanup.CleanupHook;
 import org.briarproject.bramble.api.cleanup.CleanupManager;
 import org.briarproject.bramble.api.cleanup.event.CleanupTimerStartedEvent;
+import org.briarproject.bramble.api.db.BackgroundDatabaseExecutor;
 import org.briarproject.bramble.api.db.DatabaseComponent;
-import org.briarproject.bramble.api.db.DatabaseExecutor;
 import org.briarproject.bramble.api.db.DbException;
 import org.briarproject.bramble.api.db.Transaction;
 import org.briarproject.bramble.api.event.Event;
@@ -39,6 +39,7 @@ import static java.util.logging.Level.WARNING;
 import static java.util.logging.Logger.getLogger;
 import static org.briarproject.bramble.api.db.DatabaseComponent.NO_CLEANUP_DEADLINE;
 import static org.briarproject.bramble.util.LogUtils.logException;
+import static org.briarproject.bramble.util.LogUtils.now;
 
 @ThreadSafe
 @NotNullByDefault
@@ -47,6 +48,13 @@ class CleanupManagerImpl implements CleanupManager, Service, EventListener {
 	private static final Logger LOG =
 			getLogger(CleanupManagerImpl.class.getName());
 
+	/**
+	 * The maximum number of messages deleted in a single transaction. If
+	 * more messages are due, they're deleted in further transactions, with
+	 * other tasks on the DB executor able to run in between.
+	 */
+	static final int MAX_MESSAGES_PER_TRANSACTION = 100;
+
 	private final Executor dbExecutor;
 	private final DatabaseComponent db;
 	private final TaskScheduler taskScheduler;
@@ -57,9 +65,13 @@ class CleanupManagerImpl implements CleanupManager, Service, EventListener {
 
 	@GuardedBy("lock")
 	private final Set<CleanupTask> pending = new HashSet<>();
+	@GuardedBy("lock")
+	private long messagesDeleted = 0, transactions = 0;
+	@GuardedBy("lock")
+	private long maxTransactionDuration = 0;
 
 	@Inject
-	CleanupManagerImpl(@DatabaseExecutor Executor dbExecutor,
+	CleanupManagerImpl(@BackgroundDatabaseExecutor Executor dbExecutor,
 			DatabaseComponent db, TaskScheduler taskScheduler, Clock clock) {
 		this.dbExecutor = dbExecutor;
 		this.db = db;
@@ -116,27 +128,53 @@ class CleanupManagerImpl implements CleanupManager, Service, EventListener {
 			synchronized (lock) {
 				pending.remove(task);
 			}
-			long deadline = db.transactionWithResult(false, txn -> {
-				deleteMessages(txn);
-				return db.getNextCleanupDeadline(txn);
+			long start = now();
+			DeletionResult result = db.transactionWithResult(false, txn -> {
+				int deleted = deleteMessages(txn);
+				long deadline = db.getNextCleanupDeadline(txn);
+				return new DeletionResult(deleted, deadline);
 			});
-			if (deadline != NO_CLEANUP_DEADLINE) {
-				maybeScheduleTask(deadline);
+			long duration = now() - start;
+			synchronized (lock) {
+				messagesDeleted += result.deleted;
+				transactions++;
+				maxTransactionDuration =
+						max(maxTransactionDuration, duration);
+			}
+			if (LOG.isLoggable(INFO)) {
+				LOG.info("Deleted " + result.deleted + " messages in "
+						+ duration + " ms");
+			}
+			if (result.deadline == NO_CLEANUP_DEADLINE) return;
+			if (result.deadline <= clock.currentTimeMillis()) {
+				// More messages are due, so delete them without waiting
+				scheduleNextChunk();
+			} else {
+				maybeScheduleTask(result.deadline);
 			}
 		} catch (DbException e) {
 			logException(LOG, WARNING, e);
 		}
 	}
 
-	private void deleteMessages(Transaction txn) throws DbException {
-		Map<GroupId, Collection<MessageId>> ids = db.getMessagesToDelete(txn);
+	private void scheduleNextChunk() {
+		CleanupTask task = new CleanupTask(clock.currentTimeMillis());
+		synchronized (lock) {
+			pending.add(task);
+		}
+		// Go to the back of the queue so that other tasks on the DB executor
+		// can run between chunks
+		dbExecutor.execute(() -> deleteMessagesAndScheduleNextTask(task));
+	}
+
+	private int deleteMessages(Transaction txn) throws DbException {
+		Map<GroupId, Collection<MessageId>> ids =
+				db.getMessagesToDelete(txn, MAX_MESSAGES_PER_TRANSACTION);
+		int deleted = 0;
 		for (Entry<GroupId, Collection<MessageId>> e : ids.entrySet()) {
 			GroupId groupId = e.getKey();
 			Collection<MessageId> messageIds = e.getValue();
-			if (LOG.isLoggable(INFO)) {
-				LOG.info(messageIds.size() + " messages to delete");
-			}
-			for (MessageId m : messageIds) db.stopCleanupTimer(txn, m);
+			db.stopCleanupTimers(txn, messageIds);
 			Group group = db.getGroup(txn, groupId);
 			ClientMajorVersion cv = new ClientMajorVersion(group.getClientId(),
 					group.getMajorVersion());
@@ -145,6 +183,49 @@ class CleanupManagerImpl implements CleanupManager, Service, EventListener {
 				throw new IllegalStateException("No cleanup hook for " + cv);
 			}
 			hook.deleteMessages(txn, groupId, messageIds);
+			deleted += messageIds.size();
+		}
+		return deleted;
+	}
+
+	/**
+	 * Returns the number of messages that have been deleted since the
+	 * service started.
+	 */
+	long getMessagesDeleted() {
+		synchronized (lock) {
+			return messagesDeleted;
+		}
+	}
+
+	/**
+	 * Returns the number of transactions that have been used for deleting
+	 * messages since the service started.
+	 */
+	long getTransactions() {
+		synchronized (lock) {
+			return transactions;
+		}
+	}
+
+	/**
+	 * Returns the duration in milliseconds of the longest transaction that
+	 * has been used for deleting messages since the service started.
+	 */
+	long getMaxTransactionDuration() {
+		synchronized (lock) {
+			return maxTransactionDuration;
+		}
+	}
+
+	private static class DeletionResult {
+
+		private final int deleted;
+		private final long deadline;
+
+		private DeletionResult(int deleted, long deadline) {
+			this.deleted = deleted;
+			this.deadline = deadline;
 		}
 	}
 
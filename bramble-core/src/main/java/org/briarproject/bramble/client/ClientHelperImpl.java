@@ -38,13 +38,13 @@ import org.briarproject.bramble.api.sync.MessageId;
 import org.briarproject.bramble.util.Base32;
 import org.briarproject.nullsafety.NotNullByDefault;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -164,6 +164,15 @@ class ClientHelperImpl implements ClientHelper {
 		return toList(db.getMessage(txn, m), canonical);
 	}
 
+	@Override
+	public Map<MessageId, BdfList> getMessagesAsLists(Transaction txn,
+			Collection<MessageId> m) throws DbException, FormatException {
+		Map<MessageId, BdfList> lists = new LinkedHashMap<>();
+		for (Message message : db.getMessages(txn, m).values())
+			lists.put(message.getId(), toList(message));
+		return lists;
+	}
+
 	@Override
 	public BdfDictionary getGroupMetadataAsDictionary(GroupId g)
 			throws DbException, FormatException {
@@ -290,8 +299,7 @@ class ClientHelperImpl implements ClientHelper {
 	@Override
 	public BdfDictionary toDictionary(byte[] b, int off, int len)
 			throws FormatException {
-		ByteArrayInputStream in = new ByteArrayInputStream(b, off, len);
-		BdfReader reader = bdfReaderFactory.createReader(in);
+		BdfReader reader = bdfReaderFactory.createReader(b, off, len, true);
 		try {
 			BdfDictionary dictionary = reader.readDictionary();
 			if (!reader.eof()) throw new FormatException();
@@ -324,8 +332,8 @@ class ClientHelperImpl implements ClientHelper {
 
 	private BdfList toList(byte[] b, int off, int len, boolean canonical)
 			throws FormatException {
-		ByteArrayInputStream in = new ByteArrayInputStream(b, off, len);
-		BdfReader reader = bdfReaderFactory.createReader(in, canonical);
+		BdfReader reader =
+				bdfReaderFactory.createReader(b, off, len, canonical);
 		try {
 			BdfList list = reader.readList();
 			if (!reader.eof()) throw new FormatException();
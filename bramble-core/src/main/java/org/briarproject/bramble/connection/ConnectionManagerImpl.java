@@ -20,6 +20,7 @@ import org.briarproject.bramble.api.transport.StreamWriterFactory;
 import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.security.SecureRandom;
+import java.util.Map;
 import java.util.concurrent.Executor;
 
 import javax.annotation.concurrent.Immutable;
@@ -113,6 +114,15 @@ class ConnectionManagerImpl implements ConnectionManager {
 				sessionRecord));
 	}
 
+	@Override
+	public void manageOutgoingConnections(TransportId t,
+			Map<ContactId, TransportConnectionWriter> writers) {
+		ioExecutor.execute(new OutgoingMultiContactSimplexSyncConnection(
+				keyManager, connectionRegistry, streamReaderFactory,
+				streamWriterFactory, syncSessionFactory,
+				transportPropertyManager, t, writers));
+	}
+
 	@Override
 	public void manageOutgoingConnection(ContactId c, TransportId t,
 			DuplexTransportConnection d) {
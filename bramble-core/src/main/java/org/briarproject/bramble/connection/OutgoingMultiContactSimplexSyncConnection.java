@@ -0,0 +1,128 @@
+package org.briarproject.bramble.connection;
+
+import org.briarproject.bramble.api.connection.ConnectionRegistry;
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.plugin.TransportConnectionWriter;
+import org.briarproject.bramble.api.plugin.TransportId;
+import org.briarproject.bramble.api.properties.TransportPropertyManager;
+import org.briarproject.bramble.api.sync.SyncSessionFactory;
+import org.briarproject.bramble.api.transport.KeyManager;
+import org.briarproject.bramble.api.transport.StreamContext;
+import org.briarproject.bramble.api.transport.StreamReaderFactory;
+import org.briarproject.bramble.api.transport.StreamWriter;
+import org.briarproject.bramble.api.transport.StreamWriterFactory;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import static java.lang.Math.min;
+import static java.util.logging.Level.WARNING;
+import static org.briarproject.bramble.util.LogUtils.logException;
+
+/**
+ * Writes a simplex stream to each of several contacts over the same
+ * transport, using a single sync session so that each message is only
+ * read from the database once.
+ */
+@NotNullByDefault
+class OutgoingMultiContactSimplexSyncConnection extends SyncConnection
+		implements Runnable {
+
+	private final TransportId transportId;
+	private final Map<ContactId, TransportConnectionWriter> writers;
+
+	OutgoingMultiContactSimplexSyncConnection(KeyManager keyManager,
+			ConnectionRegistry connectionRegistry,
+			StreamReaderFactory streamReaderFactory,
+			StreamWriterFactory streamWriterFactory,
+			SyncSessionFactory syncSessionFactory,
+			TransportPropertyManager transportPropertyManager,
+			TransportId transportId,
+			Map<ContactId, TransportConnectionWriter> writers) {
+		super(keyManager, connectionRegistry, streamReaderFactory,
+				streamWriterFactory, syncSessionFactory,
+				transportPropertyManager);
+		this.transportId = transportId;
+		this.writers = writers;
+	}
+
+	@Override
+	public void run() {
+		Map<ContactId, TrackingStreamWriter> streamWriters =
+				new LinkedHashMap<>();
+		long maxLatency = Long.MAX_VALUE;
+		for (Entry<ContactId, TransportConnectionWriter> e :
+				writers.entrySet()) {
+			ContactId c = e.getKey();
+			TransportConnectionWriter w = e.getValue();
+			// Allocate a stream context
+			StreamContext ctx = allocateStreamContext(c, transportId);
+			if (ctx == null) {
+				LOG.warning("Could not allocate stream context");
+				disposeOnError(w);
+				continue;
+			}
+			try {
+				streamWriters.put(c, new TrackingStreamWriter(
+						streamWriterFactory.createStreamWriter(
+								w.getOutputStream(), ctx)));
+				maxLatency = min(maxLatency, w.getMaxLatency());
+			} catch (IOException ex) {
+				logException(LOG, WARNING, ex);
+				disposeOnError(w);
+			}
+		}
+		if (streamWriters.isEmpty()) return;
+		try {
+			// Create and run the outgoing session
+			syncSessionFactory.createSimplexOutgoingSession(transportId,
+					maxLatency, new LinkedHashMap<>(streamWriters)).run();
+		} catch (IOException e) {
+			logException(LOG, WARNING, e);
+		}
+		// Streams that failed didn't reach the end of stream marker
+		for (Entry<ContactId, TrackingStreamWriter> e :
+				streamWriters.entrySet()) {
+			TransportConnectionWriter w = writers.get(e.getKey());
+			if (e.getValue().ended) {
+				try {
+					w.dispose(false);
+				} catch (IOException ex) {
+					logException(LOG, WARNING, ex);
+				}
+			} else {
+				disposeOnError(w);
+			}
+		}
+	}
+
+	/**
+	 * A {@link StreamWriter} that records whether the end of stream marker
+	 * was sent successfully.
+	 */
+	private static class TrackingStreamWriter implements StreamWriter {
+
+		private final StreamWriter delegate;
+
+		private volatile boolean ended = false;
+
+		private TrackingStreamWriter(StreamWriter delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public OutputStream getOutputStream() {
+			return delegate.getOutputStream();
+		}
+
+		@Override
+		public void sendEndOfStream() throws IOException {
+			delegate.sendEndOfStream();
+			ended = true;
+		}
+	}
+}
@@ -58,7 +58,7 @@ class SyncConnection extends Connection {
 		InputStream streamReader = streamReaderFactory.createStreamReader(
 				r.getInputStream(), ctx);
 		ContactId c = requireNonNull(ctx.getContactId());
-		return syncSessionFactory
-				.createIncomingSession(c, streamReader, handler);
+		return syncSessionFactory.createIncomingSession(c,
+				ctx.getTransportId(), streamReader, handler);
 	}
 }
@@ -474,6 +474,52 @@ class CryptoComponentImpl implements CryptoComponent {
 				ciphertext[0] == PBKDF_FORMAT_SCRYPT_STRENGTHENED;
 	}
 
+	@Override
+	public byte[] encryptWithKey(byte[] input, SecretKey key) {
+		AuthenticatedCipher cipher = new XSalsa20Poly1305AuthenticatedCipher();
+		// Generate a random IV
+		byte[] iv = new byte[STORAGE_IV_BYTES];
+		secureRandom.nextBytes(iv);
+		// The output contains the IV, ciphertext and MAC
+		byte[] output =
+				new byte[iv.length + input.length + cipher.getMacBytes()];
+		arraycopy(iv, 0, output, 0, iv.length);
+		try {
+			cipher.init(true, key, iv);
+			cipher.process(input, 0, input.length, output, iv.length);
+			return output;
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public byte[] decryptWithKey(byte[] input, SecretKey key)
+			throws DecryptionException {
+		AuthenticatedCipher cipher = new XSalsa20Poly1305AuthenticatedCipher();
+		int macBytes = cipher.getMacBytes();
+		// The input contains the IV, ciphertext and MAC
+		if (input.length < STORAGE_IV_BYTES + macBytes)
+			throw new DecryptionException(INVALID_CIPHERTEXT);
+		byte[] iv = new byte[STORAGE_IV_BYTES];
+		arraycopy(input, 0, iv, 0, iv.length);
+		// Initialise the cipher
+		try {
+			cipher.init(false, key, iv);
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException(e);
+		}
+		// Try to decrypt the ciphertext (may be invalid)
+		try {
+			int inputLen = input.length - iv.length;
+			byte[] output = new byte[inputLen - macBytes];
+			cipher.process(input, iv.length, inputLen, output, 0);
+			return output;
+		} catch (GeneralSecurityException e) {
+			throw new DecryptionException(INVALID_CIPHERTEXT);
+		}
+	}
+
 	@Override
 	public byte[] encryptToKey(PublicKey publicKey, byte[] plaintext) {
 		try {
@@ -5,8 +5,11 @@ import org.briarproject.nullsafety.NotNullByDefault;
 
 import static org.briarproject.bramble.api.transport.TransportConstants.FRAME_HEADER_PLAINTEXT_LENGTH;
 import static org.briarproject.bramble.api.transport.TransportConstants.FRAME_NONCE_LENGTH;
+import static org.briarproject.bramble.api.transport.TransportConstants.LARGE_FRAME_HEADER_PLAINTEXT_LENGTH;
+import static org.briarproject.bramble.api.transport.TransportConstants.MAX_LARGE_PAYLOAD_LENGTH;
 import static org.briarproject.bramble.api.transport.TransportConstants.MAX_PAYLOAD_LENGTH;
 import static org.briarproject.bramble.util.ByteUtils.INT_16_BYTES;
+import static org.briarproject.bramble.util.ByteUtils.INT_32_BYTES;
 import static org.briarproject.bramble.util.ByteUtils.INT_64_BYTES;
 
 @NotNullByDefault
@@ -34,6 +37,23 @@ class FrameEncoder {
 		if (finalFrame) dest[0] |= 0x80;
 	}
 
+	static void encodeLargeHeader(byte[] dest, boolean finalFrame,
+			int payloadLength, int paddingLength) {
+		if (dest.length < LARGE_FRAME_HEADER_PLAINTEXT_LENGTH)
+			throw new IllegalArgumentException();
+		if (payloadLength < 0) throw new IllegalArgumentException();
+		if (paddingLength < 0) throw new IllegalArgumentException();
+		if (payloadLength + paddingLength > MAX_LARGE_PAYLOAD_LENGTH)
+			throw new IllegalArgumentException();
+		ByteUtils.writeUint32(payloadLength, dest, 0);
+		ByteUtils.writeUint32(paddingLength, dest, INT_32_BYTES);
+		if (finalFrame) dest[0] |= 0x80;
+	}
+
+	/**
+	 * Returns true if the given frame header, which may be a normal or large
+	 * frame header, is the header of the final frame.
+	 */
 	static boolean isFinalFrame(byte[] header) {
 		if (header.length < FRAME_HEADER_PLAINTEXT_LENGTH)
 			throw new IllegalArgumentException();
@@ -51,4 +71,16 @@ class FrameEncoder {
 			throw new IllegalArgumentException();
 		return ByteUtils.readUint16(header, INT_16_BYTES);
 	}
+
+	static int getLargePayloadLength(byte[] header) {
+		if (header.length < LARGE_FRAME_HEADER_PLAINTEXT_LENGTH)
+			throw new IllegalArgumentException();
+		return (int) (ByteUtils.readUint32(header, 0) & 0x7FFFFFFF);
+	}
+
+	static long getLargePaddingLength(byte[] header) {
+		if (header.length < LARGE_FRAME_HEADER_PLAINTEXT_LENGTH)
+			throw new IllegalArgumentException();
+		return ByteUtils.readUint32(header, INT_32_BYTES);
+	}
 }
@@ -27,8 +27,9 @@ class StreamDecrypterFactoryImpl implements StreamDecrypterFactory {
 	public StreamDecrypter createStreamDecrypter(InputStream in,
 			StreamContext ctx) {
 		AuthenticatedCipher cipher = cipherProvider.get();
+		// The sender chooses whether to use large frames
 		return new StreamDecrypterImpl(in, cipher, ctx.getStreamNumber(),
-				ctx.getHeaderKey());
+				ctx.getHeaderKey(), true);
 	}
 
 	@Override
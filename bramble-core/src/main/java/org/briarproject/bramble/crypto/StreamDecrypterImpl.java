@@ -15,10 +15,14 @@ import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
 import static org.briarproject.bramble.api.transport.TransportConstants.FRAME_HEADER_LENGTH;
-import static org.briarproject.bramble.api.transport.TransportConstants.FRAME_HEADER_PLAINTEXT_LENGTH;
 import static org.briarproject.bramble.api.transport.TransportConstants.FRAME_NONCE_LENGTH;
+import static org.briarproject.bramble.api.transport.TransportConstants.LARGE_FRAME_HEADER_LENGTH;
+import static org.briarproject.bramble.api.transport.TransportConstants.LARGE_FRAME_HEADER_PLAINTEXT_LENGTH;
+import static org.briarproject.bramble.api.transport.TransportConstants.LARGE_FRAME_PROTOCOL_VERSION;
 import static org.briarproject.bramble.api.transport.TransportConstants.MAC_LENGTH;
 import static org.briarproject.bramble.api.transport.TransportConstants.MAX_FRAME_LENGTH;
+import static org.briarproject.bramble.api.transport.TransportConstants.MAX_LARGE_FRAME_LENGTH;
+import static org.briarproject.bramble.api.transport.TransportConstants.MAX_LARGE_PAYLOAD_LENGTH;
 import static org.briarproject.bramble.api.transport.TransportConstants.MAX_PAYLOAD_LENGTH;
 import static org.briarproject.bramble.api.transport.TransportConstants.PROTOCOL_VERSION;
 import static org.briarproject.bramble.api.transport.TransportConstants.STREAM_HEADER_LENGTH;
@@ -35,23 +39,40 @@ class StreamDecrypterImpl implements StreamDecrypter {
 	private final AuthenticatedCipher cipher;
 	private final long streamNumber;
 	private final SecretKey streamHeaderKey;
-	private final byte[] frameNonce, frameHeader, frameCiphertext;
+	private final boolean acceptLargeFrames;
+	private final byte[] frameNonce, frameHeader;
 
 	@Nullable
 	private SecretKey frameKey;
+	private byte[] frameCiphertext;
+	private boolean largeFrames;
 	private long frameNumber;
 	private boolean finalFrame;
 
 	StreamDecrypterImpl(InputStream in, AuthenticatedCipher cipher,
 			long streamNumber, SecretKey streamHeaderKey) {
+		this(in, cipher, streamNumber, streamHeaderKey, false);
+	}
+
+	/**
+	 * @param acceptLargeFrames True if the stream may use large frames. In
+	 * that case the buffers passed to {@link #readFrame(byte[])} must be big
+	 * enough for a full-size large frame.
+	 */
+	StreamDecrypterImpl(InputStream in, AuthenticatedCipher cipher,
+			long streamNumber, SecretKey streamHeaderKey,
+			boolean acceptLargeFrames) {
 		this.in = in;
 		this.cipher = cipher;
 		this.streamNumber = streamNumber;
 		this.streamHeaderKey = streamHeaderKey;
+		this.acceptLargeFrames = acceptLargeFrames;
 		frameNonce = new byte[FRAME_NONCE_LENGTH];
-		frameHeader = new byte[FRAME_HEADER_PLAINTEXT_LENGTH];
+		frameHeader = new byte[LARGE_FRAME_HEADER_PLAINTEXT_LENGTH];
+		// Replaced with a bigger buffer if the stream uses large frames
 		frameCiphertext = new byte[MAX_FRAME_LENGTH];
 		frameKey = null;
+		largeFrames = false;
 		frameNumber = 0;
 		finalFrame = false;
 	}
@@ -59,18 +80,22 @@ class StreamDecrypterImpl implements StreamDecrypter {
 	@Override
 	public int readFrame(byte[] payload) throws IOException {
 		// The buffer must be big enough for a full-size frame
-		if (payload.length < MAX_PAYLOAD_LENGTH)
+		if (payload.length < (acceptLargeFrames ? MAX_LARGE_PAYLOAD_LENGTH
+				: MAX_PAYLOAD_LENGTH)) {
 			throw new IllegalArgumentException();
+		}
 		if (finalFrame) return -1;
 		// Don't allow the frame counter to wrap
 		if (frameNumber < 0) throw new IOException();
 		// Read the stream header if required
 		if (frameKey == null) readStreamHeader();
 		// Read the frame header
+		int frameHeaderLength = largeFrames ? LARGE_FRAME_HEADER_LENGTH
+				: FRAME_HEADER_LENGTH;
 		int offset = 0;
-		while (offset < FRAME_HEADER_LENGTH) {
+		while (offset < frameHeaderLength) {
 			int read = in.read(frameCiphertext, offset,
-					FRAME_HEADER_LENGTH - offset);
+					frameHeaderLength - offset);
 			if (read == -1) throw new EOFException();
 			offset += read;
 		}
@@ -79,20 +104,29 @@ class StreamDecrypterImpl implements StreamDecrypter {
 		try {
 			cipher.init(false, frameKey, frameNonce);
 			int decrypted = cipher.process(frameCiphertext, 0,
-					FRAME_HEADER_LENGTH, frameHeader, 0);
-			if (decrypted != FRAME_HEADER_PLAINTEXT_LENGTH)
+					frameHeaderLength, frameHeader, 0);
+			if (decrypted != frameHeaderLength - MAC_LENGTH)
 				throw new RuntimeException();
 		} catch (GeneralSecurityException e) {
 			throw new FormatException();
 		}
 		// Decode and validate the frame header
 		finalFrame = FrameEncoder.isFinalFrame(frameHeader);
-		int payloadLength = FrameEncoder.getPayloadLength(frameHeader);
-		int paddingLength = FrameEncoder.getPaddingLength(frameHeader);
-		if (payloadLength + paddingLength > MAX_PAYLOAD_LENGTH)
-			throw new FormatException();
+		int payloadLength, paddingLength;
+		if (largeFrames) {
+			payloadLength = FrameEncoder.getLargePayloadLength(frameHeader);
+			long padding = FrameEncoder.getLargePaddingLength(frameHeader);
+			if (payloadLength + padding > MAX_LARGE_PAYLOAD_LENGTH)
+				throw new FormatException();
+			paddingLength = (int) padding;
+		} else {
+			payloadLength = FrameEncoder.getPayloadLength(frameHeader);
+			paddingLength = FrameEncoder.getPaddingLength(frameHeader);
+			if (payloadLength + paddingLength > MAX_PAYLOAD_LENGTH)
+				throw new FormatException();
+		}
 		// Read the payload and padding
-		int frameLength = FRAME_HEADER_LENGTH + payloadLength + paddingLength
+		int frameLength = frameHeaderLength + payloadLength + paddingLength
 				+ MAC_LENGTH;
 		while (offset < frameLength) {
 			int read = in.read(frameCiphertext, offset, frameLength - offset);
@@ -103,7 +137,7 @@ class StreamDecrypterImpl implements StreamDecrypter {
 		FrameEncoder.encodeNonce(frameNonce, frameNumber, false);
 		try {
 			cipher.init(false, frameKey, frameNonce);
-			int decrypted = cipher.process(frameCiphertext, FRAME_HEADER_LENGTH,
+			int decrypted = cipher.process(frameCiphertext, frameHeaderLength,
 					payloadLength + paddingLength + MAC_LENGTH, payload, 0);
 			if (decrypted != payloadLength + paddingLength)
 				throw new RuntimeException();
@@ -147,8 +181,13 @@ class StreamDecrypterImpl implements StreamDecrypter {
 		// Check the protocol version
 		int receivedProtocolVersion =
 				ByteUtils.readUint16(streamHeaderPlaintext, 0);
-		if (receivedProtocolVersion != PROTOCOL_VERSION)
+		if (receivedProtocolVersion == LARGE_FRAME_PROTOCOL_VERSION
+				&& acceptLargeFrames) {
+			largeFrames = true;
+			frameCiphertext = new byte[MAX_LARGE_FRAME_LENGTH];
+		} else if (receivedProtocolVersion != PROTOCOL_VERSION) {
 			throw new FormatException();
+		}
 		// Check the stream number
 		long receivedStreamNumber = ByteUtils.readUint64(streamHeaderPlaintext,
 				INT_16_BYTES);
@@ -47,7 +47,8 @@ class StreamEncrypterFactoryImpl implements StreamEncrypterFactory {
 		crypto.getSecureRandom().nextBytes(streamHeaderNonce);
 		SecretKey frameKey = crypto.generateSecretKey();
 		return new StreamEncrypterImpl(out, cipher, streamNumber, tag,
-				streamHeaderNonce, ctx.getHeaderKey(), frameKey);
+				streamHeaderNonce, ctx.getHeaderKey(), frameKey,
+				ctx.useLargeFrames());
 	}
 
 	@Override
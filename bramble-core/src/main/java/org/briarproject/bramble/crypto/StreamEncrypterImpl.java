@@ -15,8 +15,13 @@ import javax.annotation.concurrent.NotThreadSafe;
 import static org.briarproject.bramble.api.transport.TransportConstants.FRAME_HEADER_LENGTH;
 import static org.briarproject.bramble.api.transport.TransportConstants.FRAME_HEADER_PLAINTEXT_LENGTH;
 import static org.briarproject.bramble.api.transport.TransportConstants.FRAME_NONCE_LENGTH;
+import static org.briarproject.bramble.api.transport.TransportConstants.LARGE_FRAME_HEADER_LENGTH;
+import static org.briarproject.bramble.api.transport.TransportConstants.LARGE_FRAME_HEADER_PLAINTEXT_LENGTH;
+import static org.briarproject.bramble.api.transport.TransportConstants.LARGE_FRAME_PROTOCOL_VERSION;
 import static org.briarproject.bramble.api.transport.TransportConstants.MAC_LENGTH;
 import static org.briarproject.bramble.api.transport.TransportConstants.MAX_FRAME_LENGTH;
+import static org.briarproject.bramble.api.transport.TransportConstants.MAX_LARGE_FRAME_LENGTH;
+import static org.briarproject.bramble.api.transport.TransportConstants.MAX_LARGE_PAYLOAD_LENGTH;
 import static org.briarproject.bramble.api.transport.TransportConstants.MAX_PAYLOAD_LENGTH;
 import static org.briarproject.bramble.api.transport.TransportConstants.PROTOCOL_VERSION;
 import static org.briarproject.bramble.api.transport.TransportConstants.STREAM_HEADER_LENGTH;
@@ -36,6 +41,9 @@ class StreamEncrypterImpl implements StreamEncrypter {
 	@Nullable
 	private final byte[] tag;
 	private final byte[] streamHeaderNonce;
+	private final boolean largeFrames;
+	private final int frameHeaderPlaintextLength, frameHeaderLength;
+	private final int maxPayloadLength;
 	private final byte[] frameNonce, frameHeader;
 	private final byte[] framePlaintext, frameCiphertext;
 
@@ -45,6 +53,14 @@ class StreamEncrypterImpl implements StreamEncrypter {
 	StreamEncrypterImpl(OutputStream out, AuthenticatedCipher cipher,
 			long streamNumber, @Nullable byte[] tag, byte[] streamHeaderNonce,
 			SecretKey streamHeaderKey, SecretKey frameKey) {
+		this(out, cipher, streamNumber, tag, streamHeaderNonce,
+				streamHeaderKey, frameKey, false);
+	}
+
+	StreamEncrypterImpl(OutputStream out, AuthenticatedCipher cipher,
+			long streamNumber, @Nullable byte[] tag, byte[] streamHeaderNonce,
+			SecretKey streamHeaderKey, SecretKey frameKey,
+			boolean largeFrames) {
 		this.out = out;
 		this.cipher = cipher;
 		this.streamNumber = streamNumber;
@@ -52,10 +68,21 @@ class StreamEncrypterImpl implements StreamEncrypter {
 		this.streamHeaderNonce = streamHeaderNonce;
 		this.streamHeaderKey = streamHeaderKey;
 		this.frameKey = frameKey;
+		this.largeFrames = largeFrames;
+		if (largeFrames) {
+			frameHeaderPlaintextLength = LARGE_FRAME_HEADER_PLAINTEXT_LENGTH;
+			frameHeaderLength = LARGE_FRAME_HEADER_LENGTH;
+			maxPayloadLength = MAX_LARGE_PAYLOAD_LENGTH;
+		} else {
+			frameHeaderPlaintextLength = FRAME_HEADER_PLAINTEXT_LENGTH;
+			frameHeaderLength = FRAME_HEADER_LENGTH;
+			maxPayloadLength = MAX_PAYLOAD_LENGTH;
+		}
 		frameNonce = new byte[FRAME_NONCE_LENGTH];
-		frameHeader = new byte[FRAME_HEADER_PLAINTEXT_LENGTH];
-		framePlaintext = new byte[MAX_PAYLOAD_LENGTH];
-		frameCiphertext = new byte[MAX_FRAME_LENGTH];
+		frameHeader = new byte[frameHeaderPlaintextLength];
+		framePlaintext = new byte[maxPayloadLength];
+		frameCiphertext = new byte[largeFrames ? MAX_LARGE_FRAME_LENGTH
+				: MAX_FRAME_LENGTH];
 		frameNumber = 0;
 		writeTag = (tag != null);
 		writeStreamHeader = true;
@@ -66,7 +93,7 @@ class StreamEncrypterImpl implements StreamEncrypter {
 			int paddingLength, boolean finalFrame) throws IOException {
 		if (payloadLength < 0 || paddingLength < 0)
 			throw new IllegalArgumentException();
-		if (payloadLength + paddingLength > MAX_PAYLOAD_LENGTH)
+		if (payloadLength + paddingLength > maxPayloadLength)
 			throw new IllegalArgumentException();
 		// Don't allow the frame counter to wrap
 		if (frameNumber < 0) throw new IOException();
@@ -75,15 +102,20 @@ class StreamEncrypterImpl implements StreamEncrypter {
 		// Write the stream header if required
 		if (writeStreamHeader) writeStreamHeader();
 		// Encode the frame header
-		FrameEncoder.encodeHeader(frameHeader, finalFrame, payloadLength,
-				paddingLength);
+		if (largeFrames) {
+			FrameEncoder.encodeLargeHeader(frameHeader, finalFrame,
+					payloadLength, paddingLength);
+		} else {
+			FrameEncoder.encodeHeader(frameHeader, finalFrame, payloadLength,
+					paddingLength);
+		}
 		// Encrypt and authenticate the frame header
 		FrameEncoder.encodeNonce(frameNonce, frameNumber, true);
 		try {
 			cipher.init(true, frameKey, frameNonce);
 			int encrypted = cipher.process(frameHeader, 0,
-					FRAME_HEADER_PLAINTEXT_LENGTH, frameCiphertext, 0);
-			if (encrypted != FRAME_HEADER_LENGTH) throw new RuntimeException();
+					frameHeaderPlaintextLength, frameCiphertext, 0);
+			if (encrypted != frameHeaderLength) throw new RuntimeException();
 		} catch (GeneralSecurityException badCipher) {
 			throw new RuntimeException(badCipher);
 		}
@@ -97,14 +129,14 @@ class StreamEncrypterImpl implements StreamEncrypter {
 			cipher.init(true, frameKey, frameNonce);
 			int encrypted = cipher.process(framePlaintext, 0,
 					payloadLength + paddingLength, frameCiphertext,
-					FRAME_HEADER_LENGTH);
+					frameHeaderLength);
 			if (encrypted != payloadLength + paddingLength + MAC_LENGTH)
 				throw new RuntimeException();
 		} catch (GeneralSecurityException badCipher) {
 			throw new RuntimeException(badCipher);
 		}
 		// Write the frame
-		out.write(frameCiphertext, 0, FRAME_HEADER_LENGTH + payloadLength
+		out.write(frameCiphertext, 0, frameHeaderLength + payloadLength
 				+ paddingLength + MAC_LENGTH);
 		frameNumber++;
 	}
@@ -118,7 +150,9 @@ class StreamEncrypterImpl implements StreamEncrypter {
 	private void writeStreamHeader() throws IOException {
 		// The header contains the protocol version, stream number and frame key
 		byte[] streamHeaderPlaintext = new byte[STREAM_HEADER_PLAINTEXT_LENGTH];
-		ByteUtils.writeUint16(PROTOCOL_VERSION, streamHeaderPlaintext, 0);
+		int protocolVersion =
+				largeFrames ? LARGE_FRAME_PROTOCOL_VERSION : PROTOCOL_VERSION;
+		ByteUtils.writeUint16(protocolVersion, streamHeaderPlaintext, 0);
 		ByteUtils.writeUint64(streamNumber, streamHeaderPlaintext,
 				INT_16_BYTES);
 		System.arraycopy(frameKey.getBytes(), 0, streamHeaderPlaintext,
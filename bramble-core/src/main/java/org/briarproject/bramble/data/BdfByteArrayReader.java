@@ -0,0 +1,439 @@
+package org.briarproject.bramble.data;
+
+import org.briarproject.bramble.api.FormatException;
+import org.briarproject.bramble.api.data.BdfDictionary;
+import org.briarproject.bramble.api.data.BdfList;
+import org.briarproject.bramble.api.data.BdfReader;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.nio.charset.Charset;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static java.util.Arrays.copyOfRange;
+import static org.briarproject.bramble.api.data.BdfDictionary.NULL_VALUE;
+import static org.briarproject.bramble.data.Types.DICTIONARY;
+import static org.briarproject.bramble.data.Types.END;
+import static org.briarproject.bramble.data.Types.FALSE;
+import static org.briarproject.bramble.data.Types.FLOAT_64;
+import static org.briarproject.bramble.data.Types.INT_16;
+import static org.briarproject.bramble.data.Types.INT_32;
+import static org.briarproject.bramble.data.Types.INT_64;
+import static org.briarproject.bramble.data.Types.INT_8;
+import static org.briarproject.bramble.data.Types.LIST;
+import static org.briarproject.bramble.data.Types.NULL;
+import static org.briarproject.bramble.data.Types.RAW_16;
+import static org.briarproject.bramble.data.Types.RAW_32;
+import static org.briarproject.bramble.data.Types.RAW_8;
+import static org.briarproject.bramble.data.Types.STRING_16;
+import static org.briarproject.bramble.data.Types.STRING_32;
+import static org.briarproject.bramble.data.Types.STRING_8;
+import static org.briarproject.bramble.data.Types.TRUE;
+import static org.briarproject.bramble.util.StringUtils.fromUtf8;
+
+/**
+ * A {@link BdfReader} that reads directly from a byte array, without copying
+ * the input into an intermediate buffer. The reader can be
+ * {@link #reset(byte[], int, int) reset} to read from another array, so one
+ * reader can be used to parse many small values.
+ */
+@NotThreadSafe
+@NotNullByDefault
+final class BdfByteArrayReader implements BdfReader {
+
+	private static final byte[] EMPTY_BUFFER = new byte[0];
+	private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+	private final int nestedLimit, maxBufferSize;
+	private final boolean canonical;
+
+	private byte[] in;
+	private int pos, end;
+
+	BdfByteArrayReader(byte[] in, int off, int len, int nestedLimit,
+			int maxBufferSize, boolean canonical) {
+		this.nestedLimit = nestedLimit;
+		this.maxBufferSize = maxBufferSize;
+		this.canonical = canonical;
+		reset(in, off, len);
+	}
+
+	/**
+	 * Resets the reader to read from the given array.
+	 */
+	void reset(byte[] in, int off, int len) {
+		if (off < 0 || len < 0 || off + len > in.length)
+			throw new IllegalArgumentException();
+		this.in = in;
+		pos = off;
+		end = off + len;
+	}
+
+	private int next() {
+		return in[pos];
+	}
+
+	private void requireBytes(int length) throws FormatException {
+		if (length < 0 || length > end - pos) throw new FormatException();
+	}
+
+	private void skip(int length) throws FormatException {
+		requireBytes(length);
+		pos += length;
+	}
+
+	/**
+	 * Reads the next object, which may be of any type.
+	 */
+	Object readObject() throws FormatException {
+		return readObject(1);
+	}
+
+	private Object readObject(int level) throws FormatException {
+		if (hasNull()) {
+			readNull();
+			return NULL_VALUE;
+		}
+		if (hasBoolean()) return readBoolean();
+		if (hasLong()) return readLong();
+		if (hasDouble()) return readDouble();
+		if (hasString()) return readString();
+		if (hasRaw()) return readRaw();
+		if (hasList()) return readList(level);
+		if (hasDictionary()) return readDictionary(level);
+		throw new FormatException();
+	}
+
+	private boolean isAscii(int off, int length) {
+		for (int i = off; i < off + length; i++) if (in[i] < 0) return false;
+		return true;
+	}
+
+	private void checkKeyOrder(@Nullable String prevKey, String key)
+			throws FormatException {
+		if (canonical && prevKey != null && key.compareTo(prevKey) <= 0) {
+			// Keys not unique and sorted
+			throw new FormatException();
+		}
+	}
+
+	private void skipObject() throws FormatException {
+		if (hasNull()) skipNull();
+		else if (hasBoolean()) skipBoolean();
+		else if (hasLong()) skipLong();
+		else if (hasDouble()) skipDouble();
+		else if (hasString()) skipString();
+		else if (hasRaw()) skipRaw();
+		else if (hasList()) skipList();
+		else if (hasDictionary()) skipDictionary();
+		else throw new FormatException();
+	}
+
+	@Override
+	public boolean eof() {
+		return pos == end;
+	}
+
+	@Override
+	public void close() {
+	}
+
+	@Override
+	public boolean hasNull() {
+		return pos < end && next() == NULL;
+	}
+
+	@Override
+	public void readNull() throws FormatException {
+		if (!hasNull()) throw new FormatException();
+		pos++;
+	}
+
+	@Override
+	public void skipNull() throws FormatException {
+		readNull();
+	}
+
+	@Override
+	public boolean hasBoolean() {
+		return pos < end && (next() == FALSE || next() == TRUE);
+	}
+
+	@Override
+	public boolean readBoolean() throws FormatException {
+		if (!hasBoolean()) throw new FormatException();
+		return in[pos++] == TRUE;
+	}
+
+	@Override
+	public void skipBoolean() throws FormatException {
+		readBoolean();
+	}
+
+	@Override
+	public boolean hasLong() {
+		if (pos == end) return false;
+		int next = next();
+		return next == INT_8 || next == INT_16 || next == INT_32 ||
+				next == INT_64;
+	}
+
+	@Override
+	public long readLong() throws FormatException {
+		if (!hasLong()) throw new FormatException();
+		return readLongValue();
+	}
+
+	private long readLongValue() throws FormatException {
+		int type = in[pos++];
+		if (type == INT_8) return readInt8();
+		if (type == INT_16) return readInt16();
+		if (type == INT_32) return readInt32();
+		return readInt64();
+	}
+
+	private int readInt8() throws FormatException {
+		requireBytes(1);
+		return in[pos++];
+	}
+
+	private short readInt16() throws FormatException {
+		requireBytes(2);
+		short value = (short) (((in[pos] & 0xFF) << 8) + (in[pos + 1] & 0xFF));
+		pos += 2;
+		if (canonical && value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			// Value could have been encoded as an INT_8
+			throw new FormatException();
+		}
+		return value;
+	}
+
+	private int readInt32() throws FormatException {
+		requireBytes(4);
+		int value = 0;
+		for (int i = 0; i < 4; i++)
+			value |= (in[pos + i] & 0xFF) << (24 - i * 8);
+		pos += 4;
+		if (canonical && value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			// Value could have been encoded as an INT_16
+			throw new FormatException();
+		}
+		return value;
+	}
+
+	private long readInt64() throws FormatException {
+		long value = readRawInt64();
+		if (canonical && value >= Integer.MIN_VALUE &&
+				value <= Integer.MAX_VALUE) {
+			// Value could have been encoded as an INT_32
+			throw new FormatException();
+		}
+		return value;
+	}
+
+	private long readRawInt64() throws FormatException {
+		requireBytes(8);
+		long value = 0;
+		for (int i = 0; i < 8; i++)
+			value |= (in[pos + i] & 0xFFL) << (56 - i * 8);
+		pos += 8;
+		return value;
+	}
+
+	@Override
+	public void skipLong() throws FormatException {
+		if (!hasLong()) throw new FormatException();
+		int type = in[pos++];
+		if (type == INT_8) skip(1);
+		else if (type == INT_16) skip(2);
+		else if (type == INT_32) skip(4);
+		else skip(8);
+	}
+
+	@Override
+	public boolean hasInt() {
+		if (pos == end) return false;
+		int next = next();
+		return next == INT_8 || next == INT_16 || next == INT_32;
+	}
+
+	@Override
+	public int readInt() throws FormatException {
+		if (!hasInt()) throw new FormatException();
+		return (int) readLongValue();
+	}
+
+	@Override
+	public void skipInt() throws FormatException {
+		if (!hasInt()) throw new FormatException();
+		skipLong();
+	}
+
+	@Override
+	public boolean hasDouble() {
+		return pos < end && next() == FLOAT_64;
+	}
+
+	@Override
+	public double readDouble() throws FormatException {
+		if (!hasDouble()) throw new FormatException();
+		pos++;
+		return Double.longBitsToDouble(readRawInt64());
+	}
+
+	@Override
+	public void skipDouble() throws FormatException {
+		if (!hasDouble()) throw new FormatException();
+		pos++;
+		skip(8);
+	}
+
+	@Override
+	public boolean hasString() {
+		if (pos == end) return false;
+		int next = next();
+		return next == STRING_8 || next == STRING_16 || next == STRING_32;
+	}
+
+	@Override
+	public String readString() throws FormatException {
+		if (!hasString()) throw new FormatException();
+		pos++;
+		int length = readStringLength();
+		if (length < 0 || length > maxBufferSize) throw new FormatException();
+		if (length == 0) return "";
+		requireBytes(length);
+		// Fast path: ASCII is always valid UTF-8
+		String s = isAscii(pos, length) ? new String(in, pos, length, US_ASCII)
+				: fromUtf8(in, pos, length);
+		pos += length;
+		return s;
+	}
+
+	private int readStringLength() throws FormatException {
+		int type = in[pos - 1];
+		if (type == STRING_8) return readInt8();
+		if (type == STRING_16) return readInt16();
+		if (type == STRING_32) return readInt32();
+		throw new FormatException();
+	}
+
+	@Override
+	public void skipString() throws FormatException {
+		if (!hasString()) throw new FormatException();
+		pos++;
+		int length = readStringLength();
+		skip(length);
+	}
+
+	@Override
+	public boolean hasRaw() {
+		if (pos == end) return false;
+		int next = next();
+		return next == RAW_8 || next == RAW_16 || next == RAW_32;
+	}
+
+	@Override
+	public byte[] readRaw() throws FormatException {
+		if (!hasRaw()) throw new FormatException();
+		pos++;
+		int length = readRawLength();
+		if (length < 0 || length > maxBufferSize) throw new FormatException();
+		if (length == 0) return EMPTY_BUFFER;
+		requireBytes(length);
+		byte[] b = copyOfRange(in, pos, pos + length);
+		pos += length;
+		return b;
+	}
+
+	private int readRawLength() throws FormatException {
+		int type = in[pos - 1];
+		if (type == RAW_8) return readInt8();
+		if (type == RAW_16) return readInt16();
+		if (type == RAW_32) return readInt32();
+		throw new FormatException();
+	}
+
+	@Override
+	public void skipRaw() throws FormatException {
+		if (!hasRaw()) throw new FormatException();
+		pos++;
+		int length = readRawLength();
+		skip(length);
+	}
+
+	@Override
+	public boolean hasList() {
+		return pos < end && next() == LIST;
+	}
+
+	@Override
+	public BdfList readList() throws FormatException {
+		return readList(1);
+	}
+
+	private BdfList readList(int level) throws FormatException {
+		if (!hasList()) throw new FormatException();
+		if (level > nestedLimit) throw new FormatException();
+		pos++;
+		BdfList list = new BdfList();
+		while (!hasEnd()) list.add(readObject(level + 1));
+		readEnd();
+		return list;
+	}
+
+	private boolean hasEnd() {
+		return pos < end && next() == END;
+	}
+
+	private void readEnd() throws FormatException {
+		if (!hasEnd()) throw new FormatException();
+		pos++;
+	}
+
+	@Override
+	public void skipList() throws FormatException {
+		if (!hasList()) throw new FormatException();
+		pos++;
+		while (!hasEnd()) skipObject();
+		readEnd();
+	}
+
+	@Override
+	public boolean hasDictionary() {
+		return pos < end && next() == DICTIONARY;
+	}
+
+	@Override
+	public BdfDictionary readDictionary() throws FormatException {
+		return readDictionary(1);
+	}
+
+	private BdfDictionary readDictionary(int level) throws FormatException {
+		if (!hasDictionary()) throw new FormatException();
+		if (level > nestedLimit) throw new FormatException();
+		pos++;
+		BdfDictionary dictionary = new BdfDictionary();
+		String prevKey = null;
+		while (!hasEnd()) {
+			String key = readString();
+			checkKeyOrder(prevKey, key);
+			dictionary.put(key, readObject(level + 1));
+			prevKey = key;
+		}
+		readEnd();
+		return dictionary;
+	}
+
+	@Override
+	public void skipDictionary() throws FormatException {
+		if (!hasDictionary()) throw new FormatException();
+		pos++;
+		while (!hasEnd()) {
+			skipString();
+			skipObject();
+		}
+		readEnd();
+	}
+}
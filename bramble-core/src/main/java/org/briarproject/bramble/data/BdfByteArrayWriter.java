@@ -0,0 +1,301 @@
+package org.briarproject.bramble.data;
+
+import org.briarproject.bramble.api.Bytes;
+import org.briarproject.bramble.api.FormatException;
+import org.briarproject.bramble.api.data.BdfDictionary;
+import org.briarproject.bramble.api.data.BdfWriter;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static java.util.Arrays.copyOf;
+import static java.util.Collections.sort;
+import static org.briarproject.bramble.api.data.BdfDictionary.NULL_VALUE;
+import static org.briarproject.bramble.data.Types.DICTIONARY;
+import static org.briarproject.bramble.data.Types.END;
+import static org.briarproject.bramble.data.Types.FALSE;
+import static org.briarproject.bramble.data.Types.FLOAT_64;
+import static org.briarproject.bramble.data.Types.INT_16;
+import static org.briarproject.bramble.data.Types.INT_32;
+import static org.briarproject.bramble.data.Types.INT_64;
+import static org.briarproject.bramble.data.Types.INT_8;
+import static org.briarproject.bramble.data.Types.LIST;
+import static org.briarproject.bramble.data.Types.NULL;
+import static org.briarproject.bramble.data.Types.RAW_16;
+import static org.briarproject.bramble.data.Types.RAW_32;
+import static org.briarproject.bramble.data.Types.RAW_8;
+import static org.briarproject.bramble.data.Types.STRING_16;
+import static org.briarproject.bramble.data.Types.STRING_32;
+import static org.briarproject.bramble.data.Types.STRING_8;
+import static org.briarproject.bramble.data.Types.TRUE;
+
+/**
+ * A {@link BdfWriter} that writes to a growable byte array. Strings are
+ * encoded directly into the array. The writer can be {@link #reset() reset}
+ * and reused, so one writer can be used to encode many small values.
+ * <p>
+ * The output is identical to that of {@link BdfWriterImpl}.
+ */
+@NotThreadSafe
+@NotNullByDefault
+final class BdfByteArrayWriter implements BdfWriter {
+
+	private byte[] buf;
+	private int length = 0;
+
+	BdfByteArrayWriter() {
+		this(64);
+	}
+
+	BdfByteArrayWriter(int initialCapacity) {
+		buf = new byte[initialCapacity];
+	}
+
+	/**
+	 * Returns a copy of the bytes that have been written.
+	 */
+	byte[] toByteArray() {
+		return copyOf(buf, length);
+	}
+
+	/**
+	 * Discards the bytes that have been written.
+	 */
+	void reset() {
+		length = 0;
+	}
+
+	private void ensureCapacity(int extra) {
+		int required = length + extra;
+		if (required < 0) throw new OutOfMemoryError();
+		if (required > buf.length) {
+			buf = copyOf(buf, Math.max(required, buf.length * 2));
+		}
+	}
+
+	private void write(byte b) {
+		ensureCapacity(1);
+		buf[length++] = b;
+	}
+
+	@Override
+	public void flush() {
+	}
+
+	@Override
+	public void close() {
+	}
+
+	@Override
+	public void writeNull() {
+		write(NULL);
+	}
+
+	@Override
+	public void writeBoolean(boolean b) {
+		if (b) write(TRUE);
+		else write(FALSE);
+	}
+
+	@Override
+	public void writeLong(long i) {
+		if (i >= Byte.MIN_VALUE && i <= Byte.MAX_VALUE) {
+			ensureCapacity(2);
+			buf[length++] = INT_8;
+			buf[length++] = (byte) i;
+		} else if (i >= Short.MIN_VALUE && i <= Short.MAX_VALUE) {
+			ensureCapacity(3);
+			buf[length++] = INT_16;
+			writeInt16((short) i);
+		} else if (i >= Integer.MIN_VALUE && i <= Integer.MAX_VALUE) {
+			ensureCapacity(5);
+			buf[length++] = INT_32;
+			writeInt32((int) i);
+		} else {
+			ensureCapacity(9);
+			buf[length++] = INT_64;
+			writeInt64(i);
+		}
+	}
+
+	// Callers must ensure there's enough capacity
+	private void writeInt16(short i) {
+		buf[length++] = (byte) (i >> 8);
+		buf[length++] = (byte) i;
+	}
+
+	// Callers must ensure there's enough capacity
+	private void writeInt32(int i) {
+		for (int shift = 24; shift >= 0; shift -= 8)
+			buf[length++] = (byte) (i >> shift);
+	}
+
+	// Callers must ensure there's enough capacity
+	private void writeInt64(long i) {
+		for (int shift = 56; shift >= 0; shift -= 8)
+			buf[length++] = (byte) (i >> shift);
+	}
+
+	@Override
+	public void writeDouble(double d) {
+		ensureCapacity(9);
+		buf[length++] = FLOAT_64;
+		writeInt64(Double.doubleToRawLongBits(d));
+	}
+
+	@Override
+	public void writeString(String s) {
+		int utf8Length = getUtf8Length(s);
+		if (utf8Length <= Byte.MAX_VALUE) {
+			ensureCapacity(2 + utf8Length);
+			buf[length++] = STRING_8;
+			buf[length++] = (byte) utf8Length;
+		} else if (utf8Length <= Short.MAX_VALUE) {
+			ensureCapacity(3 + utf8Length);
+			buf[length++] = STRING_16;
+			writeInt16((short) utf8Length);
+		} else {
+			ensureCapacity(5 + utf8Length);
+			buf[length++] = STRING_32;
+			writeInt32(utf8Length);
+		}
+		writeUtf8(s);
+	}
+
+	/**
+	 * Returns the length of the given string when encoded as UTF-8. As with
+	 * {@link String#getBytes(java.nio.charset.Charset)}, unpaired surrogates
+	 * are replaced with '?'.
+	 */
+	private static int getUtf8Length(String s) {
+		int utf8Length = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				utf8Length++;
+			} else if (c < 0x800) {
+				utf8Length += 2;
+			} else if (Character.isSurrogate(c)) {
+				if (isSurrogatePair(s, i)) {
+					utf8Length += 4;
+					i++;
+				} else {
+					utf8Length++;
+				}
+			} else {
+				utf8Length += 3;
+			}
+		}
+		return utf8Length;
+	}
+
+	private static boolean isSurrogatePair(String s, int i) {
+		return Character.isHighSurrogate(s.charAt(i)) && i + 1 < s.length()
+				&& Character.isLowSurrogate(s.charAt(i + 1));
+	}
+
+	// Callers must ensure there's enough capacity
+	private void writeUtf8(String s) {
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				buf[length++] = (byte) c;
+			} else if (c < 0x800) {
+				buf[length++] = (byte) (0xC0 | (c >> 6));
+				buf[length++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				if (isSurrogatePair(s, i)) {
+					int cp = Character.toCodePoint(c, s.charAt(++i));
+					buf[length++] = (byte) (0xF0 | (cp >> 18));
+					buf[length++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+					buf[length++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+					buf[length++] = (byte) (0x80 | (cp & 0x3F));
+				} else {
+					buf[length++] = '?';
+				}
+			} else {
+				buf[length++] = (byte) (0xE0 | (c >> 12));
+				buf[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				buf[length++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+	}
+
+	@Override
+	public void writeRaw(byte[] b) {
+		if (b.length <= Byte.MAX_VALUE) {
+			ensureCapacity(2 + b.length);
+			buf[length++] = RAW_8;
+			buf[length++] = (byte) b.length;
+		} else if (b.length <= Short.MAX_VALUE) {
+			ensureCapacity(3 + b.length);
+			buf[length++] = RAW_16;
+			writeInt16((short) b.length);
+		} else {
+			ensureCapacity(5 + b.length);
+			buf[length++] = RAW_32;
+			writeInt32(b.length);
+		}
+		System.arraycopy(b, 0, buf, length, b.length);
+		length += b.length;
+	}
+
+	@Override
+	public void writeList(Collection<?> c) throws FormatException {
+		write(LIST);
+		for (Object o : c) writeObject(o);
+		write(END);
+	}
+
+	/**
+	 * Writes an object of any type.
+	 */
+	void writeObject(@Nullable Object o) throws FormatException {
+		if (o == null || o == NULL_VALUE) writeNull();
+		else if (o instanceof Boolean) writeBoolean((Boolean) o);
+		else if (o instanceof Byte) writeLong((Byte) o);
+		else if (o instanceof Short) writeLong((Short) o);
+		else if (o instanceof Integer) writeLong((Integer) o);
+		else if (o instanceof Long) writeLong((Long) o);
+		else if (o instanceof Float) writeDouble((Float) o);
+		else if (o instanceof Double) writeDouble((Double) o);
+		else if (o instanceof String) writeString((String) o);
+		else if (o instanceof byte[]) writeRaw((byte[]) o);
+		else if (o instanceof Bytes) writeRaw(((Bytes) o).getBytes());
+		else if (o instanceof List) writeList((List<?>) o);
+		else if (o instanceof Map) writeDictionary((Map<?, ?>) o);
+		else throw new FormatException();
+	}
+
+	@Override
+	public void writeDictionary(Map<?, ?> m) throws FormatException {
+		write(DICTIONARY);
+		if (m instanceof BdfDictionary) {
+			// Entries are already sorted and keys are known to be strings
+			for (Entry<String, Object> e : ((BdfDictionary) m).entrySet()) {
+				writeString(e.getKey());
+				writeObject(e.getValue());
+			}
+		} else {
+			// Check that keys are strings, write entries in canonical order
+			List<String> keys = new ArrayList<>(m.size());
+			for (Object k : m.keySet()) {
+				if (!(k instanceof String)) throw new FormatException();
+				keys.add((String) k);
+			}
+			sort(keys);
+			for (String key : keys) {
+				writeString(key);
+				writeObject(m.get(key));
+			}
+		}
+		write(END);
+	}
+}
@@ -32,4 +32,11 @@ class BdfReaderFactoryImpl implements BdfReaderFactory {
 			int maxBufferSize, boolean canonical) {
 		return new BdfReaderImpl(in, nestedLimit, maxBufferSize, canonical);
 	}
+
+	@Override
+	public BdfReader createReader(byte[] b, int off, int len,
+			boolean canonical) {
+		return new BdfByteArrayReader(b, off, len, DEFAULT_NESTED_LIMIT,
+				DEFAULT_MAX_BUFFER_SIZE, canonical);
+	}
 }
@@ -22,13 +22,13 @@ public class DataModule {
 	}
 
 	@Provides
-	MetadataParser provideMetaDataParser(BdfReaderFactory bdfReaderFactory) {
-		return new MetadataParserImpl(bdfReaderFactory);
+	MetadataParser provideMetaDataParser() {
+		return new MetadataParserImpl();
 	}
 
 	@Provides
-	MetadataEncoder provideMetaDataEncoder(BdfWriterFactory bdfWriterFactory) {
-		return new MetadataEncoderImpl(bdfWriterFactory);
+	MetadataEncoder provideMetaDataEncoder() {
+		return new MetadataEncoderImpl();
 	}
 
 }
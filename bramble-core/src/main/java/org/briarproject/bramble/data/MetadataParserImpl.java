@@ -2,67 +2,53 @@ package org.briarproject.bramble.data;
 
 import org.briarproject.bramble.api.FormatException;
 import org.briarproject.bramble.api.data.BdfDictionary;
-import org.briarproject.bramble.api.data.BdfReader;
-import org.briarproject.bramble.api.data.BdfReaderFactory;
 import org.briarproject.bramble.api.data.MetadataParser;
 import org.briarproject.bramble.api.db.Metadata;
 import org.briarproject.nullsafety.NotNullByDefault;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
 import java.util.Map.Entry;
 
 import javax.annotation.concurrent.Immutable;
 import javax.inject.Inject;
 
 import static org.briarproject.bramble.api.data.BdfDictionary.NULL_VALUE;
+import static org.briarproject.bramble.api.data.BdfReader.DEFAULT_MAX_BUFFER_SIZE;
+import static org.briarproject.bramble.api.data.BdfReader.DEFAULT_NESTED_LIMIT;
 import static org.briarproject.bramble.api.db.Metadata.REMOVE;
 
 @Immutable
 @NotNullByDefault
 class MetadataParserImpl implements MetadataParser {
 
-	private final BdfReaderFactory bdfReaderFactory;
+	private static final byte[] EMPTY = new byte[0];
 
 	@Inject
-	MetadataParserImpl(BdfReaderFactory bdfReaderFactory) {
-		this.bdfReaderFactory = bdfReaderFactory;
+	MetadataParserImpl() {
 	}
 
 	@Override
 	public BdfDictionary parse(Metadata m) throws FormatException {
 		BdfDictionary d = new BdfDictionary();
-		try {
-			for (Entry<String, byte[]> e : m.entrySet()) {
-				// Special case: if key is being removed, value is null
-				if (e.getValue() == REMOVE) d.put(e.getKey(), NULL_VALUE);
-				else d.put(e.getKey(), parseValue(e.getValue()));
-			}
-		} catch (FormatException e) {
-			throw e;
-		} catch (IOException e) {
-			throw new RuntimeException(e);
+		// Use one reader for all the values
+		BdfByteArrayReader reader = createReader();
+		for (Entry<String, byte[]> e : m.entrySet()) {
+			// Special case: if key is being removed, value is null
+			if (e.getValue() == REMOVE) d.put(e.getKey(), NULL_VALUE);
+			else d.put(e.getKey(), parseValue(reader, e.getValue()));
 		}
 		return d;
 	}
 
-	private Object parseValue(byte[] b) throws IOException {
-		ByteArrayInputStream in = new ByteArrayInputStream(b);
-		BdfReader reader = bdfReaderFactory.createReader(in);
-		Object o = parseObject(reader);
-		if (!reader.eof()) throw new FormatException();
-		return o;
+	private BdfByteArrayReader createReader() {
+		return new BdfByteArrayReader(EMPTY, 0, 0, DEFAULT_NESTED_LIMIT,
+				DEFAULT_MAX_BUFFER_SIZE, true);
 	}
 
-	private Object parseObject(BdfReader reader) throws IOException {
-		if (reader.hasNull()) return NULL_VALUE;
-		if (reader.hasBoolean()) return reader.readBoolean();
-		if (reader.hasLong()) return reader.readLong();
-		if (reader.hasDouble()) return reader.readDouble();
-		if (reader.hasString()) return reader.readString();
-		if (reader.hasRaw()) return reader.readRaw();
-		if (reader.hasList()) return reader.readList();
-		if (reader.hasDictionary()) return reader.readDictionary();
-		throw new FormatException();
+	private Object parseValue(BdfByteArrayReader reader, byte[] b)
+			throws FormatException {
+		reader.reset(b, 0, b.length);
+		Object o = reader.readObject();
+		if (!reader.eof()) throw new FormatException();
+		return o;
 	}
 }
@@ -10,6 +10,7 @@ import org.briarproject.bramble.api.crypto.SecretKey;
 import org.briarproject.bramble.api.db.DataTooNewException;
 import org.briarproject.bramble.api.db.DataTooOldException;
 import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.DatabaseSpaceUsage;
 import org.briarproject.bramble.api.db.DbException;
 import org.briarproject.bramble.api.db.MessageDeletedException;
 import org.briarproject.bramble.api.db.Metadata;
@@ -386,6 +387,18 @@ interface Database<T> {
 	 */
 	Message getMessage(T txn, MessageId m) throws DbException;
 
+	/**
+	 * Returns the messages with the given IDs. The result doesn't contain
+	 * any IDs that aren't in the database.
+	 * <p/>
+	 * Read-only.
+	 *
+	 * @throws MessageDeletedException if any of the messages has been
+	 * deleted
+	 */
+	Map<MessageId, Message> getMessages(T txn, Collection<MessageId> m)
+			throws DbException;
+
 	/**
 	 * Returns the IDs and states of all dependencies of the given message.
 	 * For missing dependencies and dependencies in other groups, the state
@@ -508,6 +521,16 @@ interface Database<T> {
 	Collection<MessageId> getMessagesToOffer(T txn, ContactId c,
 			int maxMessages, long maxLatency) throws DbException;
 
+	/**
+	 * Returns the IDs of some messages that are eligible to be offered to the
+	 * given contact, up to the given number of messages, mapped to the IDs
+	 * of their groups.
+	 * <p/>
+	 * Read-only.
+	 */
+	Map<MessageId, GroupId> getMessagesToOfferWithGroups(T txn, ContactId c,
+			int maxMessages, long maxLatency) throws DbException;
+
 	/**
 	 * Returns the IDs of some messages that are eligible to be requested from
 	 * the given contact, up to the given number of messages.
@@ -517,6 +540,42 @@ interface Database<T> {
 	Collection<MessageId> getMessagesToRequest(T txn, ContactId c,
 			int maxMessages) throws DbException;
 
+	/**
+	 * Returns the IDs of some messages received from each of the given
+	 * contacts that need to be acknowledged, up to the given number of
+	 * messages per contact. Contacts with no messages to acknowledge are
+	 * not included in the returned map.
+	 * <p/>
+	 * Read-only.
+	 */
+	Map<ContactId, Collection<MessageId>> getMessagesToAck(T txn,
+			Collection<ContactId> contacts, int maxMessages)
+			throws DbException;
+
+	/**
+	 * Returns the IDs of some messages that are eligible to be offered to
+	 * each of the given contacts, up to the given number of messages per
+	 * contact. Contacts with no messages to offer are not included in the
+	 * returned map.
+	 * <p/>
+	 * Read-only.
+	 */
+	Map<ContactId, Collection<MessageId>> getMessagesToOffer(T txn,
+			Collection<ContactId> contacts, int maxMessages, long maxLatency)
+			throws DbException;
+
+	/**
+	 * Returns the IDs of some messages that are eligible to be requested from
+	 * each of the given contacts, up to the given number of messages per
+	 * contact. Contacts with no messages to request are not included in the
+	 * returned map.
+	 * <p/>
+	 * Read-only.
+	 */
+	Map<ContactId, Collection<MessageId>> getMessagesToRequest(T txn,
+			Collection<ContactId> contacts, int maxMessages)
+			throws DbException;
+
 	/**
 	 * Returns the IDs of some messages that are eligible to be sent to the
 	 * given contact. The total length of the messages including record headers
@@ -553,6 +612,27 @@ interface Database<T> {
 	 */
 	long getUnackedMessageBytesToSend(T txn, ContactId c) throws DbException;
 
+	/**
+	 * Returns the IDs of the delivered, shared messages in groups shared
+	 * with the given contact that the contact is not known to have seen,
+	 * grouped by group. Deleted messages are not included.
+	 * <p/>
+	 * Read-only.
+	 */
+	Map<GroupId, Collection<MessageId>> getUnseenMessages(T txn, ContactId c)
+			throws DbException;
+
+	/**
+	 * Returns the IDs of the delivered, shared messages in the given group,
+	 * if the group is shared with the given contact, mapped to true if the
+	 * contact is known to have seen each message. Deleted messages are not
+	 * included.
+	 * <p/>
+	 * Read-only.
+	 */
+	Map<MessageId, Boolean> getMessagesToReconcile(T txn, ContactId c,
+			GroupId g) throws DbException;
+
 	/**
 	 * Returns the IDs of any messages that need to be validated.
 	 * <p/>
@@ -585,6 +665,16 @@ interface Database<T> {
 	Map<GroupId, Collection<MessageId>> getMessagesToDelete(T txn)
 			throws DbException;
 
+	/**
+	 * Returns the IDs of up to the given number of messages that are due for
+	 * deletion, along with their group IDs. The messages that have been due
+	 * for longest are returned first.
+	 * <p/>
+	 * Read-only.
+	 */
+	Map<GroupId, Collection<MessageId>> getMessagesToDelete(T txn,
+			int maxMessages) throws DbException;
+
 	/**
 	 * Returns the next time (in milliseconds since the Unix epoch) when a
 	 * message is due to be deleted, or
@@ -641,6 +731,14 @@ interface Database<T> {
 	 */
 	Settings getSettings(T txn, String namespace) throws DbException;
 
+	/**
+	 * Returns the number of bytes in the database's files that hold live
+	 * data, and the number that could be reclaimed.
+	 * <p/>
+	 * Read-only.
+	 */
+	DatabaseSpaceUsage getSpaceUsage(T txn) throws DbException;
+
 	/**
 	 * Returns the versions of the sync protocol supported by the given contact.
 	 * <p/>
@@ -723,6 +821,15 @@ interface Database<T> {
 	 */
 	boolean raiseSeenFlag(T txn, ContactId c, MessageId m) throws DbException;
 
+	/**
+	 * Reclaims some of the space in the database's files that no longer holds
+	 * live data, writing no more than approximately the given number of bytes.
+	 * Returns true if any space was reclaimed.
+	 * <p/>
+	 * The caller must ensure that no other transactions are running.
+	 */
+	boolean reclaimSpace(T txn, long maxBytes) throws DbException;
+
 	/**
 	 * Removes a contact from the database.
 	 */
@@ -876,6 +983,13 @@ interface Database<T> {
 	 */
 	void stopCleanupTimer(T txn, MessageId m) throws DbException;
 
+	/**
+	 * Stops the cleanup timers for the given messages, if the timers have
+	 * been started. Any messages that are not in the DB are ignored.
+	 */
+	void stopCleanupTimers(T txn, Collection<MessageId> ids)
+			throws DbException;
+
 	/**
 	 * Updates the transmission count, expiry time and max latency of the given
 	 * message with respect to the given contact.
@@ -18,6 +18,7 @@ import org.briarproject.bramble.api.db.CommitAction;
 import org.briarproject.bramble.api.db.CommitAction.Visitor;
 import org.briarproject.bramble.api.db.ContactExistsException;
 import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.DatabaseSpaceUsage;
 import org.briarproject.bramble.api.db.DbCallable;
 import org.briarproject.bramble.api.db.DbException;
 import org.briarproject.bramble.api.db.DbRunnable;
@@ -34,6 +35,7 @@ import org.briarproject.bramble.api.db.NullableDbCallable;
 import org.briarproject.bramble.api.db.PendingContactExistsException;
 import org.briarproject.bramble.api.db.TaskAction;
 import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.api.db.TransactionBatch;
 import org.briarproject.bramble.api.event.EventBus;
 import org.briarproject.bramble.api.event.EventExecutor;
 import org.briarproject.bramble.api.identity.Author;
@@ -51,6 +53,7 @@ import org.briarproject.bramble.api.sync.Group;
 import org.briarproject.bramble.api.sync.Group.Visibility;
 import org.briarproject.bramble.api.sync.GroupId;
 import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageFilter;
 import org.briarproject.bramble.api.sync.MessageId;
 import org.briarproject.bramble.api.sync.MessageStatus;
 import org.briarproject.bramble.api.sync.Offer;
@@ -75,8 +78,11 @@ import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -87,6 +93,7 @@ import javax.annotation.concurrent.ThreadSafe;
 import javax.inject.Inject;
 
 import static java.util.Collections.singletonList;
+import static java.util.logging.Level.INFO;
 import static java.util.logging.Level.WARNING;
 import static java.util.logging.Logger.getLogger;
 import static org.briarproject.bramble.api.sync.Group.Visibility.INVISIBLE;
@@ -178,11 +185,18 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 
 	@Override
 	public void endTransaction(Transaction transaction) {
+		endTransaction(transaction, true);
+	}
+
+	/**
+	 * Ends a transaction, submitting any attached actions to the event
+	 * executor if the transaction was committed and runActions is true.
+	 */
+	private void endTransaction(Transaction transaction, boolean runActions) {
 		try {
 			T txn = txnClass.cast(transaction.unbox());
 			if (transaction.isCommitted()) {
-				for (CommitAction a : transaction.getActions())
-					a.accept(visitor);
+				if (runActions) runActions(transaction.getActions());
 			} else {
 				db.abortTransaction(txn);
 			}
@@ -231,6 +245,37 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		}
 	}
 
+	@Override
+	public TransactionBatch startBatch(int maxTasks, long maxBytes) {
+		return new TransactionBatchImpl(this, maxTasks, maxBytes);
+	}
+
+	/**
+	 * Runs the given tasks in a single read-write transaction. The actions
+	 * attached to the transaction are returned instead of being submitted
+	 * to the event executor, so the {@link TransactionBatch} can hold them
+	 * back until it's closed.
+	 */
+	List<CommitAction> runBatch(List<DbRunnable<DbException>> tasks)
+			throws DbException {
+		Transaction txn = startTransaction(false);
+		try {
+			for (DbRunnable<DbException> task : tasks) task.run(txn);
+			commitTransaction(txn);
+			return txn.getActions();
+		} finally {
+			endTransaction(txn, false);
+		}
+	}
+
+	/**
+	 * Submits the given actions, which were attached to committed
+	 * transactions, to the event executor.
+	 */
+	void runActions(List<CommitAction> actions) {
+		for (CommitAction a : actions) a.accept(visitor);
+	}
+
 	private T unbox(Transaction transaction) {
 		if (transaction.isCommitted()) throw new IllegalStateException();
 		return txnClass.cast(transaction.unbox());
@@ -364,6 +409,13 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		return db.containsContact(txn, remote, local);
 	}
 
+	@Override
+	public boolean containsContact(Transaction transaction, ContactId c)
+			throws DbException {
+		T txn = unbox(transaction);
+		return db.containsContact(txn, c);
+	}
+
 	@Override
 	public boolean containsGroup(Transaction transaction, GroupId g)
 			throws DbException {
@@ -475,6 +527,61 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		return new Offer(ids);
 	}
 
+	@Nullable
+	@Override
+	public Offer generateOffer(Transaction transaction, ContactId c,
+			int maxMessages, long maxLatency, Collection<MessageFilter> filters)
+			throws DbException {
+		if (filters.isEmpty())
+			return generateOffer(transaction, c, maxMessages, maxLatency);
+		if (transaction.isReadOnly()) throw new IllegalArgumentException();
+		T txn = unbox(transaction);
+		if (!db.containsContact(txn, c))
+			throw new NoSuchContactException();
+		Map<MessageId, GroupId> candidates = db.getMessagesToOfferWithGroups(
+				txn, c, maxMessages, maxLatency);
+		if (candidates.isEmpty()) return null;
+		Map<GroupId, List<MessageFilter>> byGroup = new HashMap<>();
+		for (MessageFilter f : filters) {
+			List<MessageFilter> forGroup = byGroup.get(f.getGroupId());
+			if (forGroup == null) {
+				forGroup = new ArrayList<>();
+				byGroup.put(f.getGroupId(), forGroup);
+			}
+			forGroup.add(f);
+		}
+		List<MessageId> ids = new ArrayList<>(candidates.size());
+		int suppressed = 0;
+		for (Entry<MessageId, GroupId> e : candidates.entrySet()) {
+			MessageId m = e.getKey();
+			// Suppressed messages will be offered again when they're due for
+			// retransmission, if the filters have expired by then
+			db.updateRetransmissionData(txn, c, m, maxLatency);
+			if (mightContain(byGroup.get(e.getValue()), m)) {
+				// Ack the message so the contact marks it as seen and leaves
+				// it out of its next filter. If the contact doesn't have the
+				// message (a false positive) it will ignore the ack
+				db.raiseAckFlag(txn, c, m);
+				suppressed++;
+			} else {
+				ids.add(m);
+			}
+		}
+		if (suppressed > 0) transaction.attach(new MessageToAckEvent(c));
+		if (suppressed > 0 && LOG.isLoggable(INFO)) {
+			LOG.info("Suppressed " + suppressed + " of " + candidates.size()
+					+ " messages to offer");
+		}
+		return ids.isEmpty() ? null : new Offer(ids);
+	}
+
+	private boolean mightContain(@Nullable List<MessageFilter> filters,
+			MessageId m) {
+		if (filters == null) return false;
+		for (MessageFilter f : filters) if (f.mightContain(m)) return true;
+		return false;
+	}
+
 	@Nullable
 	@Override
 	public Request generateRequest(Transaction transaction, ContactId c,
@@ -490,6 +597,70 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		return new Request(ids);
 	}
 
+	@Override
+	public Map<ContactId, Ack> generateAcks(Transaction transaction,
+			Collection<ContactId> contacts, int maxMessages)
+			throws DbException {
+		if (transaction.isReadOnly()) throw new IllegalArgumentException();
+		T txn = unbox(transaction);
+		Map<ContactId, Collection<MessageId>> ids =
+				db.getMessagesToAck(txn, getExistingContacts(txn, contacts),
+						maxMessages);
+		Map<ContactId, Ack> acks = new HashMap<>();
+		for (Entry<ContactId, Collection<MessageId>> e : ids.entrySet()) {
+			db.lowerAckFlag(txn, e.getKey(), e.getValue());
+			acks.put(e.getKey(), new Ack(e.getValue()));
+		}
+		return acks;
+	}
+
+	@Override
+	public Map<ContactId, Offer> generateOffers(Transaction transaction,
+			Collection<ContactId> contacts, int maxMessages, long maxLatency)
+			throws DbException {
+		if (transaction.isReadOnly()) throw new IllegalArgumentException();
+		T txn = unbox(transaction);
+		Map<ContactId, Collection<MessageId>> ids =
+				db.getMessagesToOffer(txn, getExistingContacts(txn, contacts),
+						maxMessages, maxLatency);
+		Map<ContactId, Offer> offers = new HashMap<>();
+		for (Entry<ContactId, Collection<MessageId>> e : ids.entrySet()) {
+			for (MessageId m : e.getValue())
+				db.updateRetransmissionData(txn, e.getKey(), m, maxLatency);
+			offers.put(e.getKey(), new Offer(e.getValue()));
+		}
+		return offers;
+	}
+
+	@Override
+	public Map<ContactId, Request> generateRequests(Transaction transaction,
+			Collection<ContactId> contacts, int maxMessages)
+			throws DbException {
+		if (transaction.isReadOnly()) throw new IllegalArgumentException();
+		T txn = unbox(transaction);
+		Map<ContactId, Collection<MessageId>> ids =
+				db.getMessagesToRequest(txn,
+						getExistingContacts(txn, contacts), maxMessages);
+		Map<ContactId, Request> requests = new HashMap<>();
+		for (Entry<ContactId, Collection<MessageId>> e : ids.entrySet()) {
+			db.removeOfferedMessages(txn, e.getKey(), e.getValue());
+			requests.put(e.getKey(), new Request(e.getValue()));
+		}
+		return requests;
+	}
+
+	/**
+	 * Returns the given contacts that exist in the database.
+	 */
+	private Collection<ContactId> getExistingContacts(T txn,
+			Collection<ContactId> contacts) throws DbException {
+		List<ContactId> existing = new ArrayList<>(contacts.size());
+		for (ContactId c : contacts) {
+			if (db.containsContact(txn, c)) existing.add(c);
+		}
+		return existing;
+	}
+
 	@Nullable
 	@Override
 	public Collection<Message> generateRequestedBatch(Transaction transaction,
@@ -614,6 +785,20 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		return db.getMessage(txn, m);
 	}
 
+	@Override
+	public Map<MessageId, Message> getMessages(Transaction transaction,
+			Collection<MessageId> m) throws DbException {
+		T txn = unbox(transaction);
+		Map<MessageId, Message> messages = db.getMessages(txn, m);
+		Map<MessageId, Message> ordered = new LinkedHashMap<>();
+		for (MessageId id : m) {
+			Message message = messages.get(id);
+			if (message == null) throw new NoSuchMessageException();
+			ordered.put(id, message);
+		}
+		return ordered;
+	}
+
 	@Override
 	public Collection<MessageId> getMessageIds(Transaction transaction,
 			GroupId g) throws DbException {
@@ -678,6 +863,13 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		return db.getMessagesToDelete(txn);
 	}
 
+	@Override
+	public Map<GroupId, Collection<MessageId>> getMessagesToDelete(
+			Transaction transaction, int maxMessages) throws DbException {
+		T txn = unbox(transaction);
+		return db.getMessagesToDelete(txn, maxMessages);
+	}
+
 	@Override
 	public Map<MessageId, Metadata> getMessageMetadata(Transaction transaction,
 			GroupId g) throws DbException {
@@ -777,6 +969,19 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		return message;
 	}
 
+	@Override
+	public Collection<ContactId> getContactsToSendMessageTo(
+			Transaction transaction, MessageId m,
+			Collection<ContactId> contacts) throws DbException {
+		T txn = unbox(transaction);
+		List<ContactId> visible = new ArrayList<>(contacts.size());
+		for (ContactId c : contacts) {
+			if (!db.containsContact(txn, c)) continue;
+			if (db.containsVisibleMessage(txn, c, m)) visible.add(c);
+		}
+		return visible;
+	}
+
 	@Override
 	public Collection<MessageId> getUnackedMessagesToSend(
 			Transaction transaction, ContactId c) throws DbException {
@@ -804,6 +1009,25 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		return db.getUnackedMessageBytesToSend(txn, c);
 	}
 
+	@Override
+	public Map<GroupId, Collection<MessageId>> getUnseenMessages(
+			Transaction transaction, ContactId c) throws DbException {
+		T txn = unbox(transaction);
+		if (!db.containsContact(txn, c))
+			throw new NoSuchContactException();
+		return db.getUnseenMessages(txn, c);
+	}
+
+	@Override
+	public Map<MessageId, Boolean> getMessagesToReconcile(
+			Transaction transaction, ContactId c, GroupId g)
+			throws DbException {
+		T txn = unbox(transaction);
+		if (!db.containsContact(txn, c))
+			throw new NoSuchContactException();
+		return db.getMessagesToReconcile(txn, c, g);
+	}
+
 	@Override
 	public Map<MessageId, MessageState> getMessageDependencies(
 			Transaction transaction, MessageId m) throws DbException {
@@ -859,6 +1083,13 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		return db.getSettings(txn, namespace);
 	}
 
+	@Override
+	public DatabaseSpaceUsage getSpaceUsage(Transaction transaction)
+			throws DbException {
+		T txn = unbox(transaction);
+		return db.getSpaceUsage(txn);
+	}
+
 	@Override
 	public List<Byte> getSyncVersions(Transaction transaction, ContactId c)
 			throws DbException {
@@ -938,25 +1169,31 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 			throw new NoSuchContactException();
 		Collection<MessageId> acked = new ArrayList<>();
 		for (MessageId m : a.getMessageIds()) {
-			if (db.containsVisibleMessage(txn, c, m)) {
-				if (db.raiseSeenFlag(txn, c, m)) {
-					// This is the first time the message has been acked by
-					// this contact. Start the cleanup timer (a no-op unless
-					// a cleanup deadline has been set for this message)
-					long deadline = db.startCleanupTimer(txn, m);
-					if (deadline != TIMER_NOT_STARTED) {
-						transaction.attach(new CleanupTimerStartedEvent(m,
-								deadline));
-					}
-					acked.add(m);
-				}
-			}
+			if (markAsSeen(transaction, txn, c, m)) acked.add(m);
 		}
 		if (acked.size() > 0) {
 			transaction.attach(new MessagesAckedEvent(c, acked));
 		}
 	}
 
+	/**
+	 * Raises the seen flag for the given message if it's visible to the
+	 * given contact, and returns true if the flag was raised.
+	 */
+	private boolean markAsSeen(Transaction transaction, T txn, ContactId c,
+			MessageId m) throws DbException {
+		if (!db.containsVisibleMessage(txn, c, m)) return false;
+		if (!db.raiseSeenFlag(txn, c, m)) return false;
+		// This is the first time the message has been acked by this contact.
+		// Start the cleanup timer (a no-op unless a cleanup deadline has been
+		// set for this message)
+		long deadline = db.startCleanupTimer(txn, m);
+		if (deadline != TIMER_NOT_STARTED) {
+			transaction.attach(new CleanupTimerStartedEvent(m, deadline));
+		}
+		return true;
+	}
+
 	@Override
 	public void receiveMessage(Transaction transaction, ContactId c, Message m)
 			throws DbException {
@@ -1000,6 +1237,32 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		if (request) transaction.attach(new MessageToRequestEvent(c));
 	}
 
+	@Override
+	public void receiveReconciliation(Transaction transaction, ContactId c,
+			Collection<MessageId> seen, Collection<MessageId> missing)
+			throws DbException {
+		if (transaction.isReadOnly()) throw new IllegalArgumentException();
+		T txn = unbox(transaction);
+		if (!db.containsContact(txn, c))
+			throw new NoSuchContactException();
+		Collection<MessageId> acked = new ArrayList<>();
+		for (MessageId m : seen) {
+			if (markAsSeen(transaction, txn, c, m)) acked.add(m);
+		}
+		if (acked.size() > 0) {
+			transaction.attach(new MessagesAckedEvent(c, acked));
+		}
+		boolean requested = false;
+		for (MessageId m : missing) {
+			if (db.containsVisibleMessage(txn, c, m)) {
+				db.raiseRequestedFlag(txn, c, m);
+				db.resetExpiryTime(txn, c, m);
+				requested = true;
+			}
+		}
+		if (requested) transaction.attach(new MessageRequestedEvent(c));
+	}
+
 	@Override
 	public void receiveRequest(Transaction transaction, ContactId c, Request r)
 			throws DbException {
@@ -1018,6 +1281,15 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		if (requested) transaction.attach(new MessageRequestedEvent(c));
 	}
 
+	@Override
+	public boolean reclaimSpace(Transaction transaction, long maxBytes)
+			throws DbException {
+		if (transaction.isReadOnly()) throw new IllegalArgumentException();
+		if (maxBytes <= 0) throw new IllegalArgumentException();
+		T txn = unbox(transaction);
+		return db.reclaimSpace(txn, maxBytes);
+	}
+
 	@Override
 	public void removeContact(Transaction transaction, ContactId c)
 			throws DbException {
@@ -1315,6 +1587,14 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		db.stopCleanupTimer(txn, m);
 	}
 
+	@Override
+	public void stopCleanupTimers(Transaction transaction,
+			Collection<MessageId> ids) throws DbException {
+		if (transaction.isReadOnly()) throw new IllegalArgumentException();
+		T txn = unbox(transaction);
+		db.stopCleanupTimers(txn, ids);
+	}
+
 	@Override
 	public void updateTransportKeys(Transaction transaction,
 			Collection<TransportKeySet> keys) throws DbException {
@@ -28,4 +28,28 @@ interface DatabaseConstants {
 	 * whether the database is marked as dirty.
 	 */
 	String DIRTY_KEY = "dirty";
+
+	/**
+	 * The {@link Settings} key under which the flag is stored indicating
+	 * whether large messages have been moved into the message file store.
+	 */
+	String MESSAGE_FILES_KEY = "messageFiles";
+
+	/**
+	 * The name of the directory, inside the database directory, where the
+	 * message file store keeps its files.
+	 */
+	String MESSAGE_FILE_DIRECTORY = "messages";
+
+	/**
+	 * When the message file store is enabled, raw messages longer than this
+	 * are stored in files rather than in the database.
+	 */
+	int MAX_INLINE_MESSAGE_LENGTH = 4 * 1024;
+
+	/**
+	 * The maximum number of messages moved into or out of the message file
+	 * store in each transaction while the database is being opened.
+	 */
+	int MAX_MESSAGE_FILES_PER_TRANSACTION = 100;
 }
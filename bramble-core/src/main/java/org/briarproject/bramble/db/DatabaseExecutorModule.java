@@ -1,8 +1,11 @@
 package org.briarproject.bramble.db;
 
 import org.briarproject.bramble.TimeLoggingExecutor;
+import org.briarproject.bramble.api.db.BackgroundDatabaseExecutor;
 import org.briarproject.bramble.api.db.DatabaseExecutor;
+import org.briarproject.bramble.api.db.SyncDatabaseExecutor;
 import org.briarproject.bramble.api.lifecycle.LifecycleManager;
+import org.briarproject.bramble.api.system.Clock;
 
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executor;
@@ -19,21 +22,23 @@ import dagger.Module;
 import dagger.Provides;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.briarproject.bramble.db.DatabaseLaneExecutor.Lane.BACKGROUND;
+import static org.briarproject.bramble.db.DatabaseLaneExecutor.Lane.INTERACTIVE;
+import static org.briarproject.bramble.db.DatabaseLaneExecutor.Lane.SYNC;
 
 @Module
 public class DatabaseExecutorModule {
 
 	public static class EagerSingletons {
 		@Inject
-		@DatabaseExecutor
-		ExecutorService executorService;
+		DatabaseLaneExecutor laneExecutor;
 	}
 
 	@Provides
 	@Singleton
-	@DatabaseExecutor
-	ExecutorService provideDatabaseExecutorService(
-			LifecycleManager lifecycleManager, ThreadFactory threadFactory) {
+	DatabaseLaneExecutor provideDatabaseLaneExecutor(
+			LifecycleManager lifecycleManager, ThreadFactory threadFactory,
+			Clock clock) {
 		// Use an unbounded queue
 		BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
 		// Discard tasks that are submitted during shutdown
@@ -44,14 +49,31 @@ public class DatabaseExecutorModule {
 				"DatabaseExecutor", 0, 1, 60, SECONDS, queue, threadFactory,
 				policy);
 		lifecycleManager.registerForShutdown(databaseExecutor);
-		return databaseExecutor;
+		// The thread pool is only reachable through the lanes, so every
+		// database task is ordered by the lane executor
+		return new DatabaseLaneExecutor("DatabaseExecutor", databaseExecutor,
+				clock);
 	}
 
 	@Provides
 	@Singleton
 	@DatabaseExecutor
-	Executor provideDatabaseExecutor(
-			@DatabaseExecutor ExecutorService dbExecutor) {
-		return dbExecutor;
+	Executor provideDatabaseExecutor(DatabaseLaneExecutor laneExecutor) {
+		return laneExecutor.getExecutor(INTERACTIVE);
+	}
+
+	@Provides
+	@Singleton
+	@SyncDatabaseExecutor
+	Executor provideSyncDatabaseExecutor(DatabaseLaneExecutor laneExecutor) {
+		return laneExecutor.getExecutor(SYNC);
+	}
+
+	@Provides
+	@Singleton
+	@BackgroundDatabaseExecutor
+	Executor provideBackgroundDatabaseExecutor(
+			DatabaseLaneExecutor laneExecutor) {
+		return laneExecutor.getExecutor(BACKGROUND);
 	}
 }
@@ -0,0 +1,244 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.db.BackgroundDatabaseExecutor;
+import org.briarproject.bramble.api.db.DatabaseExecutor;
+import org.briarproject.bramble.api.db.SyncDatabaseExecutor;
+import org.briarproject.bramble.api.system.Clock;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.EnumMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import static java.util.logging.Level.FINE;
+
+/**
+ * Runs database tasks one at a time on a delegate executor, choosing between
+ * several {@link Lane lanes} of tasks. Tasks in each lane run in the order
+ * they're submitted to that lane.
+ * <p>
+ * The next task is normally taken from the highest priority lane that has
+ * tasks waiting. To prevent starvation, if a lower priority lane has had
+ * tasks waiting for longer than its {@link Lane#getMaxWaitTime() max wait
+ * time} without running a task, the next task is taken from that lane
+ * instead.
+ */
+@ThreadSafe
+@NotNullByDefault
+public class DatabaseLaneExecutor {
+
+	public enum Lane {
+
+		/**
+		 * Tasks the user is waiting for. Used by the
+		 * {@link DatabaseExecutor}.
+		 */
+		INTERACTIVE(0),
+
+		/**
+		 * Generating and storing sync records. Used by the
+		 * {@link SyncDatabaseExecutor}.
+		 */
+		SYNC(200),
+
+		/**
+		 * Bulk work the user isn't waiting for. Used by the
+		 * {@link BackgroundDatabaseExecutor}.
+		 */
+		BACKGROUND(1000);
+
+		private final long maxWaitTime;
+
+		Lane(long maxWaitTime) {
+			this.maxWaitTime = maxWaitTime;
+		}
+
+		/**
+		 * Returns the maximum time in milliseconds that this lane can have
+		 * tasks waiting without running a task before it's given priority
+		 * over higher priority lanes.
+		 */
+		public long getMaxWaitTime() {
+			return maxWaitTime;
+		}
+	}
+
+	private final Executor delegate;
+	private final Clock clock;
+	private final Logger log;
+
+	private final Object lock = new Object();
+	@GuardedBy("lock")
+	private final Map<Lane, Queue<Task>> queues = new EnumMap<>(Lane.class);
+	@GuardedBy("lock")
+	private final Map<Lane, LaneMetrics> metrics = new EnumMap<>(Lane.class);
+	@GuardedBy("lock")
+	private boolean scheduled = false;
+
+	/**
+	 * @param tag the tag to be used for logging
+	 * @param delegate the executor on which tasks will be run. At most one
+	 * task will be delegated at a time
+	 * @param clock the clock used to measure how long tasks have waited
+	 */
+	public DatabaseLaneExecutor(String tag, Executor delegate, Clock clock) {
+		this.delegate = delegate;
+		this.clock = clock;
+		log = Logger.getLogger(tag);
+		long now = clock.currentTimeMillis();
+		for (Lane lane : Lane.values()) {
+			queues.put(lane, new LinkedList<>());
+			metrics.put(lane, new LaneMetrics(now));
+		}
+	}
+
+	/**
+	 * Returns an executor that submits tasks to the given lane.
+	 */
+	public Executor getExecutor(Lane lane) {
+		return r -> execute(lane, r);
+	}
+
+	/**
+	 * Submits a task to the given lane.
+	 */
+	public void execute(Lane lane, Runnable r) {
+		synchronized (lock) {
+			queues.get(lane).add(new Task(r, clock.currentTimeMillis()));
+			if (scheduled) return;
+			scheduled = true;
+		}
+		delegate.execute(this::runNext);
+	}
+
+	/**
+	 * Returns the number of tasks waiting in the given lane.
+	 */
+	public int getQueueDepth(Lane lane) {
+		synchronized (lock) {
+			return queues.get(lane).size();
+		}
+	}
+
+	/**
+	 * Returns the number of tasks from the given lane that have started.
+	 */
+	public long getTasksStarted(Lane lane) {
+		synchronized (lock) {
+			return metrics.get(lane).tasksStarted;
+		}
+	}
+
+	/**
+	 * Returns the mean time in milliseconds that tasks from the given lane
+	 * waited before starting, or 0 if no tasks have started.
+	 */
+	public long getMeanWaitTime(Lane lane) {
+		synchronized (lock) {
+			LaneMetrics m = metrics.get(lane);
+			if (m.tasksStarted == 0) return 0;
+			return m.totalWaitTime / m.tasksStarted;
+		}
+	}
+
+	/**
+	 * Returns the longest time in milliseconds that any task from the given
+	 * lane waited before starting.
+	 */
+	public long getMaxWaitTime(Lane lane) {
+		synchronized (lock) {
+			return metrics.get(lane).maxWaitTime;
+		}
+	}
+
+	private void runNext() {
+		Task task;
+		long now = clock.currentTimeMillis();
+		Lane lane;
+		synchronized (lock) {
+			lane = chooseLane(now);
+			if (lane == null) throw new AssertionError();
+			task = queues.get(lane).remove();
+			LaneMetrics m = metrics.get(lane);
+			long waitTime = now - task.submitted;
+			m.lastStarted = now;
+			m.tasksStarted++;
+			m.totalWaitTime += waitTime;
+			m.maxWaitTime = Math.max(m.maxWaitTime, waitTime);
+		}
+		if (log.isLoggable(FINE)) {
+			log.fine("Queue time " + (now - task.submitted) + " ms in lane "
+					+ lane);
+		}
+		try {
+			task.runnable.run();
+		} finally {
+			scheduleNext();
+		}
+	}
+
+	@GuardedBy("lock")
+	@Nullable
+	private Lane chooseLane(long now) {
+		Lane highest = null;
+		for (Lane lane : Lane.values()) {
+			Task head = queues.get(lane).peek();
+			if (head == null) continue;
+			if (highest == null) {
+				highest = lane;
+			} else {
+				// Measure the wait from when the lane last started a task or
+				// the head task was submitted, whichever is later
+				long since = Math.max(head.submitted,
+						metrics.get(lane).lastStarted);
+				if (now - since >= lane.getMaxWaitTime()) return lane;
+			}
+		}
+		return highest;
+	}
+
+	private void scheduleNext() {
+		synchronized (lock) {
+			boolean empty = true;
+			for (Queue<Task> queue : queues.values()) {
+				if (!queue.isEmpty()) {
+					empty = false;
+					break;
+				}
+			}
+			if (empty) {
+				scheduled = false;
+				return;
+			}
+		}
+		delegate.execute(this::runNext);
+	}
+
+	private static class Task {
+
+		private final Runnable runnable;
+		private final long submitted;
+
+		private Task(Runnable runnable, long submitted) {
+			this.runnable = runnable;
+			this.submitted = submitted;
+		}
+	}
+
+	private static class LaneMetrics {
+
+		private long lastStarted, tasksStarted = 0, totalWaitTime = 0,
+				maxWaitTime = 0;
+
+		private LaneMetrics(long lastStarted) {
+			this.lastStarted = lastStarted;
+		}
+	}
+}
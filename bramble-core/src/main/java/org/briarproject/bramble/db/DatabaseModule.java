@@ -1,30 +1,43 @@
 package org.briarproject.bramble.db;
 
+import org.briarproject.bramble.api.crypto.CryptoComponent;
+import org.briarproject.bramble.api.db.BackgroundDatabaseExecutor;
 import org.briarproject.bramble.api.db.DatabaseComponent;
 import org.briarproject.bramble.api.db.DatabaseConfig;
 import org.briarproject.bramble.api.db.TransactionManager;
 import org.briarproject.bramble.api.event.EventBus;
 import org.briarproject.bramble.api.event.EventExecutor;
+import org.briarproject.bramble.api.lifecycle.LifecycleManager;
 import org.briarproject.bramble.api.lifecycle.ShutdownManager;
 import org.briarproject.bramble.api.sync.MessageFactory;
 import org.briarproject.bramble.api.system.Clock;
+import org.briarproject.bramble.api.system.TaskScheduler;
 
 import java.sql.Connection;
 import java.util.concurrent.Executor;
 
+import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import dagger.Module;
 import dagger.Provides;
 
+import static java.util.Collections.emptyList;
+
 @Module
 public class DatabaseModule {
 
+	public static class EagerSingletons {
+		@Inject
+		DatabaseSpaceReclaimer databaseSpaceReclaimer;
+	}
+
 	@Provides
 	@Singleton
 	Database<Connection> provideDatabase(DatabaseConfig config,
-			MessageFactory messageFactory, Clock clock) {
-		return new H2Database(config, messageFactory, clock);
+			MessageFactory messageFactory, Clock clock,
+			CryptoComponent crypto) {
+		return new H2Database(config, messageFactory, clock, crypto);
 	}
 
 	@Provides
@@ -36,6 +49,19 @@ public class DatabaseModule {
 				eventExecutor, shutdownManager);
 	}
 
+	@Provides
+	@Singleton
+	DatabaseSpaceReclaimer provideDatabaseSpaceReclaimer(
+			LifecycleManager lifecycleManager, DatabaseComponent db,
+			@BackgroundDatabaseExecutor Executor dbExecutor,
+			TaskScheduler taskScheduler) {
+		DatabaseSpaceReclaimer databaseSpaceReclaimer =
+				new DatabaseSpaceReclaimer(db, dbExecutor, taskScheduler);
+		// This service doesn't depend on any other services
+		lifecycleManager.registerService(databaseSpaceReclaimer, emptyList());
+		return databaseSpaceReclaimer;
+	}
+
 	@Provides
 	TransactionManager provideTransactionManager(DatabaseComponent db) {
 		return db;
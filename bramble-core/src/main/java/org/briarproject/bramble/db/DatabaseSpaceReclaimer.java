@@ -0,0 +1,148 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.Cancellable;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.DatabaseSpaceUsage;
+import org.briarproject.bramble.api.db.DbException;
+import org.briarproject.bramble.api.lifecycle.Service;
+import org.briarproject.bramble.api.system.TaskScheduler;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.concurrent.Executor;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.bramble.util.LogUtils.logDuration;
+import static org.briarproject.bramble.util.LogUtils.logException;
+import static org.briarproject.bramble.util.LogUtils.now;
+
+/**
+ * A {@link Service} that periodically checks how much space in the
+ * database's files no longer holds live data, and reclaims it in small
+ * steps while the database is open.
+ * <p>
+ * Each step runs in its own write transaction, so other transactions can
+ * run between steps, and the number of bytes written per step and per check
+ * is limited so reclaiming space doesn't compete with other work for I/O.
+ */
+@ThreadSafe
+@NotNullByDefault
+class DatabaseSpaceReclaimer implements Service {
+
+	private static final Logger LOG =
+			getLogger(DatabaseSpaceReclaimer.class.getName());
+
+	/**
+	 * How often to check whether space should be reclaimed.
+	 */
+	static final long CHECK_INTERVAL_MS = MINUTES.toMillis(5);
+
+	/**
+	 * Space is only reclaimed if at least this many bytes are dead...
+	 */
+	static final long MIN_DEAD_BYTES = 4 * 1024 * 1024; // 4 MiB
+
+	/**
+	 * ...and at least this percentage of the files is dead.
+	 */
+	static final int MIN_DEAD_PERCENT = 25;
+
+	/**
+	 * The maximum number of bytes written by each step.
+	 */
+	static final long MAX_BYTES_PER_STEP = 1024 * 1024; // 1 MiB
+
+	/**
+	 * The maximum number of steps after each check.
+	 */
+	static final int MAX_STEPS_PER_CHECK = 16;
+
+	private final DatabaseComponent db;
+	private final Executor dbExecutor;
+	private final TaskScheduler taskScheduler;
+	private final Object lock = new Object();
+
+	@GuardedBy("lock")
+	@Nullable
+	private Cancellable checkTask = null;
+	@GuardedBy("lock")
+	private boolean stopped = false;
+
+	DatabaseSpaceReclaimer(DatabaseComponent db, Executor dbExecutor,
+			TaskScheduler taskScheduler) {
+		this.db = db;
+		this.dbExecutor = dbExecutor;
+		this.taskScheduler = taskScheduler;
+	}
+
+	@Override
+	public void startService() {
+		synchronized (lock) {
+			checkTask = taskScheduler.scheduleWithFixedDelay(
+					this::checkSpaceUsage, dbExecutor, CHECK_INTERVAL_MS,
+					CHECK_INTERVAL_MS, MILLISECONDS);
+		}
+	}
+
+	@Override
+	public void stopService() {
+		synchronized (lock) {
+			stopped = true;
+			if (checkTask != null) checkTask.cancel();
+			checkTask = null;
+		}
+	}
+
+	// Package access for testing
+	void checkSpaceUsage() {
+		try {
+			DatabaseSpaceUsage usage =
+					db.transactionWithResult(true, db::getSpaceUsage);
+			if (LOG.isLoggable(INFO)) logSpaceUsage(usage);
+			if (shouldReclaimSpace(usage)) reclaimSpace(1);
+		} catch (DbException e) {
+			logException(LOG, WARNING, e);
+		}
+	}
+
+	private boolean shouldReclaimSpace(DatabaseSpaceUsage usage) {
+		long dead = usage.getDeadBytes();
+		return dead >= MIN_DEAD_BYTES
+				&& dead * 100 >= usage.getFileBytes() * MIN_DEAD_PERCENT;
+	}
+
+	private void reclaimSpace(int step) {
+		synchronized (lock) {
+			if (stopped) return;
+		}
+		try {
+			long start = now();
+			boolean more = db.transactionWithResult(false, txn ->
+					db.reclaimSpace(txn, MAX_BYTES_PER_STEP));
+			logDuration(LOG, "Reclaiming space, step " + step, start);
+			if (more && step < MAX_STEPS_PER_CHECK) {
+				// Let other tasks on the executor run before the next step
+				dbExecutor.execute(() -> reclaimSpace(step + 1));
+			} else if (LOG.isLoggable(INFO)) {
+				logSpaceUsage(db.transactionWithResult(true,
+						db::getSpaceUsage));
+			}
+		} catch (DbException e) {
+			logException(LOG, WARNING, e);
+		}
+	}
+
+	private void logSpaceUsage(DatabaseSpaceUsage usage) {
+		LOG.info("DB files contain " + usage.getFileBytes() + " bytes, "
+				+ usage.getLiveBytes() + " live, "
+				+ usage.getDeadBytes() + " dead");
+	}
+}
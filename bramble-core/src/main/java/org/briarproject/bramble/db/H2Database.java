@@ -1,7 +1,9 @@
 package org.briarproject.bramble.db;
 
+import org.briarproject.bramble.api.crypto.CryptoComponent;
 import org.briarproject.bramble.api.crypto.SecretKey;
 import org.briarproject.bramble.api.db.DatabaseConfig;
+import org.briarproject.bramble.api.db.DatabaseSpaceUsage;
 import org.briarproject.bramble.api.db.DbClosedException;
 import org.briarproject.bramble.api.db.DbException;
 import org.briarproject.bramble.api.db.MigrationListener;
@@ -9,6 +11,12 @@ import org.briarproject.bramble.api.sync.MessageFactory;
 import org.briarproject.bramble.api.system.Clock;
 import org.briarproject.bramble.util.StringUtils;
 import org.briarproject.nullsafety.NotNullByDefault;
+import org.h2.engine.Session;
+import org.h2.jdbc.JdbcConnection;
+import org.h2.mvstore.Chunk;
+import org.h2.mvstore.Cursor;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.db.MVTableEngine;
 
 import java.io.File;
 import java.sql.Connection;
@@ -21,6 +29,7 @@ import java.util.logging.Logger;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 
+import static java.lang.Math.min;
 import static java.util.logging.Level.INFO;
 import static java.util.logging.Level.WARNING;
 import static java.util.logging.Logger.getLogger;
@@ -44,6 +53,13 @@ class H2Database extends JdbcDatabase {
 	private static final DatabaseTypes dbTypes = new DatabaseTypes(HASH_TYPE,
 			SECRET_TYPE, BINARY_TYPE, COUNTER_TYPE, STRING_TYPE);
 
+	/**
+	 * When reclaiming space, chunks of the MVStore file are rewritten if
+	 * less than this percentage of their contents is live, and the file is
+	 * shrunk if less than this percentage of it is used by chunks.
+	 */
+	private static final int TARGET_FILL_RATE = 80;
+
 	private final DatabaseConfig config;
 	private final String url;
 
@@ -52,8 +68,8 @@ class H2Database extends JdbcDatabase {
 
 	@Inject
 	H2Database(DatabaseConfig config, MessageFactory messageFactory,
-			Clock clock) {
-		super(dbTypes, messageFactory, clock);
+			Clock clock, CryptoComponent crypto) {
+		super(dbTypes, config, messageFactory, clock, crypto);
 		this.config = config;
 		File dir = config.getDatabaseDirectory();
 		String path = new File(dir, "db").getAbsolutePath();
@@ -123,6 +139,51 @@ class H2Database extends JdbcDatabase {
 		return url;
 	}
 
+	@Override
+	public DatabaseSpaceUsage getSpaceUsage(Connection txn)
+			throws DbException {
+		MVStore store = getStore(txn);
+		long fileBytes = store.getFileStore().size();
+		// Add up the live bytes in each chunk, as recorded in the store's
+		// metadata. Dead bytes include free space between chunks and pages
+		// within chunks that are no longer referenced
+		long liveBytes = 0;
+		Cursor<String, String> c = store.getMetaMap().cursor("chunk.");
+		while (c.hasNext()) {
+			if (!c.next().startsWith("chunk.")) break;
+			liveBytes += Chunk.fromString(c.getValue()).maxLenLive;
+		}
+		return new DatabaseSpaceUsage(fileBytes, min(liveBytes, fileBytes));
+	}
+
+	@Override
+	public boolean reclaimSpace(Connection txn, long maxBytes)
+			throws DbException {
+		MVStore store = getStore(txn);
+		long before = store.getFileStore().size();
+		// Copy the live pages out of chunks that are mostly dead, so the
+		// chunks can be freed when the store's retention time has passed
+		int write = (int) min(maxBytes, Integer.MAX_VALUE);
+		boolean rewritten = store.compact(TARGET_FILL_RATE, write);
+		// Move chunks from the end of the file into free space nearer the
+		// start, so the file can be truncated. The store syncs the file
+		// before overwriting any free space, so this is crash-safe
+		boolean moved = store.compactMoveChunks(TARGET_FILL_RATE, maxBytes);
+		if (LOG.isLoggable(INFO)) {
+			long after = store.getFileStore().size();
+			LOG.info("Rewrote chunks: " + rewritten + ", moved chunks: "
+					+ moved + ", file size " + before + " -> " + after);
+		}
+		return rewritten || moved;
+	}
+
+	private MVStore getStore(Connection txn) throws DbException {
+		Session session = (Session) ((JdbcConnection) txn).getSession();
+		MVTableEngine.Store store = session.getDatabase().getMvStore();
+		if (store == null) throw new DbException(new DbStateException());
+		return store.getStore();
+	}
+
 	@Override
 	protected void compactAndClose() throws DbException {
 		Connection c = null;
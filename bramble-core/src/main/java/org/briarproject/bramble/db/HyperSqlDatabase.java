@@ -1,7 +1,9 @@
 package org.briarproject.bramble.db;
 
+import org.briarproject.bramble.api.crypto.CryptoComponent;
 import org.briarproject.bramble.api.crypto.SecretKey;
 import org.briarproject.bramble.api.db.DatabaseConfig;
+import org.briarproject.bramble.api.db.DatabaseSpaceUsage;
 import org.briarproject.bramble.api.db.DbClosedException;
 import org.briarproject.bramble.api.db.DbException;
 import org.briarproject.bramble.api.db.MigrationListener;
@@ -52,8 +54,8 @@ class HyperSqlDatabase extends JdbcDatabase {
 
 	@Inject
 	HyperSqlDatabase(DatabaseConfig config, MessageFactory messageFactory,
-			Clock clock) {
-		super(dbTypes, messageFactory, clock);
+			Clock clock, CryptoComponent crypto) {
+		super(dbTypes, config, messageFactory, clock, crypto);
 		this.config = config;
 		File dir = config.getDatabaseDirectory();
 		String path = new File(dir, "db").getAbsolutePath();
@@ -101,6 +103,22 @@ class HyperSqlDatabase extends JdbcDatabase {
 		return DriverManager.getConnection(url + ";crypt_key=" + hex);
 	}
 
+	@Override
+	public DatabaseSpaceUsage getSpaceUsage(Connection txn) {
+		// HyperSQL doesn't report how much of its files is free, so treat
+		// all the space as live
+		long fileBytes = 0;
+		File[] files = config.getDatabaseDirectory().listFiles();
+		if (files != null) for (File f : files) fileBytes += f.length();
+		return new DatabaseSpaceUsage(fileBytes, fileBytes);
+	}
+
+	@Override
+	public boolean reclaimSpace(Connection txn, long maxBytes) {
+		// HyperSQL can only compact its files when the database is closed
+		return false;
+	}
+
 	@Override
 	protected void compactAndClose() throws DbException {
 		Connection c = null;
@@ -6,6 +6,7 @@ import org.briarproject.bramble.api.contact.PendingContact;
 import org.briarproject.bramble.api.contact.PendingContactId;
 import org.briarproject.bramble.api.crypto.AgreementPrivateKey;
 import org.briarproject.bramble.api.crypto.AgreementPublicKey;
+import org.briarproject.bramble.api.crypto.CryptoComponent;
 import org.briarproject.bramble.api.crypto.PrivateKey;
 import org.briarproject.bramble.api.crypto.PublicKey;
 import org.briarproject.bramble.api.crypto.SecretKey;
@@ -13,6 +14,7 @@ import org.briarproject.bramble.api.crypto.SignaturePrivateKey;
 import org.briarproject.bramble.api.crypto.SignaturePublicKey;
 import org.briarproject.bramble.api.db.DataTooNewException;
 import org.briarproject.bramble.api.db.DataTooOldException;
+import org.briarproject.bramble.api.db.DatabaseConfig;
 import org.briarproject.bramble.api.db.DbClosedException;
 import org.briarproject.bramble.api.db.DbException;
 import org.briarproject.bramble.api.db.MessageDeletedException;
@@ -41,21 +43,27 @@ import org.briarproject.bramble.api.transport.TransportKeySet;
 import org.briarproject.bramble.api.transport.TransportKeys;
 import org.briarproject.nullsafety.NotNullByDefault;
 
+import java.io.File;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -64,6 +72,7 @@ import java.util.logging.Logger;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 
+import static java.lang.Math.min;
 import static java.sql.Types.BINARY;
 import static java.sql.Types.BOOLEAN;
 import static java.sql.Types.INTEGER;
@@ -86,6 +95,10 @@ import static org.briarproject.bramble.api.sync.validation.MessageState.PENDING;
 import static org.briarproject.bramble.api.sync.validation.MessageState.UNKNOWN;
 import static org.briarproject.bramble.db.DatabaseConstants.DB_SETTINGS_NAMESPACE;
 import static org.briarproject.bramble.db.DatabaseConstants.DIRTY_KEY;
+import static org.briarproject.bramble.db.DatabaseConstants.MAX_INLINE_MESSAGE_LENGTH;
+import static org.briarproject.bramble.db.DatabaseConstants.MAX_MESSAGE_FILES_PER_TRANSACTION;
+import static org.briarproject.bramble.db.DatabaseConstants.MESSAGE_FILES_KEY;
+import static org.briarproject.bramble.db.DatabaseConstants.MESSAGE_FILE_DIRECTORY;
 import static org.briarproject.bramble.db.DatabaseConstants.SCHEMA_VERSION_KEY;
 import static org.briarproject.bramble.db.ExponentialBackoff.calculateExpiry;
 import static org.briarproject.bramble.db.JdbcUtils.tryToClose;
@@ -101,7 +114,7 @@ import static org.briarproject.bramble.util.LogUtils.now;
 abstract class JdbcDatabase implements Database<Connection> {
 
 	// Package access for testing
-	static final int CODE_SCHEMA_VERSION = 50;
+	static final int CODE_SCHEMA_VERSION = 51;
 
 	/**
 	 * The maximum number of idle connections to keep open.
@@ -113,6 +126,11 @@ abstract class JdbcDatabase implements Database<Connection> {
 	private static final int OFFSET_CURR = 0;
 	private static final int OFFSET_NEXT = 1;
 
+	/**
+	 * The maximum number of message IDs to include in a single query.
+	 */
+	private static final int MAX_MESSAGE_IDS_PER_QUERY = 100;
+
 	private static final String CREATE_SETTINGS =
 			"CREATE TABLE settings"
 					+ " (namespace _STRING NOT NULL,"
@@ -195,6 +213,9 @@ abstract class JdbcDatabase implements Database<Connection> {
 					+ " cleanupDeadline BIGINT,"
 					+ " length INT NOT NULL,"
 					+ " raw BLOB," // Null if message has been deleted
+					// True if the raw message is stored in the message file
+					// store, in which case raw is empty
+					+ " rawInFile BOOLEAN DEFAULT FALSE NOT NULL,"
 					+ " PRIMARY KEY (messageId),"
 					+ " FOREIGN KEY (groupId)"
 					+ " REFERENCES groups (groupId)"
@@ -337,6 +358,11 @@ abstract class JdbcDatabase implements Database<Connection> {
 			"CREATE INDEX IF NOT EXISTS messageMetadataByGroupIdState"
 					+ " ON messageMetadata (groupId, state)";
 
+	private static final String
+			INDEX_MESSAGE_METADATA_BY_GROUP_ID_META_KEY_VALUE =
+			"CREATE INDEX IF NOT EXISTS messageMetadataByGroupIdMetaKeyValue"
+					+ " ON messageMetadata (groupId, metaKey, value)";
+
 	private static final String INDEX_MESSAGE_DEPENDENCIES_BY_DEPENDENCY_ID =
 			"CREATE INDEX IF NOT EXISTS messageDependenciesByDependencyId"
 					+ " ON messageDependencies (dependencyId)";
@@ -361,10 +387,19 @@ abstract class JdbcDatabase implements Database<Connection> {
 	private static final Logger LOG =
 			getLogger(JdbcDatabase.class.getName());
 
+	private final DatabaseConfig config;
 	private final MessageFactory messageFactory;
 	private final Clock clock;
+	private final CryptoComponent crypto;
 	private final DatabaseTypes dbTypes;
 
+	/**
+	 * Changes to the message file store that need to be made, or undone,
+	 * when each transaction commits or aborts.
+	 */
+	private final Map<Connection, PendingFileChanges> pendingFileChanges =
+			new ConcurrentHashMap<>();
+
 	private final Lock connectionsLock = new ReentrantLock();
 	private final Condition connectionsChanged = connectionsLock.newCondition();
 
@@ -378,6 +413,9 @@ abstract class JdbcDatabase implements Database<Connection> {
 
 	private volatile boolean wasDirtyOnInitialisation = false;
 
+	@Nullable
+	private volatile MessageFileStore messageFileStore = null;
+
 	protected abstract Connection createConnection()
 			throws DbException, SQLException;
 
@@ -385,15 +423,17 @@ abstract class JdbcDatabase implements Database<Connection> {
 	// migrations or if the database was not shut down cleanly
 	protected abstract void compactAndClose() throws DbException;
 
-	JdbcDatabase(DatabaseTypes databaseTypes, MessageFactory messageFactory,
-			Clock clock) {
+	JdbcDatabase(DatabaseTypes databaseTypes, DatabaseConfig config,
+			MessageFactory messageFactory, Clock clock,
+			CryptoComponent crypto) {
 		this.dbTypes = databaseTypes;
+		this.config = config;
 		this.messageFactory = messageFactory;
 		this.clock = clock;
+		this.crypto = crypto;
 	}
 
-	protected void open(String driverClass, boolean reopen,
-			@SuppressWarnings("unused") SecretKey key,
+	protected void open(String driverClass, boolean reopen, SecretKey key,
 			@Nullable MigrationListener listener) throws DbException {
 		// Load the JDBC driver
 		try {
@@ -401,6 +441,9 @@ abstract class JdbcDatabase implements Database<Connection> {
 		} catch (ClassNotFoundException e) {
 			throw new DbException(e);
 		}
+		File fileStoreDir = new File(config.getDatabaseDirectory(),
+				MESSAGE_FILE_DIRECTORY);
+		messageFileStore = new MessageFileStore(fileStoreDir, crypto, key);
 		// Open the database and create the tables and indexes if necessary
 		boolean compact;
 		Connection txn = startTransaction();
@@ -426,6 +469,12 @@ abstract class JdbcDatabase implements Database<Connection> {
 			abortTransaction(txn);
 			throw e;
 		}
+		// If the DB wasn't shut down cleanly, files may have been written
+		// for transactions that didn't commit, or not deleted for
+		// transactions that did
+		if (wasDirtyOnInitialisation) deleteUnreferencedMessageFiles();
+		// Move messages into or out of the file store if necessary
+		if (migrateMessageFiles()) compact = true;
 		// Compact the database if necessary
 		if (compact) {
 			if (listener != null) listener.onDatabaseCompaction();
@@ -442,6 +491,219 @@ abstract class JdbcDatabase implements Database<Connection> {
 		}
 	}
 
+	private void deleteUnreferencedMessageFiles() throws DbException {
+		MessageFileStore fileStore = getMessageFileStore();
+		List<MessageId> ids = fileStore.getMessageIdsAndDeleteTemporaryFiles();
+		if (ids.isEmpty()) return;
+		List<MessageId> unreferenced = new ArrayList<>();
+		Connection txn = startTransaction();
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			String sql = "SELECT NULL FROM messages"
+					+ " WHERE messageId = ? AND rawInFile = TRUE";
+			ps = txn.prepareStatement(sql);
+			for (MessageId m : ids) {
+				ps.setBytes(1, m.getBytes());
+				rs = ps.executeQuery();
+				if (!rs.next()) unreferenced.add(m);
+				rs.close();
+			}
+			ps.close();
+			commitTransaction(txn);
+		} catch (SQLException e) {
+			tryToClose(rs, LOG, WARNING);
+			tryToClose(ps, LOG, WARNING);
+			abortTransaction(txn);
+			throw new DbException(e);
+		}
+		for (MessageId m : unreferenced) fileStore.delete(m);
+		if (LOG.isLoggable(INFO)) {
+			LOG.info("Deleted " + unreferenced.size()
+					+ " unreferenced message files");
+		}
+	}
+
+	/**
+	 * Moves large messages into the message file store if it's enabled, or
+	 * moves all messages out of the file store if it's disabled, unless
+	 * this has already been done.
+	 *
+	 * @return true if any messages were moved
+	 */
+	private boolean migrateMessageFiles() throws DbException {
+		boolean useFiles = config.useMessageFileStore();
+		Connection txn = startTransaction();
+		boolean usingFiles;
+		try {
+			Settings s = getSettings(txn, DB_SETTINGS_NAMESPACE);
+			usingFiles = s.getBoolean(MESSAGE_FILES_KEY, false);
+			commitTransaction(txn);
+		} catch (DbException e) {
+			abortTransaction(txn);
+			throw e;
+		}
+		if (usingFiles == useFiles) return false;
+		long start = now();
+		int total = 0, moved;
+		do {
+			// Move the messages in batches, so there's no need to hold all
+			// the moved messages in one transaction
+			txn = startTransaction();
+			try {
+				if (useFiles) moved = moveMessagesToFiles(txn);
+				else moved = moveMessagesFromFiles(txn);
+				if (moved == 0) {
+					Settings s = new Settings();
+					s.putBoolean(MESSAGE_FILES_KEY, useFiles);
+					mergeSettings(txn, s, DB_SETTINGS_NAMESPACE);
+				}
+				commitTransaction(txn);
+			} catch (DbException e) {
+				abortTransaction(txn);
+				throw e;
+			}
+			total += moved;
+		} while (moved > 0);
+		if (LOG.isLoggable(INFO)) {
+			LOG.info("Moved " + total + " messages "
+					+ (useFiles ? "into" : "out of") + " file store");
+		}
+		logDuration(LOG, "Migrating message file store", start);
+		return total > 0;
+	}
+
+	private int moveMessagesToFiles(Connection txn) throws DbException {
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			String sql = "SELECT messageId, raw FROM messages"
+					+ " WHERE rawInFile = FALSE AND raw IS NOT NULL"
+					+ " AND length > ?"
+					+ " LIMIT ?";
+			ps = txn.prepareStatement(sql);
+			ps.setInt(1, MAX_INLINE_MESSAGE_LENGTH);
+			ps.setInt(2, MAX_MESSAGE_FILES_PER_TRANSACTION);
+			rs = ps.executeQuery();
+			List<MessageId> ids = new ArrayList<>();
+			while (rs.next()) {
+				MessageId m = new MessageId(rs.getBytes(1));
+				writeMessageFile(txn, m, rs.getBytes(2));
+				ids.add(m);
+			}
+			rs.close();
+			ps.close();
+			sql = "UPDATE messages SET raw = ?, rawInFile = TRUE"
+					+ " WHERE messageId = ?";
+			ps = txn.prepareStatement(sql);
+			ps.setBytes(1, new byte[0]);
+			for (MessageId m : ids) {
+				ps.setBytes(2, m.getBytes());
+				ps.addBatch();
+			}
+			int[] batchAffected = ps.executeBatch();
+			if (batchAffected.length != ids.size())
+				throw new DbStateException();
+			for (int rows : batchAffected)
+				if (rows != 1) throw new DbStateException();
+			ps.close();
+			return ids.size();
+		} catch (SQLException e) {
+			tryToClose(rs, LOG, WARNING);
+			tryToClose(ps, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
+	private int moveMessagesFromFiles(Connection txn) throws DbException {
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			String sql = "SELECT messageId FROM messages"
+					+ " WHERE rawInFile = TRUE"
+					+ " LIMIT ?";
+			ps = txn.prepareStatement(sql);
+			ps.setInt(1, MAX_MESSAGE_FILES_PER_TRANSACTION);
+			rs = ps.executeQuery();
+			List<MessageId> ids = new ArrayList<>();
+			while (rs.next()) ids.add(new MessageId(rs.getBytes(1)));
+			rs.close();
+			ps.close();
+			sql = "UPDATE messages SET raw = ?, rawInFile = FALSE"
+					+ " WHERE messageId = ?";
+			ps = txn.prepareStatement(sql);
+			for (MessageId m : ids) {
+				ps.setBytes(1, readMessageFile(m));
+				ps.setBytes(2, m.getBytes());
+				int affected = ps.executeUpdate();
+				if (affected != 1) throw new DbStateException();
+				deleteMessageFileOnCommit(txn, m);
+			}
+			ps.close();
+			return ids.size();
+		} catch (SQLException e) {
+			tryToClose(rs, LOG, WARNING);
+			tryToClose(ps, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
+	private MessageFileStore getMessageFileStore() {
+		MessageFileStore fileStore = messageFileStore;
+		// The file store is created before the first transaction starts
+		if (fileStore == null) throw new IllegalStateException();
+		return fileStore;
+	}
+
+	private PendingFileChanges getPendingFileChanges(Connection txn) {
+		// Each connection is only used by one thread at a time
+		PendingFileChanges changes = pendingFileChanges.get(txn);
+		if (changes == null) {
+			changes = new PendingFileChanges();
+			pendingFileChanges.put(txn, changes);
+		}
+		return changes;
+	}
+
+	/**
+	 * Writes a raw message to the file store. The file is deleted if the
+	 * transaction aborts.
+	 */
+	private void writeMessageFile(Connection txn, MessageId m, byte[] raw)
+			throws DbException {
+		PendingFileChanges changes = getPendingFileChanges(txn);
+		// If the file was going to be deleted when the transaction commits,
+		// keep it instead
+		if (changes.deleted.remove(m)) return;
+		// As the store is content-addressed, an existing file must contain
+		// the same message. It may be referenced by a committed transaction,
+		// so it mustn't be deleted if this transaction aborts
+		MessageFileStore fileStore = getMessageFileStore();
+		if (fileStore.contains(m)) return;
+		try {
+			fileStore.write(m, raw);
+		} catch (IOException e) {
+			throw new DbException(e);
+		}
+		changes.written.add(m);
+	}
+
+	private byte[] readMessageFile(MessageId m) throws DbException {
+		try {
+			return getMessageFileStore().read(m);
+		} catch (IOException e) {
+			throw new DbException(e);
+		}
+	}
+
+	/**
+	 * Deletes a message's file from the file store, if it exists, when the
+	 * transaction commits.
+	 */
+	private void deleteMessageFileOnCommit(Connection txn, MessageId m) {
+		getPendingFileChanges(txn).deleted.add(m);
+	}
+
 	@Override
 	public boolean wasDirtyOnInitialisation() {
 		return wasDirtyOnInitialisation;
@@ -499,7 +761,8 @@ abstract class JdbcDatabase implements Database<Connection> {
 				new Migration46_47(dbTypes),
 				new Migration47_48(),
 				new Migration48_49(),
-				new Migration49_50()
+				new Migration49_50(),
+				new Migration50_51()
 		);
 	}
 
@@ -559,6 +822,7 @@ abstract class JdbcDatabase implements Database<Connection> {
 			s.executeUpdate(INDEX_CONTACTS_BY_AUTHOR_ID);
 			s.executeUpdate(INDEX_GROUPS_BY_CLIENT_ID_MAJOR_VERSION);
 			s.executeUpdate(INDEX_MESSAGE_METADATA_BY_GROUP_ID_STATE);
+			s.executeUpdate(INDEX_MESSAGE_METADATA_BY_GROUP_ID_META_KEY_VALUE);
 			s.executeUpdate(INDEX_MESSAGE_DEPENDENCIES_BY_DEPENDENCY_ID);
 			s.executeUpdate(INDEX_STATUSES_BY_CONTACT_ID_GROUP_ID);
 			s.executeUpdate(INDEX_STATUSES_BY_CONTACT_ID_TIMESTAMP);
@@ -624,6 +888,12 @@ abstract class JdbcDatabase implements Database<Connection> {
 		} catch (SQLException e) {
 			logException(LOG, WARNING, e);
 		}
+		// Delete any files that were written by the transaction
+		PendingFileChanges changes = pendingFileChanges.remove(txn);
+		if (changes != null) {
+			MessageFileStore fileStore = getMessageFileStore();
+			for (MessageId m : changes.written) fileStore.delete(m);
+		}
 		closeConnection(txn);
 	}
 
@@ -643,14 +913,23 @@ abstract class JdbcDatabase implements Database<Connection> {
 	public void commitTransaction(Connection txn) throws DbException {
 		// If the transaction commits successfully then return the connection
 		// to the pool, otherwise close it
+		PendingFileChanges changes = pendingFileChanges.remove(txn);
 		try {
 			txn.commit();
 			returnConnectionToPool(txn);
 		} catch (SQLException e) {
+			// We don't know whether the transaction committed, so leave
+			// any files it wrote. If they're unreferenced they'll be
+			// deleted when the DB is next opened after a crash
 			logException(LOG, WARNING, e);
 			closeConnection(txn);
 			throw new DbException(e);
 		}
+		// Delete any files that are no longer referenced
+		if (changes != null) {
+			MessageFileStore fileStore = getMessageFileStore();
+			for (MessageId m : changes.deleted) fileStore.delete(m);
+		}
 	}
 
 	private void returnConnectionToPool(Connection txn) {
@@ -852,9 +1131,13 @@ abstract class JdbcDatabase implements Database<Connection> {
 			throws DbException {
 		PreparedStatement ps = null;
 		try {
+			byte[] raw = messageFactory.getRawMessage(m);
+			boolean rawInFile = config.useMessageFileStore()
+					&& raw.length > MAX_INLINE_MESSAGE_LENGTH;
+			if (rawInFile) writeMessageFile(txn, m.getId(), raw);
 			String sql = "INSERT INTO messages (messageId, groupId, timestamp,"
-					+ " state, shared, temporary, length, raw)"
-					+ " VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+					+ " state, shared, temporary, length, raw, rawInFile)"
+					+ " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
 			ps = txn.prepareStatement(sql);
 			ps.setBytes(1, m.getId().getBytes());
 			ps.setBytes(2, m.getGroupId().getBytes());
@@ -862,9 +1145,9 @@ abstract class JdbcDatabase implements Database<Connection> {
 			ps.setInt(4, state.getValue());
 			ps.setBoolean(5, shared);
 			ps.setBoolean(6, temporary);
-			byte[] raw = messageFactory.getRawMessage(m);
 			ps.setInt(7, raw.length);
-			ps.setBytes(8, raw);
+			ps.setBytes(8, rawInFile ? new byte[0] : raw);
+			ps.setBoolean(9, rawInFile);
 			int affected = ps.executeUpdate();
 			if (affected != 1) throw new DbStateException();
 			ps.close();
@@ -1442,7 +1725,8 @@ abstract class JdbcDatabase implements Database<Connection> {
 		PreparedStatement ps = null;
 		try {
 			String sql = "UPDATE messages"
-					+ " SET raw = NULL, cleanupDeadline = NULL"
+					+ " SET raw = NULL, rawInFile = FALSE,"
+					+ " cleanupDeadline = NULL"
 					+ " WHERE messageId = ?";
 			ps = txn.prepareStatement(sql);
 			ps.setBytes(1, m.getBytes());
@@ -1450,6 +1734,7 @@ abstract class JdbcDatabase implements Database<Connection> {
 			if (affected < 0) throw new DbStateException();
 			if (affected > 1) throw new DbStateException();
 			ps.close();
+			if (config.useMessageFileStore()) deleteMessageFileOnCommit(txn, m);
 			// Update denormalised column in statuses
 			sql = "UPDATE statuses SET deleted = TRUE WHERE messageId = ?";
 			ps = txn.prepareStatement(sql);
@@ -1866,7 +2151,8 @@ abstract class JdbcDatabase implements Database<Connection> {
 		PreparedStatement ps = null;
 		ResultSet rs = null;
 		try {
-			String sql = "SELECT groupId, timestamp, raw FROM messages"
+			String sql = "SELECT groupId, timestamp, raw, rawInFile"
+					+ " FROM messages"
 					+ " WHERE messageId = ?";
 			ps = txn.prepareStatement(sql);
 			ps.setBytes(1, m.getBytes());
@@ -1875,19 +2161,83 @@ abstract class JdbcDatabase implements Database<Connection> {
 			GroupId g = new GroupId(rs.getBytes(1));
 			long timestamp = rs.getLong(2);
 			byte[] raw = rs.getBytes(3);
+			boolean rawInFile = rs.getBoolean(4);
 			if (rs.next()) throw new DbStateException();
 			rs.close();
 			ps.close();
 			if (raw == null) throw new MessageDeletedException();
-			if (raw.length <= MESSAGE_HEADER_LENGTH) throw new AssertionError();
-			byte[] body = new byte[raw.length - MESSAGE_HEADER_LENGTH];
-			System.arraycopy(raw, MESSAGE_HEADER_LENGTH, body, 0, body.length);
-			return new Message(m, g, timestamp, body);
+			if (rawInFile) raw = readMessageFile(m);
+			return createMessage(m, g, timestamp, raw);
+		} catch (SQLException e) {
+			tryToClose(rs, LOG, WARNING);
+			tryToClose(ps, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
+	@Override
+	public Map<MessageId, Message> getMessages(Connection txn,
+			Collection<MessageId> ids) throws DbException {
+		List<MessageId> idList = new ArrayList<>(ids);
+		Map<MessageId, Message> messages = new HashMap<>();
+		// Messages stored in files are read after closing the result set
+		Map<MessageId, GroupId> inFileGroups = new HashMap<>();
+		Map<MessageId, Long> inFileTimestamps = new HashMap<>();
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			for (int i = 0; i < idList.size();
+					i += MAX_MESSAGE_IDS_PER_QUERY) {
+				List<MessageId> chunk = idList.subList(i,
+						min(i + MAX_MESSAGE_IDS_PER_QUERY, idList.size()));
+				StringBuilder sql = new StringBuilder(
+						"SELECT messageId, groupId, timestamp, raw, rawInFile"
+								+ " FROM messages"
+								+ " WHERE messageId IN (?");
+				for (int j = 1; j < chunk.size(); j++) sql.append(", ?");
+				sql.append(')');
+				ps = txn.prepareStatement(sql.toString());
+				for (int j = 0; j < chunk.size(); j++)
+					ps.setBytes(j + 1, chunk.get(j).getBytes());
+				rs = ps.executeQuery();
+				boolean deleted = false;
+				while (rs.next()) {
+					MessageId m = new MessageId(rs.getBytes(1));
+					GroupId g = new GroupId(rs.getBytes(2));
+					long timestamp = rs.getLong(3);
+					byte[] raw = rs.getBytes(4);
+					boolean rawInFile = rs.getBoolean(5);
+					if (raw == null) {
+						deleted = true;
+					} else if (rawInFile) {
+						inFileGroups.put(m, g);
+						inFileTimestamps.put(m, timestamp);
+					} else {
+						messages.put(m, createMessage(m, g, timestamp, raw));
+					}
+				}
+				rs.close();
+				ps.close();
+				if (deleted) throw new MessageDeletedException();
+			}
 		} catch (SQLException e) {
 			tryToClose(rs, LOG, WARNING);
 			tryToClose(ps, LOG, WARNING);
 			throw new DbException(e);
 		}
+		for (MessageId m : inFileGroups.keySet()) {
+			messages.put(m, createMessage(m, inFileGroups.get(m),
+					inFileTimestamps.get(m), readMessageFile(m)));
+		}
+		return messages;
+	}
+
+	private Message createMessage(MessageId m, GroupId g, long timestamp,
+			byte[] raw) {
+		if (raw.length <= MESSAGE_HEADER_LENGTH) throw new AssertionError();
+		byte[] body = new byte[raw.length - MESSAGE_HEADER_LENGTH];
+		System.arraycopy(raw, MESSAGE_HEADER_LENGTH, body, 0, body.length);
+		return new Message(m, g, timestamp, body);
 	}
 
 	@Override
@@ -2012,13 +2362,59 @@ abstract class JdbcDatabase implements Database<Connection> {
 	@Override
 	public Map<MessageId, Metadata> getMessageMetadata(Connection txn,
 			GroupId g, Metadata query) throws DbException {
-		// Retrieve the matching message IDs
-		Collection<MessageId> matches = getMessageIds(txn, g, query);
-		if (matches.isEmpty()) return Collections.emptyMap();
-		// Retrieve the metadata for each match
-		Map<MessageId, Metadata> all = new HashMap<>(matches.size());
-		for (MessageId m : matches) all.put(m, getMessageMetadata(txn, m));
-		return all;
+		// If there are no query terms, return all delivered messages,
+		// including any that don't have metadata
+		if (query.isEmpty()) {
+			Collection<MessageId> ids = getMessageIds(txn, g);
+			Map<MessageId, Metadata> all = new HashMap<>(ids.size());
+			for (MessageId m : ids) all.put(m, getMessageMetadata(txn, m));
+			return all;
+		}
+		// Retrieve the metadata of the messages matching the first query
+		// term in a single query, then check the remaining terms
+		Iterator<Entry<String, byte[]>> it = query.entrySet().iterator();
+		Entry<String, byte[]> first = it.next();
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			String sql = "SELECT m.messageId, m.metaKey, m.value"
+					+ " FROM messageMetadata AS q"
+					+ " JOIN messageMetadata AS m"
+					+ " ON q.messageId = m.messageId"
+					+ " WHERE q.groupId = ? AND q.state = ?"
+					+ " AND q.metaKey = ? AND q.value = ?";
+			ps = txn.prepareStatement(sql);
+			ps.setBytes(1, g.getBytes());
+			ps.setInt(2, DELIVERED.getValue());
+			ps.setString(3, first.getKey());
+			ps.setBytes(4, first.getValue());
+			rs = ps.executeQuery();
+			Map<MessageId, Metadata> all = new HashMap<>();
+			while (rs.next()) {
+				MessageId messageId = new MessageId(rs.getBytes(1));
+				Metadata metadata = all.get(messageId);
+				if (metadata == null) {
+					metadata = new Metadata();
+					all.put(messageId, metadata);
+				}
+				metadata.put(rs.getString(2), rs.getBytes(3));
+			}
+			rs.close();
+			ps.close();
+			while (it.hasNext()) {
+				Entry<String, byte[]> e = it.next();
+				Iterator<Metadata> matches = all.values().iterator();
+				while (matches.hasNext()) {
+					byte[] value = matches.next().get(e.getKey());
+					if (!Arrays.equals(value, e.getValue())) matches.remove();
+				}
+			}
+			return all;
+		} catch (SQLException e) {
+			tryToClose(rs, LOG, WARNING);
+			tryToClose(ps, LOG, WARNING);
+			throw new DbException(e);
+		}
 	}
 
 	@Override
@@ -2298,6 +2694,44 @@ abstract class JdbcDatabase implements Database<Connection> {
 		}
 	}
 
+	@Override
+	public Map<MessageId, GroupId> getMessagesToOfferWithGroups(
+			Connection txn, ContactId c, int maxMessages, long maxLatency)
+			throws DbException {
+		long now = clock.currentTimeMillis();
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			String sql = "SELECT messageId, groupId FROM statuses"
+					+ " WHERE contactId = ? AND state = ?"
+					+ " AND groupShared = TRUE AND messageShared = TRUE"
+					+ " AND deleted = FALSE"
+					+ " AND seen = FALSE AND requested = FALSE"
+					+ " AND (expiry <= ? OR maxLatency IS NULL"
+					+ " OR ? < maxLatency)"
+					+ " ORDER BY timestamp LIMIT ?";
+			ps = txn.prepareStatement(sql);
+			ps.setInt(1, c.getInt());
+			ps.setInt(2, DELIVERED.getValue());
+			ps.setLong(3, now);
+			ps.setLong(4, maxLatency);
+			ps.setInt(5, maxMessages);
+			rs = ps.executeQuery();
+			Map<MessageId, GroupId> ids = new LinkedHashMap<>();
+			while (rs.next()) {
+				ids.put(new MessageId(rs.getBytes(1)),
+						new GroupId(rs.getBytes(2)));
+			}
+			rs.close();
+			ps.close();
+			return ids;
+		} catch (SQLException e) {
+			tryToClose(rs, LOG, WARNING);
+			tryToClose(ps, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
 	@Override
 	public Collection<MessageId> getMessagesToRequest(Connection txn,
 			ContactId c, int maxMessages) throws DbException {
@@ -2323,6 +2757,101 @@ abstract class JdbcDatabase implements Database<Connection> {
 		}
 	}
 
+	@Override
+	public Map<ContactId, Collection<MessageId>> getMessagesToAck(
+			Connection txn, Collection<ContactId> contacts, int maxMessages)
+			throws DbException {
+		PreparedStatement ps = null;
+		try {
+			String sql = "SELECT messageId FROM statuses"
+					+ " WHERE contactId = ? AND ack = TRUE"
+					+ " LIMIT ?";
+			ps = txn.prepareStatement(sql);
+			ps.setInt(2, maxMessages);
+			Map<ContactId, Collection<MessageId>> ids =
+					getMessageIdsByContact(ps, contacts);
+			ps.close();
+			return ids;
+		} catch (SQLException e) {
+			tryToClose(ps, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
+	@Override
+	public Map<ContactId, Collection<MessageId>> getMessagesToOffer(
+			Connection txn, Collection<ContactId> contacts, int maxMessages,
+			long maxLatency) throws DbException {
+		long now = clock.currentTimeMillis();
+		PreparedStatement ps = null;
+		try {
+			String sql = "SELECT messageId FROM statuses"
+					+ " WHERE contactId = ? AND state = ?"
+					+ " AND groupShared = TRUE AND messageShared = TRUE"
+					+ " AND deleted = FALSE"
+					+ " AND seen = FALSE AND requested = FALSE"
+					+ " AND (expiry <= ? OR maxLatency IS NULL"
+					+ " OR ? < maxLatency)"
+					+ " ORDER BY timestamp LIMIT ?";
+			ps = txn.prepareStatement(sql);
+			ps.setInt(2, DELIVERED.getValue());
+			ps.setLong(3, now);
+			ps.setLong(4, maxLatency);
+			ps.setInt(5, maxMessages);
+			Map<ContactId, Collection<MessageId>> ids =
+					getMessageIdsByContact(ps, contacts);
+			ps.close();
+			return ids;
+		} catch (SQLException e) {
+			tryToClose(ps, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
+	@Override
+	public Map<ContactId, Collection<MessageId>> getMessagesToRequest(
+			Connection txn, Collection<ContactId> contacts, int maxMessages)
+			throws DbException {
+		PreparedStatement ps = null;
+		try {
+			String sql = "SELECT messageId FROM offers"
+					+ " WHERE contactId = ?"
+					+ " LIMIT ?";
+			ps = txn.prepareStatement(sql);
+			ps.setInt(2, maxMessages);
+			Map<ContactId, Collection<MessageId>> ids =
+					getMessageIdsByContact(ps, contacts);
+			ps.close();
+			return ids;
+		} catch (SQLException e) {
+			tryToClose(ps, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
+	/**
+	 * Executes the given statement once for each of the given contacts,
+	 * binding the contact ID to the first parameter, and returns the
+	 * message IDs selected for each contact. Contacts with no message IDs
+	 * are not included in the returned map.
+	 */
+	private Map<ContactId, Collection<MessageId>> getMessageIdsByContact(
+			PreparedStatement ps, Collection<ContactId> contacts)
+			throws SQLException {
+		Map<ContactId, Collection<MessageId>> ids = new HashMap<>();
+		for (ContactId c : contacts) {
+			ps.setInt(1, c.getInt());
+			// If an exception is thrown, closing the statement will close
+			// the result set
+			ResultSet rs = ps.executeQuery();
+			List<MessageId> contactIds = new ArrayList<>();
+			while (rs.next()) contactIds.add(new MessageId(rs.getBytes(1)));
+			rs.close();
+			if (!contactIds.isEmpty()) ids.put(c, contactIds);
+		}
+		return ids;
+	}
+
 	@Override
 	public Collection<MessageId> getMessagesToSend(Connection txn,
 			ContactId c, long capacity, long maxLatency) throws DbException {
@@ -2414,6 +2943,69 @@ abstract class JdbcDatabase implements Database<Connection> {
 		}
 	}
 
+	@Override
+	public Map<GroupId, Collection<MessageId>> getUnseenMessages(
+			Connection txn, ContactId c) throws DbException {
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			String sql = "SELECT groupId, messageId FROM statuses"
+					+ " WHERE contactId = ? AND state = ?"
+					+ " AND groupShared = TRUE AND messageShared = TRUE"
+					+ " AND deleted = FALSE"
+					+ " AND seen = FALSE";
+			ps = txn.prepareStatement(sql);
+			ps.setInt(1, c.getInt());
+			ps.setInt(2, DELIVERED.getValue());
+			rs = ps.executeQuery();
+			Map<GroupId, Collection<MessageId>> ids = new HashMap<>();
+			while (rs.next()) {
+				GroupId g = new GroupId(rs.getBytes(1));
+				Collection<MessageId> groupIds = ids.get(g);
+				if (groupIds == null) {
+					groupIds = new ArrayList<>();
+					ids.put(g, groupIds);
+				}
+				groupIds.add(new MessageId(rs.getBytes(2)));
+			}
+			rs.close();
+			ps.close();
+			return ids;
+		} catch (SQLException e) {
+			tryToClose(rs, LOG, WARNING);
+			tryToClose(ps, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
+	@Override
+	public Map<MessageId, Boolean> getMessagesToReconcile(Connection txn,
+			ContactId c, GroupId g) throws DbException {
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			String sql = "SELECT messageId, seen FROM statuses"
+					+ " WHERE contactId = ? AND groupId = ? AND state = ?"
+					+ " AND groupShared = TRUE AND messageShared = TRUE"
+					+ " AND deleted = FALSE";
+			ps = txn.prepareStatement(sql);
+			ps.setInt(1, c.getInt());
+			ps.setBytes(2, g.getBytes());
+			ps.setInt(3, DELIVERED.getValue());
+			rs = ps.executeQuery();
+			Map<MessageId, Boolean> ids = new HashMap<>();
+			while (rs.next())
+				ids.put(new MessageId(rs.getBytes(1)), rs.getBoolean(2));
+			rs.close();
+			ps.close();
+			return ids;
+		} catch (SQLException e) {
+			tryToClose(rs, LOG, WARNING);
+			tryToClose(ps, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
 	@Override
 	public Collection<MessageId> getMessagesToValidate(Connection txn)
 			throws DbException {
@@ -2479,14 +3071,22 @@ abstract class JdbcDatabase implements Database<Connection> {
 	@Override
 	public Map<GroupId, Collection<MessageId>> getMessagesToDelete(
 			Connection txn) throws DbException {
+		return getMessagesToDelete(txn, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public Map<GroupId, Collection<MessageId>> getMessagesToDelete(
+			Connection txn, int maxMessages) throws DbException {
 		long now = clock.currentTimeMillis();
 		PreparedStatement ps = null;
 		ResultSet rs = null;
 		try {
 			String sql = "SELECT messageId, groupId FROM messages"
-					+ " WHERE cleanupDeadline <= ?";
+					+ " WHERE cleanupDeadline <= ?"
+					+ " ORDER BY cleanupDeadline LIMIT ?";
 			ps = txn.prepareStatement(sql);
 			ps.setLong(1, now);
+			ps.setInt(2, maxMessages);
 			rs = ps.executeQuery();
 			Map<GroupId, Collection<MessageId>> ids = new HashMap<>();
 			while (rs.next()) {
@@ -3172,14 +3772,28 @@ abstract class JdbcDatabase implements Database<Connection> {
 	@Override
 	public void removeGroup(Connection txn, GroupId g) throws DbException {
 		PreparedStatement ps = null;
+		ResultSet rs = null;
 		try {
-			String sql = "DELETE FROM groups WHERE groupId = ?";
+			// Find any files that will be unreferenced when the group's
+			// messages are deleted
+			String sql = "SELECT messageId FROM messages"
+					+ " WHERE groupId = ? AND rawInFile = TRUE";
+			ps = txn.prepareStatement(sql);
+			ps.setBytes(1, g.getBytes());
+			rs = ps.executeQuery();
+			while (rs.next()) {
+				deleteMessageFileOnCommit(txn, new MessageId(rs.getBytes(1)));
+			}
+			rs.close();
+			ps.close();
+			sql = "DELETE FROM groups WHERE groupId = ?";
 			ps = txn.prepareStatement(sql);
 			ps.setBytes(1, g.getBytes());
 			int affected = ps.executeUpdate();
 			if (affected != 1) throw new DbStateException();
 			ps.close();
 		} catch (SQLException e) {
+			tryToClose(rs, LOG, WARNING);
 			tryToClose(ps, LOG, WARNING);
 			throw new DbException(e);
 		}
@@ -3239,6 +3853,7 @@ abstract class JdbcDatabase implements Database<Connection> {
 			int affected = ps.executeUpdate();
 			if (affected != 1) throw new DbStateException();
 			ps.close();
+			if (config.useMessageFileStore()) deleteMessageFileOnCommit(txn, m);
 		} catch (SQLException e) {
 			tryToClose(ps, LOG, WARNING);
 			throw new DbException(e);
@@ -3310,13 +3925,24 @@ abstract class JdbcDatabase implements Database<Connection> {
 	@Override
 	public void removeTemporaryMessages(Connection txn) throws DbException {
 		Statement s = null;
+		ResultSet rs = null;
 		try {
-			String sql = "DELETE FROM messages WHERE temporary = TRUE";
 			s = txn.createStatement();
+			// Find any files that will be unreferenced when the messages are
+			// deleted
+			String sql = "SELECT messageId FROM messages"
+					+ " WHERE temporary = TRUE AND rawInFile = TRUE";
+			rs = s.executeQuery(sql);
+			while (rs.next()) {
+				deleteMessageFileOnCommit(txn, new MessageId(rs.getBytes(1)));
+			}
+			rs.close();
+			sql = "DELETE FROM messages WHERE temporary = TRUE";
 			int affected = s.executeUpdate(sql);
 			if (affected < 0) throw new DbStateException();
 			s.close();
 		} catch (SQLException e) {
+			tryToClose(rs, LOG, WARNING);
 			tryToClose(s, LOG, WARNING);
 			throw new DbException(e);
 		}
@@ -3729,6 +4355,32 @@ abstract class JdbcDatabase implements Database<Connection> {
 		}
 	}
 
+	@Override
+	public void stopCleanupTimers(Connection txn, Collection<MessageId> ids)
+			throws DbException {
+		if (ids.isEmpty()) return;
+		PreparedStatement ps = null;
+		try {
+			String sql = "UPDATE messages SET cleanupDeadline = NULL"
+					+ " WHERE messageId = ?";
+			ps = txn.prepareStatement(sql);
+			for (MessageId m : ids) {
+				ps.setBytes(1, m.getBytes());
+				ps.addBatch();
+			}
+			int[] batchAffected = ps.executeBatch();
+			if (batchAffected.length != ids.size())
+				throw new DbStateException();
+			for (int rows : batchAffected) {
+				if (rows < 0 || rows > 1) throw new DbStateException();
+			}
+			ps.close();
+		} catch (SQLException e) {
+			tryToClose(ps, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
 	@Override
 	public void updateRetransmissionData(Connection txn, ContactId c,
 			MessageId m, long maxLatency) throws DbException {
@@ -3831,4 +4483,10 @@ abstract class JdbcDatabase implements Database<Connection> {
 			throw new DbException(e);
 		}
 	}
+
+	private static class PendingFileChanges {
+
+		private final Set<MessageId> written = new HashSet<>();
+		private final Set<MessageId> deleted = new HashSet<>();
+	}
 }
@@ -0,0 +1,193 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.FormatException;
+import org.briarproject.bramble.api.crypto.CryptoComponent;
+import org.briarproject.bramble.api.crypto.DecryptionException;
+import org.briarproject.bramble.api.crypto.SecretKey;
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.bramble.api.sync.MessageId.LENGTH;
+import static org.briarproject.bramble.util.IoUtils.tryToClose;
+import static org.briarproject.bramble.util.StringUtils.fromHexString;
+import static org.briarproject.bramble.util.StringUtils.toHexString;
+
+/**
+ * Stores raw messages in encrypted files outside the database. Each file is
+ * named after the ID of the message it contains. As the ID is a hash of the
+ * message, the store is content-addressed and a file never needs to be
+ * modified once it has been written.
+ * <p>
+ * Each file contains the raw message, encrypted and authenticated with a key
+ * that's derived from the database key and the message ID. As each message
+ * has its own key, a file can't be swapped for the file of another message
+ * without being detected.
+ * <p>
+ * Files are written to a temporary file, synced and renamed, so a file
+ * that exists with its final name is always complete. Whether a file is
+ * referenced is recorded in the database, so the {@link JdbcDatabase}
+ * decides when files are written and deleted.
+ */
+@ThreadSafe
+@NotNullByDefault
+class MessageFileStore {
+
+	private static final Logger LOG =
+			getLogger(MessageFileStore.class.getName());
+
+	/**
+	 * Label for deriving the file store's key from the database key.
+	 */
+	private static final String FILE_STORE_KEY_LABEL =
+			"org.briarproject.bramble.db/MESSAGE_FILE_STORE_KEY";
+
+	/**
+	 * Label for deriving each message's key from the file store's key.
+	 */
+	private static final String MESSAGE_FILE_KEY_LABEL =
+			"org.briarproject.bramble.db/MESSAGE_FILE_KEY";
+
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private final File dir;
+	private final CryptoComponent crypto;
+	private final SecretKey key;
+
+	MessageFileStore(File dir, CryptoComponent crypto, SecretKey dbKey) {
+		this.dir = dir;
+		this.crypto = crypto;
+		key = crypto.deriveKey(FILE_STORE_KEY_LABEL, dbKey);
+	}
+
+	/**
+	 * Returns true if a file exists for the given message.
+	 */
+	boolean contains(MessageId m) {
+		return getFile(m).exists();
+	}
+
+	/**
+	 * Writes the given raw message to a file. The file is synced to disk
+	 * before this method returns.
+	 */
+	void write(MessageId m, byte[] raw) throws IOException {
+		File f = getFile(m);
+		File parent = f.getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs())
+			throw new IOException("Failed to create " + parent);
+		byte[] encrypted = encrypt(m, raw);
+		File temp = new File(parent, f.getName() + TEMP_SUFFIX);
+		FileOutputStream out = new FileOutputStream(temp);
+		try {
+			out.write(encrypted);
+			out.getFD().sync();
+			out.close();
+		} catch (IOException e) {
+			tryToClose(out, LOG, WARNING);
+			delete(temp);
+			throw e;
+		}
+		if (!temp.renameTo(f)) {
+			delete(temp);
+			throw new IOException("Failed to rename " + temp);
+		}
+	}
+
+	/**
+	 * Reads the raw message with the given ID from its file.
+	 */
+	byte[] read(MessageId m) throws IOException {
+		FileChannel channel = new FileInputStream(getFile(m)).getChannel();
+		try {
+			long size = channel.size();
+			if (size == 0 || size > Integer.MAX_VALUE)
+				throw new IOException("Invalid file length");
+			ByteBuffer buf = ByteBuffer.allocate((int) size);
+			while (buf.hasRemaining()) {
+				if (channel.read(buf) == -1) throw new IOException();
+			}
+			channel.close();
+			return decrypt(m, buf.array());
+		} catch (IOException e) {
+			tryToClose(channel, LOG, WARNING);
+			throw e;
+		}
+	}
+
+	/**
+	 * Deletes the file for the given message, if it exists.
+	 */
+	void delete(MessageId m) {
+		delete(getFile(m));
+	}
+
+	/**
+	 * Returns the IDs of all messages that have files, and deletes any
+	 * temporary files left behind by writes that didn't complete.
+	 */
+	List<MessageId> getMessageIdsAndDeleteTemporaryFiles() {
+		List<MessageId> ids = new ArrayList<>();
+		File[] subdirs = dir.listFiles();
+		if (subdirs == null) return ids;
+		for (File subdir : subdirs) {
+			File[] files = subdir.listFiles();
+			if (files == null) continue;
+			for (File f : files) {
+				String name = subdir.getName() + f.getName();
+				if (name.length() == LENGTH * 2) {
+					try {
+						ids.add(new MessageId(fromHexString(name)));
+						continue;
+					} catch (FormatException e) {
+						// Not a message file - fall through
+					}
+				}
+				if (name.endsWith(TEMP_SUFFIX)) delete(f);
+			}
+		}
+		return ids;
+	}
+
+	private File getFile(MessageId m) {
+		// Use the first byte of the ID as a subdirectory so no directory
+		// contains too many files
+		String hex = toHexString(m.getBytes());
+		File subdir = new File(dir, hex.substring(0, 2));
+		return new File(subdir, hex.substring(2));
+	}
+
+	private byte[] encrypt(MessageId m, byte[] raw) {
+		return crypto.encryptWithKey(raw, getMessageKey(m));
+	}
+
+	private byte[] decrypt(MessageId m, byte[] encrypted) throws IOException {
+		try {
+			return crypto.decryptWithKey(encrypted, getMessageKey(m));
+		} catch (DecryptionException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private SecretKey getMessageKey(MessageId m) {
+		return crypto.deriveKey(MESSAGE_FILE_KEY_LABEL, key, m.getBytes());
+	}
+
+	private void delete(File f) {
+		if (f.exists() && !f.delete() && LOG.isLoggable(WARNING))
+			LOG.warning("Failed to delete " + f);
+	}
+}
@@ -0,0 +1,80 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.db.CommitAction;
+import org.briarproject.bramble.api.db.DbException;
+import org.briarproject.bramble.api.db.DbRunnable;
+import org.briarproject.bramble.api.db.TransactionBatch;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static java.util.logging.Level.FINE;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.bramble.util.LogUtils.logDuration;
+import static org.briarproject.bramble.util.LogUtils.now;
+
+@NotThreadSafe
+@NotNullByDefault
+class TransactionBatchImpl implements TransactionBatch {
+
+	private static final Logger LOG =
+			getLogger(TransactionBatchImpl.class.getName());
+
+	private final DatabaseComponentImpl<?> db;
+	private final int maxTasks;
+	private final long maxBytes;
+	private final List<DbRunnable<DbException>> queued = new ArrayList<>();
+	private final List<CommitAction> actions = new ArrayList<>();
+
+	private long queuedBytes = 0;
+	private boolean closed = false;
+
+	TransactionBatchImpl(DatabaseComponentImpl<?> db, int maxTasks,
+			long maxBytes) {
+		if (maxTasks < 1 || maxBytes < 1) throw new IllegalArgumentException();
+		this.db = db;
+		this.maxTasks = maxTasks;
+		this.maxBytes = maxBytes;
+	}
+
+	@Override
+	public void add(long bytes, DbRunnable<DbException> task)
+			throws DbException {
+		if (closed) throw new IllegalStateException();
+		queued.add(task);
+		queuedBytes += bytes;
+		if (queued.size() >= maxTasks || queuedBytes >= maxBytes) flush();
+	}
+
+	@Override
+	public void flush() throws DbException {
+		if (closed) throw new IllegalStateException();
+		if (queued.isEmpty()) return;
+		List<DbRunnable<DbException>> tasks = new ArrayList<>(queued);
+		queued.clear();
+		queuedBytes = 0;
+		long start = now();
+		// The actions are only returned if the transaction commits
+		actions.addAll(db.runBatch(tasks));
+		if (LOG.isLoggable(FINE)) {
+			logDuration(LOG, "Running batch of " + tasks.size() + " tasks",
+					start);
+		}
+	}
+
+	@Override
+	public void close() throws DbException {
+		if (closed) return;
+		try {
+			flush();
+		} finally {
+			closed = true;
+			db.runActions(actions);
+			actions.clear();
+		}
+	}
+}
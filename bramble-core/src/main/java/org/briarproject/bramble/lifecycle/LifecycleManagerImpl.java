@@ -6,24 +6,40 @@ import org.briarproject.bramble.api.db.DataTooOldException;
 import org.briarproject.bramble.api.db.DatabaseComponent;
 import org.briarproject.bramble.api.db.DbException;
 import org.briarproject.bramble.api.db.MigrationListener;
+import org.briarproject.bramble.api.db.Transaction;
 import org.briarproject.bramble.api.event.EventBus;
 import org.briarproject.bramble.api.lifecycle.LifecycleManager;
 import org.briarproject.bramble.api.lifecycle.Service;
 import org.briarproject.bramble.api.lifecycle.ServiceException;
 import org.briarproject.bramble.api.lifecycle.event.LifecycleEvent;
+import org.briarproject.bramble.api.lifecycle.event.StartupTimingsEvent;
 import org.briarproject.bramble.api.system.Clock;
 import org.briarproject.nullsafety.NotNullByDefault;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 
 import javax.annotation.concurrent.ThreadSafe;
 import javax.inject.Inject;
 
+import static java.util.Collections.synchronizedMap;
+import static java.util.Collections.unmodifiableMap;
+import static java.util.concurrent.Executors.newCachedThreadPool;
 import static java.util.logging.Level.FINE;
 import static java.util.logging.Level.INFO;
 import static java.util.logging.Level.WARNING;
@@ -59,8 +75,12 @@ class LifecycleManagerImpl implements LifecycleManager, MigrationListener {
 	private final DatabaseComponent db;
 	private final EventBus eventBus;
 	private final Clock clock;
+	private final ThreadFactory threadFactory;
 	private final List<Service> services;
+	// Services that were registered with explicit dependencies
+	private final Map<Service, Collection<Service>> dependencies;
 	private final List<OpenDatabaseHook> openDatabaseHooks;
+	private final List<OpenDatabaseHook> separateOpenDatabaseHooks;
 	private final List<ExecutorService> executors;
 	private final CountDownLatch dbLatch = new CountDownLatch(1);
 	private final CountDownLatch startupLatch = new CountDownLatch(1);
@@ -70,12 +90,15 @@ class LifecycleManagerImpl implements LifecycleManager, MigrationListener {
 
 	@Inject
 	LifecycleManagerImpl(DatabaseComponent db, EventBus eventBus,
-			Clock clock) {
+			Clock clock, ThreadFactory threadFactory) {
 		this.db = db;
 		this.eventBus = eventBus;
 		this.clock = clock;
+		this.threadFactory = threadFactory;
 		services = new CopyOnWriteArrayList<>();
+		dependencies = new ConcurrentHashMap<>();
 		openDatabaseHooks = new CopyOnWriteArrayList<>();
+		separateOpenDatabaseHooks = new CopyOnWriteArrayList<>();
 		executors = new CopyOnWriteArrayList<>();
 	}
 
@@ -86,13 +109,31 @@ class LifecycleManagerImpl implements LifecycleManager, MigrationListener {
 		services.add(s);
 	}
 
+	@Override
+	public void registerService(Service s, Collection<Service> dependencies) {
+		if (LOG.isLoggable(INFO))
+			LOG.info("Registering service " + s.getClass().getSimpleName());
+		for (Service d : dependencies) {
+			if (!services.contains(d)) throw new IllegalArgumentException();
+		}
+		this.dependencies.put(s, new ArrayList<>(dependencies));
+		services.add(s);
+	}
+
 	@Override
 	public void registerOpenDatabaseHook(OpenDatabaseHook hook) {
+		registerOpenDatabaseHook(hook, false);
+	}
+
+	@Override
+	public void registerOpenDatabaseHook(OpenDatabaseHook hook,
+			boolean separateTransaction) {
 		if (LOG.isLoggable(INFO)) {
 			LOG.info("Registering open database hook "
 					+ hook.getClass().getSimpleName());
 		}
-		openDatabaseHooks.add(hook);
+		if (separateTransaction) separateOpenDatabaseHooks.add(hook);
+		else openDatabaseHooks.add(hook);
 	}
 
 	@Override
@@ -114,40 +155,42 @@ class LifecycleManagerImpl implements LifecycleManager, MigrationListener {
 			}
 			return CLOCK_ERROR;
 		}
+		// Durations of the startup phases, in the order they finished
+		Map<String, Long> durations = synchronizedMap(new LinkedHashMap<>());
+		long startupStart = now();
 		try {
 			LOG.info("Opening database");
 			long start = now();
 			boolean reopened = db.open(dbKey, this);
 			if (reopened) logDuration(LOG, "Reopening database", start);
 			else logDuration(LOG, "Creating database", start);
+			durations.put("Opening database", now() - start);
 
 			db.transaction(false, txn -> {
 				long start1 = now();
 				db.removeTemporaryMessages(txn);
 				logDuration(LOG, "Removing temporary messages", start1);
+				durations.put("Removing temporary messages", now() - start1);
 				for (OpenDatabaseHook hook : openDatabaseHooks) {
-					start1 = now();
-					hook.onDatabaseOpened(txn);
-					if (LOG.isLoggable(FINE)) {
-						logDuration(LOG, "Calling open database hook "
-								+ hook.getClass().getSimpleName(), start1);
-					}
+					callOpenDatabaseHook(hook, txn, durations);
 				}
 			});
+			for (OpenDatabaseHook hook : separateOpenDatabaseHooks) {
+				db.transaction(false, txn ->
+						callOpenDatabaseHook(hook, txn, durations));
+			}
 
 			LOG.info("Starting services");
 			state.set(STARTING_SERVICES);
 			dbLatch.countDown();
 			eventBus.broadcast(new LifecycleEvent(STARTING_SERVICES));
 
-			for (Service s : services) {
-				start = now();
-				s.startService();
-				if (LOG.isLoggable(FINE)) {
-					logDuration(LOG, "Starting service "
-							+ s.getClass().getSimpleName(), start);
-				}
-			}
+			startServices(durations);
+
+			long total = now() - startupStart;
+			logStartupTimings(durations, total);
+			eventBus.broadcast(new StartupTimingsEvent(
+					unmodifiableMap(new LinkedHashMap<>(durations)), total));
 
 			state.set(RUNNING);
 			startupLatch.countDown();
@@ -168,6 +211,106 @@ class LifecycleManagerImpl implements LifecycleManager, MigrationListener {
 		}
 	}
 
+	private void callOpenDatabaseHook(OpenDatabaseHook hook, Transaction txn,
+			Map<String, Long> durations) throws DbException {
+		long start = now();
+		hook.onDatabaseOpened(txn);
+		String task = "Calling open database hook "
+				+ hook.getClass().getSimpleName();
+		logDuration(LOG, task, start);
+		durations.put(task, now() - start);
+	}
+
+	/**
+	 * Starts the registered services. Services that were registered without
+	 * dependencies are started on the calling thread, in order, after all
+	 * previously registered services have started. Services that were
+	 * registered with dependencies are started on a temporary thread pool
+	 * as soon as their dependencies have started, without waiting for any
+	 * services that were registered without dependencies, unless they are
+	 * among the dependencies.
+	 */
+	private void startServices(Map<String, Long> durations)
+			throws ServiceException {
+		ExecutorService startupExecutor = newCachedThreadPool(threadFactory);
+		try {
+			// Create all the tasks before starting any of them, so that
+			// services with dependencies can be started while services
+			// without dependencies are being started on this thread
+			Map<Service, FutureTask<Void>> tasks = new HashMap<>();
+			List<Future<Void>> previous = new ArrayList<>();
+			for (Service s : services) {
+				Collection<Service> deps = dependencies.get(s);
+				List<Future<Void>> waitFor;
+				if (deps == null) {
+					// Wait for all previously registered services to start
+					waitFor = new ArrayList<>(previous);
+				} else {
+					waitFor = new ArrayList<>(deps.size());
+					for (Service d : deps) waitFor.add(tasks.get(d));
+				}
+				FutureTask<Void> task = new FutureTask<>(
+						createServiceStarter(s, waitFor, durations));
+				tasks.put(s, task);
+				previous.add(task);
+			}
+			for (Service s : services) {
+				if (dependencies.containsKey(s))
+					startupExecutor.execute(tasks.get(s));
+			}
+			for (Service s : services) {
+				if (!dependencies.containsKey(s)) tasks.get(s).run();
+			}
+			// Report the first failure in registration order
+			for (Service s : services) waitForService(tasks.get(s));
+		} finally {
+			startupExecutor.shutdownNow();
+		}
+	}
+
+	private Callable<Void> createServiceStarter(Service s,
+			List<Future<Void>> dependencies, Map<String, Long> durations) {
+		return () -> {
+			for (Future<Void> f : dependencies) waitForService(f);
+			long start = now();
+			s.startService();
+			String task = "Starting service " + s.getClass().getSimpleName();
+			logDuration(LOG, task, start);
+			durations.put(task, now() - start);
+			return null;
+		};
+	}
+
+	private void waitForService(Future<Void> f) throws ServiceException {
+		try {
+			f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ServiceException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof ServiceException)
+				throw (ServiceException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new ServiceException(cause);
+		}
+	}
+
+	private void logStartupTimings(Map<String, Long> durations, long total) {
+		if (LOG.isLoggable(INFO)) {
+			StringBuilder sb = new StringBuilder("Startup timings:");
+			synchronized (durations) {
+				for (Map.Entry<String, Long> e : durations.entrySet()) {
+					sb.append(String.format("\n  %-64s %8d ms", e.getKey(),
+							e.getValue()));
+				}
+			}
+			sb.append(String.format("\n  %-64s %8d ms", "Total", total));
+			LOG.info(sb.toString());
+		}
+	}
+
 	@Override
 	public void onDatabaseMigration() {
 		state.set(MIGRATING_DATABASE);
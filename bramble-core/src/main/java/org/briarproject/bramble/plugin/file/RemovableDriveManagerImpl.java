@@ -11,6 +11,7 @@ import org.briarproject.bramble.api.properties.TransportPropertyManager;
 import org.briarproject.bramble.api.transport.KeyManager;
 import org.briarproject.nullsafety.NotNullByDefault;
 
+import java.util.Map;
 import java.util.concurrent.Executor;
 
 import javax.annotation.Nullable;
@@ -94,6 +95,18 @@ class RemovableDriveManagerImpl
 		return created;
 	}
 
+	@Override
+	public RemovableDriveTask startWriterTask(
+			Map<ContactId, TransportProperties> p) {
+		RemovableDriveTask created;
+		synchronized (lock) {
+			if (writer != null) return writer;
+			writer = created = taskFactory.createWriter(this, p);
+		}
+		ioExecutor.execute(created);
+		return created;
+	}
+
 	@Override
 	public boolean isTransportSupportedByContact(ContactId c)
 			throws DbException {
@@ -0,0 +1,190 @@
+package org.briarproject.bramble.plugin.file;
+
+import org.briarproject.bramble.api.connection.ConnectionManager;
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.DbException;
+import org.briarproject.bramble.api.event.Event;
+import org.briarproject.bramble.api.event.EventBus;
+import org.briarproject.bramble.api.event.EventListener;
+import org.briarproject.bramble.api.plugin.PluginManager;
+import org.briarproject.bramble.api.plugin.TransportConnectionWriter;
+import org.briarproject.bramble.api.plugin.simplex.SimplexPlugin;
+import org.briarproject.bramble.api.properties.TransportProperties;
+import org.briarproject.bramble.api.sync.event.MessagesSentEvent;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.logging.Logger;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.bramble.api.plugin.file.RemovableDriveConstants.ID;
+import static org.briarproject.bramble.util.LogUtils.logException;
+
+/**
+ * A writer task that writes a stream to each of several contacts, reading
+ * each message once. The progress of the task is the total progress of
+ * all the streams, and the task succeeds if all the streams are written
+ * successfully.
+ */
+@NotNullByDefault
+class RemovableDriveMultiWriterTask extends RemovableDriveTaskImpl
+		implements EventListener {
+
+	private static final Logger LOG =
+			getLogger(RemovableDriveMultiWriterTask.class.getName());
+
+	private final DatabaseComponent db;
+	private final Map<ContactId, TransportProperties> properties;
+
+	private final Object lock = new Object();
+	@GuardedBy("lock")
+	private final Set<ContactId> unfinished = new HashSet<>();
+	@GuardedBy("lock")
+	private boolean success = true;
+
+	RemovableDriveMultiWriterTask(
+			DatabaseComponent db,
+			Executor eventExecutor,
+			PluginManager pluginManager,
+			ConnectionManager connectionManager,
+			EventBus eventBus,
+			RemovableDriveTaskRegistry registry,
+			Map<ContactId, TransportProperties> properties) {
+		super(eventExecutor, pluginManager, connectionManager, eventBus,
+				registry, new TransportProperties());
+		this.db = db;
+		this.properties = properties;
+	}
+
+	@Override
+	public void run() {
+		SimplexPlugin plugin = getPlugin();
+		Map<ContactId, TransportConnectionWriter> writers =
+				new LinkedHashMap<>();
+		for (Entry<ContactId, TransportProperties> e : properties.entrySet()) {
+			TransportConnectionWriter w = plugin.createWriter(e.getValue());
+			if (w == null) LOG.warning("Failed to create writer");
+			else writers.put(e.getKey(), w);
+		}
+		if (writers.isEmpty()) {
+			registry.removeWriter(this);
+			setSuccess(false);
+			return;
+		}
+		try {
+			setTotal(db.transactionWithResult(true, txn -> {
+				long total = 0;
+				for (ContactId c : writers.keySet())
+					total += db.getUnackedMessageBytesToSend(txn, c);
+				return total;
+			}));
+		} catch (DbException e) {
+			logException(LOG, WARNING, e);
+			for (TransportConnectionWriter w : writers.values()) {
+				try {
+					w.dispose(true);
+				} catch (IOException ex) {
+					logException(LOG, WARNING, ex);
+				}
+			}
+			registry.removeWriter(this);
+			setSuccess(false);
+			return;
+		}
+		Map<ContactId, TransportConnectionWriter> decorated =
+				new LinkedHashMap<>();
+		synchronized (lock) {
+			// The task can't succeed if any of the writers wasn't created
+			success = writers.size() == properties.size();
+			for (Entry<ContactId, TransportConnectionWriter> e :
+					writers.entrySet()) {
+				unfinished.add(e.getKey());
+				decorated.put(e.getKey(),
+						new DecoratedWriter(e.getKey(), e.getValue()));
+			}
+		}
+		eventBus.addListener(this);
+		connectionManager.manageOutgoingConnections(ID, decorated);
+	}
+
+	@Override
+	public void eventOccurred(Event e) {
+		if (e instanceof MessagesSentEvent) {
+			MessagesSentEvent m = (MessagesSentEvent) e;
+			if (properties.containsKey(m.getContactId())) {
+				if (LOG.isLoggable(INFO)) {
+					LOG.info(m.getMessageIds().size() + " messages sent");
+				}
+				addDone(m.getTotalLength());
+			}
+		}
+	}
+
+	private void onDisposed(ContactId c, boolean exception) {
+		boolean finished, success;
+		synchronized (lock) {
+			if (!unfinished.remove(c)) return;
+			if (exception) this.success = false;
+			finished = unfinished.isEmpty();
+			success = this.success;
+		}
+		if (finished) {
+			registry.removeWriter(this);
+			eventBus.removeListener(this);
+			setSuccess(success);
+		}
+	}
+
+	private class DecoratedWriter implements TransportConnectionWriter {
+
+		private final ContactId contactId;
+		private final TransportConnectionWriter delegate;
+
+		private DecoratedWriter(ContactId contactId,
+				TransportConnectionWriter delegate) {
+			this.contactId = contactId;
+			this.delegate = delegate;
+		}
+
+		@Override
+		public long getMaxLatency() {
+			return delegate.getMaxLatency();
+		}
+
+		@Override
+		public int getMaxIdleTime() {
+			return delegate.getMaxIdleTime();
+		}
+
+		@Override
+		public boolean isLossyAndCheap() {
+			return delegate.isLossyAndCheap();
+		}
+
+		@Override
+		public OutputStream getOutputStream() throws IOException {
+			return delegate.getOutputStream();
+		}
+
+		@Override
+		public void dispose(boolean exception) throws IOException {
+			try {
+				delegate.dispose(exception);
+			} finally {
+				onDisposed(contactId, exception);
+			}
+		}
+	}
+}
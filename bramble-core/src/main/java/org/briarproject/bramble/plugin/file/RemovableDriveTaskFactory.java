@@ -5,6 +5,8 @@ import org.briarproject.bramble.api.plugin.file.RemovableDriveTask;
 import org.briarproject.bramble.api.properties.TransportProperties;
 import org.briarproject.nullsafety.NotNullByDefault;
 
+import java.util.Map;
+
 @NotNullByDefault
 interface RemovableDriveTaskFactory {
 
@@ -13,4 +15,7 @@ interface RemovableDriveTaskFactory {
 
 	RemovableDriveTask createWriter(RemovableDriveTaskRegistry registry,
 			ContactId c, TransportProperties p);
+
+	RemovableDriveTask createWriter(RemovableDriveTaskRegistry registry,
+			Map<ContactId, TransportProperties> p);
 }
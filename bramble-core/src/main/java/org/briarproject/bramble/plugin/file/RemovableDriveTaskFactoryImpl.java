@@ -10,6 +10,7 @@ import org.briarproject.bramble.api.plugin.file.RemovableDriveTask;
 import org.briarproject.bramble.api.properties.TransportProperties;
 import org.briarproject.nullsafety.NotNullByDefault;
 
+import java.util.Map;
 import java.util.concurrent.Executor;
 
 import javax.annotation.concurrent.Immutable;
@@ -52,4 +53,11 @@ class RemovableDriveTaskFactoryImpl implements RemovableDriveTaskFactory {
 		return new RemovableDriveWriterTask(db, eventExecutor, pluginManager,
 				connectionManager, eventBus, registry, c, p);
 	}
+
+	@Override
+	public RemovableDriveTask createWriter(RemovableDriveTaskRegistry registry,
+			Map<ContactId, TransportProperties> p) {
+		return new RemovableDriveMultiWriterTask(db, eventExecutor,
+				pluginManager, connectionManager, eventBus, registry, p);
+	}
 }
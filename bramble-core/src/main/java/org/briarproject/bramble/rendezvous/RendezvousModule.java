@@ -10,6 +10,8 @@ import javax.inject.Singleton;
 import dagger.Module;
 import dagger.Provides;
 
+import static java.util.Collections.emptyList;
+
 @Module
 public class RendezvousModule {
 
@@ -28,7 +30,8 @@ public class RendezvousModule {
 	@Singleton
 	RendezvousPoller provideRendezvousPoller(LifecycleManager lifecycleManager,
 			EventBus eventBus, RendezvousPollerImpl rendezvousPoller) {
-		lifecycleManager.registerService(rendezvousPoller);
+		// This service doesn't depend on any other services
+		lifecycleManager.registerService(rendezvousPoller, emptyList());
 		eventBus.addListener(rendezvousPoller);
 		return rendezvousPoller;
 	}
@@ -14,7 +14,12 @@ import org.briarproject.bramble.api.plugin.TransportId;
 import org.briarproject.bramble.api.plugin.event.TransportInactiveEvent;
 import org.briarproject.bramble.api.record.Record;
 import org.briarproject.bramble.api.sync.Ack;
+import org.briarproject.bramble.api.sync.GroupId;
 import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageEstimator;
+import org.briarproject.bramble.api.sync.MessageFilter;
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.api.sync.MessageSketch;
 import org.briarproject.bramble.api.sync.Offer;
 import org.briarproject.bramble.api.sync.Priority;
 import org.briarproject.bramble.api.sync.Request;
@@ -24,16 +29,24 @@ import org.briarproject.bramble.api.sync.SyncSession;
 import org.briarproject.bramble.api.sync.Versions;
 import org.briarproject.bramble.api.sync.event.CloseSyncConnectionsEvent;
 import org.briarproject.bramble.api.sync.event.GroupVisibilityUpdatedEvent;
+import org.briarproject.bramble.api.sync.event.MessageEstimatorReceivedEvent;
 import org.briarproject.bramble.api.sync.event.MessageRequestedEvent;
 import org.briarproject.bramble.api.sync.event.MessageSharedEvent;
 import org.briarproject.bramble.api.sync.event.MessageToAckEvent;
 import org.briarproject.bramble.api.sync.event.MessageToRequestEvent;
 import org.briarproject.bramble.api.system.Clock;
 import org.briarproject.bramble.api.transport.StreamWriter;
+import org.briarproject.bramble.sync.DuplexStartupCoordinator.StartupRecords;
+import org.briarproject.bramble.sync.DuplexStartupCoordinator.StartupSession;
 import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -52,16 +65,31 @@ import static java.util.logging.Logger.getLogger;
 import static org.briarproject.bramble.api.lifecycle.LifecycleManager.LifecycleState.STOPPING;
 import static org.briarproject.bramble.api.record.Record.RECORD_HEADER_BYTES;
 import static org.briarproject.bramble.api.sync.Group.Visibility.SHARED;
+import static org.briarproject.bramble.api.sync.SyncConstants.FILTERS_VERSION;
 import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_IDS;
 import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_LENGTH;
+import static org.briarproject.bramble.api.sync.SyncConstants.RECONCILIATION_VERSION;
 import static org.briarproject.bramble.api.sync.SyncConstants.SUPPORTED_VERSIONS;
+import static org.briarproject.bramble.sync.MessageReconciler.MIN_RECONCILIATION_MESSAGES;
 import static org.briarproject.bramble.util.LogUtils.logException;
+import static org.briarproject.bramble.util.LogUtils.now;
 
 /**
  * An outgoing {@link SyncSession} suitable for duplex transports. The session
  * offers messages before sending them, keeps its output stream open when there
  * are no records to send, and reacts to events that make records available to
  * send.
+ * <p>
+ * If the contact supports {@link MessageFilter MessageFilters}, the session
+ * sends filters of the messages the contact may offer us that we already
+ * have, and acks rather than offers messages that the contact's filters say
+ * the contact already has.
+ * <p>
+ * If the contact supports reconciliation, groups with many messages the
+ * contact isn't known to have are reconciled with the contact instead: the
+ * session sends {@link MessageEstimator MessageEstimators} of those groups,
+ * and answers the contact's estimators with {@link MessageSketch
+ * MessageSketches}. See {@link MessageReconciler}.
  */
 @ThreadSafe
 @NotNullByDefault
@@ -88,6 +116,9 @@ class DuplexOutgoingSession implements SyncSession, EventListener {
 
 	private final DatabaseComponent db;
 	private final Executor dbExecutor;
+	private final DuplexStartupCoordinator startupCoordinator;
+	private final MessageFilterStore filterStore;
+	private final MessageReconciler reconciler;
 	private final EventBus eventBus;
 	private final Clock clock;
 	private final ContactId contactId;
@@ -95,6 +126,7 @@ class DuplexOutgoingSession implements SyncSession, EventListener {
 	private final long maxLatency, maxIdleTime;
 	private final StreamWriter streamWriter;
 	private final SyncRecordWriter recordWriter;
+	private final SessionMetrics metrics;
 	@Nullable
 	private final Priority priority;
 	private final BlockingQueue<ThrowingRunnable<IOException>> writerTasks;
@@ -109,12 +141,18 @@ class DuplexOutgoingSession implements SyncSession, EventListener {
 	private volatile boolean interrupted = false;
 
 	DuplexOutgoingSession(DatabaseComponent db, Executor dbExecutor,
+			DuplexStartupCoordinator startupCoordinator,
+			MessageFilterStore filterStore, MessageReconciler reconciler,
 			EventBus eventBus, Clock clock, ContactId contactId,
 			TransportId transportId, long maxLatency, int maxIdleTime,
-			StreamWriter streamWriter, SyncRecordWriter recordWriter,
+			StreamWriter streamWriter,
+			SyncRecordWriter recordWriter, SessionMetrics metrics,
 			@Nullable Priority priority) {
 		this.db = db;
 		this.dbExecutor = dbExecutor;
+		this.startupCoordinator = startupCoordinator;
+		this.filterStore = filterStore;
+		this.reconciler = reconciler;
 		this.eventBus = eventBus;
 		this.clock = clock;
 		this.contactId = contactId;
@@ -123,6 +161,7 @@ class DuplexOutgoingSession implements SyncSession, EventListener {
 		this.maxIdleTime = maxIdleTime;
 		this.streamWriter = streamWriter;
 		this.recordWriter = recordWriter;
+		this.metrics = metrics;
 		this.priority = priority;
 		writerTasks = new LinkedBlockingQueue<>();
 	}
@@ -136,14 +175,22 @@ class DuplexOutgoingSession implements SyncSession, EventListener {
 			recordWriter.writeVersions(new Versions(SUPPORTED_VERSIONS));
 			// Send our connection priority, if this is an outgoing connection
 			if (priority != null) recordWriter.writePriority(priority);
-			// Start a query for each type of record
-			generateAck();
-			generateBatch();
-			generateOffer();
-			generateRequest();
+			// Generate the first record of each type in the same transaction
+			// as any other sessions that are starting at the same time
+			long start = now();
+			boolean ack = generateAckQueued.compareAndSet(false, true);
+			boolean batch = generateBatchQueued.compareAndSet(false, true);
+			boolean offer = generateOfferQueued.compareAndSet(false, true);
+			boolean request = generateRequestQueued.compareAndSet(false, true);
+			startupCoordinator.register(
+					new Startup(ack, batch, offer, request));
+			// Send filters so the contact can skip offering what we have,
+			// and estimators so we can skip offering what the contact has
+			dbExecutor.execute(new GenerateFiltersAndEstimators());
 			long now = clock.currentTimeMillis();
 			long nextKeepalive = now + maxIdleTime;
 			boolean dataToFlush = true;
+			boolean recordWritten = false;
 			// Write records until interrupted
 			try {
 				while (!interrupted) {
@@ -183,8 +230,18 @@ class DuplexOutgoingSession implements SyncSession, EventListener {
 					} else if (task == NEXT_SEND_TIME_DECREASED) {
 						LOG.info("Next send time decreased");
 					} else {
+						metrics.recordWriterQueueDepth(writerTasks.size());
 						task.run();
 						dataToFlush = true;
+						if (!recordWritten) {
+							recordWritten = true;
+							long duration = now() - start;
+							metrics.recordTimeToFirstRecord(duration);
+							if (LOG.isLoggable(INFO)) {
+								LOG.info("Time to first record for contact "
+										+ contactId + ": " + duration + " ms");
+							}
+						}
 					}
 				}
 				streamWriter.sendEndOfStream();
@@ -256,6 +313,10 @@ class DuplexOutgoingSession implements SyncSession, EventListener {
 		} else if (e instanceof MessageToRequestEvent) {
 			if (((MessageToRequestEvent) e).getContactId().equals(contactId))
 				generateRequest();
+		} else if (e instanceof MessageEstimatorReceivedEvent) {
+			MessageEstimatorReceivedEvent m = (MessageEstimatorReceivedEvent) e;
+			if (m.getContactId().equals(contactId))
+				dbExecutor.execute(new GenerateSketches(m.getEstimator()));
 		} else if (e instanceof LifecycleEvent) {
 			LifecycleEvent l = (LifecycleEvent) e;
 			if (l.getLifecycleState() == STOPPING) interrupt();
@@ -268,6 +329,76 @@ class DuplexOutgoingSession implements SyncSession, EventListener {
 		}
 	}
 
+	private class Startup implements StartupSession {
+
+		private final boolean ack, batch, offer, request;
+
+		private Startup(boolean ack, boolean batch, boolean offer,
+				boolean request) {
+			this.ack = ack;
+			this.batch = batch;
+			this.offer = offer;
+			this.request = request;
+		}
+
+		@Override
+		public ContactId getContactId() {
+			return contactId;
+		}
+
+		@Override
+		public long getMaxLatency() {
+			return maxLatency;
+		}
+
+		@Override
+		public int getBatchCapacity() {
+			return BATCH_CAPACITY;
+		}
+
+		@DatabaseExecutor
+		@Override
+		public boolean prepareToGenerate() {
+			if (interrupted) return false;
+			// Clear the flags we set, so that events arriving while the
+			// records are being generated will start new queries
+			if (ack && !generateAckQueued.getAndSet(false))
+				throw new AssertionError();
+			if (batch && !generateBatchQueued.getAndSet(false))
+				throw new AssertionError();
+			if (offer && !generateOfferQueued.getAndSet(false))
+				throw new AssertionError();
+			if (request && !generateRequestQueued.getAndSet(false))
+				throw new AssertionError();
+			return true;
+		}
+
+		@DatabaseExecutor
+		@Override
+		public void recordsGenerated(StartupRecords records) {
+			setNextSendTime(records.getNextSendTime());
+			Ack a = records.getAck();
+			Collection<Message> b = records.getBatch();
+			Offer o = records.getOffer();
+			Request r = records.getRequest();
+			if (LOG.isLoggable(INFO)) {
+				LOG.info("Generated startup records: ack " + (a != null)
+						+ ", batch " + (b != null) + ", offer " + (o != null)
+						+ ", request " + (r != null));
+			}
+			if (a != null) writerTasks.add(new WriteAck(a));
+			if (b != null) writerTasks.add(new WriteBatch(b));
+			if (o != null) writerTasks.add(new WriteOffer(o));
+			if (r != null) writerTasks.add(new WriteRequest(r));
+		}
+
+		@DatabaseExecutor
+		@Override
+		public void generatingFailed() {
+			interrupt();
+		}
+	}
+
 	private class GenerateAck implements Runnable {
 
 		@DatabaseExecutor
@@ -315,6 +446,7 @@ class DuplexOutgoingSession implements SyncSession, EventListener {
 			if (!generateBatchQueued.getAndSet(false))
 				throw new AssertionError();
 			try {
+				long dbStart = now();
 				Collection<Message> b =
 						db.transactionWithNullableResult(false, txn -> {
 							Collection<Message> batch =
@@ -326,7 +458,10 @@ class DuplexOutgoingSession implements SyncSession, EventListener {
 						});
 				if (LOG.isLoggable(INFO))
 					LOG.info("Generated batch: " + (b != null));
-				if (b != null) writerTasks.add(new WriteBatch(b));
+				if (b != null) {
+					metrics.recordBatchDbTime(now() - dbStart);
+					writerTasks.add(new WriteBatch(b));
+				}
 			} catch (DbException e) {
 				logException(LOG, WARNING, e);
 				interrupt();
@@ -346,7 +481,9 @@ class DuplexOutgoingSession implements SyncSession, EventListener {
 		@Override
 		public void run() throws IOException {
 			if (interrupted) return;
+			long ioStart = now();
 			for (Message m : batch) recordWriter.writeMessage(m);
+			metrics.recordBatchIoTime(now() - ioStart);
 			LOG.info("Sent batch");
 			generateBatch();
 		}
@@ -361,9 +498,11 @@ class DuplexOutgoingSession implements SyncSession, EventListener {
 			if (!generateOfferQueued.getAndSet(false))
 				throw new AssertionError();
 			try {
+				Collection<MessageFilter> filters =
+						filterStore.getFilters(contactId);
 				Offer o = db.transactionWithNullableResult(false, txn -> {
 					Offer offer = db.generateOffer(txn, contactId,
-							MAX_MESSAGE_IDS, maxLatency);
+							MAX_MESSAGE_IDS, maxLatency, filters);
 					setNextSendTime(db.getNextSendTime(txn, contactId,
 							maxLatency));
 					return offer;
@@ -434,4 +573,142 @@ class DuplexOutgoingSession implements SyncSession, EventListener {
 			generateRequest();
 		}
 	}
+
+	private class GenerateFiltersAndEstimators implements Runnable {
+
+		@DatabaseExecutor
+		@Override
+		public void run() {
+			if (interrupted) return;
+			try {
+				List<Byte> versions = db.transactionWithResult(true, txn ->
+						db.getSyncVersions(txn, contactId));
+				boolean filters = versions.contains(FILTERS_VERSION);
+				boolean reconcile = versions.contains(RECONCILIATION_VERSION);
+				if (!filters && !reconcile) return;
+				Map<GroupId, Collection<MessageId>> unseen = new HashMap<>(
+						db.transactionWithResult(true, txn ->
+								db.getUnseenMessages(txn, contactId)));
+				// Groups that are reconciled don't need filters, as the
+				// contact reconciles any groups it would offer us much of
+				if (reconcile) generateEstimators(unseen);
+				if (filters) generateFilters(unseen);
+			} catch (DbException e) {
+				logException(LOG, WARNING, e);
+				interrupt();
+			}
+		}
+
+		@DatabaseExecutor
+		private void generateEstimators(
+				Map<GroupId, Collection<MessageId>> unseen) throws DbException {
+			List<MessageEstimator> estimators = new ArrayList<>();
+			for (Entry<GroupId, Collection<MessageId>> e : unseen.entrySet()) {
+				if (e.getValue().size() < MIN_RECONCILIATION_MESSAGES) continue;
+				GroupId g = e.getKey();
+				Map<MessageId, Boolean> ids = db.transactionWithResult(true,
+						txn -> db.getMessagesToReconcile(txn, contactId, g));
+				estimators.add(reconciler.createEstimator(g, ids.keySet()));
+			}
+			for (MessageEstimator e : estimators)
+				unseen.remove(e.getGroupId());
+			if (LOG.isLoggable(INFO))
+				LOG.info("Generated " + estimators.size() + " estimators");
+			if (!estimators.isEmpty())
+				writerTasks.add(new WriteEstimators(estimators));
+		}
+
+		private void generateFilters(
+				Map<GroupId, Collection<MessageId>> unseen) {
+			Collection<MessageFilter> filters =
+					filterStore.createFilters(unseen);
+			if (LOG.isLoggable(INFO))
+				LOG.info("Generated " + filters.size() + " filters");
+			if (!filters.isEmpty())
+				writerTasks.add(new WriteFilters(filters));
+		}
+	}
+
+	private class WriteFilters implements ThrowingRunnable<IOException> {
+
+		private final Collection<MessageFilter> filters;
+
+		private WriteFilters(Collection<MessageFilter> filters) {
+			this.filters = filters;
+		}
+
+		@IoExecutor
+		@Override
+		public void run() throws IOException {
+			if (interrupted) return;
+			for (MessageFilter f : filters) recordWriter.writeFilter(f);
+			LOG.info("Sent filters");
+		}
+	}
+
+	private class WriteEstimators implements ThrowingRunnable<IOException> {
+
+		private final Collection<MessageEstimator> estimators;
+
+		private WriteEstimators(Collection<MessageEstimator> estimators) {
+			this.estimators = estimators;
+		}
+
+		@IoExecutor
+		@Override
+		public void run() throws IOException {
+			if (interrupted) return;
+			for (MessageEstimator e : estimators)
+				recordWriter.writeEstimator(e);
+			LOG.info("Sent estimators");
+		}
+	}
+
+	private class GenerateSketches implements Runnable {
+
+		private final MessageEstimator estimator;
+
+		private GenerateSketches(MessageEstimator estimator) {
+			this.estimator = estimator;
+		}
+
+		@DatabaseExecutor
+		@Override
+		public void run() {
+			if (interrupted) return;
+			try {
+				GroupId g = estimator.getGroupId();
+				Map<MessageId, Boolean> ids = db.transactionWithResult(true,
+						txn -> db.getMessagesToReconcile(txn, contactId, g));
+				// Don't reply if the group isn't shared with the contact
+				if (ids.isEmpty()) return;
+				Collection<MessageSketch> sketches =
+						reconciler.createSketches(estimator, ids.keySet());
+				if (LOG.isLoggable(INFO))
+					LOG.info("Generated " + sketches.size() + " sketches");
+				if (!sketches.isEmpty())
+					writerTasks.add(new WriteSketches(sketches));
+			} catch (DbException e) {
+				logException(LOG, WARNING, e);
+				interrupt();
+			}
+		}
+	}
+
+	private class WriteSketches implements ThrowingRunnable<IOException> {
+
+		private final Collection<MessageSketch> sketches;
+
+		private WriteSketches(Collection<MessageSketch> sketches) {
+			this.sketches = sketches;
+		}
+
+		@IoExecutor
+		@Override
+		public void run() throws IOException {
+			if (interrupted) return;
+			for (MessageSketch s : sketches) recordWriter.writeSketch(s);
+			LOG.info("Sent sketches");
+		}
+	}
 }
@@ -0,0 +1,276 @@
+package org.briarproject.bramble.sync;
+
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.DatabaseExecutor;
+import org.briarproject.bramble.api.db.DbException;
+import org.briarproject.bramble.api.db.SyncDatabaseExecutor;
+import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.api.sync.Ack;
+import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.Offer;
+import org.briarproject.bramble.api.sync.Request;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_IDS;
+import static org.briarproject.bramble.util.LogUtils.logDuration;
+import static org.briarproject.bramble.util.LogUtils.logException;
+import static org.briarproject.bramble.util.LogUtils.now;
+
+/**
+ * Generates the first acks, offers, requests and batches for newly started
+ * {@link DuplexOutgoingSession DuplexOutgoingSessions}. When many sessions
+ * start at once, for example when a transport comes up and connects to all
+ * contacts, the records for up to {@link #MAX_SESSIONS_PER_TRANSACTION}
+ * sessions are generated in a single transaction, rather than each session
+ * using four separate transactions.
+ */
+@ThreadSafe
+@NotNullByDefault
+class DuplexStartupCoordinator {
+
+	private static final Logger LOG =
+			getLogger(DuplexStartupCoordinator.class.getName());
+
+	/**
+	 * The maximum number of sessions whose records are generated in a single
+	 * transaction. Larger values mean fewer transactions, but each
+	 * transaction will block the DB for longer.
+	 */
+	static final int MAX_SESSIONS_PER_TRANSACTION = 100;
+
+	private final DatabaseComponent db;
+	private final Executor dbExecutor;
+
+	private final Object lock = new Object();
+	@GuardedBy("lock")
+	private final List<StartupSession> pending = new LinkedList<>();
+	@GuardedBy("lock")
+	private boolean generateQueued = false;
+
+	DuplexStartupCoordinator(DatabaseComponent db,
+			@SyncDatabaseExecutor Executor dbExecutor) {
+		this.db = db;
+		this.dbExecutor = dbExecutor;
+	}
+
+	/**
+	 * Registers a session whose first records should be generated.
+	 */
+	void register(StartupSession s) {
+		synchronized (lock) {
+			pending.add(s);
+			if (generateQueued) return;
+			generateQueued = true;
+		}
+		dbExecutor.execute(this::generateRecords);
+	}
+
+	@DatabaseExecutor
+	private void generateRecords() {
+		// Take up to the maximum number of sessions, at most one per contact
+		List<StartupSession> sessions = new ArrayList<>();
+		boolean more;
+		synchronized (lock) {
+			Set<ContactId> contacts = new HashSet<>();
+			Iterator<StartupSession> it = pending.iterator();
+			while (it.hasNext() &&
+					sessions.size() < MAX_SESSIONS_PER_TRANSACTION) {
+				StartupSession s = it.next();
+				if (contacts.add(s.getContactId())) {
+					sessions.add(s);
+					it.remove();
+				}
+			}
+			more = !pending.isEmpty();
+			generateQueued = more;
+		}
+		if (more) dbExecutor.execute(this::generateRecords);
+		// Skip any sessions that have been interrupted
+		List<StartupSession> active = new ArrayList<>(sessions.size());
+		for (StartupSession s : sessions) {
+			if (s.prepareToGenerate()) active.add(s);
+		}
+		if (active.isEmpty()) return;
+		long start = now();
+		try {
+			Map<ContactId, StartupRecords> records =
+					db.transactionWithResult(false, txn ->
+							generateRecords(txn, active));
+			if (LOG.isLoggable(INFO)) {
+				LOG.info("Generated startup records for " + active.size()
+						+ " sessions");
+			}
+			logDuration(LOG, "Generating startup records", start);
+			for (StartupSession s : active) {
+				// Sessions whose contacts have been removed have no records
+				StartupRecords r = records.get(s.getContactId());
+				if (r == null) s.generatingFailed();
+				else s.recordsGenerated(r);
+			}
+		} catch (DbException e) {
+			logException(LOG, WARNING, e);
+			for (StartupSession s : active) s.generatingFailed();
+		}
+	}
+
+	/**
+	 * Generates the records for the given sessions and returns them, keyed
+	 * by contact. Sessions whose contacts have been removed are left out, so
+	 * they don't cause the transaction to fail for the other sessions.
+	 */
+	@DatabaseExecutor
+	private Map<ContactId, StartupRecords> generateRecords(Transaction txn,
+			List<StartupSession> allSessions) throws DbException {
+		List<StartupSession> sessions = new ArrayList<>(allSessions.size());
+		for (StartupSession s : allSessions) {
+			if (db.containsContact(txn, s.getContactId())) sessions.add(s);
+		}
+		// Group the contacts by max latency for generating offers
+		List<ContactId> contacts = new ArrayList<>(sessions.size());
+		Map<Long, List<ContactId>> byLatency = new HashMap<>();
+		Map<ContactId, Collection<Message>> batches = new HashMap<>();
+		for (StartupSession s : sessions) {
+			ContactId c = s.getContactId();
+			long maxLatency = s.getMaxLatency();
+			contacts.add(c);
+			List<ContactId> group = byLatency.get(maxLatency);
+			if (group == null) {
+				group = new ArrayList<>();
+				byLatency.put(maxLatency, group);
+			}
+			group.add(c);
+			// Requested messages are loaded per contact, as the batches
+			// contain message bodies
+			Collection<Message> batch = db.generateRequestedBatch(txn, c,
+					s.getBatchCapacity(), maxLatency);
+			if (batch != null) batches.put(c, batch);
+		}
+		Map<ContactId, Ack> acks =
+				db.generateAcks(txn, contacts, MAX_MESSAGE_IDS);
+		Map<ContactId, Offer> offers = new HashMap<>();
+		for (Entry<Long, List<ContactId>> e : byLatency.entrySet()) {
+			offers.putAll(db.generateOffers(txn, e.getValue(),
+					MAX_MESSAGE_IDS, e.getKey()));
+		}
+		Map<ContactId, Request> requests =
+				db.generateRequests(txn, contacts, MAX_MESSAGE_IDS);
+		Map<ContactId, StartupRecords> records = new HashMap<>();
+		for (StartupSession s : sessions) {
+			ContactId c = s.getContactId();
+			long nextSendTime =
+					db.getNextSendTime(txn, c, s.getMaxLatency());
+			records.put(c, new StartupRecords(acks.get(c), batches.get(c),
+					offers.get(c), requests.get(c), nextSendTime));
+		}
+		return records;
+	}
+
+	/**
+	 * A session whose first records are generated by the coordinator.
+	 */
+	@NotNullByDefault
+	interface StartupSession {
+
+		ContactId getContactId();
+
+		long getMaxLatency();
+
+		int getBatchCapacity();
+
+		/**
+		 * Called on the DB executor before the session's records are
+		 * generated. Returns false if the session has been interrupted and
+		 * its records should not be generated.
+		 */
+		@DatabaseExecutor
+		boolean prepareToGenerate();
+
+		/**
+		 * Called on the DB executor when the session's records have been
+		 * generated.
+		 */
+		@DatabaseExecutor
+		void recordsGenerated(StartupRecords records);
+
+		/**
+		 * Called on the DB executor if the session's records could not be
+		 * generated, or if the session's contact has been removed.
+		 */
+		@DatabaseExecutor
+		void generatingFailed();
+	}
+
+	/**
+	 * The first records generated for a session.
+	 */
+	@Immutable
+	@NotNullByDefault
+	static class StartupRecords {
+
+		@Nullable
+		private final Ack ack;
+		@Nullable
+		private final Collection<Message> batch;
+		@Nullable
+		private final Offer offer;
+		@Nullable
+		private final Request request;
+		private final long nextSendTime;
+
+		StartupRecords(@Nullable Ack ack, @Nullable Collection<Message> batch,
+				@Nullable Offer offer, @Nullable Request request,
+				long nextSendTime) {
+			this.ack = ack;
+			this.batch = batch;
+			this.offer = offer;
+			this.request = request;
+			this.nextSendTime = nextSendTime;
+		}
+
+		@Nullable
+		Ack getAck() {
+			return ack;
+		}
+
+		@Nullable
+		Collection<Message> getBatch() {
+			return batch;
+		}
+
+		@Nullable
+		Offer getOffer() {
+			return offer;
+		}
+
+		@Nullable
+		Request getRequest() {
+			return request;
+		}
+
+		long getNextSendTime() {
+			return nextSendTime;
+		}
+	}
+}
@@ -2,8 +2,10 @@ package org.briarproject.bramble.sync;
 
 import org.briarproject.bramble.api.contact.ContactId;
 import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.DatabaseExecutor;
 import org.briarproject.bramble.api.db.DbException;
 import org.briarproject.bramble.api.event.EventBus;
+import org.briarproject.bramble.api.lifecycle.IoExecutor;
 import org.briarproject.bramble.api.plugin.TransportId;
 import org.briarproject.bramble.api.sync.Message;
 import org.briarproject.bramble.api.sync.MessageId;
@@ -12,17 +14,37 @@ import org.briarproject.bramble.api.transport.StreamWriter;
 import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.logging.Logger;
 
 import javax.annotation.concurrent.ThreadSafe;
 
+import static java.util.Collections.emptyList;
 import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
 import static java.util.logging.Logger.getLogger;
+import static org.briarproject.bramble.api.record.Record.RECORD_HEADER_BYTES;
+import static org.briarproject.bramble.util.LogUtils.logException;
+import static org.briarproject.bramble.util.LogUtils.now;
 
 /**
  * A {@link SimplexOutgoingSession} that sends messages eagerly, ie
  * regardless of whether they're due for retransmission.
+ * <p>
+ * Messages are loaded from the database in batches while the previous
+ * batch is being written, so the database and the output stream are kept
+ * busy at the same time. At most one batch is loaded ahead of the batch
+ * being written, so memory usage is bounded by twice the batch capacity.
+ * <p>
+ * Messages are only marked as sent once they've been written, so messages
+ * that were loaded but not written, for example because the session was
+ * interrupted or the output stream failed, will still be sent next time.
  */
 @ThreadSafe
 @NotNullByDefault
@@ -31,26 +53,53 @@ class EagerSimplexOutgoingSession extends SimplexOutgoingSession {
 	private static final Logger LOG =
 			getLogger(EagerSimplexOutgoingSession.class.getName());
 
+	/**
+	 * A batch that marks the end of the messages to send.
+	 */
+	private static final List<Message> END = emptyList();
+
+	private final Executor dbExecutor;
+	private final BlockingQueue<List<Message>> loadedBatches =
+			new LinkedBlockingQueue<>();
+
 	EagerSimplexOutgoingSession(DatabaseComponent db,
+			Executor dbExecutor,
 			EventBus eventBus,
 			ContactId contactId,
 			TransportId transportId,
 			long maxLatency,
 			StreamWriter streamWriter,
-			SyncRecordWriter recordWriter) {
+			SyncRecordWriter recordWriter,
+			SessionMetrics metrics) {
 		super(db, eventBus, contactId, transportId, maxLatency, streamWriter,
-				recordWriter);
+				recordWriter, metrics);
+		this.dbExecutor = dbExecutor;
 	}
 
+	@IoExecutor
 	@Override
 	void sendMessages() throws DbException, IOException {
-		for (MessageId m : loadUnackedMessageIdsToSend()) {
-			if (isInterrupted()) break;
-			Message message = db.transactionWithNullableResult(false, txn ->
-					db.getMessageToSend(txn, contactId, m, maxLatency, true));
-			if (message == null) continue; // No longer shared
-			recordWriter.writeMessage(message);
-			LOG.info("Sent message");
+		Iterator<MessageId> ids = loadUnackedMessageIdsToSend().iterator();
+		// The next batch isn't loaded until the previous batch has been
+		// taken from the queue, so only one thread uses the iterator at once
+		LoadBatch load = new LoadBatch(ids);
+		dbExecutor.execute(load);
+		try {
+			while (!isInterrupted()) {
+				List<Message> batch = loadedBatches.take();
+				if (batch == END) break;
+				// Load the next batch while this one is being written
+				dbExecutor.execute(load);
+				long ioStart = now();
+				for (Message m : batch) recordWriter.writeMessage(m);
+				metrics.recordBatchIoTime(now() - ioStart);
+				onRecordWritten();
+				LOG.info("Sent batch");
+				dbExecutor.execute(new MarkBatchSent(batch));
+			}
+		} catch (InterruptedException e) {
+			LOG.info("Interrupted while waiting for a batch to write");
+			Thread.currentThread().interrupt();
 		}
 	}
 
@@ -63,4 +112,72 @@ class EagerSimplexOutgoingSession extends SimplexOutgoingSession {
 		}
 		return ids;
 	}
+
+	private class LoadBatch implements Runnable {
+
+		private final Iterator<MessageId> ids;
+
+		private LoadBatch(Iterator<MessageId> ids) {
+			this.ids = ids;
+		}
+
+		@DatabaseExecutor
+		@Override
+		public void run() {
+			if (isInterrupted() || !ids.hasNext()) {
+				loadedBatches.add(END);
+				return;
+			}
+			try {
+				long dbStart = now();
+				List<Message> batch = db.transactionWithResult(true, txn -> {
+					List<Message> messages = new ArrayList<>();
+					long bytes = 0;
+					while (bytes < BATCH_CAPACITY && ids.hasNext()) {
+						// The message is marked as sent after it's written
+						Message m = db.getMessageToSend(txn, contactId,
+								ids.next(), maxLatency, false);
+						if (m == null) continue; // No longer shared
+						messages.add(m);
+						bytes += RECORD_HEADER_BYTES + m.getRawLength();
+					}
+					return messages;
+				});
+				if (LOG.isLoggable(INFO))
+					LOG.info("Loaded batch of " + batch.size() + " messages");
+				if (batch.isEmpty()) {
+					// None of the remaining messages are still shared
+					loadedBatches.add(END);
+				} else {
+					metrics.recordBatchDbTime(now() - dbStart);
+					loadedBatches.add(batch);
+				}
+			} catch (DbException e) {
+				logException(LOG, WARNING, e);
+				interrupt();
+				loadedBatches.add(END);
+			}
+		}
+	}
+
+	private class MarkBatchSent implements Runnable {
+
+		private final List<MessageId> sent;
+
+		private MarkBatchSent(List<Message> batch) {
+			sent = new ArrayList<>(batch.size());
+			for (Message m : batch) sent.add(m.getId());
+		}
+
+		@DatabaseExecutor
+		@Override
+		public void run() {
+			try {
+				db.transaction(false, txn ->
+						db.setMessagesSent(txn, contactId, sent, maxLatency));
+			} catch (DbException e) {
+				logException(LOG, WARNING, e);
+			}
+		}
+	}
 }
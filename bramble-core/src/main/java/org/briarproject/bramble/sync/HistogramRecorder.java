@@ -0,0 +1,69 @@
+package org.briarproject.bramble.sync;
+
+import org.briarproject.bramble.api.sync.metrics.Histogram;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Records a series of non-negative values in buckets whose upper bounds are
+ * zero and increasing powers of two. Recording a value doesn't allocate or
+ * lock, so values can be recorded on the sync hot paths.
+ */
+@ThreadSafe
+@NotNullByDefault
+class HistogramRecorder {
+
+	/**
+	 * The upper bound of the last bounded bucket is 2^MAX_EXPONENT.
+	 */
+	private static final int MAX_EXPONENT = 20;
+
+	private static final long[] UPPER_BOUNDS = new long[MAX_EXPONENT + 2];
+
+	static {
+		UPPER_BOUNDS[0] = 0;
+		for (int i = 1; i < UPPER_BOUNDS.length; i++) {
+			UPPER_BOUNDS[i] = 1L << (i - 1);
+		}
+	}
+
+	private final AtomicLongArray bucketCounts =
+			new AtomicLongArray(UPPER_BOUNDS.length + 1);
+	private final AtomicLong count = new AtomicLong(0);
+	private final AtomicLong sum = new AtomicLong(0);
+	private final AtomicLong max = new AtomicLong(0);
+
+	void record(long value) {
+		if (value < 0) value = 0;
+		bucketCounts.incrementAndGet(getBucket(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		long oldMax = max.get();
+		while (value > oldMax && !max.compareAndSet(oldMax, value)) {
+			oldMax = max.get();
+		}
+	}
+
+	// Package access for testing
+	static int getBucket(long value) {
+		if (value == 0) return 0;
+		// The smallest i such that 2^(i - 1) >= value
+		int i = 1 + 64 - Long.numberOfLeadingZeros(value - 1);
+		return Math.min(i, UPPER_BOUNDS.length);
+	}
+
+	/**
+	 * Returns a snapshot of the histogram. The counts may not be consistent
+	 * with each other if values are being recorded concurrently.
+	 */
+	Histogram getSnapshot() {
+		long[] counts = new long[bucketCounts.length()];
+		for (int i = 0; i < counts.length; i++) counts[i] = bucketCounts.get(i);
+		return new Histogram(count.get(), sum.get(), max.get(), UPPER_BOUNDS,
+				counts);
+	}
+}
@@ -13,6 +13,10 @@ import org.briarproject.bramble.api.lifecycle.IoExecutor;
 import org.briarproject.bramble.api.lifecycle.event.LifecycleEvent;
 import org.briarproject.bramble.api.sync.Ack;
 import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageEstimator;
+import org.briarproject.bramble.api.sync.MessageFilter;
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.api.sync.MessageSketch;
 import org.briarproject.bramble.api.sync.Offer;
 import org.briarproject.bramble.api.sync.Priority;
 import org.briarproject.bramble.api.sync.PriorityHandler;
@@ -20,15 +24,20 @@ import org.briarproject.bramble.api.sync.Request;
 import org.briarproject.bramble.api.sync.SyncRecordReader;
 import org.briarproject.bramble.api.sync.SyncSession;
 import org.briarproject.bramble.api.sync.Versions;
+import org.briarproject.bramble.api.sync.event.MessageEstimatorReceivedEvent;
 import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.concurrent.Executor;
 import java.util.logging.Logger;
 
 import javax.annotation.concurrent.ThreadSafe;
 
+import static java.util.logging.Level.INFO;
 import static java.util.logging.Level.WARNING;
 import static java.util.logging.Logger.getLogger;
 import static org.briarproject.bramble.api.lifecycle.LifecycleManager.LifecycleState.STOPPING;
@@ -50,18 +59,23 @@ class IncomingSession implements SyncSession, EventListener {
 	private final ContactId contactId;
 	private final SyncRecordReader recordReader;
 	private final PriorityHandler priorityHandler;
+	private final MessageFilterStore filterStore;
+	private final MessageReconciler reconciler;
 
 	private volatile boolean interrupted = false;
 
 	IncomingSession(DatabaseComponent db, Executor dbExecutor,
 			EventBus eventBus, ContactId contactId,
-			SyncRecordReader recordReader, PriorityHandler priorityHandler) {
+			SyncRecordReader recordReader, PriorityHandler priorityHandler,
+			MessageFilterStore filterStore, MessageReconciler reconciler) {
 		this.db = db;
 		this.dbExecutor = dbExecutor;
 		this.eventBus = eventBus;
 		this.contactId = contactId;
 		this.recordReader = recordReader;
 		this.priorityHandler = priorityHandler;
+		this.filterStore = filterStore;
+		this.reconciler = reconciler;
 	}
 
 	@IoExecutor
@@ -93,6 +107,17 @@ class IncomingSession implements SyncSession, EventListener {
 				} else if (recordReader.hasPriority()) {
 					Priority p = recordReader.readPriority();
 					priorityHandler.handle(p);
+				} else if (recordReader.hasFilter()) {
+					MessageFilter f = recordReader.readFilter();
+					filterStore.addFilter(contactId, f);
+				} else if (recordReader.hasEstimator()) {
+					MessageEstimator e = recordReader.readEstimator();
+					// The outgoing session replies with sketches
+					eventBus.broadcast(
+							new MessageEstimatorReceivedEvent(contactId, e));
+				} else if (recordReader.hasSketch()) {
+					MessageSketch s = recordReader.readSketch();
+					dbExecutor.execute(new ReceiveSketch(s));
 				} else {
 					// unknown records are ignored in RecordReader#eof()
 					throw new FormatException();
@@ -225,4 +250,45 @@ class IncomingSession implements SyncSession, EventListener {
 			}
 		}
 	}
+
+	private class ReceiveSketch implements Runnable {
+
+		private final MessageSketch sketch;
+
+		private ReceiveSketch(MessageSketch sketch) {
+			this.sketch = sketch;
+		}
+
+		@DatabaseExecutor
+		@Override
+		public void run() {
+			try {
+				Map<MessageId, Boolean> ours = db.transactionWithResult(true,
+						txn -> db.getMessagesToReconcile(txn, contactId,
+								sketch.getGroupId()));
+				Map<MessageId, Boolean> theirs =
+						reconciler.reconcile(sketch, ours.keySet());
+				if (theirs == null) {
+					LOG.info("Failed to decode sketch");
+					return;
+				}
+				List<MessageId> seen = new ArrayList<>();
+				List<MessageId> missing = new ArrayList<>();
+				for (Entry<MessageId, Boolean> e : theirs.entrySet()) {
+					if (!e.getValue()) missing.add(e.getKey());
+					else if (!ours.get(e.getKey())) seen.add(e.getKey());
+				}
+				if (LOG.isLoggable(INFO)) {
+					LOG.info("Reconciled " + theirs.size() + " messages, "
+							+ seen.size() + " newly seen, " + missing.size()
+							+ " missing");
+				}
+				db.transaction(false, txn -> db.receiveReconciliation(txn,
+						contactId, seen, missing));
+			} catch (DbException e) {
+				logException(LOG, WARNING, e);
+				interrupt();
+			}
+		}
+	}
 }
@@ -0,0 +1,184 @@
+package org.briarproject.bramble.sync;
+
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static org.briarproject.bramble.api.sync.SyncConstants.SKETCH_CELL_BYTES;
+import static org.briarproject.bramble.api.sync.SyncConstants.SKETCH_HASH_FUNCTIONS;
+import static org.briarproject.bramble.util.ByteUtils.INT_32_BYTES;
+import static org.briarproject.bramble.util.ByteUtils.MAX_32_BIT_UNSIGNED;
+import static org.briarproject.bramble.util.ByteUtils.readUint32;
+import static org.briarproject.bramble.util.ByteUtils.writeUint32;
+
+/**
+ * An invertible Bloom lookup table of 64-bit keys, as described by
+ * Goodrich and Mitzenmacher. Subtracting one table from another table of
+ * the same size leaves the keys that are in one table but not the other,
+ * which can be listed if there are not too many of them compared with the
+ * number of cells.
+ * <p>
+ * The cells are divided into equal parts, one for each hash function, and
+ * each key is added to one cell in each part.
+ */
+@NotThreadSafe
+@NotNullByDefault
+class InvertibleBloomFilter {
+
+	private final int cellCount;
+	private final int[] counts;
+	private final long[] keySums, hashSums;
+
+	InvertibleBloomFilter(int cellCount) {
+		if (cellCount < SKETCH_HASH_FUNCTIONS ||
+				cellCount % SKETCH_HASH_FUNCTIONS != 0) {
+			throw new IllegalArgumentException();
+		}
+		this.cellCount = cellCount;
+		counts = new int[cellCount];
+		keySums = new long[cellCount];
+		hashSums = new long[cellCount];
+	}
+
+	/**
+	 * Creates a table from cells serialised by {@link #write(byte[], int)}.
+	 */
+	static InvertibleBloomFilter read(byte[] src, int offset, int cellCount) {
+		InvertibleBloomFilter t = new InvertibleBloomFilter(cellCount);
+		for (int i = 0; i < cellCount; i++) {
+			int off = offset + i * SKETCH_CELL_BYTES;
+			t.counts[i] = (int) readUint32(src, off);
+			t.keySums[i] = readLong(src, off + INT_32_BYTES);
+			t.hashSums[i] = readLong(src, off + INT_32_BYTES + 8);
+		}
+		return t;
+	}
+
+	int getCellCount() {
+		return cellCount;
+	}
+
+	/**
+	 * Serialises the cells of the table, which must not contain negative
+	 * counts, into the given buffer.
+	 */
+	void write(byte[] dest, int offset) {
+		for (int i = 0; i < cellCount; i++) {
+			if (counts[i] < 0) throw new IllegalStateException();
+			int off = offset + i * SKETCH_CELL_BYTES;
+			writeUint32(counts[i], dest, off);
+			writeLong(keySums[i], dest, off + INT_32_BYTES);
+			writeLong(hashSums[i], dest, off + INT_32_BYTES + 8);
+		}
+	}
+
+	void add(long key) {
+		update(key, 1);
+	}
+
+	/**
+	 * Subtracts the given table, which must be the same size, from this
+	 * table.
+	 */
+	void subtract(InvertibleBloomFilter other) {
+		if (other.cellCount != cellCount) throw new IllegalArgumentException();
+		for (int i = 0; i < cellCount; i++) {
+			counts[i] -= other.counts[i];
+			keySums[i] ^= other.keySums[i];
+			hashSums[i] ^= other.hashSums[i];
+		}
+	}
+
+	/**
+	 * Lists the keys that were added to this table but not to a table that
+	 * was subtracted from it, and vice versa. The table is emptied in the
+	 * process.
+	 *
+	 * @return True if all the keys were listed, or false if there were too
+	 * many keys to list. If false is returned, the collections contain
+	 * the keys that were listed before decoding failed.
+	 */
+	boolean decode(Collection<Long> added, Collection<Long> subtracted) {
+		Deque<Integer> pure = new ArrayDeque<>();
+		for (int i = 0; i < cellCount; i++) if (isPure(i)) pure.add(i);
+		// A table of n cells can't hold more than n distinct keys, so
+		// stop if a corrupt table produces more keys than that
+		int decoded = 0;
+		while (!pure.isEmpty() && decoded < cellCount) {
+			int i = pure.poll();
+			if (!isPure(i)) continue;
+			long key = keySums[i];
+			int count = counts[i];
+			if (count == 1) added.add(key);
+			else subtracted.add(key);
+			decoded++;
+			for (int j = 0; j < SKETCH_HASH_FUNCTIONS; j++) {
+				int index = getIndex(key, j);
+				update(index, key, -count);
+				if (isPure(index)) pure.add(index);
+			}
+		}
+		for (int i = 0; i < cellCount; i++) {
+			if (counts[i] != 0 || keySums[i] != 0 || hashSums[i] != 0)
+				return false;
+		}
+		return true;
+	}
+
+	private void update(long key, int count) {
+		for (int j = 0; j < SKETCH_HASH_FUNCTIONS; j++)
+			update(getIndex(key, j), key, count);
+	}
+
+	private void update(int index, long key, int count) {
+		counts[index] += count;
+		keySums[index] ^= key;
+		hashSums[index] ^= getCheckHash(key);
+	}
+
+	/**
+	 * Returns true if the given cell contains a single key, either added
+	 * or subtracted.
+	 */
+	private boolean isPure(int index) {
+		int count = counts[index];
+		return (count == 1 || count == -1) &&
+				hashSums[index] == getCheckHash(keySums[index]);
+	}
+
+	private int getIndex(long key, int hashFunction) {
+		int partSize = cellCount / SKETCH_HASH_FUNCTIONS;
+		long h = mix(key + (hashFunction + 1) * 0x9e3779b97f4a7c15L);
+		return hashFunction * partSize + (int) ((h >>> 1) % partSize);
+	}
+
+	private static long getCheckHash(long key) {
+		return mix(key ^ 0xc2b2ae3d27d4eb4fL);
+	}
+
+	/**
+	 * The finalisation step of MurmurHash3, which mixes the bits of the
+	 * input so that each input bit affects every output bit.
+	 */
+	static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private static long readLong(byte[] src, int offset) {
+		return (readUint32(src, offset) << 32) | readUint32(src, offset + 4);
+	}
+
+	private static void writeLong(long src, byte[] dest, int offset) {
+		writeUint32(src >>> 32, dest, offset);
+		writeUint32(src & MAX_32_BIT_UNSIGNED, dest, offset + 4);
+	}
+}
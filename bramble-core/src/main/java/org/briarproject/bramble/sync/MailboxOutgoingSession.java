@@ -28,6 +28,7 @@ import static java.util.logging.Logger.getLogger;
 import static org.briarproject.bramble.api.record.Record.RECORD_HEADER_BYTES;
 import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_IDS;
 import static org.briarproject.bramble.api.sync.SyncConstants.MESSAGE_HEADER_LENGTH;
+import static org.briarproject.bramble.util.LogUtils.now;
 
 /**
  * A {@link SimplexOutgoingSession} for sending and acking messages via a
@@ -53,10 +54,11 @@ class MailboxOutgoingSession extends SimplexOutgoingSession {
 			long maxLatency,
 			StreamWriter streamWriter,
 			SyncRecordWriter recordWriter,
+			SessionMetrics metrics,
 			OutgoingSessionRecord sessionRecord,
 			long capacity) {
 		super(db, eventBus, contactId, transportId, maxLatency, streamWriter,
-				recordWriter);
+				recordWriter, metrics);
 		this.sessionRecord = sessionRecord;
 		this.initialCapacity = capacity;
 	}
@@ -76,6 +78,7 @@ class MailboxOutgoingSession extends SimplexOutgoingSession {
 			List<MessageId> acked =
 					idsToAck.subList(idsSent, idsSent + idsToSend);
 			recordWriter.writeAck(new Ack(acked));
+			onRecordWritten();
 			sessionRecord.onAckSent(acked);
 			LOG.info("Sent ack");
 			idsSent += idsToSend;
@@ -99,11 +102,17 @@ class MailboxOutgoingSession extends SimplexOutgoingSession {
 	void sendMessages() throws DbException, IOException {
 		for (MessageId m : loadMessageIdsToSend()) {
 			if (isInterrupted()) break;
-			// Defer marking the message as sent
+			// Defer marking the message as sent. Each message is loaded and
+			// sent as a batch of one
+			long dbStart = now();
 			Message message = db.transactionWithNullableResult(true, txn ->
 					db.getMessageToSend(txn, contactId, m, maxLatency, false));
 			if (message == null) continue; // No longer shared
+			metrics.recordBatchDbTime(now() - dbStart);
+			long ioStart = now();
 			recordWriter.writeMessage(message);
+			metrics.recordBatchIoTime(now() - ioStart);
+			onRecordWritten();
 			sessionRecord.onMessageSent(m);
 			LOG.info("Sent message");
 		}
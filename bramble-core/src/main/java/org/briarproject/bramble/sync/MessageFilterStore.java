@@ -0,0 +1,157 @@
+package org.briarproject.bramble.sync;
+
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.contact.event.ContactRemovedEvent;
+import org.briarproject.bramble.api.event.Event;
+import org.briarproject.bramble.api.event.EventListener;
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.api.sync.MessageFilter;
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.api.system.Clock;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import static java.util.Collections.emptyList;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_FILTER_MESSAGES;
+
+/**
+ * Creates {@link MessageFilter MessageFilters} to send to contacts, and
+ * holds the filters received from contacts until they expire.
+ * <p>
+ * Received filters expire after {@link #MAX_FILTER_AGE} milliseconds, so
+ * that a message wrongly suppressed by a false positive will be offered
+ * again when it's next due for retransmission. Each contact's filters are
+ * limited to {@link #MAX_FILTER_BYTES_PER_CONTACT} bytes; the oldest are
+ * discarded first.
+ */
+@ThreadSafe
+@NotNullByDefault
+class MessageFilterStore implements EventListener {
+
+	/**
+	 * Groups with fewer unseen messages than this don't get filters, as
+	 * offering the messages costs little more than sending a filter.
+	 */
+	static final int MIN_FILTER_MESSAGES = 64;
+
+	static final long MAX_FILTER_AGE = MINUTES.toMillis(30);
+
+	static final int MAX_FILTER_BYTES_PER_CONTACT = 2 * 1024 * 1024; // 2 MiB
+
+	private final Clock clock;
+	private final Random random = new Random();
+
+	private final Object lock = new Object();
+	@GuardedBy("lock")
+	private final Map<ContactId, LinkedList<StoredFilter>> filters =
+			new HashMap<>();
+
+	MessageFilterStore(Clock clock) {
+		this.clock = clock;
+	}
+
+	/**
+	 * Creates filters for sending to a contact from the given IDs of the
+	 * messages the contact hasn't seen. Large groups are split between
+	 * several filters. All the filters share a random salt.
+	 */
+	Collection<MessageFilter> createFilters(
+			Map<GroupId, Collection<MessageId>> unseen) {
+		long salt = random.nextLong() & Long.MAX_VALUE;
+		List<MessageFilter> created = new ArrayList<>();
+		for (Entry<GroupId, Collection<MessageId>> e : unseen.entrySet()) {
+			Collection<MessageId> ids = e.getValue();
+			if (ids.size() < MIN_FILTER_MESSAGES) continue;
+			List<MessageId> chunk = new ArrayList<>(
+					Math.min(ids.size(), MAX_FILTER_MESSAGES));
+			for (MessageId m : ids) {
+				chunk.add(m);
+				if (chunk.size() == MAX_FILTER_MESSAGES) {
+					created.add(MessageFilter.create(e.getKey(), salt, chunk));
+					chunk.clear();
+				}
+			}
+			if (!chunk.isEmpty())
+				created.add(MessageFilter.create(e.getKey(), salt, chunk));
+		}
+		return created;
+	}
+
+	/**
+	 * Stores a filter received from the given contact.
+	 */
+	void addFilter(ContactId c, MessageFilter f) {
+		long now = clock.currentTimeMillis();
+		synchronized (lock) {
+			LinkedList<StoredFilter> forContact = filters.get(c);
+			if (forContact == null) {
+				forContact = new LinkedList<>();
+				filters.put(c, forContact);
+			}
+			forContact.add(new StoredFilter(f, now));
+			long bytes = 0;
+			for (StoredFilter s : forContact)
+				bytes += s.filter.getBits().length;
+			while (bytes > MAX_FILTER_BYTES_PER_CONTACT) {
+				bytes -= forContact.removeFirst().filter.getBits().length;
+			}
+		}
+	}
+
+	/**
+	 * Returns the unexpired filters received from the given contact.
+	 */
+	Collection<MessageFilter> getFilters(ContactId c) {
+		long now = clock.currentTimeMillis();
+		synchronized (lock) {
+			LinkedList<StoredFilter> forContact = filters.get(c);
+			if (forContact == null) return emptyList();
+			List<MessageFilter> unexpired = new ArrayList<>(forContact.size());
+			Iterator<StoredFilter> it = forContact.iterator();
+			while (it.hasNext()) {
+				StoredFilter s = it.next();
+				if (now - s.received > MAX_FILTER_AGE) it.remove();
+				else unexpired.add(s.filter);
+			}
+			if (forContact.isEmpty()) filters.remove(c);
+			return unexpired;
+		}
+	}
+
+	@Override
+	public void eventOccurred(Event e) {
+		if (e instanceof ContactRemovedEvent) {
+			ContactId c = ((ContactRemovedEvent) e).getContactId();
+			synchronized (lock) {
+				filters.remove(c);
+			}
+		}
+	}
+
+	@Immutable
+	@NotNullByDefault
+	private static class StoredFilter {
+
+		private final MessageFilter filter;
+		private final long received;
+
+		private StoredFilter(MessageFilter filter, long received) {
+			this.filter = filter;
+			this.received = received;
+		}
+	}
+}
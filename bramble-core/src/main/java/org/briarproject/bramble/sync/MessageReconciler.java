@@ -0,0 +1,239 @@
+package org.briarproject.bramble.sync;
+
+import org.briarproject.bramble.api.UniqueId;
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.api.sync.MessageEstimator;
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.api.sync.MessageSketch;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.inject.Inject;
+
+import static java.util.Collections.emptyList;
+import static org.briarproject.bramble.api.sync.SyncConstants.ESTIMATOR_BYTES;
+import static org.briarproject.bramble.api.sync.SyncConstants.ESTIMATOR_CELLS_PER_STRATUM;
+import static org.briarproject.bramble.api.sync.SyncConstants.ESTIMATOR_STRATA;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_SKETCH_CELLS;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_SKETCH_PARTITIONS;
+import static org.briarproject.bramble.api.sync.SyncConstants.SKETCH_CELL_BYTES;
+import static org.briarproject.bramble.api.sync.SyncConstants.SKETCH_HASH_FUNCTIONS;
+import static org.briarproject.bramble.sync.InvertibleBloomFilter.mix;
+
+/**
+ * Reconciles the messages in a group with a contact, so that each peer
+ * learns which of its messages the other peer has and which it lacks,
+ * using bandwidth proportional to the number of differences rather than
+ * the number of messages.
+ * <p>
+ * One peer sends a {@link MessageEstimator} of its messages. The other
+ * peer uses it to estimate the number of differences and replies with
+ * {@link MessageSketch MessageSketches} of its own messages. The first peer
+ * subtracts the sketches it receives from sketches of its own messages,
+ * and the differences that remain are the messages only one peer has. If
+ * the estimate was too low, the sketches can't be decoded and the messages
+ * are offered as usual.
+ * <p>
+ * Message IDs are hashed to salted 64-bit keys, so the tables are smaller
+ * and each peer can only list the differences that are its own messages,
+ * which are the only ones it needs.
+ */
+@ThreadSafe
+@NotNullByDefault
+class MessageReconciler {
+
+	/**
+	 * Groups with fewer unseen messages than this aren't reconciled, as
+	 * offering the messages costs little more than sending an estimator.
+	 */
+	static final int MIN_RECONCILIATION_MESSAGES = 1024;
+
+	/**
+	 * The number of sketch cells per estimated difference, which allows
+	 * for the estimate being too low and for the overhead needed to decode
+	 * a table reliably.
+	 */
+	static final int SKETCH_CELLS_PER_DIFFERENCE = 2;
+
+	/**
+	 * The number of sketch cells added to those needed for the estimated
+	 * differences, which allows small numbers of differences to be listed
+	 * when the estimate is zero.
+	 */
+	static final int EXTRA_SKETCH_CELLS = 60;
+
+	/**
+	 * The maximum number of cells we put in a sketch, which is the largest
+	 * multiple of the number of hash functions that fits in a record.
+	 */
+	private static final int MAX_CELLS_PER_SKETCH =
+			MAX_SKETCH_CELLS - MAX_SKETCH_CELLS % SKETCH_HASH_FUNCTIONS;
+
+	private final Random random;
+
+	@Inject
+	MessageReconciler() {
+		this(new Random());
+	}
+
+	MessageReconciler(Random random) {
+		this.random = random;
+	}
+
+	/**
+	 * Creates an estimator of the given messages, which must all belong to
+	 * the given group.
+	 */
+	MessageEstimator createEstimator(GroupId g, Collection<MessageId> ids) {
+		long salt = random.nextLong() & Long.MAX_VALUE;
+		InvertibleBloomFilter[] strata = createStrata(salt, ids);
+		byte[] cells = new byte[ESTIMATOR_BYTES];
+		int stratumBytes = ESTIMATOR_CELLS_PER_STRATUM * SKETCH_CELL_BYTES;
+		for (int i = 0; i < ESTIMATOR_STRATA; i++)
+			strata[i].write(cells, i * stratumBytes);
+		return new MessageEstimator(g, salt, cells);
+	}
+
+	/**
+	 * Returns an estimate of the number of messages that are in the given
+	 * estimator or the given collection, but not both.
+	 */
+	int estimateDifference(MessageEstimator e, Collection<MessageId> ids) {
+		InvertibleBloomFilter[] ours = createStrata(e.getSalt(), ids);
+		int stratumBytes = ESTIMATOR_CELLS_PER_STRATUM * SKETCH_CELL_BYTES;
+		List<Long> added = new ArrayList<>(), subtracted = new ArrayList<>();
+		// Decode the strata from the sparsest to the densest. If a stratum
+		// can't be decoded, extrapolate from the strata decoded so far
+		int count = 0;
+		for (int i = ESTIMATOR_STRATA - 1; i >= 0; i--) {
+			InvertibleBloomFilter theirs = InvertibleBloomFilter.read(
+					e.getCells(), i * stratumBytes,
+					ESTIMATOR_CELLS_PER_STRATUM);
+			theirs.subtract(ours[i]);
+			added.clear();
+			subtracted.clear();
+			if (!theirs.decode(added, subtracted)) {
+				long estimate = (long) count << (i + 1);
+				return (int) Math.min(estimate, Integer.MAX_VALUE);
+			}
+			count += added.size() + subtracted.size();
+		}
+		return count;
+	}
+
+	/**
+	 * Creates sketches of the given messages, which must all belong to the
+	 * estimator's group, for replying to the estimator. Returns an empty
+	 * collection if there are too many differences to reconcile.
+	 */
+	Collection<MessageSketch> createSketches(MessageEstimator e,
+			Collection<MessageId> ids) {
+		int difference = estimateDifference(e, ids);
+		long cellsNeeded = (long) difference * SKETCH_CELLS_PER_DIFFERENCE
+				+ EXTRA_SKETCH_CELLS;
+		long partitions = (cellsNeeded + MAX_CELLS_PER_SKETCH - 1)
+				/ MAX_CELLS_PER_SKETCH;
+		if (partitions > MAX_SKETCH_PARTITIONS) return emptyList();
+		int cellCount = (int) ((cellsNeeded + partitions - 1) / partitions);
+		// Round up to a multiple of the number of hash functions
+		int remainder = cellCount % SKETCH_HASH_FUNCTIONS;
+		if (remainder != 0) cellCount += SKETCH_HASH_FUNCTIONS - remainder;
+		long salt = random.nextLong() & Long.MAX_VALUE;
+		List<MessageSketch> sketches = new ArrayList<>((int) partitions);
+		for (int p = 0; p < partitions; p++) {
+			InvertibleBloomFilter t = createSketch(salt, p, (int) partitions,
+					cellCount, ids);
+			byte[] cells = new byte[cellCount * SKETCH_CELL_BYTES];
+			t.write(cells, 0);
+			sketches.add(new MessageSketch(e.getGroupId(), salt, p,
+					(int) partitions, cells));
+		}
+		return sketches;
+	}
+
+	/**
+	 * Compares the given sketch with the given messages, which must all
+	 * belong to the sketch's group, and returns a map from each message in
+	 * the sketch's partition to true if the sender of the sketch has the
+	 * message or false if the sender lacks it. Returns null if the sketch
+	 * can't be decoded.
+	 */
+	@Nullable
+	Map<MessageId, Boolean> reconcile(MessageSketch s,
+			Collection<MessageId> ids) {
+		InvertibleBloomFilter ours =
+				new InvertibleBloomFilter(s.getCellCount());
+		Map<Long, MessageId> keys = new HashMap<>();
+		for (MessageId m : ids) {
+			long key = getKey(s.getSalt(), m);
+			if (getPartition(key, s.getPartitions()) != s.getPartition())
+				continue;
+			// Give up if two of our messages have the same key, as we
+			// wouldn't know which of them the contact has
+			if (keys.put(key, m) != null) return null;
+			ours.add(key);
+		}
+		ours.subtract(InvertibleBloomFilter.read(s.getCells(), 0,
+				s.getCellCount()));
+		List<Long> onlyOurs = new ArrayList<>(), onlyTheirs = new ArrayList<>();
+		if (!ours.decode(onlyOurs, onlyTheirs)) return null;
+		Map<MessageId, Boolean> result = new HashMap<>(keys.size());
+		for (MessageId m : keys.values()) result.put(m, true);
+		for (long key : onlyOurs) {
+			MessageId m = keys.get(key);
+			if (m == null) return null;
+			result.put(m, false);
+		}
+		return result;
+	}
+
+	private InvertibleBloomFilter[] createStrata(long salt,
+			Collection<MessageId> ids) {
+		InvertibleBloomFilter[] strata =
+				new InvertibleBloomFilter[ESTIMATOR_STRATA];
+		for (int i = 0; i < ESTIMATOR_STRATA; i++)
+			strata[i] = new InvertibleBloomFilter(ESTIMATOR_CELLS_PER_STRATUM);
+		for (MessageId m : ids) {
+			long key = getKey(salt, m);
+			// Stratum i holds about 1 / 2^(i + 1) of the keys
+			int stratum = Long.numberOfTrailingZeros(
+					mix(key ^ 0x61c8864680b583ebL));
+			strata[Math.min(stratum, ESTIMATOR_STRATA - 1)].add(key);
+		}
+		return strata;
+	}
+
+	private InvertibleBloomFilter createSketch(long salt, int partition,
+			int partitions, int cellCount, Collection<MessageId> ids) {
+		InvertibleBloomFilter t = new InvertibleBloomFilter(cellCount);
+		for (MessageId m : ids) {
+			long key = getKey(salt, m);
+			if (getPartition(key, partitions) == partition) t.add(key);
+		}
+		return t;
+	}
+
+	private static int getPartition(long key, int partitions) {
+		return (int) ((mix(key ^ 0x2545f4914f6cdd1dL) >>> 1) % partitions);
+	}
+
+	private static long getKey(long salt, MessageId m) {
+		byte[] id = m.getBytes();
+		long h = salt;
+		for (int off = 0; off < UniqueId.LENGTH; off += 8) {
+			long word = 0;
+			for (int i = 0; i < 8; i++)
+				word = (word << 8) | (id[off + i] & 0xFF);
+			h = mix(h ^ word);
+		}
+		return h;
+	}
+}
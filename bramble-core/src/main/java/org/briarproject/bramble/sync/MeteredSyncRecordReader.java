@@ -0,0 +1,174 @@
+package org.briarproject.bramble.sync;
+
+import org.briarproject.bramble.api.UniqueId;
+import org.briarproject.bramble.api.sync.Ack;
+import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageEstimator;
+import org.briarproject.bramble.api.sync.MessageFilter;
+import org.briarproject.bramble.api.sync.MessageSketch;
+import org.briarproject.bramble.api.sync.Offer;
+import org.briarproject.bramble.api.sync.Priority;
+import org.briarproject.bramble.api.sync.Request;
+import org.briarproject.bramble.api.sync.SyncRecordReader;
+import org.briarproject.bramble.api.sync.Versions;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.io.IOException;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static org.briarproject.bramble.api.record.Record.RECORD_HEADER_BYTES;
+import static org.briarproject.bramble.api.sync.RecordTypes.ACK;
+import static org.briarproject.bramble.api.sync.RecordTypes.ESTIMATOR;
+import static org.briarproject.bramble.api.sync.RecordTypes.FILTER;
+import static org.briarproject.bramble.api.sync.RecordTypes.MESSAGE;
+import static org.briarproject.bramble.api.sync.RecordTypes.OFFER;
+import static org.briarproject.bramble.api.sync.RecordTypes.PRIORITY;
+import static org.briarproject.bramble.api.sync.RecordTypes.REQUEST;
+import static org.briarproject.bramble.api.sync.RecordTypes.SKETCH;
+import static org.briarproject.bramble.api.sync.RecordTypes.VERSIONS;
+import static org.briarproject.bramble.api.sync.SyncConstants.ESTIMATOR_BYTES;
+import static org.briarproject.bramble.api.sync.SyncConstants.ESTIMATOR_HEADER_BYTES;
+import static org.briarproject.bramble.api.sync.SyncConstants.FILTER_HEADER_BYTES;
+import static org.briarproject.bramble.api.sync.SyncConstants.SKETCH_HEADER_BYTES;
+
+/**
+ * A {@link SyncRecordReader} that counts the records of each type it
+ * reads, and their sizes, in a {@link SessionMetrics}. The size of each
+ * record is calculated from its contents, as the underlying reader doesn't
+ * count the bytes it reads.
+ */
+@NotThreadSafe
+@NotNullByDefault
+class MeteredSyncRecordReader implements SyncRecordReader {
+
+	private final SyncRecordReader delegate;
+	private final SessionMetrics metrics;
+
+	MeteredSyncRecordReader(SyncRecordReader delegate,
+			SessionMetrics metrics) {
+		this.delegate = delegate;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public boolean eof() throws IOException {
+		return delegate.eof();
+	}
+
+	@Override
+	public boolean hasAck() throws IOException {
+		return delegate.hasAck();
+	}
+
+	@Override
+	public Ack readAck() throws IOException {
+		Ack a = delegate.readAck();
+		metrics.recordReceived(ACK, RECORD_HEADER_BYTES
+				+ (long) a.getMessageIds().size() * UniqueId.LENGTH);
+		return a;
+	}
+
+	@Override
+	public boolean hasMessage() throws IOException {
+		return delegate.hasMessage();
+	}
+
+	@Override
+	public Message readMessage() throws IOException {
+		Message m = delegate.readMessage();
+		metrics.recordReceived(MESSAGE, RECORD_HEADER_BYTES + m.getRawLength());
+		return m;
+	}
+
+	@Override
+	public boolean hasOffer() throws IOException {
+		return delegate.hasOffer();
+	}
+
+	@Override
+	public Offer readOffer() throws IOException {
+		Offer o = delegate.readOffer();
+		metrics.recordReceived(OFFER, RECORD_HEADER_BYTES
+				+ (long) o.getMessageIds().size() * UniqueId.LENGTH);
+		return o;
+	}
+
+	@Override
+	public boolean hasRequest() throws IOException {
+		return delegate.hasRequest();
+	}
+
+	@Override
+	public Request readRequest() throws IOException {
+		Request r = delegate.readRequest();
+		metrics.recordReceived(REQUEST, RECORD_HEADER_BYTES
+				+ (long) r.getMessageIds().size() * UniqueId.LENGTH);
+		return r;
+	}
+
+	@Override
+	public boolean hasVersions() throws IOException {
+		return delegate.hasVersions();
+	}
+
+	@Override
+	public Versions readVersions() throws IOException {
+		Versions v = delegate.readVersions();
+		metrics.recordReceived(VERSIONS,
+				RECORD_HEADER_BYTES + v.getSupportedVersions().size());
+		return v;
+	}
+
+	@Override
+	public boolean hasPriority() throws IOException {
+		return delegate.hasPriority();
+	}
+
+	@Override
+	public Priority readPriority() throws IOException {
+		Priority p = delegate.readPriority();
+		metrics.recordReceived(PRIORITY,
+				RECORD_HEADER_BYTES + p.getNonce().length);
+		return p;
+	}
+
+	@Override
+	public boolean hasFilter() throws IOException {
+		return delegate.hasFilter();
+	}
+
+	@Override
+	public MessageFilter readFilter() throws IOException {
+		MessageFilter f = delegate.readFilter();
+		metrics.recordReceived(FILTER, RECORD_HEADER_BYTES
+				+ FILTER_HEADER_BYTES + f.getBits().length);
+		return f;
+	}
+
+	@Override
+	public boolean hasEstimator() throws IOException {
+		return delegate.hasEstimator();
+	}
+
+	@Override
+	public MessageEstimator readEstimator() throws IOException {
+		MessageEstimator e = delegate.readEstimator();
+		metrics.recordReceived(ESTIMATOR, RECORD_HEADER_BYTES
+				+ ESTIMATOR_HEADER_BYTES + ESTIMATOR_BYTES);
+		return e;
+	}
+
+	@Override
+	public boolean hasSketch() throws IOException {
+		return delegate.hasSketch();
+	}
+
+	@Override
+	public MessageSketch readSketch() throws IOException {
+		MessageSketch s = delegate.readSketch();
+		metrics.recordReceived(SKETCH, RECORD_HEADER_BYTES
+				+ SKETCH_HEADER_BYTES + s.getCells().length);
+		return s;
+	}
+}
@@ -0,0 +1,118 @@
+package org.briarproject.bramble.sync;
+
+import org.briarproject.bramble.api.sync.Ack;
+import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageEstimator;
+import org.briarproject.bramble.api.sync.MessageFilter;
+import org.briarproject.bramble.api.sync.MessageSketch;
+import org.briarproject.bramble.api.sync.Offer;
+import org.briarproject.bramble.api.sync.Priority;
+import org.briarproject.bramble.api.sync.Request;
+import org.briarproject.bramble.api.sync.SyncRecordWriter;
+import org.briarproject.bramble.api.sync.Versions;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.io.IOException;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static org.briarproject.bramble.api.sync.RecordTypes.ACK;
+import static org.briarproject.bramble.api.sync.RecordTypes.ESTIMATOR;
+import static org.briarproject.bramble.api.sync.RecordTypes.FILTER;
+import static org.briarproject.bramble.api.sync.RecordTypes.MESSAGE;
+import static org.briarproject.bramble.api.sync.RecordTypes.OFFER;
+import static org.briarproject.bramble.api.sync.RecordTypes.PRIORITY;
+import static org.briarproject.bramble.api.sync.RecordTypes.REQUEST;
+import static org.briarproject.bramble.api.sync.RecordTypes.SKETCH;
+import static org.briarproject.bramble.api.sync.RecordTypes.VERSIONS;
+
+/**
+ * A {@link SyncRecordWriter} that counts the records of each type it
+ * writes, and their sizes, in a {@link SessionMetrics}.
+ */
+@NotThreadSafe
+@NotNullByDefault
+class MeteredSyncRecordWriter implements SyncRecordWriter {
+
+	private final SyncRecordWriter delegate;
+	private final SessionMetrics metrics;
+
+	MeteredSyncRecordWriter(SyncRecordWriter delegate,
+			SessionMetrics metrics) {
+		this.delegate = delegate;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public void writeAck(Ack a) throws IOException {
+		long before = delegate.getBytesWritten();
+		delegate.writeAck(a);
+		metrics.recordSent(ACK, delegate.getBytesWritten() - before);
+	}
+
+	@Override
+	public void writeMessage(Message m) throws IOException {
+		long before = delegate.getBytesWritten();
+		delegate.writeMessage(m);
+		metrics.recordSent(MESSAGE, delegate.getBytesWritten() - before);
+	}
+
+	@Override
+	public void writeOffer(Offer o) throws IOException {
+		long before = delegate.getBytesWritten();
+		delegate.writeOffer(o);
+		metrics.recordSent(OFFER, delegate.getBytesWritten() - before);
+	}
+
+	@Override
+	public void writeRequest(Request r) throws IOException {
+		long before = delegate.getBytesWritten();
+		delegate.writeRequest(r);
+		metrics.recordSent(REQUEST, delegate.getBytesWritten() - before);
+	}
+
+	@Override
+	public void writeVersions(Versions v) throws IOException {
+		long before = delegate.getBytesWritten();
+		delegate.writeVersions(v);
+		metrics.recordSent(VERSIONS, delegate.getBytesWritten() - before);
+	}
+
+	@Override
+	public void writePriority(Priority p) throws IOException {
+		long before = delegate.getBytesWritten();
+		delegate.writePriority(p);
+		metrics.recordSent(PRIORITY, delegate.getBytesWritten() - before);
+	}
+
+	@Override
+	public void writeFilter(MessageFilter f) throws IOException {
+		long before = delegate.getBytesWritten();
+		delegate.writeFilter(f);
+		metrics.recordSent(FILTER, delegate.getBytesWritten() - before);
+	}
+
+	@Override
+	public void writeEstimator(MessageEstimator e) throws IOException {
+		long before = delegate.getBytesWritten();
+		delegate.writeEstimator(e);
+		metrics.recordSent(ESTIMATOR, delegate.getBytesWritten() - before);
+	}
+
+	@Override
+	public void writeSketch(MessageSketch s) throws IOException {
+		long before = delegate.getBytesWritten();
+		delegate.writeSketch(s);
+		metrics.recordSent(SKETCH, delegate.getBytesWritten() - before);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		delegate.flush();
+	}
+
+	@Override
+	public long getBytesWritten() {
+		return delegate.getBytesWritten();
+	}
+}
@@ -0,0 +1,427 @@
+package org.briarproject.bramble.sync;
+
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.contact.event.ContactRemovedEvent;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.DatabaseExecutor;
+import org.briarproject.bramble.api.db.DbException;
+import org.briarproject.bramble.api.db.NoSuchContactException;
+import org.briarproject.bramble.api.event.Event;
+import org.briarproject.bramble.api.event.EventBus;
+import org.briarproject.bramble.api.event.EventListener;
+import org.briarproject.bramble.api.lifecycle.IoExecutor;
+import org.briarproject.bramble.api.lifecycle.event.LifecycleEvent;
+import org.briarproject.bramble.api.plugin.TransportId;
+import org.briarproject.bramble.api.plugin.event.TransportInactiveEvent;
+import org.briarproject.bramble.api.sync.Ack;
+import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.api.sync.SyncRecordWriter;
+import org.briarproject.bramble.api.sync.SyncSession;
+import org.briarproject.bramble.api.sync.Versions;
+import org.briarproject.bramble.api.sync.event.CloseSyncConnectionsEvent;
+import org.briarproject.bramble.api.transport.StreamWriter;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Logger;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import static java.util.Collections.emptyMap;
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.bramble.api.lifecycle.LifecycleManager.LifecycleState.STOPPING;
+import static org.briarproject.bramble.api.record.Record.RECORD_HEADER_BYTES;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_IDS;
+import static org.briarproject.bramble.api.sync.SyncConstants.SUPPORTED_VERSIONS;
+import static org.briarproject.bramble.sync.SimplexOutgoingSession.BATCH_CAPACITY;
+import static org.briarproject.bramble.util.LogUtils.logException;
+import static org.briarproject.bramble.util.LogUtils.now;
+
+/**
+ * An outgoing {@link SyncSession} that writes a simplex stream to each of
+ * several contacts over the same transport. Messages are sent eagerly, as
+ * in an {@link EagerSimplexOutgoingSession}.
+ * <p>
+ * Each message is read from the database once, however many of the
+ * contacts it's sent to, and the streams are written concurrently on the
+ * IO executor. Messages are loaded in batches while the previous batch is
+ * being written, so memory usage is bounded by twice the batch capacity.
+ * <p>
+ * Messages are only marked as sent to a contact once they've been written
+ * to that contact's stream. An IO error only affects the stream on which
+ * it occurred: no more records are written to that stream, and the
+ * messages that weren't written are not marked as sent to that contact.
+ */
+@ThreadSafe
+@NotNullByDefault
+class MultiContactSimplexOutgoingSession
+		implements SyncSession, EventListener {
+
+	private static final Logger LOG =
+			getLogger(MultiContactSimplexOutgoingSession.class.getName());
+
+	/**
+	 * A batch that marks the end of the messages to send.
+	 */
+	private static final Map<ContactId, List<Message>> END = emptyMap();
+
+	private final DatabaseComponent db;
+	private final Executor dbExecutor, ioExecutor;
+	private final EventBus eventBus;
+	private final TransportId transportId;
+	private final long maxLatency;
+	private final Map<ContactId, Stream> streams;
+	private final BlockingQueue<Map<ContactId, List<Message>>> loadedBatches =
+			new LinkedBlockingQueue<>();
+
+	private volatile boolean interrupted = false;
+
+	MultiContactSimplexOutgoingSession(DatabaseComponent db,
+			Executor dbExecutor,
+			Executor ioExecutor,
+			EventBus eventBus,
+			TransportId transportId,
+			long maxLatency,
+			Map<ContactId, Stream> streams) {
+		this.db = db;
+		this.dbExecutor = dbExecutor;
+		this.ioExecutor = ioExecutor;
+		this.eventBus = eventBus;
+		this.transportId = transportId;
+		this.maxLatency = maxLatency;
+		this.streams = streams;
+	}
+
+	@IoExecutor
+	@Override
+	public void run() throws IOException {
+		eventBus.addListener(this);
+		try {
+			forEachStream(s -> {
+				// Send our supported protocol versions
+				s.recordWriter.writeVersions(new Versions(SUPPORTED_VERSIONS));
+				s.start = now();
+				sendAcks(s);
+			});
+			try {
+				sendMessages(loadRecipients());
+			} catch (DbException e) {
+				logException(LOG, WARNING, e);
+			}
+			forEachStream(s -> s.streamWriter.sendEndOfStream());
+		} finally {
+			eventBus.removeListener(this);
+		}
+	}
+
+	@Override
+	public void interrupt() {
+		interrupted = true;
+	}
+
+	@Override
+	public void eventOccurred(Event e) {
+		if (e instanceof ContactRemovedEvent) {
+			ContactRemovedEvent c = (ContactRemovedEvent) e;
+			Stream s = streams.get(c.getContactId());
+			if (s != null) s.removed = true;
+		} else if (e instanceof LifecycleEvent) {
+			LifecycleEvent l = (LifecycleEvent) e;
+			if (l.getLifecycleState() == STOPPING) interrupt();
+		} else if (e instanceof CloseSyncConnectionsEvent) {
+			CloseSyncConnectionsEvent c = (CloseSyncConnectionsEvent) e;
+			if (c.getTransportId().equals(transportId)) interrupt();
+		} else if (e instanceof TransportInactiveEvent) {
+			TransportInactiveEvent t = (TransportInactiveEvent) e;
+			if (t.getTransportId().equals(transportId)) interrupt();
+		}
+	}
+
+	/**
+	 * Returns the contacts whose streams can still be written.
+	 */
+	private List<ContactId> getActiveContacts() {
+		List<ContactId> active = new ArrayList<>(streams.size());
+		for (Stream s : streams.values()) {
+			if (s.isActive()) active.add(s.contactId);
+		}
+		return active;
+	}
+
+	/**
+	 * Runs the given task for each stream that hasn't failed, in parallel
+	 * on the IO executor, and waits for the tasks to finish. If a task
+	 * throws an IOException, the stream is marked as failed.
+	 */
+	@IoExecutor
+	private void forEachStream(StreamTask task) throws IOException {
+		List<Stream> writable = new ArrayList<>(streams.size());
+		for (Stream s : streams.values()) if (!s.failed) writable.add(s);
+		CountDownLatch latch = new CountDownLatch(writable.size());
+		for (Stream s : writable) {
+			ioExecutor.execute(() -> {
+				try {
+					task.run(s);
+				} catch (DbException e) {
+					logException(LOG, WARNING, e);
+				} catch (IOException e) {
+					logException(LOG, WARNING, e);
+					s.failed = true;
+				} finally {
+					latch.countDown();
+				}
+			});
+		}
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			LOG.info("Interrupted while waiting for streams to be written");
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+
+	@IoExecutor
+	private void sendAcks(Stream s) throws DbException, IOException {
+		while (!interrupted && s.isActive()) {
+			Ack a = db.transactionWithNullableResult(false, txn ->
+					db.generateAck(txn, s.contactId, MAX_MESSAGE_IDS));
+			if (a == null) break; // No more acks to send
+			s.recordWriter.writeAck(a);
+			s.onRecordWritten();
+			LOG.info("Sent ack");
+		}
+	}
+
+	/**
+	 * Returns the IDs of the unacked messages to send to any of the
+	 * contacts, each mapped to the contacts it should be sent to.
+	 */
+	private Map<MessageId, List<ContactId>> loadRecipients()
+			throws DbException {
+		List<ContactId> contacts = getActiveContacts();
+		Map<MessageId, List<ContactId>> recipients =
+				db.transactionWithResult(true, txn -> {
+					Map<MessageId, List<ContactId>> r = new LinkedHashMap<>();
+					for (ContactId c : contacts) {
+						Collection<MessageId> ids;
+						try {
+							ids = db.getUnackedMessagesToSend(txn, c);
+						} catch (NoSuchContactException e) {
+							continue; // The contact has been removed
+						}
+						for (MessageId m : ids) {
+							List<ContactId> to = r.get(m);
+							if (to == null) {
+								to = new ArrayList<>();
+								r.put(m, to);
+							}
+							to.add(c);
+						}
+					}
+					return r;
+				});
+		if (LOG.isLoggable(INFO)) {
+			LOG.info(recipients.size() + " unacked messages to send to "
+					+ contacts.size() + " contacts");
+		}
+		return recipients;
+	}
+
+	@IoExecutor
+	private void sendMessages(Map<MessageId, List<ContactId>> recipients)
+			throws IOException {
+		// The next batch isn't loaded until the previous batch has been
+		// taken from the queue, so only one thread uses the iterator at once
+		LoadBatch load = new LoadBatch(recipients.entrySet().iterator());
+		dbExecutor.execute(load);
+		try {
+			while (!interrupted) {
+				Map<ContactId, List<Message>> batch = loadedBatches.take();
+				if (batch == END) break;
+				// Load the next batch while this one is being written
+				dbExecutor.execute(load);
+				Map<ContactId, List<MessageId>> written =
+						new ConcurrentHashMap<>();
+				forEachStream(s -> {
+					List<Message> messages = batch.get(s.contactId);
+					if (messages == null) return;
+					long ioStart = now();
+					List<MessageId> ids = new ArrayList<>(messages.size());
+					for (Message m : messages) {
+						s.recordWriter.writeMessage(m);
+						ids.add(m.getId());
+					}
+					s.metrics.recordBatchIoTime(now() - ioStart);
+					s.onRecordWritten();
+					written.put(s.contactId, ids);
+				});
+				LOG.info("Sent batch");
+				if (!written.isEmpty())
+					dbExecutor.execute(new MarkBatchSent(written));
+			}
+		} catch (InterruptedException e) {
+			LOG.info("Interrupted while waiting for a batch to write");
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+
+	private class LoadBatch implements Runnable {
+
+		private final Iterator<Entry<MessageId, List<ContactId>>> it;
+
+		private LoadBatch(Iterator<Entry<MessageId, List<ContactId>>> it) {
+			this.it = it;
+		}
+
+		@DatabaseExecutor
+		@Override
+		public void run() {
+			List<ContactId> active = getActiveContacts();
+			if (interrupted || active.isEmpty() || !it.hasNext()) {
+				loadedBatches.add(END);
+				return;
+			}
+			try {
+				long dbStart = now();
+				Map<ContactId, List<Message>> batch =
+						db.transactionWithResult(true, txn -> {
+							Map<ContactId, List<Message>> b = new HashMap<>();
+							long bytes = 0;
+							while (bytes < BATCH_CAPACITY && it.hasNext()) {
+								Entry<MessageId, List<ContactId>> e = it.next();
+								List<ContactId> to = e.getValue();
+								to.retainAll(active);
+								if (to.isEmpty()) continue;
+								// The message is marked as sent to each
+								// contact after it's written
+								Collection<ContactId> sendTo =
+										db.getContactsToSendMessageTo(txn,
+												e.getKey(), to);
+								if (sendTo.isEmpty()) continue;
+								Message m = db.getMessage(txn, e.getKey());
+								for (ContactId c : sendTo) {
+									List<Message> messages = b.get(c);
+									if (messages == null) {
+										messages = new ArrayList<>();
+										b.put(c, messages);
+									}
+									messages.add(m);
+								}
+								bytes += RECORD_HEADER_BYTES + m.getRawLength();
+							}
+							return b;
+						});
+				if (LOG.isLoggable(INFO)) {
+					LOG.info("Loaded batch for " + batch.size() + " contacts");
+				}
+				if (batch.isEmpty()) {
+					// None of the remaining messages are still shared
+					loadedBatches.add(END);
+				} else {
+					long dbTime = now() - dbStart;
+					for (ContactId c : batch.keySet()) {
+						Stream s = streams.get(c);
+						if (s != null) s.metrics.recordBatchDbTime(dbTime);
+					}
+					loadedBatches.add(batch);
+				}
+			} catch (DbException e) {
+				logException(LOG, WARNING, e);
+				interrupt();
+				loadedBatches.add(END);
+			}
+		}
+	}
+
+	private class MarkBatchSent implements Runnable {
+
+		private final Map<ContactId, List<MessageId>> written;
+
+		private MarkBatchSent(Map<ContactId, List<MessageId>> written) {
+			this.written = written;
+		}
+
+		@DatabaseExecutor
+		@Override
+		public void run() {
+			try {
+				db.transaction(false, txn -> {
+					for (Entry<ContactId, List<MessageId>> w :
+							written.entrySet()) {
+						try {
+							db.setMessagesSent(txn, w.getKey(), w.getValue(),
+									maxLatency);
+						} catch (NoSuchContactException e) {
+							// The contact has been removed
+						}
+					}
+				});
+			} catch (DbException e) {
+				logException(LOG, WARNING, e);
+			}
+		}
+	}
+
+	/**
+	 * The state of the stream being written to one of the contacts.
+	 */
+	@ThreadSafe
+	@NotNullByDefault
+	static class Stream {
+
+		private final ContactId contactId;
+		private final StreamWriter streamWriter;
+		private final SyncRecordWriter recordWriter;
+		private final SessionMetrics metrics;
+
+		private volatile boolean failed = false, removed = false;
+
+		// Only accessed by one thread at a time
+		private long start = 0;
+		private boolean recordWritten = false;
+
+		Stream(ContactId contactId, StreamWriter streamWriter,
+				SyncRecordWriter recordWriter, SessionMetrics metrics) {
+			this.contactId = contactId;
+			this.streamWriter = streamWriter;
+			this.recordWriter = recordWriter;
+			this.metrics = metrics;
+		}
+
+		private boolean isActive() {
+			return !failed && !removed;
+		}
+
+		private void onRecordWritten() {
+			if (!recordWritten) {
+				recordWritten = true;
+				metrics.recordTimeToFirstRecord(now() - start);
+			}
+		}
+	}
+
+	private interface StreamTask {
+
+		@IoExecutor
+		void run(Stream s) throws DbException, IOException;
+	}
+}
@@ -0,0 +1,99 @@
+package org.briarproject.bramble.sync;
+
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.plugin.TransportId;
+import org.briarproject.bramble.api.sync.metrics.RecordMetrics;
+import org.briarproject.bramble.api.sync.metrics.SyncMetrics;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import static org.briarproject.bramble.api.sync.RecordTypes.SKETCH;
+
+/**
+ * Collects metrics for the sync sessions with a contact over a transport.
+ * The counters are updated without locking, so sessions can share an
+ * instance.
+ */
+@ThreadSafe
+@NotNullByDefault
+class SessionMetrics {
+
+	/**
+	 * The number of record types, which are numbered from zero.
+	 */
+	private static final int RECORD_TYPES = SKETCH + 1;
+
+	private final ContactId contactId;
+	private final TransportId transportId;
+	private final AtomicLongArray recordsSent =
+			new AtomicLongArray(RECORD_TYPES);
+	private final AtomicLongArray bytesSent = new AtomicLongArray(RECORD_TYPES);
+	private final AtomicLongArray recordsReceived =
+			new AtomicLongArray(RECORD_TYPES);
+	private final AtomicLongArray bytesReceived =
+			new AtomicLongArray(RECORD_TYPES);
+	private final HistogramRecorder batchDbTime = new HistogramRecorder();
+	private final HistogramRecorder batchIoTime = new HistogramRecorder();
+	private final HistogramRecorder writerQueueDepth = new HistogramRecorder();
+	private final HistogramRecorder timeToFirstRecord =
+			new HistogramRecorder();
+
+	SessionMetrics(ContactId contactId, TransportId transportId) {
+		this.contactId = contactId;
+		this.transportId = transportId;
+	}
+
+	void recordSent(byte recordType, long bytes) {
+		if (recordType < 0 || recordType >= RECORD_TYPES) return;
+		recordsSent.incrementAndGet(recordType);
+		bytesSent.addAndGet(recordType, bytes);
+	}
+
+	void recordReceived(byte recordType, long bytes) {
+		if (recordType < 0 || recordType >= RECORD_TYPES) return;
+		recordsReceived.incrementAndGet(recordType);
+		bytesReceived.addAndGet(recordType, bytes);
+	}
+
+	void recordBatchDbTime(long millis) {
+		batchDbTime.record(millis);
+	}
+
+	void recordBatchIoTime(long millis) {
+		batchIoTime.record(millis);
+	}
+
+	void recordWriterQueueDepth(int depth) {
+		writerQueueDepth.record(depth);
+	}
+
+	void recordTimeToFirstRecord(long millis) {
+		timeToFirstRecord.record(millis);
+	}
+
+	SyncMetrics getSnapshot() {
+		return new SyncMetrics(contactId, transportId,
+				getRecordMetrics(recordsSent, bytesSent),
+				getRecordMetrics(recordsReceived, bytesReceived),
+				batchDbTime.getSnapshot(), batchIoTime.getSnapshot(),
+				writerQueueDepth.getSnapshot(),
+				timeToFirstRecord.getSnapshot());
+	}
+
+	private Map<Byte, RecordMetrics> getRecordMetrics(AtomicLongArray records,
+			AtomicLongArray bytes) {
+		Map<Byte, RecordMetrics> metrics = new HashMap<>();
+		for (int i = 0; i < RECORD_TYPES; i++) {
+			long r = records.get(i);
+			if (r > 0) {
+				metrics.put((byte) i, new RecordMetrics(r, bytes.get(i)));
+			}
+		}
+		return metrics;
+	}
+}
@@ -37,6 +37,7 @@ import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_IDS;
 import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_LENGTH;
 import static org.briarproject.bramble.api.sync.SyncConstants.SUPPORTED_VERSIONS;
 import static org.briarproject.bramble.util.LogUtils.logException;
+import static org.briarproject.bramble.util.LogUtils.now;
 
 /**
  * An outgoing {@link SyncSession} suitable for simplex transports. The session
@@ -67,16 +68,22 @@ class SimplexOutgoingSession implements SyncSession, EventListener {
 	protected final long maxLatency;
 	protected final StreamWriter streamWriter;
 	protected final SyncRecordWriter recordWriter;
+	protected final SessionMetrics metrics;
 
 	private volatile boolean interrupted = false;
 
+	// Only accessed by the thread running the session
+	private long start = 0;
+	private boolean recordWritten = false;
+
 	SimplexOutgoingSession(DatabaseComponent db,
 			EventBus eventBus,
 			ContactId contactId,
 			TransportId transportId,
 			long maxLatency,
 			StreamWriter streamWriter,
-			SyncRecordWriter recordWriter) {
+			SyncRecordWriter recordWriter,
+			SessionMetrics metrics) {
 		this.db = db;
 		this.eventBus = eventBus;
 		this.contactId = contactId;
@@ -84,6 +91,7 @@ class SimplexOutgoingSession implements SyncSession, EventListener {
 		this.maxLatency = maxLatency;
 		this.streamWriter = streamWriter;
 		this.recordWriter = recordWriter;
+		this.metrics = metrics;
 	}
 
 	@IoExecutor
@@ -93,6 +101,7 @@ class SimplexOutgoingSession implements SyncSession, EventListener {
 		try {
 			// Send our supported protocol versions
 			recordWriter.writeVersions(new Versions(SUPPORTED_VERSIONS));
+			start = now();
 			try {
 				sendAcks();
 				sendMessages();
@@ -114,6 +123,17 @@ class SimplexOutgoingSession implements SyncSession, EventListener {
 		return interrupted;
 	}
 
+	/**
+	 * Called after each record is written, so the time to the first record
+	 * can be recorded.
+	 */
+	void onRecordWritten() {
+		if (!recordWritten) {
+			recordWritten = true;
+			metrics.recordTimeToFirstRecord(now() - start);
+		}
+	}
+
 	@Override
 	public void eventOccurred(Event e) {
 		if (e instanceof ContactRemovedEvent) {
@@ -142,6 +162,7 @@ class SimplexOutgoingSession implements SyncSession, EventListener {
 			LOG.info("Generated ack: " + (a != null));
 		if (a == null) return false; // No more acks to send
 		recordWriter.writeAck(a);
+		onRecordWritten();
 		LOG.info("Sent ack");
 		return true;
 	}
@@ -151,12 +172,17 @@ class SimplexOutgoingSession implements SyncSession, EventListener {
 	}
 
 	private boolean generateAndSendBatch() throws DbException, IOException {
+		long dbStart = now();
 		Collection<Message> b = db.transactionWithNullableResult(false, txn ->
 				db.generateBatch(txn, contactId, BATCH_CAPACITY, maxLatency));
 		if (LOG.isLoggable(INFO))
 			LOG.info("Generated batch: " + (b != null));
 		if (b == null) return false; // No more messages to send
+		metrics.recordBatchDbTime(now() - dbStart);
+		long ioStart = now();
 		for (Message m : b) recordWriter.writeMessage(m);
+		metrics.recordBatchIoTime(now() - ioStart);
+		onRecordWritten();
 		LOG.info("Sent batch");
 		return true;
 	}
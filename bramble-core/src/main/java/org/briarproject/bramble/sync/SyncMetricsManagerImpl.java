@@ -0,0 +1,82 @@
+package org.briarproject.bramble.sync;
+
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.contact.event.ContactRemovedEvent;
+import org.briarproject.bramble.api.event.Event;
+import org.briarproject.bramble.api.event.EventListener;
+import org.briarproject.bramble.api.plugin.TransportId;
+import org.briarproject.bramble.api.sync.metrics.SyncMetrics;
+import org.briarproject.bramble.api.sync.metrics.SyncMetricsManager;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import static java.util.Collections.emptyList;
+
+@ThreadSafe
+@NotNullByDefault
+class SyncMetricsManagerImpl implements SyncMetricsManager, EventListener {
+
+	private final ConcurrentMap<ContactId,
+			ConcurrentMap<TransportId, SessionMetrics>> metrics =
+			new ConcurrentHashMap<>();
+
+	/**
+	 * Returns the metrics for the given contact and transport, creating
+	 * them if necessary.
+	 */
+	SessionMetrics getSessionMetrics(ContactId c, TransportId t) {
+		ConcurrentMap<TransportId, SessionMetrics> forContact =
+				metrics.get(c);
+		if (forContact == null) {
+			forContact = new ConcurrentHashMap<>();
+			ConcurrentMap<TransportId, SessionMetrics> old =
+					metrics.putIfAbsent(c, forContact);
+			if (old != null) forContact = old;
+		}
+		SessionMetrics m = forContact.get(t);
+		if (m == null) {
+			m = new SessionMetrics(c, t);
+			SessionMetrics old = forContact.putIfAbsent(t, m);
+			if (old != null) m = old;
+		}
+		return m;
+	}
+
+	@Override
+	public Collection<SyncMetrics> getSyncMetrics() {
+		List<SyncMetrics> snapshots = new ArrayList<>();
+		for (ConcurrentMap<TransportId, SessionMetrics> forContact :
+				metrics.values()) {
+			for (SessionMetrics m : forContact.values()) {
+				snapshots.add(m.getSnapshot());
+			}
+		}
+		return snapshots;
+	}
+
+	@Override
+	public Collection<SyncMetrics> getSyncMetrics(ContactId c) {
+		ConcurrentMap<TransportId, SessionMetrics> forContact =
+				metrics.get(c);
+		if (forContact == null) return emptyList();
+		List<SyncMetrics> snapshots = new ArrayList<>();
+		for (SessionMetrics m : forContact.values()) {
+			snapshots.add(m.getSnapshot());
+		}
+		return snapshots;
+	}
+
+	@Override
+	public void eventOccurred(Event e) {
+		if (e instanceof ContactRemovedEvent) {
+			metrics.remove(((ContactRemovedEvent) e).getContactId());
+		}
+	}
+}
@@ -1,10 +1,17 @@
 package org.briarproject.bramble.sync;
 
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.SyncDatabaseExecutor;
+import org.briarproject.bramble.api.event.EventBus;
 import org.briarproject.bramble.api.sync.GroupFactory;
 import org.briarproject.bramble.api.sync.MessageFactory;
 import org.briarproject.bramble.api.sync.SyncRecordReaderFactory;
 import org.briarproject.bramble.api.sync.SyncRecordWriterFactory;
 import org.briarproject.bramble.api.sync.SyncSessionFactory;
+import org.briarproject.bramble.api.sync.metrics.SyncMetricsManager;
+import org.briarproject.bramble.api.system.Clock;
+
+import java.util.concurrent.Executor;
 
 import javax.inject.Singleton;
 
@@ -42,4 +49,37 @@ public class SyncModule {
 			SyncSessionFactoryImpl syncSessionFactory) {
 		return syncSessionFactory;
 	}
+
+	@Provides
+	@Singleton
+	SyncMetricsManagerImpl provideSyncMetricsManagerImpl(EventBus eventBus) {
+		SyncMetricsManagerImpl syncMetricsManager =
+				new SyncMetricsManagerImpl();
+		eventBus.addListener(syncMetricsManager);
+		return syncMetricsManager;
+	}
+
+	@Provides
+	@Singleton
+	MessageFilterStore provideMessageFilterStore(EventBus eventBus,
+			Clock clock) {
+		MessageFilterStore messageFilterStore = new MessageFilterStore(clock);
+		eventBus.addListener(messageFilterStore);
+		return messageFilterStore;
+	}
+
+	@Provides
+	@Singleton
+	DuplexStartupCoordinator provideDuplexStartupCoordinator(
+			DatabaseComponent db, @SyncDatabaseExecutor Executor dbExecutor) {
+		// Sessions must share a coordinator for their records to be
+		// generated together
+		return new DuplexStartupCoordinator(db, dbExecutor);
+	}
+
+	@Provides
+	SyncMetricsManager provideSyncMetricsManager(
+			SyncMetricsManagerImpl syncMetricsManager) {
+		return syncMetricsManager;
+	}
 }
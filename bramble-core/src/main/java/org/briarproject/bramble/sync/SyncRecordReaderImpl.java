@@ -6,9 +6,13 @@ import org.briarproject.bramble.api.record.Record;
 import org.briarproject.bramble.api.record.RecordReader;
 import org.briarproject.bramble.api.record.RecordReader.RecordPredicate;
 import org.briarproject.bramble.api.sync.Ack;
+import org.briarproject.bramble.api.sync.GroupId;
 import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageEstimator;
 import org.briarproject.bramble.api.sync.MessageFactory;
+import org.briarproject.bramble.api.sync.MessageFilter;
 import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.api.sync.MessageSketch;
 import org.briarproject.bramble.api.sync.Offer;
 import org.briarproject.bramble.api.sync.Priority;
 import org.briarproject.bramble.api.sync.Request;
@@ -25,16 +29,28 @@ import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
 import static org.briarproject.bramble.api.sync.RecordTypes.ACK;
+import static org.briarproject.bramble.api.sync.RecordTypes.ESTIMATOR;
+import static org.briarproject.bramble.api.sync.RecordTypes.FILTER;
 import static org.briarproject.bramble.api.sync.RecordTypes.MESSAGE;
 import static org.briarproject.bramble.api.sync.RecordTypes.OFFER;
 import static org.briarproject.bramble.api.sync.RecordTypes.PRIORITY;
 import static org.briarproject.bramble.api.sync.RecordTypes.REQUEST;
+import static org.briarproject.bramble.api.sync.RecordTypes.SKETCH;
 import static org.briarproject.bramble.api.sync.RecordTypes.VERSIONS;
+import static org.briarproject.bramble.api.sync.SyncConstants.ESTIMATOR_BYTES;
+import static org.briarproject.bramble.api.sync.SyncConstants.ESTIMATOR_HEADER_BYTES;
+import static org.briarproject.bramble.api.sync.SyncConstants.FILTER_HEADER_BYTES;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_FILTER_HASH_FUNCTIONS;
 import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_LENGTH;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_SKETCH_CELLS;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_SKETCH_PARTITIONS;
 import static org.briarproject.bramble.api.sync.SyncConstants.MAX_SUPPORTED_VERSIONS;
 import static org.briarproject.bramble.api.sync.SyncConstants.MESSAGE_HEADER_LENGTH;
 import static org.briarproject.bramble.api.sync.SyncConstants.PRIORITY_NONCE_BYTES;
 import static org.briarproject.bramble.api.sync.SyncConstants.PROTOCOL_VERSION;
+import static org.briarproject.bramble.api.sync.SyncConstants.SKETCH_CELL_BYTES;
+import static org.briarproject.bramble.api.sync.SyncConstants.SKETCH_HASH_FUNCTIONS;
+import static org.briarproject.bramble.api.sync.SyncConstants.SKETCH_HEADER_BYTES;
 
 @NotThreadSafe
 @NotNullByDefault
@@ -52,7 +68,8 @@ class SyncRecordReaderImpl implements SyncRecordReader {
 
 	private static boolean isKnownRecordType(byte type) {
 		return type == ACK || type == MESSAGE || type == OFFER ||
-				type == REQUEST || type == VERSIONS || type == PRIORITY;
+				type == REQUEST || type == VERSIONS || type == PRIORITY ||
+				type == FILTER || type == ESTIMATOR || type == SKETCH;
 	}
 
 	private final MessageFactory messageFactory;
@@ -199,4 +216,90 @@ class SyncRecordReaderImpl implements SyncRecordReader {
 		nextRecord = null;
 		return payload;
 	}
+
+	@Override
+	public boolean hasFilter() throws IOException {
+		return !eof() && getNextRecordType() == FILTER;
+	}
+
+	@Override
+	public MessageFilter readFilter() throws IOException {
+		if (!hasFilter()) throw new FormatException();
+		if (nextRecord == null) throw new AssertionError();
+		byte[] payload = nextRecord.getPayload();
+		if (payload.length <= FILTER_HEADER_BYTES) throw new FormatException();
+		GroupId groupId = readGroupId(payload);
+		long salt = readSalt(payload);
+		int hashFunctions = payload[FILTER_HEADER_BYTES - 1] & 0xFF;
+		if (hashFunctions < 1 || hashFunctions > MAX_FILTER_HASH_FUNCTIONS)
+			throw new FormatException();
+		byte[] bits = new byte[payload.length - FILTER_HEADER_BYTES];
+		System.arraycopy(payload, FILTER_HEADER_BYTES, bits, 0, bits.length);
+		nextRecord = null;
+		return new MessageFilter(groupId, salt, hashFunctions, bits);
+	}
+
+	@Override
+	public boolean hasEstimator() throws IOException {
+		return !eof() && getNextRecordType() == ESTIMATOR;
+	}
+
+	@Override
+	public MessageEstimator readEstimator() throws IOException {
+		if (!hasEstimator()) throw new FormatException();
+		if (nextRecord == null) throw new AssertionError();
+		byte[] payload = nextRecord.getPayload();
+		if (payload.length != ESTIMATOR_HEADER_BYTES + ESTIMATOR_BYTES)
+			throw new FormatException();
+		GroupId groupId = readGroupId(payload);
+		long salt = readSalt(payload);
+		byte[] cells = new byte[ESTIMATOR_BYTES];
+		System.arraycopy(payload, ESTIMATOR_HEADER_BYTES, cells, 0,
+				ESTIMATOR_BYTES);
+		nextRecord = null;
+		return new MessageEstimator(groupId, salt, cells);
+	}
+
+	@Override
+	public boolean hasSketch() throws IOException {
+		return !eof() && getNextRecordType() == SKETCH;
+	}
+
+	@Override
+	public MessageSketch readSketch() throws IOException {
+		if (!hasSketch()) throw new FormatException();
+		if (nextRecord == null) throw new AssertionError();
+		byte[] payload = nextRecord.getPayload();
+		int cellBytes = payload.length - SKETCH_HEADER_BYTES;
+		if (cellBytes <= 0 || cellBytes % SKETCH_CELL_BYTES != 0)
+			throw new FormatException();
+		int cellCount = cellBytes / SKETCH_CELL_BYTES;
+		if (cellCount > MAX_SKETCH_CELLS) throw new FormatException();
+		if (cellCount % SKETCH_HASH_FUNCTIONS != 0)
+			throw new FormatException();
+		GroupId groupId = readGroupId(payload);
+		long salt = readSalt(payload);
+		int partition = payload[SKETCH_HEADER_BYTES - 2] & 0xFF;
+		int partitions = payload[SKETCH_HEADER_BYTES - 1] & 0xFF;
+		if (partitions < 1 || partitions > MAX_SKETCH_PARTITIONS)
+			throw new FormatException();
+		if (partition >= partitions) throw new FormatException();
+		byte[] cells = new byte[cellBytes];
+		System.arraycopy(payload, SKETCH_HEADER_BYTES, cells, 0, cellBytes);
+		nextRecord = null;
+		return new MessageSketch(groupId, salt, partition, partitions,
+				cells);
+	}
+
+	private GroupId readGroupId(byte[] payload) {
+		byte[] groupId = new byte[UniqueId.LENGTH];
+		System.arraycopy(payload, 0, groupId, 0, UniqueId.LENGTH);
+		return new GroupId(groupId);
+	}
+
+	private long readSalt(byte[] payload) throws FormatException {
+		long salt = ByteUtils.readUint64(payload, UniqueId.LENGTH);
+		if (salt < 0) throw new FormatException();
+		return salt;
+	}
 }
@@ -4,8 +4,11 @@ import org.briarproject.bramble.api.record.Record;
 import org.briarproject.bramble.api.record.RecordWriter;
 import org.briarproject.bramble.api.sync.Ack;
 import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageEstimator;
 import org.briarproject.bramble.api.sync.MessageFactory;
+import org.briarproject.bramble.api.sync.MessageFilter;
 import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.api.sync.MessageSketch;
 import org.briarproject.bramble.api.sync.Offer;
 import org.briarproject.bramble.api.sync.Priority;
 import org.briarproject.bramble.api.sync.Request;
@@ -19,12 +22,17 @@ import java.io.IOException;
 import javax.annotation.concurrent.NotThreadSafe;
 
 import static org.briarproject.bramble.api.sync.RecordTypes.ACK;
+import static org.briarproject.bramble.api.sync.RecordTypes.ESTIMATOR;
+import static org.briarproject.bramble.api.sync.RecordTypes.FILTER;
 import static org.briarproject.bramble.api.sync.RecordTypes.MESSAGE;
 import static org.briarproject.bramble.api.sync.RecordTypes.OFFER;
 import static org.briarproject.bramble.api.sync.RecordTypes.PRIORITY;
 import static org.briarproject.bramble.api.sync.RecordTypes.REQUEST;
+import static org.briarproject.bramble.api.sync.RecordTypes.SKETCH;
 import static org.briarproject.bramble.api.sync.RecordTypes.VERSIONS;
 import static org.briarproject.bramble.api.sync.SyncConstants.PROTOCOL_VERSION;
+import static org.briarproject.bramble.util.ByteUtils.INT_64_BYTES;
+import static org.briarproject.bramble.util.ByteUtils.writeUint64;
 
 @NotThreadSafe
 @NotNullByDefault
@@ -45,6 +53,12 @@ class SyncRecordWriterImpl implements SyncRecordWriter {
 		payload.reset();
 	}
 
+	private void writeSalt(long salt) throws IOException {
+		byte[] b = new byte[INT_64_BYTES];
+		writeUint64(salt, b, 0);
+		payload.write(b);
+	}
+
 	@Override
 	public void writeAck(Ack a) throws IOException {
 		for (MessageId m : a.getMessageIds()) payload.write(m.getBytes());
@@ -81,6 +95,33 @@ class SyncRecordWriterImpl implements SyncRecordWriter {
 				new Record(PROTOCOL_VERSION, PRIORITY, p.getNonce()));
 	}
 
+	@Override
+	public void writeFilter(MessageFilter f) throws IOException {
+		payload.write(f.getGroupId().getBytes());
+		writeSalt(f.getSalt());
+		payload.write(f.getHashFunctions());
+		payload.write(f.getBits());
+		writeRecord(FILTER);
+	}
+
+	@Override
+	public void writeEstimator(MessageEstimator e) throws IOException {
+		payload.write(e.getGroupId().getBytes());
+		writeSalt(e.getSalt());
+		payload.write(e.getCells());
+		writeRecord(ESTIMATOR);
+	}
+
+	@Override
+	public void writeSketch(MessageSketch s) throws IOException {
+		payload.write(s.getGroupId().getBytes());
+		writeSalt(s.getSalt());
+		payload.write(s.getPartition());
+		payload.write(s.getPartitions());
+		payload.write(s.getCells());
+		writeRecord(SKETCH);
+	}
+
 	@Override
 	public void flush() throws IOException {
 		writer.flush();
@@ -2,8 +2,9 @@ package org.briarproject.bramble.sync;
 
 import org.briarproject.bramble.api.contact.ContactId;
 import org.briarproject.bramble.api.db.DatabaseComponent;
-import org.briarproject.bramble.api.db.DatabaseExecutor;
+import org.briarproject.bramble.api.db.SyncDatabaseExecutor;
 import org.briarproject.bramble.api.event.EventBus;
+import org.briarproject.bramble.api.lifecycle.IoExecutor;
 import org.briarproject.bramble.api.plugin.TransportId;
 import org.briarproject.bramble.api.sync.OutgoingSessionRecord;
 import org.briarproject.bramble.api.sync.Priority;
@@ -20,6 +21,9 @@ import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.concurrent.Executor;
 
 import javax.annotation.Nullable;
@@ -33,46 +37,60 @@ import static org.briarproject.bramble.api.mailbox.MailboxConstants.MAX_FILE_PAY
 class SyncSessionFactoryImpl implements SyncSessionFactory {
 
 	private final DatabaseComponent db;
-	private final Executor dbExecutor;
+	private final Executor dbExecutor, ioExecutor;
+	private final DuplexStartupCoordinator startupCoordinator;
 	private final EventBus eventBus;
 	private final Clock clock;
 	private final SyncRecordReaderFactory recordReaderFactory;
 	private final SyncRecordWriterFactory recordWriterFactory;
+	private final SyncMetricsManagerImpl metricsManager;
+	private final MessageFilterStore filterStore;
+	private final MessageReconciler reconciler;
 
 	@Inject
 	SyncSessionFactoryImpl(DatabaseComponent db,
-			@DatabaseExecutor Executor dbExecutor, EventBus eventBus,
+			@SyncDatabaseExecutor Executor dbExecutor,
+			@IoExecutor Executor ioExecutor,
+			DuplexStartupCoordinator startupCoordinator, EventBus eventBus,
 			Clock clock, SyncRecordReaderFactory recordReaderFactory,
-			SyncRecordWriterFactory recordWriterFactory) {
+			SyncRecordWriterFactory recordWriterFactory,
+			SyncMetricsManagerImpl metricsManager,
+			MessageFilterStore filterStore, MessageReconciler reconciler) {
 		this.db = db;
 		this.dbExecutor = dbExecutor;
+		this.ioExecutor = ioExecutor;
+		this.startupCoordinator = startupCoordinator;
 		this.eventBus = eventBus;
 		this.clock = clock;
 		this.recordReaderFactory = recordReaderFactory;
 		this.recordWriterFactory = recordWriterFactory;
+		this.metricsManager = metricsManager;
+		this.filterStore = filterStore;
+		this.reconciler = reconciler;
 	}
 
 	@Override
-	public SyncSession createIncomingSession(ContactId c, InputStream in,
-			PriorityHandler handler) {
-		SyncRecordReader recordReader =
-				recordReaderFactory.createRecordReader(in);
+	public SyncSession createIncomingSession(ContactId c, TransportId t,
+			InputStream in, PriorityHandler handler) {
+		SessionMetrics metrics = metricsManager.getSessionMetrics(c, t);
+		SyncRecordReader recordReader = new MeteredSyncRecordReader(
+				recordReaderFactory.createRecordReader(in), metrics);
 		return new IncomingSession(db, dbExecutor, eventBus, c, recordReader,
-				handler);
+				handler, filterStore, reconciler);
 	}
 
 	@Override
 	public SyncSession createSimplexOutgoingSession(ContactId c, TransportId t,
 			long maxLatency, boolean eager, StreamWriter streamWriter) {
-		OutputStream out = streamWriter.getOutputStream();
-		SyncRecordWriter recordWriter =
-				recordWriterFactory.createRecordWriter(out);
+		SessionMetrics metrics = metricsManager.getSessionMetrics(c, t);
+		SyncRecordWriter recordWriter = createRecordWriter(streamWriter,
+				metrics);
 		if (eager) {
-			return new EagerSimplexOutgoingSession(db, eventBus, c, t,
-					maxLatency, streamWriter, recordWriter);
+			return new EagerSimplexOutgoingSession(db, dbExecutor, eventBus,
+					c, t, maxLatency, streamWriter, recordWriter, metrics);
 		} else {
 			return new SimplexOutgoingSession(db, eventBus, c, t,
-					maxLatency, streamWriter, recordWriter);
+					maxLatency, streamWriter, recordWriter, metrics);
 		}
 	}
 
@@ -80,22 +98,48 @@ class SyncSessionFactoryImpl implements SyncSessionFactory {
 	public SyncSession createSimplexOutgoingSession(ContactId c, TransportId t,
 			long maxLatency, StreamWriter streamWriter,
 			OutgoingSessionRecord sessionRecord) {
-		OutputStream out = streamWriter.getOutputStream();
-		SyncRecordWriter recordWriter =
-				recordWriterFactory.createRecordWriter(out);
+		SessionMetrics metrics = metricsManager.getSessionMetrics(c, t);
+		SyncRecordWriter recordWriter = createRecordWriter(streamWriter,
+				metrics);
 		return new MailboxOutgoingSession(db, eventBus, c, t, maxLatency,
-				streamWriter, recordWriter, sessionRecord,
+				streamWriter, recordWriter, metrics, sessionRecord,
 				MAX_FILE_PAYLOAD_BYTES);
 	}
 
+	@Override
+	public SyncSession createSimplexOutgoingSession(TransportId t,
+			long maxLatency, Map<ContactId, StreamWriter> streamWriters) {
+		Map<ContactId, MultiContactSimplexOutgoingSession.Stream> streams =
+				new LinkedHashMap<>();
+		for (Entry<ContactId, StreamWriter> e : streamWriters.entrySet()) {
+			ContactId c = e.getKey();
+			StreamWriter streamWriter = e.getValue();
+			SessionMetrics metrics = metricsManager.getSessionMetrics(c, t);
+			SyncRecordWriter recordWriter = createRecordWriter(streamWriter,
+					metrics);
+			streams.put(c, new MultiContactSimplexOutgoingSession.Stream(c,
+					streamWriter, recordWriter, metrics));
+		}
+		return new MultiContactSimplexOutgoingSession(db, dbExecutor,
+				ioExecutor, eventBus, t, maxLatency, streams);
+	}
+
 	@Override
 	public SyncSession createDuplexOutgoingSession(ContactId c, TransportId t,
 			long maxLatency, int maxIdleTime, StreamWriter streamWriter,
 			@Nullable Priority priority) {
+		SessionMetrics metrics = metricsManager.getSessionMetrics(c, t);
+		SyncRecordWriter recordWriter = createRecordWriter(streamWriter,
+				metrics);
+		return new DuplexOutgoingSession(db, dbExecutor, startupCoordinator,
+				filterStore, reconciler, eventBus, clock, c, t, maxLatency,
+				maxIdleTime, streamWriter, recordWriter, metrics, priority);
+	}
+
+	private SyncRecordWriter createRecordWriter(StreamWriter streamWriter,
+			SessionMetrics metrics) {
 		OutputStream out = streamWriter.getOutputStream();
-		SyncRecordWriter recordWriter =
-				recordWriterFactory.createRecordWriter(out);
-		return new DuplexOutgoingSession(db, dbExecutor, eventBus, clock, c, t,
-				maxLatency, maxIdleTime, streamWriter, recordWriter, priority);
+		return new MeteredSyncRecordWriter(
+				recordWriterFactory.createRecordWriter(out), metrics);
 	}
 }
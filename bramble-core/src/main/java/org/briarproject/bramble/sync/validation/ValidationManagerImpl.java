@@ -1,6 +1,7 @@
 package org.briarproject.bramble.sync.validation;
 
 import org.briarproject.bramble.api.Pair;
+import org.briarproject.bramble.api.db.BackgroundDatabaseExecutor;
 import org.briarproject.bramble.api.db.DatabaseComponent;
 import org.briarproject.bramble.api.db.DatabaseExecutor;
 import org.briarproject.bramble.api.db.DbException;
@@ -66,7 +67,7 @@ class ValidationManagerImpl implements ValidationManager, Service,
 
 	@Inject
 	ValidationManagerImpl(DatabaseComponent db,
-			@DatabaseExecutor Executor dbExecutor,
+			@BackgroundDatabaseExecutor Executor dbExecutor,
 			@ValidationExecutor Executor validationExecutor) {
 		this.db = db;
 		this.dbExecutor = dbExecutor;
@@ -11,6 +11,8 @@ import java.io.InputStream;
 import javax.annotation.concurrent.Immutable;
 import javax.inject.Inject;
 
+import static org.briarproject.bramble.api.transport.TransportConstants.MAX_LARGE_PAYLOAD_LENGTH;
+
 @Immutable
 @NotNullByDefault
 class StreamReaderFactoryImpl implements StreamReaderFactory {
@@ -24,8 +26,10 @@ class StreamReaderFactoryImpl implements StreamReaderFactory {
 
 	@Override
 	public InputStream createStreamReader(InputStream in, StreamContext ctx) {
+		// The stream may use large frames, so use a buffer that can hold a
+		// full-size large frame
 		return new StreamReaderImpl(streamDecrypterFactory
-				.createStreamDecrypter(in, ctx));
+				.createStreamDecrypter(in, ctx), MAX_LARGE_PAYLOAD_LENGTH);
 	}
 
 	@Override
@@ -23,8 +23,12 @@ class StreamReaderImpl extends InputStream {
 	private int offset = 0, length = 0;
 
 	StreamReaderImpl(StreamDecrypter decrypter) {
+		this(decrypter, MAX_PAYLOAD_LENGTH);
+	}
+
+	StreamReaderImpl(StreamDecrypter decrypter, int maxPayloadLength) {
 		this.decrypter = decrypter;
-		payload = new byte[MAX_PAYLOAD_LENGTH];
+		payload = new byte[maxPayloadLength];
 	}
 
 	@Override
@@ -12,6 +12,9 @@ import java.io.OutputStream;
 import javax.annotation.concurrent.Immutable;
 import javax.inject.Inject;
 
+import static org.briarproject.bramble.api.transport.TransportConstants.MAX_LARGE_PAYLOAD_LENGTH;
+import static org.briarproject.bramble.api.transport.TransportConstants.MAX_PAYLOAD_LENGTH;
+
 @Immutable
 @NotNullByDefault
 class StreamWriterFactoryImpl implements StreamWriterFactory {
@@ -26,8 +29,10 @@ class StreamWriterFactoryImpl implements StreamWriterFactory {
 	@Override
 	public StreamWriter createStreamWriter(OutputStream out,
 			StreamContext ctx) {
+		int maxPayloadLength = ctx.useLargeFrames() ?
+				MAX_LARGE_PAYLOAD_LENGTH : MAX_PAYLOAD_LENGTH;
 		return new StreamWriterImpl(streamEncrypterFactory
-				.createStreamEncrypter(out, ctx));
+				.createStreamEncrypter(out, ctx), maxPayloadLength);
 	}
 
 	@Override
@@ -37,6 +37,7 @@ import javax.annotation.concurrent.ThreadSafe;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.logging.Level.WARNING;
 import static java.util.logging.Logger.getLogger;
+import static org.briarproject.bramble.api.sync.SyncConstants.LARGE_FRAMES_VERSION;
 import static org.briarproject.bramble.api.transport.TransportConstants.MAX_CLOCK_DIFFERENCE;
 import static org.briarproject.bramble.api.transport.TransportConstants.PROTOCOL_VERSION;
 import static org.briarproject.bramble.api.transport.TransportConstants.TAG_LENGTH;
@@ -375,10 +376,14 @@ class TransportKeyManagerImpl implements TransportKeyManager {
 			MutableOutgoingKeys outKeys = keys.getCurrentOutgoingKeys();
 			if (!outKeys.isActive()) throw new AssertionError();
 			if (outKeys.getStreamCounter() > MAX_32_BIT_UNSIGNED) return null;
+			// Use large frames if the contact has advertised support for them
+			boolean largeFrames = c != null &&
+					db.getSyncVersions(txn, c).contains(LARGE_FRAMES_VERSION);
 			// Create a stream context
 			StreamContext ctx = new StreamContext(c, p, transportId,
 					outKeys.getTagKey(), outKeys.getHeaderKey(),
-					outKeys.getStreamCounter(), keys.isHandshakeMode());
+					outKeys.getStreamCounter(), keys.isHandshakeMode(),
+					largeFrames);
 			// Increment the stream counter and write it back to the DB
 			outKeys.incrementStreamCounter();
 			db.incrementStreamCounter(txn, transportId, ks.getKeySetId());
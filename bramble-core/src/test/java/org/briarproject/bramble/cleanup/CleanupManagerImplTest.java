@@ -0,0 +1,160 @@
+package org.briarproject.bramble.cleanup;
+
+import org.briarproject.bramble.api.cleanup.CleanupHook;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.api.sync.ClientId;
+import org.briarproject.bramble.api.sync.Group;
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.api.system.TaskScheduler;
+import org.briarproject.bramble.test.BrambleMockTestCase;
+import org.briarproject.bramble.test.CaptureArgumentAction;
+import org.briarproject.bramble.test.DbExpectations;
+import org.briarproject.bramble.test.ImmediateExecutor;
+import org.briarproject.bramble.test.SettableClock;
+import org.jmock.Expectations;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.Collections.singletonMap;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.briarproject.bramble.api.cleanup.CleanupManager.BATCH_DELAY_MS;
+import static org.briarproject.bramble.api.db.DatabaseComponent.NO_CLEANUP_DEADLINE;
+import static org.briarproject.bramble.cleanup.CleanupManagerImpl.MAX_MESSAGES_PER_TRANSACTION;
+import static org.briarproject.bramble.test.TestUtils.getClientId;
+import static org.briarproject.bramble.test.TestUtils.getGroup;
+import static org.briarproject.bramble.test.TestUtils.getRandomId;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class CleanupManagerImplTest extends BrambleMockTestCase {
+
+	private final DatabaseComponent db = context.mock(DatabaseComponent.class);
+	private final TaskScheduler taskScheduler =
+			context.mock(TaskScheduler.class);
+	private final CleanupHook hook = context.mock(CleanupHook.class);
+	private final Executor dbExecutor = new ImmediateExecutor();
+
+	private final long now = System.currentTimeMillis();
+	private final SettableClock clock = new SettableClock(new AtomicLong(now));
+	private final ClientId clientId = getClientId();
+	private final int majorVersion = 123;
+	private final Group group = getGroup(clientId, majorVersion);
+	private final GroupId groupId = group.getId();
+
+	private final CleanupManagerImpl cleanupManager =
+			new CleanupManagerImpl(dbExecutor, db, taskScheduler, clock);
+
+	@Test
+	public void testDeletesDueMessagesInChunks() throws Exception {
+		Transaction txn1 = new Transaction(null, false);
+		Transaction txn2 = new Transaction(null, false);
+		Collection<MessageId> chunk1 =
+				getMessageIds(MAX_MESSAGES_PER_TRANSACTION);
+		Collection<MessageId> chunk2 = getMessageIds(1);
+		AtomicReference<Runnable> task = new AtomicReference<>();
+
+		cleanupManager.registerCleanupHook(clientId, majorVersion, hook);
+
+		// When the service starts, a task should be scheduled
+		context.checking(new Expectations() {{
+			oneOf(taskScheduler).schedule(with(any(Runnable.class)),
+					with(dbExecutor), with(BATCH_DELAY_MS),
+					with(MILLISECONDS));
+			will(new CaptureArgumentAction<>(task, Runnable.class, 0));
+		}});
+
+		cleanupManager.startService();
+		context.assertIsSatisfied();
+		assertNotNull(task.get());
+
+		// The first transaction should delete a full chunk of messages. More
+		// messages are due, so the next chunk should be deleted without
+		// waiting for the task scheduler
+		context.checking(new DbExpectations() {{
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn1));
+			oneOf(db).getMessagesToDelete(txn1, MAX_MESSAGES_PER_TRANSACTION);
+			will(returnValue(singletonMap(groupId, chunk1)));
+			oneOf(db).stopCleanupTimers(txn1, chunk1);
+			oneOf(db).getGroup(txn1, groupId);
+			will(returnValue(group));
+			oneOf(hook).deleteMessages(txn1, groupId, chunk1);
+			oneOf(db).getNextCleanupDeadline(txn1);
+			will(returnValue(now));
+			// The second transaction should delete the rest of the messages
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn2));
+			oneOf(db).getMessagesToDelete(txn2, MAX_MESSAGES_PER_TRANSACTION);
+			will(returnValue(singletonMap(groupId, chunk2)));
+			oneOf(db).stopCleanupTimers(txn2, chunk2);
+			oneOf(db).getGroup(txn2, groupId);
+			will(returnValue(group));
+			oneOf(hook).deleteMessages(txn2, groupId, chunk2);
+			oneOf(db).getNextCleanupDeadline(txn2);
+			will(returnValue(NO_CLEANUP_DEADLINE));
+		}});
+
+		task.get().run();
+
+		assertEquals(MAX_MESSAGES_PER_TRANSACTION + 1,
+				cleanupManager.getMessagesDeleted());
+		assertEquals(2, cleanupManager.getTransactions());
+	}
+
+	@Test
+	public void testSchedulesTaskForNextDeadline() throws Exception {
+		Transaction txn = new Transaction(null, false);
+		Collection<MessageId> ids = getMessageIds(1);
+		long deadline = now + 1234;
+		AtomicReference<Runnable> task = new AtomicReference<>();
+
+		cleanupManager.registerCleanupHook(clientId, majorVersion, hook);
+
+		context.checking(new Expectations() {{
+			oneOf(taskScheduler).schedule(with(any(Runnable.class)),
+					with(dbExecutor), with(BATCH_DELAY_MS),
+					with(MILLISECONDS));
+			will(new CaptureArgumentAction<>(task, Runnable.class, 0));
+		}});
+
+		cleanupManager.startService();
+		context.assertIsSatisfied();
+
+		// No more messages are due, so a task should be scheduled for the
+		// next deadline
+		context.checking(new DbExpectations() {{
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn));
+			oneOf(db).getMessagesToDelete(txn, MAX_MESSAGES_PER_TRANSACTION);
+			will(returnValue(singletonMap(groupId, ids)));
+			oneOf(db).stopCleanupTimers(txn, ids);
+			oneOf(db).getGroup(txn, groupId);
+			will(returnValue(group));
+			oneOf(hook).deleteMessages(txn, groupId, ids);
+			oneOf(db).getNextCleanupDeadline(txn);
+			will(returnValue(deadline));
+			oneOf(taskScheduler).schedule(with(any(Runnable.class)),
+					with(dbExecutor), with(deadline - now + BATCH_DELAY_MS),
+					with(MILLISECONDS));
+		}});
+
+		task.get().run();
+
+		assertEquals(1, cleanupManager.getMessagesDeleted());
+		assertEquals(1, cleanupManager.getTransactions());
+	}
+
+	private Collection<MessageId> getMessageIds(int count) {
+		List<MessageId> ids = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) ids.add(new MessageId(getRandomId()));
+		return ids;
+	}
+}
@@ -35,7 +35,6 @@ import org.jmock.Expectations;
 import org.junit.Test;
 
 import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
 import java.security.GeneralSecurityException;
 import java.util.Collections;
 import java.util.HashMap;
@@ -545,8 +544,8 @@ public class ClientHelperImplTest extends BrambleMockTestCase {
 		BdfReader bdfReader = context.mock(BdfReader.class);
 
 		context.checking(new Expectations() {{
-			oneOf(bdfReaderFactory)
-					.createReader(with(any(InputStream.class)), with(true));
+			oneOf(bdfReaderFactory).createReader(with(any(byte[].class)),
+					with(0), with(any(Integer.class)), with(true));
 			will(returnValue(bdfReader));
 			oneOf(bdfReader).readList();
 			will(returnValue(list));
@@ -0,0 +1,15 @@
+package org.briarproject.bramble.crypto;
+
+import org.briarproject.bramble.api.crypto.CryptoComponent;
+import org.briarproject.bramble.test.TestSecureRandomProvider;
+
+public class CryptoTestUtils {
+
+	/**
+	 * Returns a crypto component for tests in other packages. Password-based
+	 * encryption is not supported.
+	 */
+	public static CryptoComponent getCryptoComponent() {
+		return new CryptoComponentImpl(new TestSecureRandomProvider(), null);
+	}
+}
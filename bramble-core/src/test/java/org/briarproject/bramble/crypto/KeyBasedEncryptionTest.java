@@ -0,0 +1,57 @@
+package org.briarproject.bramble.crypto;
+
+import org.briarproject.bramble.api.crypto.CryptoComponent;
+import org.briarproject.bramble.api.crypto.DecryptionException;
+import org.briarproject.bramble.api.crypto.SecretKey;
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.briarproject.bramble.test.TestSecureRandomProvider;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
+import static org.briarproject.bramble.test.TestUtils.getSecretKey;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class KeyBasedEncryptionTest extends BrambleTestCase {
+
+	private final CryptoComponent crypto =
+			new CryptoComponentImpl(new TestSecureRandomProvider(), null);
+
+	private final SecretKey key = getSecretKey();
+	private final byte[] plaintext = getRandomBytes(1234);
+
+	@Test
+	public void testEncryptionAndDecryption() throws Exception {
+		byte[] ciphertext = crypto.encryptWithKey(plaintext, key);
+		assertTrue(ciphertext.length > plaintext.length);
+		assertArrayEquals(plaintext, crypto.decryptWithKey(ciphertext, key));
+	}
+
+	@Test
+	public void testEncryptingTwiceProducesDifferentCiphertexts() {
+		byte[] ciphertext = crypto.encryptWithKey(plaintext, key);
+		byte[] ciphertext1 = crypto.encryptWithKey(plaintext, key);
+		assertFalse(Arrays.equals(ciphertext, ciphertext1));
+	}
+
+	@Test(expected = DecryptionException.class)
+	public void testDecryptionFailsWithWrongKey() throws Exception {
+		byte[] ciphertext = crypto.encryptWithKey(plaintext, key);
+		crypto.decryptWithKey(ciphertext, getSecretKey());
+	}
+
+	@Test(expected = DecryptionException.class)
+	public void testDecryptionFailsWithModifiedCiphertext() throws Exception {
+		byte[] ciphertext = crypto.encryptWithKey(plaintext, key);
+		ciphertext[ciphertext.length - 1] ^= 0xFF;
+		crypto.decryptWithKey(ciphertext, key);
+	}
+
+	@Test(expected = DecryptionException.class)
+	public void testDecryptionFailsWithTruncatedCiphertext() throws Exception {
+		crypto.decryptWithKey(new byte[20], key);
+	}
+}
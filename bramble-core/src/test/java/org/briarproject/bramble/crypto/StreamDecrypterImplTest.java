@@ -12,11 +12,15 @@ import java.io.IOException;
 
 import static junit.framework.Assert.assertEquals;
 import static org.briarproject.bramble.api.transport.TransportConstants.FRAME_HEADER_LENGTH;
+import static org.briarproject.bramble.api.transport.TransportConstants.LARGE_FRAME_HEADER_LENGTH;
+import static org.briarproject.bramble.api.transport.TransportConstants.LARGE_FRAME_PROTOCOL_VERSION;
 import static org.briarproject.bramble.api.transport.TransportConstants.MAC_LENGTH;
+import static org.briarproject.bramble.api.transport.TransportConstants.MAX_LARGE_PAYLOAD_LENGTH;
 import static org.briarproject.bramble.api.transport.TransportConstants.MAX_PAYLOAD_LENGTH;
 import static org.briarproject.bramble.api.transport.TransportConstants.PROTOCOL_VERSION;
 import static org.briarproject.bramble.api.transport.TransportConstants.STREAM_HEADER_NONCE_LENGTH;
 import static org.briarproject.bramble.util.ByteUtils.INT_16_BYTES;
+import static org.briarproject.bramble.util.ByteUtils.INT_32_BYTES;
 import static org.junit.Assert.assertArrayEquals;
 
 public class StreamDecrypterImplTest extends BrambleTestCase {
@@ -24,6 +28,7 @@ public class StreamDecrypterImplTest extends BrambleTestCase {
 	private final AuthenticatedCipher cipher;
 	private final SecretKey streamHeaderKey, frameKey;
 	private final byte[] streamHeaderNonce, protocolVersionBytes;
+	private final byte[] largeFrameVersionBytes;
 	private final byte[] streamNumberBytes, payload;
 	private final int payloadLength = 123, paddingLength = 234;
 	private final long streamNumber = 1234;
@@ -36,6 +41,9 @@ public class StreamDecrypterImplTest extends BrambleTestCase {
 				TestUtils.getRandomBytes(STREAM_HEADER_NONCE_LENGTH);
 		protocolVersionBytes = new byte[2];
 		ByteUtils.writeUint16(PROTOCOL_VERSION, protocolVersionBytes, 0);
+		largeFrameVersionBytes = new byte[2];
+		ByteUtils.writeUint16(LARGE_FRAME_PROTOCOL_VERSION,
+				largeFrameVersionBytes, 0);
 		streamNumberBytes = new byte[8];
 		ByteUtils.writeUint64(streamNumber, streamNumberBytes, 0);
 		payload = TestUtils.getRandomBytes(payloadLength);
@@ -284,6 +292,141 @@ public class StreamDecrypterImplTest extends BrambleTestCase {
 		assertEquals(-1, s.readFrame(buffer));
 	}
 
+@Test
+	public void testReadValidLargeFrames() throws Exception {
+		int largePayloadLength = MAX_PAYLOAD_LENGTH * 10;
+		byte[] largePayload = TestUtils.getRandomBytes(largePayloadLength);
+		byte[] frameHeader = new byte[LARGE_FRAME_HEADER_LENGTH];
+		FrameEncoder.encodeLargeHeader(frameHeader, false,
+				largePayloadLength, paddingLength);
+
+		byte[] frameHeader1 = new byte[LARGE_FRAME_HEADER_LENGTH];
+		FrameEncoder.encodeLargeHeader(frameHeader1, true, payloadLength, 0);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(streamHeaderNonce);
+		out.write(largeFrameVersionBytes);
+		out.write(streamNumberBytes);
+		out.write(frameKey.getBytes());
+		out.write(new byte[MAC_LENGTH]);
+		out.write(frameHeader);
+		out.write(largePayload);
+		out.write(new byte[paddingLength]);
+		out.write(new byte[MAC_LENGTH]);
+		out.write(frameHeader1);
+		out.write(payload);
+		out.write(new byte[MAC_LENGTH]);
+
+		ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+		StreamDecrypterImpl s = new StreamDecrypterImpl(in, cipher,
+				streamNumber, streamHeaderKey, true);
+
+		// Read the first frame
+		byte[] buffer = new byte[MAX_LARGE_PAYLOAD_LENGTH];
+		assertEquals(largePayloadLength, s.readFrame(buffer));
+		assertArrayStartsWith(largePayload, buffer, largePayloadLength);
+
+		// Read the second frame
+		assertEquals(payloadLength, s.readFrame(buffer));
+		assertArrayStartsWith(payload, buffer, payloadLength);
+
+		// End of stream
+		assertEquals(-1, s.readFrame(buffer));
+	}
+
+	@Test
+	public void testReadSmallFramesWhenLargeFramesAreAccepted()
+			throws Exception {
+		byte[] frameHeader = new byte[FRAME_HEADER_LENGTH];
+		FrameEncoder.encodeHeader(frameHeader, true, payloadLength,
+				paddingLength);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(streamHeaderNonce);
+		out.write(protocolVersionBytes);
+		out.write(streamNumberBytes);
+		out.write(frameKey.getBytes());
+		out.write(new byte[MAC_LENGTH]);
+		out.write(frameHeader);
+		out.write(payload);
+		out.write(new byte[paddingLength]);
+		out.write(new byte[MAC_LENGTH]);
+
+		ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+		StreamDecrypterImpl s = new StreamDecrypterImpl(in, cipher,
+				streamNumber, streamHeaderKey, true);
+
+		byte[] buffer = new byte[MAX_LARGE_PAYLOAD_LENGTH];
+		assertEquals(payloadLength, s.readFrame(buffer));
+		assertArrayStartsWith(payload, buffer, payloadLength);
+		assertEquals(-1, s.readFrame(buffer));
+	}
+
+	@Test(expected = IOException.class)
+	public void testLargeFramesThrowExceptionIfNotAccepted()
+			throws Exception {
+		byte[] frameHeader = new byte[LARGE_FRAME_HEADER_LENGTH];
+		FrameEncoder.encodeLargeHeader(frameHeader, true, payloadLength,
+				paddingLength);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(streamHeaderNonce);
+		out.write(largeFrameVersionBytes);
+		out.write(streamNumberBytes);
+		out.write(frameKey.getBytes());
+		out.write(new byte[MAC_LENGTH]);
+		out.write(frameHeader);
+		out.write(payload);
+		out.write(new byte[paddingLength]);
+		out.write(new byte[MAC_LENGTH]);
+
+		ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+		StreamDecrypterImpl s = new StreamDecrypterImpl(in, cipher,
+				streamNumber, streamHeaderKey, false);
+
+		// Try to read the frame
+		byte[] buffer = new byte[MAX_LARGE_PAYLOAD_LENGTH];
+		s.readFrame(buffer);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsSmallBufferIfLargeFramesAreAccepted()
+			throws Exception {
+		ByteArrayInputStream in = new ByteArrayInputStream(new byte[0]);
+		StreamDecrypterImpl s = new StreamDecrypterImpl(in, cipher,
+				streamNumber, streamHeaderKey, true);
+
+		byte[] buffer = new byte[MAX_PAYLOAD_LENGTH];
+		s.readFrame(buffer);
+	}
+
+	@Test(expected = IOException.class)
+	public void testInvalidLargePayloadAndPaddingLengthThrowsException()
+			throws Exception {
+		byte[] frameHeader = new byte[LARGE_FRAME_HEADER_LENGTH];
+		// The payload length plus padding length is invalid
+		ByteUtils.writeUint32(MAX_LARGE_PAYLOAD_LENGTH, frameHeader, 0);
+		ByteUtils.writeUint32(1, frameHeader, INT_32_BYTES);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(streamHeaderNonce);
+		out.write(largeFrameVersionBytes);
+		out.write(streamNumberBytes);
+		out.write(frameKey.getBytes());
+		out.write(new byte[MAC_LENGTH]);
+		out.write(frameHeader);
+		out.write(new byte[MAX_LARGE_PAYLOAD_LENGTH + 1]);
+		out.write(new byte[MAC_LENGTH]);
+
+		ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+		StreamDecrypterImpl s = new StreamDecrypterImpl(in, cipher,
+				streamNumber, streamHeaderKey, true);
+
+		// Try to read the invalid frame
+		byte[] buffer = new byte[MAX_LARGE_PAYLOAD_LENGTH];
+		s.readFrame(buffer);
+	}
+
 	private static void assertArrayStartsWith(byte[] expected, byte[] actual,
 			int len) {
 		byte[] prefix = new byte[len];
@@ -9,8 +9,12 @@ import org.junit.Test;
 import java.io.ByteArrayOutputStream;
 
 import static org.briarproject.bramble.api.transport.TransportConstants.FRAME_HEADER_LENGTH;
+import static org.briarproject.bramble.api.transport.TransportConstants.LARGE_FRAME_HEADER_LENGTH;
+import static org.briarproject.bramble.api.transport.TransportConstants.LARGE_FRAME_PROTOCOL_VERSION;
 import static org.briarproject.bramble.api.transport.TransportConstants.MAC_LENGTH;
 import static org.briarproject.bramble.api.transport.TransportConstants.MAX_FRAME_LENGTH;
+import static org.briarproject.bramble.api.transport.TransportConstants.MAX_LARGE_FRAME_LENGTH;
+import static org.briarproject.bramble.api.transport.TransportConstants.MAX_LARGE_PAYLOAD_LENGTH;
 import static org.briarproject.bramble.api.transport.TransportConstants.MAX_PAYLOAD_LENGTH;
 import static org.briarproject.bramble.api.transport.TransportConstants.PROTOCOL_VERSION;
 import static org.briarproject.bramble.api.transport.TransportConstants.STREAM_HEADER_LENGTH;
@@ -417,4 +421,63 @@ public class StreamEncrypterImplTest extends BrambleTestCase {
 
 		assertArrayEquals(expected.toByteArray(), out.toByteArray());
 	}
+
+	@Test
+	public void testWriteLargeFrameWithTag() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		StreamEncrypterImpl s = new StreamEncrypterImpl(out, cipher,
+				streamNumber, tag, streamHeaderNonce, streamHeaderKey,
+				frameKey, true);
+		int largePayloadLength = MAX_PAYLOAD_LENGTH * 10;
+		byte[] largePayload = TestUtils.getRandomBytes(largePayloadLength);
+
+		s.writeFrame(largePayload, largePayloadLength, paddingLength, true);
+
+		// Expect the tag, stream header with the large frame protocol
+		// version, large frame header, payload, padding and MAC
+		byte[] largeFrameVersionBytes = new byte[2];
+		ByteUtils.writeUint16(LARGE_FRAME_PROTOCOL_VERSION,
+				largeFrameVersionBytes, 0);
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		expected.write(tag);
+		expected.write(streamHeaderNonce);
+		expected.write(largeFrameVersionBytes);
+		expected.write(streamNumberBytes);
+		expected.write(frameKey.getBytes());
+		expected.write(new byte[MAC_LENGTH]);
+		byte[] expectedFrameHeader = new byte[LARGE_FRAME_HEADER_LENGTH];
+		FrameEncoder.encodeLargeHeader(expectedFrameHeader, true,
+				largePayloadLength, paddingLength);
+		expected.write(expectedFrameHeader);
+		expected.write(largePayload);
+		expected.write(new byte[paddingLength]);
+		expected.write(new byte[MAC_LENGTH]);
+
+		assertArrayEquals(expected.toByteArray(), out.toByteArray());
+	}
+
+	@Test
+	public void testAcceptsMaxLargePayloadIncludingPadding() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		StreamEncrypterImpl s = new StreamEncrypterImpl(out, cipher,
+				streamNumber, tag, streamHeaderNonce, streamHeaderKey,
+				frameKey, true);
+		int largePaddingLength = 10;
+		byte[] largePayload =
+				new byte[MAX_LARGE_PAYLOAD_LENGTH - largePaddingLength];
+		s.writeFrame(largePayload, largePayload.length, largePaddingLength,
+				false);
+		assertEquals(TAG_LENGTH + STREAM_HEADER_LENGTH + MAX_LARGE_FRAME_LENGTH,
+				out.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsMaxLargePayloadPlusPadding() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		StreamEncrypterImpl s = new StreamEncrypterImpl(out, cipher,
+				streamNumber, tag, streamHeaderNonce, streamHeaderKey,
+				frameKey, true);
+		byte[] largePayload = new byte[MAX_LARGE_PAYLOAD_LENGTH + 1];
+		s.writeFrame(largePayload, MAX_LARGE_PAYLOAD_LENGTH, 1, false);
+	}
 }
@@ -0,0 +1,96 @@
+package org.briarproject.bramble.crypto;
+
+import org.briarproject.bramble.api.crypto.SecretKey;
+import org.briarproject.bramble.test.TestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.briarproject.bramble.api.transport.TransportConstants.MAX_LARGE_PAYLOAD_LENGTH;
+import static org.briarproject.bramble.api.transport.TransportConstants.MAX_PAYLOAD_LENGTH;
+import static org.briarproject.bramble.api.transport.TransportConstants.STREAM_HEADER_NONCE_LENGTH;
+import static org.briarproject.bramble.api.transport.TransportConstants.TAG_LENGTH;
+
+/**
+ * Compares the throughput and CPU cost of encrypting and decrypting streams
+ * with normal and large frames, using the real cipher.
+ */
+// Not a JUnit test
+public class StreamEncryptionPerformanceTest {
+
+	private static final int STREAM_BYTES = 64 * 1024 * 1024; // 64 MiB
+	private static final int WARMUP_ROUNDS = 3, ROUNDS = 5;
+
+	private static final ThreadMXBean threads =
+			ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) throws IOException {
+		byte[] payload = TestUtils.getRandomBytes(MAX_LARGE_PAYLOAD_LENGTH);
+		SecretKey streamHeaderKey = TestUtils.getSecretKey();
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			runTest(payload, streamHeaderKey, false, false);
+			runTest(payload, streamHeaderKey, true, false);
+		}
+		for (int i = 0; i < ROUNDS; i++) {
+			runTest(payload, streamHeaderKey, false, true);
+			runTest(payload, streamHeaderKey, true, true);
+		}
+	}
+
+	private static void runTest(byte[] payload, SecretKey streamHeaderKey,
+			boolean largeFrames, boolean print) throws IOException {
+		int payloadLength =
+				largeFrames ? MAX_LARGE_PAYLOAD_LENGTH : MAX_PAYLOAD_LENGTH;
+		int frames = STREAM_BYTES / payloadLength;
+		long streamNumber = 1;
+		// Encrypt the stream
+		ByteArrayOutputStream out =
+				new ByteArrayOutputStream(STREAM_BYTES + 1024 * 1024);
+		StreamEncrypterImpl encrypter = new StreamEncrypterImpl(out,
+				new XSalsa20Poly1305AuthenticatedCipher(), streamNumber,
+				TestUtils.getRandomBytes(TAG_LENGTH),
+				TestUtils.getRandomBytes(STREAM_HEADER_NONCE_LENGTH),
+				streamHeaderKey, TestUtils.getSecretKey(), largeFrames);
+		long wallStart = System.nanoTime();
+		long cpuStart = threads.getCurrentThreadCpuTime();
+		for (int i = 0; i < frames; i++) {
+			encrypter.writeFrame(payload, payloadLength, 0, i == frames - 1);
+		}
+		long encryptWall = System.nanoTime() - wallStart;
+		long encryptCpu = threads.getCurrentThreadCpuTime() - cpuStart;
+		// Decrypt the stream, skipping the tag
+		ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+		if (in.skip(TAG_LENGTH) != TAG_LENGTH) throw new AssertionError();
+		StreamDecrypterImpl decrypter = new StreamDecrypterImpl(in,
+				new XSalsa20Poly1305AuthenticatedCipher(), streamNumber,
+				streamHeaderKey, largeFrames);
+		byte[] buffer = new byte[MAX_LARGE_PAYLOAD_LENGTH];
+		wallStart = System.nanoTime();
+		cpuStart = threads.getCurrentThreadCpuTime();
+		int read = 0;
+		while (decrypter.readFrame(buffer) != -1) read++;
+		long decryptWall = System.nanoTime() - wallStart;
+		long decryptCpu = threads.getCurrentThreadCpuTime() - cpuStart;
+		if (read != frames) throw new AssertionError();
+		if (print) {
+			double megabytes = (double) frames * payloadLength / 1024 / 1024;
+			String name = largeFrames ? "Large frames" : "Normal frames";
+			System.out.println(name + ": encrypt "
+					+ format(megabytes, encryptWall, encryptCpu)
+					+ ", decrypt "
+					+ format(megabytes, decryptWall, decryptCpu)
+					+ ", stream length " + out.size());
+		}
+	}
+
+	private static String format(double megabytes, long wallNanos,
+			long cpuNanos) {
+		double mbPerSecond = megabytes / (wallNanos / 1e9);
+		double cpuMillisPerMb = cpuNanos / 1e6 / megabytes;
+		return String.format("%.1f MiB/s, %.2f ms CPU per MiB", mbPerSecond,
+				cpuMillisPerMb);
+	}
+}
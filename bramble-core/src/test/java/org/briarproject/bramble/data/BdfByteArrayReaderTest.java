@@ -0,0 +1,14 @@
+package org.briarproject.bramble.data;
+
+import org.briarproject.bramble.api.data.BdfReader;
+
+import static org.briarproject.bramble.data.BdfReaderImpl.DEFAULT_NESTED_LIMIT;
+
+public class BdfByteArrayReaderTest extends BdfReaderImplTest {
+
+	@Override
+	BdfReader createReader(byte[] b, int maxBufferSize) {
+		return new BdfByteArrayReader(b, 0, b.length, DEFAULT_NESTED_LIMIT,
+				maxBufferSize, true);
+	}
+}
@@ -0,0 +1,18 @@
+package org.briarproject.bramble.data;
+
+import org.briarproject.bramble.api.data.BdfWriter;
+
+import java.io.OutputStream;
+
+public class BdfByteArrayWriterTest extends BdfWriterImplTest {
+
+	@Override
+	BdfWriter createWriter(OutputStream out) {
+		return new BdfByteArrayWriter();
+	}
+
+	@Override
+	byte[] getContents() {
+		return ((BdfByteArrayWriter) w).toByteArray();
+	}
+}
@@ -1,12 +1,14 @@
 package org.briarproject.bramble.data;
 
 import org.briarproject.bramble.api.data.BdfDictionary;
+import org.briarproject.bramble.api.data.BdfWriter;
 import org.briarproject.bramble.test.BrambleTestCase;
 import org.briarproject.bramble.util.StringUtils;
 import org.junit.Test;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -18,7 +20,7 @@ import static org.junit.Assert.assertArrayEquals;
 public class BdfWriterImplTest extends BrambleTestCase {
 
 	private final ByteArrayOutputStream out = new ByteArrayOutputStream();
-	private final BdfWriterImpl w = new BdfWriterImpl(out);
+	final BdfWriter w = createWriter(out);
 
 	@Test
 	public void testWriteNull() throws IOException {
@@ -213,11 +215,19 @@ public class BdfWriterImplTest extends BrambleTestCase {
 				"80" + "80" + "80");
 	}
 
-	private void checkContents(String hex) throws IOException {
+	BdfWriter createWriter(OutputStream out) {
+		return new BdfWriterImpl(out);
+	}
+
+	byte[] getContents() throws IOException {
 		out.flush();
 		out.close();
+		return out.toByteArray();
+	}
+
+	private void checkContents(String hex) throws IOException {
 		byte[] expected = StringUtils.fromHexString(hex);
-		assertArrayEquals(StringUtils.toHexString(out.toByteArray()),
-				expected, out.toByteArray());
+		byte[] actual = getContents();
+		assertArrayEquals(StringUtils.toHexString(actual), expected, actual);
 	}
 }
@@ -12,6 +12,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import static org.briarproject.bramble.util.StringUtils.fromHexString;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
@@ -23,8 +24,8 @@ public class MetadataEncoderParserIntegrationTest extends BrambleTestCase {
 
 	@Before
 	public void before() {
-		e = new MetadataEncoderImpl(new BdfWriterFactoryImpl());
-		p = new MetadataParserImpl(new BdfReaderFactoryImpl());
+		e = new MetadataEncoderImpl();
+		p = new MetadataParserImpl();
 		d = new BdfDictionary();
 	}
 
@@ -163,4 +164,29 @@ public class MetadataEncoderParserIntegrationTest extends BrambleTestCase {
 		assertEquals(true, p.parse(metadata).getDictionary("another test", null)
 				.getBoolean("should be true", false));
 	}
+
+	@Test(expected = FormatException.class)
+	public void testParseRejectsTruncatedValue() throws FormatException {
+		Metadata metadata = new Metadata();
+		// STRING_8 tag, length 3, only two bytes of content
+		metadata.put("test", fromHexString("41" + "03" + "6162"));
+		p.parse(metadata);
+	}
+
+	@Test(expected = FormatException.class)
+	public void testParseRejectsNonCanonicalValue()
+			throws FormatException {
+		Metadata metadata = new Metadata();
+		// INT_16 tag, value that could have been encoded as an INT_8
+		metadata.put("test", fromHexString("22" + "007F"));
+		p.parse(metadata);
+	}
+
+	@Test(expected = FormatException.class)
+	public void testParseRejectsTrailingData() throws FormatException {
+		Metadata metadata = new Metadata();
+		// TRUE tag followed by FALSE tag
+		metadata.put("test", fromHexString("11" + "10"));
+		p.parse(metadata);
+	}
 }
@@ -34,6 +34,7 @@ import org.briarproject.bramble.api.sync.ClientId;
 import org.briarproject.bramble.api.sync.Group;
 import org.briarproject.bramble.api.sync.GroupId;
 import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageFilter;
 import org.briarproject.bramble.api.sync.MessageId;
 import org.briarproject.bramble.api.sync.MessageStatus;
 import org.briarproject.bramble.api.sync.Offer;
@@ -62,6 +63,9 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicReference;
@@ -1055,6 +1059,212 @@ public class DatabaseComponentImplTest extends BrambleMockTestCase {
 		});
 	}
 
+	@Test
+	public void testGenerateAcksForMultipleContacts() throws Exception {
+		ContactId contactId1 = new ContactId(contactId.getInt() + 1);
+		Collection<ContactId> contacts = asList(contactId, contactId1);
+		Collection<MessageId> ids = singletonList(messageId);
+		Collection<MessageId> ids1 = singletonList(messageId1);
+		Map<ContactId, Collection<MessageId>> messagesToAck = new HashMap<>();
+		messagesToAck.put(contactId, ids);
+		messagesToAck.put(contactId1, ids1);
+		context.checking(new Expectations() {{
+			oneOf(database).startTransaction();
+			will(returnValue(txn));
+			oneOf(database).containsContact(txn, contactId);
+			will(returnValue(true));
+			oneOf(database).containsContact(txn, contactId1);
+			will(returnValue(true));
+			oneOf(database).getMessagesToAck(txn, contacts, 123);
+			will(returnValue(messagesToAck));
+			oneOf(database).lowerAckFlag(txn, contactId, ids);
+			oneOf(database).lowerAckFlag(txn, contactId1, ids1);
+			oneOf(database).commitTransaction(txn);
+		}});
+		DatabaseComponent db = createDatabaseComponent(database, eventBus,
+				eventExecutor, shutdownManager);
+
+		db.transaction(false, transaction -> {
+			Map<ContactId, Ack> acks =
+					db.generateAcks(transaction, contacts, 123);
+			assertEquals(2, acks.size());
+			assertEquals(ids, acks.get(contactId).getMessageIds());
+			assertEquals(ids1, acks.get(contactId1).getMessageIds());
+		});
+	}
+
+	@Test
+	public void testGenerateAcksSkipsMissingContacts() throws Exception {
+		ContactId contactId1 = new ContactId(contactId.getInt() + 1);
+		Collection<MessageId> ids = singletonList(messageId);
+		context.checking(new Expectations() {{
+			oneOf(database).startTransaction();
+			will(returnValue(txn));
+			// The second contact has been removed
+			oneOf(database).containsContact(txn, contactId);
+			will(returnValue(true));
+			oneOf(database).containsContact(txn, contactId1);
+			will(returnValue(false));
+			oneOf(database).getMessagesToAck(txn, singletonList(contactId),
+					123);
+			will(returnValue(singletonMap(contactId, ids)));
+			oneOf(database).lowerAckFlag(txn, contactId, ids);
+			oneOf(database).commitTransaction(txn);
+		}});
+		DatabaseComponent db = createDatabaseComponent(database, eventBus,
+				eventExecutor, shutdownManager);
+
+		db.transaction(false, transaction -> {
+			Map<ContactId, Ack> acks = db.generateAcks(transaction,
+					asList(contactId, contactId1), 123);
+			assertEquals(1, acks.size());
+			assertEquals(ids, acks.get(contactId).getMessageIds());
+		});
+	}
+
+	@Test
+	public void testGenerateOffersForMultipleContacts() throws Exception {
+		ContactId contactId1 = new ContactId(contactId.getInt() + 1);
+		Collection<ContactId> contacts = asList(contactId, contactId1);
+		Collection<MessageId> ids = asList(messageId, messageId1);
+		// The second contact has nothing to offer
+		Map<ContactId, Collection<MessageId>> messagesToOffer =
+				singletonMap(contactId, ids);
+		context.checking(new Expectations() {{
+			oneOf(database).startTransaction();
+			will(returnValue(txn));
+			oneOf(database).containsContact(txn, contactId);
+			will(returnValue(true));
+			oneOf(database).containsContact(txn, contactId1);
+			will(returnValue(true));
+			oneOf(database).getMessagesToOffer(txn, contacts, 123, maxLatency);
+			will(returnValue(messagesToOffer));
+			oneOf(database).updateRetransmissionData(txn, contactId, messageId,
+					maxLatency);
+			oneOf(database).updateRetransmissionData(txn, contactId, messageId1,
+					maxLatency);
+			oneOf(database).commitTransaction(txn);
+		}});
+		DatabaseComponent db = createDatabaseComponent(database, eventBus,
+				eventExecutor, shutdownManager);
+
+		db.transaction(false, transaction -> {
+			Map<ContactId, Offer> offers =
+					db.generateOffers(transaction, contacts, 123, maxLatency);
+			assertEquals(1, offers.size());
+			assertEquals(ids, offers.get(contactId).getMessageIds());
+			assertNull(offers.get(contactId1));
+		});
+	}
+
+	@Test
+	public void testGenerateRequestsForMultipleContacts() throws Exception {
+		ContactId contactId1 = new ContactId(contactId.getInt() + 1);
+		Collection<ContactId> contacts = asList(contactId, contactId1);
+		Collection<MessageId> ids = singletonList(messageId);
+		Collection<MessageId> ids1 = singletonList(messageId1);
+		Map<ContactId, Collection<MessageId>> messagesToRequest =
+				new HashMap<>();
+		messagesToRequest.put(contactId, ids);
+		messagesToRequest.put(contactId1, ids1);
+		context.checking(new Expectations() {{
+			oneOf(database).startTransaction();
+			will(returnValue(txn));
+			oneOf(database).containsContact(txn, contactId);
+			will(returnValue(true));
+			oneOf(database).containsContact(txn, contactId1);
+			will(returnValue(true));
+			oneOf(database).getMessagesToRequest(txn, contacts, 123);
+			will(returnValue(messagesToRequest));
+			oneOf(database).removeOfferedMessages(txn, contactId, ids);
+			oneOf(database).removeOfferedMessages(txn, contactId1, ids1);
+			oneOf(database).commitTransaction(txn);
+		}});
+		DatabaseComponent db = createDatabaseComponent(database, eventBus,
+				eventExecutor, shutdownManager);
+
+		db.transaction(false, transaction -> {
+			Map<ContactId, Request> requests =
+					db.generateRequests(transaction, contacts, 123);
+			assertEquals(2, requests.size());
+			assertEquals(ids, requests.get(contactId).getMessageIds());
+			assertEquals(ids1, requests.get(contactId1).getMessageIds());
+		});
+	}
+
+	@Test
+	public void testGenerateOfferSkipsMessagesInFilters() throws Exception {
+		MessageId messageId2 = new MessageId(getRandomId());
+		GroupId groupId1 = new GroupId(getRandomId());
+		Map<MessageId, GroupId> candidates = new LinkedHashMap<>();
+		candidates.put(messageId, groupId);
+		candidates.put(messageId1, groupId);
+		candidates.put(messageId2, groupId1);
+		// The contact has the first message, and the third message's ID is
+		// in a filter for a different group
+		Collection<MessageFilter> filters = asList(
+				MessageFilter.create(groupId, 123, singletonList(messageId)),
+				MessageFilter.create(new GroupId(getRandomId()), 123,
+						singletonList(messageId2)));
+		context.checking(new Expectations() {{
+			oneOf(database).startTransaction();
+			will(returnValue(txn));
+			oneOf(database).containsContact(txn, contactId);
+			will(returnValue(true));
+			oneOf(database).getMessagesToOfferWithGroups(txn, contactId, 123,
+					maxLatency);
+			will(returnValue(candidates));
+			// All the messages are treated as offered
+			oneOf(database).updateRetransmissionData(txn, contactId, messageId,
+					maxLatency);
+			oneOf(database).updateRetransmissionData(txn, contactId, messageId1,
+					maxLatency);
+			oneOf(database).updateRetransmissionData(txn, contactId, messageId2,
+					maxLatency);
+			// The message that the contact has is acked instead
+			oneOf(database).raiseAckFlag(txn, contactId, messageId);
+			oneOf(database).commitTransaction(txn);
+			oneOf(eventBus).broadcast(with(any(MessageToAckEvent.class)));
+		}});
+		DatabaseComponent db = createDatabaseComponent(database, eventBus,
+				eventExecutor, shutdownManager);
+
+		db.transaction(false, transaction -> {
+			Offer o = db.generateOffer(transaction, contactId, 123, maxLatency,
+					filters);
+			assertNotNull(o);
+			assertEquals(asList(messageId1, messageId2), o.getMessageIds());
+		});
+	}
+
+	@Test
+	public void testGenerateOfferReturnsNullIfAllMessagesAreInFilters()
+			throws Exception {
+		Map<MessageId, GroupId> candidates = singletonMap(messageId, groupId);
+		Collection<MessageFilter> filters = singletonList(
+				MessageFilter.create(groupId, 123, singletonList(messageId)));
+		context.checking(new Expectations() {{
+			oneOf(database).startTransaction();
+			will(returnValue(txn));
+			oneOf(database).containsContact(txn, contactId);
+			will(returnValue(true));
+			oneOf(database).getMessagesToOfferWithGroups(txn, contactId, 123,
+					maxLatency);
+			will(returnValue(candidates));
+			oneOf(database).updateRetransmissionData(txn, contactId, messageId,
+					maxLatency);
+			oneOf(database).raiseAckFlag(txn, contactId, messageId);
+			oneOf(database).commitTransaction(txn);
+			oneOf(eventBus).broadcast(with(any(MessageToAckEvent.class)));
+		}});
+		DatabaseComponent db = createDatabaseComponent(database, eventBus,
+				eventExecutor, shutdownManager);
+
+		db.transaction(false, transaction ->
+				assertNull(db.generateOffer(transaction, contactId, 123,
+						maxLatency, filters)));
+	}
+
 	@Test
 	public void testGenerateRequest() throws Exception {
 		MessageId messageId1 = new MessageId(getRandomId());
@@ -1379,6 +1589,37 @@ public class DatabaseComponentImplTest extends BrambleMockTestCase {
 				db.receiveOffer(transaction, contactId, o));
 	}
 
+	@Test
+	public void testReceiveReconciliation() throws Exception {
+		context.checking(new Expectations() {{
+			oneOf(database).startTransaction();
+			will(returnValue(txn));
+			oneOf(database).containsContact(txn, contactId);
+			will(returnValue(true));
+			// The first message has been seen by the contact
+			oneOf(database).containsVisibleMessage(txn, contactId, messageId);
+			will(returnValue(true));
+			oneOf(database).raiseSeenFlag(txn, contactId, messageId);
+			will(returnValue(true));
+			oneOf(database).startCleanupTimer(txn, messageId);
+			will(returnValue(TIMER_NOT_STARTED)); // No cleanup duration was set
+			// The second message is missing
+			oneOf(database).containsVisibleMessage(txn, contactId, messageId1);
+			will(returnValue(true));
+			oneOf(database).raiseRequestedFlag(txn, contactId, messageId1);
+			oneOf(database).resetExpiryTime(txn, contactId, messageId1);
+			oneOf(database).commitTransaction(txn);
+			oneOf(eventBus).broadcast(with(any(MessagesAckedEvent.class)));
+			oneOf(eventBus).broadcast(with(any(MessageRequestedEvent.class)));
+		}});
+		DatabaseComponent db = createDatabaseComponent(database, eventBus,
+				eventExecutor, shutdownManager);
+
+		db.transaction(false, transaction ->
+				db.receiveReconciliation(transaction, contactId,
+						singletonList(messageId), singletonList(messageId1)));
+	}
+
 	@Test
 	public void testReceiveRequest() throws Exception {
 		context.checking(new Expectations() {{
@@ -1450,6 +1691,38 @@ public class DatabaseComponentImplTest extends BrambleMockTestCase {
 				db.setMessagesSent(transaction, contactId, sent, maxLatency));
 	}
 
+	@Test
+	public void testGetContactsToSendMessageTo() throws Exception {
+		ContactId removed = new ContactId(contactId.getInt() + 1);
+		ContactId invisible = new ContactId(contactId.getInt() + 2);
+		Collection<ContactId> contacts = asList(contactId, removed, invisible);
+		context.checking(new Expectations() {{
+			oneOf(database).startTransaction();
+			will(returnValue(txn));
+			// The message is still visible to the first contact
+			oneOf(database).containsContact(txn, contactId);
+			will(returnValue(true));
+			oneOf(database).containsVisibleMessage(txn, contactId, messageId);
+			will(returnValue(true));
+			// The second contact has been removed - skip it
+			oneOf(database).containsContact(txn, removed);
+			will(returnValue(false));
+			// The message is no longer visible to the third contact
+			oneOf(database).containsContact(txn, invisible);
+			will(returnValue(true));
+			oneOf(database).containsVisibleMessage(txn, invisible, messageId);
+			will(returnValue(false));
+			oneOf(database).commitTransaction(txn);
+		}});
+		DatabaseComponent db = createDatabaseComponent(database, eventBus,
+				eventExecutor, shutdownManager);
+
+		Collection<ContactId> visible = db.transactionWithResult(true,
+				transaction -> db.getContactsToSendMessageTo(transaction,
+						messageId, contacts));
+		assertEquals(singletonList(contactId), visible);
+	}
+
 	@Test
 	public void testChangingVisibilityFromInvisibleToVisibleCallsListeners()
 			throws Exception {
@@ -0,0 +1,83 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.system.SystemClock;
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.junit.After;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor.DiscardPolicy;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.briarproject.bramble.db.DatabaseLaneExecutor.Lane.BACKGROUND;
+import static org.briarproject.bramble.db.DatabaseLaneExecutor.Lane.INTERACTIVE;
+import static org.briarproject.bramble.util.LogUtils.now;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures how long interactive tasks wait to start on a real thread while
+ * the background lane is saturated.
+ */
+@Ignore
+public class DatabaseLaneExecutorPerformanceTest extends BrambleTestCase {
+
+	private static final int BACKGROUND_TASKS = 2000;
+	private static final int INTERACTIVE_TASKS = 100;
+
+	private final ExecutorService delegate = new ThreadPoolExecutor(1, 1,
+			0, SECONDS, new LinkedBlockingQueue<>(), new DiscardPolicy());
+	private final DatabaseLaneExecutor executor = new DatabaseLaneExecutor(
+			"Test", delegate, new SystemClock());
+
+	@After
+	public void tearDown() {
+		delegate.shutdownNow();
+	}
+
+	@Test
+	public void testInteractiveLatencyUnderSaturatedBackgroundLoad()
+			throws Exception {
+		// Queue about 4 seconds of background work
+		for (int i = 0; i < BACKGROUND_TASKS; i++) {
+			executor.execute(BACKGROUND, () -> sleep(2));
+		}
+		// Submit interactive tasks while the background lane is saturated
+		List<Long> latencies = new Vector<>();
+		CountDownLatch latch = new CountDownLatch(INTERACTIVE_TASKS);
+		for (int i = 0; i < INTERACTIVE_TASKS; i++) {
+			long submitted = now();
+			executor.execute(INTERACTIVE, () -> {
+				latencies.add(now() - submitted);
+				latch.countDown();
+			});
+			sleep(10);
+		}
+		assertTrue(latch.await(10, SECONDS));
+		List<Long> sorted = new ArrayList<>(latencies);
+		Collections.sort(sorted);
+		System.out.println("Background tasks still queued: "
+				+ executor.getQueueDepth(BACKGROUND));
+		System.out.println("Median latency: "
+				+ sorted.get(INTERACTIVE_TASKS / 2) + " ms");
+		System.out.println("99th percentile latency: "
+				+ sorted.get(INTERACTIVE_TASKS * 99 / 100 - 1) + " ms");
+		System.out.println("Mean wait time: "
+				+ executor.getMeanWaitTime(INTERACTIVE) + " ms");
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.briarproject.bramble.test.SettableClock;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Arrays.asList;
+import static org.briarproject.bramble.db.DatabaseLaneExecutor.Lane.BACKGROUND;
+import static org.briarproject.bramble.db.DatabaseLaneExecutor.Lane.INTERACTIVE;
+import static org.briarproject.bramble.db.DatabaseLaneExecutor.Lane.SYNC;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DatabaseLaneExecutorTest extends BrambleTestCase {
+
+	private static final String TAG = "Test";
+
+	private final AtomicLong time = new AtomicLong(1000);
+	// Tasks delegated by the lane executor, which the test runs one at a
+	// time on the test thread
+	private final Queue<Runnable> delegated = new LinkedList<>();
+	private final DatabaseLaneExecutor executor = new DatabaseLaneExecutor(
+			TAG, delegated::add, new SettableClock(time));
+
+	@Test
+	public void testTasksInTheSameLaneRunInOrderOfSubmission() {
+		List<Integer> list = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			int result = i;
+			executor.execute(BACKGROUND, () -> list.add(result));
+		}
+		// Only one task should be delegated at a time
+		assertEquals(1, delegated.size());
+		runAll();
+		assertEquals(asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), list);
+		assertEquals(10, executor.getTasksStarted(BACKGROUND));
+	}
+
+	@Test
+	public void testHigherPriorityLanesRunFirst() {
+		List<String> list = new ArrayList<>();
+		executor.execute(BACKGROUND, () -> list.add("background"));
+		executor.execute(SYNC, () -> list.add("sync"));
+		executor.execute(INTERACTIVE, () -> list.add("interactive"));
+		assertEquals(1, executor.getQueueDepth(BACKGROUND));
+		assertEquals(1, executor.getQueueDepth(SYNC));
+		assertEquals(1, executor.getQueueDepth(INTERACTIVE));
+		runAll();
+		assertEquals(asList("interactive", "sync", "background"), list);
+		assertEquals(0, executor.getQueueDepth(BACKGROUND));
+		assertEquals(1, executor.getTasksStarted(BACKGROUND));
+	}
+
+	@Test
+	public void testLowerPriorityLaneIsNotStarved() {
+		// Keep the interactive lane busy. Each interactive task takes 1 ms
+		AtomicBoolean stop = new AtomicBoolean(false);
+		executor.execute(INTERACTIVE, new Resubmitter(stop));
+		executor.execute(BACKGROUND, () -> stop.set(true));
+		long maxWait = BACKGROUND.getMaxWaitTime();
+		// The background task shouldn't run until it has waited for the max
+		// wait time
+		for (int i = 0; i < maxWait; i++) {
+			runNext();
+			assertFalse(stop.get());
+		}
+		runNext();
+		assertTrue(stop.get());
+		assertEquals(maxWait, executor.getTasksStarted(INTERACTIVE));
+		assertEquals(maxWait, executor.getMaxWaitTime(BACKGROUND));
+		// The last interactive task was resubmitted before the background
+		// task ran, so it runs next
+		runAll();
+		assertEquals(maxWait + 1, executor.getTasksStarted(INTERACTIVE));
+	}
+
+	@Test
+	public void testLowerPriorityLaneWaitsAgainAfterRunningTask() {
+		AtomicBoolean stop = new AtomicBoolean(false);
+		executor.execute(INTERACTIVE, new Resubmitter(stop));
+		List<Long> started = new ArrayList<>();
+		executor.execute(BACKGROUND, () -> started.add(time.get()));
+		executor.execute(BACKGROUND, () -> {
+			started.add(time.get());
+			stop.set(true);
+		});
+		runAll();
+		// Each background task should have waited for the max wait time
+		// since the lane last started a task
+		long maxWait = BACKGROUND.getMaxWaitTime();
+		assertEquals(asList(1000 + maxWait, 1000 + maxWait * 2), started);
+	}
+
+	@Test
+	public void testInteractiveTasksWaitForAtMostOneBackgroundTask() {
+		// Queue plenty of background work. Each background task takes 2 ms
+		// and submits an interactive task halfway through
+		List<String> list = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			executor.execute(BACKGROUND, () -> {
+				list.add("background");
+				time.incrementAndGet();
+				executor.execute(INTERACTIVE, () -> list.add("interactive"));
+				time.incrementAndGet();
+			});
+		}
+		for (int i = 0; i < 200; i++) runNext();
+		// Each interactive task should have started as soon as the
+		// background task that was running when it was submitted finished
+		for (int i = 0; i < 200; i += 2) {
+			assertEquals("background", list.get(i));
+			assertEquals("interactive", list.get(i + 1));
+		}
+		assertEquals(1, executor.getMaxWaitTime(INTERACTIVE));
+		assertEquals(100, executor.getTasksStarted(INTERACTIVE));
+		// The background lane should still have been saturated
+		assertEquals(1900, executor.getQueueDepth(BACKGROUND));
+	}
+
+	private void runNext() {
+		Runnable r = delegated.remove();
+		r.run();
+	}
+
+	private void runAll() {
+		while (!delegated.isEmpty()) runNext();
+	}
+
+	private class Resubmitter implements Runnable {
+
+		private final AtomicBoolean stop;
+
+		private Resubmitter(AtomicBoolean stop) {
+			this.stop = stop;
+		}
+
+		@Override
+		public void run() {
+			time.incrementAndGet();
+			if (!stop.get()) executor.execute(INTERACTIVE, this);
+		}
+	}
+}
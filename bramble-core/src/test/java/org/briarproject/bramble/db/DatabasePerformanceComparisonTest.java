@@ -76,12 +76,16 @@ public abstract class DatabasePerformanceComparisonTest
 	private Database<Connection> openDatabase(boolean conditionA)
 			throws DbException {
 		Database<Connection> db = createDatabase(conditionA,
-				new TestDatabaseConfig(testDir), new TestMessageFactory(),
+				createDatabaseConfig(conditionA), new TestMessageFactory(),
 				new SystemClock());
 		db.open(databaseKey, null);
 		return db;
 	}
 
+	DatabaseConfig createDatabaseConfig(boolean conditionA) {
+		return new TestDatabaseConfig(testDir);
+	}
+
 	private void writeResult(String name, List<Double> aDurations,
 			List<Double> bDurations, UTest.Result comparison)
 			throws IOException {
@@ -382,6 +382,34 @@ public abstract class DatabasePerformanceTest extends BrambleTestCase {
 		});
 	}
 
+	@Test
+	public void testGetMessageMetadataWithMatchingQuery() throws Exception {
+		String name = "getMessageMetadata(T, GroupId, Metadata) [match]";
+		benchmark(name, db -> {
+			Connection txn = db.startTransaction();
+			GroupId g = pickRandom(groups).getId();
+			// Query for a single term, like a protocol session lookup
+			Metadata meta = pickRandom(messageMeta.get(g));
+			String key = pickRandom(new ArrayList<>(meta.keySet()));
+			Metadata query = new Metadata();
+			query.put(key, meta.get(key));
+			db.getMessageMetadata(txn, g, query);
+			db.commitTransaction(txn);
+		});
+	}
+
+	@Test
+	public void testGetMessageMetadataWithNonMatchingQuery()
+			throws Exception {
+		String name = "getMessageMetadata(T, GroupId, Metadata) [no match]";
+		benchmark(name, db -> {
+			Connection txn = db.startTransaction();
+			Metadata query = getMetadata(1);
+			db.getMessageMetadata(txn, pickRandom(groups).getId(), query);
+			db.commitTransaction(txn);
+		});
+	}
+
 	@Test
 	public void testGetMessageMetadataByMessageId() throws Exception {
 		String name = "getMessageMetadata(T, MessageId)";
@@ -0,0 +1,153 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.Cancellable;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.DatabaseSpaceUsage;
+import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.api.system.TaskScheduler;
+import org.briarproject.bramble.test.BrambleMockTestCase;
+import org.briarproject.bramble.test.DbExpectations;
+import org.briarproject.bramble.test.ImmediateExecutor;
+import org.jmock.Expectations;
+import org.junit.Test;
+
+import java.util.concurrent.Executor;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.briarproject.bramble.db.DatabaseSpaceReclaimer.CHECK_INTERVAL_MS;
+import static org.briarproject.bramble.db.DatabaseSpaceReclaimer.MAX_BYTES_PER_STEP;
+import static org.briarproject.bramble.db.DatabaseSpaceReclaimer.MAX_STEPS_PER_CHECK;
+import static org.briarproject.bramble.db.DatabaseSpaceReclaimer.MIN_DEAD_BYTES;
+
+public class DatabaseSpaceReclaimerTest extends BrambleMockTestCase {
+
+	private final DatabaseComponent db = context.mock(DatabaseComponent.class);
+	private final TaskScheduler taskScheduler =
+			context.mock(TaskScheduler.class);
+	private final Cancellable cancellable = context.mock(Cancellable.class);
+	private final Executor dbExecutor = new ImmediateExecutor();
+
+	private final DatabaseSpaceReclaimer reclaimer =
+			new DatabaseSpaceReclaimer(db, dbExecutor, taskScheduler);
+
+	@Test
+	public void testSchedulesAndCancelsCheck() {
+		context.checking(new Expectations() {{
+			oneOf(taskScheduler).scheduleWithFixedDelay(
+					with(any(Runnable.class)), with(dbExecutor),
+					with(CHECK_INTERVAL_MS), with(CHECK_INTERVAL_MS),
+					with(MILLISECONDS));
+			will(returnValue(cancellable));
+		}});
+
+		reclaimer.startService();
+		context.assertIsSatisfied();
+
+		context.checking(new Expectations() {{
+			oneOf(cancellable).cancel();
+		}});
+
+		reclaimer.stopService();
+	}
+
+	@Test
+	public void testDoesNotReclaimSpaceIfTooFewBytesAreDead()
+			throws Exception {
+		Transaction txn = new Transaction(null, true);
+		// A quarter of the file is dead, but that's less than the minimum
+		long fileBytes = MIN_DEAD_BYTES * 2;
+		DatabaseSpaceUsage usage =
+				new DatabaseSpaceUsage(fileBytes, fileBytes * 3 / 4);
+
+		context.checking(new DbExpectations() {{
+			oneOf(db).transactionWithResult(with(true), withDbCallable(txn));
+			oneOf(db).getSpaceUsage(txn);
+			will(returnValue(usage));
+		}});
+
+		reclaimer.checkSpaceUsage();
+	}
+
+	@Test
+	public void testDoesNotReclaimSpaceIfSmallFractionIsDead()
+			throws Exception {
+		Transaction txn = new Transaction(null, true);
+		// More than the minimum number of bytes are dead, but that's less
+		// than a quarter of the file
+		long fileBytes = MIN_DEAD_BYTES * 8;
+		DatabaseSpaceUsage usage =
+				new DatabaseSpaceUsage(fileBytes, fileBytes - MIN_DEAD_BYTES);
+
+		context.checking(new DbExpectations() {{
+			oneOf(db).transactionWithResult(with(true), withDbCallable(txn));
+			oneOf(db).getSpaceUsage(txn);
+			will(returnValue(usage));
+		}});
+
+		reclaimer.checkSpaceUsage();
+	}
+
+	@Test
+	public void testReclaimsSpaceInStepsUntilNothingIsReclaimed()
+			throws Exception {
+		Transaction txn = new Transaction(null, true);
+		Transaction txn1 = new Transaction(null, false);
+		Transaction txn2 = new Transaction(null, false);
+		Transaction txn3 = new Transaction(null, true);
+		long fileBytes = MIN_DEAD_BYTES * 4;
+		DatabaseSpaceUsage usage =
+				new DatabaseSpaceUsage(fileBytes, fileBytes / 2);
+
+		context.checking(new DbExpectations() {{
+			oneOf(db).transactionWithResult(with(true), withDbCallable(txn));
+			oneOf(db).getSpaceUsage(txn);
+			will(returnValue(usage));
+			// The first step reclaims some space
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn1));
+			oneOf(db).reclaimSpace(txn1, MAX_BYTES_PER_STEP);
+			will(returnValue(true));
+			// The second step doesn't reclaim any space
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn2));
+			oneOf(db).reclaimSpace(txn2, MAX_BYTES_PER_STEP);
+			will(returnValue(false));
+			// The space usage may be logged
+			allowing(db).transactionWithResult(with(true),
+					withDbCallable(txn3));
+			allowing(db).getSpaceUsage(txn3);
+			will(returnValue(usage));
+		}});
+
+		reclaimer.checkSpaceUsage();
+	}
+
+	@Test
+	public void testStopsAfterMaxStepsPerCheck() throws Exception {
+		Transaction txn = new Transaction(null, true);
+		Transaction txn1 = new Transaction(null, false);
+		Transaction txn2 = new Transaction(null, true);
+		long fileBytes = MIN_DEAD_BYTES * 4;
+		DatabaseSpaceUsage usage =
+				new DatabaseSpaceUsage(fileBytes, fileBytes / 2);
+
+		context.checking(new DbExpectations() {{
+			oneOf(db).transactionWithResult(with(true), withDbCallable(txn));
+			oneOf(db).getSpaceUsage(txn);
+			will(returnValue(usage));
+			// Every step reclaims some space
+			exactly(MAX_STEPS_PER_CHECK).of(db).transactionWithResult(
+					with(false), withDbCallable(txn1));
+			exactly(MAX_STEPS_PER_CHECK).of(db)
+					.reclaimSpace(txn1, MAX_BYTES_PER_STEP);
+			will(returnValue(true));
+			// The space usage may be logged
+			allowing(db).transactionWithResult(with(true),
+					withDbCallable(txn2));
+			allowing(db).getSpaceUsage(txn2);
+			will(returnValue(usage));
+		}});
+
+		reclaimer.checkSpaceUsage();
+	}
+}
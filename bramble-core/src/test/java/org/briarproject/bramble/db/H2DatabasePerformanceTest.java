@@ -5,6 +5,8 @@ import org.briarproject.bramble.api.sync.MessageFactory;
 import org.briarproject.bramble.api.system.Clock;
 import org.junit.Ignore;
 
+import static org.briarproject.bramble.crypto.CryptoTestUtils.getCryptoComponent;
+
 @Ignore
 public class H2DatabasePerformanceTest extends SingleDatabasePerformanceTest {
 
@@ -16,6 +18,7 @@ public class H2DatabasePerformanceTest extends SingleDatabasePerformanceTest {
 	@Override
 	protected JdbcDatabase createDatabase(DatabaseConfig config,
 			MessageFactory messageFactory, Clock clock) {
-		return new H2Database(config, messageFactory, clock);
+		return new H2Database(config, messageFactory, clock,
+				getCryptoComponent());
 	}
 }
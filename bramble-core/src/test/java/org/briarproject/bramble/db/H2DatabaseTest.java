@@ -4,11 +4,14 @@ import org.briarproject.bramble.api.db.DatabaseConfig;
 import org.briarproject.bramble.api.sync.MessageFactory;
 import org.briarproject.bramble.api.system.Clock;
 
+import static org.briarproject.bramble.crypto.CryptoTestUtils.getCryptoComponent;
+
 public class H2DatabaseTest extends JdbcDatabaseTest {
 
 	@Override
 	protected JdbcDatabase createDatabase(DatabaseConfig config,
 			MessageFactory messageFactory, Clock clock) {
-		return new H2Database(config, messageFactory, clock);
+		return new H2Database(config, messageFactory, clock,
+				getCryptoComponent());
 	}
 }
@@ -10,13 +10,16 @@ import java.sql.Connection;
 
 import javax.annotation.Nonnull;
 
+import static org.briarproject.bramble.crypto.CryptoTestUtils.getCryptoComponent;
+
 @Ignore
 public class H2DatabaseTraceTest extends DatabaseTraceTest {
 
 	@Override
 	Database<Connection> createDatabase(DatabaseConfig databaseConfig,
 			MessageFactory messageFactory, Clock clock) {
-		return new H2Database(databaseConfig, messageFactory, clock) {
+		return new H2Database(databaseConfig, messageFactory, clock,
+				getCryptoComponent()) {
 			@Override
 			@Nonnull
 			String getUrl() {
@@ -7,6 +7,8 @@ import org.junit.Ignore;
 
 import java.sql.Connection;
 
+import static org.briarproject.bramble.crypto.CryptoTestUtils.getCryptoComponent;
+
 @Ignore
 public class H2HyperSqlDatabasePerformanceComparisonTest
 		extends DatabasePerformanceComparisonTest {
@@ -16,8 +18,10 @@ public class H2HyperSqlDatabasePerformanceComparisonTest
 			DatabaseConfig databaseConfig, MessageFactory messageFactory,
 			Clock clock) {
 		if (conditionA)
-			return new H2Database(databaseConfig, messageFactory, clock);
-		else return new HyperSqlDatabase(databaseConfig, messageFactory, clock);
+			return new H2Database(databaseConfig, messageFactory, clock,
+					getCryptoComponent());
+		else return new HyperSqlDatabase(databaseConfig, messageFactory,
+				clock, getCryptoComponent());
 	}
 
 	@Override
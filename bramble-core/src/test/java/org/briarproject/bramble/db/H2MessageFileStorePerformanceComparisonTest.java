@@ -0,0 +1,38 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.db.DatabaseConfig;
+import org.briarproject.bramble.api.sync.MessageFactory;
+import org.briarproject.bramble.api.system.Clock;
+import org.briarproject.bramble.test.TestDatabaseConfig;
+import org.junit.Ignore;
+
+import java.sql.Connection;
+
+import static org.briarproject.bramble.crypto.CryptoTestUtils.getCryptoComponent;
+
+/**
+ * Compares the performance of H2 with large messages stored in the database
+ * (condition A) and in the {@link MessageFileStore} (condition B).
+ */
+@Ignore
+public class H2MessageFileStorePerformanceComparisonTest
+		extends DatabasePerformanceComparisonTest {
+
+	@Override
+	Database<Connection> createDatabase(boolean conditionA,
+			DatabaseConfig databaseConfig, MessageFactory messageFactory,
+			Clock clock) {
+		return new H2Database(databaseConfig, messageFactory, clock,
+				getCryptoComponent());
+	}
+
+	@Override
+	DatabaseConfig createDatabaseConfig(boolean conditionA) {
+		return new TestDatabaseConfig(testDir, !conditionA);
+	}
+
+	@Override
+	protected String getTestName() {
+		return getClass().getSimpleName();
+	}
+}
@@ -5,13 +5,16 @@ import org.briarproject.nullsafety.NotNullByDefault;
 import java.sql.Connection;
 import java.util.List;
 
+import static org.briarproject.bramble.crypto.CryptoTestUtils.getCryptoComponent;
+
 @NotNullByDefault
 public class H2MigrationTest extends DatabaseMigrationTest {
 
 	@Override
 	Database<Connection> createDatabase(
 			List<Migration<Connection>> migrations) {
-		return new H2Database(config, messageFactory, clock) {
+		return new H2Database(config, messageFactory, clock,
+				getCryptoComponent()) {
 			@Override
 			List<Migration<Connection>> getMigrations() {
 				return migrations;
@@ -7,6 +7,8 @@ import org.junit.Ignore;
 
 import java.sql.Connection;
 
+import static org.briarproject.bramble.crypto.CryptoTestUtils.getCryptoComponent;
+
 /**
  * Sanity check for {@link DatabasePerformanceComparisonTest}: check that
  * if conditions A and B are identical, no significant difference is (usually)
@@ -20,7 +22,8 @@ public class H2SelfDatabasePerformanceComparisonTest
 	Database<Connection> createDatabase(boolean conditionA,
 			DatabaseConfig databaseConfig, MessageFactory messageFactory,
 			Clock clock) {
-		return new H2Database(databaseConfig, messageFactory, clock);
+		return new H2Database(databaseConfig, messageFactory, clock,
+				getCryptoComponent());
 	}
 
 	@Override
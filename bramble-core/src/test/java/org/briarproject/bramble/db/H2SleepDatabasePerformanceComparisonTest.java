@@ -9,6 +9,8 @@ import org.junit.Ignore;
 
 import java.sql.Connection;
 
+import static org.briarproject.bramble.crypto.CryptoTestUtils.getCryptoComponent;
+
 /**
  * Sanity check for {@link DatabasePerformanceComparisonTest}: check that
  * if condition B sleeps for 1ms before every commit, condition A is
@@ -23,9 +25,11 @@ public class H2SleepDatabasePerformanceComparisonTest
 			DatabaseConfig databaseConfig, MessageFactory messageFactory,
 			Clock clock) {
 		if (conditionA) {
-			return new H2Database(databaseConfig, messageFactory, clock);
+			return new H2Database(databaseConfig, messageFactory, clock,
+					getCryptoComponent());
 		} else {
-			return new H2Database(databaseConfig, messageFactory, clock) {
+			return new H2Database(databaseConfig, messageFactory, clock,
+					getCryptoComponent()) {
 				@Override
 				@NotNullByDefault
 				public void commitTransaction(Connection txn)
@@ -0,0 +1,123 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.db.DatabaseSpaceUsage;
+import org.briarproject.bramble.api.sync.Group;
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.system.SystemClock;
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.briarproject.bramble.test.TestDatabaseConfig;
+import org.briarproject.bramble.test.TestMessageFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.briarproject.bramble.api.sync.validation.MessageState.DELIVERED;
+import static org.briarproject.bramble.crypto.CryptoTestUtils.getCryptoComponent;
+import static org.briarproject.bramble.test.TestUtils.deleteTestDirectory;
+import static org.briarproject.bramble.test.TestUtils.getClientId;
+import static org.briarproject.bramble.test.TestUtils.getGroup;
+import static org.briarproject.bramble.test.TestUtils.getMessage;
+import static org.briarproject.bramble.test.TestUtils.getSecretKey;
+import static org.briarproject.bramble.test.TestUtils.getTestDirectory;
+import static org.junit.Assert.assertTrue;
+
+public class H2SpaceReclamationTest extends BrambleTestCase {
+
+	private static final int ROUNDS = 20;
+	private static final int MESSAGES_PER_ROUND = 100;
+	private static final int BODY_LENGTH = 16 * 1024;
+	private static final long MAX_BYTES_PER_STEP = 1024 * 1024;
+	private static final int MAX_STEPS = 100;
+
+	private final File testDir = getTestDirectory();
+	private final Group group = getGroup(getClientId(), 123);
+	private final GroupId groupId = group.getId();
+
+	private Database<Connection> db;
+
+	@Before
+	public void setUp() throws Exception {
+		assertTrue(testDir.mkdirs());
+		db = new H2Database(new TestDatabaseConfig(testDir),
+				new TestMessageFactory(), new SystemClock(),
+				getCryptoComponent());
+		db.open(getSecretKey(), null);
+		Connection txn = db.startTransaction();
+		// The reclaimer checks the DB every few minutes, so chunks that were
+		// rewritten by one check are past the retention time by the next.
+		// Simulate that by not retaining old chunks
+		Statement s = txn.createStatement();
+		s.execute("SET RETENTION_TIME 0");
+		s.close();
+		db.addGroup(txn, group);
+		db.commitTransaction(txn);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		db.close();
+		deleteTestDirectory(testDir);
+	}
+
+	@Test
+	public void testFileSizeConvergesUnderChurn() throws Exception {
+		List<MessageId> previous = new ArrayList<>();
+		long sizeAfterSecondRound = 0, maxSize = 0;
+		for (int round = 0; round < ROUNDS; round++) {
+			// Add a round of messages and delete the previous round
+			List<MessageId> current = addMessages();
+			removeMessages(previous);
+			previous = current;
+			DatabaseSpaceUsage usage = reclaimSpace();
+			if (round == 1) sizeAfterSecondRound = usage.getFileBytes();
+			maxSize = Math.max(maxSize, usage.getFileBytes());
+		}
+		// The amount of live data is constant after the first round, so the
+		// file size should converge instead of growing with each round
+		assertTrue(maxSize <= sizeAfterSecondRound * 2);
+
+		// When all the messages have been deleted, the file should shrink
+		removeMessages(previous);
+		DatabaseSpaceUsage usage = reclaimSpace();
+		assertTrue(usage.getFileBytes() < maxSize);
+	}
+
+	private List<MessageId> addMessages() throws Exception {
+		List<MessageId> ids = new ArrayList<>(MESSAGES_PER_ROUND);
+		Connection txn = db.startTransaction();
+		for (int i = 0; i < MESSAGES_PER_ROUND; i++) {
+			Message m = getMessage(groupId, BODY_LENGTH);
+			db.addMessage(txn, m, DELIVERED, true, false, null);
+			ids.add(m.getId());
+		}
+		db.commitTransaction(txn);
+		return ids;
+	}
+
+	private void removeMessages(List<MessageId> ids) throws Exception {
+		Connection txn = db.startTransaction();
+		for (MessageId m : ids) db.removeMessage(txn, m);
+		db.commitTransaction(txn);
+	}
+
+	private DatabaseSpaceUsage reclaimSpace() throws Exception {
+		for (int i = 0; i < MAX_STEPS; i++) {
+			Connection txn = db.startTransaction();
+			boolean more = db.reclaimSpace(txn, MAX_BYTES_PER_STEP);
+			db.commitTransaction(txn);
+			if (!more) break;
+		}
+		Connection txn = db.startTransaction();
+		DatabaseSpaceUsage usage = db.getSpaceUsage(txn);
+		db.commitTransaction(txn);
+		return usage;
+	}
+}
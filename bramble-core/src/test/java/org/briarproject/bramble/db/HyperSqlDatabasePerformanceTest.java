@@ -5,6 +5,8 @@ import org.briarproject.bramble.api.sync.MessageFactory;
 import org.briarproject.bramble.api.system.Clock;
 import org.junit.Ignore;
 
+import static org.briarproject.bramble.crypto.CryptoTestUtils.getCryptoComponent;
+
 @Ignore
 public class HyperSqlDatabasePerformanceTest
 		extends SingleDatabasePerformanceTest {
@@ -17,6 +19,7 @@ public class HyperSqlDatabasePerformanceTest
 	@Override
 	protected JdbcDatabase createDatabase(DatabaseConfig config,
 			MessageFactory messageFactory, Clock clock) {
-		return new HyperSqlDatabase(config, messageFactory, clock);
+		return new HyperSqlDatabase(config, messageFactory, clock,
+				getCryptoComponent());
 	}
 }
@@ -5,6 +5,7 @@ import org.briarproject.bramble.api.sync.MessageFactory;
 import org.briarproject.bramble.api.system.Clock;
 import org.junit.Before;
 
+import static org.briarproject.bramble.crypto.CryptoTestUtils.getCryptoComponent;
 import static org.briarproject.bramble.test.TestUtils.isCryptoStrengthUnlimited;
 import static org.junit.Assume.assumeTrue;
 
@@ -18,6 +19,7 @@ public class HyperSqlDatabaseTest extends JdbcDatabaseTest {
 	@Override
 	protected JdbcDatabase createDatabase(DatabaseConfig config,
 			MessageFactory messageFactory, Clock clock) {
-		return new HyperSqlDatabase(config, messageFactory ,clock);
+		return new HyperSqlDatabase(config, messageFactory, clock,
+				getCryptoComponent());
 	}
 }
@@ -6,6 +6,7 @@ import org.junit.Before;
 import java.sql.Connection;
 import java.util.List;
 
+import static org.briarproject.bramble.crypto.CryptoTestUtils.getCryptoComponent;
 import static org.briarproject.bramble.test.TestUtils.isCryptoStrengthUnlimited;
 import static org.junit.Assume.assumeTrue;
 
@@ -20,7 +21,8 @@ public class HyperSqlMigrationTest extends DatabaseMigrationTest {
 	@Override
 	Database<Connection> createDatabase(
 			List<Migration<Connection>> migrations) {
-		return new HyperSqlDatabase(config, messageFactory, clock) {
+		return new HyperSqlDatabase(config, messageFactory, clock,
+				getCryptoComponent()) {
 			@Override
 			List<Migration<Connection>> getMigrations() {
 				return migrations;
@@ -47,6 +47,7 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -57,6 +58,7 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
 import static java.util.Collections.singletonList;
 import static java.util.Collections.singletonMap;
 import static java.util.concurrent.TimeUnit.SECONDS;
@@ -72,6 +74,9 @@ import static org.briarproject.bramble.api.sync.validation.MessageState.DELIVERE
 import static org.briarproject.bramble.api.sync.validation.MessageState.INVALID;
 import static org.briarproject.bramble.api.sync.validation.MessageState.PENDING;
 import static org.briarproject.bramble.api.sync.validation.MessageState.UNKNOWN;
+import static org.briarproject.bramble.crypto.CryptoTestUtils.getCryptoComponent;
+import static org.briarproject.bramble.db.DatabaseConstants.MAX_INLINE_MESSAGE_LENGTH;
+import static org.briarproject.bramble.db.DatabaseConstants.MESSAGE_FILE_DIRECTORY;
 import static org.briarproject.bramble.test.TestUtils.deleteTestDirectory;
 import static org.briarproject.bramble.test.TestUtils.getAgreementPrivateKey;
 import static org.briarproject.bramble.test.TestUtils.getAgreementPublicKey;
@@ -81,6 +86,7 @@ import static org.briarproject.bramble.test.TestUtils.getGroup;
 import static org.briarproject.bramble.test.TestUtils.getIdentity;
 import static org.briarproject.bramble.test.TestUtils.getMessage;
 import static org.briarproject.bramble.test.TestUtils.getPendingContact;
+import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
 import static org.briarproject.bramble.test.TestUtils.getRandomId;
 import static org.briarproject.bramble.test.TestUtils.getSecretKey;
 import static org.briarproject.bramble.test.TestUtils.getTestDirectory;
@@ -414,6 +420,191 @@ public abstract class JdbcDatabaseTest extends BrambleTestCase {
 		db.close();
 	}
 
+	@Test
+	public void testMessagesToAckOfferAndRequestForMultipleContacts()
+			throws Exception {
+		ContactId contactId1 = new ContactId(2);
+		Database<Connection> db = open(false);
+		Connection txn = db.startTransaction();
+
+		// Add two contacts and a group shared with both of them
+		db.addIdentity(txn, identity);
+		assertEquals(contactId,
+				db.addContact(txn, author, localAuthor.getId(), null, true));
+		assertEquals(contactId1, db.addContact(txn, getAuthor(),
+				localAuthor.getId(), null, true));
+		db.addGroup(txn, group);
+		db.addGroupVisibility(txn, contactId, groupId, true);
+		db.addGroupVisibility(txn, contactId1, groupId, true);
+
+		// Receive a message from the first contact
+		db.addMessage(txn, message, DELIVERED, true, false, contactId);
+
+		// Receive some offered messages from the second contact
+		MessageId offered = new MessageId(getRandomId());
+		MessageId offered1 = new MessageId(getRandomId());
+		db.addOfferedMessage(txn, contactId1, offered);
+		db.addOfferedMessage(txn, contactId1, offered1);
+
+		Collection<ContactId> contacts = asList(contactId, contactId1);
+
+		// The message should be acked to the first contact only
+		Map<ContactId, Collection<MessageId>> acks =
+				db.getMessagesToAck(txn, contacts, 1234);
+		assertEquals(singletonMap(contactId, singletonList(messageId)), acks);
+
+		// The message should be offered to the second contact only
+		Map<ContactId, Collection<MessageId>> offers =
+				db.getMessagesToOffer(txn, contacts, 1234, MAX_LATENCY);
+		assertEquals(singletonMap(contactId1, singletonList(messageId)),
+				offers);
+
+		// Both offered messages should be requested from the second contact
+		Map<ContactId, Collection<MessageId>> requests =
+				db.getMessagesToRequest(txn, contacts, 1234);
+		assertEquals(1, requests.size());
+		assertEquals(new HashSet<>(asList(offered, offered1)),
+				new HashSet<>(requests.get(contactId1)));
+
+		// The number of messages should be limited for each contact
+		requests = db.getMessagesToRequest(txn, contacts, 1);
+		assertEquals(1, requests.size());
+		assertEquals(1, requests.get(contactId1).size());
+
+		// Contacts that aren't queried shouldn't be returned
+		assertEquals(emptyMap(),
+				db.getMessagesToAck(txn, singletonList(contactId1), 1234));
+
+		db.commitTransaction(txn);
+		db.close();
+	}
+
+	@Test
+	public void testUnseenMessagesAndMessagesToOfferWithGroups()
+			throws Exception {
+		ContactId contactId1 = new ContactId(2);
+		Database<Connection> db = open(false);
+		Connection txn = db.startTransaction();
+
+		// Add two contacts and a group shared with both of them
+		db.addIdentity(txn, identity);
+		assertEquals(contactId,
+				db.addContact(txn, author, localAuthor.getId(), null, true));
+		assertEquals(contactId1, db.addContact(txn, getAuthor(),
+				localAuthor.getId(), null, true));
+		db.addGroup(txn, group);
+		db.addGroupVisibility(txn, contactId, groupId, true);
+		db.addGroupVisibility(txn, contactId1, groupId, true);
+
+		// Receive a message from the first contact and add a local message
+		Message message1 = getMessage(groupId);
+		MessageId messageId1 = message1.getId();
+		db.addMessage(txn, message, DELIVERED, true, false, contactId);
+		db.addMessage(txn, message1, DELIVERED, true, false, null);
+
+		// The first contact has only seen the message it sent
+		assertEquals(singletonMap(groupId, singletonList(messageId1)),
+				db.getUnseenMessages(txn, contactId));
+
+		// The second contact hasn't seen either message
+		Map<GroupId, Collection<MessageId>> unseen =
+				db.getUnseenMessages(txn, contactId1);
+		assertEquals(1, unseen.size());
+		assertEquals(new HashSet<>(asList(messageId, messageId1)),
+				new HashSet<>(unseen.get(groupId)));
+
+		// Both messages should be offered to the second contact
+		Map<MessageId, GroupId> offers = db.getMessagesToOfferWithGroups(txn,
+				contactId1, 1234, MAX_LATENCY);
+		assertEquals(2, offers.size());
+		assertEquals(groupId, offers.get(messageId));
+		assertEquals(groupId, offers.get(messageId1));
+
+		// The number of messages should be limited
+		assertEquals(1, db.getMessagesToOfferWithGroups(txn, contactId1, 1,
+				MAX_LATENCY).size());
+
+		// Once the second contact has seen a message it's no longer unseen
+		db.raiseSeenFlag(txn, contactId1, messageId);
+		assertEquals(singletonMap(groupId, singletonList(messageId1)),
+				db.getUnseenMessages(txn, contactId1));
+
+		// Messages that haven't been delivered aren't included
+		Message message2 = getMessage(groupId);
+		db.addMessage(txn, message2, PENDING, true, false, null);
+		assertEquals(singletonMap(groupId, singletonList(messageId1)),
+				db.getUnseenMessages(txn, contactId1));
+
+		// Messages in groups that are visible but not shared aren't included
+		Group group1 = getGroup(clientId, 123);
+		db.addGroup(txn, group1);
+		db.addGroupVisibility(txn, contactId1, group1.getId(), false);
+		db.addMessage(txn, getMessage(group1.getId()), DELIVERED, true, false,
+				null);
+		assertEquals(singletonMap(groupId, singletonList(messageId1)),
+				db.getUnseenMessages(txn, contactId1));
+
+		// Deleted messages aren't included
+		db.deleteMessage(txn, messageId1);
+		assertEquals(emptyMap(), db.getUnseenMessages(txn, contactId1));
+
+		db.commitTransaction(txn);
+		db.close();
+	}
+
+	@Test
+	public void testMessagesToReconcile() throws Exception {
+		Database<Connection> db = open(false);
+		Connection txn = db.startTransaction();
+
+		// Add a contact, a shared group, a shared message and an unshared
+		// message
+		db.addIdentity(txn, identity);
+		assertEquals(contactId,
+				db.addContact(txn, author, localAuthor.getId(), null, true));
+		db.addGroup(txn, group);
+		db.addGroupVisibility(txn, contactId, groupId, true);
+		db.addMessage(txn, message, DELIVERED, true, false, null);
+		Message message1 = getMessage(groupId);
+		MessageId messageId1 = message1.getId();
+		db.addMessage(txn, message1, DELIVERED, false, false, null);
+
+		// Only the shared message should be reconciled, and it's unseen
+		assertEquals(singletonMap(messageId, false),
+				db.getMessagesToReconcile(txn, contactId, groupId));
+
+		// Once the contact has seen the message it should be marked as seen
+		db.raiseSeenFlag(txn, contactId, messageId);
+		assertEquals(singletonMap(messageId, true),
+				db.getMessagesToReconcile(txn, contactId, groupId));
+
+		// Other groups shouldn't be reconciled
+		assertEquals(emptyMap(), db.getMessagesToReconcile(txn, contactId,
+				new GroupId(getRandomId())));
+
+		// Messages that haven't been delivered shouldn't be reconciled
+		db.addMessage(txn, getMessage(groupId), PENDING, true, false, null);
+		assertEquals(singletonMap(messageId, true),
+				db.getMessagesToReconcile(txn, contactId, groupId));
+
+		// Groups that are visible but not shared shouldn't be reconciled
+		Group group1 = getGroup(clientId, 123);
+		db.addGroup(txn, group1);
+		db.addGroupVisibility(txn, contactId, group1.getId(), false);
+		db.addMessage(txn, getMessage(group1.getId()), DELIVERED, true, false,
+				null);
+		assertEquals(emptyMap(), db.getMessagesToReconcile(txn, contactId,
+				group1.getId()));
+
+		// Deleted messages shouldn't be reconciled
+		db.deleteMessage(txn, messageId);
+		assertEquals(emptyMap(), db.getMessagesToReconcile(txn, contactId,
+				groupId));
+
+		db.commitTransaction(txn);
+		db.close();
+	}
+
 	@Test
 	public void testOutstandingMessageAcked() throws Exception {
 		Database<Connection> db = open(false);
@@ -2335,6 +2526,199 @@ public abstract class JdbcDatabaseTest extends BrambleTestCase {
 		db.close();
 	}
 
+	@Test
+	public void testLargeMessagesAreStoredInFiles() throws Exception {
+		Message small = getMessage(groupId, MAX_INLINE_MESSAGE_LENGTH / 2);
+		Message large = getMessage(groupId, MAX_INLINE_MESSAGE_LENGTH * 2);
+		MessageFileStore fileStore = getMessageFileStore();
+
+		Database<Connection> db = open(false, true);
+		Connection txn = db.startTransaction();
+
+		// Add a group and two messages
+		db.addGroup(txn, group);
+		db.addMessage(txn, small, DELIVERED, true, false, null);
+		db.addMessage(txn, large, DELIVERED, true, false, null);
+		db.commitTransaction(txn);
+
+		// Only the large message should have been stored in a file
+		assertFalse(fileStore.contains(small.getId()));
+		assertTrue(fileStore.contains(large.getId()));
+
+		// Both messages should be readable
+		txn = db.startTransaction();
+		assertArrayEquals(small.getBody(),
+				db.getMessage(txn, small.getId()).getBody());
+		assertArrayEquals(large.getBody(),
+				db.getMessage(txn, large.getId()).getBody());
+
+		// Deleting the large message should not delete its file until the
+		// transaction commits
+		db.deleteMessage(txn, large.getId());
+		assertTrue(fileStore.contains(large.getId()));
+		db.commitTransaction(txn);
+		assertFalse(fileStore.contains(large.getId()));
+
+		db.close();
+	}
+
+	@Test
+	public void testGetMessages() throws Exception {
+		// More messages than fit in one query, one of which is in a file
+		List<Message> messages = new ArrayList<>();
+		for (int i = 0; i < 150; i++) messages.add(getMessage(groupId));
+		messages.add(getMessage(groupId, MAX_INLINE_MESSAGE_LENGTH * 2));
+		List<MessageId> ids = new ArrayList<>();
+		for (Message m : messages) ids.add(m.getId());
+		// A message that isn't in the database
+		ids.add(new MessageId(getRandomId()));
+
+		Database<Connection> db = open(false, true);
+		Connection txn = db.startTransaction();
+
+		// Add a group and the messages
+		db.addGroup(txn, group);
+		for (Message m : messages)
+			db.addMessage(txn, m, DELIVERED, true, false, null);
+
+		// All the messages in the database should be returned
+		Map<MessageId, Message> loaded = db.getMessages(txn, ids);
+		assertEquals(messages.size(), loaded.size());
+		for (Message m : messages) {
+			Message l = loaded.get(m.getId());
+			assertEquals(m.getGroupId(), l.getGroupId());
+			assertEquals(m.getTimestamp(), l.getTimestamp());
+			assertArrayEquals(m.getBody(), l.getBody());
+		}
+
+		// If any of the messages has been deleted, an exception is thrown
+		db.deleteMessage(txn, messages.get(0).getId());
+		try {
+			db.getMessages(txn, ids);
+			fail();
+		} catch (MessageDeletedException expected) {
+			// Expected
+		}
+
+		db.commitTransaction(txn);
+		db.close();
+	}
+
+	@Test
+	public void testAbortingTransactionDeletesMessageFile()
+			throws Exception {
+		Message large = getMessage(groupId, MAX_INLINE_MESSAGE_LENGTH * 2);
+		MessageFileStore fileStore = getMessageFileStore();
+
+		Database<Connection> db = open(false, true);
+		Connection txn = db.startTransaction();
+		db.addGroup(txn, group);
+		db.commitTransaction(txn);
+
+		// Add a large message and abort the transaction
+		txn = db.startTransaction();
+		db.addMessage(txn, large, DELIVERED, true, false, null);
+		assertTrue(fileStore.contains(large.getId()));
+		db.abortTransaction(txn);
+
+		// The file should have been deleted
+		assertFalse(fileStore.contains(large.getId()));
+
+		// Add the message again and commit the transaction
+		txn = db.startTransaction();
+		db.addMessage(txn, large, DELIVERED, true, false, null);
+		db.commitTransaction(txn);
+
+		// Adding the message again should fail, but the file should not be
+		// deleted when the transaction aborts, as it's still referenced
+		txn = db.startTransaction();
+		try {
+			db.addMessage(txn, large, DELIVERED, true, false, null);
+			fail();
+		} catch (DbException expected) {
+			db.abortTransaction(txn);
+		}
+		assertTrue(fileStore.contains(large.getId()));
+
+		// Removing the group should delete the file
+		txn = db.startTransaction();
+		db.removeGroup(txn, groupId);
+		db.commitTransaction(txn);
+		assertFalse(fileStore.contains(large.getId()));
+
+		db.close();
+	}
+
+	@Test
+	public void testMessagesAreMovedIntoAndOutOfFileStore()
+			throws Exception {
+		Message large = getMessage(groupId, MAX_INLINE_MESSAGE_LENGTH * 2);
+		MessageFileStore fileStore = getMessageFileStore();
+
+		// Add a large message without the file store
+		Database<Connection> db = open(false, false);
+		Connection txn = db.startTransaction();
+		db.addGroup(txn, group);
+		db.addMessage(txn, large, DELIVERED, true, false, null);
+		db.commitTransaction(txn);
+		db.close();
+		assertFalse(fileStore.contains(large.getId()));
+
+		// Reopen the DB with the file store - the message should be moved
+		// into a file
+		db = open(true, true);
+		assertTrue(fileStore.contains(large.getId()));
+		txn = db.startTransaction();
+		assertArrayEquals(large.getBody(),
+				db.getMessage(txn, large.getId()).getBody());
+		db.commitTransaction(txn);
+		db.close();
+
+		// Reopen the DB without the file store - the message should be moved
+		// back into the DB
+		db = open(true, false);
+		assertFalse(fileStore.contains(large.getId()));
+		txn = db.startTransaction();
+		assertArrayEquals(large.getBody(),
+				db.getMessage(txn, large.getId()).getBody());
+		db.commitTransaction(txn);
+		db.close();
+	}
+
+	@Test
+	public void testUnreferencedMessageFilesAreDeletedIfDbIsDirty()
+			throws Exception {
+		Message large = getMessage(groupId, MAX_INLINE_MESSAGE_LENGTH * 2);
+		MessageId unreferenced = new MessageId(getRandomId());
+		MessageFileStore fileStore = getMessageFileStore();
+
+		Database<Connection> db = open(false, true);
+		Connection txn = db.startTransaction();
+		db.addGroup(txn, group);
+		db.addMessage(txn, large, DELIVERED, true, false, null);
+		db.commitTransaction(txn);
+		// Write a file that isn't referenced by the DB, as if a transaction
+		// hadn't committed before a crash
+		fileStore.write(unreferenced, getRandomBytes(123));
+
+		// Simulate a dirty shutdown, look at #testShutdownDirty for details
+		List<String> unloadedDrivers = unloadDrivers();
+		try {
+			db.close();
+			fail();
+		} catch (Exception e) {
+			// continue
+		}
+		reloadDrivers(unloadedDrivers);
+
+		// Reopen the DB - the unreferenced file should be deleted
+		db = open(true, true);
+		assertTrue(db.wasDirtyOnInitialisation());
+		assertTrue(fileStore.contains(large.getId()));
+		assertFalse(fileStore.contains(unreferenced));
+		db.close();
+	}
+
 	@Test
 	public void testSyncVersions() throws Exception {
 		Database<Connection> db = open(false);
@@ -2500,19 +2884,88 @@ public abstract class JdbcDatabaseTest extends BrambleTestCase {
 		assertEquals(NO_CLEANUP_DEADLINE, db.getNextCleanupDeadline(txn));
 	}
 
+	@Test
+	public void testGetMessagesToDeleteWithLimit() throws Exception {
+		long duration = 60_000;
+		long now = System.currentTimeMillis();
+		AtomicLong time = new AtomicLong(now);
+		Database<Connection> db =
+				open(false, new TestMessageFactory(), new SettableClock(time));
+		Connection txn = db.startTransaction();
+
+		// Add a group and three messages
+		db.addGroup(txn, group);
+		Message message1 = getMessage(groupId);
+		MessageId messageId1 = message1.getId();
+		Message message2 = getMessage(groupId);
+		MessageId messageId2 = message2.getId();
+		db.addMessage(txn, message, DELIVERED, false, false, null);
+		db.addMessage(txn, message1, DELIVERED, false, false, null);
+		db.addMessage(txn, message2, DELIVERED, false, false, null);
+
+		// Start the messages' cleanup timers at different times
+		for (MessageId m : asList(messageId, messageId1, messageId2)) {
+			db.setCleanupTimerDuration(txn, m, duration);
+			assertEquals(time.get() + duration, db.startCleanupTimer(txn, m));
+			time.addAndGet(1);
+		}
+
+		// When all the timers have expired, the messages that have been due
+		// for longest should be returned first
+		time.set(now + duration + 2);
+		assertEquals(singletonMap(groupId, singletonList(messageId)),
+				db.getMessagesToDelete(txn, 1));
+		assertEquals(singletonMap(groupId, asList(messageId, messageId1)),
+				db.getMessagesToDelete(txn, 2));
+		assertEquals(singletonMap(groupId,
+				asList(messageId, messageId1, messageId2)),
+				db.getMessagesToDelete(txn, 3));
+
+		// Stop the first two timers, ignoring a message that isn't in the DB
+		db.stopCleanupTimers(txn, asList(messageId, messageId1,
+				new MessageId(getRandomId())));
+
+		// Only the third message should be due for deletion
+		assertEquals(singletonMap(groupId, singletonList(messageId2)),
+				db.getMessagesToDelete(txn, 2));
+		assertEquals(now + duration + 2, db.getNextCleanupDeadline(txn));
+
+		db.commitTransaction(txn);
+		db.close();
+	}
+
 	private Database<Connection> open(boolean resume) throws Exception {
-		return open(resume, new TestMessageFactory(), new SystemClock());
+		return open(resume, false);
+	}
+
+	private Database<Connection> open(boolean resume,
+			boolean useMessageFileStore) throws Exception {
+		return open(resume, useMessageFileStore, new TestMessageFactory(),
+				new SystemClock());
 	}
 
 	private Database<Connection> open(boolean resume,
 			MessageFactory messageFactory, Clock clock) throws Exception {
+		return open(resume, false, messageFactory, clock);
+	}
+
+	private Database<Connection> open(boolean resume,
+			boolean useMessageFileStore, MessageFactory messageFactory,
+			Clock clock) throws Exception {
 		Database<Connection> db = createDatabase(
-				new TestDatabaseConfig(testDir), messageFactory, clock);
+				new TestDatabaseConfig(testDir, useMessageFileStore),
+				messageFactory, clock);
 		if (!resume) deleteTestDirectory(testDir);
 		db.open(key, null);
 		return db;
 	}
 
+	private MessageFileStore getMessageFileStore() {
+		File dbDir = new TestDatabaseConfig(testDir).getDatabaseDirectory();
+		return new MessageFileStore(new File(dbDir, MESSAGE_FILE_DIRECTORY),
+				getCryptoComponent(), key);
+	}
+
 	private TransportKeys createTransportKeys(long timePeriod, boolean active) {
 		SecretKey inPrevTagKey = getSecretKey();
 		SecretKey inPrevHeaderKey = getSecretKey();
@@ -0,0 +1,124 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.crypto.CryptoComponent;
+import org.briarproject.bramble.api.crypto.DecryptionException;
+import org.briarproject.bramble.api.crypto.SecretKey;
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.briarproject.bramble.crypto.CryptoTestUtils.getCryptoComponent;
+import static org.briarproject.bramble.test.TestUtils.deleteTestDirectory;
+import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
+import static org.briarproject.bramble.test.TestUtils.getRandomId;
+import static org.briarproject.bramble.test.TestUtils.getSecretKey;
+import static org.briarproject.bramble.test.TestUtils.getTestDirectory;
+import static org.briarproject.bramble.util.StringUtils.toHexString;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MessageFileStoreTest extends BrambleTestCase {
+
+	private final File testDir = getTestDirectory();
+	private final CryptoComponent crypto = getCryptoComponent();
+	private final SecretKey dbKey = getSecretKey();
+	private final MessageFileStore fileStore =
+			new MessageFileStore(testDir, crypto, dbKey);
+	private final MessageId messageId = new MessageId(getRandomId());
+	private final byte[] raw = getRandomBytes(1234);
+
+	@Before
+	public void setUp() {
+		assertTrue(testDir.mkdirs());
+	}
+
+	@After
+	public void tearDown() {
+		deleteTestDirectory(testDir);
+	}
+
+	@Test
+	public void testWriteReadAndDelete() throws Exception {
+		assertFalse(fileStore.contains(messageId));
+		fileStore.write(messageId, raw);
+		assertTrue(fileStore.contains(messageId));
+		assertArrayEquals(raw, fileStore.read(messageId));
+		fileStore.delete(messageId);
+		assertFalse(fileStore.contains(messageId));
+	}
+
+	@Test
+	public void testFileIsEncrypted() throws Exception {
+		fileStore.write(messageId, raw);
+		File f = getFile(messageId);
+		assertTrue(f.length() > raw.length);
+		// The file should not contain the raw message in the clear
+		byte[] contents = Files.readAllBytes(f.toPath());
+		String hex = toHexString(contents);
+		assertFalse(hex.contains(toHexString(raw)));
+	}
+
+	@Test(expected = IOException.class)
+	public void testReadWithWrongKeyThrowsException() throws Exception {
+		fileStore.write(messageId, raw);
+		new MessageFileStore(testDir, crypto, getSecretKey()).read(messageId);
+	}
+
+	@Test(expected = DecryptionException.class)
+	public void testFileIsNotEncryptedWithDatabaseKey() throws Exception {
+		fileStore.write(messageId, raw);
+		byte[] contents = Files.readAllBytes(getFile(messageId).toPath());
+		crypto.decryptWithKey(contents, dbKey);
+	}
+
+	@Test
+	public void testFileCannotBeSwappedForAnotherMessage() throws Exception {
+		MessageId messageId1 = new MessageId(getRandomId());
+		fileStore.write(messageId, raw);
+		fileStore.write(messageId1, getRandomBytes(1234));
+		// Replace the second message's file with the first message's file
+		File f = getFile(messageId), f1 = getFile(messageId1);
+		assertTrue(f1.delete());
+		assertTrue(f.renameTo(f1));
+		try {
+			fileStore.read(messageId1);
+			fail();
+		} catch (IOException expected) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testListsMessageIdsAndDeletesTemporaryFiles()
+			throws Exception {
+		MessageId messageId1 = new MessageId(getRandomId());
+		fileStore.write(messageId, raw);
+		fileStore.write(messageId1, raw);
+		// Leave a temporary file behind, as if a write didn't complete
+		File temp = new File(getFile(messageId).getPath() + ".tmp");
+		assertTrue(temp.createNewFile());
+
+		List<MessageId> ids = fileStore.getMessageIdsAndDeleteTemporaryFiles();
+		assertEquals(2, ids.size());
+		assertTrue(ids.containsAll(asList(messageId, messageId1)));
+		assertFalse(temp.exists());
+		assertTrue(fileStore.contains(messageId));
+	}
+
+	private File getFile(MessageId m) {
+		String hex = toHexString(m.getBytes());
+		return new File(new File(testDir, hex.substring(0, 2)),
+				hex.substring(2));
+	}
+}
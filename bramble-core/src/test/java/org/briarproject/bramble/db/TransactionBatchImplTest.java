@@ -0,0 +1,173 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.db.DbException;
+import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.api.db.TransactionBatch;
+import org.briarproject.bramble.api.event.Event;
+import org.briarproject.bramble.api.event.EventBus;
+import org.briarproject.bramble.api.lifecycle.ShutdownManager;
+import org.briarproject.bramble.test.BrambleMockTestCase;
+import org.jmock.Expectations;
+import org.jmock.Sequence;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class TransactionBatchImplTest extends BrambleMockTestCase {
+
+	@SuppressWarnings("unchecked")
+	private final Database<Object> database = context.mock(Database.class);
+	private final ShutdownManager shutdownManager =
+			context.mock(ShutdownManager.class);
+	private final EventBus eventBus = context.mock(EventBus.class);
+	private final Executor eventExecutor = context.mock(Executor.class);
+
+	private final Object txn = new Object();
+	private final Object txn1 = new Object();
+	private final Event event = new Event() {
+	};
+	private final Event event1 = new Event() {
+	};
+
+	private final DatabaseComponentImpl<Object> db =
+			new DatabaseComponentImpl<>(database, Object.class, eventBus,
+					eventExecutor, shutdownManager);
+
+	@Test
+	public void testTasksAreRunInTransactionsOfAtMostMaxTasks()
+			throws Exception {
+		List<Integer> run = new ArrayList<>();
+
+		expectCommittedTransaction(txn);
+		expectCommittedTransaction(txn1);
+
+		TransactionBatch batch = db.startBatch(2, Long.MAX_VALUE);
+		for (int i = 0; i < 3; i++) {
+			int task = i;
+			batch.add(0, t -> {
+				// Each task should be given the database transaction
+				assertSame(task < 2 ? txn : txn1, t.unbox());
+				run.add(task);
+			});
+		}
+		// The first two tasks should have been run
+		assertEquals(asList(0, 1), run);
+		// Closing the batch should run the third task
+		batch.close();
+		assertEquals(asList(0, 1, 2), run);
+	}
+
+	@Test
+	public void testTransactionIsCommittedWhenMaxBytesIsReached()
+			throws Exception {
+		List<Integer> run = new ArrayList<>();
+
+		expectCommittedTransaction(txn);
+
+		TransactionBatch batch = db.startBatch(Integer.MAX_VALUE, 100);
+		batch.add(50, t -> run.add(0));
+		assertEquals(0, run.size());
+		batch.add(50, t -> run.add(1));
+		assertEquals(asList(0, 1), run);
+		// There are no more tasks to run when the batch is closed
+		batch.close();
+	}
+
+	@Test
+	public void testEventsAreBroadcastWhenBatchIsClosed() throws Exception {
+		expectCommittedTransaction(txn);
+		expectCommittedTransaction(txn1);
+
+		TransactionBatch batch = db.startBatch(1, Long.MAX_VALUE);
+		batch.add(0, t -> t.attach(event));
+		batch.add(0, t -> t.attach(event1));
+		// No events should have been broadcast yet
+		context.assertIsSatisfied();
+
+		Sequence sequence = context.sequence("events");
+		context.checking(new Expectations() {{
+			oneOf(eventBus).broadcast(event);
+			inSequence(sequence);
+			oneOf(eventBus).broadcast(event1);
+			inSequence(sequence);
+		}});
+
+		batch.close();
+	}
+
+	@Test
+	public void testEventsFromCommittedTransactionsAreBroadcastIfFlushFails()
+			throws Exception {
+		expectCommittedTransaction(txn);
+		context.checking(new Expectations() {{
+			// The second transaction is aborted
+			oneOf(database).startTransaction();
+			will(returnValue(txn1));
+			oneOf(database).abortTransaction(txn1);
+			// Only the event from the first transaction is broadcast
+			oneOf(eventBus).broadcast(event);
+		}});
+
+		TransactionBatch batch = db.startBatch(1, Long.MAX_VALUE);
+		batch.add(0, t -> t.attach(event));
+		try {
+			batch.add(0, t -> {
+				t.attach(event1);
+				throw new DbException();
+			});
+			fail();
+		} catch (DbException expected) {
+			// Expected
+		}
+		batch.close();
+	}
+
+	@Test
+	public void testTransactionIsReleasedIfTaskFails() throws Exception {
+		context.checking(new Expectations() {{
+			oneOf(database).startTransaction();
+			will(returnValue(txn));
+			oneOf(database).abortTransaction(txn);
+			// The next transaction can take the lock
+			oneOf(database).startTransaction();
+			will(returnValue(txn1));
+			oneOf(database).abortTransaction(txn1);
+		}});
+
+		TransactionBatch batch = db.startBatch(1, Long.MAX_VALUE);
+		try {
+			batch.add(0, t -> {
+				throw new DbException();
+			});
+			fail();
+		} catch (DbException expected) {
+			// Expected
+		}
+		batch.close();
+
+		Transaction t = db.startTransaction(false);
+		db.endTransaction(t);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testCannotAddTasksAfterBatchIsClosed() throws Exception {
+		TransactionBatch batch = db.startBatch(1, Long.MAX_VALUE);
+		batch.close();
+		batch.add(0, t -> fail());
+	}
+
+	private void expectCommittedTransaction(Object txn) throws Exception {
+		context.checking(new Expectations() {{
+			oneOf(database).startTransaction();
+			will(returnValue(txn));
+			oneOf(database).commitTransaction(txn);
+		}});
+	}
+}
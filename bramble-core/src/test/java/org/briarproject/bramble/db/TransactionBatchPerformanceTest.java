@@ -0,0 +1,145 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.Metadata;
+import org.briarproject.bramble.api.db.TransactionBatch;
+import org.briarproject.bramble.api.event.EventBus;
+import org.briarproject.bramble.api.lifecycle.ShutdownManager;
+import org.briarproject.bramble.api.sync.Group;
+import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.system.SystemClock;
+import org.briarproject.bramble.test.BrambleMockTestCase;
+import org.briarproject.bramble.test.ImmediateExecutor;
+import org.briarproject.bramble.test.TestDatabaseConfig;
+import org.briarproject.bramble.test.TestMessageFactory;
+import org.jmock.Expectations;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.File;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.briarproject.bramble.crypto.CryptoTestUtils.getCryptoComponent;
+import static org.briarproject.bramble.test.TestUtils.deleteTestDirectory;
+import static org.briarproject.bramble.test.TestUtils.getClientId;
+import static org.briarproject.bramble.test.TestUtils.getGroup;
+import static org.briarproject.bramble.test.TestUtils.getMessage;
+import static org.briarproject.bramble.test.TestUtils.getSecretKey;
+import static org.briarproject.bramble.test.TestUtils.getTestDirectory;
+import static org.briarproject.bramble.util.LogUtils.now;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the rate at which messages can be stored with a separate
+ * transaction for each message (condition A) and with a
+ * {@link TransactionBatch} (condition B).
+ */
+@Ignore
+public class TransactionBatchPerformanceTest extends BrambleMockTestCase {
+
+	private static final int MESSAGES = 2000;
+	private static final int BODY_LENGTH = 1024;
+	private static final int MAX_TASKS = 100;
+	private static final long MAX_BYTES = 1024 * 1024;
+	private static final int ROUNDS = 5;
+
+	private final EventBus eventBus = context.mock(EventBus.class);
+	private final ShutdownManager shutdownManager =
+			context.mock(ShutdownManager.class);
+
+	private final File testDir = getTestDirectory();
+	private final Group group = getGroup(getClientId(), 123);
+
+	private DatabaseComponent db;
+
+	@Before
+	public void setUp() throws Exception {
+		assertTrue(testDir.mkdirs());
+		context.checking(new Expectations() {{
+			ignoring(eventBus);
+			ignoring(shutdownManager);
+		}});
+		Database<Connection> database = new H2Database(
+				new TestDatabaseConfig(testDir), new TestMessageFactory(),
+				new SystemClock(), getCryptoComponent());
+		db = new DatabaseComponentImpl<>(database, Connection.class, eventBus,
+				new ImmediateExecutor(), shutdownManager);
+		db.open(getSecretKey(), null);
+		db.transaction(false, txn -> db.addGroup(txn, group));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		db.close();
+		deleteTestDirectory(testDir);
+	}
+
+	@Test
+	public void testStoreMessages() throws Exception {
+		// Warm up
+		storeSeparately();
+		storeInBatches();
+		List<Long> a = new ArrayList<>(), b = new ArrayList<>();
+		for (int i = 0; i < ROUNDS; i++) {
+			a.add(storeSeparately());
+			b.add(storeInBatches());
+		}
+		System.out.println(String.format(
+				"%,d messages: separate transactions %,d messages/s, "
+						+ "batches of %d %,d messages/s",
+				MESSAGES, rate(median(a)), MAX_TASKS, rate(median(b))));
+	}
+
+	/**
+	 * Stores the messages with a separate transaction for each message and
+	 * returns the time taken in milliseconds.
+	 */
+	private long storeSeparately() throws Exception {
+		List<Message> messages = createMessages();
+		long start = now();
+		for (Message m : messages) {
+			db.transaction(false, txn ->
+					db.addLocalMessage(txn, m, new Metadata(), true, false));
+		}
+		return now() - start;
+	}
+
+	/**
+	 * Stores the messages with a {@link TransactionBatch} and returns the
+	 * time taken in milliseconds.
+	 */
+	private long storeInBatches() throws Exception {
+		List<Message> messages = createMessages();
+		long start = now();
+		try (TransactionBatch batch = db.startBatch(MAX_TASKS, MAX_BYTES)) {
+			for (Message m : messages) {
+				batch.add(m.getRawLength(), txn ->
+						db.addLocalMessage(txn, m, new Metadata(), true,
+								false));
+			}
+		}
+		return now() - start;
+	}
+
+	private List<Message> createMessages() {
+		List<Message> messages = new ArrayList<>(MESSAGES);
+		for (int i = 0; i < MESSAGES; i++) {
+			messages.add(getMessage(group.getId(), BODY_LENGTH));
+		}
+		return messages;
+	}
+
+	private long rate(long durationMs) {
+		return MESSAGES * 1000L / Math.max(1, durationMs);
+	}
+
+	private long median(List<Long> samples) {
+		Collections.sort(samples);
+		return samples.get(samples.size() / 2);
+	}
+}
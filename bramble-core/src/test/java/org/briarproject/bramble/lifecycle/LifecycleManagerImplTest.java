@@ -6,18 +6,31 @@ import org.briarproject.bramble.api.db.Transaction;
 import org.briarproject.bramble.api.event.EventBus;
 import org.briarproject.bramble.api.lifecycle.LifecycleManager.OpenDatabaseHook;
 import org.briarproject.bramble.api.lifecycle.Service;
+import org.briarproject.bramble.api.lifecycle.ServiceException;
 import org.briarproject.bramble.api.lifecycle.event.LifecycleEvent;
+import org.briarproject.bramble.api.lifecycle.event.StartupTimingsEvent;
 import org.briarproject.bramble.api.system.Clock;
 import org.briarproject.bramble.test.BrambleMockTestCase;
 import org.briarproject.bramble.test.DbExpectations;
 import org.jmock.Expectations;
 import org.junit.Test;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.Executors.defaultThreadFactory;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.briarproject.bramble.api.lifecycle.LifecycleManager.LifecycleState.RUNNING;
 import static org.briarproject.bramble.api.lifecycle.LifecycleManager.LifecycleState.STARTING;
+import static org.briarproject.bramble.api.lifecycle.LifecycleManager.LifecycleState.STARTING_SERVICES;
 import static org.briarproject.bramble.api.lifecycle.LifecycleManager.LifecycleState.STOPPED;
 import static org.briarproject.bramble.api.lifecycle.LifecycleManager.StartResult.ALREADY_RUNNING;
 import static org.briarproject.bramble.api.lifecycle.LifecycleManager.StartResult.CLOCK_ERROR;
+import static org.briarproject.bramble.api.lifecycle.LifecycleManager.StartResult.SERVICE_ERROR;
 import static org.briarproject.bramble.api.lifecycle.LifecycleManager.StartResult.SUCCESS;
 import static org.briarproject.bramble.api.system.Clock.MAX_REASONABLE_TIME_MS;
 import static org.briarproject.bramble.api.system.Clock.MIN_REASONABLE_TIME_MS;
@@ -31,11 +44,16 @@ public class LifecycleManagerImplTest extends BrambleMockTestCase {
 	private final Clock clock = context.mock(Clock.class);
 	private final OpenDatabaseHook hook = context.mock(OpenDatabaseHook.class);
 	private final Service service = context.mock(Service.class);
+	private final Service service1 =
+			context.mock(Service.class, "service1");
+	private final Service service2 =
+			context.mock(Service.class, "service2");
 
 	private final SecretKey dbKey = getSecretKey();
 
 	private final LifecycleManagerImpl lifecycleManager =
-			new LifecycleManagerImpl(db, eventBus, clock);
+			new LifecycleManagerImpl(db, eventBus, clock,
+					defaultThreadFactory());
 
 	@Test
 	public void testOpenDatabaseHooksAreCalledAtStartup() throws Exception {
@@ -51,6 +69,7 @@ public class LifecycleManagerImplTest extends BrambleMockTestCase {
 			oneOf(db).removeTemporaryMessages(txn);
 			oneOf(hook).onDatabaseOpened(txn);
 			allowing(eventBus).broadcast(with(any(LifecycleEvent.class)));
+			oneOf(eventBus).broadcast(with(any(StartupTimingsEvent.class)));
 		}});
 
 		lifecycleManager.registerOpenDatabaseHook(hook);
@@ -73,6 +92,7 @@ public class LifecycleManagerImplTest extends BrambleMockTestCase {
 			oneOf(db).removeTemporaryMessages(txn);
 			oneOf(service).startService();
 			allowing(eventBus).broadcast(with(any(LifecycleEvent.class)));
+			oneOf(eventBus).broadcast(with(any(StartupTimingsEvent.class)));
 		}});
 
 		lifecycleManager.registerService(service);
@@ -91,6 +111,158 @@ public class LifecycleManagerImplTest extends BrambleMockTestCase {
 		assertEquals(STOPPED, lifecycleManager.getLifecycleState());
 	}
 
+	@Test
+	public void testHookWithSeparateTransactionIsCalledAfterSharedHooks()
+			throws Exception {
+		long now = System.currentTimeMillis();
+		Transaction txn = new Transaction(null, false);
+		Transaction txn1 = new Transaction(null, false);
+		OpenDatabaseHook separateHook =
+				context.mock(OpenDatabaseHook.class, "separateHook");
+
+		context.checking(new DbExpectations() {{
+			oneOf(clock).currentTimeMillis();
+			will(returnValue(now));
+			oneOf(db).open(dbKey, lifecycleManager);
+			will(returnValue(false));
+			oneOf(db).transaction(with(false), withDbRunnable(txn));
+			oneOf(db).removeTemporaryMessages(txn);
+			oneOf(hook).onDatabaseOpened(txn);
+			oneOf(db).transaction(with(false), withDbRunnable(txn1));
+			oneOf(separateHook).onDatabaseOpened(txn1);
+			allowing(eventBus).broadcast(with(any(LifecycleEvent.class)));
+			oneOf(eventBus).broadcast(with(any(StartupTimingsEvent.class)));
+		}});
+
+		// Register the separate hook first - it should still be called last
+		lifecycleManager.registerOpenDatabaseHook(separateHook, true);
+		lifecycleManager.registerOpenDatabaseHook(hook);
+
+		assertEquals(SUCCESS, lifecycleManager.startServices(dbKey));
+		assertEquals(RUNNING, lifecycleManager.getLifecycleState());
+	}
+
+	@Test
+	public void testIndependentServicesAreStartedConcurrently()
+			throws Exception {
+		long now = System.currentTimeMillis();
+		Transaction txn = new Transaction(null, false);
+		// Each service waits for the other to start, so startup can only
+		// succeed if the services are started concurrently
+		CountDownLatch latch = new CountDownLatch(2);
+		Service first = new LatchService(latch);
+		Service second = new LatchService(latch);
+
+		context.checking(new DbExpectations() {{
+			oneOf(clock).currentTimeMillis();
+			will(returnValue(now));
+			oneOf(db).open(dbKey, lifecycleManager);
+			will(returnValue(false));
+			oneOf(db).transaction(with(false), withDbRunnable(txn));
+			oneOf(db).removeTemporaryMessages(txn);
+			allowing(eventBus).broadcast(with(any(LifecycleEvent.class)));
+			oneOf(eventBus).broadcast(with(any(StartupTimingsEvent.class)));
+		}});
+
+		lifecycleManager.registerService(first, emptyList());
+		lifecycleManager.registerService(second, emptyList());
+
+		assertEquals(SUCCESS, lifecycleManager.startServices(dbKey));
+		assertEquals(RUNNING, lifecycleManager.getLifecycleState());
+	}
+
+	@Test
+	public void testServiceWithoutDependenciesDoesNotDelayLaterServices()
+			throws Exception {
+		long now = System.currentTimeMillis();
+		Transaction txn = new Transaction(null, false);
+		// The service without dependencies waits for the first service to
+		// start, which waits for the second service to start, so startup
+		// can only succeed if the second service doesn't wait for the
+		// service without dependencies
+		CountDownLatch latch = new CountDownLatch(2);
+		Service first = new LatchService(latch);
+		Service second = new LatchService(latch);
+
+		context.checking(new DbExpectations() {{
+			oneOf(clock).currentTimeMillis();
+			will(returnValue(now));
+			oneOf(db).open(dbKey, lifecycleManager);
+			will(returnValue(false));
+			oneOf(db).transaction(with(false), withDbRunnable(txn));
+			oneOf(db).removeTemporaryMessages(txn);
+			oneOf(service).startService();
+			allowing(eventBus).broadcast(with(any(LifecycleEvent.class)));
+			oneOf(eventBus).broadcast(with(any(StartupTimingsEvent.class)));
+		}});
+
+		lifecycleManager.registerService(first, emptyList());
+		lifecycleManager.registerService(service);
+		lifecycleManager.registerService(second, emptyList());
+
+		assertEquals(SUCCESS, lifecycleManager.startServices(dbKey));
+		assertEquals(RUNNING, lifecycleManager.getLifecycleState());
+	}
+
+	@Test
+	public void testServiceIsStartedAfterItsDependencies() throws Exception {
+		long now = System.currentTimeMillis();
+		Transaction txn = new Transaction(null, false);
+		List<Service> started = new CopyOnWriteArrayList<>();
+		Service dependency = new RecordingService(started, 100);
+		Service dependent = new RecordingService(started, 0);
+
+		context.checking(new DbExpectations() {{
+			oneOf(clock).currentTimeMillis();
+			will(returnValue(now));
+			oneOf(db).open(dbKey, lifecycleManager);
+			will(returnValue(false));
+			oneOf(db).transaction(with(false), withDbRunnable(txn));
+			oneOf(db).removeTemporaryMessages(txn);
+			allowing(eventBus).broadcast(with(any(LifecycleEvent.class)));
+			oneOf(eventBus).broadcast(with(any(StartupTimingsEvent.class)));
+		}});
+
+		lifecycleManager.registerService(dependency, emptyList());
+		lifecycleManager.registerService(dependent,
+				singletonList(dependency));
+
+		assertEquals(SUCCESS, lifecycleManager.startServices(dbKey));
+		assertEquals(RUNNING, lifecycleManager.getLifecycleState());
+		assertEquals(asList(dependency, dependent), started);
+	}
+
+	@Test
+	public void testDependentServiceIsNotStartedIfDependencyFails()
+			throws Exception {
+		long now = System.currentTimeMillis();
+		Transaction txn = new Transaction(null, false);
+
+		context.checking(new DbExpectations() {{
+			oneOf(clock).currentTimeMillis();
+			will(returnValue(now));
+			oneOf(db).open(dbKey, lifecycleManager);
+			will(returnValue(false));
+			oneOf(db).transaction(with(false), withDbRunnable(txn));
+			oneOf(db).removeTemporaryMessages(txn);
+			oneOf(service1).startService();
+			will(throwException(new ServiceException()));
+			never(service2).startService();
+			allowing(eventBus).broadcast(with(any(LifecycleEvent.class)));
+		}});
+
+		lifecycleManager.registerService(service1, emptyList());
+		lifecycleManager.registerService(service2, singletonList(service1));
+
+		assertEquals(SERVICE_ERROR, lifecycleManager.startServices(dbKey));
+		assertEquals(STARTING_SERVICES, lifecycleManager.getLifecycleState());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCannotRegisterServiceWithUnregisteredDependency() {
+		lifecycleManager.registerService(service2, singletonList(service1));
+	}
+
 	@Test
 	public void testStartupFailsIfClockIsUnreasonablyBehind() {
 
@@ -128,6 +300,7 @@ public class LifecycleManagerImplTest extends BrambleMockTestCase {
 			oneOf(db).transaction(with(false), withDbRunnable(txn));
 			oneOf(db).removeTemporaryMessages(txn);
 			allowing(eventBus).broadcast(with(any(LifecycleEvent.class)));
+			oneOf(eventBus).broadcast(with(any(StartupTimingsEvent.class)));
 		}});
 
 		assertEquals(SUCCESS, lifecycleManager.startServices(dbKey));
@@ -153,6 +326,7 @@ public class LifecycleManagerImplTest extends BrambleMockTestCase {
 			oneOf(db).transaction(with(false), withDbRunnable(txn));
 			oneOf(db).removeTemporaryMessages(txn);
 			allowing(eventBus).broadcast(with(any(LifecycleEvent.class)));
+			oneOf(eventBus).broadcast(with(any(StartupTimingsEvent.class)));
 		}});
 
 		assertEquals(SUCCESS, lifecycleManager.startServices(dbKey));
@@ -173,4 +347,52 @@ public class LifecycleManagerImplTest extends BrambleMockTestCase {
 		lifecycleManager.stopServices();
 		assertEquals(STOPPED, lifecycleManager.getLifecycleState());
 	}
+
+	private static class LatchService implements Service {
+
+		private final CountDownLatch latch;
+
+		private LatchService(CountDownLatch latch) {
+			this.latch = latch;
+		}
+
+		@Override
+		public void startService() throws ServiceException {
+			latch.countDown();
+			try {
+				if (!latch.await(10, SECONDS)) throw new ServiceException();
+			} catch (InterruptedException e) {
+				throw new ServiceException(e);
+			}
+		}
+
+		@Override
+		public void stopService() {
+		}
+	}
+
+	private static class RecordingService implements Service {
+
+		private final List<Service> started;
+		private final long delay;
+
+		private RecordingService(List<Service> started, long delay) {
+			this.started = started;
+			this.delay = delay;
+		}
+
+		@Override
+		public void startService() throws ServiceException {
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				throw new ServiceException(e);
+			}
+			started.add(this);
+		}
+
+		@Override
+		public void stopService() {
+		}
+	}
 }
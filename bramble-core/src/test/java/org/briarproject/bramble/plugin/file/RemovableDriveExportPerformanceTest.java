@@ -0,0 +1,180 @@
+package org.briarproject.bramble.plugin.file;
+
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.contact.ContactManager;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.Metadata;
+import org.briarproject.bramble.api.identity.Identity;
+import org.briarproject.bramble.api.identity.IdentityManager;
+import org.briarproject.bramble.api.lifecycle.LifecycleManager;
+import org.briarproject.bramble.api.plugin.file.RemovableDriveManager;
+import org.briarproject.bramble.api.plugin.file.RemovableDriveTask;
+import org.briarproject.bramble.api.properties.TransportProperties;
+import org.briarproject.bramble.api.sync.Group;
+import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageFactory;
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.briarproject.bramble.test.TestDatabaseConfigModule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.briarproject.bramble.api.plugin.file.FileConstants.PROP_PATH;
+import static org.briarproject.bramble.api.sync.Group.Visibility.SHARED;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_GROUP_DESCRIPTOR_LENGTH;
+import static org.briarproject.bramble.test.TestUtils.deleteTestDirectory;
+import static org.briarproject.bramble.test.TestUtils.getAuthor;
+import static org.briarproject.bramble.test.TestUtils.getClientId;
+import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
+import static org.briarproject.bramble.test.TestUtils.getSecretKey;
+import static org.briarproject.bramble.test.TestUtils.getTestDirectory;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the time taken to export a group of messages shared with 20
+ * contacts to a removable drive, with a separate writer task for each
+ * contact (condition A) and with a single multi-contact writer task
+ * (condition B).
+ */
+@Ignore
+public class RemovableDriveExportPerformanceTest extends BrambleTestCase {
+
+	private static final int CONTACTS = 20;
+	private static final int MESSAGES = 500;
+	private static final int BODY_LENGTH = 4 * 1024;
+	private static final int ROUNDS = 5;
+	private static final int TIMEOUT_MS = 60_000;
+
+	private final File testDir = getTestDirectory();
+
+	private RemovableDriveIntegrationTestComponent component;
+	private final List<ContactId> contactIds = new ArrayList<>(CONTACTS);
+
+	@Before
+	public void setUp() throws Exception {
+		assertTrue(testDir.mkdirs());
+		component = DaggerRemovableDriveIntegrationTestComponent.builder()
+				.testDatabaseConfigModule(new TestDatabaseConfigModule(
+						new File(testDir, "db"))).build();
+		RemovableDriveIntegrationTestComponent.Helper
+				.injectEagerSingletons(component);
+		DatabaseComponent db = component.getDatabaseComponent();
+		// Add an identity and start the lifecycle manager
+		IdentityManager identityManager = component.getIdentityManager();
+		Identity identity = identityManager.createIdentity("Alice");
+		identityManager.registerIdentity(identity);
+		LifecycleManager lifecycleManager = component.getLifecycleManager();
+		lifecycleManager.startServices(getSecretKey());
+		lifecycleManager.waitForStartup();
+		// Add the contacts and share a group of messages with them
+		ContactManager contactManager = component.getContactManager();
+		for (int i = 0; i < CONTACTS; i++) {
+			contactIds.add(contactManager.addContact(getAuthor(),
+					identity.getId(), getSecretKey(),
+					System.currentTimeMillis(), true, true, true));
+		}
+		Group group = component.getGroupFactory().createGroup(getClientId(),
+				1, new byte[MAX_GROUP_DESCRIPTOR_LENGTH]);
+		MessageFactory messageFactory = component.getMessageFactory();
+		db.transaction(false, txn -> {
+			db.addGroup(txn, group);
+			for (ContactId c : contactIds)
+				db.setGroupVisibility(txn, c, group.getId(), SHARED);
+			for (int i = 0; i < MESSAGES; i++) {
+				Message m = messageFactory.createMessage(group.getId(),
+						System.currentTimeMillis(),
+						getRandomBytes(BODY_LENGTH));
+				db.addLocalMessage(txn, m, new Metadata(), true, false);
+			}
+		});
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		LifecycleManager lifecycleManager = component.getLifecycleManager();
+		lifecycleManager.stopServices();
+		lifecycleManager.waitForShutdown();
+		deleteTestDirectory(testDir);
+	}
+
+	@Test
+	public void testExportToTwentyContacts() throws Exception {
+		// Warm up
+		exportSeparately();
+		exportTogether();
+		List<Long> a = new ArrayList<>(), b = new ArrayList<>();
+		for (int i = 0; i < ROUNDS; i++) {
+			a.add(exportSeparately());
+			b.add(exportTogether());
+		}
+		System.out.println(String.format(
+				"%,d messages to %d contacts: separate tasks %,d ms, "
+						+ "single task %,d ms",
+				MESSAGES, CONTACTS, median(a), median(b)));
+	}
+
+	/**
+	 * Exports the messages with a separate writer task for each contact and
+	 * returns the total time taken in milliseconds.
+	 */
+	private long exportSeparately() throws Exception {
+		RemovableDriveManager manager = component.getRemovableDriveManager();
+		long start = System.currentTimeMillis();
+		for (ContactId c : contactIds) {
+			awaitSuccess(manager.startWriterTask(c, createProperties()));
+		}
+		long duration = System.currentTimeMillis() - start;
+		deleteStreams();
+		return duration;
+	}
+
+	/**
+	 * Exports the messages with a single writer task for all the contacts
+	 * and returns the time taken in milliseconds.
+	 */
+	private long exportTogether() throws Exception {
+		RemovableDriveManager manager = component.getRemovableDriveManager();
+		Map<ContactId, TransportProperties> properties = new HashMap<>();
+		for (ContactId c : contactIds) properties.put(c, createProperties());
+		long start = System.currentTimeMillis();
+		awaitSuccess(manager.startWriterTask(properties));
+		long duration = System.currentTimeMillis() - start;
+		deleteStreams();
+		return duration;
+	}
+
+	private TransportProperties createProperties() throws Exception {
+		File file = File.createTempFile("sync", ".tmp", testDir);
+		TransportProperties p = new TransportProperties();
+		p.put(PROP_PATH, file.getAbsolutePath());
+		return p;
+	}
+
+	private void awaitSuccess(RemovableDriveTask task) throws Exception {
+		CountDownLatch finished = new CountDownLatch(1);
+		task.addObserver(state -> {
+			if (state.isFinished() && state.isSuccess()) finished.countDown();
+		});
+		assertTrue(finished.await(TIMEOUT_MS, MILLISECONDS));
+	}
+
+	private void deleteStreams() {
+		File[] files = testDir.listFiles((dir, name) -> name.endsWith(".tmp"));
+		if (files != null) for (File f : files) assertTrue(f.delete());
+	}
+
+	private long median(List<Long> samples) {
+		Collections.sort(samples);
+		return samples.get(samples.size() / 2);
+	}
+}
@@ -20,14 +20,21 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.File;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import static java.util.Arrays.asList;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.briarproject.bramble.api.plugin.file.FileConstants.PROP_PATH;
 import static org.briarproject.bramble.api.sync.validation.MessageState.DELIVERED;
 import static org.briarproject.bramble.test.TestUtils.deleteTestDirectory;
+import static org.briarproject.bramble.test.TestUtils.getAuthor;
 import static org.briarproject.bramble.test.TestUtils.getSecretKey;
 import static org.briarproject.bramble.test.TestUtils.getTestDirectory;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 public class RemovableDriveIntegrationTest extends BrambleTestCase {
@@ -75,6 +82,31 @@ public class RemovableDriveIntegrationTest extends BrambleTestCase {
 		read(alice, write(bob, aliceId), 2);
 	}
 
+	@Test
+	public void testWriteToSeveralContactsAndRead() throws Exception {
+		// Create the identities
+		Identity aliceIdentity =
+				alice.getIdentityManager().createIdentity("Alice");
+		Identity bobIdentity = bob.getIdentityManager().createIdentity("Bob");
+		// Set up the devices and get the contact IDs
+		ContactId bobId = setUp(alice, aliceIdentity,
+				bobIdentity.getLocalAuthor(), true);
+		ContactId aliceId = setUp(bob, bobIdentity,
+				aliceIdentity.getLocalAuthor(), false);
+		// Alice has another contact who never reads their stream
+		ContactId carolId = alice.getContactManager().addContact(getAuthor(),
+				aliceIdentity.getId(), getSecretKey(), timestamp, true, true,
+				true);
+		// Sync Alice's client versions and transport properties, writing a
+		// stream for each of her contacts
+		Map<ContactId, File> files = writeToSeveralContacts(alice,
+				asList(bobId, carolId));
+		assertEquals(2, files.size());
+		read(bob, files.get(bobId), 2);
+		// Sync Bob's client versions and transport properties
+		read(alice, write(bob, aliceId), 2);
+	}
+
 	private ContactId setUp(RemovableDriveIntegrationTestComponent device,
 			Identity local, Author remote, boolean alice) throws Exception {
 		// Add an identity for the user
@@ -132,6 +164,36 @@ public class RemovableDriveIntegrationTest extends BrambleTestCase {
 		return file;
 	}
 
+	private Map<ContactId, File> writeToSeveralContacts(
+			RemovableDriveIntegrationTestComponent device,
+			Collection<ContactId> contactIds) throws Exception {
+		// Write an outgoing stream to a file for each contact
+		Map<ContactId, File> files = new HashMap<>();
+		Map<ContactId, TransportProperties> properties = new HashMap<>();
+		for (ContactId c : contactIds) {
+			File file = File.createTempFile("sync", ".tmp", testDir);
+			TransportProperties p = new TransportProperties();
+			p.put(PROP_PATH, file.getAbsolutePath());
+			files.put(c, file);
+			properties.put(c, p);
+		}
+		RemovableDriveTask writer = device.getRemovableDriveManager()
+				.startWriterTask(properties);
+		CountDownLatch disposedLatch = new CountDownLatch(1);
+		AtomicBoolean success = new AtomicBoolean(false);
+		writer.addObserver(state -> {
+			if (state.isFinished()) {
+				success.set(state.isSuccess());
+				disposedLatch.countDown();
+			}
+		});
+		// Wait for the writer to be disposed
+		assertTrue(disposedLatch.await(TIMEOUT_MS, MILLISECONDS));
+		assertTrue(success.get());
+		// Return the files containing the streams
+		return files;
+	}
+
 	private void tearDown(RemovableDriveIntegrationTestComponent device)
 			throws Exception {
 		// Stop the lifecycle manager
@@ -3,10 +3,13 @@ package org.briarproject.bramble.plugin.file;
 import org.briarproject.bramble.BrambleCoreEagerSingletons;
 import org.briarproject.bramble.BrambleCoreModule;
 import org.briarproject.bramble.api.contact.ContactManager;
+import org.briarproject.bramble.api.db.DatabaseComponent;
 import org.briarproject.bramble.api.event.EventBus;
 import org.briarproject.bramble.api.identity.IdentityManager;
 import org.briarproject.bramble.api.lifecycle.LifecycleManager;
 import org.briarproject.bramble.api.plugin.file.RemovableDriveManager;
+import org.briarproject.bramble.api.sync.GroupFactory;
+import org.briarproject.bramble.api.sync.MessageFactory;
 import org.briarproject.bramble.battery.DefaultBatteryManagerModule;
 import org.briarproject.bramble.event.DefaultEventExecutorModule;
 import org.briarproject.bramble.mailbox.ModularMailboxModule;
@@ -47,12 +50,18 @@ interface RemovableDriveIntegrationTestComponent
 
 	ContactManager getContactManager();
 
+	DatabaseComponent getDatabaseComponent();
+
 	EventBus getEventBus();
 
+	GroupFactory getGroupFactory();
+
 	IdentityManager getIdentityManager();
 
 	LifecycleManager getLifecycleManager();
 
+	MessageFactory getMessageFactory();
+
 	RemovableDriveManager getRemovableDriveManager();
 
 	class Helper {
@@ -0,0 +1,178 @@
+package org.briarproject.bramble.plugin.tcp;
+
+import org.briarproject.bramble.api.event.EventBus;
+import org.briarproject.bramble.api.lifecycle.IoExecutor;
+import org.briarproject.bramble.api.plugin.Backoff;
+import org.briarproject.bramble.api.plugin.BackoffFactory;
+import org.briarproject.bramble.api.plugin.PluginCallback;
+import org.briarproject.bramble.api.plugin.TransportId;
+import org.briarproject.bramble.api.plugin.duplex.DuplexPlugin;
+import org.briarproject.bramble.api.plugin.duplex.DuplexPluginFactory;
+import org.briarproject.bramble.api.system.WakefulIoExecutor;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.InterfaceAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.briarproject.bramble.api.plugin.LanTcpConstants.ID;
+
+/**
+ * Creates {@link LanTcpPlugin LAN plugins} that listen on the IPv4 loopback
+ * address, so several instances of the app in the same process can connect
+ * to each other without a network. The factory counts the bytes read and
+ * written by the sockets its plugins create for outgoing connections.
+ */
+@Singleton
+@ThreadSafe
+@NotNullByDefault
+public class LoopbackTcpPluginFactory implements DuplexPluginFactory {
+
+	private static final int MAX_LATENCY = 30_000; // 30 seconds
+	private static final int MAX_IDLE_TIME = 30_000; // 30 seconds
+	private static final int CONNECTION_TIMEOUT = 3_000; // 3 seconds
+	private static final int MIN_POLLING_INTERVAL = 60_000; // 1 minute
+	private static final int MAX_POLLING_INTERVAL = 600_000; // 10 mins
+	private static final double BACKOFF_BASE = 1.2;
+
+	private final Executor ioExecutor, wakefulIoExecutor;
+	private final EventBus eventBus;
+	private final BackoffFactory backoffFactory;
+	private final AtomicLong bytesRead = new AtomicLong();
+	private final AtomicLong bytesWritten = new AtomicLong();
+
+	@Inject
+	public LoopbackTcpPluginFactory(@IoExecutor Executor ioExecutor,
+			@WakefulIoExecutor Executor wakefulIoExecutor,
+			EventBus eventBus,
+			BackoffFactory backoffFactory) {
+		this.ioExecutor = ioExecutor;
+		this.wakefulIoExecutor = wakefulIoExecutor;
+		this.eventBus = eventBus;
+		this.backoffFactory = backoffFactory;
+	}
+
+	@Override
+	public TransportId getId() {
+		return ID;
+	}
+
+	@Override
+	public long getMaxLatency() {
+		return MAX_LATENCY;
+	}
+
+	@Override
+	public DuplexPlugin createPlugin(PluginCallback callback) {
+		Backoff backoff = backoffFactory.createBackoff(MIN_POLLING_INTERVAL,
+				MAX_POLLING_INTERVAL, BACKOFF_BASE);
+		LanTcpPlugin plugin = new LanTcpPlugin(ioExecutor, wakefulIoExecutor,
+				backoff, callback, MAX_LATENCY, MAX_IDLE_TIME,
+				CONNECTION_TIMEOUT) {
+
+			@Override
+			protected List<InetAddress> getUsableLocalInetAddresses(
+					boolean ipv4) {
+				if (!ipv4) return emptyList();
+				try {
+					return singletonList(InetAddress.getByAddress(
+							new byte[] {127, 0, 0, 1}));
+				} catch (UnknownHostException e) {
+					throw new AssertionError(e);
+				}
+			}
+
+			@Override
+			protected boolean isConnectable(InterfaceAddress local,
+					InetSocketAddress remote) {
+				return remote.getPort() != 0 &&
+						remote.getAddress().isLoopbackAddress();
+			}
+
+			@Override
+			protected boolean canConnectToOwnAddress() {
+				return true;
+			}
+
+			@Override
+			protected Socket createSocket() {
+				return new CountingSocket();
+			}
+		};
+		eventBus.addListener(plugin);
+		return plugin;
+	}
+
+	/**
+	 * Returns the number of bytes read from outgoing connections.
+	 */
+	public long getBytesRead() {
+		return bytesRead.get();
+	}
+
+	/**
+	 * Returns the number of bytes written to outgoing connections.
+	 */
+	public long getBytesWritten() {
+		return bytesWritten.get();
+	}
+
+	private class CountingSocket extends Socket {
+
+		@Override
+		public InputStream getInputStream() throws IOException {
+			return new FilterInputStream(super.getInputStream()) {
+
+				@Override
+				public int read() throws IOException {
+					int b = super.read();
+					if (b != -1) bytesRead.incrementAndGet();
+					return b;
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len)
+						throws IOException {
+					int read = super.read(b, off, len);
+					if (read > 0) bytesRead.addAndGet(read);
+					return read;
+				}
+			};
+		}
+
+		@Override
+		public OutputStream getOutputStream() throws IOException {
+			return new FilterOutputStream(super.getOutputStream()) {
+
+				@Override
+				public void write(int b) throws IOException {
+					out.write(b);
+					bytesWritten.incrementAndGet();
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len)
+						throws IOException {
+					out.write(b, off, len);
+					bytesWritten.addAndGet(len);
+				}
+			};
+		}
+	}
+}
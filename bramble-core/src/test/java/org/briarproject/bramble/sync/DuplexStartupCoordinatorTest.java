@@ -0,0 +1,272 @@
+package org.briarproject.bramble.sync;
+
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.DbCallable;
+import org.briarproject.bramble.api.db.DbException;
+import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.api.sync.Ack;
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.api.sync.Offer;
+import org.briarproject.bramble.api.sync.Request;
+import org.briarproject.bramble.sync.DuplexStartupCoordinator.StartupRecords;
+import org.briarproject.bramble.sync.DuplexStartupCoordinator.StartupSession;
+import org.briarproject.bramble.test.BrambleMockTestCase;
+import org.briarproject.bramble.test.CaptureArgumentAction;
+import org.briarproject.bramble.test.DbExpectations;
+import org.jmock.Expectations;
+import org.junit.Test;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_IDS;
+import static org.briarproject.bramble.test.TestUtils.getContactId;
+import static org.briarproject.bramble.test.TestUtils.getRandomId;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class DuplexStartupCoordinatorTest extends BrambleMockTestCase {
+
+	private static final long MAX_LATENCY = 30_000;
+	private static final int BATCH_CAPACITY = 1234;
+
+	private final DatabaseComponent db = context.mock(DatabaseComponent.class);
+	private final StartupSession session =
+			context.mock(StartupSession.class, "session");
+	private final StartupSession session1 =
+			context.mock(StartupSession.class, "session1");
+
+	// Tasks are queued so that several sessions can register before the
+	// records are generated
+	private final Queue<Runnable> tasks = new LinkedList<>();
+	private final Executor dbExecutor = tasks::add;
+
+	private final ContactId contactId = getContactId();
+	private final ContactId contactId1 = getContactId();
+	private final Ack ack =
+			new Ack(singletonList(new MessageId(getRandomId())));
+	private final Offer offer =
+			new Offer(singletonList(new MessageId(getRandomId())));
+	private final Request request =
+			new Request(singletonList(new MessageId(getRandomId())));
+
+	private final DuplexStartupCoordinator coordinator =
+			new DuplexStartupCoordinator(db, dbExecutor);
+
+	@Test
+	public void testRecordsForDifferentContactsAreGeneratedTogether()
+			throws Exception {
+		Transaction txn = new Transaction(null, false);
+		AtomicReference<StartupRecords> records = new AtomicReference<>();
+		AtomicReference<StartupRecords> records1 = new AtomicReference<>();
+
+		expectSessionDetails(session, contactId);
+		expectSessionDetails(session1, contactId1);
+		context.checking(new DbExpectations() {{
+			oneOf(session).prepareToGenerate();
+			will(returnValue(true));
+			oneOf(session1).prepareToGenerate();
+			will(returnValue(true));
+			// One transaction for both sessions
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn));
+			oneOf(db).containsContact(txn, contactId);
+			will(returnValue(true));
+			oneOf(db).containsContact(txn, contactId1);
+			will(returnValue(true));
+			oneOf(db).generateRequestedBatch(txn, contactId, BATCH_CAPACITY,
+					MAX_LATENCY);
+			will(returnValue(null));
+			oneOf(db).generateRequestedBatch(txn, contactId1, BATCH_CAPACITY,
+					MAX_LATENCY);
+			will(returnValue(null));
+			// One call each for acks, offers and requests
+			oneOf(db).generateAcks(txn, asList(contactId, contactId1),
+					MAX_MESSAGE_IDS);
+			will(returnValue(singletonMap(contactId, ack)));
+			oneOf(db).generateOffers(txn, asList(contactId, contactId1),
+					MAX_MESSAGE_IDS, MAX_LATENCY);
+			will(returnValue(singletonMap(contactId1, offer)));
+			oneOf(db).generateRequests(txn, asList(contactId, contactId1),
+					MAX_MESSAGE_IDS);
+			will(returnValue(singletonMap(contactId, request)));
+			oneOf(db).getNextSendTime(txn, contactId, MAX_LATENCY);
+			will(returnValue(123L));
+			oneOf(db).getNextSendTime(txn, contactId1, MAX_LATENCY);
+			will(returnValue(456L));
+			// Each session receives its own records
+			oneOf(session).recordsGenerated(with(any(StartupRecords.class)));
+			will(new CaptureArgumentAction<>(records, StartupRecords.class,
+					0));
+			oneOf(session1).recordsGenerated(with(any(StartupRecords.class)));
+			will(new CaptureArgumentAction<>(records1, StartupRecords.class,
+					0));
+		}});
+
+		coordinator.register(session);
+		coordinator.register(session1);
+		// Only one task should have been queued
+		assertEquals(1, tasks.size());
+		runTasks();
+
+		StartupRecords r = records.get();
+		assertSame(ack, r.getAck());
+		assertNull(r.getBatch());
+		assertNull(r.getOffer());
+		assertSame(request, r.getRequest());
+		assertEquals(123L, r.getNextSendTime());
+		StartupRecords r1 = records1.get();
+		assertNull(r1.getAck());
+		assertNull(r1.getBatch());
+		assertSame(offer, r1.getOffer());
+		assertNull(r1.getRequest());
+		assertEquals(456L, r1.getNextSendTime());
+	}
+
+	@Test
+	public void testRecordsForSameContactAreGeneratedSeparately()
+			throws Exception {
+		Transaction txn = new Transaction(null, false);
+		Transaction txn1 = new Transaction(null, false);
+
+		expectSessionDetails(session, contactId);
+		expectSessionDetails(session1, contactId);
+		context.checking(new DbExpectations() {{
+			// First transaction for the first session
+			oneOf(session).prepareToGenerate();
+			will(returnValue(true));
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn));
+			oneOf(session).recordsGenerated(with(any(StartupRecords.class)));
+			// Second transaction for the second session
+			oneOf(session1).prepareToGenerate();
+			will(returnValue(true));
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn1));
+			oneOf(session1).recordsGenerated(with(any(StartupRecords.class)));
+		}});
+
+		expectNothingToSend(txn, contactId);
+		expectNothingToSend(txn1, contactId);
+
+		coordinator.register(session);
+		coordinator.register(session1);
+		runTasks();
+	}
+
+	@Test
+	public void testInterruptedSessionIsSkipped() throws Exception {
+		Transaction txn = new Transaction(null, false);
+
+		expectSessionDetails(session, contactId);
+		expectSessionDetails(session1, contactId1);
+		context.checking(new DbExpectations() {{
+			// The first session has been interrupted
+			oneOf(session).prepareToGenerate();
+			will(returnValue(false));
+			oneOf(session1).prepareToGenerate();
+			will(returnValue(true));
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn));
+			oneOf(session1).recordsGenerated(with(any(StartupRecords.class)));
+		}});
+		expectNothingToSend(txn, contactId1);
+
+		coordinator.register(session);
+		coordinator.register(session1);
+		runTasks();
+	}
+
+	@Test
+	public void testRemovedContactDoesNotFailOtherSessions()
+			throws Exception {
+		Transaction txn = new Transaction(null, false);
+
+		expectSessionDetails(session, contactId);
+		expectSessionDetails(session1, contactId1);
+		context.checking(new DbExpectations() {{
+			oneOf(session).prepareToGenerate();
+			will(returnValue(true));
+			oneOf(session1).prepareToGenerate();
+			will(returnValue(true));
+			oneOf(db).transactionWithResult(with(false),
+					withDbCallable(txn));
+			// The first session's contact has been removed
+			oneOf(db).containsContact(txn, contactId);
+			will(returnValue(false));
+			oneOf(session).generatingFailed();
+			// The second session's records are generated
+			oneOf(session1).recordsGenerated(with(any(StartupRecords.class)));
+		}});
+		expectNothingToSend(txn, contactId1);
+
+		coordinator.register(session);
+		coordinator.register(session1);
+		runTasks();
+	}
+
+	@Test
+	public void testSessionsAreNotifiedIfGeneratingFails() throws Exception {
+		expectSessionDetails(session, contactId);
+		expectSessionDetails(session1, contactId1);
+		context.checking(new DbExpectations() {{
+			oneOf(session).prepareToGenerate();
+			will(returnValue(true));
+			oneOf(session1).prepareToGenerate();
+			will(returnValue(true));
+			oneOf(db).transactionWithResult(with(false),
+					with(any(DbCallable.class)));
+			will(throwException(new DbException()));
+			oneOf(session).generatingFailed();
+			oneOf(session1).generatingFailed();
+		}});
+
+		coordinator.register(session);
+		coordinator.register(session1);
+		runTasks();
+	}
+
+	private void expectSessionDetails(StartupSession s, ContactId c) {
+		context.checking(new Expectations() {{
+			allowing(s).getContactId();
+			will(returnValue(c));
+			allowing(s).getMaxLatency();
+			will(returnValue(MAX_LATENCY));
+			allowing(s).getBatchCapacity();
+			will(returnValue(BATCH_CAPACITY));
+		}});
+	}
+
+	private void expectNothingToSend(Transaction txn, ContactId c)
+			throws DbException {
+		context.checking(new DbExpectations() {{
+			oneOf(db).containsContact(txn, c);
+			will(returnValue(true));
+			oneOf(db).generateRequestedBatch(txn, c, BATCH_CAPACITY,
+					MAX_LATENCY);
+			will(returnValue(null));
+			oneOf(db).generateAcks(txn, singletonList(c), MAX_MESSAGE_IDS);
+			will(returnValue(emptyMap()));
+			oneOf(db).generateOffers(txn, singletonList(c), MAX_MESSAGE_IDS,
+					MAX_LATENCY);
+			will(returnValue(emptyMap()));
+			oneOf(db).generateRequests(txn, singletonList(c),
+					MAX_MESSAGE_IDS);
+			will(returnValue(emptyMap()));
+			oneOf(db).getNextSendTime(txn, c, MAX_LATENCY);
+			will(returnValue(Long.MAX_VALUE));
+		}});
+	}
+
+	private void runTasks() {
+		while (!tasks.isEmpty()) tasks.remove().run();
+	}
+}
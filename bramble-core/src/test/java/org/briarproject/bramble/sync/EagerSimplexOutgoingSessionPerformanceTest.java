@@ -0,0 +1,157 @@
+package org.briarproject.bramble.sync;
+
+import org.briarproject.bramble.BrambleCoreIntegrationTestEagerSingletons;
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.crypto.SecretKey;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.Metadata;
+import org.briarproject.bramble.api.identity.Identity;
+import org.briarproject.bramble.api.identity.IdentityManager;
+import org.briarproject.bramble.api.lifecycle.LifecycleManager;
+import org.briarproject.bramble.api.plugin.TransportId;
+import org.briarproject.bramble.api.sync.Group;
+import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageFactory;
+import org.briarproject.bramble.api.sync.SyncRecordWriter;
+import org.briarproject.bramble.api.transport.StreamContext;
+import org.briarproject.bramble.api.transport.StreamWriter;
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.briarproject.bramble.test.ImmediateExecutor;
+import org.briarproject.bramble.test.TestDatabaseConfigModule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.briarproject.bramble.api.sync.Group.Visibility.SHARED;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_GROUP_DESCRIPTOR_LENGTH;
+import static org.briarproject.bramble.test.TestUtils.deleteTestDirectory;
+import static org.briarproject.bramble.test.TestUtils.getAuthor;
+import static org.briarproject.bramble.test.TestUtils.getClientId;
+import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
+import static org.briarproject.bramble.test.TestUtils.getSecretKey;
+import static org.briarproject.bramble.test.TestUtils.getTestDirectory;
+import static org.briarproject.bramble.test.TestUtils.getTransportId;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the time taken to write a backlog of messages to a temporary
+ * file with the database and IO stages of an
+ * {@link EagerSimplexOutgoingSession} running on the same thread (condition
+ * A) and on separate threads (condition B).
+ */
+@Ignore
+public class EagerSimplexOutgoingSessionPerformanceTest
+		extends BrambleTestCase {
+
+	private static final int MESSAGES = 5000;
+	private static final int BODY_LENGTH = 4 * 1024;
+	private static final int ROUNDS = 5;
+	private static final long MAX_LATENCY = Integer.MAX_VALUE;
+
+	private final File testDir = getTestDirectory();
+	private final TransportId transportId = getTransportId();
+	private final SecretKey tagKey = getSecretKey();
+	private final SecretKey headerKey = getSecretKey();
+
+	private EagerSimplexOutgoingSessionPerformanceTestComponent component;
+	private DatabaseComponent db;
+	private ContactId contactId;
+
+	@Before
+	public void setUp() throws Exception {
+		assertTrue(testDir.mkdirs());
+		component = DaggerEagerSimplexOutgoingSessionPerformanceTestComponent
+				.builder().testDatabaseConfigModule(
+						new TestDatabaseConfigModule(new File(testDir, "db")))
+				.build();
+		BrambleCoreIntegrationTestEagerSingletons.Helper
+				.injectEagerSingletons(component);
+		db = component.getDatabaseComponent();
+		// Add an identity and start the lifecycle manager
+		IdentityManager identityManager = component.getIdentityManager();
+		Identity identity = identityManager.createIdentity("Alice");
+		identityManager.registerIdentity(identity);
+		LifecycleManager lifecycleManager = component.getLifecycleManager();
+		lifecycleManager.startServices(getSecretKey());
+		lifecycleManager.waitForStartup();
+		// Add a contact and share a group of messages with them
+		contactId = component.getContactManager().addContact(getAuthor(),
+				identity.getLocalAuthor().getId(), getSecretKey(),
+				System.currentTimeMillis(), true, true, true);
+		Group group = component.getGroupFactory().createGroup(getClientId(),
+				1, new byte[MAX_GROUP_DESCRIPTOR_LENGTH]);
+		MessageFactory messageFactory = component.getMessageFactory();
+		db.transaction(false, txn -> {
+			db.addGroup(txn, group);
+			db.setGroupVisibility(txn, contactId, group.getId(), SHARED);
+			for (int i = 0; i < MESSAGES; i++) {
+				Message m = messageFactory.createMessage(group.getId(),
+						System.currentTimeMillis(),
+						getRandomBytes(BODY_LENGTH));
+				db.addLocalMessage(txn, m, new Metadata(), true, false);
+			}
+		});
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		LifecycleManager lifecycleManager = component.getLifecycleManager();
+		lifecycleManager.stopServices();
+		lifecycleManager.waitForShutdown();
+		deleteTestDirectory(testDir);
+	}
+
+	@Test
+	public void testWriteBacklogToFile() throws Exception {
+		Executor sameThread = new ImmediateExecutor();
+		Executor dbThread = component.getSyncDatabaseExecutor();
+		// Warm up
+		writeBacklog(sameThread);
+		writeBacklog(dbThread);
+		List<Long> a = new ArrayList<>(), b = new ArrayList<>();
+		for (int i = 0; i < ROUNDS; i++) {
+			a.add(writeBacklog(sameThread));
+			b.add(writeBacklog(dbThread));
+		}
+		System.out.println(String.format(
+				"%,d messages: same thread %,d ms, separate threads %,d ms",
+				MESSAGES, median(a), median(b)));
+	}
+
+	/**
+	 * Writes all the messages to a temporary file and returns the time
+	 * taken in milliseconds.
+	 */
+	private long writeBacklog(Executor dbExecutor) throws Exception {
+		File file = File.createTempFile("sync", ".tmp", testDir);
+		StreamContext ctx = new StreamContext(contactId, null, transportId,
+				tagKey, headerKey, 1, false);
+		FileOutputStream out = new FileOutputStream(file);
+		StreamWriter streamWriter = component.getStreamWriterFactory()
+				.createStreamWriter(out, ctx);
+		SyncRecordWriter recordWriter = component.getSyncRecordWriterFactory()
+				.createRecordWriter(streamWriter.getOutputStream());
+		EagerSimplexOutgoingSession session = new EagerSimplexOutgoingSession(
+				db, dbExecutor, component.getEventBus(), contactId,
+				transportId, MAX_LATENCY, streamWriter, recordWriter,
+				new SessionMetrics(contactId, transportId));
+		long start = System.currentTimeMillis();
+		session.run();
+		long duration = System.currentTimeMillis() - start;
+		assertTrue(file.delete());
+		return duration;
+	}
+
+	private long median(List<Long> samples) {
+		Collections.sort(samples);
+		return samples.get(samples.size() / 2);
+	}
+}
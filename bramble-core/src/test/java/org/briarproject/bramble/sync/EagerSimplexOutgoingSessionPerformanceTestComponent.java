@@ -0,0 +1,59 @@
+package org.briarproject.bramble.sync;
+
+import org.briarproject.bramble.BrambleCoreIntegrationTestEagerSingletons;
+import org.briarproject.bramble.BrambleCoreModule;
+import org.briarproject.bramble.api.contact.ContactManager;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.SyncDatabaseExecutor;
+import org.briarproject.bramble.api.event.EventBus;
+import org.briarproject.bramble.api.identity.IdentityManager;
+import org.briarproject.bramble.api.lifecycle.LifecycleManager;
+import org.briarproject.bramble.api.sync.GroupFactory;
+import org.briarproject.bramble.api.sync.MessageFactory;
+import org.briarproject.bramble.api.sync.SyncRecordWriterFactory;
+import org.briarproject.bramble.api.transport.StreamWriterFactory;
+import org.briarproject.bramble.mailbox.ModularMailboxModule;
+import org.briarproject.bramble.test.BrambleCoreIntegrationTestModule;
+import org.briarproject.bramble.test.TestDnsModule;
+import org.briarproject.bramble.test.TestPluginConfigModule;
+import org.briarproject.bramble.test.TestSocksModule;
+
+import java.util.concurrent.Executor;
+
+import javax.inject.Singleton;
+
+import dagger.Component;
+
+@Singleton
+@Component(modules = {
+		BrambleCoreIntegrationTestModule.class,
+		BrambleCoreModule.class,
+		ModularMailboxModule.class,
+		TestDnsModule.class,
+		TestSocksModule.class,
+		TestPluginConfigModule.class,
+})
+interface EagerSimplexOutgoingSessionPerformanceTestComponent extends
+		BrambleCoreIntegrationTestEagerSingletons {
+
+	ContactManager getContactManager();
+
+	DatabaseComponent getDatabaseComponent();
+
+	EventBus getEventBus();
+
+	GroupFactory getGroupFactory();
+
+	IdentityManager getIdentityManager();
+
+	LifecycleManager getLifecycleManager();
+
+	MessageFactory getMessageFactory();
+
+	StreamWriterFactory getStreamWriterFactory();
+
+	SyncRecordWriterFactory getSyncRecordWriterFactory();
+
+	@SyncDatabaseExecutor
+	Executor getSyncDatabaseExecutor();
+}
@@ -14,8 +14,12 @@ import org.briarproject.bramble.api.sync.Versions;
 import org.briarproject.bramble.api.transport.StreamWriter;
 import org.briarproject.bramble.test.BrambleMockTestCase;
 import org.briarproject.bramble.test.DbExpectations;
+import org.briarproject.bramble.test.ImmediateExecutor;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
@@ -31,6 +35,7 @@ public class EagerSimplexOutgoingSessionTest extends BrambleMockTestCase {
 	private static final int MAX_LATENCY = Integer.MAX_VALUE;
 
 	private final DatabaseComponent db = context.mock(DatabaseComponent.class);
+	private final Executor dbExecutor = new ImmediateExecutor();
 	private final EventBus eventBus = context.mock(EventBus.class);
 	private final StreamWriter streamWriter = context.mock(StreamWriter.class);
 	private final SyncRecordWriter recordWriter =
@@ -38,6 +43,8 @@ public class EagerSimplexOutgoingSessionTest extends BrambleMockTestCase {
 
 	private final ContactId contactId = getContactId();
 	private final TransportId transportId = getTransportId();
+	private final SessionMetrics metrics =
+			new SessionMetrics(contactId, transportId);
 	private final Ack ack =
 			new Ack(singletonList(new MessageId(getRandomId())));
 	private final Message message = getMessage(new GroupId(getRandomId()),
@@ -48,8 +55,9 @@ public class EagerSimplexOutgoingSessionTest extends BrambleMockTestCase {
 	@Test
 	public void testNothingToSendEagerly() throws Exception {
 		EagerSimplexOutgoingSession session =
-				new EagerSimplexOutgoingSession(db, eventBus, contactId,
-						transportId, MAX_LATENCY, streamWriter, recordWriter);
+				new EagerSimplexOutgoingSession(db, dbExecutor, eventBus,
+						contactId, transportId, MAX_LATENCY, streamWriter,
+						recordWriter, metrics);
 
 		Transaction noAckTxn = new Transaction(null, false);
 		Transaction noIdsTxn = new Transaction(null, true);
@@ -81,14 +89,15 @@ public class EagerSimplexOutgoingSessionTest extends BrambleMockTestCase {
 	@Test
 	public void testSomethingToSendEagerly() throws Exception {
 		EagerSimplexOutgoingSession session =
-				new EagerSimplexOutgoingSession(db, eventBus, contactId,
-						transportId, MAX_LATENCY, streamWriter, recordWriter);
+				new EagerSimplexOutgoingSession(db, dbExecutor, eventBus,
+						contactId, transportId, MAX_LATENCY, streamWriter,
+						recordWriter, metrics);
 
 		Transaction ackTxn = new Transaction(null, false);
 		Transaction noAckTxn = new Transaction(null, false);
 		Transaction idsTxn = new Transaction(null, true);
-		Transaction msgTxn = new Transaction(null, false);
-		Transaction msgTxn1 = new Transaction(null, false);
+		Transaction msgTxn = new Transaction(null, true);
+		Transaction sentTxn = new Transaction(null, false);
 
 		context.checking(new DbExpectations() {{
 			// Add listener
@@ -110,19 +119,88 @@ public class EagerSimplexOutgoingSessionTest extends BrambleMockTestCase {
 			oneOf(db).transactionWithResult(with(true), withDbCallable(idsTxn));
 			oneOf(db).getUnackedMessagesToSend(idsTxn, contactId);
 			will(returnValue(asList(message.getId(), message1.getId())));
-			// Try to send the first message - it's no longer shared
-			oneOf(db).transactionWithNullableResult(with(false),
-					withNullableDbCallable(msgTxn));
+			// Load both messages in one batch - the first is no longer shared
+			oneOf(db).transactionWithResult(with(true),
+					withDbCallable(msgTxn));
 			oneOf(db).getMessageToSend(msgTxn, contactId, message.getId(),
-					MAX_LATENCY, true);
+					MAX_LATENCY, false);
 			will(returnValue(null));
+			oneOf(db).getMessageToSend(msgTxn, contactId, message1.getId(),
+					MAX_LATENCY, false);
+			will(returnValue(message1));
 			// Send the second message
+			oneOf(recordWriter).writeMessage(message1);
+			// Mark the second message as sent after writing it
+			oneOf(db).transaction(with(false), withDbRunnable(sentTxn));
+			oneOf(db).setMessagesSent(sentTxn, contactId,
+					singletonList(message1.getId()), MAX_LATENCY);
+			// Send the end of stream marker
+			oneOf(streamWriter).sendEndOfStream();
+			// Remove listener
+			oneOf(eventBus).removeListener(session);
+		}});
+
+		session.run();
+	}
+
+	@Test
+	public void testMessagesAreLoadedInBatchesLimitedByCapacity()
+			throws Exception {
+		EagerSimplexOutgoingSession session =
+				new EagerSimplexOutgoingSession(db, dbExecutor, eventBus,
+						contactId, transportId, MAX_LATENCY, streamWriter,
+						recordWriter, metrics);
+		// Two maximum-size messages fill a batch
+		Message message2 = getMessage(new GroupId(getRandomId()),
+				MAX_MESSAGE_BODY_LENGTH);
+
+		Transaction noAckTxn = new Transaction(null, false);
+		Transaction idsTxn = new Transaction(null, true);
+		Transaction msgTxn = new Transaction(null, true);
+		Transaction msgTxn1 = new Transaction(null, true);
+		Transaction sentTxn = new Transaction(null, false);
+		Transaction sentTxn1 = new Transaction(null, false);
+
+		context.checking(new DbExpectations() {{
+			// Add listener
+			oneOf(eventBus).addListener(session);
+			// Send the protocol versions
+			oneOf(recordWriter).writeVersions(with(any(Versions.class)));
+			// No acks to send
 			oneOf(db).transactionWithNullableResult(with(false),
-					withNullableDbCallable(msgTxn1));
-			oneOf(db).getMessageToSend(msgTxn1, contactId, message1.getId(),
-					MAX_LATENCY, true);
+					withNullableDbCallable(noAckTxn));
+			oneOf(db).generateAck(noAckTxn, contactId, MAX_MESSAGE_IDS);
+			will(returnValue(null));
+			// Three messages to send
+			oneOf(db).transactionWithResult(with(true), withDbCallable(idsTxn));
+			oneOf(db).getUnackedMessagesToSend(idsTxn, contactId);
+			will(returnValue(asList(message.getId(), message1.getId(),
+					message2.getId())));
+			// Load the first two messages in one batch
+			oneOf(db).transactionWithResult(with(true),
+					withDbCallable(msgTxn));
+			oneOf(db).getMessageToSend(msgTxn, contactId, message.getId(),
+					MAX_LATENCY, false);
+			will(returnValue(message));
+			oneOf(db).getMessageToSend(msgTxn, contactId, message1.getId(),
+					MAX_LATENCY, false);
 			will(returnValue(message1));
+			// Load the third message in another batch
+			oneOf(db).transactionWithResult(with(true),
+					withDbCallable(msgTxn1));
+			oneOf(db).getMessageToSend(msgTxn1, contactId, message2.getId(),
+					MAX_LATENCY, false);
+			will(returnValue(message2));
+			// Send the messages and mark each batch as sent
+			oneOf(recordWriter).writeMessage(message);
 			oneOf(recordWriter).writeMessage(message1);
+			oneOf(db).transaction(with(false), withDbRunnable(sentTxn));
+			oneOf(db).setMessagesSent(sentTxn, contactId,
+					asList(message.getId(), message1.getId()), MAX_LATENCY);
+			oneOf(recordWriter).writeMessage(message2);
+			oneOf(db).transaction(with(false), withDbRunnable(sentTxn1));
+			oneOf(db).setMessagesSent(sentTxn1, contactId,
+					singletonList(message2.getId()), MAX_LATENCY);
 			// Send the end of stream marker
 			oneOf(streamWriter).sendEndOfStream();
 			// Remove listener
@@ -131,4 +209,45 @@ public class EagerSimplexOutgoingSessionTest extends BrambleMockTestCase {
 
 		session.run();
 	}
+
+	@Test(expected = IOException.class)
+	public void testMessagesAreNotMarkedAsSentIfWritingFails()
+			throws Exception {
+		EagerSimplexOutgoingSession session =
+				new EagerSimplexOutgoingSession(db, dbExecutor, eventBus,
+						contactId, transportId, MAX_LATENCY, streamWriter,
+						recordWriter, metrics);
+
+		Transaction noAckTxn = new Transaction(null, false);
+		Transaction idsTxn = new Transaction(null, true);
+		Transaction msgTxn = new Transaction(null, true);
+
+		context.checking(new DbExpectations() {{
+			// Add listener
+			oneOf(eventBus).addListener(session);
+			// Send the protocol versions
+			oneOf(recordWriter).writeVersions(with(any(Versions.class)));
+			// No acks to send
+			oneOf(db).transactionWithNullableResult(with(false),
+					withNullableDbCallable(noAckTxn));
+			oneOf(db).generateAck(noAckTxn, contactId, MAX_MESSAGE_IDS);
+			will(returnValue(null));
+			// One message to send
+			oneOf(db).transactionWithResult(with(true), withDbCallable(idsTxn));
+			oneOf(db).getUnackedMessagesToSend(idsTxn, contactId);
+			will(returnValue(singletonList(message.getId())));
+			oneOf(db).transactionWithResult(with(true),
+					withDbCallable(msgTxn));
+			oneOf(db).getMessageToSend(msgTxn, contactId, message.getId(),
+					MAX_LATENCY, false);
+			will(returnValue(message));
+			// Writing the message fails, so it's not marked as sent
+			oneOf(recordWriter).writeMessage(message);
+			will(throwException(new IOException()));
+			// Remove listener
+			oneOf(eventBus).removeListener(session);
+		}});
+
+		session.run();
+	}
 }
@@ -0,0 +1,60 @@
+package org.briarproject.bramble.sync;
+
+import org.briarproject.bramble.api.sync.metrics.Histogram;
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.junit.Test;
+
+import static org.briarproject.bramble.sync.HistogramRecorder.getBucket;
+import static org.junit.Assert.assertEquals;
+
+public class HistogramRecorderTest extends BrambleTestCase {
+
+	@Test
+	public void testValuesAreCountedInTheirBuckets() {
+		HistogramRecorder recorder = new HistogramRecorder();
+		Histogram empty = recorder.getSnapshot();
+		assertEquals(0, empty.getCount());
+		assertEquals(0, empty.getMax());
+		assertEquals(0, empty.getMean(), 0);
+
+		recorder.record(0);
+		recorder.record(1);
+		recorder.record(3);
+		recorder.record(4);
+		recorder.record(Long.MAX_VALUE / 2);
+
+		Histogram h = recorder.getSnapshot();
+		assertEquals(5, h.getCount());
+		assertEquals(Long.MAX_VALUE / 2, h.getMax());
+		long[] upperBounds = h.getUpperBounds();
+		long[] counts = h.getBucketCounts();
+		assertEquals(upperBounds.length + 1, counts.length);
+		assertEquals(0, upperBounds[0]);
+		assertEquals(1, upperBounds[1]);
+		assertEquals(2, upperBounds[2]);
+		assertEquals(4, upperBounds[3]);
+		assertEquals(1, counts[0]); // 0
+		assertEquals(1, counts[1]); // 1
+		assertEquals(0, counts[2]);
+		assertEquals(2, counts[3]); // 3 and 4
+		assertEquals(1, counts[counts.length - 1]); // Overflow
+	}
+
+	@Test
+	public void testBucketBoundaries() {
+		assertEquals(0, getBucket(0));
+		assertEquals(1, getBucket(1));
+		assertEquals(2, getBucket(2));
+		assertEquals(3, getBucket(3));
+		assertEquals(3, getBucket(4));
+		assertEquals(4, getBucket(5));
+		assertEquals(11, getBucket(1024));
+		assertEquals(12, getBucket(1025));
+		Histogram h = new HistogramRecorder().getSnapshot();
+		int overflow = h.getUpperBounds().length;
+		long largestBound = h.getUpperBounds()[overflow - 1];
+		assertEquals(overflow - 1, getBucket(largestBound));
+		assertEquals(overflow, getBucket(largestBound + 1));
+		assertEquals(overflow, getBucket(Long.MAX_VALUE));
+	}
+}
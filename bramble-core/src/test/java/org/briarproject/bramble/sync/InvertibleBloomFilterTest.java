@@ -0,0 +1,85 @@
+package org.briarproject.bramble.sync;
+
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static java.util.Arrays.asList;
+import static org.briarproject.bramble.api.sync.SyncConstants.SKETCH_CELL_BYTES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InvertibleBloomFilterTest extends BrambleTestCase {
+
+	// Decoding is probabilistic, so use a fixed seed to make the results
+	// repeatable
+	private final Random random = new Random(1234);
+
+	@Test
+	public void testDecodesDifferencesBetweenTables() {
+		InvertibleBloomFilter ours = new InvertibleBloomFilter(90);
+		InvertibleBloomFilter theirs = new InvertibleBloomFilter(90);
+		// Add many keys to both tables, and a few keys to each table
+		for (int i = 0; i < 10_000; i++) {
+			long key = random.nextLong();
+			ours.add(key);
+			theirs.add(key);
+		}
+		Set<Long> onlyOurs = createKeys(10), onlyTheirs = createKeys(10);
+		for (long key : onlyOurs) ours.add(key);
+		for (long key : onlyTheirs) theirs.add(key);
+
+		ours.subtract(theirs);
+		List<Long> added = new ArrayList<>(), subtracted = new ArrayList<>();
+		assertTrue(ours.decode(added, subtracted));
+		assertEquals(onlyOurs, new HashSet<>(added));
+		assertEquals(onlyTheirs, new HashSet<>(subtracted));
+	}
+
+	@Test
+	public void testDecodingFailsIfThereAreTooManyDifferences() {
+		InvertibleBloomFilter ours = new InvertibleBloomFilter(30);
+		for (long key : createKeys(100)) ours.add(key);
+
+		List<Long> added = new ArrayList<>(), subtracted = new ArrayList<>();
+		assertFalse(ours.decode(added, subtracted));
+	}
+
+	@Test
+	public void testSerialisedTableCanBeSubtracted() {
+		InvertibleBloomFilter theirs = new InvertibleBloomFilter(30);
+		for (long key : asList(1L, 2L, -3L)) theirs.add(key);
+		byte[] cells = new byte[30 * SKETCH_CELL_BYTES + 10];
+		theirs.write(cells, 10);
+
+		InvertibleBloomFilter ours = new InvertibleBloomFilter(30);
+		for (long key : asList(2L, -3L, 4L)) ours.add(key);
+		ours.subtract(InvertibleBloomFilter.read(cells, 10, 30));
+		List<Long> added = new ArrayList<>(), subtracted = new ArrayList<>();
+		assertTrue(ours.decode(added, subtracted));
+		assertEquals(asList(4L), added);
+		assertEquals(asList(1L), subtracted);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCellCountMustBeMultipleOfHashFunctions() {
+		new InvertibleBloomFilter(31);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTablesMustBeTheSameSize() {
+		new InvertibleBloomFilter(30).subtract(new InvertibleBloomFilter(33));
+	}
+
+	private Set<Long> createKeys(int count) {
+		Set<Long> keys = new HashSet<>();
+		while (keys.size() < count) keys.add(random.nextLong());
+		return keys;
+	}
+}
@@ -46,6 +46,8 @@ public class MailboxOutgoingSessionTest extends BrambleMockTestCase {
 
 	private final ContactId contactId = getContactId();
 	private final TransportId transportId = getTransportId();
+	private final SessionMetrics metrics =
+			new SessionMetrics(contactId, transportId);
 	private final Message message = getMessage(new GroupId(getRandomId()),
 			MAX_MESSAGE_BODY_LENGTH);
 	private final Message message1 = getMessage(new GroupId(getRandomId()),
@@ -57,7 +59,7 @@ public class MailboxOutgoingSessionTest extends BrambleMockTestCase {
 		OutgoingSessionRecord sessionRecord = new OutgoingSessionRecord();
 		MailboxOutgoingSession session = new MailboxOutgoingSession(db,
 				eventBus, contactId, transportId, MAX_LATENCY,
-				streamWriter, recordWriter, sessionRecord,
+				streamWriter, recordWriter, metrics, sessionRecord,
 				MAX_FILE_PAYLOAD_BYTES);
 
 		Transaction noAckIdTxn = new Transaction(null, true);
@@ -101,7 +103,7 @@ public class MailboxOutgoingSessionTest extends BrambleMockTestCase {
 		OutgoingSessionRecord sessionRecord = new OutgoingSessionRecord();
 		MailboxOutgoingSession session = new MailboxOutgoingSession(db,
 				eventBus, contactId, transportId, MAX_LATENCY,
-				streamWriter, recordWriter, sessionRecord,
+				streamWriter, recordWriter, metrics, sessionRecord,
 				MAX_FILE_PAYLOAD_BYTES);
 
 		Transaction ackIdTxn = new Transaction(null, true);
@@ -171,7 +173,7 @@ public class MailboxOutgoingSessionTest extends BrambleMockTestCase {
 		OutgoingSessionRecord sessionRecord = new OutgoingSessionRecord();
 		MailboxOutgoingSession session = new MailboxOutgoingSession(db,
 				eventBus, contactId, transportId, MAX_LATENCY,
-				streamWriter, recordWriter, sessionRecord, capacity);
+				streamWriter, recordWriter, metrics, sessionRecord, capacity);
 
 		Transaction ackIdTxn = new Transaction(null, true);
 
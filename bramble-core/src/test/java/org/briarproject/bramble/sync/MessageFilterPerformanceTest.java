@@ -0,0 +1,102 @@
+package org.briarproject.bramble.sync;
+
+import org.briarproject.bramble.api.UniqueId;
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.api.sync.MessageFilter;
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.system.SystemClock;
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static java.util.Collections.singletonMap;
+import static org.briarproject.bramble.api.record.Record.RECORD_HEADER_BYTES;
+import static org.briarproject.bramble.api.sync.SyncConstants.FILTER_HEADER_BYTES;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_IDS;
+import static org.briarproject.bramble.test.TestUtils.getRandomId;
+import static org.briarproject.bramble.util.LogUtils.now;
+
+/**
+ * Compares the number of bytes of sync records needed to offer a group's
+ * messages to a contact that already has some of them, with and without
+ * {@link MessageFilter MessageFilters}, and measures the time taken to
+ * create and query the filters.
+ * <p>
+ * Without filters, every message is offered, and the contact acks the
+ * messages it has and requests the others. With filters, the contact first
+ * sends filters of the messages it has, and only the messages the filters
+ * don't contain are offered and requested. Messages that are wrongly
+ * suppressed by false positives are counted separately.
+ */
+@Ignore
+public class MessageFilterPerformanceTest extends BrambleTestCase {
+
+	private static final int[] GROUP_SIZES = {1_000, 10_000, 100_000};
+	private static final double[] OVERLAPS = {0.0, 0.5, 0.9, 0.99};
+
+	private final GroupId groupId = new GroupId(getRandomId());
+	private final MessageFilterStore filterStore =
+			new MessageFilterStore(new SystemClock());
+
+	@Test
+	public void testOfferBytesWithAndWithoutFilters() {
+		for (int size : GROUP_SIZES) {
+			for (double overlap : OVERLAPS) testOfferBytes(size, overlap);
+		}
+	}
+
+	private void testOfferBytes(int size, double overlap) {
+		List<MessageId> ids = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) ids.add(new MessageId(getRandomId()));
+		// The contact has the first messages in the list
+		int held = (int) (size * overlap);
+
+		long start = now();
+		Collection<MessageFilter> filters = filterStore.createFilters(
+				singletonMap(groupId, ids.subList(0, held)));
+		long createTime = now() - start;
+		long filterBytes = 0;
+		for (MessageFilter f : filters) {
+			filterBytes += RECORD_HEADER_BYTES + FILTER_HEADER_BYTES
+					+ f.getBits().length;
+		}
+
+		start = now();
+		int offered = 0, wronglySuppressed = 0;
+		for (int i = 0; i < size; i++) {
+			boolean suppressed = false;
+			for (MessageFilter f : filters) {
+				if (f.mightContain(ids.get(i))) {
+					suppressed = true;
+					break;
+				}
+			}
+			if (!suppressed) offered++;
+			else if (i >= held) wronglySuppressed++;
+		}
+		long queryTime = now() - start;
+
+		long without = getIdRecordBytes(size) + getIdRecordBytes(held)
+				+ getIdRecordBytes(size - held);
+		// Filters have no false negatives, so all the offered messages are
+		// missing and will be requested
+		long with = filterBytes + getIdRecordBytes(offered) * 2;
+		System.out.println(String.format("%,d messages, %.0f%% overlap:"
+						+ " %,d bytes without filters, %,d bytes with %d"
+						+ " filters (%.1f%%), %d wrongly suppressed,"
+						+ " created in %,d ms, queried in %,d ms",
+				size, overlap * 100, without, with, filters.size(),
+				with * 100.0 / without, wronglySuppressed, createTime,
+				queryTime));
+	}
+
+	private long getIdRecordBytes(int ids) {
+		int records = (ids + MAX_MESSAGE_IDS - 1) / MAX_MESSAGE_IDS;
+		return (long) ids * UniqueId.LENGTH
+				+ (long) records * RECORD_HEADER_BYTES;
+	}
+}
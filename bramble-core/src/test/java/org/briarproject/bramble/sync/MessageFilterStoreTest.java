@@ -0,0 +1,134 @@
+package org.briarproject.bramble.sync;
+
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.contact.event.ContactRemovedEvent;
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.api.sync.MessageFilter;
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.briarproject.bramble.test.SettableClock;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Collections.singletonList;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_FILTER_BYTES;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_FILTER_MESSAGES;
+import static org.briarproject.bramble.sync.MessageFilterStore.MAX_FILTER_AGE;
+import static org.briarproject.bramble.sync.MessageFilterStore.MAX_FILTER_BYTES_PER_CONTACT;
+import static org.briarproject.bramble.sync.MessageFilterStore.MIN_FILTER_MESSAGES;
+import static org.briarproject.bramble.test.TestUtils.getContactId;
+import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
+import static org.briarproject.bramble.test.TestUtils.getRandomId;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MessageFilterStoreTest extends BrambleTestCase {
+
+	private final ContactId contactId = getContactId();
+	private final ContactId contactId1 = getContactId();
+	private final GroupId groupId = new GroupId(getRandomId());
+	private final GroupId groupId1 = new GroupId(getRandomId());
+	private final AtomicLong time = new AtomicLong(1000);
+
+	private final MessageFilterStore filterStore =
+			new MessageFilterStore(new SettableClock(time));
+
+	@Test
+	public void testSmallGroupsDoNotGetFilters() {
+		Map<GroupId, Collection<MessageId>> unseen = new HashMap<>();
+		unseen.put(groupId, createMessageIds(MIN_FILTER_MESSAGES - 1));
+		List<MessageId> ids = createMessageIds(MIN_FILTER_MESSAGES);
+		unseen.put(groupId1, ids);
+
+		Collection<MessageFilter> filters = filterStore.createFilters(unseen);
+		assertEquals(1, filters.size());
+		MessageFilter f = filters.iterator().next();
+		assertEquals(groupId1, f.getGroupId());
+		for (MessageId m : ids) assertTrue(f.mightContain(m));
+	}
+
+	@Test
+	public void testLargeGroupsAreSplitBetweenFilters() {
+		List<MessageId> ids = createMessageIds(MAX_FILTER_MESSAGES + 1);
+		Map<GroupId, Collection<MessageId>> unseen = new HashMap<>();
+		unseen.put(groupId, ids);
+
+		List<MessageFilter> filters =
+				new ArrayList<>(filterStore.createFilters(unseen));
+		assertEquals(2, filters.size());
+		MessageFilter f = filters.get(0), f1 = filters.get(1);
+		assertEquals(groupId, f.getGroupId());
+		assertEquals(groupId, f1.getGroupId());
+		assertEquals(f.getSalt(), f1.getSalt());
+		for (MessageId m : ids.subList(0, MAX_FILTER_MESSAGES))
+			assertTrue(f.mightContain(m));
+		assertTrue(f1.mightContain(ids.get(MAX_FILTER_MESSAGES)));
+	}
+
+	@Test
+	public void testFiltersAreStoredPerContactUntilTheyExpire() {
+		MessageFilter f = createFilter(groupId);
+		MessageFilter f1 = createFilter(groupId1);
+		filterStore.addFilter(contactId, f);
+		time.addAndGet(MAX_FILTER_AGE);
+		filterStore.addFilter(contactId, f1);
+
+		assertEquals(0, filterStore.getFilters(contactId1).size());
+		List<MessageFilter> filters =
+				new ArrayList<>(filterStore.getFilters(contactId));
+		assertEquals(2, filters.size());
+		assertSame(f, filters.get(0));
+		assertSame(f1, filters.get(1));
+
+		// The first filter should expire
+		time.incrementAndGet();
+		assertEquals(singletonList(f1), filterStore.getFilters(contactId));
+
+		// The second filter should expire
+		time.addAndGet(MAX_FILTER_AGE);
+		assertEquals(0, filterStore.getFilters(contactId).size());
+	}
+
+	@Test
+	public void testOldestFiltersAreDiscardedWhenLimitIsReached() {
+		int maxFilters = MAX_FILTER_BYTES_PER_CONTACT / MAX_FILTER_BYTES;
+		List<MessageFilter> added = new ArrayList<>();
+		for (int i = 0; i <= maxFilters; i++) {
+			MessageFilter f = new MessageFilter(groupId, 123, 1,
+					getRandomBytes(MAX_FILTER_BYTES));
+			filterStore.addFilter(contactId, f);
+			added.add(f);
+		}
+
+		assertEquals(added.subList(1, added.size()),
+				filterStore.getFilters(contactId));
+	}
+
+	@Test
+	public void testFiltersAreRemovedWhenContactIsRemoved() {
+		filterStore.addFilter(contactId, createFilter(groupId));
+		filterStore.addFilter(contactId1, createFilter(groupId));
+
+		filterStore.eventOccurred(new ContactRemovedEvent(contactId));
+
+		assertEquals(0, filterStore.getFilters(contactId).size());
+		assertEquals(1, filterStore.getFilters(contactId1).size());
+	}
+
+	private MessageFilter createFilter(GroupId g) {
+		return MessageFilter.create(g, 123, createMessageIds(10));
+	}
+
+	private List<MessageId> createMessageIds(int count) {
+		List<MessageId> ids = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) ids.add(new MessageId(getRandomId()));
+		return ids;
+	}
+}
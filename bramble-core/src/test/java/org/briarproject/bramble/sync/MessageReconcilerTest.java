@@ -0,0 +1,140 @@
+package org.briarproject.bramble.sync;
+
+import org.briarproject.bramble.api.UniqueId;
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.api.sync.MessageEstimator;
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.api.sync.MessageSketch;
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_SKETCH_PARTITIONS;
+import static org.briarproject.bramble.test.TestUtils.getRandomId;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MessageReconcilerTest extends BrambleTestCase {
+
+	// Reconciliation is probabilistic, so use a fixed seed to make the
+	// results repeatable
+	private final Random random = new Random(1234);
+	private final GroupId groupId = new GroupId(getRandomId());
+	private final MessageReconciler reconciler = new MessageReconciler(random);
+
+	@Test
+	public void testSmallDifferenceIsEstimatedExactly() {
+		List<MessageId> common = createMessageIds(10_000);
+		List<MessageId> ours = new ArrayList<>(common);
+		ours.addAll(createMessageIds(3));
+		List<MessageId> theirs = new ArrayList<>(common);
+		theirs.addAll(createMessageIds(2));
+
+		MessageEstimator e = reconciler.createEstimator(groupId, ours);
+		assertEquals(groupId, e.getGroupId());
+		assertEquals(5, reconciler.estimateDifference(e, theirs));
+	}
+
+	@Test
+	public void testLargeDifferenceIsEstimatedApproximately() {
+		List<MessageId> common = createMessageIds(10_000);
+		List<MessageId> ours = new ArrayList<>(common);
+		ours.addAll(createMessageIds(2000));
+
+		MessageEstimator e = reconciler.createEstimator(groupId, ours);
+		int estimate = reconciler.estimateDifference(e, common);
+		assertTrue(estimate > 1000);
+		assertTrue(estimate < 4000);
+	}
+
+	@Test
+	public void testPeersLearnWhichMessagesTheOtherPeerHas() {
+		List<MessageId> common = createMessageIds(10_000);
+		List<MessageId> onlyOurs = createMessageIds(50);
+		List<MessageId> onlyTheirs = createMessageIds(50);
+		List<MessageId> ours = new ArrayList<>(common);
+		ours.addAll(onlyOurs);
+		List<MessageId> theirs = new ArrayList<>(common);
+		theirs.addAll(onlyTheirs);
+
+		// We send an estimator, they reply with sketches
+		MessageEstimator e = reconciler.createEstimator(groupId, ours);
+		Collection<MessageSketch> sketches =
+				reconciler.createSketches(e, theirs);
+		assertEquals(1, sketches.size());
+		MessageSketch s = sketches.iterator().next();
+		assertEquals(groupId, s.getGroupId());
+
+		Map<MessageId, Boolean> result = reconciler.reconcile(s, ours);
+		assertNotNull(result);
+		Map<MessageId, Boolean> expected = new HashMap<>();
+		for (MessageId m : common) expected.put(m, true);
+		for (MessageId m : onlyOurs) expected.put(m, false);
+		assertEquals(expected, result);
+	}
+
+	@Test
+	public void testLargeDifferencesAreSplitBetweenPartitions() {
+		List<MessageId> common = createMessageIds(1000);
+		List<MessageId> onlyOurs = createMessageIds(3000);
+		List<MessageId> ours = new ArrayList<>(common);
+		ours.addAll(onlyOurs);
+
+		MessageEstimator e = reconciler.createEstimator(groupId, ours);
+		Collection<MessageSketch> sketches =
+				reconciler.createSketches(e, common);
+		assertTrue(sketches.size() > 1);
+
+		Map<MessageId, Boolean> expected = new HashMap<>();
+		for (MessageId m : common) expected.put(m, true);
+		for (MessageId m : onlyOurs) expected.put(m, false);
+		Map<MessageId, Boolean> result = new HashMap<>();
+		for (MessageSketch s : sketches) {
+			assertEquals(sketches.size(), s.getPartitions());
+			Map<MessageId, Boolean> partition = reconciler.reconcile(s, ours);
+			assertNotNull(partition);
+			result.putAll(partition);
+		}
+		assertEquals(expected, result);
+	}
+
+	@Test
+	public void testNoSketchesIfDifferenceIsTooLarge() {
+		int tooMany = MAX_SKETCH_PARTITIONS * 2000;
+		MessageEstimator e = reconciler.createEstimator(groupId,
+				createMessageIds(tooMany));
+
+		assertEquals(0, reconciler.createSketches(e, createMessageIds(1))
+				.size());
+	}
+
+	@Test
+	public void testSketchCannotBeDecodedIfDifferenceIsUnderestimated() {
+		List<MessageId> common = createMessageIds(1000);
+		MessageEstimator e = reconciler.createEstimator(groupId, common);
+		MessageSketch s = reconciler.createSketches(e, common).iterator()
+				.next();
+
+		List<MessageId> ours = new ArrayList<>(common);
+		ours.addAll(createMessageIds(1000));
+		assertNull(reconciler.reconcile(s, ours));
+	}
+
+	private List<MessageId> createMessageIds(int count) {
+		List<MessageId> ids = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			byte[] id = new byte[UniqueId.LENGTH];
+			random.nextBytes(id);
+			ids.add(new MessageId(id));
+		}
+		return ids;
+	}
+}
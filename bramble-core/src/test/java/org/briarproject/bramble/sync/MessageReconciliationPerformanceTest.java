@@ -0,0 +1,135 @@
+package org.briarproject.bramble.sync;
+
+import org.briarproject.bramble.api.UniqueId;
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.api.sync.MessageEstimator;
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.api.sync.MessageSketch;
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.briarproject.bramble.api.record.Record.RECORD_HEADER_BYTES;
+import static org.briarproject.bramble.api.sync.SyncConstants.ESTIMATOR_BYTES;
+import static org.briarproject.bramble.api.sync.SyncConstants.ESTIMATOR_HEADER_BYTES;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_IDS;
+import static org.briarproject.bramble.api.sync.SyncConstants.SKETCH_HEADER_BYTES;
+import static org.briarproject.bramble.test.TestUtils.getRandomId;
+import static org.briarproject.bramble.util.LogUtils.now;
+
+/**
+ * Simulates two peers reconciling a group's messages, and compares the
+ * number of bytes of sync records needed with and without reconciliation.
+ * <p>
+ * Both peers have the same messages apart from a few that only one peer
+ * has. Without reconciliation, each peer offers all its messages and the
+ * other peer acks the messages it has and requests the others. With
+ * reconciliation, each peer sends an estimator and the other peer replies
+ * with sketches, after which each peer knows which of its messages the
+ * other peer lacks. If the sketches can't be decoded, the messages are
+ * offered as usual.
+ */
+@Ignore
+public class MessageReconciliationPerformanceTest extends BrambleTestCase {
+
+	private static final int[] GROUP_SIZES = {1_000, 10_000, 100_000};
+	private static final int[] DIFFERENCES = {0, 10, 100, 1_000, 10_000};
+	private static final int TRIALS = 10;
+
+	private final GroupId groupId = new GroupId(getRandomId());
+	private final MessageReconciler reconciler = new MessageReconciler();
+
+	@Test
+	public void testBytesWithAndWithoutReconciliation() {
+		for (int size : GROUP_SIZES) {
+			for (int difference : DIFFERENCES) {
+				if (difference < size) testReconciliation(size, difference);
+			}
+		}
+	}
+
+	private void testReconciliation(int size, int difference) {
+		long without = 0, with = 0, time = 0;
+		int decoded = 0, roundTrips = 0;
+		for (int trial = 0; trial < TRIALS; trial++) {
+			// Each peer has half of the differences
+			int onlyOurs = difference / 2, onlyTheirs = difference - onlyOurs;
+			List<MessageId> common = createMessageIds(size - onlyOurs);
+			List<MessageId> ours = new ArrayList<>(common);
+			ours.addAll(createMessageIds(onlyOurs));
+			List<MessageId> theirs = new ArrayList<>(common);
+			theirs.addAll(createMessageIds(onlyTheirs));
+
+			// Each peer offers its messages, and the other peer acks the
+			// ones it has and requests the others
+			long offerBytes = getIdRecordBytes(ours.size())
+					+ getIdRecordBytes(theirs.size())
+					+ getIdRecordBytes(common.size()) * 2
+					+ getIdRecordBytes(onlyOurs)
+					+ getIdRecordBytes(onlyTheirs);
+			without += offerBytes;
+
+			// Each peer sends an estimator and the other peer replies with
+			// sketches, after which each peer knows which of its messages
+			// to send without offering them
+			long start = now();
+			long ourBytes = reconcile(ours, theirs);
+			long theirBytes = reconcile(theirs, ours);
+			time += now() - start;
+			if (ourBytes != -1 && theirBytes != -1) {
+				with += ourBytes + theirBytes;
+				decoded++;
+				roundTrips += 1;
+			} else {
+				// Fall back to offering the messages
+				if (ourBytes != -1) with += ourBytes;
+				if (theirBytes != -1) with += theirBytes;
+				with += offerBytes;
+				roundTrips += 2;
+			}
+		}
+		System.out.println(String.format("%,d messages, %,d differences:"
+						+ " %,d bytes without reconciliation, %,d bytes with"
+						+ " (%.1f%%), %d/%d decoded, %.1f round trips,"
+						+ " %,d ms per reconciliation",
+				size, difference, without / TRIALS, with / TRIALS,
+				with * 100.0 / without, decoded, TRIALS,
+				(double) roundTrips / TRIALS, time / TRIALS));
+	}
+
+	/**
+	 * Sends an estimator of the sender's messages and decodes the sketches
+	 * sent in reply, and returns the number of bytes of sync records sent,
+	 * or -1 if the sketches can't be decoded.
+	 */
+	private long reconcile(List<MessageId> sender, List<MessageId> receiver) {
+		MessageEstimator e = reconciler.createEstimator(groupId, sender);
+		long bytes = RECORD_HEADER_BYTES + ESTIMATOR_HEADER_BYTES
+				+ ESTIMATOR_BYTES;
+		Collection<MessageSketch> sketches =
+				reconciler.createSketches(e, receiver);
+		if (sketches.isEmpty()) return -1;
+		for (MessageSketch s : sketches) {
+			bytes += RECORD_HEADER_BYTES + SKETCH_HEADER_BYTES
+					+ s.getCells().length;
+			if (reconciler.reconcile(s, sender) == null) return -1;
+		}
+		return bytes;
+	}
+
+	private List<MessageId> createMessageIds(int count) {
+		List<MessageId> ids = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) ids.add(new MessageId(getRandomId()));
+		return ids;
+	}
+
+	private long getIdRecordBytes(int ids) {
+		int records = (ids + MAX_MESSAGE_IDS - 1) / MAX_MESSAGE_IDS;
+		return (long) ids * UniqueId.LENGTH
+				+ (long) records * RECORD_HEADER_BYTES;
+	}
+}
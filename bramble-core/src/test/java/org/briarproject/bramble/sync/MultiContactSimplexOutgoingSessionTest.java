@@ -0,0 +1,226 @@
+package org.briarproject.bramble.sync;
+
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.api.event.EventBus;
+import org.briarproject.bramble.api.plugin.TransportId;
+import org.briarproject.bramble.api.sync.Ack;
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.api.sync.SyncRecordWriter;
+import org.briarproject.bramble.api.sync.Versions;
+import org.briarproject.bramble.api.transport.StreamWriter;
+import org.briarproject.bramble.sync.MultiContactSimplexOutgoingSession.Stream;
+import org.briarproject.bramble.test.BrambleMockTestCase;
+import org.briarproject.bramble.test.DbExpectations;
+import org.briarproject.bramble.test.ImmediateExecutor;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_BODY_LENGTH;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_IDS;
+import static org.briarproject.bramble.test.TestUtils.getContactId;
+import static org.briarproject.bramble.test.TestUtils.getMessage;
+import static org.briarproject.bramble.test.TestUtils.getRandomId;
+import static org.briarproject.bramble.test.TestUtils.getTransportId;
+
+public class MultiContactSimplexOutgoingSessionTest
+		extends BrambleMockTestCase {
+
+	private static final int MAX_LATENCY = Integer.MAX_VALUE;
+
+	private final DatabaseComponent db = context.mock(DatabaseComponent.class);
+	private final Executor executor = new ImmediateExecutor();
+	private final EventBus eventBus = context.mock(EventBus.class);
+	private final StreamWriter streamWriter =
+			context.mock(StreamWriter.class, "streamWriter");
+	private final SyncRecordWriter recordWriter =
+			context.mock(SyncRecordWriter.class, "recordWriter");
+	private final StreamWriter streamWriter1 =
+			context.mock(StreamWriter.class, "streamWriter1");
+	private final SyncRecordWriter recordWriter1 =
+			context.mock(SyncRecordWriter.class, "recordWriter1");
+
+	private final ContactId contactId = getContactId();
+	private final ContactId contactId1 =
+			new ContactId(contactId.getInt() + 1);
+	private final TransportId transportId = getTransportId();
+	private final Ack ack =
+			new Ack(singletonList(new MessageId(getRandomId())));
+	private final Message message = getMessage(new GroupId(getRandomId()),
+			MAX_MESSAGE_BODY_LENGTH);
+	private final Message message1 = getMessage(new GroupId(getRandomId()),
+			MAX_MESSAGE_BODY_LENGTH);
+	private final Message message2 = getMessage(new GroupId(getRandomId()),
+			MAX_MESSAGE_BODY_LENGTH);
+
+	@Test
+	public void testEachMessageIsReadOnce() throws Exception {
+		MultiContactSimplexOutgoingSession session = createSession();
+
+		Transaction ackTxn = new Transaction(null, false);
+		Transaction noAckTxn = new Transaction(null, false);
+		Transaction noAckTxn1 = new Transaction(null, false);
+		Transaction idsTxn = new Transaction(null, true);
+		Transaction msgTxn = new Transaction(null, true);
+		Transaction sentTxn = new Transaction(null, false);
+
+		context.checking(new DbExpectations() {{
+			// Add listener
+			oneOf(eventBus).addListener(session);
+			// Send the protocol versions to both contacts
+			oneOf(recordWriter).writeVersions(with(any(Versions.class)));
+			oneOf(recordWriter1).writeVersions(with(any(Versions.class)));
+			// One ack to send to the first contact
+			oneOf(db).transactionWithNullableResult(with(false),
+					withNullableDbCallable(ackTxn));
+			oneOf(db).generateAck(ackTxn, contactId, MAX_MESSAGE_IDS);
+			will(returnValue(ack));
+			oneOf(recordWriter).writeAck(ack);
+			oneOf(db).transactionWithNullableResult(with(false),
+					withNullableDbCallable(noAckTxn));
+			oneOf(db).generateAck(noAckTxn, contactId, MAX_MESSAGE_IDS);
+			will(returnValue(null));
+			// No acks to send to the second contact
+			oneOf(db).transactionWithNullableResult(with(false),
+					withNullableDbCallable(noAckTxn1));
+			oneOf(db).generateAck(noAckTxn1, contactId1, MAX_MESSAGE_IDS);
+			will(returnValue(null));
+			// Two messages to send to the first contact, one of which is
+			// also sent to the second contact
+			oneOf(db).transactionWithResult(with(true), withDbCallable(idsTxn));
+			oneOf(db).getUnackedMessagesToSend(idsTxn, contactId);
+			will(returnValue(asList(message.getId(), message1.getId())));
+			oneOf(db).getUnackedMessagesToSend(idsTxn, contactId1);
+			will(returnValue(singletonList(message.getId())));
+			// Load both messages in one batch, reading each message once
+			oneOf(db).transactionWithResult(with(true),
+					withDbCallable(msgTxn));
+			oneOf(db).getContactsToSendMessageTo(msgTxn, message.getId(),
+					asList(contactId, contactId1));
+			will(returnValue(asList(contactId, contactId1)));
+			oneOf(db).getMessage(msgTxn, message.getId());
+			will(returnValue(message));
+			oneOf(db).getContactsToSendMessageTo(msgTxn, message1.getId(),
+					singletonList(contactId));
+			will(returnValue(singletonList(contactId)));
+			oneOf(db).getMessage(msgTxn, message1.getId());
+			will(returnValue(message1));
+			// Send the messages
+			oneOf(recordWriter).writeMessage(message);
+			oneOf(recordWriter).writeMessage(message1);
+			oneOf(recordWriter1).writeMessage(message);
+			// Mark the messages as sent after writing them
+			oneOf(db).transaction(with(false), withDbRunnable(sentTxn));
+			oneOf(db).setMessagesSent(sentTxn, contactId,
+					asList(message.getId(), message1.getId()), MAX_LATENCY);
+			oneOf(db).setMessagesSent(sentTxn, contactId1,
+					singletonList(message.getId()), MAX_LATENCY);
+			// Send the end of stream markers
+			oneOf(streamWriter).sendEndOfStream();
+			oneOf(streamWriter1).sendEndOfStream();
+			// Remove listener
+			oneOf(eventBus).removeListener(session);
+		}});
+
+		session.run();
+	}
+
+	@Test
+	public void testFailedStreamDoesNotAffectOtherStreams() throws Exception {
+		MultiContactSimplexOutgoingSession session = createSession();
+
+		Transaction noAckTxn = new Transaction(null, false);
+		Transaction noAckTxn1 = new Transaction(null, false);
+		Transaction idsTxn = new Transaction(null, true);
+		Transaction msgTxn = new Transaction(null, true);
+		Transaction msgTxn1 = new Transaction(null, true);
+		Transaction sentTxn = new Transaction(null, false);
+		Transaction sentTxn1 = new Transaction(null, false);
+
+		context.checking(new DbExpectations() {{
+			// Add listener
+			oneOf(eventBus).addListener(session);
+			// Send the protocol versions to both contacts
+			oneOf(recordWriter).writeVersions(with(any(Versions.class)));
+			oneOf(recordWriter1).writeVersions(with(any(Versions.class)));
+			// No acks to send
+			oneOf(db).transactionWithNullableResult(with(false),
+					withNullableDbCallable(noAckTxn));
+			oneOf(db).generateAck(noAckTxn, contactId, MAX_MESSAGE_IDS);
+			will(returnValue(null));
+			oneOf(db).transactionWithNullableResult(with(false),
+					withNullableDbCallable(noAckTxn1));
+			oneOf(db).generateAck(noAckTxn1, contactId1, MAX_MESSAGE_IDS);
+			will(returnValue(null));
+			// Three messages to send to both contacts
+			oneOf(db).transactionWithResult(with(true), withDbCallable(idsTxn));
+			oneOf(db).getUnackedMessagesToSend(idsTxn, contactId);
+			will(returnValue(asList(message.getId(), message1.getId(),
+					message2.getId())));
+			oneOf(db).getUnackedMessagesToSend(idsTxn, contactId1);
+			will(returnValue(asList(message.getId(), message1.getId(),
+					message2.getId())));
+			// Load the first two messages in one batch
+			oneOf(db).transactionWithResult(with(true),
+					withDbCallable(msgTxn));
+			oneOf(db).getContactsToSendMessageTo(msgTxn, message.getId(),
+					asList(contactId, contactId1));
+			will(returnValue(asList(contactId, contactId1)));
+			oneOf(db).getMessage(msgTxn, message.getId());
+			will(returnValue(message));
+			oneOf(db).getContactsToSendMessageTo(msgTxn, message1.getId(),
+					asList(contactId, contactId1));
+			will(returnValue(asList(contactId, contactId1)));
+			oneOf(db).getMessage(msgTxn, message1.getId());
+			will(returnValue(message1));
+			// Load the third message in another batch while the first batch
+			// is being written
+			oneOf(db).transactionWithResult(with(true),
+					withDbCallable(msgTxn1));
+			oneOf(db).getContactsToSendMessageTo(msgTxn1, message2.getId(),
+					asList(contactId, contactId1));
+			will(returnValue(asList(contactId, contactId1)));
+			oneOf(db).getMessage(msgTxn1, message2.getId());
+			will(returnValue(message2));
+			// Send the first batch - writing to the second contact fails, so
+			// the batch is only marked as sent to the first contact
+			oneOf(recordWriter).writeMessage(message);
+			oneOf(recordWriter).writeMessage(message1);
+			oneOf(recordWriter1).writeMessage(message);
+			will(throwException(new IOException()));
+			oneOf(db).transaction(with(false), withDbRunnable(sentTxn));
+			oneOf(db).setMessagesSent(sentTxn, contactId,
+					asList(message.getId(), message1.getId()), MAX_LATENCY);
+			// Send the second batch to the first contact only
+			oneOf(recordWriter).writeMessage(message2);
+			oneOf(db).transaction(with(false), withDbRunnable(sentTxn1));
+			oneOf(db).setMessagesSent(sentTxn1, contactId,
+					singletonList(message2.getId()), MAX_LATENCY);
+			// Send the end of stream marker to the first contact only
+			oneOf(streamWriter).sendEndOfStream();
+			// Remove listener
+			oneOf(eventBus).removeListener(session);
+		}});
+
+		session.run();
+	}
+
+	private MultiContactSimplexOutgoingSession createSession() {
+		Map<ContactId, Stream> streams = new LinkedHashMap<>();
+		streams.put(contactId, new Stream(contactId, streamWriter,
+				recordWriter, new SessionMetrics(contactId, transportId)));
+		streams.put(contactId1, new Stream(contactId1, streamWriter1,
+				recordWriter1, new SessionMetrics(contactId1, transportId)));
+		return new MultiContactSimplexOutgoingSession(db, executor, executor,
+				eventBus, transportId, MAX_LATENCY, streams);
+	}
+}
@@ -37,6 +37,8 @@ public class SimplexOutgoingSessionTest extends BrambleMockTestCase {
 
 	private final ContactId contactId = getContactId();
 	private final TransportId transportId = getTransportId();
+	private final SessionMetrics metrics =
+			new SessionMetrics(contactId, transportId);
 	private final Ack ack =
 			new Ack(singletonList(new MessageId(getRandomId())));
 	private final Message message = getMessage(new GroupId(getRandomId()),
@@ -46,7 +48,7 @@ public class SimplexOutgoingSessionTest extends BrambleMockTestCase {
 	public void testNothingToSend() throws Exception {
 		SimplexOutgoingSession session = new SimplexOutgoingSession(db,
 				eventBus, contactId, transportId, MAX_LATENCY,
-				streamWriter, recordWriter);
+				streamWriter, recordWriter, metrics);
 
 		Transaction noAckTxn = new Transaction(null, false);
 		Transaction noMsgTxn = new Transaction(null, false);
@@ -80,7 +82,7 @@ public class SimplexOutgoingSessionTest extends BrambleMockTestCase {
 	public void testSomethingToSend() throws Exception {
 		SimplexOutgoingSession session = new SimplexOutgoingSession(db,
 				eventBus, contactId, transportId, MAX_LATENCY,
-				streamWriter, recordWriter);
+				streamWriter, recordWriter, metrics);
 
 		Transaction ackTxn = new Transaction(null, false);
 		Transaction noAckTxn = new Transaction(null, false);
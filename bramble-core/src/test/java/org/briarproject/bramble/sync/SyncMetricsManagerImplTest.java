@@ -0,0 +1,90 @@
+package org.briarproject.bramble.sync;
+
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.contact.event.ContactRemovedEvent;
+import org.briarproject.bramble.api.plugin.TransportId;
+import org.briarproject.bramble.api.sync.metrics.RecordMetrics;
+import org.briarproject.bramble.api.sync.metrics.SyncMetrics;
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.junit.Test;
+
+import java.util.Collection;
+
+import static org.briarproject.bramble.api.sync.RecordTypes.ACK;
+import static org.briarproject.bramble.api.sync.RecordTypes.MESSAGE;
+import static org.briarproject.bramble.api.sync.RecordTypes.OFFER;
+import static org.briarproject.bramble.test.TestUtils.getContactId;
+import static org.briarproject.bramble.test.TestUtils.getTransportId;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SyncMetricsManagerImplTest extends BrambleTestCase {
+
+	private final ContactId contactId = getContactId();
+	private final ContactId contactId1 = getContactId();
+	private final TransportId transportId = getTransportId();
+	private final TransportId transportId1 = getTransportId();
+
+	private final SyncMetricsManagerImpl metricsManager =
+			new SyncMetricsManagerImpl();
+
+	@Test
+	public void testMetricsAreKeptPerContactAndTransport() {
+		SessionMetrics m = metricsManager.getSessionMetrics(contactId,
+				transportId);
+		assertSame(m, metricsManager.getSessionMetrics(contactId,
+				transportId));
+		SessionMetrics m1 = metricsManager.getSessionMetrics(contactId,
+				transportId1);
+		SessionMetrics m2 = metricsManager.getSessionMetrics(contactId1,
+				transportId);
+
+		m.recordSent(MESSAGE, 100);
+		m.recordSent(MESSAGE, 200);
+		m.recordReceived(ACK, 50);
+		m.recordBatchDbTime(5);
+		m1.recordSent(OFFER, 10);
+		m2.recordReceived(MESSAGE, 1000);
+
+		assertEquals(3, metricsManager.getSyncMetrics().size());
+		Collection<SyncMetrics> forContact =
+				metricsManager.getSyncMetrics(contactId);
+		assertEquals(2, forContact.size());
+		for (SyncMetrics s : forContact) {
+			assertEquals(contactId, s.getContactId());
+			if (s.getTransportId().equals(transportId)) {
+				assertEquals(1, s.getSent().size());
+				RecordMetrics sent = s.getSent().get(MESSAGE);
+				assertEquals(2, sent.getRecords());
+				assertEquals(300, sent.getBytes());
+				RecordMetrics received = s.getReceived().get(ACK);
+				assertEquals(1, received.getRecords());
+				assertEquals(50, received.getBytes());
+				assertEquals(1, s.getBatchDbTime().getCount());
+				assertEquals(5, s.getBatchDbTime().getSum());
+				assertEquals(0, s.getBatchIoTime().getCount());
+			} else {
+				assertEquals(transportId1, s.getTransportId());
+				assertTrue(s.getSent().containsKey(OFFER));
+				assertTrue(s.getReceived().isEmpty());
+			}
+		}
+	}
+
+	@Test
+	public void testMetricsAreRemovedWithContact() {
+		metricsManager.getSessionMetrics(contactId, transportId)
+				.recordSent(MESSAGE, 100);
+		metricsManager.getSessionMetrics(contactId1, transportId)
+				.recordSent(MESSAGE, 100);
+
+		metricsManager.eventOccurred(new ContactRemovedEvent(contactId));
+
+		assertTrue(metricsManager.getSyncMetrics(contactId).isEmpty());
+		Collection<SyncMetrics> all = metricsManager.getSyncMetrics();
+		assertEquals(1, all.size());
+		assertFalse(all.iterator().next().getContactId().equals(contactId));
+	}
+}
@@ -8,8 +8,11 @@ import org.briarproject.bramble.api.record.RecordReader.RecordPredicate;
 import org.briarproject.bramble.api.sync.Ack;
 import org.briarproject.bramble.api.sync.GroupId;
 import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageEstimator;
 import org.briarproject.bramble.api.sync.MessageFactory;
+import org.briarproject.bramble.api.sync.MessageFilter;
 import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.api.sync.MessageSketch;
 import org.briarproject.bramble.api.sync.Offer;
 import org.briarproject.bramble.api.sync.Priority;
 import org.briarproject.bramble.api.sync.Request;
@@ -26,19 +29,33 @@ import java.util.List;
 
 import static org.briarproject.bramble.api.record.Record.MAX_RECORD_PAYLOAD_BYTES;
 import static org.briarproject.bramble.api.sync.RecordTypes.ACK;
+import static org.briarproject.bramble.api.sync.RecordTypes.ESTIMATOR;
+import static org.briarproject.bramble.api.sync.RecordTypes.FILTER;
 import static org.briarproject.bramble.api.sync.RecordTypes.MESSAGE;
 import static org.briarproject.bramble.api.sync.RecordTypes.OFFER;
 import static org.briarproject.bramble.api.sync.RecordTypes.PRIORITY;
 import static org.briarproject.bramble.api.sync.RecordTypes.REQUEST;
+import static org.briarproject.bramble.api.sync.RecordTypes.SKETCH;
 import static org.briarproject.bramble.api.sync.RecordTypes.VERSIONS;
+import static org.briarproject.bramble.api.sync.SyncConstants.ESTIMATOR_BYTES;
+import static org.briarproject.bramble.api.sync.SyncConstants.ESTIMATOR_HEADER_BYTES;
+import static org.briarproject.bramble.api.sync.SyncConstants.FILTER_HEADER_BYTES;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_FILTER_HASH_FUNCTIONS;
 import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_BODY_LENGTH;
 import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_IDS;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_SKETCH_CELLS;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_SKETCH_PARTITIONS;
 import static org.briarproject.bramble.api.sync.SyncConstants.MAX_SUPPORTED_VERSIONS;
 import static org.briarproject.bramble.api.sync.SyncConstants.MESSAGE_HEADER_LENGTH;
 import static org.briarproject.bramble.api.sync.SyncConstants.PRIORITY_NONCE_BYTES;
 import static org.briarproject.bramble.api.sync.SyncConstants.PROTOCOL_VERSION;
+import static org.briarproject.bramble.api.sync.SyncConstants.SKETCH_CELL_BYTES;
+import static org.briarproject.bramble.api.sync.SyncConstants.SKETCH_HASH_FUNCTIONS;
+import static org.briarproject.bramble.api.sync.SyncConstants.SKETCH_HEADER_BYTES;
 import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
 import static org.briarproject.bramble.test.TestUtils.getRandomId;
+import static org.briarproject.bramble.util.ByteUtils.writeUint64;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -181,6 +198,155 @@ public class SyncRecordReaderImplTest extends BrambleMockTestCase {
 		assertEquals(PRIORITY_NONCE_BYTES, priority.getNonce().length);
 	}
 
+	@Test
+	public void testNoFormatExceptionIfFilterIsMaximumSize()
+			throws Exception {
+		byte[] groupId = getRandomId();
+		byte[] bits = getRandomBytes(MAX_RECORD_PAYLOAD_BYTES
+				- FILTER_HEADER_BYTES);
+		expectReadRecord(createFilter(groupId, 123, MAX_FILTER_HASH_FUNCTIONS,
+				bits));
+
+		MessageFilter filter = reader.readFilter();
+		assertArrayEquals(groupId, filter.getGroupId().getBytes());
+		assertEquals(123, filter.getSalt());
+		assertEquals(MAX_FILTER_HASH_FUNCTIONS, filter.getHashFunctions());
+		assertArrayEquals(bits, filter.getBits());
+	}
+
+	@Test(expected = FormatException.class)
+	public void testFormatExceptionIfFilterHasNoBits() throws Exception {
+		expectReadRecord(createFilter(getRandomId(), 123, 1, new byte[0]));
+
+		reader.readFilter();
+	}
+
+	@Test(expected = FormatException.class)
+	public void testFormatExceptionIfFilterHasNoHashFunctions()
+			throws Exception {
+		expectReadRecord(createFilter(getRandomId(), 123, 0,
+				getRandomBytes(123)));
+
+		reader.readFilter();
+	}
+
+	@Test(expected = FormatException.class)
+	public void testFormatExceptionIfFilterHasTooManyHashFunctions()
+			throws Exception {
+		expectReadRecord(createFilter(getRandomId(), 123,
+				MAX_FILTER_HASH_FUNCTIONS + 1, getRandomBytes(123)));
+
+		reader.readFilter();
+	}
+
+	@Test(expected = FormatException.class)
+	public void testFormatExceptionIfFilterSaltIsNegative() throws Exception {
+		expectReadRecord(createFilter(getRandomId(), -1, 1,
+				getRandomBytes(123)));
+
+		reader.readFilter();
+	}
+
+	@Test
+	public void testNoFormatExceptionIfEstimatorIsCorrectSize()
+			throws Exception {
+		byte[] groupId = getRandomId();
+		byte[] cells = getRandomBytes(ESTIMATOR_BYTES);
+		expectReadRecord(createEstimator(groupId, cells));
+
+		MessageEstimator estimator = reader.readEstimator();
+		assertArrayEquals(groupId, estimator.getGroupId().getBytes());
+		assertEquals(123, estimator.getSalt());
+		assertArrayEquals(cells, estimator.getCells());
+	}
+
+	@Test(expected = FormatException.class)
+	public void testFormatExceptionIfEstimatorIsTooShort() throws Exception {
+		expectReadRecord(createEstimator(getRandomId(),
+				getRandomBytes(ESTIMATOR_BYTES - 1)));
+
+		reader.readEstimator();
+	}
+
+	@Test(expected = FormatException.class)
+	public void testFormatExceptionIfEstimatorIsTooLong() throws Exception {
+		expectReadRecord(createEstimator(getRandomId(),
+				getRandomBytes(ESTIMATOR_BYTES + 1)));
+
+		reader.readEstimator();
+	}
+
+	@Test
+	public void testNoFormatExceptionIfSketchIsMaximumSize()
+			throws Exception {
+		byte[] groupId = getRandomId();
+		int cellCount =
+				MAX_SKETCH_CELLS - MAX_SKETCH_CELLS % SKETCH_HASH_FUNCTIONS;
+		byte[] cells = getRandomBytes(cellCount * SKETCH_CELL_BYTES);
+		expectReadRecord(createSketch(groupId, MAX_SKETCH_PARTITIONS - 1,
+				MAX_SKETCH_PARTITIONS, cells));
+
+		MessageSketch sketch = reader.readSketch();
+		assertArrayEquals(groupId, sketch.getGroupId().getBytes());
+		assertEquals(123, sketch.getSalt());
+		assertEquals(MAX_SKETCH_PARTITIONS - 1, sketch.getPartition());
+		assertEquals(MAX_SKETCH_PARTITIONS, sketch.getPartitions());
+		assertEquals(cellCount, sketch.getCellCount());
+		assertArrayEquals(cells, sketch.getCells());
+	}
+
+	@Test(expected = FormatException.class)
+	public void testFormatExceptionIfSketchHasNoCells() throws Exception {
+		expectReadRecord(createSketch(getRandomId(), 0, 1, new byte[0]));
+
+		reader.readSketch();
+	}
+
+	@Test(expected = FormatException.class)
+	public void testFormatExceptionIfSketchHasPartialCell() throws Exception {
+		expectReadRecord(createSketch(getRandomId(), 0, 1,
+				getRandomBytes(SKETCH_HASH_FUNCTIONS * SKETCH_CELL_BYTES + 1)));
+
+		reader.readSketch();
+	}
+
+	@Test(expected = FormatException.class)
+	public void testFormatExceptionIfSketchCellsAreNotMultipleOfHashFunctions()
+			throws Exception {
+		expectReadRecord(createSketch(getRandomId(), 0, 1,
+				getRandomBytes((SKETCH_HASH_FUNCTIONS + 1)
+						* SKETCH_CELL_BYTES)));
+
+		reader.readSketch();
+	}
+
+	@Test(expected = FormatException.class)
+	public void testFormatExceptionIfSketchHasNoPartitions() throws Exception {
+		expectReadRecord(createSketch(getRandomId(), 0, 0,
+				getRandomBytes(SKETCH_HASH_FUNCTIONS * SKETCH_CELL_BYTES)));
+
+		reader.readSketch();
+	}
+
+	@Test(expected = FormatException.class)
+	public void testFormatExceptionIfSketchHasTooManyPartitions()
+			throws Exception {
+		expectReadRecord(createSketch(getRandomId(), 0,
+				MAX_SKETCH_PARTITIONS + 1,
+				getRandomBytes(SKETCH_HASH_FUNCTIONS * SKETCH_CELL_BYTES)));
+
+		reader.readSketch();
+	}
+
+	@Test(expected = FormatException.class)
+	public void testFormatExceptionIfSketchPartitionIsOutOfRange()
+			throws Exception {
+		expectReadRecord(createSketch(getRandomId(), 2, 2,
+				getRandomBytes(SKETCH_HASH_FUNCTIONS * SKETCH_CELL_BYTES)));
+
+		reader.readSketch();
+	}
+
 	@Test
 	public void testEofReturnsTrueWhenAtEndOfStream() throws Exception {
 		expectReadRecord(createAck());
@@ -268,6 +434,40 @@ public class SyncRecordReaderImplTest extends BrambleMockTestCase {
 		return new Record(PROTOCOL_VERSION, PRIORITY, payload);
 	}
 
+	private Record createFilter(byte[] groupId, long salt, int hashFunctions,
+			byte[] bits) {
+		byte[] payload = new byte[FILTER_HEADER_BYTES + bits.length];
+		System.arraycopy(groupId, 0, payload, 0, UniqueId.LENGTH);
+		if (salt < 0) {
+			for (int i = 0; i < 8; i++) payload[UniqueId.LENGTH + i] = -1;
+		} else {
+			writeUint64(salt, payload, UniqueId.LENGTH);
+		}
+		payload[FILTER_HEADER_BYTES - 1] = (byte) hashFunctions;
+		System.arraycopy(bits, 0, payload, FILTER_HEADER_BYTES, bits.length);
+		return new Record(PROTOCOL_VERSION, FILTER, payload);
+	}
+
+	private Record createEstimator(byte[] groupId, byte[] cells) {
+		byte[] payload = new byte[ESTIMATOR_HEADER_BYTES + cells.length];
+		System.arraycopy(groupId, 0, payload, 0, UniqueId.LENGTH);
+		writeUint64(123, payload, UniqueId.LENGTH);
+		System.arraycopy(cells, 0, payload, ESTIMATOR_HEADER_BYTES,
+				cells.length);
+		return new Record(PROTOCOL_VERSION, ESTIMATOR, payload);
+	}
+
+	private Record createSketch(byte[] groupId, int partition,
+			int partitions, byte[] cells) {
+		byte[] payload = new byte[SKETCH_HEADER_BYTES + cells.length];
+		System.arraycopy(groupId, 0, payload, 0, UniqueId.LENGTH);
+		writeUint64(123, payload, UniqueId.LENGTH);
+		payload[SKETCH_HEADER_BYTES - 2] = (byte) partition;
+		payload[SKETCH_HEADER_BYTES - 1] = (byte) partitions;
+		System.arraycopy(cells, 0, payload, SKETCH_HEADER_BYTES, cells.length);
+		return new Record(PROTOCOL_VERSION, SKETCH, payload);
+	}
+
 	private byte[] createPayload() throws Exception {
 		ByteArrayOutputStream payload = new ByteArrayOutputStream();
 		while (payload.size() + UniqueId.LENGTH <= MAX_RECORD_PAYLOAD_BYTES) {
@@ -179,11 +179,65 @@ public abstract class BrambleIntegrationTest<C extends BrambleIntegrationTestCom
 			BrambleIntegrationTestComponent toComponent, ContactId toId,
 			TransportId transportId, int numNew, int numDupes,
 			int numPendingOrInvalid, int numDelivered) throws Exception {
+		sendMessages(fromComponent, toComponent, toId, transportId,
+				numNew + numDupes);
+
+		if (numPendingOrInvalid > 0) {
+			validationWaiter.await(TIMEOUT, numPendingOrInvalid);
+		}
+		assertEquals("Messages validated", numPendingOrInvalid,
+				validationCounter.getAndSet(0));
+
+		if (numDelivered > 0) {
+			deliveryWaiter.await(TIMEOUT, numDelivered);
+		}
+		assertEquals("Messages delivered", numDelivered,
+				deliveryCounter.getAndSet(0));
+
+		try {
+			messageSemaphore.tryAcquire(numNew, TIMEOUT, MILLISECONDS);
+		} catch (InterruptedException e) {
+			LOG.info("Interrupted while waiting for messages");
+			Thread.currentThread().interrupt();
+			fail();
+		}
+	}
+
+	/**
+	 * Syncs messages that may depend on each other, so some of the messages
+	 * may be pending until their dependencies have been delivered. Checks
+	 * that all the messages are delivered.
+	 */
+	protected void syncMessagesWithDependencies(
+			BrambleIntegrationTestComponent fromComponent,
+			BrambleIntegrationTestComponent toComponent, ContactId toId,
+			int num) throws Exception {
+		sendMessages(fromComponent, toComponent, toId, SIMPLEX_TRANSPORT_ID,
+				num);
+
+		deliveryWaiter.await(TIMEOUT, num);
+		assertEquals("Messages delivered", num, deliveryCounter.getAndSet(0));
+		// Any pending messages were validated before being delivered
+		assertTrue(validationCounter.getAndSet(0) < num);
+		validationWaiter = new Waiter();
+
+		try {
+			messageSemaphore.tryAcquire(num, TIMEOUT, MILLISECONDS);
+		} catch (InterruptedException e) {
+			LOG.info("Interrupted while waiting for messages");
+			Thread.currentThread().interrupt();
+			fail();
+		}
+	}
+
+	private void sendMessages(BrambleIntegrationTestComponent fromComponent,
+			BrambleIntegrationTestComponent toComponent, ContactId toId,
+			TransportId transportId, int numSent) throws Exception {
 		// Debug output
 		String from =
 				fromComponent.getIdentityManager().getLocalAuthor().getName();
 		String to = toComponent.getIdentityManager().getLocalAuthor().getName();
-		LOG.info("TEST: Sending " + (numNew + numDupes) + " message(s) from "
+		LOG.info("TEST: Sending " + numSent + " message(s) from "
 				+ from + " to " + to);
 
 		// Listen for messages being sent
@@ -202,7 +256,7 @@ public abstract class BrambleIntegrationTest<C extends BrambleIntegrationTestCom
 		// Check that the expected number of messages were sent
 		waitForEvents(fromComponent);
 		fromComponent.getEventBus().removeListener(sendListener);
-		assertEquals("Messages sent", numNew + numDupes,
+		assertEquals("Messages sent", numSent,
 				sendListener.sent.size());
 
 		// Read the messages from the transport stream
@@ -211,26 +265,6 @@ public abstract class BrambleIntegrationTest<C extends BrambleIntegrationTestCom
 				new TestTransportConnectionReader(in);
 		toComponent.getConnectionManager().manageIncomingConnection(
 				transportId, reader);
-
-		if (numPendingOrInvalid > 0) {
-			validationWaiter.await(TIMEOUT, numPendingOrInvalid);
-		}
-		assertEquals("Messages validated", numPendingOrInvalid,
-				validationCounter.getAndSet(0));
-
-		if (numDelivered > 0) {
-			deliveryWaiter.await(TIMEOUT, numDelivered);
-		}
-		assertEquals("Messages delivered", numDelivered,
-				deliveryCounter.getAndSet(0));
-
-		try {
-			messageSemaphore.tryAcquire(numNew, TIMEOUT, MILLISECONDS);
-		} catch (InterruptedException e) {
-			LOG.info("Interrupted while waiting for messages");
-			Thread.currentThread().interrupt();
-			fail();
-		}
 	}
 
 	protected void awaitPendingMessageDelivery(int num)
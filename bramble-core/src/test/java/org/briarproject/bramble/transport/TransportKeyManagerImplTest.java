@@ -7,6 +7,7 @@ import org.briarproject.bramble.api.crypto.TransportCrypto;
 import org.briarproject.bramble.api.db.DatabaseComponent;
 import org.briarproject.bramble.api.db.Transaction;
 import org.briarproject.bramble.api.plugin.TransportId;
+import org.briarproject.bramble.api.sync.SyncConstants;
 import org.briarproject.bramble.api.system.Clock;
 import org.briarproject.bramble.api.system.TaskScheduler;
 import org.briarproject.bramble.api.transport.IncomingKeys;
@@ -33,6 +34,7 @@ import java.util.concurrent.Executor;
 import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.briarproject.bramble.api.sync.SyncConstants.SUPPORTED_VERSIONS;
 import static org.briarproject.bramble.api.transport.TransportConstants.MAX_CLOCK_DIFFERENCE;
 import static org.briarproject.bramble.api.transport.TransportConstants.PROTOCOL_VERSION;
 import static org.briarproject.bramble.api.transport.TransportConstants.REORDERING_WINDOW_SIZE;
@@ -283,6 +285,9 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 		expectAddContactKeysNotUpdated(alice, true, transportKeys, txn);
 
 		context.checking(new Expectations() {{
+			// Check whether the contact supports large frames
+			oneOf(db).getSyncVersions(txn, contactId);
+			will(returnValue(singletonList(SyncConstants.PROTOCOL_VERSION)));
 			// Increment the stream counter
 			oneOf(db).incrementStreamCounter(txn, transportId, keySetId);
 		}});
@@ -301,6 +306,8 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 		assertEquals(tagKey, ctx.getTagKey());
 		assertEquals(headerKey, ctx.getHeaderKey());
 		assertEquals(MAX_32_BIT_UNSIGNED, ctx.getStreamNumber());
+		// The contact doesn't support large frames
+		assertFalse(ctx.useLargeFrames());
 		// The second request should return null, the counter is exhausted
 		assertFalse(transportKeyManager.canSendOutgoingStreams(contactId));
 		assertNull(transportKeyManager.getStreamContext(txn, contactId));
@@ -529,6 +536,9 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 		context.checking(new Expectations() {{
 			// Activate the keys
 			oneOf(db).setTransportKeysActive(txn, transportId, keySetId);
+			// Check whether the contact supports large frames
+			oneOf(db).getSyncVersions(txn, contactId);
+			will(returnValue(SUPPORTED_VERSIONS));
 			// Increment the stream counter
 			oneOf(db).incrementStreamCounter(txn, transportId, keySetId);
 		}});
@@ -551,6 +561,8 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 		assertEquals(tagKey, ctx.getTagKey());
 		assertEquals(headerKey, ctx.getHeaderKey());
 		assertEquals(0L, ctx.getStreamNumber());
+		// The contact supports large frames
+		assertTrue(ctx.useLargeFrames());
 	}
 
 	@Test
@@ -592,6 +604,9 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 					1, new byte[REORDERING_WINDOW_SIZE / 8]);
 			// Activate the keys
 			oneOf(db).setTransportKeysActive(txn, transportId, keySetId);
+			// Check whether the contact supports large frames
+			oneOf(db).getSyncVersions(txn, contactId);
+			will(returnValue(SUPPORTED_VERSIONS));
 			// Increment the stream counter
 			oneOf(db).incrementStreamCounter(txn, transportId, keySetId);
 		}});
@@ -37,4 +37,9 @@ class AndroidDatabaseConfig implements DatabaseConfig {
 	public KeyStrengthener getKeyStrengthener() {
 		return keyStrengthener;
 	}
+
+	@Override
+	public boolean useMessageFileStore() {
+		return false;
+	}
 }
@@ -7,6 +7,7 @@ public interface MediaConstants {
 	// Metadata keys for messages
 	String MSG_KEY_CONTENT_TYPE = "contentType";
 	String MSG_KEY_DESCRIPTOR_LENGTH = "descriptorLength";
+	String MSG_KEY_ATTACHMENT_LENGTH = "attachmentLength";
 
 	/**
 	 * The maximum length of an attachment's content type in UTF-8 bytes.
@@ -18,4 +19,11 @@ public interface MediaConstants {
 	 * TODO: Different limit for GIFs?
 	 */
 	int MAX_IMAGE_SIZE = MAX_MESSAGE_BODY_LENGTH - 100; // 6 * 1024 * 1024;
+
+	/**
+	 * The maximum size of an attachment. Attachments that don't fit in a
+	 * single message are split into chunks, which requires support from
+	 * the contact's client.
+	 */
+	int MAX_ATTACHMENT_SIZE = 100 * 1024 * 1024; // 100 MiB
 }
@@ -11,6 +11,7 @@ import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nullable;
 
@@ -132,6 +133,12 @@ public interface BlogManager {
 	 */
 	String getPostText(Transaction txn, MessageId m) throws DbException;
 
+	/**
+	 * Returns the text of each of the blog posts with the given IDs.
+	 */
+	Map<MessageId, String> getPostTexts(Transaction txn,
+			Collection<MessageId> m) throws DbException;
+
 	/**
 	 * Returns the headers of all posts in the given blog.
 	 */
@@ -19,6 +19,19 @@ public interface MessageTree<T extends MessageTree.MessageNode> {
 
 	List<T> depthFirstOrder();
 
+	/**
+	 * Returns a window of the depth-first order, starting at the given
+	 * offset and containing at most the given number of nodes. Only the
+	 * nodes in the window have their levels set.
+	 */
+	List<T> depthFirstOrder(int offset, int limit);
+
+	/**
+	 * Returns the number of nodes in the depth-first order. Nodes whose
+	 * parents haven't been added are not included.
+	 */
+	int size();
+
 	boolean contains(MessageId m);
 
 	@NotNullByDefault
@@ -13,6 +13,8 @@ import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collection;
+import java.util.Map;
 
 import javax.annotation.Nullable;
 
@@ -32,7 +34,7 @@ public interface MessagingManager extends ConversationClient {
 	/**
 	 * The current minor version of the messaging client.
 	 */
-	int MINOR_VERSION = 3;
+	int MINOR_VERSION = 4;
 
 	/**
 	 * Stores a local private message.
@@ -45,7 +47,11 @@ public interface MessagingManager extends ConversationClient {
 	void addLocalMessage(Transaction txn, PrivateMessage m) throws DbException;
 
 	/**
-	 * Stores a local attachment message.
+	 * Stores a local attachment. The attachment is read from the given
+	 * stream, which is closed when this method returns. If the attachment
+	 * doesn't fit in a single message and the contact supports large
+	 * attachments, it's stored as a series of chunks without being held in
+	 * memory.
 	 *
 	 * @throws FileTooBigException If the attachment is too big
 	 */
@@ -86,6 +92,13 @@ public interface MessagingManager extends ConversationClient {
 	@Nullable
 	String getMessageText(Transaction txn, MessageId m) throws DbException;
 
+	/**
+	 * Returns the text of each of the private messages with the given IDs.
+	 * Private messages that have no text are not included in the map.
+	 */
+	Map<MessageId, String> getMessageTexts(Transaction txn,
+			Collection<MessageId> m) throws DbException;
+
 	/**
 	 * Returns the private message format supported by the given contact.
 	 */
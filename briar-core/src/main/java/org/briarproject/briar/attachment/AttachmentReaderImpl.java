@@ -3,6 +3,7 @@ package org.briarproject.briar.attachment;
 import org.briarproject.bramble.api.FormatException;
 import org.briarproject.bramble.api.client.ClientHelper;
 import org.briarproject.bramble.api.data.BdfDictionary;
+import org.briarproject.bramble.api.data.BdfList;
 import org.briarproject.bramble.api.db.DbException;
 import org.briarproject.bramble.api.db.NoSuchMessageException;
 import org.briarproject.bramble.api.db.Transaction;
@@ -15,9 +16,12 @@ import org.briarproject.briar.api.attachment.AttachmentReader;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.inject.Inject;
 
+import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_ATTACHMENT_LENGTH;
 import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_CONTENT_TYPE;
 import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_DESCRIPTOR_LENGTH;
 
@@ -41,7 +45,6 @@ public class AttachmentReaderImpl implements AttachmentReader {
 	@Override
 	public Attachment getAttachment(Transaction txn, AttachmentHeader h)
 			throws DbException {
-		// TODO: Support large messages
 		MessageId m = h.getMessageId();
 		Message message = clientHelper.getMessage(txn, m);
 		// Check that the message is in the expected group, to prevent it from
@@ -56,6 +59,20 @@ public class AttachmentReaderImpl implements AttachmentReader {
 			String contentType = meta.getString(MSG_KEY_CONTENT_TYPE);
 			if (!contentType.equals(h.getContentType()))
 				throw new NoSuchMessageException();
+			Long length = meta.getOptionalLong(MSG_KEY_ATTACHMENT_LENGTH);
+			if (length != null) {
+				// The body is a manifest that lists the attachment's indexes.
+				// The chunks will be loaded from the DB as they're read
+				// Message type, content type, attachment length, index IDs
+				BdfList indexIds = clientHelper.toList(message).getList(3);
+				List<MessageId> ids = new ArrayList<>(indexIds.size());
+				for (int i = 0; i < indexIds.size(); i++) {
+					ids.add(new MessageId(indexIds.getRaw(i)));
+				}
+				InputStream stream = new ChunkedAttachmentInputStream(db,
+						clientHelper, h.getGroupId(), ids, length);
+				return new Attachment(h, stream);
+			}
 			int offset = meta.getInt(MSG_KEY_DESCRIPTOR_LENGTH);
 			InputStream stream = new ByteArrayInputStream(body, offset,
 					body.length - offset);
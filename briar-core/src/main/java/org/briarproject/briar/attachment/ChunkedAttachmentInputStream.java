@@ -0,0 +1,128 @@
+package org.briarproject.briar.attachment;
+
+import org.briarproject.bramble.api.FormatException;
+import org.briarproject.bramble.api.client.ClientHelper;
+import org.briarproject.bramble.api.data.BdfList;
+import org.briarproject.bramble.api.db.DbException;
+import org.briarproject.bramble.api.db.TransactionManager;
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static org.briarproject.bramble.util.ValidationUtils.checkSize;
+
+/**
+ * An {@link InputStream} that reads a large attachment from the DB. The
+ * attachment's indexes and chunks are loaded when they're needed, each in
+ * its own transaction, so only one chunk is held in memory at a time.
+ */
+@NotThreadSafe
+@NotNullByDefault
+class ChunkedAttachmentInputStream extends InputStream {
+
+	private final TransactionManager db;
+	private final ClientHelper clientHelper;
+	private final GroupId groupId;
+	private final List<MessageId> indexIds;
+	private final long length;
+
+	private int nextIndex = 0, nextChunk = 0;
+	private List<MessageId> chunkIds = new ArrayList<>();
+	private byte[] chunk = new byte[0];
+	private int chunkOffset = 0;
+	private long bytesRead = 0;
+
+	ChunkedAttachmentInputStream(TransactionManager db,
+			ClientHelper clientHelper, GroupId groupId,
+			List<MessageId> indexIds, long length) {
+		this.db = db;
+		this.clientHelper = clientHelper;
+		this.groupId = groupId;
+		this.indexIds = indexIds;
+		this.length = length;
+	}
+
+	@Override
+	public int available() {
+		return chunk.length - chunkOffset;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (chunkOffset == chunk.length && !readNextChunk()) return -1;
+		bytesRead++;
+		return chunk[chunkOffset++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) return 0;
+		if (chunkOffset == chunk.length && !readNextChunk()) return -1;
+		len = Math.min(len, chunk.length - chunkOffset);
+		System.arraycopy(chunk, chunkOffset, b, off, len);
+		chunkOffset += len;
+		bytesRead += len;
+		return len;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		if (n <= 0) return 0;
+		if (chunkOffset == chunk.length && !readNextChunk()) return 0;
+		int skipped = (int) Math.min(n, chunk.length - chunkOffset);
+		chunkOffset += skipped;
+		bytesRead += skipped;
+		return skipped;
+	}
+
+	/**
+	 * Loads the next chunk, and the next index if necessary. Returns false
+	 * if the end of the attachment has been reached.
+	 */
+	private boolean readNextChunk() throws IOException {
+		try {
+			if (nextChunk == chunkIds.size()) {
+				if (nextIndex == indexIds.size()) {
+					// Check that the attachment has the expected length
+					if (bytesRead != length) throw new FormatException();
+					return false;
+				}
+				// Message type, chunk IDs
+				BdfList index = loadPart(indexIds.get(nextIndex++));
+				BdfList ids = index.getList(1);
+				if (ids.isEmpty()) throw new FormatException();
+				chunkIds = new ArrayList<>(ids.size());
+				for (int i = 0; i < ids.size(); i++) {
+					chunkIds.add(new MessageId(ids.getRaw(i)));
+				}
+				nextChunk = 0;
+			}
+			// Message type, chunk data
+			chunk = loadPart(chunkIds.get(nextChunk++)).getRaw(1);
+			chunkOffset = 0;
+			if (chunk.length == 0 || bytesRead + chunk.length > length)
+				throw new FormatException();
+			return true;
+		} catch (DbException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private BdfList loadPart(MessageId m) throws DbException, FormatException {
+		Message message = db.transactionWithResult(true, txn ->
+				clientHelper.getMessage(txn, m));
+		// Check that the part is in the same group as the attachment
+		if (!message.getGroupId().equals(groupId)) throw new FormatException();
+		BdfList body = clientHelper.toList(message);
+		checkSize(body, 2);
+		return body;
+	}
+}
@@ -6,7 +6,6 @@ import org.briarproject.bramble.api.client.ClientHelper;
 import org.briarproject.bramble.api.contact.Contact;
 import org.briarproject.bramble.api.contact.ContactManager.ContactHook;
 import org.briarproject.bramble.api.data.BdfDictionary;
-import org.briarproject.bramble.api.data.BdfEntry;
 import org.briarproject.bramble.api.data.BdfList;
 import org.briarproject.bramble.api.data.MetadataParser;
 import org.briarproject.bramble.api.db.DatabaseComponent;
@@ -38,18 +37,16 @@ import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 
+import static java.util.Collections.emptyMap;
 import static org.briarproject.bramble.api.sync.validation.IncomingMessageHook.DeliveryAction.ACCEPT_DO_NOT_SHARE;
 import static org.briarproject.bramble.api.sync.validation.IncomingMessageHook.DeliveryAction.ACCEPT_SHARE;
 import static org.briarproject.briar.api.blog.BlogConstants.KEY_AUTHOR;
@@ -490,6 +487,21 @@ class BlogManagerImpl extends BdfIncomingMessageHook implements BlogManager,
 		}
 	}
 
+	@Override
+	public Map<MessageId, String> getPostTexts(Transaction txn,
+			Collection<MessageId> m) throws DbException {
+		try {
+			Map<MessageId, String> texts = new HashMap<>();
+			for (Entry<MessageId, BdfList> e :
+					clientHelper.getMessagesAsLists(txn, m).entrySet()) {
+				texts.put(e.getKey(), getPostText(e.getValue()));
+			}
+			return texts;
+		} catch (FormatException e) {
+			throw new DbException(e);
+		}
+	}
+
 	private String getPostText(BdfList message) throws FormatException {
 		MessageType type = MessageType.valueOf(message.getInt(0));
 		if (type == POST) {
@@ -513,43 +525,22 @@ class BlogManagerImpl extends BdfIncomingMessageHook implements BlogManager,
 	@Override
 	public List<BlogPostHeader> getPostHeaders(Transaction txn, GroupId g)
 			throws DbException {
-		// Query for posts and comments only
-		BdfDictionary query1 = BdfDictionary.of(
-				new BdfEntry(KEY_TYPE, POST.getInt())
-		);
-		BdfDictionary query2 = BdfDictionary.of(
-				new BdfEntry(KEY_TYPE, COMMENT.getInt())
-		);
-
 		List<BlogPostHeader> headers = new ArrayList<>();
 		try {
-			Map<MessageId, BdfDictionary> metadata1 =
-					clientHelper.getMessageMetadataAsDictionary(txn, g, query1);
-			Map<MessageId, BdfDictionary> metadata2 =
-					clientHelper.getMessageMetadataAsDictionary(txn, g, query2);
+			// Load the metadata for all messages in the blog with one query.
+			// The parent of every comment is in the same blog, so this
+			// includes the wrapped posts and comments needed for resolving
+			// comment chains
 			Map<MessageId, BdfDictionary> metadata =
-					new HashMap<>(metadata1.size() + metadata2.size());
-			metadata.putAll(metadata1);
-			metadata.putAll(metadata2);
-			// get all authors we need to get the information for
-			Set<AuthorId> authors = new HashSet<>();
-			for (Entry<MessageId, BdfDictionary> entry : metadata.entrySet()) {
-				BdfList authorList = entry.getValue().getList(KEY_AUTHOR);
-				Author a = clientHelper.parseAndValidateAuthor(authorList);
-				authors.add(a.getId());
-			}
-			// get information for all authors
-			Map<AuthorId, AuthorInfo> authorInfos = new HashMap<>();
-			for (AuthorId authorId : authors) {
-				authorInfos.put(authorId,
-						authorManager.getAuthorInfo(txn, authorId));
-			}
-			// get post headers
+					clientHelper.getMessageMetadataAsDictionary(txn, g);
+			HeaderCache cache = new HeaderCache(metadata);
 			for (Entry<MessageId, BdfDictionary> entry : metadata.entrySet()) {
 				BdfDictionary meta = entry.getValue();
-				BlogPostHeader h = getPostHeaderFromMetadata(txn, g,
-						entry.getKey(), meta, authorInfos);
-				headers.add(h);
+				// Return posts and comments only
+				MessageType type = getMessageType(meta);
+				if (type != POST && type != COMMENT) continue;
+				headers.add(getPostHeaderFromMetadata(txn, g, entry.getKey(),
+						meta, cache));
 			}
 		} catch (FormatException e) {
 			throw new DbException(e);
@@ -581,24 +572,16 @@ class BlogManagerImpl extends BdfIncomingMessageHook implements BlogManager,
 		removeHooks.add(hook);
 	}
 
-	private BlogPostHeader getPostHeaderFromMetadata(Transaction txn,
-			GroupId groupId, MessageId id) throws DbException, FormatException {
-		BdfDictionary meta =
-				clientHelper.getMessageMetadataAsDictionary(txn, id);
-		return getPostHeaderFromMetadata(txn, groupId, id, meta);
-	}
-
 	private BlogPostHeader getPostHeaderFromMetadata(Transaction txn,
 			GroupId groupId, MessageId id, BdfDictionary meta)
 			throws DbException, FormatException {
 		return getPostHeaderFromMetadata(txn, groupId, id, meta,
-				Collections.emptyMap());
+				new HeaderCache(emptyMap()));
 	}
 
 	private BlogPostHeader getPostHeaderFromMetadata(Transaction txn,
 			GroupId groupId, MessageId id, BdfDictionary meta,
-			Map<AuthorId, AuthorInfo> authorInfos)
-			throws DbException, FormatException {
+			HeaderCache cache) throws DbException, FormatException {
 
 		MessageType type = getMessageType(meta);
 
@@ -611,28 +594,64 @@ class BlogManagerImpl extends BdfIncomingMessageHook implements BlogManager,
 		AuthorInfo authorInfo;
 		if (isFeedPost) {
 			authorInfo = new AuthorInfo(NONE);
-		} else if (authorInfos.containsKey(author.getId())) {
-			authorInfo = authorInfos.get(author.getId());
 		} else {
-			authorInfo = authorManager.getAuthorInfo(txn, author.getId());
+			authorInfo = cache.authorInfos.get(author.getId());
+			if (authorInfo == null) {
+				authorInfo = authorManager.getAuthorInfo(txn, author.getId());
+				cache.authorInfos.put(author.getId(), authorInfo);
+			}
 		}
 
 		boolean read = meta.getBoolean(KEY_READ, false);
 
+		BlogPostHeader header;
 		if (type == COMMENT || type == WRAPPED_COMMENT) {
 			String comment = meta.getOptionalString(KEY_COMMENT);
 			MessageId parentId = new MessageId(meta.getRaw(KEY_PARENT_MSG_ID));
 			BlogPostHeader parent =
-					getPostHeaderFromMetadata(txn, groupId, parentId);
-			return new BlogCommentHeader(type, groupId, comment, parent, id,
+					getParentHeader(txn, groupId, parentId, cache);
+			header = new BlogCommentHeader(type, groupId, comment, parent, id,
 					timestamp, timeReceived, author, authorInfo, read);
 		} else {
-			return new BlogPostHeader(type, groupId, id, timestamp,
+			header = new BlogPostHeader(type, groupId, id, timestamp,
 					timeReceived, author, authorInfo, isFeedPost, read);
 		}
+		cache.headers.put(id, header);
+		return header;
+	}
+
+	private BlogPostHeader getParentHeader(Transaction txn, GroupId groupId,
+			MessageId parentId, HeaderCache cache)
+			throws DbException, FormatException {
+		// Use the parent's header if it has already been created
+		BlogPostHeader parent = cache.headers.get(parentId);
+		if (parent != null) return parent;
+		// Use the parent's metadata if it has already been loaded
+		BdfDictionary meta = cache.metadata.get(parentId);
+		if (meta == null) {
+			meta = clientHelper.getMessageMetadataAsDictionary(txn, parentId);
+		}
+		return getPostHeaderFromMetadata(txn, groupId, parentId, meta, cache);
 	}
 
 	private MessageType getMessageType(BdfDictionary d) throws FormatException {
 		return MessageType.valueOf(d.getInt(KEY_TYPE));
 	}
+
+	/**
+	 * Holds the metadata, headers and author info that have been loaded
+	 * while creating headers, so that the parents shared by many comments are
+	 * only loaded once.
+	 */
+	@NotNullByDefault
+	private static class HeaderCache {
+
+		private final Map<MessageId, BdfDictionary> metadata;
+		private final Map<MessageId, BlogPostHeader> headers = new HashMap<>();
+		private final Map<AuthorId, AuthorInfo> authorInfos = new HashMap<>();
+
+		private HeaderCache(Map<MessageId, BdfDictionary> metadata) {
+			this.metadata = metadata;
+		}
+	}
 }
@@ -9,25 +9,59 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
+import static java.util.Collections.newSetFromMap;
+
+/**
+ * A {@link MessageTree} that's maintained incrementally as nodes are added.
+ * <p>
+ * The children of each node are kept in timestamp order, so adding a single
+ * node only inserts it into its parent's list of children. The size of each
+ * node's subtree is also maintained, so a window of the depth-first order
+ * can be returned without visiting the subtrees that precede it.
+ * <p>
+ * A node may be added before its parent. It becomes part of the tree when
+ * the parent is added.
+ */
 @ThreadSafe
 @NotNullByDefault
 public class MessageTreeImpl<T extends MessageTree.MessageNode>
 		implements MessageTree<T> {
 
 	@GuardedBy("this")
-	private final Map<MessageId, List<T>> nodeMap = new HashMap<>();
+	private final Map<MessageId, T> nodes = new HashMap<>();
+
+	/**
+	 * The children of each node, in timestamp order. The parent of a list
+	 * may not have been added yet.
+	 */
+	@GuardedBy("this")
+	private final Map<MessageId, List<T>> childMap = new HashMap<>();
+
+	/**
+	 * The number of nodes in the subtree rooted at each node, including the
+	 * node itself.
+	 */
+	@GuardedBy("this")
+	private final Map<MessageId, Integer> subtreeSizes = new HashMap<>();
 
 	@GuardedBy("this")
 	private final List<T> roots = new ArrayList<>();
 
+	/**
+	 * The number of nodes that can be reached from the roots.
+	 */
 	@GuardedBy("this")
-	private final List<List<T>> unsortedLists = new ArrayList<>();
+	private int size = 0;
 
 	@SuppressWarnings("UseCompareMethod")
 	private final Comparator<T> comparator = (o1, o2) ->
@@ -35,77 +69,164 @@ public class MessageTreeImpl<T extends MessageTree.MessageNode>
 
 	@Override
 	public synchronized void clear() {
+		nodes.clear();
+		childMap.clear();
+		subtreeSizes.clear();
 		roots.clear();
-		nodeMap.clear();
+		size = 0;
 	}
 
 	@Override
 	public synchronized void add(Collection<T> nodes) {
-		// add all nodes to the node map
+		// Appending to each list and sorting the lists that were touched is
+		// cheaper than inserting many nodes in order
+		Set<List<T>> unsorted = newSetFromMap(new IdentityHashMap<>());
+		List<T> added = new ArrayList<>(nodes.size());
+		Set<MessageId> addedIds = new HashSet<>();
 		for (T node : nodes) {
-			nodeMap.put(node.getId(), new ArrayList<>());
+			if (this.nodes.containsKey(node.getId())) continue;
+			this.nodes.put(node.getId(), node);
+			List<T> siblings = getSiblings(node);
+			siblings.add(node);
+			unsorted.add(siblings);
+			added.add(node);
+			addedIds.add(node.getId());
 		}
-		// parse the nodes for dependencies
-		for (T node : nodes) {
-			parseNode(node);
+		for (List<T> list : unsorted) {
+			//noinspection Java8ListSort
+			Collections.sort(list, comparator);
+		}
+		// Nodes are counted once their subtrees are complete, so count the
+		// nodes whose parents weren't added at the same time
+		for (T node : added) computeSubtreeSize(node.getId());
+		for (T node : added) {
+			MessageId parentId = node.getParentId();
+			if (parentId == null || !addedIds.contains(parentId))
+				addToAncestors(parentId, subtreeSizes.get(node.getId()));
 		}
-		sortUnsorted();
 	}
 
 	@Override
 	public synchronized void add(T node) {
-		add(Collections.singletonList(node));
+		if (nodes.containsKey(node.getId())) return;
+		nodes.put(node.getId(), node);
+		List<T> siblings = getSiblings(node);
+		// Insert the node after any siblings with the same timestamp
+		int index = Collections.binarySearch(siblings, node, comparator);
+		if (index < 0) {
+			index = -index - 1;
+		} else {
+			while (index < siblings.size() && comparator.compare(
+					siblings.get(index), node) == 0) {
+				index++;
+			}
+		}
+		siblings.add(index, node);
+		int subtreeSize = computeSubtreeSize(node.getId());
+		addToAncestors(node.getParentId(), subtreeSize);
 	}
 
 	@GuardedBy("this")
-	private void markAsUnsorted(List<T> list) {
-		if (!unsortedLists.contains(list))
-			unsortedLists.add(list);
+	private List<T> getSiblings(T node) {
+		MessageId parentId = node.getParentId();
+		if (parentId == null) return roots;
+		List<T> siblings = childMap.get(parentId);
+		if (siblings == null) {
+			siblings = new ArrayList<>();
+			childMap.put(parentId, siblings);
+		}
+		return siblings;
 	}
 
+	/**
+	 * Computes and stores the size of the subtree rooted at the given node,
+	 * and any subtrees below it that haven't been computed.
+	 */
 	@GuardedBy("this")
-	private void parseNode(T node) {
-		if (node.getParentId() == null) {
-			roots.add(node);
-			markAsUnsorted(roots);
-		} else {
-			// retrieve the parent's children
-			List<T> pChildren = nodeMap.get(node.getParentId());
-			pChildren.add(node);
-			markAsUnsorted(pChildren);
+	private int computeSubtreeSize(MessageId m) {
+		Integer known = subtreeSizes.get(m);
+		if (known != null) return known;
+		int subtreeSize = 1;
+		List<T> children = childMap.get(m);
+		if (children != null) {
+			for (T child : children) {
+				subtreeSize += computeSubtreeSize(child.getId());
+			}
 		}
+		subtreeSizes.put(m, subtreeSize);
+		return subtreeSize;
 	}
 
+	/**
+	 * Adds the given number of nodes to the subtree sizes of the given node
+	 * and its ancestors, and to the size of the tree if the nodes can be
+	 * reached from a root.
+	 */
 	@GuardedBy("this")
-	private void sortUnsorted() {
-		for (List<T> list : unsortedLists) {
-			//noinspection Java8ListSort
-			Collections.sort(list, comparator);
+	private void addToAncestors(@Nullable MessageId parentId, int count) {
+		while (parentId != null) {
+			T parent = nodes.get(parentId);
+			// The nodes can't be reached until the parent has been added
+			if (parent == null) return;
+			Integer subtreeSize = subtreeSizes.get(parentId);
+			if (subtreeSize != null)
+				subtreeSizes.put(parentId, subtreeSize + count);
+			parentId = parent.getParentId();
 		}
-		unsortedLists.clear();
+		size += count;
+	}
+
+	@Override
+	public synchronized List<T> depthFirstOrder() {
+		return depthFirstOrder(0, size);
 	}
 
+	@Override
+	public synchronized List<T> depthFirstOrder(int offset, int limit) {
+		if (offset < 0 || limit < 0) throw new IllegalArgumentException();
+		List<T> window = new ArrayList<>(Math.min(limit, size));
+		if (limit > 0) traverse(window, roots, 0, offset, limit);
+		return window;
+	}
+
+	/**
+	 * Adds nodes from the given list and their subtrees to the window in
+	 * depth-first order, skipping the given number of nodes.
+	 *
+	 * @return The number of nodes that remain to be skipped
+	 */
 	@GuardedBy("this")
-	private void traverse(List<T> list, T node, int level) {
-		list.add(node);
-		List<T> children = nodeMap.get(node.getId());
-		node.setLevel(level);
-		for (T child : children) {
-			traverse(list, child, level + 1);
+	private int traverse(List<T> window, List<T> list, int level, int skip,
+			int limit) {
+		for (T node : list) {
+			if (window.size() == limit) break;
+			int subtreeSize = subtreeSizes.get(node.getId());
+			if (skip >= subtreeSize) {
+				// The whole subtree precedes the window
+				skip -= subtreeSize;
+				continue;
+			}
+			if (skip == 0) {
+				node.setLevel(level);
+				window.add(node);
+			} else {
+				skip--;
+			}
+			List<T> children = childMap.get(node.getId());
+			if (children != null) {
+				skip = traverse(window, children, level + 1, skip, limit);
+			}
 		}
+		return skip;
 	}
 
 	@Override
-	public synchronized List<T> depthFirstOrder() {
-		List<T> orderedList = new ArrayList<>();
-		for (T root : roots) {
-			traverse(orderedList, root, 0);
-		}
-		return orderedList;
+	public synchronized int size() {
+		return size;
 	}
 
 	@Override
 	public synchronized boolean contains(MessageId m) {
-		return nodeMap.containsKey(m);
+		return nodes.containsKey(m);
 	}
 }
@@ -17,6 +17,7 @@ import org.briarproject.bramble.api.data.BdfList;
 import org.briarproject.bramble.api.db.DatabaseComponent;
 import org.briarproject.bramble.api.db.DbException;
 import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.api.db.TransactionBatch;
 import org.briarproject.bramble.api.event.Event;
 import org.briarproject.bramble.api.event.EventListener;
 import org.briarproject.bramble.api.identity.LocalAuthor;
@@ -89,6 +90,18 @@ class FeedManagerImpl implements FeedManager, EventListener, OpenDatabaseHook,
 	private static final Logger LOG =
 			getLogger(FeedManagerImpl.class.getName());
 
+	/**
+	 * The maximum number of tasks to run in each transaction. Each task
+	 * stores the feed entries that have the same time.
+	 */
+	private static final int MAX_ENTRIES_PER_TRANSACTION = 20;
+
+	/**
+	 * The maximum number of bytes of feed entries to store in each
+	 * transaction.
+	 */
+	private static final long MAX_BYTES_PER_TRANSACTION = 256 * 1024;
+
 	private final TaskScheduler scheduler;
 	private final Executor ioExecutor;
 	private final DatabaseComponent db;
@@ -289,17 +302,20 @@ class FeedManagerImpl implements FeedManager, EventListener, OpenDatabaseHook,
 	 * have been removed from the list.
 	 */
 	private void updateFeeds(List<Feed> updatedFeeds) throws DbException {
+		db.transaction(false, txn -> updateFeeds(txn, updatedFeeds));
+	}
+
+	private void updateFeeds(Transaction txn, List<Feed> updatedFeeds)
+			throws DbException {
 		Map<GroupId, Feed> updatedMap = new HashMap<>();
 		for (Feed feed : updatedFeeds) updatedMap.put(feed.getBlogId(), feed);
-		db.transaction(false, txn -> {
-			List<Feed> feeds = getFeeds(txn);
-			ListIterator<Feed> it = feeds.listIterator();
-			while (it.hasNext()) {
-				Feed updated = updatedMap.get(it.next().getBlogId());
-				if (updated != null) it.set(updated);
-			}
-			storeFeeds(txn, feeds);
-		});
+		List<Feed> feeds = getFeeds(txn);
+		ListIterator<Feed> it = feeds.listIterator();
+		while (it.hasNext()) {
+			Feed updated = updatedMap.get(it.next().getBlogId());
+			if (updated != null) it.set(updated);
+		}
+		storeFeeds(txn, feeds);
 	}
 
 	/**
@@ -416,11 +432,15 @@ class FeedManagerImpl implements FeedManager, EventListener, OpenDatabaseHook,
 
 	private long postFeedEntries(Feed feed, List<SyndEntry> entries)
 			throws DbException {
-
-		return db.transactionWithResult(false, txn -> {
-			long lastEntryTime = feed.getLastEntryTime();
-			//noinspection Java8ListSort
-			sort(entries, getEntryComparator());
+		long lastEntryTime = feed.getLastEntryTime();
+		//noinspection Java8ListSort
+		sort(entries, getEntryComparator());
+		// Create the posts outside the database lock and store them in
+		// batches, so a large feed doesn't block other transactions
+		try (TransactionBatch batch = db.startBatch(
+				MAX_ENTRIES_PER_TRANSACTION, MAX_BYTES_PER_TRANSACTION)) {
+			List<BlogPost> posts = new ArrayList<>();
+			long postsTime = 0;
 			for (SyndEntry entry : entries) {
 				long entryTime;
 				if (entry.getPublishedDate() != null) {
@@ -433,15 +453,42 @@ class FeedManagerImpl implements FeedManager, EventListener, OpenDatabaseHook,
 					continue;
 				}
 				if (entryTime > feed.getLastEntryTime()) {
-					postEntry(txn, feed, entry);
+					if (entryTime != postsTime) {
+						addPosts(batch, feed, posts, postsTime);
+						posts = new ArrayList<>();
+						postsTime = entryTime;
+					}
+					BlogPost post = createPost(feed, entry);
+					if (post != null) posts.add(post);
 					if (entryTime > lastEntryTime) lastEntryTime = entryTime;
 				}
 			}
-			return lastEntryTime;
+			addPosts(batch, feed, posts, postsTime);
+		}
+		return lastEntryTime;
+	}
+
+	/**
+	 * Queues a task that stores the given posts, which all have the given
+	 * time, and stores the time as the feed's last entry time in the same
+	 * transaction. If a later transaction in the batch fails, the posts that
+	 * were stored won't be posted again when the feed is next fetched.
+	 */
+	private void addPosts(TransactionBatch batch, Feed feed,
+			List<BlogPost> posts, long time) throws DbException {
+		if (posts.isEmpty()) return;
+		long bytes = 0;
+		for (BlogPost post : posts) bytes += post.getMessage().getRawLength();
+		Feed updatedFeed = new Feed(feed.getBlog(), feed.getLocalAuthor(),
+				feed.getProperties(), feed.getAdded(), feed.getUpdated(), time);
+		batch.add(bytes, txn -> {
+			for (BlogPost post : posts) blogManager.addLocalPost(txn, post);
+			updateFeeds(txn, singletonList(updatedFeed));
 		});
 	}
 
-	private void postEntry(Transaction txn, Feed feed, SyndEntry entry) {
+	@Nullable
+	private BlogPost createPost(Feed feed, SyndEntry entry) {
 		LOG.info("Adding new entry...");
 
 		// build post text
@@ -487,17 +534,18 @@ class FeedManagerImpl implements FeedManager, EventListener, OpenDatabaseHook,
 		String text = getPostText(b.toString());
 		//noinspection TryWithIdenticalCatches
 		try {
-			// create and store post
+			// create post
 			LocalAuthor localAuthor = feed.getLocalAuthor();
-			BlogPost post = blogPostFactory
+			return blogPostFactory
 					.createBlogPost(groupId, time, null, localAuthor, text);
-			blogManager.addLocalPost(txn, post);
-		} catch (DbException | GeneralSecurityException | FormatException e) {
+		} catch (GeneralSecurityException | FormatException e) {
 			logException(LOG, WARNING, e);
+			return null;
 		} catch (IllegalArgumentException e) {
 			// yes even catch this, so we at least get a stacktrace
 			// and the executor doesn't just die a silent death
 			logException(LOG, WARNING, e);
+			return null;
 		}
 	}
 
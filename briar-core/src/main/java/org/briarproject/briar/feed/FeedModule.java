@@ -28,7 +28,9 @@ public class FeedModule {
 		if (!featureFlags.shouldEnableBlogsInCore()) {
 			return feedManager;
 		}
-		lifecycleManager.registerOpenDatabaseHook(feedManager);
+		// The hook only touches the feed's local group, so it doesn't need
+		// to be atomic with any other hook
+		lifecycleManager.registerOpenDatabaseHook(feedManager, true);
 		eventBus.addListener(feedManager);
 		blogManager.registerRemoveBlogHook(feedManager);
 		return feedManager;
@@ -4,4 +4,6 @@ interface MessageTypes {
 
 	int PRIVATE_MESSAGE = 0;
 	int ATTACHMENT = 1;
+	int ATTACHMENT_INDEX = 2;
+	int ATTACHMENT_CHUNK = 3;
 }
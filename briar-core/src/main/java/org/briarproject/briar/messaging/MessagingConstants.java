@@ -1,6 +1,7 @@
 package org.briarproject.briar.messaging;
 
 import static java.util.concurrent.TimeUnit.DAYS;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_BODY_LENGTH;
 
 interface MessagingConstants {
 
@@ -17,4 +18,16 @@ interface MessagingConstants {
 	 * message before deleting them.
 	 */
 	long MISSING_ATTACHMENT_CLEANUP_DURATION_MS = DAYS.toMillis(28);
+
+	/**
+	 * The maximum length of the data in each chunk of a large attachment.
+	 * All chunks except the last have this length.
+	 */
+	int MAX_ATTACHMENT_CHUNK_LENGTH = MAX_MESSAGE_BODY_LENGTH - 64;
+
+	/**
+	 * The maximum number of chunk IDs in each index of a large attachment.
+	 * All indexes except the last contain this number of chunk IDs.
+	 */
+	int MAX_CHUNKS_PER_ATTACHMENT_INDEX = 900;
 }
@@ -13,6 +13,7 @@ import org.briarproject.bramble.api.data.BdfList;
 import org.briarproject.bramble.api.data.MetadataParser;
 import org.briarproject.bramble.api.db.DatabaseComponent;
 import org.briarproject.bramble.api.db.DbException;
+import org.briarproject.bramble.api.db.MessageDeletedException;
 import org.briarproject.bramble.api.db.Metadata;
 import org.briarproject.bramble.api.db.NoSuchMessageException;
 import org.briarproject.bramble.api.db.Transaction;
@@ -45,29 +46,39 @@ import org.briarproject.briar.api.messaging.event.AttachmentReceivedEvent;
 import org.briarproject.briar.api.messaging.event.PrivateMessageReceivedEvent;
 import org.briarproject.nullsafety.NotNullByDefault;
 
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.logging.Logger;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 import javax.inject.Inject;
 
+import static java.util.Arrays.copyOf;
 import static java.util.Collections.emptyList;
+import static java.util.Collections.emptySet;
+import static java.util.logging.Level.WARNING;
 import static java.util.logging.Logger.getLogger;
 import static org.briarproject.bramble.api.client.ContactGroupConstants.GROUP_KEY_CONTACT_ID;
 import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_BODY_LENGTH;
 import static org.briarproject.bramble.api.sync.validation.IncomingMessageHook.DeliveryAction.ACCEPT_DO_NOT_SHARE;
-import static org.briarproject.bramble.util.IoUtils.copyAndClose;
+import static org.briarproject.bramble.util.IoUtils.tryToClose;
 import static org.briarproject.bramble.util.LogUtils.logDuration;
+import static org.briarproject.bramble.util.LogUtils.logException;
 import static org.briarproject.bramble.util.LogUtils.now;
+import static org.briarproject.briar.api.attachment.MediaConstants.MAX_ATTACHMENT_SIZE;
+import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_ATTACHMENT_LENGTH;
 import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_CONTENT_TYPE;
 import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_DESCRIPTOR_LENGTH;
 import static org.briarproject.briar.api.autodelete.AutoDeleteConstants.NO_AUTO_DELETE_TIMER;
@@ -76,7 +87,11 @@ import static org.briarproject.briar.api.messaging.PrivateMessageFormat.TEXT_IMA
 import static org.briarproject.briar.api.messaging.PrivateMessageFormat.TEXT_ONLY;
 import static org.briarproject.briar.client.MessageTrackerConstants.MSG_KEY_READ;
 import static org.briarproject.briar.messaging.MessageTypes.ATTACHMENT;
+import static org.briarproject.briar.messaging.MessageTypes.ATTACHMENT_CHUNK;
+import static org.briarproject.briar.messaging.MessageTypes.ATTACHMENT_INDEX;
 import static org.briarproject.briar.messaging.MessageTypes.PRIVATE_MESSAGE;
+import static org.briarproject.briar.messaging.MessagingConstants.MAX_ATTACHMENT_CHUNK_LENGTH;
+import static org.briarproject.briar.messaging.MessagingConstants.MAX_CHUNKS_PER_ATTACHMENT_INDEX;
 import static org.briarproject.briar.messaging.MessagingConstants.MISSING_ATTACHMENT_CLEANUP_DURATION_MS;
 import static org.briarproject.briar.messaging.MessagingConstants.MSG_KEY_ATTACHMENT_HEADERS;
 import static org.briarproject.briar.messaging.MessagingConstants.MSG_KEY_AUTO_DELETE_TIMER;
@@ -94,6 +109,18 @@ class MessagingManagerImpl implements MessagingManager, IncomingMessageHook,
 	private static final Logger LOG =
 			getLogger(MessagingManagerImpl.class.getName());
 
+	/**
+	 * The minimum minor version of the contact's client that supports
+	 * attachments that are split into chunks.
+	 */
+	private static final int MIN_LARGE_ATTACHMENT_MINOR_VERSION = 4;
+
+	/**
+	 * The number of chunks of a large attachment to store in each
+	 * transaction. This limits the amount of the attachment held in memory.
+	 */
+	private static final int CHUNKS_PER_TRANSACTION = 32;
+
 	private final DatabaseComponent db;
 	private final ClientHelper clientHelper;
 	private final MetadataParser metadataParser;
@@ -192,6 +219,9 @@ class MessagingManagerImpl implements MessagingManager, IncomingMessageHook,
 				incomingPrivateMessage(txn, m, metaDict, hasText, headers);
 			} else if (messageType == ATTACHMENT) {
 				incomingAttachment(txn, m);
+			} else if (messageType == ATTACHMENT_INDEX ||
+					messageType == ATTACHMENT_CHUNK) {
+				incomingAttachmentPart(txn, m);
 			} else {
 				throw new InvalidMessageException();
 			}
@@ -264,6 +294,12 @@ class MessagingManagerImpl implements MessagingManager, IncomingMessageHook,
 		long start = now();
 		ContactId contactId = getContactId(txn, m.getGroupId());
 		txn.attach(new AttachmentReceivedEvent(m.getId(), contactId));
+		// If this is a large attachment, the cleanup timers of its indexes
+		// and chunks are no longer needed. The parts will be deleted along
+		// with the attachment
+		for (MessageId part : getAttachmentParts(txn, m.getId())) {
+			db.stopCleanupTimer(txn, part);
+		}
 		// If no private messages that list this attachment have been
 		// delivered, start the cleanup timer. It will be stopped when a
 		// private message that lists this attachment is delivered
@@ -290,6 +326,15 @@ class MessagingManagerImpl implements MessagingManager, IncomingMessageHook,
 		logDuration(LOG, "Receiving attachment", start);
 	}
 
+	private void incomingAttachmentPart(Transaction txn, Message m)
+			throws DbException {
+		// Start the cleanup timer. It will be stopped when the attachment
+		// that lists this part is delivered
+		db.setCleanupTimerDuration(txn, m.getId(),
+				MISSING_ATTACHMENT_CLEANUP_DURATION_MS);
+		db.startCleanupTimer(txn, m.getId());
+	}
+
 	@Override
 	public void addLocalMessage(PrivateMessage m) throws DbException {
 		db.transaction(false, txn -> addLocalMessage(txn, m));
@@ -320,6 +365,11 @@ class MessagingManagerImpl implements MessagingManager, IncomingMessageHook,
 			}
 			// Mark attachments as shared and permanent now we're ready to send
 			for (AttachmentHeader a : m.getAttachmentHeaders()) {
+				for (MessageId part : getAttachmentParts(txn,
+						a.getMessageId())) {
+					db.setMessageShared(txn, part);
+					db.setMessagePermanent(txn, part);
+				}
 				db.setMessageShared(txn, a.getMessageId());
 				db.setMessagePermanent(txn, a.getMessageId());
 			}
@@ -338,21 +388,45 @@ class MessagingManagerImpl implements MessagingManager, IncomingMessageHook,
 	public AttachmentHeader addLocalAttachment(GroupId groupId, long timestamp,
 			String contentType, InputStream in)
 			throws DbException, IOException {
-		// TODO: Support large messages
-		ByteArrayOutputStream bodyOut = new ByteArrayOutputStream();
-		byte[] descriptor =
-				clientHelper.toByteArray(BdfList.of(ATTACHMENT, contentType));
-		bodyOut.write(descriptor);
-		copyAndClose(in, bodyOut);
-		if (bodyOut.size() > MAX_MESSAGE_BODY_LENGTH)
-			throw new FileTooBigException();
-		byte[] body = bodyOut.toByteArray();
+		try {
+			byte[] descriptor = clientHelper.toByteArray(
+					BdfList.of(ATTACHMENT, contentType));
+			// Read one byte more than fits in a single message, to find out
+			// whether the attachment needs to be split into chunks
+			byte[] buf =
+					new byte[MAX_MESSAGE_BODY_LENGTH - descriptor.length + 1];
+			int read = readFully(in, buf);
+			if (read < buf.length) {
+				byte[] body = new byte[descriptor.length + read];
+				System.arraycopy(descriptor, 0, body, 0, descriptor.length);
+				System.arraycopy(buf, 0, body, descriptor.length, read);
+				return addSmallAttachment(groupId, timestamp, contentType,
+						descriptor.length, body);
+			}
+			if (!db.transactionWithResult(true, txn ->
+					contactSupportsLargeAttachments(txn, groupId))) {
+				throw new FileTooBigException();
+			}
+			// Put back the bytes we've already read
+			InputStream rest = new SequenceInputStream(
+					new ByteArrayInputStream(buf), in);
+			return addLargeAttachment(groupId, timestamp, contentType, rest);
+		} catch (FormatException e) {
+			throw new AssertionError(e);
+		} finally {
+			tryToClose(in, LOG, WARNING);
+		}
+	}
+
+	private AttachmentHeader addSmallAttachment(GroupId groupId,
+			long timestamp, String contentType, int descriptorLength,
+			byte[] body) throws DbException, FormatException {
 		BdfDictionary meta = new BdfDictionary();
 		meta.put(MSG_KEY_TIMESTAMP, timestamp);
 		meta.put(MSG_KEY_LOCAL, true);
 		meta.put(MSG_KEY_MSG_TYPE, ATTACHMENT);
 		meta.put(MSG_KEY_CONTENT_TYPE, contentType);
-		meta.put(MSG_KEY_DESCRIPTOR_LENGTH, descriptor.length);
+		meta.put(MSG_KEY_DESCRIPTOR_LENGTH, descriptorLength);
 		Message m = clientHelper.createMessage(groupId, timestamp, body);
 		// Mark attachments as temporary, not shared until we're ready to send
 		db.transaction(false, txn ->
@@ -360,10 +434,179 @@ class MessagingManagerImpl implements MessagingManager, IncomingMessageHook,
 		return new AttachmentHeader(groupId, m.getId(), contentType);
 	}
 
+	/**
+	 * Stores an attachment that doesn't fit in a single message. The data
+	 * is split into chunks, which are listed by indexes, which are listed
+	 * by a manifest. The manifest's ID is the attachment's ID. The data is
+	 * streamed into the database, a few chunks per transaction.
+	 */
+	private AttachmentHeader addLargeAttachment(GroupId g, long timestamp,
+			String contentType, InputStream in)
+			throws DbException, IOException, FormatException {
+		long start = now();
+		// Keep track of the parts we've stored, so we can remove them if
+		// the attachment can't be stored
+		List<MessageId> stored = new ArrayList<>();
+		Map<Message, BdfDictionary> batch = new LinkedHashMap<>();
+		try {
+			BdfList indexIds = new BdfList();
+			BdfList chunkIds = new BdfList();
+			byte[] buf = new byte[MAX_ATTACHMENT_CHUNK_LENGTH];
+			long length = 0;
+			while (true) {
+				int read = readFully(in, buf);
+				if (read == 0) break;
+				length += read;
+				if (length > MAX_ATTACHMENT_SIZE)
+					throw new FileTooBigException();
+				byte[] data = read == buf.length ? buf : copyOf(buf, read);
+				Message chunk = clientHelper.createMessage(g, timestamp,
+						BdfList.of(ATTACHMENT_CHUNK, data));
+				batch.put(chunk, createAttachmentPartMetadata(timestamp,
+						ATTACHMENT_CHUNK));
+				chunkIds.add(chunk.getId());
+				if (chunkIds.size() == MAX_CHUNKS_PER_ATTACHMENT_INDEX) {
+					Message index = clientHelper.createMessage(g, timestamp,
+							BdfList.of(ATTACHMENT_INDEX, chunkIds));
+					batch.put(index, createAttachmentPartMetadata(timestamp,
+							ATTACHMENT_INDEX));
+					indexIds.add(index.getId());
+					chunkIds = new BdfList();
+				}
+				if (batch.size() >= CHUNKS_PER_TRANSACTION)
+					storeAttachmentParts(batch, stored);
+				if (read < buf.length) break;
+			}
+			if (!chunkIds.isEmpty()) {
+				Message index = clientHelper.createMessage(g, timestamp,
+						BdfList.of(ATTACHMENT_INDEX, chunkIds));
+				batch.put(index, createAttachmentPartMetadata(timestamp,
+						ATTACHMENT_INDEX));
+				indexIds.add(index.getId());
+			}
+			Message manifest = clientHelper.createMessage(g, timestamp,
+					BdfList.of(ATTACHMENT, contentType, length, indexIds));
+			BdfDictionary meta = new BdfDictionary();
+			meta.put(MSG_KEY_TIMESTAMP, timestamp);
+			meta.put(MSG_KEY_LOCAL, true);
+			meta.put(MSG_KEY_MSG_TYPE, ATTACHMENT);
+			meta.put(MSG_KEY_CONTENT_TYPE, contentType);
+			meta.put(MSG_KEY_ATTACHMENT_LENGTH, length);
+			batch.put(manifest, meta);
+			storeAttachmentParts(batch, stored);
+			logDuration(LOG, "Storing large attachment", start);
+			return new AttachmentHeader(g, manifest.getId(), contentType);
+		} catch (IOException | DbException e) {
+			removeAttachmentParts(stored);
+			throw e;
+		}
+	}
+
+	private BdfDictionary createAttachmentPartMetadata(long timestamp,
+			int messageType) {
+		BdfDictionary meta = new BdfDictionary();
+		meta.put(MSG_KEY_TIMESTAMP, timestamp);
+		meta.put(MSG_KEY_LOCAL, true);
+		meta.put(MSG_KEY_MSG_TYPE, messageType);
+		return meta;
+	}
+
+	private void storeAttachmentParts(Map<Message, BdfDictionary> batch,
+			List<MessageId> stored) throws DbException, FormatException {
+		// Mark the parts as temporary, not shared until we're ready to send
+		db.transaction(false, txn -> {
+			for (Entry<Message, BdfDictionary> e : batch.entrySet()) {
+				clientHelper.addLocalMessage(txn, e.getKey(), e.getValue(),
+						false, true);
+			}
+		});
+		for (Message m : batch.keySet()) stored.add(m.getId());
+		batch.clear();
+	}
+
+	private void removeAttachmentParts(List<MessageId> stored) {
+		try {
+			db.transaction(false, txn -> {
+				// Identical chunks have the same ID, so skip duplicates
+				for (MessageId m : new HashSet<>(stored)) {
+					db.removeMessage(txn, m);
+				}
+			});
+		} catch (DbException e) {
+			// The parts are temporary, so they'll be removed at startup
+			logException(LOG, WARNING, e);
+		}
+	}
+
+	/**
+	 * Reads from the given stream until the buffer is full or the end of
+	 * the stream is reached, and returns the number of bytes read.
+	 */
+	private static int readFully(InputStream in, byte[] buf)
+			throws IOException {
+		int offset = 0;
+		while (offset < buf.length) {
+			int read = in.read(buf, offset, buf.length - offset);
+			if (read == -1) break;
+			offset += read;
+		}
+		return offset;
+	}
+
+	private boolean contactSupportsLargeAttachments(Transaction txn,
+			GroupId g) throws DbException {
+		ContactId c = getContactId(txn, g);
+		int minorVersion = clientVersioningManager
+				.getClientMinorVersion(txn, c, CLIENT_ID, MAJOR_VERSION);
+		return minorVersion >= MIN_LARGE_ATTACHMENT_MINOR_VERSION;
+	}
+
+	/**
+	 * Returns the IDs of the indexes and chunks of the given attachment, or
+	 * an empty set if the attachment is stored in a single message or its
+	 * parts can't be found.
+	 */
+	private Set<MessageId> getAttachmentParts(Transaction txn, MessageId m)
+			throws DbException {
+		try {
+			BdfDictionary meta =
+					clientHelper.getMessageMetadataAsDictionary(txn, m);
+			if (!meta.containsKey(MSG_KEY_ATTACHMENT_LENGTH)) return emptySet();
+			// Message type, content type, attachment length, index IDs
+			BdfList indexIds = clientHelper.getMessageAsList(txn, m).getList(3);
+			Set<MessageId> parts = new LinkedHashSet<>();
+			for (int i = 0; i < indexIds.size(); i++) {
+				MessageId indexId = new MessageId(indexIds.getRaw(i));
+				try {
+					// Message type, chunk IDs
+					BdfList chunkIds =
+							clientHelper.getMessageAsList(txn, indexId)
+									.getList(1);
+					for (int j = 0; j < chunkIds.size(); j++) {
+						parts.add(new MessageId(chunkIds.getRaw(j)));
+					}
+				} catch (MessageDeletedException e) {
+					// The index has been deleted by its cleanup timer
+				}
+				parts.add(indexId);
+			}
+			return parts;
+		} catch (MessageDeletedException e) {
+			return emptySet();
+		} catch (FormatException e) {
+			throw new DbException(e);
+		}
+	}
+
 	@Override
 	public void removeAttachment(AttachmentHeader header) throws DbException {
-		db.transaction(false,
-				txn -> db.removeMessage(txn, header.getMessageId()));
+		db.transaction(false, txn -> {
+			MessageId m = header.getMessageId();
+			for (MessageId part : getAttachmentParts(txn, m)) {
+				db.removeMessage(txn, part);
+			}
+			db.removeMessage(txn, m);
+		});
 	}
 
 	private ContactId getContactId(Transaction txn, GroupId g)
@@ -473,14 +716,34 @@ class MessagingManagerImpl implements MessagingManager, IncomingMessageHook,
 	@Override
 	public String getMessageText(Transaction txn, MessageId m) throws DbException {
 		try {
-			BdfList body = clientHelper.getMessageAsList(txn, m);
-			if (body.size() == 1) return body.getString(0); // Legacy format
-			else return body.getOptionalString(1);
+			return getMessageText(clientHelper.getMessageAsList(txn, m));
+		} catch (FormatException e) {
+			throw new DbException(e);
+		}
+	}
+
+	@Override
+	public Map<MessageId, String> getMessageTexts(Transaction txn,
+			Collection<MessageId> m) throws DbException {
+		try {
+			Map<MessageId, String> texts = new LinkedHashMap<>();
+			for (Entry<MessageId, BdfList> e :
+					clientHelper.getMessagesAsLists(txn, m).entrySet()) {
+				String text = getMessageText(e.getValue());
+				if (text != null) texts.put(e.getKey(), text);
+			}
+			return texts;
 		} catch (FormatException e) {
 			throw new DbException(e);
 		}
 	}
 
+	@Nullable
+	private String getMessageText(BdfList body) throws FormatException {
+		if (body.size() == 1) return body.getString(0); // Legacy format
+		else return body.getOptionalString(1);
+	}
+
 	@Override
 	public PrivateMessageFormat getContactMessageFormat(Transaction txn,
 			ContactId c) throws DbException {
@@ -532,12 +795,15 @@ class MessagingManagerImpl implements MessagingManager, IncomingMessageHook,
 			if (messageType != null && messageType == PRIVATE_MESSAGE) {
 				for (AttachmentHeader h : parseAttachmentHeaders(g, meta)) {
 					try {
+						deleteAttachmentParts(txn, h.getMessageId());
 						db.deleteMessage(txn, h.getMessageId());
 						db.deleteMessageMetadata(txn, h.getMessageId());
 					} catch (NoSuchMessageException e) {
 						// Continue
 					}
 				}
+			} else if (messageType != null && messageType == ATTACHMENT) {
+				deleteAttachmentParts(txn, m);
 			}
 			db.deleteMessage(txn, m);
 			db.deleteMessageMetadata(txn, m);
@@ -546,6 +812,18 @@ class MessagingManagerImpl implements MessagingManager, IncomingMessageHook,
 		}
 	}
 
+	private void deleteAttachmentParts(Transaction txn, MessageId m)
+			throws DbException {
+		for (MessageId part : getAttachmentParts(txn, m)) {
+			try {
+				db.deleteMessage(txn, part);
+				db.deleteMessageMetadata(txn, part);
+			} catch (NoSuchMessageException e) {
+				// Continue
+			}
+		}
+	}
+
 	private void recalculateGroupCount(Transaction txn, GroupId g)
 			throws DbException {
 		try {
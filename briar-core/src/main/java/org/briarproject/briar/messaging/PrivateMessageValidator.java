@@ -13,6 +13,7 @@ import org.briarproject.bramble.api.sync.Group;
 import org.briarproject.bramble.api.sync.InvalidMessageException;
 import org.briarproject.bramble.api.sync.Message;
 import org.briarproject.bramble.api.sync.MessageContext;
+import org.briarproject.bramble.api.sync.MessageId;
 import org.briarproject.bramble.api.sync.validation.MessageValidator;
 import org.briarproject.bramble.api.system.Clock;
 import org.briarproject.briar.attachment.CountingInputStream;
@@ -21,14 +22,19 @@ import org.briarproject.nullsafety.NotNullByDefault;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 import javax.annotation.concurrent.Immutable;
 
 import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_BODY_LENGTH;
 import static org.briarproject.bramble.api.transport.TransportConstants.MAX_CLOCK_DIFFERENCE;
 import static org.briarproject.bramble.util.ValidationUtils.checkLength;
+import static org.briarproject.bramble.util.ValidationUtils.checkRange;
 import static org.briarproject.bramble.util.ValidationUtils.checkSize;
+import static org.briarproject.briar.api.attachment.MediaConstants.MAX_ATTACHMENT_SIZE;
 import static org.briarproject.briar.api.attachment.MediaConstants.MAX_CONTENT_TYPE_BYTES;
+import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_ATTACHMENT_LENGTH;
 import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_CONTENT_TYPE;
 import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_DESCRIPTOR_LENGTH;
 import static org.briarproject.briar.api.autodelete.AutoDeleteConstants.NO_AUTO_DELETE_TIMER;
@@ -36,7 +42,11 @@ import static org.briarproject.briar.api.messaging.MessagingConstants.MAX_ATTACH
 import static org.briarproject.briar.api.messaging.MessagingConstants.MAX_PRIVATE_MESSAGE_TEXT_LENGTH;
 import static org.briarproject.briar.client.MessageTrackerConstants.MSG_KEY_READ;
 import static org.briarproject.briar.messaging.MessageTypes.ATTACHMENT;
+import static org.briarproject.briar.messaging.MessageTypes.ATTACHMENT_CHUNK;
+import static org.briarproject.briar.messaging.MessageTypes.ATTACHMENT_INDEX;
 import static org.briarproject.briar.messaging.MessageTypes.PRIVATE_MESSAGE;
+import static org.briarproject.briar.messaging.MessagingConstants.MAX_ATTACHMENT_CHUNK_LENGTH;
+import static org.briarproject.briar.messaging.MessagingConstants.MAX_CHUNKS_PER_ATTACHMENT_INDEX;
 import static org.briarproject.briar.messaging.MessagingConstants.MSG_KEY_ATTACHMENT_HEADERS;
 import static org.briarproject.briar.messaging.MessagingConstants.MSG_KEY_AUTO_DELETE_TIMER;
 import static org.briarproject.briar.messaging.MessagingConstants.MSG_KEY_HAS_TEXT;
@@ -70,7 +80,6 @@ class PrivateMessageValidator implements MessageValidator {
 					"Timestamp is too far in the future");
 		}
 		try {
-			// TODO: Support large messages
 			InputStream in = new ByteArrayInputStream(m.getBody());
 			CountingInputStream countIn =
 					new CountingInputStream(in, MAX_MESSAGE_BODY_LENGTH);
@@ -89,7 +98,19 @@ class PrivateMessageValidator implements MessageValidator {
 					if (!reader.eof()) throw new FormatException();
 					context = validatePrivateMessage(m, list);
 				} else if (messageType == ATTACHMENT) {
-					context = validateAttachment(m, list, bytesRead);
+					if (list.size() == 4) {
+						// Manifest of a large attachment
+						if (!reader.eof()) throw new FormatException();
+						context = validateAttachmentManifest(m, list);
+					} else {
+						context = validateAttachment(m, list, bytesRead);
+					}
+				} else if (messageType == ATTACHMENT_INDEX) {
+					if (!reader.eof()) throw new FormatException();
+					context = validateAttachmentIndex(m, list);
+				} else if (messageType == ATTACHMENT_CHUNK) {
+					if (!reader.eof()) throw new FormatException();
+					context = validateAttachmentChunk(m, list);
 				} else {
 					throw new InvalidMessageException();
 				}
@@ -169,4 +190,80 @@ class PrivateMessageValidator implements MessageValidator {
 		meta.put(MSG_KEY_CONTENT_TYPE, contentType);
 		return new BdfMessageContext(meta);
 	}
+
+	private BdfMessageContext validateAttachmentManifest(Message m,
+			BdfList body) throws FormatException {
+		// Client version 0.4: Message type, content type, attachment length,
+		// index IDs
+		checkSize(body, 4);
+		String contentType = body.getString(1);
+		checkLength(contentType, 1, MAX_CONTENT_TYPE_BYTES);
+		long length = body.getLong(2);
+		checkRange(length, 1, MAX_ATTACHMENT_SIZE);
+		BdfList indexIds = body.getList(3);
+		checkSize(indexIds, getIndexCount(length));
+		// The manifest will be delivered when all the indexes are delivered
+		Set<MessageId> dependencies = getMessageIds(indexIds);
+		// Return the metadata and dependencies
+		BdfDictionary meta = new BdfDictionary();
+		meta.put(MSG_KEY_TIMESTAMP, m.getTimestamp());
+		meta.put(MSG_KEY_LOCAL, false);
+		meta.put(MSG_KEY_MSG_TYPE, ATTACHMENT);
+		meta.put(MSG_KEY_ATTACHMENT_LENGTH, length);
+		meta.put(MSG_KEY_CONTENT_TYPE, contentType);
+		return new BdfMessageContext(meta, dependencies);
+	}
+
+	private BdfMessageContext validateAttachmentIndex(Message m, BdfList body)
+			throws FormatException {
+		// Client version 0.4: Message type, chunk IDs
+		checkSize(body, 2);
+		BdfList chunkIds = body.getList(1);
+		checkSize(chunkIds, 1, MAX_CHUNKS_PER_ATTACHMENT_INDEX);
+		// The index will be delivered when all the chunks are delivered
+		Set<MessageId> dependencies = getMessageIds(chunkIds);
+		// Return the metadata and dependencies
+		BdfDictionary meta = new BdfDictionary();
+		meta.put(MSG_KEY_TIMESTAMP, m.getTimestamp());
+		meta.put(MSG_KEY_LOCAL, false);
+		meta.put(MSG_KEY_MSG_TYPE, ATTACHMENT_INDEX);
+		return new BdfMessageContext(meta, dependencies);
+	}
+
+	private BdfMessageContext validateAttachmentChunk(Message m, BdfList body)
+			throws FormatException {
+		// Client version 0.4: Message type, chunk data
+		checkSize(body, 2);
+		byte[] data = body.getRaw(1);
+		checkLength(data, 1, MAX_ATTACHMENT_CHUNK_LENGTH);
+		// Return the metadata
+		BdfDictionary meta = new BdfDictionary();
+		meta.put(MSG_KEY_TIMESTAMP, m.getTimestamp());
+		meta.put(MSG_KEY_LOCAL, false);
+		meta.put(MSG_KEY_MSG_TYPE, ATTACHMENT_CHUNK);
+		return new BdfMessageContext(meta);
+	}
+
+	private Set<MessageId> getMessageIds(BdfList ids) throws FormatException {
+		// Identical chunks have the same ID, so the list may contain
+		// duplicates
+		Set<MessageId> messageIds = new LinkedHashSet<>();
+		for (int i = 0; i < ids.size(); i++) {
+			byte[] id = ids.getRaw(i);
+			checkLength(id, UniqueId.LENGTH);
+			messageIds.add(new MessageId(id));
+		}
+		return messageIds;
+	}
+
+	/**
+	 * Returns the number of indexes needed for a large attachment of the
+	 * given length.
+	 */
+	private static int getIndexCount(long length) {
+		long chunks = (length + MAX_ATTACHMENT_CHUNK_LENGTH - 1)
+				/ MAX_ATTACHMENT_CHUNK_LENGTH;
+		return (int) ((chunks + MAX_CHUNKS_PER_ATTACHMENT_INDEX - 1)
+				/ MAX_CHUNKS_PER_ATTACHMENT_INDEX);
+	}
 }
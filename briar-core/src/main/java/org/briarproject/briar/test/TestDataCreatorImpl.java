@@ -10,6 +10,7 @@ import org.briarproject.bramble.api.crypto.PrivateKey;
 import org.briarproject.bramble.api.crypto.SecretKey;
 import org.briarproject.bramble.api.db.DatabaseComponent;
 import org.briarproject.bramble.api.db.DbException;
+import org.briarproject.bramble.api.db.TransactionBatch;
 import org.briarproject.bramble.api.identity.AuthorFactory;
 import org.briarproject.bramble.api.identity.AuthorId;
 import org.briarproject.bramble.api.identity.IdentityManager;
@@ -70,6 +71,7 @@ import static java.util.logging.Logger.getLogger;
 import static org.briarproject.bramble.api.plugin.BluetoothConstants.UUID_BYTES;
 import static org.briarproject.bramble.api.sync.Group.Visibility.SHARED;
 import static org.briarproject.bramble.util.LogUtils.logException;
+import static org.briarproject.bramble.util.LogUtils.now;
 import static org.briarproject.bramble.util.StringUtils.getRandomString;
 import static org.briarproject.briar.api.autodelete.AutoDeleteConstants.MIN_AUTO_DELETE_TIMER_MS;
 import static org.briarproject.briar.api.autodelete.AutoDeleteConstants.NO_AUTO_DELETE_TIMER;
@@ -82,6 +84,9 @@ public class TestDataCreatorImpl implements TestDataCreator {
 	private final Logger LOG =
 			getLogger(TestDataCreatorImpl.class.getName());
 
+	private static final int MAX_MESSAGES_PER_TRANSACTION = 100;
+	private static final long MAX_BYTES_PER_TRANSACTION = 1024 * 1024;
+
 	private final AuthorFactory authorFactory;
 	private final Clock clock;
 	private final GroupFactory groupFactory;
@@ -178,17 +183,33 @@ public class TestDataCreatorImpl implements TestDataCreator {
 			int numForumPosts, int numPrivateGroups,
 			int numPrivateGroupMessages) throws DbException {
 		List<Contact> contacts = createContacts(numContacts, avatarPercent);
-		createPrivateMessages(contacts, numPrivateMsgs);
-		createBlogPosts(contacts, numBlogPosts);
-		List<Forum> forums = createForums(contacts, numForums);
-		for (Forum forum : forums) {
-			createRandomForumPosts(forum, contacts, numForumPosts);
+		long start = now();
+		int messages = numContacts * numPrivateMsgs;
+		// Messages are created outside the database lock and stored in
+		// batches, with their events being broadcast when the batch is closed
+		try (TransactionBatch batch = db.startBatch(
+				MAX_MESSAGES_PER_TRANSACTION, MAX_BYTES_PER_TRANSACTION)) {
+			createPrivateMessages(batch, contacts, numPrivateMsgs);
+			createBlogPosts(batch, contacts, numBlogPosts);
+			if (featureFlags.shouldEnableBlogsInCore())
+				messages += numBlogPosts;
+			List<Forum> forums = createForums(batch, contacts, numForums);
+			for (Forum forum : forums) {
+				createRandomForumPosts(batch, forum, contacts, numForumPosts);
+			}
+			messages += forums.size() * numForumPosts;
+			List<PrivateGroup> groups =
+					createPrivateGroups(contacts, numPrivateGroups);
+			for (PrivateGroup group : groups) {
+				createRandomPrivateGroupMessages(batch, group, contacts,
+						numPrivateGroupMessages);
+			}
+			messages += groups.size() * numPrivateGroupMessages;
 		}
-		List<PrivateGroup> groups =
-				createPrivateGroups(contacts, numPrivateGroups);
-		for (PrivateGroup group : groups) {
-			createRandomPrivateGroupMessages(group, contacts,
-					numPrivateGroupMessages);
+		if (LOG.isLoggable(INFO)) {
+			long duration = Math.max(1, now() - start);
+			LOG.info("Stored " + messages + " messages in " + duration
+					+ " ms, " + messages * 1000L / duration + " messages/s");
 		}
 	}
 
@@ -362,19 +383,26 @@ public class TestDataCreatorImpl implements TestDataCreator {
 	}
 
 	// TODO: Do this properly via clients without breaking encapsulation
-	private void shareGroup(ContactId contactId, GroupId groupId)
-			throws DbException {
-		db.transaction(false, txn ->
+	private void shareGroup(TransactionBatch batch, ContactId contactId,
+			GroupId groupId) throws DbException {
+		batch.add(0, txn ->
 				db.setGroupVisibility(txn, contactId, groupId, SHARED));
 	}
 
-	private void createPrivateMessages(List<Contact> contacts,
-			int numPrivateMsgs) throws DbException {
+	private void receiveMessage(TransactionBatch batch, ContactId contactId,
+			Message m) throws DbException {
+		batch.add(m.getRawLength(), txn ->
+				db.receiveMessage(txn, contactId, m));
+	}
+
+	private void createPrivateMessages(TransactionBatch batch,
+			List<Contact> contacts, int numPrivateMsgs) throws DbException {
 		for (Contact contact : contacts) {
 			Group group = messagingManager.getContactGroup(contact);
-			shareGroup(contact.getId(), group.getId());
+			shareGroup(batch, contact.getId(), group.getId());
 			for (int i = 0; i < numPrivateMsgs; i++) {
-				createRandomPrivateMessage(contact.getId(), group.getId(), i);
+				createRandomPrivateMessage(batch, contact.getId(),
+						group.getId(), i);
 			}
 		}
 		if (LOG.isLoggable(INFO)) {
@@ -383,72 +411,72 @@ public class TestDataCreatorImpl implements TestDataCreator {
 		}
 	}
 
-	private void createRandomPrivateMessage(ContactId contactId,
-			GroupId groupId, int num) throws DbException {
+	private void createRandomPrivateMessage(TransactionBatch batch,
+			ContactId contactId, GroupId groupId, int num)
+			throws DbException {
 		long timestamp = clock.currentTimeMillis() - (long) num * 60 * 1000;
 		String text = getRandomText();
 		boolean local = random.nextBoolean();
 		boolean autoDelete = random.nextBoolean();
-		createPrivateMessage(contactId, groupId, text, timestamp, local,
+		createPrivateMessage(batch, contactId, groupId, text, timestamp, local,
 				autoDelete);
 	}
 
-	private void createPrivateMessage(ContactId contactId, GroupId groupId,
-			String text, long timestamp, boolean local, boolean autoDelete)
-			throws DbException {
+	private void createPrivateMessage(TransactionBatch batch,
+			ContactId contactId, GroupId groupId, String text, long timestamp,
+			boolean local, boolean autoDelete) throws DbException {
 		long timer = autoDelete ?
 				MIN_AUTO_DELETE_TIMER_MS : NO_AUTO_DELETE_TIMER;
 		try {
 			PrivateMessage m = privateMessageFactory.createPrivateMessage(
 					groupId, timestamp, text, emptyList(), timer);
 			if (local) {
-				messagingManager.addLocalMessage(m);
+				batch.add(m.getMessage().getRawLength(), txn ->
+						messagingManager.addLocalMessage(txn, m));
 			} else {
-				db.transaction(false, txn ->
-						db.receiveMessage(txn, contactId, m.getMessage()));
+				receiveMessage(batch, contactId, m.getMessage());
 			}
 		} catch (FormatException e) {
 			throw new AssertionError(e);
 		}
 	}
 
-	private void createBlogPosts(List<Contact> contacts, int numBlogPosts)
-			throws DbException {
+	private void createBlogPosts(TransactionBatch batch,
+			List<Contact> contacts, int numBlogPosts) throws DbException {
 		if (!featureFlags.shouldEnableBlogsInCore()) return;
 		LocalAuthor localAuthor = identityManager.getLocalAuthor();
 		Blog ours = blogManager.getPersonalBlog(localAuthor);
 		for (Contact contact : contacts) {
 			Blog theirs = blogManager.getPersonalBlog(contact.getAuthor());
-			shareGroup(contact.getId(), ours.getId());
-			shareGroup(contact.getId(), theirs.getId());
+			shareGroup(batch, contact.getId(), ours.getId());
+			shareGroup(batch, contact.getId(), theirs.getId());
 		}
 		for (int i = 0; i < numBlogPosts; i++) {
 			Contact contact = contacts.get(random.nextInt(contacts.size()));
 			LocalAuthor author = localAuthors.get(contact);
-			addBlogPost(contact.getId(), author, i);
+			addBlogPost(batch, contact.getId(), author, i);
 		}
 		if (LOG.isLoggable(INFO)) {
 			LOG.info("Created " + numBlogPosts + " blog posts.");
 		}
 	}
 
-	private void addBlogPost(ContactId contactId, LocalAuthor author, int num)
-			throws DbException {
+	private void addBlogPost(TransactionBatch batch, ContactId contactId,
+			LocalAuthor author, int num) throws DbException {
 		Blog blog = blogManager.getPersonalBlog(author);
 		long timestamp = clock.currentTimeMillis() - (long) num * 60 * 1000;
 		String text = getRandomText();
 		try {
 			BlogPost blogPost = blogPostFactory.createBlogPost(blog.getId(),
 					timestamp, null, author, text);
-			db.transaction(false, txn ->
-					db.receiveMessage(txn, contactId, blogPost.getMessage()));
+			receiveMessage(batch, contactId, blogPost.getMessage());
 		} catch (FormatException | GeneralSecurityException e) {
 			throw new AssertionError(e);
 		}
 	}
 
-	private List<Forum> createForums(List<Contact> contacts, int numForums)
-			throws DbException {
+	private List<Forum> createForums(TransactionBatch batch,
+			List<Contact> contacts, int numForums) throws DbException {
 		if (!featureFlags.shouldEnableForumsInCore()) return emptyList();
 		List<Forum> forums = new ArrayList<>(numForums);
 		for (int i = 0; i < numForums; i++) {
@@ -458,7 +486,7 @@ public class TestDataCreatorImpl implements TestDataCreator {
 
 			// share with all contacts
 			for (Contact contact : contacts) {
-				shareGroup(contact.getId(), forum.getId());
+				shareGroup(batch, contact.getId(), forum.getId());
 			}
 			forums.add(forum);
 		}
@@ -468,8 +496,8 @@ public class TestDataCreatorImpl implements TestDataCreator {
 		return forums;
 	}
 
-	private void createRandomForumPosts(Forum forum, List<Contact> contacts,
-			int numForumPosts) throws DbException {
+	private void createRandomForumPosts(TransactionBatch batch, Forum forum,
+			List<Contact> contacts, int numForumPosts) throws DbException {
 		List<ForumPost> posts = new ArrayList<>();
 		for (int i = 0; i < numForumPosts; i++) {
 			Contact contact = contacts.get(random.nextInt(contacts.size()));
@@ -484,8 +512,7 @@ public class TestDataCreatorImpl implements TestDataCreator {
 			ForumPost post = forumManager.createLocalPost(forum.getId(), text,
 					timestamp, parent, author);
 			posts.add(post);
-			db.transaction(false, txn ->
-					db.receiveMessage(txn, contact.getId(), post.getMessage()));
+			receiveMessage(batch, contact.getId(), post.getMessage());
 		}
 		if (LOG.isLoggable(INFO)) {
 			LOG.info("Created " + numForumPosts + " forum posts.");
@@ -516,8 +543,9 @@ public class TestDataCreatorImpl implements TestDataCreator {
 		return groups;
 	}
 
-	private void createRandomPrivateGroupMessages(PrivateGroup group,
-			List<Contact> contacts, int amount) throws DbException {
+	private void createRandomPrivateGroupMessages(TransactionBatch batch,
+			PrivateGroup group, List<Contact> contacts, int amount)
+			throws DbException {
 		List<GroupMessage> messages = new ArrayList<>();
 		PrivateKey creatorPrivateKey =
 				identityManager.getLocalAuthor().getPrivateKey();
@@ -539,7 +567,7 @@ public class TestDataCreatorImpl implements TestDataCreator {
 			GroupMessage msg;
 			if (!membersLastMessage.containsKey(contact)) {
 				// join message as first message of member
-				shareGroup(contact.getId(), group.getId());
+				shareGroup(batch, contact.getId(), group.getId());
 				long inviteTimestamp = timestamp - 1;
 				byte[] creatorSignature =
 						groupInvitationFactory.signInvitation(contact,
@@ -564,8 +592,7 @@ public class TestDataCreatorImpl implements TestDataCreator {
 				messages.add(msg);
 			}
 			membersLastMessage.put(contact, msg.getMessage().getId());
-			db.transaction(false, txn ->
-					db.receiveMessage(txn, contact.getId(), msg.getMessage()));
+			receiveMessage(batch, contact.getId(), msg.getMessage());
 		}
 		if (LOG.isLoggable(INFO)) {
 			LOG.info("Created " + amount + " private group messages.");
@@ -3,12 +3,14 @@ package org.briarproject.briar.attachment;
 import org.briarproject.bramble.api.client.ClientHelper;
 import org.briarproject.bramble.api.data.BdfDictionary;
 import org.briarproject.bramble.api.data.BdfEntry;
+import org.briarproject.bramble.api.data.BdfList;
 import org.briarproject.bramble.api.db.DatabaseComponent;
 import org.briarproject.bramble.api.db.NoSuchMessageException;
 import org.briarproject.bramble.api.db.Transaction;
 import org.briarproject.bramble.api.db.TransactionManager;
 import org.briarproject.bramble.api.sync.GroupId;
 import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageId;
 import org.briarproject.bramble.test.BrambleMockTestCase;
 import org.briarproject.bramble.test.DbExpectations;
 import org.briarproject.briar.api.attachment.Attachment;
@@ -16,18 +18,26 @@ import org.briarproject.briar.api.attachment.AttachmentHeader;
 import org.junit.Test;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 
 import static java.lang.System.arraycopy;
 import static org.briarproject.bramble.test.TestUtils.getMessage;
+import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
 import static org.briarproject.bramble.test.TestUtils.getRandomId;
 import static org.briarproject.bramble.util.IoUtils.copyAndClose;
+import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_ATTACHMENT_LENGTH;
 import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_CONTENT_TYPE;
 import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_DESCRIPTOR_LENGTH;
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
 
 public class AttachmentReaderImplTest extends BrambleMockTestCase {
 
+	// Message types used by the messaging client for attachments
+	private static final int ATTACHMENT = 1, ATTACHMENT_INDEX = 2,
+			ATTACHMENT_CHUNK = 3;
+
 	private final TransactionManager db = context.mock(DatabaseComponent.class);
 	private final ClientHelper clientHelper = context.mock(ClientHelper.class);
 
@@ -125,4 +135,138 @@ public class AttachmentReaderImplTest extends BrambleMockTestCase {
 
 		assertArrayEquals(expectedData, data);
 	}
+
+	@Test
+	public void testReadsChunkedAttachment() throws Exception {
+		byte[] chunk1 = getRandomBytes(123), chunk2 = getRandomBytes(45);
+		byte[] chunk3 = getRandomBytes(67);
+		Message chunkMessage1 = getMessage(groupId);
+		Message chunkMessage2 = getMessage(groupId);
+		Message chunkMessage3 = getMessage(groupId);
+		Message indexMessage1 = getMessage(groupId);
+		Message indexMessage2 = getMessage(groupId);
+		long length = chunk1.length + chunk2.length + chunk3.length;
+
+		Transaction txn = new Transaction(null, true);
+		Transaction txn1 = new Transaction(null, true);
+		Transaction txn2 = new Transaction(null, true);
+		Transaction txn3 = new Transaction(null, true);
+		Transaction txn4 = new Transaction(null, true);
+		Transaction txn5 = new Transaction(null, true);
+
+		expectGetManifest(txn, length, indexMessage1.getId(),
+				indexMessage2.getId());
+		// The first index lists two chunks
+		expectGetPart(txn1, indexMessage1, BdfList.of(ATTACHMENT_INDEX,
+				BdfList.of(chunkMessage1.getId(), chunkMessage2.getId())));
+		expectGetPart(txn2, chunkMessage1,
+				BdfList.of(ATTACHMENT_CHUNK, chunk1));
+		expectGetPart(txn3, chunkMessage2,
+				BdfList.of(ATTACHMENT_CHUNK, chunk2));
+		// The second index lists one chunk
+		expectGetPart(txn4, indexMessage2, BdfList.of(ATTACHMENT_INDEX,
+				BdfList.of(chunkMessage3.getId())));
+		expectGetPart(txn5, chunkMessage3,
+				BdfList.of(ATTACHMENT_CHUNK, chunk3));
+
+		Attachment attachment = attachmentReader.getAttachment(header);
+		InputStream in = attachment.getStream();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		copyAndClose(in, out);
+
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		expected.write(chunk1);
+		expected.write(chunk2);
+		expected.write(chunk3);
+		assertArrayEquals(expected.toByteArray(), out.toByteArray());
+	}
+
+	@Test
+	public void testRejectsChunkFromWrongGroup() throws Exception {
+		GroupId wrongGroupId = new GroupId(getRandomId());
+		Message chunkMessage = getMessage(wrongGroupId);
+		Message indexMessage = getMessage(groupId);
+
+		Transaction txn = new Transaction(null, true);
+		Transaction txn1 = new Transaction(null, true);
+		Transaction txn2 = new Transaction(null, true);
+
+		expectGetManifest(txn, 123, indexMessage.getId());
+		expectGetPart(txn1, indexMessage, BdfList.of(ATTACHMENT_INDEX,
+				BdfList.of(chunkMessage.getId())));
+
+		context.checking(new DbExpectations() {{
+			oneOf(db).transactionWithResult(with(true), withDbCallable(txn2));
+			oneOf(clientHelper).getMessage(txn2, chunkMessage.getId());
+			will(returnValue(chunkMessage));
+		}});
+
+		Attachment attachment = attachmentReader.getAttachment(header);
+		try {
+			attachment.getStream().read();
+			fail();
+		} catch (IOException expected) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testRejectsChunkedAttachmentWithWrongLength()
+			throws Exception {
+		byte[] chunk = getRandomBytes(123);
+		Message chunkMessage = getMessage(groupId);
+		Message indexMessage = getMessage(groupId);
+
+		Transaction txn = new Transaction(null, true);
+		Transaction txn1 = new Transaction(null, true);
+		Transaction txn2 = new Transaction(null, true);
+
+		// The manifest claims the attachment is longer than it is
+		expectGetManifest(txn, chunk.length + 1, indexMessage.getId());
+		expectGetPart(txn1, indexMessage, BdfList.of(ATTACHMENT_INDEX,
+				BdfList.of(chunkMessage.getId())));
+		expectGetPart(txn2, chunkMessage, BdfList.of(ATTACHMENT_CHUNK, chunk));
+
+		Attachment attachment = attachmentReader.getAttachment(header);
+		InputStream in = attachment.getStream();
+		byte[] buf = new byte[chunk.length];
+		try {
+			while (in.read(buf) != -1) continue;
+			fail();
+		} catch (IOException expected) {
+			// Expected
+		}
+	}
+
+	private void expectGetManifest(Transaction txn, long length,
+			MessageId... indexIds) throws Exception {
+		BdfDictionary meta = BdfDictionary.of(
+				new BdfEntry(MSG_KEY_CONTENT_TYPE, contentType),
+				new BdfEntry(MSG_KEY_ATTACHMENT_LENGTH, length));
+		BdfList ids = new BdfList();
+		for (MessageId id : indexIds) ids.add(id);
+		BdfList manifest = BdfList.of(ATTACHMENT, contentType, length, ids);
+
+		context.checking(new DbExpectations() {{
+			oneOf(db).transactionWithResult(with(true), withDbCallable(txn));
+			oneOf(clientHelper).getMessage(txn, message.getId());
+			will(returnValue(message));
+			oneOf(clientHelper)
+					.getMessageMetadataAsDictionary(txn, message.getId());
+			will(returnValue(meta));
+			oneOf(clientHelper).toList(message);
+			will(returnValue(manifest));
+		}});
+	}
+
+	private void expectGetPart(Transaction txn, Message m, BdfList body)
+			throws Exception {
+		context.checking(new DbExpectations() {{
+			oneOf(db).transactionWithResult(with(true), withDbCallable(txn));
+			oneOf(clientHelper).getMessage(txn, m.getId());
+			will(returnValue(m));
+			oneOf(clientHelper).toList(m);
+			will(returnValue(body));
+		}});
+	}
 }
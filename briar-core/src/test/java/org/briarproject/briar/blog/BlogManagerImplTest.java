@@ -33,6 +33,10 @@ import org.briarproject.briar.api.identity.AuthorManager;
 import org.jmock.Expectations;
 import org.junit.Test;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import static org.briarproject.bramble.api.sync.validation.IncomingMessageHook.DeliveryAction.ACCEPT_SHARE;
 import static org.briarproject.bramble.test.TestUtils.getContact;
 import static org.briarproject.bramble.test.TestUtils.getGroup;
@@ -62,7 +66,9 @@ import static org.briarproject.briar.api.identity.AuthorInfo.Status.OURSELVES;
 import static org.briarproject.briar.api.identity.AuthorInfo.Status.VERIFIED;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class BlogManagerImplTest extends BrambleMockTestCase {
@@ -846,6 +852,94 @@ public class BlogManagerImplTest extends BrambleMockTestCase {
 				((BlogCommentHeader) h1).getRootPost().getId());
 	}
 
+	@Test
+	public void testGetPostHeadersLoadsEachParentOnce() throws Exception {
+		Transaction txn = new Transaction(null, true);
+		// A post reblogged from the RSS blog to blog 1, with a comment on
+		// the wrapped post and a reply to the comment
+		MessageId wrappedPostId = new MessageId(getRandomId());
+		BdfDictionary wrappedPostMeta = BdfDictionary.of(
+				new BdfEntry(KEY_TYPE, WRAPPED_POST.getInt()),
+				new BdfEntry(KEY_RSS_FEED, true),
+				new BdfEntry(KEY_ORIGINAL_MSG_ID, rssMessageId),
+				new BdfEntry(KEY_AUTHOR, rssAuthorList),
+				new BdfEntry(KEY_TIMESTAMP, timestamp),
+				new BdfEntry(KEY_TIME_RECEIVED, timeReceived)
+		);
+		MessageId commentId = new MessageId(getRandomId());
+		BdfDictionary commentMeta = BdfDictionary.of(
+				new BdfEntry(KEY_TYPE, COMMENT.getInt()),
+				new BdfEntry(KEY_COMMENT, comment),
+				new BdfEntry(KEY_TIMESTAMP, timestamp),
+				new BdfEntry(KEY_ORIGINAL_MSG_ID, commentId),
+				new BdfEntry(KEY_ORIGINAL_PARENT_MSG_ID, rssMessageId),
+				new BdfEntry(KEY_PARENT_MSG_ID, wrappedPostId),
+				new BdfEntry(KEY_AUTHOR, authorList1),
+				new BdfEntry(KEY_READ, true)
+		);
+		MessageId replyId = new MessageId(getRandomId());
+		BdfDictionary replyMeta = BdfDictionary.of(
+				new BdfEntry(KEY_TYPE, COMMENT.getInt()),
+				new BdfEntry(KEY_COMMENT, comment),
+				new BdfEntry(KEY_TIMESTAMP, timestamp),
+				new BdfEntry(KEY_ORIGINAL_MSG_ID, replyId),
+				new BdfEntry(KEY_ORIGINAL_PARENT_MSG_ID, commentId),
+				new BdfEntry(KEY_PARENT_MSG_ID, commentId),
+				new BdfEntry(KEY_AUTHOR, authorList2),
+				new BdfEntry(KEY_READ, false)
+		);
+		Map<MessageId, BdfDictionary> metadata = new HashMap<>();
+		metadata.put(wrappedPostId, wrappedPostMeta);
+		metadata.put(commentId, commentMeta);
+		metadata.put(replyId, replyMeta);
+
+		context.checking(new Expectations() {{
+			// The metadata for the whole blog is loaded with one query, so
+			// no parents need to be loaded separately
+			oneOf(clientHelper).getMessageMetadataAsDictionary(txn,
+					blog1.getId());
+			will(returnValue(metadata));
+			// Each author is parsed once per message and each author's info
+			// is loaded once
+			oneOf(clientHelper).parseAndValidateAuthor(rssAuthorList);
+			will(returnValue(rssLocalAuthor));
+			oneOf(clientHelper).parseAndValidateAuthor(authorList1);
+			will(returnValue(localAuthor1));
+			oneOf(authorManager).getAuthorInfo(txn, localAuthor1.getId());
+			will(returnValue(verifiedInfo));
+			oneOf(clientHelper).parseAndValidateAuthor(authorList2);
+			will(returnValue(localAuthor2));
+			oneOf(authorManager).getAuthorInfo(txn, localAuthor2.getId());
+			will(returnValue(ourselvesInfo));
+		}});
+
+		List<BlogPostHeader> headers =
+				blogManager.getPostHeaders(txn, blog1.getId());
+
+		// The wrapped post is only returned as the parent of the comment
+		assertEquals(2, headers.size());
+		BlogCommentHeader commentHeader = null, replyHeader = null;
+		for (BlogPostHeader h : headers) {
+			assertTrue(h instanceof BlogCommentHeader);
+			if (h.getId().equals(commentId)) {
+				commentHeader = (BlogCommentHeader) h;
+			} else if (h.getId().equals(replyId)) {
+				replyHeader = (BlogCommentHeader) h;
+			}
+		}
+		assertNotNull(commentHeader);
+		assertNotNull(replyHeader);
+		assertEquals(VERIFIED, commentHeader.getAuthorStatus());
+		assertEquals(OURSELVES, replyHeader.getAuthorStatus());
+		// The reply's parent is the same header that was returned
+		assertSame(commentHeader, replyHeader.getParent());
+		BlogPostHeader wrappedPostHeader = commentHeader.getParent();
+		assertEquals(WRAPPED_POST, wrappedPostHeader.getType());
+		assertEquals(wrappedPostId, wrappedPostHeader.getId());
+		assertEquals(NONE, wrappedPostHeader.getAuthorStatus());
+		assertEquals(wrappedPostId, replyHeader.getRootPost().getId());
+	}
+
 	@Test
 	public void testBlogCanBeRemoved() throws Exception {
 		// check that own personal blogs can not be removed
@@ -18,7 +18,10 @@ import org.junit.rules.ExpectedException;
 
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.Map;
 
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
 import static junit.framework.Assert.assertNotNull;
 import static org.briarproject.bramble.api.identity.AuthorConstants.MAX_AUTHOR_NAME_LENGTH;
 import static org.briarproject.briar.api.identity.AuthorInfo.Status.NONE;
@@ -136,6 +139,10 @@ public class BlogManagerIntegrationTest
 
 		// check that body is there
 		assertEquals(text, blogManager0.getPostText(p.getMessage().getId()));
+		MessageId postId = p.getMessage().getId();
+		Map<MessageId, String> texts = db0.transactionWithResult(true, txn ->
+				blogManager0.getPostTexts(txn, singletonList(postId)));
+		assertEquals(singletonMap(postId, text), texts);
 
 		// make sure that blog0 at author1 doesn't have the post yet
 		Collection<BlogPostHeader> headers1 =
@@ -0,0 +1,136 @@
+package org.briarproject.briar.blog;
+
+import org.briarproject.bramble.api.FormatException;
+import org.briarproject.bramble.api.db.CommitAction;
+import org.briarproject.bramble.api.db.DbException;
+import org.briarproject.bramble.api.db.EventAction;
+import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.test.TestDatabaseConfigModule;
+import org.briarproject.briar.api.blog.BlogManager;
+import org.briarproject.briar.api.blog.BlogPost;
+import org.briarproject.briar.api.blog.BlogPostHeader;
+import org.briarproject.briar.api.blog.event.BlogPostAddedEvent;
+import org.briarproject.briar.test.BriarIntegrationTest;
+import org.briarproject.briar.test.BriarIntegrationTestComponent;
+import org.briarproject.briar.test.DaggerBriarIntegrationTestComponent;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.security.GeneralSecurityException;
+import java.util.List;
+
+import static org.briarproject.bramble.util.LogUtils.now;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures how long it takes to load the headers of a blog containing many
+ * chains of comments, compared with loading each header separately.
+ */
+@Ignore
+public class BlogPostHeaderPerformanceTest
+		extends BriarIntegrationTest<BriarIntegrationTestComponent> {
+
+	/**
+	 * The total number of posts and comments.
+	 */
+	private static final int MESSAGES = 10_000;
+
+	/**
+	 * The length of each chain: a post followed by comments, each replying
+	 * to the previous one.
+	 */
+	private static final int CHAIN_LENGTH = 5;
+
+	private static final int CHAINS_PER_TRANSACTION = 50;
+
+	@Override
+	protected void createComponents() {
+		BriarIntegrationTestComponent component =
+				DaggerBriarIntegrationTestComponent.builder().build();
+		BriarIntegrationTestComponent.Helper.injectEagerSingletons(component);
+		component.inject(this);
+
+		c0 = DaggerBriarIntegrationTestComponent.builder()
+				.testDatabaseConfigModule(new TestDatabaseConfigModule(t0Dir))
+				.build();
+		BriarIntegrationTestComponent.Helper.injectEagerSingletons(c0);
+
+		c1 = DaggerBriarIntegrationTestComponent.builder()
+				.testDatabaseConfigModule(new TestDatabaseConfigModule(t1Dir))
+				.build();
+		BriarIntegrationTestComponent.Helper.injectEagerSingletons(c1);
+
+		c2 = DaggerBriarIntegrationTestComponent.builder()
+				.testDatabaseConfigModule(new TestDatabaseConfigModule(t2Dir))
+				.build();
+		BriarIntegrationTestComponent.Helper.injectEagerSingletons(c2);
+	}
+
+	@Test
+	public void testGetPostHeadersWithCommentChains() throws Exception {
+		BlogManager blogManager = c0.getBlogManager();
+		GroupId g = blogFactory.createBlog(author0).getId();
+
+		long start = now();
+		int chains = MESSAGES / CHAIN_LENGTH;
+		for (int i = 0; i < chains; i += CHAINS_PER_TRANSACTION) {
+			int count = Math.min(CHAINS_PER_TRANSACTION, chains - i);
+			db0.transaction(false, txn -> {
+				for (int j = 0; j < count; j++) addChain(txn, blogManager, g);
+			});
+		}
+		System.out.println("Created " + MESSAGES + " posts and comments in "
+				+ (now() - start) + " ms");
+
+		// Warm up, then load all the headers in one call
+		List<BlogPostHeader> headers = db0.transactionWithResult(true,
+				txn -> blogManager.getPostHeaders(txn, g));
+		assertEquals(MESSAGES, headers.size());
+		start = now();
+		headers = db0.transactionWithResult(true,
+				txn -> blogManager.getPostHeaders(txn, g));
+		long duration = now() - start;
+		assertEquals(MESSAGES, headers.size());
+		System.out.println("Loaded all headers in " + duration + " ms");
+
+		// Load each header separately, resolving each comment's chain of
+		// parents from the DB
+		List<BlogPostHeader> all = headers;
+		start = now();
+		db0.transaction(true, txn -> {
+			for (BlogPostHeader h : all) {
+				blogManager.getPostHeader(txn, g, h.getId());
+			}
+		});
+		duration = now() - start;
+		System.out.println("Loaded each header separately in " + duration
+				+ " ms");
+	}
+
+	private void addChain(Transaction txn, BlogManager blogManager,
+			GroupId g) throws DbException {
+		try {
+			BlogPost p = blogPostFactory.createBlogPost(g,
+					c0.getClock().currentTimeMillis(), null, author0,
+					"post text");
+			blogManager.addLocalPost(txn, p);
+			BlogPostHeader parent = getAddedHeader(txn);
+			for (int i = 1; i < CHAIN_LENGTH; i++) {
+				blogManager.addLocalComment(txn, author0, g, "comment " + i,
+						parent);
+				parent = getAddedHeader(txn);
+			}
+		} catch (FormatException | GeneralSecurityException e) {
+			throw new DbException(e);
+		}
+	}
+
+	private BlogPostHeader getAddedHeader(Transaction txn) {
+		List<CommitAction> actions = txn.getActions();
+		CommitAction last = actions.get(actions.size() - 1);
+		BlogPostAddedEvent e =
+				(BlogPostAddedEvent) ((EventAction) last).getEvent();
+		return e.getHeader();
+	}
+}
@@ -6,12 +6,20 @@ import org.briarproject.briar.api.client.MessageTree;
 import org.briarproject.nullsafety.NotNullByDefault;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 import javax.annotation.Nullable;
 
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class MessageTreeImplTest {
 
@@ -59,6 +67,96 @@ public class MessageTreeImplTest {
 		assertEquals(nodes[3], sortedNodes[4]);
 	}
 
+	@Test
+	public void testNodesAddedSinglyAreInsertedInOrder() {
+		tree = new MessageTreeImpl<>();
+		long timestamp = System.currentTimeMillis();
+		TestNode root = new TestNode();
+		root.setTimestamp(timestamp);
+		TestNode[] children = new TestNode[4];
+		for (int i = 0; i < children.length; i++) {
+			children[i] = new TestNode();
+			children[i].setParentId(root.getId());
+		}
+		children[0].setTimestamp(timestamp + 1);
+		children[1].setTimestamp(timestamp + 2);
+		children[2].setTimestamp(timestamp + 2);
+		children[3].setTimestamp(timestamp + 3);
+		tree.add(root);
+		tree.add(children[3]);
+		tree.add(children[1]);
+		tree.add(children[0]);
+		// Siblings with equal timestamps should stay in the order they
+		// were added
+		tree.add(children[2]);
+		// Adding a node again should have no effect
+		tree.add(children[1]);
+
+		assertEquals(5, tree.size());
+		assertEquals(asList(root, children[0], children[1], children[2],
+				children[3]), tree.depthFirstOrder());
+		assertEquals(0, root.getLevel());
+		for (TestNode child : children) assertEquals(1, child.getLevel());
+	}
+
+	@Test
+	public void testNodeCanBeAddedBeforeParent() {
+		tree = new MessageTreeImpl<>();
+		TestNode root = new TestNode();
+		TestNode child = new TestNode();
+		TestNode grandchild = new TestNode();
+		child.setParentId(root.getId());
+		grandchild.setParentId(child.getId());
+
+		// The grandchild can't be reached until its parent has been added
+		tree.add(grandchild);
+		assertTrue(tree.contains(grandchild.getId()));
+		assertEquals(0, tree.size());
+		assertEquals(emptyList(), tree.depthFirstOrder());
+		tree.add(child);
+		assertEquals(0, tree.size());
+		tree.add(root);
+		assertEquals(3, tree.size());
+		assertEquals(asList(root, child, grandchild), tree.depthFirstOrder());
+		assertEquals(2, grandchild.getLevel());
+	}
+
+	@Test
+	public void testWindowsMatchDepthFirstOrder() {
+		tree = new MessageTreeImpl<>();
+		Random random = new Random();
+		List<TestNode> nodes = new ArrayList<>();
+		long timestamp = System.currentTimeMillis();
+		for (int i = 0; i < 200; i++) {
+			TestNode node = new TestNode();
+			node.setTimestamp(timestamp + random.nextInt(50));
+			// Some nodes are roots, the rest are replies to earlier nodes
+			if (!nodes.isEmpty() && random.nextInt(5) != 0) {
+				TestNode parent = nodes.get(random.nextInt(nodes.size()));
+				node.setParentId(parent.getId());
+			}
+			nodes.add(node);
+		}
+		// Add half the nodes in a batch and the rest one at a time
+		tree.add(nodes.subList(0, 100));
+		for (TestNode node : nodes.subList(100, 200)) tree.add(node);
+		assertEquals(200, tree.size());
+
+		List<TestNode> order = tree.depthFirstOrder();
+		assertEquals(200, order.size());
+		Map<TestNode, Integer> levels = new HashMap<>();
+		for (TestNode node : order) levels.put(node, node.getLevel());
+		for (int offset = 0; offset <= 200; offset += 7) {
+			for (TestNode node : nodes) node.setLevel(-1);
+			int limit = 1 + random.nextInt(30);
+			List<TestNode> window = tree.depthFirstOrder(offset, limit);
+			int end = Math.min(offset + limit, 200);
+			assertEquals(order.subList(offset, end), window);
+			for (TestNode node : window)
+				assertEquals(levels.get(node).intValue(), node.getLevel());
+		}
+	}
+
 	@NotNullByDefault
 	private class TestNode implements MessageTree.MessageNode {
 
@@ -66,6 +164,7 @@ public class MessageTreeImplTest {
 		@Nullable
 		private MessageId parentId;
 		private long timestamp;
+		private int level;
 
 		@Override
 		public MessageId getId() {
@@ -80,7 +179,11 @@ public class MessageTreeImplTest {
 
 		@Override
 		public void setLevel(int level) {
+			this.level = level;
+		}
 
+		private int getLevel() {
+			return level;
 		}
 
 		@Override
@@ -10,6 +10,7 @@ import org.briarproject.bramble.api.data.BdfEntry;
 import org.briarproject.bramble.api.data.BdfList;
 import org.briarproject.bramble.api.db.DatabaseComponent;
 import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.api.db.TransactionBatch;
 import org.briarproject.bramble.api.identity.LocalAuthor;
 import org.briarproject.bramble.api.sync.Group;
 import org.briarproject.bramble.api.sync.GroupId;
@@ -19,6 +20,7 @@ import org.briarproject.bramble.api.system.TaskScheduler;
 import org.briarproject.bramble.test.BrambleMockTestCase;
 import org.briarproject.bramble.test.DbExpectations;
 import org.briarproject.bramble.test.ImmediateExecutor;
+import org.briarproject.bramble.test.PredicateMatcher;
 import org.briarproject.briar.api.blog.Blog;
 import org.briarproject.briar.api.blog.BlogManager;
 import org.briarproject.briar.api.blog.BlogPost;
@@ -55,6 +57,8 @@ public class FeedManagerImplTest extends BrambleMockTestCase {
 	private final TaskScheduler scheduler = context.mock(TaskScheduler.class);
 	private final Executor ioExecutor = new ImmediateExecutor();
 	private final DatabaseComponent db = context.mock(DatabaseComponent.class);
+	private final TransactionBatch batch =
+			context.mock(TransactionBatch.class);
 	private final ContactGroupFactory contactGroupFactory =
 			context.mock(ContactGroupFactory.class);
 	private final ClientHelper clientHelper = context.mock(ClientHelper.class);
@@ -387,10 +391,10 @@ public class FeedManagerImplTest extends BrambleMockTestCase {
 	}
 
 	private void expectUpdateFeedNoEntries(Feed feed) throws Exception {
-		Transaction txn = new Transaction(null, false);
-
 		context.checking(new DbExpectations() {{
-			oneOf(db).transactionWithResult(with(false), withDbCallable(txn));
+			oneOf(db).startBatch(with(any(int.class)), with(any(long.class)));
+			will(returnValue(batch));
+			oneOf(batch).close();
 			oneOf(feedFactory).updateFeed(with(feed), with(any(SyndFeed.class)),
 					with(0L));
 			will(returnValue(feed));
@@ -402,16 +406,34 @@ public class FeedManagerImplTest extends BrambleMockTestCase {
 		String body = "<p>(" + new Date(pubDate) + ")</p>";
 
 		context.checking(new DbExpectations() {{
-			oneOf(db).transactionWithResult(with(false), withDbCallable(txn));
+			oneOf(db).startBatch(with(any(int.class)), with(any(long.class)));
+			will(returnValue(batch));
+			// The post is created before it's added to the batch
 			oneOf(clock).currentTimeMillis();
 			will(returnValue(now));
 			oneOf(blogPostFactory).createBlogPost(blogGroupId, pubDate, null,
 					localAuthor, body);
 			will(returnValue(blogPost));
+			oneOf(batch).add(with((long) message.getRawLength()),
+					withDbRunnable(txn));
 			oneOf(blogManager).addLocalPost(txn, blogPost);
+			oneOf(batch).close();
 			oneOf(feedFactory).updateFeed(with(feed), with(any(SyndFeed.class)),
 					with(pubDate));
 			will(returnValue(feed));
 		}});
+		// The feed's last entry time is stored in the same transaction as
+		// the post
+		BdfDictionary feedDict = new BdfDictionary();
+		expectGetFeeds(txn, feed);
+		expectGetLocalGroup();
+		context.checking(new Expectations() {{
+			oneOf(feedFactory).feedToBdfDictionary(with(new PredicateMatcher<>(
+					Feed.class, f -> f.getLastEntryTime() == pubDate)));
+			will(returnValue(feedDict));
+			oneOf(clientHelper).mergeGroupMetadata(txn, localGroupId,
+					BdfDictionary.of(new BdfEntry(KEY_FEEDS,
+							BdfList.of(feedDict))));
+		}});
 	}
 }
@@ -0,0 +1,117 @@
+package org.briarproject.briar.messaging;
+
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.test.TestDatabaseConfigModule;
+import org.briarproject.briar.api.attachment.Attachment;
+import org.briarproject.briar.api.attachment.AttachmentHeader;
+import org.briarproject.briar.api.messaging.MessagingManager;
+import org.briarproject.briar.test.BriarIntegrationTest;
+import org.briarproject.briar.test.BriarIntegrationTestComponent;
+import org.briarproject.briar.test.DaggerBriarIntegrationTestComponent;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.Random;
+
+import static org.briarproject.bramble.util.LogUtils.now;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures the throughput of storing a large attachment in the DB and
+ * reading it back.
+ */
+@Ignore
+public class LargeAttachmentPerformanceTest
+		extends BriarIntegrationTest<BriarIntegrationTestComponent> {
+
+	private static final int ATTACHMENT_SIZE = 50 * 1024 * 1024;
+
+	@Override
+	protected void createComponents() {
+		BriarIntegrationTestComponent component =
+				DaggerBriarIntegrationTestComponent.builder().build();
+		BriarIntegrationTestComponent.Helper.injectEagerSingletons(component);
+		component.inject(this);
+
+		c0 = DaggerBriarIntegrationTestComponent.builder()
+				.testDatabaseConfigModule(new TestDatabaseConfigModule(t0Dir))
+				.build();
+		BriarIntegrationTestComponent.Helper.injectEagerSingletons(c0);
+
+		c1 = DaggerBriarIntegrationTestComponent.builder()
+				.testDatabaseConfigModule(new TestDatabaseConfigModule(t1Dir))
+				.build();
+		BriarIntegrationTestComponent.Helper.injectEagerSingletons(c1);
+
+		c2 = DaggerBriarIntegrationTestComponent.builder()
+				.testDatabaseConfigModule(new TestDatabaseConfigModule(t2Dir))
+				.build();
+		BriarIntegrationTestComponent.Helper.injectEagerSingletons(c2);
+	}
+
+	@Test
+	public void testWriteAndReadLargeAttachment() throws Exception {
+		MessagingManager messagingManager = c0.getMessagingManager();
+		GroupId g = messagingManager.getConversationId(contactId1From0);
+
+		long start = now();
+		AttachmentHeader h = messagingManager.addLocalAttachment(g,
+				c0.getClock().currentTimeMillis(), "image/jpeg",
+				new RandomInputStream(ATTACHMENT_SIZE));
+		long writeDuration = now() - start;
+
+		start = now();
+		Attachment a = c0.getAttachmentReader().getAttachment(h);
+		long length = 0;
+		byte[] buf = new byte[4096];
+		try (InputStream in = a.getStream()) {
+			int read;
+			while ((read = in.read(buf)) != -1) length += read;
+		}
+		long readDuration = now() - start;
+		assertEquals(ATTACHMENT_SIZE, length);
+
+		System.out.println("Wrote " + ATTACHMENT_SIZE + " bytes in "
+				+ writeDuration + " ms, "
+				+ getMegabytesPerSecond(writeDuration) + " MB/s");
+		System.out.println("Read " + ATTACHMENT_SIZE + " bytes in "
+				+ readDuration + " ms, "
+				+ getMegabytesPerSecond(readDuration) + " MB/s");
+	}
+
+	private double getMegabytesPerSecond(long duration) {
+		return ATTACHMENT_SIZE / 1024.0 / 1024.0 / (duration / 1000.0);
+	}
+
+	/**
+	 * Generates pseudo-random data without holding it all in memory.
+	 */
+	private static class RandomInputStream extends InputStream {
+
+		private final Random random = new Random();
+		private long remaining;
+
+		private RandomInputStream(long length) {
+			remaining = length;
+		}
+
+		@Override
+		public int read() {
+			if (remaining == 0) return -1;
+			remaining--;
+			return random.nextInt(256);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (remaining == 0) return -1;
+			len = (int) Math.min(len, remaining);
+			byte[] bytes = new byte[len];
+			random.nextBytes(bytes);
+			System.arraycopy(bytes, 0, b, off, len);
+			remaining -= len;
+			return len;
+		}
+	}
+}
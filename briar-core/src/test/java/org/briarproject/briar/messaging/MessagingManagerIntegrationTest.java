@@ -6,6 +6,7 @@ import org.briarproject.bramble.api.db.MessageDeletedException;
 import org.briarproject.bramble.api.sync.GroupId;
 import org.briarproject.bramble.api.sync.MessageId;
 import org.briarproject.bramble.test.TestDatabaseConfigModule;
+import org.briarproject.briar.api.attachment.Attachment;
 import org.briarproject.briar.api.attachment.AttachmentHeader;
 import org.briarproject.briar.api.conversation.ConversationMessageHeader;
 import org.briarproject.briar.api.messaging.MessagingManager;
@@ -19,10 +20,13 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.annotation.Nullable;
@@ -31,10 +35,13 @@ import static java.util.Collections.emptyList;
 import static java.util.Collections.emptySet;
 import static java.util.Collections.singletonList;
 import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
+import static org.briarproject.bramble.util.IoUtils.copyAndClose;
 import static org.briarproject.bramble.util.StringUtils.getRandomString;
 import static org.briarproject.briar.api.autodelete.AutoDeleteConstants.MIN_AUTO_DELETE_TIMER_MS;
 import static org.briarproject.briar.api.autodelete.AutoDeleteConstants.NO_AUTO_DELETE_TIMER;
+import static org.briarproject.briar.messaging.MessagingConstants.MAX_ATTACHMENT_CHUNK_LENGTH;
 import static org.briarproject.briar.test.BriarTestUtils.assertGroupCount;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -124,6 +131,16 @@ public class MessagingManagerIntegrationTest
 		assertEquals(2, messages1.size());
 		assertGroupCounts(c0, 2, 1);
 		assertGroupCounts(c1, 2, 1);
+
+		// the texts can be retrieved in a single transaction
+		List<MessageId> ids = new ArrayList<>();
+		for (ConversationMessageHeader h : messages0) ids.add(h.getId());
+		Map<MessageId, String> texts =
+				c0.getDatabaseComponent().transactionWithResult(true, txn ->
+						c0.getMessagingManager().getMessageTexts(txn, ids));
+		assertEquals(2, texts.size());
+		assertTrue(texts.containsValue(text));
+		assertTrue(texts.containsValue(text2));
 	}
 
 	@Test
@@ -153,6 +170,52 @@ public class MessagingManagerIntegrationTest
 		assertGroupCounts(c1, 1, 1);
 	}
 
+	@Test
+	public void testLargeAttachment() throws Exception {
+		// Add an attachment that needs to be split into chunks
+		byte[] data = getRandomBytes(100_000);
+		GroupId g = messagingManager0.getConversationId(contactId);
+		AttachmentHeader h = messagingManager0.addLocalAttachment(g,
+				c0.getClock().currentTimeMillis(), "image/jpeg",
+				new ByteArrayInputStream(data));
+
+		// Send a message with the attachment. The attachment's manifest,
+		// index and chunks are sent along with the message
+		PrivateMessage m = messageFactory.createPrivateMessage(g,
+				c0.getClock().currentTimeMillis(), null, singletonList(h),
+				NO_AUTO_DELETE_TIMER);
+		messagingManager0.addLocalMessage(m);
+		int chunks = (data.length + MAX_ATTACHMENT_CHUNK_LENGTH - 1)
+				/ MAX_ATTACHMENT_CHUNK_LENGTH;
+		syncMessagesWithDependencies(c0, c1, contactId, 1 + 1 + 1 + chunks);
+
+		// The attachment can be read on both devices
+		assertArrayEquals(data, readAttachment(c0, h));
+		assertArrayEquals(data, readAttachment(c1, h));
+
+		// Delete the messages on both devices
+		assertTrue(db0.transactionWithResult(false,
+				txn -> messagingManager0.deleteAllMessages(txn, contactId))
+				.allDeleted());
+		assertTrue(db1.transactionWithResult(false,
+				txn -> messagingManager1.deleteAllMessages(txn, contactId))
+				.allDeleted());
+
+		// The attachment was deleted on both devices
+		try {
+			readAttachment(c0, h);
+			fail();
+		} catch (MessageDeletedException e) {
+			// expected
+		}
+		try {
+			readAttachment(c1, h);
+			fail();
+		} catch (MessageDeletedException e) {
+			// expected
+		}
+	}
+
 	@Test
 	public void testAutoDeleteTimer() throws Exception {
 		// send message with auto-delete timer
@@ -345,6 +408,14 @@ public class MessagingManagerIntegrationTest
 				c.getClock().currentTimeMillis(), "image/jpeg", stream);
 	}
 
+	private byte[] readAttachment(BriarIntegrationTestComponent c,
+			AttachmentHeader h) throws Exception {
+		Attachment a = c.getAttachmentReader().getAttachment(h);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		copyAndClose(a.getStream(), out);
+		return out.toByteArray();
+	}
+
 	private Collection<ConversationMessageHeader> getMessages(
 			BriarIntegrationTestComponent c)
 			throws Exception {
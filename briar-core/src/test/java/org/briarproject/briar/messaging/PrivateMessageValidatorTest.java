@@ -19,6 +19,7 @@ import org.jmock.Expectations;
 import org.junit.Test;
 
 import java.io.InputStream;
+import java.util.Collection;
 
 import static org.briarproject.bramble.api.transport.TransportConstants.MAX_CLOCK_DIFFERENCE;
 import static org.briarproject.bramble.test.TestUtils.getClientId;
@@ -27,7 +28,9 @@ import static org.briarproject.bramble.test.TestUtils.getMessage;
 import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
 import static org.briarproject.bramble.test.TestUtils.getRandomId;
 import static org.briarproject.bramble.util.StringUtils.getRandomString;
+import static org.briarproject.briar.api.attachment.MediaConstants.MAX_ATTACHMENT_SIZE;
 import static org.briarproject.briar.api.attachment.MediaConstants.MAX_CONTENT_TYPE_BYTES;
+import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_ATTACHMENT_LENGTH;
 import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_CONTENT_TYPE;
 import static org.briarproject.briar.api.attachment.MediaConstants.MSG_KEY_DESCRIPTOR_LENGTH;
 import static org.briarproject.briar.api.autodelete.AutoDeleteConstants.MAX_AUTO_DELETE_TIMER_MS;
@@ -36,7 +39,11 @@ import static org.briarproject.briar.api.messaging.MessagingConstants.MAX_ATTACH
 import static org.briarproject.briar.api.messaging.MessagingConstants.MAX_PRIVATE_MESSAGE_TEXT_LENGTH;
 import static org.briarproject.briar.client.MessageTrackerConstants.MSG_KEY_READ;
 import static org.briarproject.briar.messaging.MessageTypes.ATTACHMENT;
+import static org.briarproject.briar.messaging.MessageTypes.ATTACHMENT_CHUNK;
+import static org.briarproject.briar.messaging.MessageTypes.ATTACHMENT_INDEX;
 import static org.briarproject.briar.messaging.MessageTypes.PRIVATE_MESSAGE;
+import static org.briarproject.briar.messaging.MessagingConstants.MAX_ATTACHMENT_CHUNK_LENGTH;
+import static org.briarproject.briar.messaging.MessagingConstants.MAX_CHUNKS_PER_ATTACHMENT_INDEX;
 import static org.briarproject.briar.messaging.MessagingConstants.MSG_KEY_ATTACHMENT_HEADERS;
 import static org.briarproject.briar.messaging.MessagingConstants.MSG_KEY_AUTO_DELETE_TIMER;
 import static org.briarproject.briar.messaging.MessagingConstants.MSG_KEY_HAS_TEXT;
@@ -44,6 +51,7 @@ import static org.briarproject.briar.messaging.MessagingConstants.MSG_KEY_LOCAL;
 import static org.briarproject.briar.messaging.MessagingConstants.MSG_KEY_MSG_TYPE;
 import static org.briarproject.briar.messaging.MessagingConstants.MSG_KEY_TIMESTAMP;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class PrivateMessageValidatorTest extends BrambleMockTestCase {
 
@@ -93,6 +101,29 @@ public class PrivateMessageValidatorTest extends BrambleMockTestCase {
 			new BdfEntry(MSG_KEY_DESCRIPTOR_LENGTH, 0L),
 			new BdfEntry(MSG_KEY_CONTENT_TYPE, contentType)
 	);
+	// Long enough to need two indexes
+	private final long manifestLength =
+			(long) MAX_ATTACHMENT_CHUNK_LENGTH * MAX_CHUNKS_PER_ATTACHMENT_INDEX
+					+ 1;
+	private final MessageId indexId1 = new MessageId(getRandomId());
+	private final MessageId indexId2 = new MessageId(getRandomId());
+	private final BdfDictionary manifestMeta = BdfDictionary.of(
+			new BdfEntry(MSG_KEY_TIMESTAMP, message.getTimestamp()),
+			new BdfEntry(MSG_KEY_LOCAL, false),
+			new BdfEntry(MSG_KEY_MSG_TYPE, ATTACHMENT),
+			new BdfEntry(MSG_KEY_ATTACHMENT_LENGTH, manifestLength),
+			new BdfEntry(MSG_KEY_CONTENT_TYPE, contentType)
+	);
+	private final BdfDictionary indexMeta = BdfDictionary.of(
+			new BdfEntry(MSG_KEY_TIMESTAMP, message.getTimestamp()),
+			new BdfEntry(MSG_KEY_LOCAL, false),
+			new BdfEntry(MSG_KEY_MSG_TYPE, ATTACHMENT_INDEX)
+	);
+	private final BdfDictionary chunkMeta = BdfDictionary.of(
+			new BdfEntry(MSG_KEY_TIMESTAMP, message.getTimestamp()),
+			new BdfEntry(MSG_KEY_LOCAL, false),
+			new BdfEntry(MSG_KEY_MSG_TYPE, ATTACHMENT_CHUNK)
+	);
 
 	private final PrivateMessageValidator validator =
 			new PrivateMessageValidator(bdfReaderFactory, metadataEncoder,
@@ -389,7 +420,126 @@ public class PrivateMessageValidatorTest extends BrambleMockTestCase {
 	@Test(expected = InvalidMessageException.class)
 	public void testRejectsUnknownMessageType() throws Exception {
 		expectCheckTimestamp(now);
-		expectParseList(BdfList.of(ATTACHMENT + 1, contentType));
+		expectParseList(BdfList.of(ATTACHMENT_CHUNK + 1, contentType));
+
+		validator.validateMessage(message, group);
+	}
+
+	@Test
+	public void testAcceptsValidManifestForAttachment() throws Exception {
+		expectCheckTimestamp(now);
+		expectParseList(BdfList.of(ATTACHMENT, contentType, manifestLength,
+				BdfList.of(indexId1, indexId2)));
+		expectReadEof(true);
+		expectEncodeMetadata(manifestMeta);
+
+		MessageContext result = validator.validateMessage(message, group);
+		Collection<MessageId> dependencies = result.getDependencies();
+		assertEquals(2, dependencies.size());
+		assertTrue(dependencies.contains(indexId1));
+		assertTrue(dependencies.contains(indexId2));
+	}
+
+	@Test(expected = InvalidMessageException.class)
+	public void testRejectsTrailingDataForManifest() throws Exception {
+		expectCheckTimestamp(now);
+		expectParseList(BdfList.of(ATTACHMENT, contentType, manifestLength,
+				BdfList.of(indexId1, indexId2)));
+		expectReadEof(false);
+
+		validator.validateMessage(message, group);
+	}
+
+	@Test(expected = InvalidMessageException.class)
+	public void testRejectsTooFewIndexesForManifest() throws Exception {
+		testRejectsAttachmentPart(BdfList.of(ATTACHMENT, contentType,
+				manifestLength, BdfList.of(indexId1)));
+	}
+
+	@Test(expected = InvalidMessageException.class)
+	public void testRejectsTooManyIndexesForManifest() throws Exception {
+		testRejectsAttachmentPart(BdfList.of(ATTACHMENT, contentType, 1L,
+				BdfList.of(indexId1, indexId2)));
+	}
+
+	@Test(expected = InvalidMessageException.class)
+	public void testRejectsZeroLengthForManifest() throws Exception {
+		testRejectsAttachmentPart(BdfList.of(ATTACHMENT, contentType, 0L,
+				new BdfList()));
+	}
+
+	@Test(expected = InvalidMessageException.class)
+	public void testRejectsTooLongLengthForManifest() throws Exception {
+		testRejectsAttachmentPart(BdfList.of(ATTACHMENT, contentType,
+				MAX_ATTACHMENT_SIZE + 1L, BdfList.of(indexId1)));
+	}
+
+	@Test(expected = InvalidMessageException.class)
+	public void testRejectsInvalidIndexIdForManifest() throws Exception {
+		testRejectsAttachmentPart(BdfList.of(ATTACHMENT, contentType, 1L,
+				BdfList.of(getRandomBytes(UniqueId.LENGTH - 1))));
+	}
+
+	@Test
+	public void testAcceptsValidIndexWithDuplicateChunks() throws Exception {
+		MessageId chunkId = new MessageId(getRandomId());
+
+		expectCheckTimestamp(now);
+		expectParseList(BdfList.of(ATTACHMENT_INDEX,
+				BdfList.of(chunkId, chunkId)));
+		expectReadEof(true);
+		expectEncodeMetadata(indexMeta);
+
+		MessageContext result = validator.validateMessage(message, group);
+		Collection<MessageId> dependencies = result.getDependencies();
+		assertEquals(1, dependencies.size());
+		assertTrue(dependencies.contains(chunkId));
+	}
+
+	@Test(expected = InvalidMessageException.class)
+	public void testRejectsEmptyIndex() throws Exception {
+		testRejectsAttachmentPart(BdfList.of(ATTACHMENT_INDEX,
+				new BdfList()));
+	}
+
+	@Test(expected = InvalidMessageException.class)
+	public void testRejectsTooLongIndex() throws Exception {
+		BdfList chunkIds = new BdfList();
+		for (int i = 0; i < MAX_CHUNKS_PER_ATTACHMENT_INDEX + 1; i++) {
+			chunkIds.add(new MessageId(getRandomId()));
+		}
+
+		testRejectsAttachmentPart(BdfList.of(ATTACHMENT_INDEX, chunkIds));
+	}
+
+	@Test
+	public void testAcceptsMaxLengthChunk() throws Exception {
+		expectCheckTimestamp(now);
+		expectParseList(BdfList.of(ATTACHMENT_CHUNK,
+				getRandomBytes(MAX_ATTACHMENT_CHUNK_LENGTH)));
+		expectReadEof(true);
+		expectEncodeMetadata(chunkMeta);
+
+		MessageContext result = validator.validateMessage(message, group);
+		assertEquals(0, result.getDependencies().size());
+	}
+
+	@Test(expected = InvalidMessageException.class)
+	public void testRejectsEmptyChunk() throws Exception {
+		testRejectsAttachmentPart(BdfList.of(ATTACHMENT_CHUNK, new byte[0]));
+	}
+
+	@Test(expected = InvalidMessageException.class)
+	public void testRejectsTooLongChunk() throws Exception {
+		testRejectsAttachmentPart(BdfList.of(ATTACHMENT_CHUNK,
+				getRandomBytes(MAX_ATTACHMENT_CHUNK_LENGTH + 1)));
+	}
+
+	@Test(expected = InvalidMessageException.class)
+	public void testRejectsTrailingDataForChunk() throws Exception {
+		expectCheckTimestamp(now);
+		expectParseList(BdfList.of(ATTACHMENT_CHUNK, getRandomBytes(123)));
+		expectReadEof(false);
 
 		validator.validateMessage(message, group);
 	}
@@ -480,6 +630,14 @@ public class PrivateMessageValidatorTest extends BrambleMockTestCase {
 		validator.validateMessage(message, group);
 	}
 
+	private void testRejectsAttachmentPart(BdfList body) throws Exception {
+		expectCheckTimestamp(now);
+		expectParseList(body);
+		expectReadEof(true);
+
+		validator.validateMessage(message, group);
+	}
+
 	private void expectCheckTimestamp(long now) {
 		context.checking(new Expectations() {{
 			oneOf(clock).currentTimeMillis();
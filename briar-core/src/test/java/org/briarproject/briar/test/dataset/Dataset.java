@@ -0,0 +1,82 @@
+package org.briarproject.briar.test.dataset;
+
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.briar.api.forum.Forum;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.Collection;
+import java.util.List;
+
+import javax.annotation.concurrent.Immutable;
+
+import static java.util.Collections.unmodifiableCollection;
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * A dataset created by the {@link DatasetGenerator}.
+ */
+@Immutable
+@NotNullByDefault
+public class Dataset {
+
+	private final List<ContactId> contacts;
+	private final List<Forum> forums;
+	private final Collection<MessageId> receivedMessages, sharedMessages;
+	private final long messages, bytes;
+
+	Dataset(List<ContactId> contacts, List<Forum> forums,
+			Collection<MessageId> receivedMessages,
+			Collection<MessageId> sharedMessages, long messages, long bytes) {
+		this.contacts = unmodifiableList(contacts);
+		this.forums = unmodifiableList(forums);
+		this.receivedMessages = unmodifiableCollection(receivedMessages);
+		this.sharedMessages = unmodifiableCollection(sharedMessages);
+		this.messages = messages;
+		this.bytes = bytes;
+	}
+
+	/**
+	 * Returns the IDs of the generated contacts.
+	 */
+	public List<ContactId> getContacts() {
+		return contacts;
+	}
+
+	public List<Forum> getForums() {
+		return forums;
+	}
+
+	/**
+	 * Returns the IDs of the messages that were received from generated
+	 * contacts. These messages are validated and delivered in the
+	 * background after the dataset has been created.
+	 */
+	public Collection<MessageId> getReceivedMessages() {
+		return receivedMessages;
+	}
+
+	/**
+	 * Returns the IDs of the messages that will be sent to the peer the
+	 * dataset was shared with, once they have been delivered. The peer must
+	 * subscribe to the {@link #getForums() forums} to receive the forum
+	 * posts.
+	 */
+	public Collection<MessageId> getSharedMessages() {
+		return sharedMessages;
+	}
+
+	/**
+	 * Returns the number of messages that were stored.
+	 */
+	public long getMessages() {
+		return messages;
+	}
+
+	/**
+	 * Returns the total raw length of the messages that were stored.
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+}
@@ -0,0 +1,351 @@
+package org.briarproject.briar.test.dataset;
+
+import org.briarproject.bramble.api.FormatException;
+import org.briarproject.bramble.api.contact.Contact;
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.contact.ContactManager;
+import org.briarproject.bramble.api.crypto.PrivateKey;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.DbException;
+import org.briarproject.bramble.api.db.DbRunnable;
+import org.briarproject.bramble.api.db.TransactionBatch;
+import org.briarproject.bramble.api.identity.AuthorFactory;
+import org.briarproject.bramble.api.identity.IdentityManager;
+import org.briarproject.bramble.api.identity.LocalAuthor;
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.api.system.Clock;
+import org.briarproject.briar.api.blog.Blog;
+import org.briarproject.briar.api.blog.BlogManager;
+import org.briarproject.briar.api.blog.BlogPost;
+import org.briarproject.briar.api.blog.BlogPostFactory;
+import org.briarproject.briar.api.forum.Forum;
+import org.briarproject.briar.api.forum.ForumManager;
+import org.briarproject.briar.api.forum.ForumPost;
+import org.briarproject.briar.api.messaging.MessagingManager;
+import org.briarproject.briar.api.messaging.PrivateMessage;
+import org.briarproject.briar.api.messaging.PrivateMessageFactory;
+import org.briarproject.briar.api.privategroup.GroupMessage;
+import org.briarproject.briar.api.privategroup.GroupMessageFactory;
+import org.briarproject.briar.api.privategroup.PrivateGroup;
+import org.briarproject.briar.api.privategroup.PrivateGroupFactory;
+import org.briarproject.briar.api.privategroup.PrivateGroupManager;
+import org.briarproject.briar.api.privategroup.invitation.GroupInvitationFactory;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.inject.Inject;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.shuffle;
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.bramble.api.sync.Group.Visibility.SHARED;
+import static org.briarproject.bramble.util.LogUtils.now;
+import static org.briarproject.briar.api.autodelete.AutoDeleteConstants.NO_AUTO_DELETE_TIMER;
+
+/**
+ * Creates large, realistic datasets for benchmarks. The generated contacts
+ * have no transport keys, so they only exist in the local database. Their
+ * messages are created and signed as they would be on their own devices
+ * and then received from them.
+ * <p>
+ * The dataset can optionally be shared with a real contact. The local
+ * user's blog and the forums are then shared with that contact.
+ */
+@NotThreadSafe
+@NotNullByDefault
+public class DatasetGenerator {
+
+	private static final Logger LOG =
+			getLogger(DatasetGenerator.class.getName());
+
+	private static final int MAX_MESSAGES_PER_TRANSACTION = 100;
+	private static final long MAX_BYTES_PER_TRANSACTION = 1024 * 1024;
+	private static final long MESSAGE_INTERVAL_MS = 60 * 1000;
+
+	private final DatabaseComponent db;
+	private final Clock clock;
+	private final AuthorFactory authorFactory;
+	private final IdentityManager identityManager;
+	private final ContactManager contactManager;
+	private final MessagingManager messagingManager;
+	private final PrivateMessageFactory privateMessageFactory;
+	private final BlogManager blogManager;
+	private final BlogPostFactory blogPostFactory;
+	private final ForumManager forumManager;
+	private final PrivateGroupManager privateGroupManager;
+	private final PrivateGroupFactory privateGroupFactory;
+	private final GroupMessageFactory groupMessageFactory;
+	private final GroupInvitationFactory groupInvitationFactory;
+
+	private final List<Contact> contacts = new ArrayList<>();
+	private final Map<ContactId, LocalAuthor> authors = new HashMap<>();
+	private final List<MessageId> received = new ArrayList<>();
+	private final List<MessageId> shared = new ArrayList<>();
+	private long messages = 0, bytes = 0;
+
+	@Inject
+	public DatasetGenerator(DatabaseComponent db, Clock clock,
+			AuthorFactory authorFactory, IdentityManager identityManager,
+			ContactManager contactManager, MessagingManager messagingManager,
+			PrivateMessageFactory privateMessageFactory,
+			BlogManager blogManager, BlogPostFactory blogPostFactory,
+			ForumManager forumManager, PrivateGroupManager privateGroupManager,
+			PrivateGroupFactory privateGroupFactory,
+			GroupMessageFactory groupMessageFactory,
+			GroupInvitationFactory groupInvitationFactory) {
+		this.db = db;
+		this.clock = clock;
+		this.authorFactory = authorFactory;
+		this.identityManager = identityManager;
+		this.contactManager = contactManager;
+		this.messagingManager = messagingManager;
+		this.privateMessageFactory = privateMessageFactory;
+		this.blogManager = blogManager;
+		this.blogPostFactory = blogPostFactory;
+		this.forumManager = forumManager;
+		this.privateGroupManager = privateGroupManager;
+		this.privateGroupFactory = privateGroupFactory;
+		this.groupMessageFactory = groupMessageFactory;
+		this.groupInvitationFactory = groupInvitationFactory;
+	}
+
+	/**
+	 * Creates a dataset from the given parameters, optionally sharing the
+	 * local user's blog and the forums with the given contact.
+	 */
+	public Dataset generate(DatasetSpec spec, @Nullable ContactId peer)
+			throws DbException {
+		contacts.clear();
+		authors.clear();
+		received.clear();
+		shared.clear();
+		messages = 0;
+		bytes = 0;
+		Random random = new Random(spec.getSeed());
+		long start = now();
+		createContacts(spec);
+		List<Forum> forums;
+		try (TransactionBatch batch = db.startBatch(
+				MAX_MESSAGES_PER_TRANSACTION, MAX_BYTES_PER_TRANSACTION)) {
+			createPrivateMessages(batch, spec, random);
+			createBlogPosts(batch, spec, random, peer);
+			forums = createForums(batch, spec, random, peer);
+			createPrivateGroups(batch, spec, random);
+		}
+		if (LOG.isLoggable(INFO)) {
+			long duration = Math.max(1, now() - start);
+			LOG.info("Created " + spec + ": " + messages + " messages, "
+					+ bytes + " bytes in " + duration + " ms, "
+					+ messages * 1000 / duration + " messages/s");
+		}
+		List<ContactId> contactIds = new ArrayList<>(contacts.size());
+		for (Contact c : contacts) contactIds.add(c.getId());
+		return new Dataset(contactIds, forums, new ArrayList<>(received),
+				new ArrayList<>(shared), messages, bytes);
+	}
+
+	private void createContacts(DatasetSpec spec) throws DbException {
+		LocalAuthor localAuthor = identityManager.getLocalAuthor();
+		try (TransactionBatch batch = db.startBatch(
+				MAX_MESSAGES_PER_TRANSACTION, MAX_BYTES_PER_TRANSACTION)) {
+			for (int i = 0; i < spec.getContacts(); i++) {
+				LocalAuthor author =
+						authorFactory.createLocalAuthor("Contact " + i);
+				batch.add(0, txn -> {
+					ContactId c = contactManager.addContact(txn, author,
+							localAuthor.getId(), true);
+					contacts.add(db.getContact(txn, c));
+					authors.put(c, author);
+				});
+			}
+		}
+	}
+
+	private void createPrivateMessages(TransactionBatch batch,
+			DatasetSpec spec, Random random) throws DbException {
+		int count = spec.getPrivateMessagesPerContact();
+		long now = clock.currentTimeMillis();
+		for (Contact c : contacts) {
+			GroupId g = messagingManager.getContactGroup(c).getId();
+			shareGroup(batch, c.getId(), g);
+			for (int i = 0; i < count; i++) {
+				long timestamp = now - (count - i) * MESSAGE_INTERVAL_MS;
+				String text = spec.getChatSizes().nextText(random);
+				PrivateMessage m;
+				try {
+					m = privateMessageFactory.createPrivateMessage(g,
+							timestamp, text, emptyList(),
+							NO_AUTO_DELETE_TIMER);
+				} catch (FormatException e) {
+					throw new AssertionError(e);
+				}
+				if (random.nextBoolean()) {
+					addLocalMessage(batch, m.getMessage(), txn ->
+							messagingManager.addLocalMessage(txn, m));
+				} else {
+					receiveMessage(batch, c.getId(), m.getMessage());
+				}
+			}
+		}
+	}
+
+	private void createBlogPosts(TransactionBatch batch, DatasetSpec spec,
+			Random random, @Nullable ContactId peer) throws DbException {
+		LocalAuthor localAuthor = identityManager.getLocalAuthor();
+		Blog ours = blogManager.getPersonalBlog(localAuthor);
+		if (peer != null) shareGroup(batch, peer, ours.getId());
+		long now = clock.currentTimeMillis();
+		int count = spec.getBlogPosts();
+		for (int i = 0; i < count; i++) {
+			long timestamp = now - (count - i) * MESSAGE_INTERVAL_MS;
+			BlogPost post = createBlogPost(ours.getId(), timestamp,
+					localAuthor, spec.getArticleSizes().nextText(random));
+			addLocalMessage(batch, post.getMessage(), txn ->
+					blogManager.addLocalPost(txn, post));
+			if (peer != null) shared.add(post.getMessage().getId());
+		}
+		if (contacts.isEmpty()) return;
+		for (Contact c : contacts) {
+			Blog theirs = blogManager.getPersonalBlog(c.getAuthor());
+			shareGroup(batch, c.getId(), theirs.getId());
+		}
+		count = spec.getContactBlogPosts();
+		for (int i = 0; i < count; i++) {
+			Contact c = contacts.get(random.nextInt(contacts.size()));
+			LocalAuthor author = authors.get(c.getId());
+			Blog theirs = blogManager.getPersonalBlog(author);
+			long timestamp = now - (count - i) * MESSAGE_INTERVAL_MS;
+			BlogPost post = createBlogPost(theirs.getId(), timestamp,
+					author, spec.getArticleSizes().nextText(random));
+			receiveMessage(batch, c.getId(), post.getMessage());
+		}
+	}
+
+	private BlogPost createBlogPost(GroupId g, long timestamp,
+			LocalAuthor author, String text) {
+		try {
+			return blogPostFactory.createBlogPost(g, timestamp, null, author,
+					text);
+		} catch (FormatException | GeneralSecurityException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	private List<Forum> createForums(TransactionBatch batch, DatasetSpec spec,
+			Random random, @Nullable ContactId peer) throws DbException {
+		List<Forum> forums = new ArrayList<>(spec.getForums());
+		long now = clock.currentTimeMillis();
+		int count = spec.getPostsPerForum();
+		for (int i = 0; i < spec.getForums(); i++) {
+			Forum forum = forumManager.addForum("Forum " + i);
+			forums.add(forum);
+			if (peer != null) shareGroup(batch, peer, forum.getId());
+			List<Contact> members =
+					chooseMembers(random, spec.getMembersPerForum());
+			for (Contact c : members) {
+				shareGroup(batch, c.getId(), forum.getId());
+			}
+			List<MessageId> posts = new ArrayList<>(count);
+			for (int j = 0; j < count; j++) {
+				Contact c = members.get(random.nextInt(members.size()));
+				long timestamp = now - (count - j) * MESSAGE_INTERVAL_MS;
+				// About half of the posts are replies to earlier posts
+				MessageId parent = null;
+				if (!posts.isEmpty() && random.nextBoolean())
+					parent = posts.get(random.nextInt(posts.size()));
+				ForumPost post = forumManager.createLocalPost(forum.getId(),
+						spec.getPostSizes().nextText(random), timestamp,
+						parent, authors.get(c.getId()));
+				MessageId id = post.getMessage().getId();
+				posts.add(id);
+				receiveMessage(batch, c.getId(), post.getMessage());
+				if (peer != null) shared.add(id);
+			}
+		}
+		return forums;
+	}
+
+	private void createPrivateGroups(TransactionBatch batch,
+			DatasetSpec spec, Random random) throws DbException {
+		LocalAuthor creator = identityManager.getLocalAuthor();
+		PrivateKey creatorPrivateKey = creator.getPrivateKey();
+		long now = clock.currentTimeMillis();
+		int count = spec.getMessagesPerPrivateGroup();
+		for (int i = 0; i < spec.getPrivateGroups(); i++) {
+			PrivateGroup group = privateGroupFactory.createPrivateGroup(
+					"Private group " + i, creator);
+			GroupId g = group.getId();
+			GroupMessage creatorJoin = groupMessageFactory.createJoinMessage(
+					g, now - (count + 2) * MESSAGE_INTERVAL_MS, creator);
+			privateGroupManager.addPrivateGroup(group, creatorJoin, true);
+			List<Contact> members =
+					chooseMembers(random, spec.getMembersPerPrivateGroup());
+			Map<ContactId, MessageId> previous = new HashMap<>();
+			List<MessageId> posts = new ArrayList<>(count);
+			for (int j = 0; j < count; j++) {
+				Contact c = members.get(random.nextInt(members.size()));
+				LocalAuthor author = authors.get(c.getId());
+				long timestamp = now - (count - j) * MESSAGE_INTERVAL_MS;
+				GroupMessage m;
+				MessageId last = previous.get(c.getId());
+				if (last == null) {
+					// Each member's first message is a join message
+					shareGroup(batch, c.getId(), g);
+					long inviteTimestamp = timestamp - 1;
+					byte[] signature = groupInvitationFactory.signInvitation(
+							c, g, inviteTimestamp, creatorPrivateKey);
+					m = groupMessageFactory.createJoinMessage(g, timestamp,
+							author, inviteTimestamp, signature);
+				} else {
+					MessageId parent = null;
+					if (!posts.isEmpty() && random.nextBoolean())
+						parent = posts.get(random.nextInt(posts.size()));
+					m = groupMessageFactory.createGroupMessage(g, timestamp,
+							parent, author,
+							spec.getPostSizes().nextText(random), last);
+					posts.add(m.getMessage().getId());
+				}
+				previous.put(c.getId(), m.getMessage().getId());
+				receiveMessage(batch, c.getId(), m.getMessage());
+			}
+		}
+	}
+
+	private List<Contact> chooseMembers(Random random, int count) {
+		List<Contact> members = new ArrayList<>(contacts);
+		shuffle(members, random);
+		return members.subList(0, count);
+	}
+
+	private void shareGroup(TransactionBatch batch, ContactId c, GroupId g)
+			throws DbException {
+		batch.add(0, txn -> db.setGroupVisibility(txn, c, g, SHARED));
+	}
+
+	private void receiveMessage(TransactionBatch batch, ContactId c,
+			Message m) throws DbException {
+		batch.add(m.getRawLength(), txn -> db.receiveMessage(txn, c, m));
+		received.add(m.getId());
+		messages++;
+		bytes += m.getRawLength();
+	}
+
+	private void addLocalMessage(TransactionBatch batch, Message m,
+			DbRunnable<DbException> task) throws DbException {
+		batch.add(m.getRawLength(), task);
+		messages++;
+		bytes += m.getRawLength();
+	}
+}
@@ -0,0 +1,222 @@
+package org.briarproject.briar.test.dataset;
+
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static org.briarproject.briar.test.dataset.MessageSizeDistribution.ARTICLE;
+import static org.briarproject.briar.test.dataset.MessageSizeDistribution.CHAT;
+import static org.briarproject.briar.test.dataset.MessageSizeDistribution.POST;
+
+/**
+ * The parameters of a dataset created by the {@link DatasetGenerator}.
+ * Datasets created from the same parameters have the same shape and the
+ * same message sizes, although the keys and signatures differ.
+ */
+@Immutable
+@NotNullByDefault
+public class DatasetSpec {
+
+	private final int contacts, privateMessagesPerContact;
+	private final int forums, membersPerForum, postsPerForum;
+	private final int blogPosts, contactBlogPosts;
+	private final int privateGroups, membersPerPrivateGroup;
+	private final int messagesPerPrivateGroup;
+	private final MessageSizeDistribution chatSizes, postSizes, articleSizes;
+	private final long seed;
+
+	private DatasetSpec(Builder b) {
+		contacts = b.contacts;
+		privateMessagesPerContact = b.privateMessagesPerContact;
+		forums = b.forums;
+		membersPerForum = b.membersPerForum;
+		postsPerForum = b.postsPerForum;
+		blogPosts = b.blogPosts;
+		contactBlogPosts = b.contactBlogPosts;
+		privateGroups = b.privateGroups;
+		membersPerPrivateGroup = b.membersPerPrivateGroup;
+		messagesPerPrivateGroup = b.messagesPerPrivateGroup;
+		chatSizes = b.chatSizes;
+		postSizes = b.postSizes;
+		articleSizes = b.articleSizes;
+		seed = b.seed;
+	}
+
+	/**
+	 * Returns the number of generated contacts.
+	 */
+	public int getContacts() {
+		return contacts;
+	}
+
+	/**
+	 * Returns the number of private messages exchanged with each generated
+	 * contact. About half of the messages are sent and half are received.
+	 */
+	public int getPrivateMessagesPerContact() {
+		return privateMessagesPerContact;
+	}
+
+	public int getForums() {
+		return forums;
+	}
+
+	/**
+	 * Returns the number of generated contacts that are members of each
+	 * forum. The members are chosen at random for each forum.
+	 */
+	public int getMembersPerForum() {
+		return membersPerForum;
+	}
+
+	public int getPostsPerForum() {
+		return postsPerForum;
+	}
+
+	/**
+	 * Returns the number of posts in the local user's personal blog.
+	 */
+	public int getBlogPosts() {
+		return blogPosts;
+	}
+
+	/**
+	 * Returns the total number of posts in the generated contacts' personal
+	 * blogs.
+	 */
+	public int getContactBlogPosts() {
+		return contactBlogPosts;
+	}
+
+	public int getPrivateGroups() {
+		return privateGroups;
+	}
+
+	public int getMembersPerPrivateGroup() {
+		return membersPerPrivateGroup;
+	}
+
+	public int getMessagesPerPrivateGroup() {
+		return messagesPerPrivateGroup;
+	}
+
+	public MessageSizeDistribution getChatSizes() {
+		return chatSizes;
+	}
+
+	public MessageSizeDistribution getPostSizes() {
+		return postSizes;
+	}
+
+	public MessageSizeDistribution getArticleSizes() {
+		return articleSizes;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Returns the total number of messages in the dataset, not counting the
+	 * messages created by the clients themselves.
+	 */
+	public long getTotalMessages() {
+		return (long) contacts * privateMessagesPerContact
+				+ (long) forums * postsPerForum
+				+ blogPosts + contactBlogPosts
+				+ (long) privateGroups * messagesPerPrivateGroup;
+	}
+
+	@Override
+	public String toString() {
+		return contacts + " contacts with " + privateMessagesPerContact
+				+ " private messages each, " + forums + " forums with "
+				+ membersPerForum + " members and " + postsPerForum
+				+ " posts each, " + blogPosts + " own and " + contactBlogPosts
+				+ " contacts' blog posts, " + privateGroups
+				+ " private groups with " + membersPerPrivateGroup
+				+ " members and " + messagesPerPrivateGroup
+				+ " messages each";
+	}
+
+	@NotThreadSafe
+	public static class Builder {
+
+		private int contacts = 100, privateMessagesPerContact = 50;
+		private int forums = 10, membersPerForum = 20, postsPerForum = 200;
+		private int blogPosts = 50, contactBlogPosts = 200;
+		private int privateGroups = 5, membersPerPrivateGroup = 10;
+		private int messagesPerPrivateGroup = 100;
+		private MessageSizeDistribution chatSizes = CHAT, postSizes = POST;
+		private MessageSizeDistribution articleSizes = ARTICLE;
+		private long seed = 0;
+
+		public Builder setContacts(int contacts,
+				int privateMessagesPerContact) {
+			this.contacts = contacts;
+			this.privateMessagesPerContact = privateMessagesPerContact;
+			return this;
+		}
+
+		public Builder setForums(int forums, int membersPerForum,
+				int postsPerForum) {
+			this.forums = forums;
+			this.membersPerForum = membersPerForum;
+			this.postsPerForum = postsPerForum;
+			return this;
+		}
+
+		public Builder setBlogPosts(int blogPosts, int contactBlogPosts) {
+			this.blogPosts = blogPosts;
+			this.contactBlogPosts = contactBlogPosts;
+			return this;
+		}
+
+		public Builder setPrivateGroups(int privateGroups,
+				int membersPerPrivateGroup, int messagesPerPrivateGroup) {
+			this.privateGroups = privateGroups;
+			this.membersPerPrivateGroup = membersPerPrivateGroup;
+			this.messagesPerPrivateGroup = messagesPerPrivateGroup;
+			return this;
+		}
+
+		public Builder setMessageSizes(MessageSizeDistribution chatSizes,
+				MessageSizeDistribution postSizes,
+				MessageSizeDistribution articleSizes) {
+			this.chatSizes = chatSizes;
+			this.postSizes = postSizes;
+			this.articleSizes = articleSizes;
+			return this;
+		}
+
+		public Builder setSeed(long seed) {
+			this.seed = seed;
+			return this;
+		}
+
+		public DatasetSpec build() {
+			if (contacts < 0 || privateMessagesPerContact < 0)
+				throw new IllegalArgumentException();
+			if (forums < 0 || postsPerForum < 0)
+				throw new IllegalArgumentException();
+			if (blogPosts < 0 || contactBlogPosts < 0)
+				throw new IllegalArgumentException();
+			if (privateGroups < 0 || messagesPerPrivateGroup < 0)
+				throw new IllegalArgumentException();
+			if (membersPerForum < 0 || membersPerForum > contacts)
+				throw new IllegalArgumentException();
+			if (membersPerPrivateGroup < 0 || membersPerPrivateGroup > contacts)
+				throw new IllegalArgumentException();
+			// Posts need authors
+			if (postsPerForum > 0 && forums > 0 && membersPerForum == 0)
+				throw new IllegalArgumentException();
+			if (contactBlogPosts > 0 && contacts == 0)
+				throw new IllegalArgumentException();
+			if (messagesPerPrivateGroup > 0 && privateGroups > 0
+					&& membersPerPrivateGroup == 0)
+				throw new IllegalArgumentException();
+			return new DatasetSpec(this);
+		}
+	}
+}
@@ -0,0 +1,246 @@
+package org.briarproject.briar.test.dataset;
+
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.crypto.SecretKey;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.identity.Identity;
+import org.briarproject.bramble.api.identity.IdentityManager;
+import org.briarproject.bramble.api.identity.LocalAuthor;
+import org.briarproject.bramble.api.lifecycle.LifecycleManager;
+import org.briarproject.bramble.api.plugin.duplex.DuplexPlugin;
+import org.briarproject.bramble.api.plugin.duplex.DuplexTransportConnection;
+import org.briarproject.bramble.api.properties.TransportProperties;
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.api.sync.event.MessageStateChangedEvent;
+import org.briarproject.bramble.api.sync.metrics.RecordMetrics;
+import org.briarproject.bramble.api.sync.metrics.SyncMetrics;
+import org.briarproject.bramble.plugin.tcp.LoopbackTcpPluginFactory;
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.briarproject.bramble.test.TestDatabaseConfigModule;
+import org.briarproject.briar.api.blog.Blog;
+import org.briarproject.briar.api.forum.Forum;
+import org.briarproject.briar.api.forum.ForumManager;
+import org.briarproject.briar.test.BriarIntegrationTestComponent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.briarproject.bramble.api.plugin.LanTcpConstants.ID;
+import static org.briarproject.bramble.api.plugin.LanTcpConstants.PROP_IP_PORTS;
+import static org.briarproject.bramble.api.plugin.Plugin.State.ACTIVE;
+import static org.briarproject.bramble.api.sync.Group.Visibility.SHARED;
+import static org.briarproject.bramble.api.sync.validation.MessageState.DELIVERED;
+import static org.briarproject.bramble.test.TestUtils.deleteTestDirectory;
+import static org.briarproject.bramble.test.TestUtils.getSecretKey;
+import static org.briarproject.bramble.test.TestUtils.getTestDirectory;
+import static org.briarproject.bramble.util.LogUtils.now;
+import static org.briarproject.bramble.util.StringUtils.isNullOrEmpty;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Creates a large dataset on one device, shares its forums and blog with a
+ * second device in the same process, and measures how long it takes for
+ * the devices to converge over a LAN connection on the loopback interface.
+ * <p>
+ * Reports the time to converge, the number of bytes on the wire (including
+ * encryption and framing) and in sync records, and the time the devices
+ * spent in the database generating batches of messages.
+ */
+@Ignore
+public class LanSyncBenchmarkTest extends BrambleTestCase {
+
+	private static final DatasetSpec SPEC = new DatasetSpec.Builder()
+			.setContacts(200, 20)
+			.setForums(10, 50, 500)
+			.setBlogPosts(200, 500)
+			.setPrivateGroups(5, 20, 200)
+			.build();
+	private static final long TIMEOUT_MS = 10 * 60 * 1000;
+	private static final long POLLING_INTERVAL_MS = 100;
+
+	private final File testDir = getTestDirectory();
+	private final SecretKey rootKey = getSecretKey();
+
+	private SyncBenchmarkComponent c0, c1;
+	private LocalAuthor author0;
+	private ContactId contactId1From0, contactId0From1;
+
+	@Before
+	public void setUp() throws Exception {
+		assertTrue(testDir.mkdirs());
+		c0 = createComponent(new File(testDir, "alice"));
+		c1 = createComponent(new File(testDir, "bob"));
+		author0 = registerIdentity(c0, "Alice");
+		LocalAuthor author1 = registerIdentity(c1, "Bob");
+		c0.getLifecycleManager().startServices(getSecretKey());
+		c1.getLifecycleManager().startServices(getSecretKey());
+		c0.getLifecycleManager().waitForStartup();
+		c1.getLifecycleManager().waitForStartup();
+		long timestamp = System.currentTimeMillis();
+		contactId1From0 = c0.getContactManager().addContact(author1,
+				author0.getId(), rootKey, timestamp, true, true, true);
+		contactId0From1 = c1.getContactManager().addContact(author0,
+				author1.getId(), rootKey, timestamp, false, true, true);
+		awaitActive(c0);
+		awaitActive(c1);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		stopLifecycle(c0.getLifecycleManager());
+		stopLifecycle(c1.getLifecycleManager());
+		deleteTestDirectory(testDir);
+	}
+
+	@Test
+	public void testSyncDataset() throws Exception {
+		long start = now();
+		Dataset dataset =
+				c0.getDatasetGenerator().generate(SPEC, contactId1From0);
+		long generated = now();
+		// Subscribe the second device to the forums, and share the first
+		// device's blog without waiting for client versioning
+		DatabaseComponent db1 = c1.getDatabaseComponent();
+		ForumManager forumManager1 = c1.getForumManager();
+		Blog blog0 = c1.getBlogManager().getPersonalBlog(author0);
+		db1.transaction(false, txn -> {
+			db1.setGroupVisibility(txn, contactId0From1, blog0.getId(),
+					SHARED);
+			for (Forum f : dataset.getForums()) {
+				forumManager1.addForum(txn, f);
+				db1.setGroupVisibility(txn, contactId0From1, f.getId(),
+						SHARED);
+			}
+		});
+		// Messages from the generated contacts are shared when delivered
+		awaitDelivered(c0, dataset.getReceivedMessages());
+		long delivered = now();
+
+		Set<MessageId> pending = ConcurrentHashMap.newKeySet();
+		pending.addAll(dataset.getSharedMessages());
+		assertFalse(pending.isEmpty());
+		CountDownLatch converged = new CountDownLatch(1);
+		c1.getEventBus().addListener(e -> {
+			if (e instanceof MessageStateChangedEvent) {
+				MessageStateChangedEvent m = (MessageStateChangedEvent) e;
+				if (m.getState() == DELIVERED &&
+						pending.remove(m.getMessageId()) &&
+						pending.isEmpty()) {
+					converged.countDown();
+				}
+			}
+		});
+
+		// Connect from the first device to the second
+		TransportProperties p =
+				c1.getTransportPropertyManager().getLocalProperties(ID);
+		DuplexPlugin plugin =
+				(DuplexPlugin) c0.getPluginManager().getPlugin(ID);
+		assertNotNull(plugin);
+		long syncStart = now();
+		DuplexTransportConnection d = plugin.createConnection(p);
+		assertNotNull(d);
+		c0.getConnectionManager().manageOutgoingConnection(contactId1From0,
+				ID, d);
+		assertTrue(converged.await(TIMEOUT_MS, MILLISECONDS));
+		long syncDuration = now() - syncStart;
+
+		LoopbackTcpPluginFactory lan = c0.getLoopbackTcpPluginFactory();
+		int shared = dataset.getSharedMessages().size();
+		System.out.println(SPEC);
+		System.out.println(String.format("Generated %,d messages (%,d bytes)"
+						+ " in %,d ms, delivered in %,d ms",
+				dataset.getMessages(), dataset.getBytes(), generated - start,
+				delivered - generated));
+		System.out.println(String.format("Synced %,d messages in %,d ms"
+						+ " (%,d messages/s)", shared, syncDuration,
+				shared * 1000L / Math.max(1, syncDuration)));
+		System.out.println(String.format("Bytes on the wire: %,d written,"
+						+ " %,d read", lan.getBytesWritten(),
+				lan.getBytesRead()));
+		printSyncMetrics("Alice", c0.getSyncMetricsManager()
+				.getSyncMetrics(contactId1From0));
+		printSyncMetrics("Bob", c1.getSyncMetricsManager()
+				.getSyncMetrics(contactId0From1));
+	}
+
+	private SyncBenchmarkComponent createComponent(File dir) {
+		SyncBenchmarkComponent c = DaggerSyncBenchmarkComponent.builder()
+				.testDatabaseConfigModule(new TestDatabaseConfigModule(dir))
+				.build();
+		BriarIntegrationTestComponent.Helper.injectEagerSingletons(c);
+		return c;
+	}
+
+	private LocalAuthor registerIdentity(SyncBenchmarkComponent c,
+			String name) {
+		IdentityManager identityManager = c.getIdentityManager();
+		Identity identity = identityManager.createIdentity(name);
+		identityManager.registerIdentity(identity);
+		return identity.getLocalAuthor();
+	}
+
+	private void stopLifecycle(LifecycleManager lifecycleManager)
+			throws InterruptedException {
+		lifecycleManager.stopServices();
+		lifecycleManager.waitForShutdown();
+	}
+
+	private void awaitActive(SyncBenchmarkComponent c) throws Exception {
+		long deadline = now() + TIMEOUT_MS;
+		while (now() < deadline) {
+			DuplexPlugin plugin =
+					(DuplexPlugin) c.getPluginManager().getPlugin(ID);
+			TransportProperties p =
+					c.getTransportPropertyManager().getLocalProperties(ID);
+			if (plugin != null && plugin.getState() == ACTIVE &&
+					!isNullOrEmpty(p.get(PROP_IP_PORTS))) {
+				return;
+			}
+			Thread.sleep(POLLING_INTERVAL_MS);
+		}
+		fail("Plugin did not become active");
+	}
+
+	private void awaitDelivered(SyncBenchmarkComponent c,
+			Collection<MessageId> messages) throws Exception {
+		DatabaseComponent db = c.getDatabaseComponent();
+		long deadline = now() + TIMEOUT_MS;
+		while (now() < deadline) {
+			boolean delivered = db.transactionWithResult(true, txn -> {
+				for (MessageId m : messages) {
+					if (db.getMessageState(txn, m) != DELIVERED) return false;
+				}
+				return true;
+			});
+			if (delivered) return;
+			Thread.sleep(POLLING_INTERVAL_MS);
+		}
+		fail("Messages were not delivered");
+	}
+
+	private void printSyncMetrics(String name, Collection<SyncMetrics> all) {
+		for (SyncMetrics m : all) {
+			long sent = 0, received = 0;
+			for (RecordMetrics r : m.getSent().values()) sent += r.getBytes();
+			for (RecordMetrics r : m.getReceived().values())
+				received += r.getBytes();
+			System.out.println(String.format("%s: %,d bytes of records sent,"
+							+ " %,d received, %,d ms in the database for %,d"
+							+ " batches", name, sent, received,
+					m.getBatchDbTime().getSum(),
+					m.getBatchDbTime().getCount()));
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package org.briarproject.briar.test.dataset;
+
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.Random;
+
+import javax.annotation.concurrent.Immutable;
+
+import static java.lang.Math.exp;
+import static java.lang.Math.log;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.round;
+import static org.briarproject.briar.api.blog.BlogConstants.MAX_BLOG_POST_TEXT_LENGTH;
+import static org.briarproject.briar.api.forum.ForumConstants.MAX_FORUM_POST_TEXT_LENGTH;
+import static org.briarproject.briar.api.messaging.MessagingConstants.MAX_PRIVATE_MESSAGE_TEXT_LENGTH;
+
+/**
+ * A log-normal distribution of text lengths, truncated to a maximum
+ * length. Most messages are short, with a long tail of much longer
+ * messages.
+ */
+@Immutable
+@NotNullByDefault
+public class MessageSizeDistribution {
+
+	/**
+	 * Private messages: a median of 60 characters, with about one message
+	 * in twenty being longer than 300 characters.
+	 */
+	public static final MessageSizeDistribution CHAT =
+			new MessageSizeDistribution(60, 1.0,
+					MAX_PRIVATE_MESSAGE_TEXT_LENGTH);
+
+	/**
+	 * Forum and private group posts: a median of 300 characters.
+	 */
+	public static final MessageSizeDistribution POST =
+			new MessageSizeDistribution(300, 1.2, MAX_FORUM_POST_TEXT_LENGTH);
+
+	/**
+	 * Blog posts: a median of 2,000 characters.
+	 */
+	public static final MessageSizeDistribution ARTICLE =
+			new MessageSizeDistribution(2000, 1.0, MAX_BLOG_POST_TEXT_LENGTH);
+
+	private final int median, maxLength;
+	private final double sigma;
+
+	public MessageSizeDistribution(int median, double sigma, int maxLength) {
+		if (median < 1 || sigma < 0 || maxLength < median)
+			throw new IllegalArgumentException();
+		this.median = median;
+		this.sigma = sigma;
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * Returns a text length between 1 and the maximum length, inclusive.
+	 */
+	public int nextLength(Random random) {
+		double length = exp(log(median) + sigma * random.nextGaussian());
+		return (int) max(1, min(maxLength, round(length)));
+	}
+
+	/**
+	 * Returns a string of lower case words and spaces with a length drawn
+	 * from the distribution.
+	 */
+	public String nextText(Random random) {
+		int length = nextLength(random);
+		char[] c = new char[length];
+		int wordLength = 0;
+		for (int i = 0; i < length; i++) {
+			// Words are between 1 and 10 characters long
+			if (wordLength > 0 && random.nextInt(10) < wordLength) {
+				c[i] = ' ';
+				wordLength = 0;
+			} else {
+				c[i] = (char) ('a' + random.nextInt(26));
+				wordLength++;
+			}
+		}
+		return new String(c);
+	}
+}
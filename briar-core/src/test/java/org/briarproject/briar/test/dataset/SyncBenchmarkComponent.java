@@ -0,0 +1,62 @@
+package org.briarproject.briar.test.dataset;
+
+import org.briarproject.bramble.BrambleCoreModule;
+import org.briarproject.bramble.api.plugin.PluginManager;
+import org.briarproject.bramble.api.sync.metrics.SyncMetricsManager;
+import org.briarproject.bramble.mailbox.ModularMailboxModule;
+import org.briarproject.bramble.plugin.tcp.LoopbackTcpPluginFactory;
+import org.briarproject.bramble.test.BrambleCoreIntegrationTestModule;
+import org.briarproject.bramble.test.LoopbackPluginConfigModule;
+import org.briarproject.bramble.test.TestDnsModule;
+import org.briarproject.bramble.test.TestSocksModule;
+import org.briarproject.briar.attachment.AttachmentModule;
+import org.briarproject.briar.autodelete.AutoDeleteModule;
+import org.briarproject.briar.avatar.AvatarModule;
+import org.briarproject.briar.blog.BlogModule;
+import org.briarproject.briar.client.BriarClientModule;
+import org.briarproject.briar.conversation.ConversationModule;
+import org.briarproject.briar.forum.ForumModule;
+import org.briarproject.briar.identity.IdentityModule;
+import org.briarproject.briar.introduction.IntroductionModule;
+import org.briarproject.briar.messaging.MessagingModule;
+import org.briarproject.briar.privategroup.PrivateGroupModule;
+import org.briarproject.briar.privategroup.invitation.GroupInvitationModule;
+import org.briarproject.briar.sharing.SharingModule;
+import org.briarproject.briar.test.BriarIntegrationTestComponent;
+
+import javax.inject.Singleton;
+
+import dagger.Component;
+
+@Singleton
+@Component(modules = {
+		BrambleCoreIntegrationTestModule.class,
+		BrambleCoreModule.class,
+		AttachmentModule.class,
+		AutoDeleteModule.class,
+		AvatarModule.class,
+		BlogModule.class,
+		BriarClientModule.class,
+		ConversationModule.class,
+		ForumModule.class,
+		GroupInvitationModule.class,
+		IdentityModule.class,
+		IntroductionModule.class,
+		MessagingModule.class,
+		PrivateGroupModule.class,
+		SharingModule.class,
+		ModularMailboxModule.class,
+		TestDnsModule.class,
+		TestSocksModule.class,
+		LoopbackPluginConfigModule.class,
+})
+interface SyncBenchmarkComponent extends BriarIntegrationTestComponent {
+
+	DatasetGenerator getDatasetGenerator();
+
+	LoopbackTcpPluginFactory getLoopbackTcpPluginFactory();
+
+	PluginManager getPluginManager();
+
+	SyncMetricsManager getSyncMetricsManager();
+}
@@ -32,8 +32,10 @@ import org.briarproject.bramble.util.OsUtils.isWindows
 import org.briarproject.briar.headless.blogs.HeadlessBlogModule
 import org.briarproject.briar.headless.contact.HeadlessContactModule
 import org.briarproject.briar.headless.event.HeadlessEventModule
+import org.briarproject.briar.headless.event.WebSocketConfig
 import org.briarproject.briar.headless.forums.HeadlessForumModule
 import org.briarproject.briar.headless.messaging.HeadlessMessagingModule
+import org.briarproject.briar.headless.sync.HeadlessSyncModule
 import java.io.File
 import java.util.Collections.emptyList
 import javax.inject.Singleton
@@ -52,10 +54,14 @@ import javax.inject.Singleton
         HeadlessContactModule::class,
         HeadlessEventModule::class,
         HeadlessForumModule::class,
-        HeadlessMessagingModule::class
+        HeadlessMessagingModule::class,
+        HeadlessSyncModule::class
     ]
 )
-internal class HeadlessModule(private val appDir: File) {
+internal class HeadlessModule(
+    private val appDir: File,
+    private val webSocketConfig: WebSocketConfig = WebSocketConfig()
+) {
 
     @Provides
     @Singleton
@@ -114,6 +120,9 @@ internal class HeadlessModule(private val appDir: File) {
     @Singleton
     internal fun provideObjectMapper() = ObjectMapper()
 
+    @Provides
+    internal fun provideWebSocketConfig() = webSocketConfig
+
     @Provides
     internal fun provideFeatureFlags() = object : FeatureFlags {
         override fun shouldEnableImageAttachments() = false
@@ -5,6 +5,7 @@ import com.github.ajalt.clikt.parameters.options.counted
 import com.github.ajalt.clikt.parameters.options.default
 import com.github.ajalt.clikt.parameters.options.flag
 import com.github.ajalt.clikt.parameters.options.option
+import com.github.ajalt.clikt.parameters.types.choice
 import com.github.ajalt.clikt.parameters.types.int
 import org.bouncycastle.util.encoders.Base64.toBase64String
 import org.briarproject.bramble.BrambleCoreEagerSingletons
@@ -12,6 +13,10 @@ import org.briarproject.bramble.BrambleJavaEagerSingletons
 import org.briarproject.bramble.util.OsUtils.isLinux
 import org.briarproject.bramble.util.OsUtils.isMac
 import org.briarproject.briar.BriarCoreEagerSingletons
+import org.briarproject.briar.headless.event.DEFAULT_QUEUE_CAPACITY
+import org.briarproject.briar.headless.event.OverflowPolicy.DISCONNECT
+import org.briarproject.briar.headless.event.OverflowPolicy.DROP_OLDEST
+import org.briarproject.briar.headless.event.WebSocketConfig
 import org.slf4j.impl.SimpleLogger.DEFAULT_LOG_LEVEL_KEY
 import java.io.File
 import java.io.File.separator
@@ -57,6 +62,17 @@ private class Main : CliktCommand(
         metavar = "PATH",
         envvar = "BRIAR_DATA_DIR"
     ).default(DEFAULT_DATA_DIR)
+    private val eventQueueSize by option(
+        "--event-queue-size",
+        help = "The maximum number of events queued for each websocket client. " +
+                "Default: $DEFAULT_QUEUE_CAPACITY",
+        metavar = "SIZE"
+    ).int().default(DEFAULT_QUEUE_CAPACITY)
+    private val eventOverflow by option(
+        "--event-overflow",
+        help = "What to do when a websocket client's event queue is full: " +
+                "drop the oldest event or disconnect the client. Default: drop-oldest"
+    ).choice("drop-oldest" to DROP_OLDEST, "disconnect" to DISCONNECT).default(DROP_OLDEST)
 
     override fun run() {
         // logging
@@ -74,8 +90,10 @@ private class Main : CliktCommand(
         LogManager.getLogManager().getLogger("").level = level
 
         val dataDir = getDataDir()
-        val app =
-            DaggerBriarHeadlessApp.builder().headlessModule(HeadlessModule(dataDir)).build()
+        val webSocketConfig = WebSocketConfig(eventQueueSize, eventOverflow)
+        val app = DaggerBriarHeadlessApp.builder()
+            .headlessModule(HeadlessModule(dataDir, webSocketConfig))
+            .build()
         // We need to load the eager singletons directly after making the
         // dependency graphs
         BrambleCoreEagerSingletons.Helper.injectEagerSingletons(app)
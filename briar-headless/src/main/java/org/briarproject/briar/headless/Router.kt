@@ -1,7 +1,9 @@
 package org.briarproject.briar.headless
 
+import com.fasterxml.jackson.core.JsonGenerator.Feature.AUTO_CLOSE_TARGET
 import com.fasterxml.jackson.core.JsonParseException
 import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.SerializationFeature.FLUSH_AFTER_WRITE_VALUE
 import io.javalin.Javalin
 import io.javalin.apibuilder.ApiBuilder.delete
 import io.javalin.apibuilder.ApiBuilder.get
@@ -10,6 +12,8 @@ import io.javalin.apibuilder.ApiBuilder.post
 import io.javalin.apibuilder.ApiBuilder.put
 import io.javalin.core.security.AccessManager
 import io.javalin.core.util.Header.AUTHORIZATION
+import io.javalin.core.util.Header.ETAG
+import io.javalin.core.util.Header.IF_NONE_MATCH
 import io.javalin.http.BadRequestResponse
 import io.javalin.http.Context
 import io.javalin.http.NotFoundResponse
@@ -19,6 +23,7 @@ import org.briarproject.briar.headless.contact.ContactController
 import org.briarproject.briar.headless.event.WebSocketController
 import org.briarproject.briar.headless.forums.ForumController
 import org.briarproject.briar.headless.messaging.MessagingController
+import org.briarproject.briar.headless.sync.SyncController
 import java.lang.Runtime.getRuntime
 import java.util.concurrent.atomic.AtomicBoolean
 import java.util.logging.Level.INFO
@@ -41,7 +46,8 @@ constructor(
     private val contactController: ContactController,
     private val messagingController: MessagingController,
     private val forumController: ForumController,
-    private val blogController: BlogController
+    private val blogController: BlogController,
+    private val syncController: SyncController
 ) {
 
     private val logger = getLogger(Router::javaClass.name)
@@ -109,6 +115,9 @@ constructor(
                         post { ctx -> blogController.createPost(ctx) }
                     }
                 }
+                path("/sync/metrics") {
+                    get { ctx -> syncController.listMetrics(ctx) }
+                }
             }
         }
         app.ws(WS) { ws ->
@@ -120,7 +129,7 @@ constructor(
                 val session = ctx.session
                 if (ctx.message() == authToken && !webSocketController.sessions.contains(ctx)) {
                     logger.info("Authenticated websocket session with ${session.remoteAddress}")
-                    webSocketController.sessions.add(ctx)
+                    webSocketController.addSession(ctx)
                 } else {
                     logger.info("Invalid message received: ${ctx.message()}")
                     logger.info("Closing websocket connection with ${session.remoteAddress}")
@@ -129,7 +138,7 @@ constructor(
             }
             ws.onClose { ctx ->
                 logger.info("Removing websocket connection with ${ctx.session.remoteAddress}")
-                webSocketController.sessions.remove(ctx)
+                webSocketController.removeSession(ctx)
             }
         }
         return app.start(port)
@@ -177,3 +186,32 @@ fun Context.getFromJson(objectMapper: ObjectMapper, field: String): String {
         throw BadRequestResponse("Invalid JSON")
     }
 }
+
+/**
+ * Sets the ETag header to the given entity tag and returns true if the
+ * request's If-None-Match header matches it. In that case the status is set to
+ * 304 Not Modified and no body should be written.
+ */
+fun Context.isNotModified(eTag: String): Boolean {
+    header(ETAG, eTag)
+    val ifNoneMatch = header(IF_NONE_MATCH) ?: return false
+    val match = ifNoneMatch.split(',').map { it.trim() }.any { it == eTag || it == "*" }
+    if (match) status(304)
+    return match
+}
+
+/**
+ * Writes the given items to the response as a JSON array, serialising them one
+ * at a time rather than building the whole response in memory first.
+ */
+fun Context.jsonArray(objectMapper: ObjectMapper, items: Sequence<Any>): Context {
+    contentType("application/json")
+    val writer = objectMapper.writer().without(FLUSH_AFTER_WRITE_VALUE)
+    objectMapper.factory.createGenerator(res.outputStream).use { generator ->
+        generator.disable(AUTO_CLOSE_TARGET)
+        generator.writeStartArray()
+        for (item in items) writer.writeValue(generator, item)
+        generator.writeEndArray()
+    }
+    return this
+}
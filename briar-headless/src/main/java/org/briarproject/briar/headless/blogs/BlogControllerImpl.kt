@@ -6,17 +6,23 @@ import io.javalin.http.Context
 import org.briarproject.bramble.api.db.DbException
 import org.briarproject.bramble.api.db.TransactionManager
 import org.briarproject.bramble.api.identity.IdentityManager
+import org.briarproject.bramble.api.sync.MessageId
 import org.briarproject.bramble.api.system.Clock
 import org.briarproject.bramble.util.StringUtils.utf8IsTooLong
 import org.briarproject.briar.api.blog.BlogConstants.MAX_BLOG_POST_TEXT_LENGTH
 import org.briarproject.briar.api.blog.BlogManager
 import org.briarproject.briar.api.blog.BlogPostFactory
 import org.briarproject.briar.api.blog.BlogPostHeader
+import org.briarproject.briar.headless.event.ResourceVersions
 import org.briarproject.briar.headless.getFromJson
+import org.briarproject.briar.headless.isNotModified
+import org.briarproject.briar.headless.jsonArray
 import javax.annotation.concurrent.Immutable
 import javax.inject.Inject
 import javax.inject.Singleton
 
+private typealias PostsAndTexts = Pair<List<BlogPostHeader>, Map<MessageId, String>>
+
 @Immutable
 @Singleton
 internal class BlogControllerImpl
@@ -26,18 +32,26 @@ constructor(
     private val blogPostFactory: BlogPostFactory,
     private val db: TransactionManager,
     private val identityManager: IdentityManager,
+    private val resourceVersions: ResourceVersions,
     private val objectMapper: ObjectMapper,
     private val clock: Clock
 ) : BlogController {
 
     override fun listPosts(ctx: Context): Context {
-        val posts = blogManager.blogs
-            .flatMap { blog -> blogManager.getPostHeaders(blog.id) }
-            .asSequence()
-            .sortedBy { it.timeReceived }
-            .map { header -> header.output(blogManager.getPostText(header.id)) }
-            .toList()
-        return ctx.json(posts)
+        // Get the entity tag before loading the posts, so a change that
+        // races with this request can only make the tag older than the data
+        if (ctx.isNotModified(resourceVersions.getBlogPostsETag())) return ctx
+        val (headers, texts) = db.transactionWithResult<PostsAndTexts, DbException>(true) { txn ->
+            val headers = blogManager.getBlogs(txn)
+                .flatMap { blog -> blogManager.getPostHeaders(txn, blog.id) }
+                .sortedBy { it.timeReceived }
+            // Load the texts of all the posts at once
+            Pair(headers, blogManager.getPostTexts(txn, headers.map { it.id }))
+        }
+        return ctx.jsonArray(
+            objectMapper,
+            headers.asSequence().map { header -> header.output(texts.getValue(header.id)) }
+        )
     }
 
     override fun createPost(ctx: Context): Context {
@@ -53,6 +67,7 @@ constructor(
             blogManager.addLocalPost(txn, post)
             return@transactionWithResult blogManager.getPostHeader(txn, blog.id, post.message.id)
         }
+        resourceVersions.blogPostsChanged()
         return ctx.json(header.output(text))
     }
 
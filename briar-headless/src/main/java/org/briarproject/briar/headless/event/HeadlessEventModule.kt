@@ -2,6 +2,7 @@ package org.briarproject.briar.headless.event
 
 import dagger.Module
 import dagger.Provides
+import org.briarproject.bramble.api.event.EventBus
 import javax.inject.Singleton
 
 @Module
@@ -13,4 +14,13 @@ class HeadlessEventModule {
         return webSocketController
     }
 
+    @Provides
+    @Singleton
+    internal fun provideResourceVersions(
+        eventBus: EventBus, resourceVersions: ResourceVersionsImpl
+    ): ResourceVersions {
+        eventBus.addListener(resourceVersions)
+        return resourceVersions
+    }
+
 }
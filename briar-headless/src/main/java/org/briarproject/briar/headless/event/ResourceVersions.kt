@@ -0,0 +1,35 @@
+package org.briarproject.briar.headless.event
+
+import org.briarproject.bramble.api.contact.ContactId
+import javax.annotation.concurrent.ThreadSafe
+
+/**
+ * Keeps a version for each resource that can be listed through the REST API.
+ * The version changes whenever an event shows that the resource may have
+ * changed, so listings can carry an entity tag that clients can revalidate
+ * without the resource being loaded from the database.
+ */
+@ThreadSafe
+interface ResourceVersions {
+
+    /**
+     * Returns the entity tag for the conversation with the given contact.
+     */
+    fun getConversationETag(c: ContactId): String
+
+    /**
+     * Returns the entity tag for the list of blog posts.
+     */
+    fun getBlogPostsETag(): String
+
+    /**
+     * Records that the conversation with the given contact may have changed.
+     */
+    fun conversationChanged(c: ContactId)
+
+    /**
+     * Records that the list of blog posts may have changed.
+     */
+    fun blogPostsChanged()
+
+}
@@ -0,0 +1,79 @@
+package org.briarproject.briar.headless.event
+
+import org.briarproject.bramble.api.contact.ContactId
+import org.briarproject.bramble.api.contact.event.ContactAddedEvent
+import org.briarproject.bramble.api.contact.event.ContactAliasChangedEvent
+import org.briarproject.bramble.api.contact.event.ContactRemovedEvent
+import org.briarproject.bramble.api.event.Event
+import org.briarproject.bramble.api.event.EventListener
+import org.briarproject.bramble.api.sync.event.GroupRemovedEvent
+import org.briarproject.bramble.api.sync.event.MessagesAckedEvent
+import org.briarproject.bramble.api.sync.event.MessagesSentEvent
+import org.briarproject.bramble.api.system.Clock
+import org.briarproject.briar.api.autodelete.event.ConversationMessagesDeletedEvent
+import org.briarproject.briar.api.blog.BlogManager
+import org.briarproject.briar.api.blog.event.BlogPostAddedEvent
+import org.briarproject.briar.api.conversation.event.ConversationMessageReceivedEvent
+import org.briarproject.briar.api.conversation.event.ConversationMessageTrackedEvent
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import javax.annotation.concurrent.ThreadSafe
+import javax.inject.Inject
+import javax.inject.Singleton
+
+@ThreadSafe
+@Singleton
+internal class ResourceVersionsImpl
+@Inject
+constructor(clock: Clock) : ResourceVersions, EventListener {
+
+    /**
+     * Distinguishes the versions handed out by this process from those handed
+     * out before a restart, when all the counters start again from zero.
+     */
+    private val epoch = clock.currentTimeMillis()
+
+    /**
+     * Every change takes a new version from this counter, so a resource never
+     * returns to a version it had before.
+     */
+    private val counter = AtomicLong()
+
+    private val conversations = ConcurrentHashMap<ContactId, Long>()
+
+    @Volatile
+    private var blogPosts = 0L
+
+    override fun getConversationETag(c: ContactId) = eTag(conversations[c] ?: 0L)
+
+    override fun getBlogPostsETag() = eTag(blogPosts)
+
+    override fun conversationChanged(c: ContactId) {
+        conversations[c] = counter.incrementAndGet()
+    }
+
+    override fun blogPostsChanged() {
+        blogPosts = counter.incrementAndGet()
+    }
+
+    override fun eventOccurred(e: Event) {
+        when (e) {
+            is ConversationMessageReceivedEvent<*> -> conversationChanged(e.contactId)
+            is ConversationMessageTrackedEvent -> conversationChanged(e.contactId)
+            is MessagesSentEvent -> conversationChanged(e.contactId)
+            is MessagesAckedEvent -> conversationChanged(e.contactId)
+            is ConversationMessagesDeletedEvent -> conversationChanged(e.contactId)
+            is ContactRemovedEvent -> conversationChanged(e.contactId)
+            is BlogPostAddedEvent -> blogPostsChanged()
+            // The blog posts include the status and alias of their authors
+            is ContactAddedEvent -> blogPostsChanged()
+            is ContactAliasChangedEvent -> blogPostsChanged()
+            is GroupRemovedEvent -> {
+                if (e.group.clientId == BlogManager.CLIENT_ID) blogPostsChanged()
+            }
+        }
+    }
+
+    private fun eTag(version: Long) = "\"$epoch-$version\""
+
+}
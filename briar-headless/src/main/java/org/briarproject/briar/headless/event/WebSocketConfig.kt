@@ -0,0 +1,32 @@
+package org.briarproject.briar.headless.event
+
+import javax.annotation.concurrent.Immutable
+
+internal const val DEFAULT_QUEUE_CAPACITY = 1000
+
+/**
+ * What to do when an event is sent to a websocket session whose queue of
+ * outgoing events is full.
+ */
+enum class OverflowPolicy {
+    /**
+     * Discard the oldest queued event to make room for the new one.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Close the session. The client has to reconnect and catch up using the
+     * REST API.
+     */
+    DISCONNECT
+}
+
+@Immutable
+data class WebSocketConfig(
+    val queueCapacity: Int = DEFAULT_QUEUE_CAPACITY,
+    val overflowPolicy: OverflowPolicy = OverflowPolicy.DROP_OLDEST
+) {
+    init {
+        require(queueCapacity > 0) { "Queue capacity must be positive" }
+    }
+}
@@ -8,11 +8,40 @@ import javax.annotation.concurrent.ThreadSafe
 @ThreadSafe
 interface WebSocketController {
 
-    val sessions: MutableSet<WsContext>
+    val sessions: Set<WsContext>
+
+    /**
+     * Adds an authenticated session that events should be sent to.
+     */
+    fun addSession(session: WsContext)
+
+    /**
+     * Removes a session and discards any events still queued for it.
+     */
+    fun removeSession(session: WsContext)
 
     /**
      * Sends an event to all open sessions using the [IoExecutor].
+     * Each session has a bounded queue of events that are written one at a
+     * time, so a slow client can't hold more than its queue's worth of events.
      */
     fun sendEvent(name: String, obj: JsonDict)
 
+    /**
+     * Sends an event to all open sessions after a short delay. Any other
+     * events with the same name and key that are sent during the delay are
+     * merged into it with the given function.
+     */
+    fun sendCoalescedEvent(
+        name: String,
+        key: Any,
+        obj: JsonDict,
+        merge: (JsonDict, JsonDict) -> JsonDict
+    )
+
+    /**
+     * Returns the metrics of the outgoing event queue of each open session.
+     */
+    fun getSessionMetrics(): List<WebSocketSessionMetrics>
+
 }
@@ -3,41 +3,202 @@ package org.briarproject.briar.headless.event
 import io.javalin.plugin.json.JavalinJson.toJson
 import io.javalin.websocket.WsContext
 import org.briarproject.bramble.api.lifecycle.IoExecutor
+import org.briarproject.bramble.api.system.Clock
+import org.briarproject.bramble.api.system.TaskScheduler
 import org.briarproject.bramble.util.LogUtils.logException
+import org.briarproject.briar.headless.event.OverflowPolicy.DISCONNECT
+import org.briarproject.briar.headless.event.OverflowPolicy.DROP_OLDEST
 import org.briarproject.briar.headless.json.JsonDict
 import org.eclipse.jetty.websocket.api.WebSocketException
 import java.io.IOException
+import java.util.ArrayDeque
 import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutionException
 import java.util.concurrent.Executor
+import java.util.concurrent.TimeUnit.MILLISECONDS
+import java.util.logging.Level.INFO
 import java.util.logging.Level.WARNING
 import java.util.logging.Logger.getLogger
-import javax.annotation.concurrent.Immutable
+import javax.annotation.concurrent.GuardedBy
+import javax.annotation.concurrent.ThreadSafe
 import javax.inject.Inject
 import javax.inject.Singleton
 
-@Immutable
+internal const val COALESCING_WINDOW_MS = 100L
+
+@ThreadSafe
 @Singleton
 internal class WebSocketControllerImpl
 @Inject
-constructor(@IoExecutor private val ioExecutor: Executor) : WebSocketController {
+constructor(
+    @IoExecutor private val ioExecutor: Executor,
+    private val scheduler: TaskScheduler,
+    private val clock: Clock,
+    private val config: WebSocketConfig
+) : WebSocketController {
 
     private val logger = getLogger(WebSocketControllerImpl::javaClass.name)
 
-    override val sessions: MutableSet<WsContext> = ConcurrentHashMap.newKeySet<WsContext>()
+    private val queues = ConcurrentHashMap<WsContext, SessionQueue>()
+
+    private val coalescingLock = Any()
+
+    @GuardedBy("coalescingLock")
+    private val coalescing = HashMap<Pair<String, Any>, JsonDict>()
+
+    override val sessions: Set<WsContext> get() = queues.keys
+
+    override fun addSession(session: WsContext) {
+        queues.putIfAbsent(session, SessionQueue(session))
+    }
+
+    override fun removeSession(session: WsContext) {
+        val queue = queues.remove(session) ?: return
+        val metrics = queue.close()
+        if (logger.isLoggable(INFO)) logger.info("Closed websocket session: $metrics")
+    }
 
     override fun sendEvent(name: String, obj: JsonDict) {
+        if (queues.isEmpty()) return
         val event = toJson(OutputEvent(name, obj))
-        sessions.forEach { session ->
-            ioExecutor.execute {
+        queues.values.forEach { queue -> queue.add(event) }
+    }
+
+    override fun sendCoalescedEvent(
+        name: String,
+        key: Any,
+        obj: JsonDict,
+        merge: (JsonDict, JsonDict) -> JsonDict
+    ) {
+        val k = Pair(name, key)
+        val first = synchronized(coalescingLock) {
+            val pending = coalescing[k]
+            coalescing[k] = if (pending == null) obj else merge(pending, obj)
+            pending == null
+        }
+        if (first) scheduler.schedule({
+            val merged = synchronized(coalescingLock) { coalescing.remove(k) }
+            if (merged != null) sendEvent(name, merged)
+        }, ioExecutor, COALESCING_WINDOW_MS, MILLISECONDS)
+    }
+
+    override fun getSessionMetrics() = queues.values.map { it.getMetrics() }
+
+    private class QueuedEvent(val json: String, val time: Long)
+
+    /**
+     * A bounded queue of events for a session. At most one task at a time
+     * writes the queued events to the session, waiting for each write to
+     * complete before starting the next.
+     */
+    @ThreadSafe
+    private inner class SessionQueue(private val session: WsContext) {
+
+        private val lock = Any()
+
+        @GuardedBy("lock")
+        private val queue = ArrayDeque<QueuedEvent>()
+
+        @GuardedBy("lock")
+        private var writing = false
+
+        @GuardedBy("lock")
+        private var closed = false
+
+        @GuardedBy("lock")
+        private var sent = 0L
+
+        @GuardedBy("lock")
+        private var dropped = 0L
+
+        @GuardedBy("lock")
+        private var lastLag = 0L
+
+        @GuardedBy("lock")
+        private var maxLag = 0L
+
+        fun add(event: String) {
+            var startWriting = false
+            var disconnect = false
+            synchronized(lock) {
+                if (closed) return
+                if (queue.size >= config.queueCapacity) {
+                    when (config.overflowPolicy) {
+                        DROP_OLDEST -> {
+                            queue.removeFirst()
+                            dropped++
+                        }
+                        DISCONNECT -> {
+                            closed = true
+                            queue.clear()
+                            disconnect = true
+                        }
+                    }
+                }
+                if (!closed) {
+                    queue.addLast(QueuedEvent(event, clock.currentTimeMillis()))
+                    startWriting = !writing
+                    writing = true
+                }
+            }
+            if (startWriting) ioExecutor.execute(this::writeQueuedEvents)
+            if (disconnect) {
+                logger.warning("Too many events queued, closing websocket session")
+                ioExecutor.execute { session.session.close(1008, "Too many events queued") }
+            }
+        }
+
+        private fun writeQueuedEvents() {
+            while (true) {
+                val event = synchronized(lock) {
+                    val next = if (closed) null else queue.pollFirst()
+                    if (next == null) writing = false
+                    next
+                } ?: return
                 try {
-                    session.send(event)
+                    session.send(event.json).get()
+                } catch (e: ExecutionException) {
+                    logException(logger, WARNING, e)
                 } catch (e: WebSocketException) {
                     logException(logger, WARNING, e)
                 } catch (e: IOException) {
                     logException(logger, WARNING, e)
+                } catch (e: InterruptedException) {
+                    logger.info("Interrupted while writing to websocket session")
+                    Thread.currentThread().interrupt()
+                    synchronized(lock) { writing = false }
+                    return
+                }
+                val lag = clock.currentTimeMillis() - event.time
+                synchronized(lock) {
+                    sent++
+                    lastLag = lag
+                    if (lag > maxLag) maxLag = lag
                 }
             }
         }
+
+        /**
+         * Discards any queued events and returns the final metrics.
+         */
+        fun close(): WebSocketSessionMetrics {
+            synchronized(lock) {
+                closed = true
+                queue.clear()
+            }
+            return getMetrics()
+        }
+
+        fun getMetrics() = synchronized(lock) {
+            WebSocketSessionMetrics(
+                "${session.session.remoteAddress}",
+                queue.size,
+                sent,
+                dropped,
+                lastLag,
+                maxLag
+            )
+        }
     }
 
 }
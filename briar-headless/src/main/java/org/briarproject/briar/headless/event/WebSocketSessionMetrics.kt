@@ -0,0 +1,28 @@
+package org.briarproject.briar.headless.event
+
+import javax.annotation.concurrent.Immutable
+
+/**
+ * A snapshot of the outgoing event queue of a websocket session.
+ */
+@Immutable
+data class WebSocketSessionMetrics(
+    val remoteAddress: String,
+    /**
+     * The number of events waiting to be written.
+     */
+    val queued: Int,
+    val sent: Long,
+    /**
+     * The number of events discarded because the queue was full.
+     */
+    val dropped: Long,
+    /**
+     * How long the most recently written event waited in the queue.
+     */
+    val lastLagMs: Long,
+    /**
+     * The longest time any event has waited in the queue.
+     */
+    val maxLagMs: Long
+)
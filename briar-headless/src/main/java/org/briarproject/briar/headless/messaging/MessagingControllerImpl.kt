@@ -10,7 +10,9 @@ import org.briarproject.bramble.api.contact.Contact
 import org.briarproject.bramble.api.contact.ContactId
 import org.briarproject.bramble.api.contact.ContactManager
 import org.briarproject.bramble.api.db.DatabaseExecutor
+import org.briarproject.bramble.api.db.DbException
 import org.briarproject.bramble.api.db.NoSuchContactException
+import org.briarproject.bramble.api.db.TransactionManager
 import org.briarproject.bramble.api.event.Event
 import org.briarproject.bramble.api.event.EventListener
 import org.briarproject.bramble.api.sync.MessageId
@@ -21,6 +23,7 @@ import org.briarproject.bramble.util.StringUtils.utf8IsTooLong
 import org.briarproject.briar.api.blog.BlogInvitationRequest
 import org.briarproject.briar.api.blog.BlogInvitationResponse
 import org.briarproject.briar.api.conversation.ConversationManager
+import org.briarproject.briar.api.conversation.ConversationMessageHeader
 import org.briarproject.briar.api.conversation.ConversationMessageVisitor
 import org.briarproject.briar.api.conversation.event.ConversationMessageReceivedEvent
 import org.briarproject.briar.api.forum.ForumInvitationRequest
@@ -33,11 +36,14 @@ import org.briarproject.briar.api.messaging.PrivateMessageFactory
 import org.briarproject.briar.api.messaging.PrivateMessageHeader
 import org.briarproject.briar.api.privategroup.invitation.GroupInvitationRequest
 import org.briarproject.briar.api.privategroup.invitation.GroupInvitationResponse
+import org.briarproject.briar.headless.event.ResourceVersions
 import org.briarproject.briar.headless.event.WebSocketController
 import org.briarproject.briar.headless.event.output
 import org.briarproject.briar.headless.getContactIdFromPathParam
 import org.briarproject.briar.headless.getFromJson
+import org.briarproject.briar.headless.isNotModified
 import org.briarproject.briar.headless.json.JsonDict
+import org.briarproject.briar.headless.jsonArray
 import java.util.concurrent.Executor
 import javax.annotation.concurrent.Immutable
 import javax.inject.Inject
@@ -47,6 +53,8 @@ internal const val EVENT_CONVERSATION_MESSAGE = "ConversationMessageReceivedEven
 internal const val EVENT_MESSAGES_ACKED = "MessagesAckedEvent"
 internal const val EVENT_MESSAGES_SENT = "MessagesSentEvent"
 
+private typealias MessagesAndTexts = Pair<List<ConversationMessageHeader>, Map<MessageId, String>>
+
 @Immutable
 @Singleton
 internal class MessagingControllerImpl
@@ -56,19 +64,33 @@ constructor(
     private val conversationManager: ConversationManager,
     private val privateMessageFactory: PrivateMessageFactory,
     private val contactManager: ContactManager,
+    private val db: TransactionManager,
     private val webSocketController: WebSocketController,
+    private val resourceVersions: ResourceVersions,
     @DatabaseExecutor private val dbExecutor: Executor,
     private val objectMapper: ObjectMapper,
     private val clock: Clock
 ) : MessagingController, EventListener {
 
     override fun list(ctx: Context): Context {
-        val contact = getContact(ctx)
-        val jsonVisitor = JsonVisitor(contact.id, messagingManager)
-        val messages = conversationManager.getMessageHeaders(contact.id)
-            .sortedBy { it.timestamp }
-            .map { header -> header.accept(jsonVisitor) }
-        return ctx.json(messages)
+        val contactId = ctx.getContactIdFromPathParam()
+        // Get the entity tag before loading the messages, so a change that
+        // races with this request can only make the tag older than the data
+        if (ctx.isNotModified(resourceVersions.getConversationETag(contactId))) return ctx
+        val (headers, texts) = try {
+            db.transactionWithResult<MessagesAndTexts, DbException>(true) { txn ->
+                val contact = contactManager.getContact(txn, contactId)
+                val headers = conversationManager.getMessageHeaders(txn, contact.id)
+                    .sortedBy { it.timestamp }
+                // Load the texts of all the private messages at once
+                val ids = headers.filterIsInstance<PrivateMessageHeader>().map { it.id }
+                Pair(headers, messagingManager.getMessageTexts(txn, ids))
+            }
+        } catch (e: NoSuchContactException) {
+            throw NotFoundResponse()
+        }
+        val jsonVisitor = JsonVisitor(contactId, texts)
+        return ctx.jsonArray(objectMapper, headers.asSequence().map { it.accept(jsonVisitor) })
     }
 
     override fun write(ctx: Context): Context {
@@ -83,6 +105,7 @@ constructor(
         val m = privateMessageFactory.createLegacyPrivateMessage(group.id, now, text)
 
         messagingManager.addLocalMessage(m)
+        resourceVersions.conversationChanged(contact.id)
         return ctx.json(m.output(contact.id, text))
     }
 
@@ -93,6 +116,7 @@ constructor(
         val messageIdString = ctx.getFromJson(objectMapper, "messageId")
         val messageId = deserializeMessageId(messageIdString)
         conversationManager.setReadFlag(groupId, messageId, true)
+        resourceVersions.conversationChanged(contact.id)
         return ctx.json(messageIdString)
     }
 
@@ -110,6 +134,7 @@ constructor(
         val contactId = ctx.getContactIdFromPathParam()
         try {
             val result = conversationManager.deleteAllMessages(contactId)
+            resourceVersions.conversationChanged(contactId)
             return ctx.json(result.output())
         } catch (e: NoSuchContactException) {
             throw NotFoundResponse()
@@ -127,12 +152,13 @@ constructor(
                     webSocketController.sendEvent(EVENT_CONVERSATION_MESSAGE, e.output())
                 }
             }
-            is MessagesSentEvent -> {
-                webSocketController.sendEvent(EVENT_MESSAGES_SENT, e.output())
-            }
-            is MessagesAckedEvent -> {
-                webSocketController.sendEvent(EVENT_MESSAGES_ACKED, e.output())
-            }
+            // Sync produces these in bursts, so merge them for each contact
+            is MessagesSentEvent -> webSocketController.sendCoalescedEvent(
+                EVENT_MESSAGES_SENT, e.contactId, e.output(), ::mergeMessageIds
+            )
+            is MessagesAckedEvent -> webSocketController.sendCoalescedEvent(
+                EVENT_MESSAGES_ACKED, e.contactId, e.output(), ::mergeMessageIds
+            )
         }
     }
 
@@ -148,11 +174,11 @@ constructor(
 
 private class JsonVisitor(
     private val contactId: ContactId,
-    private val messagingManager: MessagingManager
+    private val texts: Map<MessageId, String>
 ) : ConversationMessageVisitor<JsonDict> {
 
     override fun visitPrivateMessageHeader(h: PrivateMessageHeader) =
-        h.output(contactId, messagingManager.getMessageText(h.id))
+        h.output(contactId, texts[h.id])
 
     override fun visitBlogInvitationRequest(r: BlogInvitationRequest) = r.output(contactId)
 
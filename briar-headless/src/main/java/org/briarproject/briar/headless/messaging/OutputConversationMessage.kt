@@ -67,3 +67,12 @@ internal fun MessagesSentEvent.output() = JsonDict(
 )
 
 internal fun Collection<MessageId>.toJson() = map { it.bytes }
+
+/**
+ * Merges two outputs of [MessagesSentEvent]s or [MessagesAckedEvent]s for the
+ * same contact.
+ */
+internal fun mergeMessageIds(a: JsonDict, b: JsonDict) = JsonDict(
+    "contactId" to a["contactId"],
+    "messageIds" to (a["messageIds"] as List<*>) + (b["messageIds"] as List<*>)
+)
@@ -0,0 +1,16 @@
+package org.briarproject.briar.headless.sync
+
+import dagger.Module
+import dagger.Provides
+import javax.inject.Singleton
+
+@Module
+class HeadlessSyncModule {
+
+    @Provides
+    @Singleton
+    internal fun provideSyncController(syncController: SyncControllerImpl): SyncController {
+        return syncController
+    }
+
+}
@@ -0,0 +1,59 @@
+package org.briarproject.briar.headless.sync
+
+import org.briarproject.bramble.api.sync.RecordTypes.ACK
+import org.briarproject.bramble.api.sync.RecordTypes.ESTIMATOR
+import org.briarproject.bramble.api.sync.RecordTypes.FILTER
+import org.briarproject.bramble.api.sync.RecordTypes.MESSAGE
+import org.briarproject.bramble.api.sync.RecordTypes.OFFER
+import org.briarproject.bramble.api.sync.RecordTypes.PRIORITY
+import org.briarproject.bramble.api.sync.RecordTypes.REQUEST
+import org.briarproject.bramble.api.sync.RecordTypes.SKETCH
+import org.briarproject.bramble.api.sync.RecordTypes.VERSIONS
+import org.briarproject.bramble.api.sync.metrics.Histogram
+import org.briarproject.bramble.api.sync.metrics.RecordMetrics
+import org.briarproject.bramble.api.sync.metrics.SyncMetrics
+import org.briarproject.briar.headless.json.JsonDict
+
+internal fun SyncMetrics.output() = JsonDict(
+    "contactId" to contactId.int,
+    "transportId" to transportId.string,
+    "sent" to sent.output(),
+    "received" to received.output(),
+    "batchDbTime" to batchDbTime.output(),
+    "batchIoTime" to batchIoTime.output(),
+    "writerQueueDepth" to writerQueueDepth.output(),
+    "timeToFirstRecord" to timeToFirstRecord.output()
+)
+
+internal fun Collection<SyncMetrics>.output() = map { it.output() }
+
+internal fun Map<Byte, RecordMetrics>.output() = JsonDict().apply {
+    for ((type, metrics) in this@output) {
+        put(type.recordTypeName(), JsonDict(
+            "records" to metrics.records,
+            "bytes" to metrics.bytes
+        ))
+    }
+}
+
+internal fun Histogram.output() = JsonDict(
+    "count" to count,
+    "sum" to sum,
+    "max" to max,
+    "mean" to mean,
+    "upperBounds" to upperBounds.toList(),
+    "bucketCounts" to bucketCounts.toList()
+)
+
+private fun Byte.recordTypeName() = when (this) {
+    ACK -> "ack"
+    MESSAGE -> "message"
+    OFFER -> "offer"
+    REQUEST -> "request"
+    VERSIONS -> "versions"
+    PRIORITY -> "priority"
+    FILTER -> "filter"
+    ESTIMATOR -> "estimator"
+    SKETCH -> "sketch"
+    else -> toString()
+}
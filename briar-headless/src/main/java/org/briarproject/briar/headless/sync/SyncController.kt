@@ -0,0 +1,9 @@
+package org.briarproject.briar.headless.sync
+
+import io.javalin.http.Context
+
+interface SyncController {
+
+    fun listMetrics(ctx: Context): Context
+
+}
@@ -0,0 +1,19 @@
+package org.briarproject.briar.headless.sync
+
+import io.javalin.http.Context
+import org.briarproject.bramble.api.sync.metrics.SyncMetricsManager
+import javax.annotation.concurrent.Immutable
+import javax.inject.Inject
+import javax.inject.Singleton
+
+@Immutable
+@Singleton
+internal class SyncControllerImpl
+@Inject
+constructor(private val syncMetricsManager: SyncMetricsManager) : SyncController {
+
+    override fun listMetrics(ctx: Context): Context {
+        return ctx.json(syncMetricsManager.syncMetrics.output())
+    }
+
+}
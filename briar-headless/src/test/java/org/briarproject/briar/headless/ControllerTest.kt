@@ -3,10 +3,18 @@ package org.briarproject.briar.headless
 import com.fasterxml.jackson.databind.ObjectMapper
 import io.javalin.http.Context
 import io.javalin.http.util.ContextUtil
+import io.mockk.CapturingSlot
+import io.mockk.confirmVerified
+import io.mockk.every
 import io.mockk.mockk
+import io.mockk.mockkStatic
+import io.mockk.slot
+import io.mockk.verify
 import org.briarproject.bramble.api.connection.ConnectionRegistry
 import org.briarproject.bramble.api.contact.Contact
 import org.briarproject.bramble.api.contact.ContactManager
+import org.briarproject.bramble.api.db.DbCallable
+import org.briarproject.bramble.api.db.DbException
 import org.briarproject.bramble.api.db.TransactionManager
 import org.briarproject.bramble.api.identity.Author
 import org.briarproject.bramble.api.identity.IdentityManager
@@ -54,9 +62,33 @@ abstract class ControllerTest {
     protected val text: String = getRandomString(5)
     protected val timestamp = 42L
     protected val unreadCount = 42
+    protected val eTag = "\"1-2\""
 
     protected fun assertJsonEquals(json: String, obj: Any) {
         assertEquals(json, outputCtx.json(obj).resultString(), STRICT)
     }
 
+    protected fun expectETag(notModified: Boolean) {
+        mockkStatic("org.briarproject.briar.headless.RouterKt")
+        every { ctx.isNotModified(eTag) } returns notModified
+    }
+
+    /**
+     * Verifies that the transaction manager was only used for a single
+     * read-only transaction.
+     */
+    protected fun verifySingleTransaction() {
+        verify(exactly = 1) {
+            db.transactionWithResult(true, any<DbCallable<Any, DbException>>())
+        }
+        confirmVerified(db)
+    }
+
+    protected fun expectJsonArray(): CapturingSlot<Sequence<Any>> {
+        mockkStatic("org.briarproject.briar.headless.RouterKt")
+        val items = slot<Sequence<Any>>()
+        every { ctx.jsonArray(objectMapper, capture(items)) } returns ctx
+        return items
+    }
+
 }
@@ -25,8 +25,10 @@ import org.briarproject.briar.api.test.TestAvatarCreator
 import org.briarproject.briar.headless.blogs.HeadlessBlogModule
 import org.briarproject.briar.headless.contact.HeadlessContactModule
 import org.briarproject.briar.headless.event.HeadlessEventModule
+import org.briarproject.briar.headless.event.WebSocketConfig
 import org.briarproject.briar.headless.forums.HeadlessForumModule
 import org.briarproject.briar.headless.messaging.HeadlessMessagingModule
+import org.briarproject.briar.headless.sync.HeadlessSyncModule
 import java.io.File
 import java.util.Collections.emptyList
 import javax.inject.Singleton
@@ -45,7 +47,8 @@ import javax.inject.Singleton
         HeadlessContactModule::class,
         HeadlessEventModule::class,
         HeadlessForumModule::class,
-        HeadlessMessagingModule::class
+        HeadlessMessagingModule::class,
+        HeadlessSyncModule::class
     ]
 )
 internal class HeadlessTestModule(private val appDir: File) {
@@ -92,6 +95,9 @@ internal class HeadlessTestModule(private val appDir: File) {
     @Singleton
     internal fun provideObjectMapper() = ObjectMapper()
 
+    @Provides
+    internal fun provideWebSocketConfig() = WebSocketConfig()
+
     @Provides
     internal fun provideTestAvatarCreator() = TestAvatarCreator { null }
 }
@@ -2,6 +2,7 @@ package org.briarproject.briar.headless
 
 import io.javalin.Javalin
 import io.javalin.core.util.Header.AUTHORIZATION
+import io.javalin.core.util.Header.IF_NONE_MATCH
 import okhttp3.MediaType.Companion.toMediaType
 import okhttp3.OkHttpClient
 import okhttp3.Request
@@ -67,6 +68,15 @@ abstract class IntegrationTest {
         return get(url, "wrongToken")
     }
 
+    protected fun getIfNoneMatch(url: String, eTag: String): Response {
+        val request: Request = Request.Builder()
+            .url(url)
+            .header(AUTHORIZATION, "Bearer $token")
+            .header(IF_NONE_MATCH, eTag)
+            .build()
+        return client.newCall(request).execute()
+    }
+
     protected fun post(url: String, data: String, authToken: String = token): Response {
         val json = "application/json; charset=utf-8".toMediaType()
         val body = data.toRequestBody(json)
@@ -0,0 +1,28 @@
+package org.briarproject.briar.headless.blogs
+
+import okhttp3.Response
+import org.briarproject.briar.headless.IntegrationTest
+import org.briarproject.briar.headless.url
+import org.json.JSONArray
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+
+class BlogControllerIntegrationTest : IntegrationTest() {
+
+    private val posts = 10
+
+    private val Response.jsonArray: JSONArray get() = JSONArray(body?.use { it.string() })
+
+    @Test
+    fun `listing blog posts returns all posts`() {
+        for (i in 1..posts) {
+            val response = post("$url/blogs/posts", """{"text": "post $i"}""")
+            assertEquals(200, response.code)
+        }
+
+        val response = get("$url/blogs/posts")
+        assertEquals(200, response.code)
+        assertEquals(posts, response.jsonArray.length())
+    }
+
+}
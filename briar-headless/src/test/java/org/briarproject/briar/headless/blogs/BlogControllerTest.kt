@@ -23,6 +23,8 @@ import org.briarproject.briar.api.blog.MessageType.POST
 import org.briarproject.briar.api.identity.AuthorInfo
 import org.briarproject.briar.api.identity.AuthorInfo.Status.OURSELVES
 import org.briarproject.briar.headless.ControllerTest
+import org.briarproject.briar.headless.event.ResourceVersions
+import org.junit.jupiter.api.Assertions.assertEquals
 import org.junit.jupiter.api.Assertions.assertThrows
 import org.junit.jupiter.api.Test
 
@@ -30,9 +32,17 @@ internal class BlogControllerTest : ControllerTest() {
 
     private val blogManager = mockk<BlogManager>()
     private val blogPostFactory = mockk<BlogPostFactory>()
-
-    private val controller =
-        BlogControllerImpl(blogManager, blogPostFactory, db, identityManager, objectMapper, clock)
+    private val resourceVersions = mockk<ResourceVersions>()
+
+    private val controller = BlogControllerImpl(
+        blogManager,
+        blogPostFactory,
+        db,
+        identityManager,
+        resourceVersions,
+        objectMapper,
+        clock
+    )
 
     private val blog = Blog(group, author, false)
     private val parentId: MessageId? = null
@@ -77,6 +87,7 @@ internal class BlogControllerTest : ControllerTest() {
         every {
             blogManager.getPostHeader(txn, post.message.groupId, post.message.id)
         } returns header
+        every { resourceVersions.blogPostsChanged() } just Runs
         every { ctx.json(header.output(text)) } returns ctx
 
         controller.createPost(ctx)
@@ -105,21 +116,39 @@ internal class BlogControllerTest : ControllerTest() {
 
     @Test
     fun testList() {
-        every { blogManager.blogs } returns listOf(blog)
-        every { blogManager.getPostHeaders(group.id) } returns listOf(header)
-        every { blogManager.getPostText(message.id) } returns text
-        every { ctx.json(listOf(header.output(text))) } returns ctx
+        val txn = expectTransaction()
+        every { blogManager.getBlogs(txn) } returns listOf(blog)
+        every { blogManager.getPostHeaders(txn, group.id) } returns listOf(header)
+        every {
+            blogManager.getPostTexts(txn, listOf(message.id))
+        } returns mapOf(message.id to text)
+        val items = expectJsonArray()
 
         controller.listPosts(ctx)
+
+        assertEquals(listOf(header.output(text)), items.captured.toList())
+        verifySingleTransaction()
     }
 
     @Test
     fun testEmptyList() {
-        every { blogManager.blogs } returns listOf(blog)
-        every { blogManager.getPostHeaders(group.id) } returns emptyList()
-        every { ctx.json(emptyList<Any>()) } returns ctx
+        val txn = expectTransaction()
+        every { blogManager.getBlogs(txn) } returns listOf(blog)
+        every { blogManager.getPostHeaders(txn, group.id) } returns emptyList()
+        every { blogManager.getPostTexts(txn, emptyList()) } returns emptyMap()
+        val items = expectJsonArray()
 
         controller.listPosts(ctx)
+
+        assertEquals(emptyList<Any>(), items.captured.toList())
+    }
+
+    @Test
+    fun testListNotModified() {
+        every { resourceVersions.getBlogPostsETag() } returns eTag
+        expectETag(true)
+
+        assertEquals(ctx, controller.listPosts(ctx))
     }
 
     @Test
@@ -141,4 +170,15 @@ internal class BlogControllerTest : ControllerTest() {
         assertJsonEquals(json, header.output(text))
     }
 
+    private fun expectTransaction(): Transaction {
+        every { resourceVersions.getBlogPostsETag() } returns eTag
+        expectETag(false)
+        val dbSlot = slot<DbCallable<Any, DbException>>()
+        val txn = Transaction(Object(), true)
+        every { db.transactionWithResult(true, capture(dbSlot)) } answers {
+            dbSlot.captured.call(txn)
+        }
+        return txn
+    }
+
 }
@@ -0,0 +1,89 @@
+package org.briarproject.briar.headless.event
+
+import io.mockk.every
+import io.mockk.mockk
+import org.briarproject.bramble.api.contact.event.ContactAddedEvent
+import org.briarproject.bramble.api.contact.event.ContactAliasChangedEvent
+import org.briarproject.bramble.api.sync.MessageId
+import org.briarproject.bramble.api.sync.event.GroupRemovedEvent
+import org.briarproject.bramble.api.system.Clock
+import org.briarproject.bramble.test.TestUtils.getClientId
+import org.briarproject.bramble.test.TestUtils.getContactId
+import org.briarproject.bramble.test.TestUtils.getGroup
+import org.briarproject.bramble.test.TestUtils.getRandomId
+import org.briarproject.bramble.util.StringUtils.getRandomString
+import org.briarproject.briar.api.autodelete.event.ConversationMessagesDeletedEvent
+import org.briarproject.briar.api.blog.BlogManager
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertNotEquals
+import org.junit.jupiter.api.Test
+
+internal class ResourceVersionsImplTest {
+
+    private val clock = mockk<Clock>()
+    private val contactId = getContactId()
+    private val contactId1 = getContactId()
+
+    private val versions: ResourceVersionsImpl
+
+    init {
+        every { clock.currentTimeMillis() } returns 42L
+        versions = ResourceVersionsImpl(clock)
+    }
+
+    @Test
+    fun testETagsIncludeStartupTime() {
+        assertEquals("\"42-0\"", versions.getConversationETag(contactId))
+        assertEquals("\"42-0\"", versions.getBlogPostsETag())
+    }
+
+    @Test
+    fun testConversationMessagesDeletedEventChangesConversationETag() {
+        val eTag = versions.getConversationETag(contactId)
+        val eTag1 = versions.getConversationETag(contactId1)
+        val blogETag = versions.getBlogPostsETag()
+
+        versions.eventOccurred(
+            ConversationMessagesDeletedEvent(contactId, listOf(MessageId(getRandomId())))
+        )
+
+        assertNotEquals(eTag, versions.getConversationETag(contactId))
+        // Other resources are not affected
+        assertEquals(eTag1, versions.getConversationETag(contactId1))
+        assertEquals(blogETag, versions.getBlogPostsETag())
+    }
+
+    @Test
+    fun testContactAddedEventChangesBlogPostsETag() {
+        val blogETag = versions.getBlogPostsETag()
+        val eTag = versions.getConversationETag(contactId)
+
+        versions.eventOccurred(ContactAddedEvent(contactId, true))
+
+        assertNotEquals(blogETag, versions.getBlogPostsETag())
+        assertEquals(eTag, versions.getConversationETag(contactId))
+    }
+
+    @Test
+    fun testContactAliasChangedEventChangesBlogPostsETag() {
+        val blogETag = versions.getBlogPostsETag()
+        val eTag = versions.getConversationETag(contactId)
+
+        versions.eventOccurred(ContactAliasChangedEvent(contactId, getRandomString(5)))
+
+        assertNotEquals(blogETag, versions.getBlogPostsETag())
+        assertEquals(eTag, versions.getConversationETag(contactId))
+    }
+
+    @Test
+    fun testOnlyRemovingBlogGroupChangesBlogPostsETag() {
+        val blogETag = versions.getBlogPostsETag()
+
+        versions.eventOccurred(GroupRemovedEvent(getGroup(getClientId(), 123)))
+        assertEquals(blogETag, versions.getBlogPostsETag())
+
+        versions.eventOccurred(GroupRemovedEvent(getGroup(BlogManager.CLIENT_ID, 123)))
+        assertNotEquals(blogETag, versions.getBlogPostsETag())
+    }
+
+}
@@ -4,8 +4,13 @@ import io.javalin.plugin.json.JavalinJson.toJson
 import io.javalin.websocket.WsContext
 import io.mockk.CapturingSlot
 import io.mockk.every
+import io.mockk.just
 import io.mockk.mockk
+import io.mockk.runs
+import io.mockk.slot
 import io.mockk.verify
+import org.briarproject.bramble.api.Cancellable
+import org.briarproject.bramble.api.system.TaskScheduler
 import org.briarproject.bramble.test.ImmediateExecutor
 import org.briarproject.bramble.test.TestUtils.getRandomId
 import org.briarproject.briar.api.autodelete.AutoDeleteConstants.NO_AUTO_DELETE_TIMER
@@ -17,20 +22,31 @@ import org.briarproject.briar.api.introduction.event.IntroductionRequestReceived
 import org.briarproject.briar.api.messaging.PrivateMessageHeader
 import org.briarproject.briar.api.messaging.event.PrivateMessageReceivedEvent
 import org.briarproject.briar.headless.ControllerTest
+import org.briarproject.briar.headless.event.OverflowPolicy.DISCONNECT
+import org.briarproject.briar.headless.event.OverflowPolicy.DROP_OLDEST
+import org.briarproject.briar.headless.json.JsonDict
 import org.briarproject.briar.headless.messaging.EVENT_CONVERSATION_MESSAGE
 import org.briarproject.briar.headless.messaging.output
+import org.eclipse.jetty.websocket.api.Session
 import org.eclipse.jetty.websocket.api.WebSocketException
-import org.eclipse.jetty.websocket.common.io.FutureWriteCallback
+import org.json.JSONObject
 import org.junit.jupiter.api.Assertions.assertEquals
 import org.junit.jupiter.api.Test
 import java.io.IOException
+import java.util.ArrayDeque
+import java.util.concurrent.CompletableFuture.completedFuture
+import java.util.concurrent.Executor
+import java.util.concurrent.TimeUnit.MILLISECONDS
 
 internal class WebSocketControllerTest : ControllerTest() {
 
     private val session1 = mockk<WsContext>()
     private val session2 = mockk<WsContext>()
+    private val jettySession = mockk<Session>()
+    private val scheduler = mockk<TaskScheduler>()
 
-    private val controller = WebSocketControllerImpl(ImmediateExecutor())
+    private val controller =
+        WebSocketControllerImpl(ImmediateExecutor(), scheduler, clock, WebSocketConfig())
 
     private val header =
         PrivateMessageHeader(
@@ -47,14 +63,24 @@ internal class WebSocketControllerTest : ControllerTest() {
         )
     private val event = PrivateMessageReceivedEvent(header, contact.id)
     private val outputEvent = OutputEvent(EVENT_CONVERSATION_MESSAGE, event.output(text))
+    private val completed = completedFuture<Void>(null)
+
+    init {
+        every { clock.currentTimeMillis() } returns timestamp
+        // WsContext.session is a field, so it can't be stubbed
+        WsContext::class.java.getDeclaredField("session").apply {
+            isAccessible = true
+            set(session1, jettySession)
+        }
+    }
 
     @Test
     fun testSendEvent() {
         val slot = CapturingSlot<String>()
 
-        every { session1.send(capture(slot)) } returns FutureWriteCallback()
+        every { session1.send(capture(slot)) } returns completed
 
-        controller.sessions.add(session1)
+        controller.addSession(session1)
         controller.sendEvent(EVENT_CONVERSATION_MESSAGE, event.output(text))
 
         assertJsonEquals(slot.captured, outputEvent)
@@ -74,10 +100,10 @@ internal class WebSocketControllerTest : ControllerTest() {
         val slot = CapturingSlot<String>()
 
         every { session1.send(capture(slot)) } throws throwable
-        every { session2.send(capture(slot)) } returns FutureWriteCallback()
+        every { session2.send(capture(slot)) } returns completed
 
-        controller.sessions.add(session1)
-        controller.sessions.add(session2)
+        controller.addSession(session1)
+        controller.addSession(session2)
         controller.sendEvent(EVENT_CONVERSATION_MESSAGE, event.output(text))
 
         verify { session2.send(slot.captured) }
@@ -106,14 +132,74 @@ internal class WebSocketControllerTest : ControllerTest() {
             OutputEvent(EVENT_CONVERSATION_MESSAGE, introductionRequestEvent.output())
         val slot = CapturingSlot<String>()
 
-        every { session1.send(capture(slot)) } returns FutureWriteCallback()
+        every { session1.send(capture(slot)) } returns completed
 
-        controller.sessions.add(session1)
+        controller.addSession(session1)
         controller.sendEvent(EVENT_CONVERSATION_MESSAGE, introductionRequestEvent.output())
         assertJsonEquals(slot.captured, introductionOutputEvent)
         assertEquals("IntroductionRequest", introductionRequestEvent.output()["type"])
     }
 
+    @Test
+    fun testDropOldestEventWhenQueueIsFull() {
+        val executor = QueuedExecutor()
+        val controller = WebSocketControllerImpl(
+            executor, scheduler, clock, WebSocketConfig(2, DROP_OLDEST)
+        )
+        val sent = ArrayList<String>()
+
+        every { session1.send(capture(sent)) } returns completed
+        every { jettySession.remoteAddress } returns null
+
+        controller.addSession(session1)
+        for (i in 1..3) controller.sendEvent("event$i", JsonDict())
+        executor.runAll()
+
+        assertEquals(listOf("event2", "event3"), sent.map { JSONObject(it).getString("name") })
+        val metrics = controller.getSessionMetrics().single()
+        assertEquals(0, metrics.queued)
+        assertEquals(2, metrics.sent)
+        assertEquals(1, metrics.dropped)
+    }
+
+    @Test
+    fun testDisconnectWhenQueueIsFull() {
+        val executor = QueuedExecutor()
+        val controller = WebSocketControllerImpl(
+            executor, scheduler, clock, WebSocketConfig(2, DISCONNECT)
+        )
+        every { jettySession.close(1008, any()) } just runs
+
+        controller.addSession(session1)
+        for (i in 1..3) controller.sendEvent("event$i", JsonDict())
+        executor.runAll()
+
+        verify(exactly = 0) { session1.send(any()) }
+        verify { jettySession.close(1008, any()) }
+    }
+
+    @Test
+    fun testCoalescedEvents() {
+        val task = slot<Runnable>()
+        val sent = slot<String>()
+
+        every {
+            scheduler.schedule(capture(task), any(), COALESCING_WINDOW_MS, MILLISECONDS)
+        } returns mockk<Cancellable>()
+        every { session1.send(capture(sent)) } returns completed
+
+        controller.addSession(session1)
+        controller.sendCoalescedEvent("event", contact.id, JsonDict("n" to 1), ::sum)
+        controller.sendCoalescedEvent("event", contact.id, JsonDict("n" to 2), ::sum)
+        task.captured.run()
+
+        verify(exactly = 1) { scheduler.schedule(any(), any(), any(), any()) }
+        verify(exactly = 1) { session1.send(any()) }
+        assertEquals(3, JSONObject(sent.captured).getJSONObject("data").getInt("n"))
+    }
+
+    private fun sum(a: JsonDict, b: JsonDict) = JsonDict("n" to a["n"] as Int + b["n"] as Int)
+
     @Test
     fun testOutputConversationMessageReceivedEvent() {
         val json = """
@@ -126,4 +212,20 @@ internal class WebSocketControllerTest : ControllerTest() {
         assertJsonEquals(json, outputEvent)
     }
 
+    /**
+     * An executor that holds tasks until they are run by the test.
+     */
+    private class QueuedExecutor : Executor {
+
+        private val tasks = ArrayDeque<Runnable>()
+
+        override fun execute(command: Runnable) {
+            tasks.add(command)
+        }
+
+        fun runAll() {
+            while (tasks.isNotEmpty()) tasks.poll().run()
+        }
+    }
+
 }
@@ -11,9 +11,13 @@ import io.mockk.just
 import io.mockk.mockk
 import io.mockk.mockkStatic
 import io.mockk.runs
+import io.mockk.slot
 import org.bouncycastle.util.encoders.Base64
 import org.briarproject.bramble.api.contact.ContactId
+import org.briarproject.bramble.api.db.DbCallable
+import org.briarproject.bramble.api.db.DbException
 import org.briarproject.bramble.api.db.NoSuchContactException
+import org.briarproject.bramble.api.db.Transaction
 import org.briarproject.bramble.api.sync.MessageId
 import org.briarproject.bramble.api.sync.event.MessagesAckedEvent
 import org.briarproject.bramble.api.sync.event.MessagesSentEvent
@@ -34,6 +38,7 @@ import org.briarproject.briar.api.messaging.PrivateMessageFactory
 import org.briarproject.briar.api.messaging.PrivateMessageHeader
 import org.briarproject.briar.api.messaging.event.PrivateMessageReceivedEvent
 import org.briarproject.briar.headless.ControllerTest
+import org.briarproject.briar.headless.event.ResourceVersions
 import org.briarproject.briar.headless.event.output
 import org.briarproject.briar.headless.getFromJson
 import org.briarproject.briar.headless.json.JsonDict
@@ -46,6 +51,7 @@ internal class MessagingControllerImplTest : ControllerTest() {
 
     private val messagingManager = mockk<MessagingManager>()
     private val privateMessageFactory = mockk<PrivateMessageFactory>()
+    private val resourceVersions = mockk<ResourceVersions>()
     private val dbExecutor = ImmediateExecutor()
 
     private val controller = MessagingControllerImpl(
@@ -53,7 +59,9 @@ internal class MessagingControllerImplTest : ControllerTest() {
         conversationManager,
         privateMessageFactory,
         contactManager,
+        db,
         webSocketController,
+        resourceVersions,
         dbExecutor,
         objectMapper,
         clock
@@ -74,15 +82,21 @@ internal class MessagingControllerImplTest : ControllerTest() {
         )
     private val sessionId = SessionId(getRandomId())
     private val privateMessage = PrivateMessage(message)
+    private val txn = Transaction(Object(), true)
 
     @Test
     fun list() {
-        expectGetContact()
-        every { conversationManager.getMessageHeaders(contact.id) } returns listOf(header)
-        every { messagingManager.getMessageText(message.id) } returns text
-        every { ctx.json(listOf(header.output(contact.id, text))) } returns ctx
+        expectGetContactInTransaction()
+        every { conversationManager.getMessageHeaders(txn, contact.id) } returns listOf(header)
+        every {
+            messagingManager.getMessageTexts(txn, listOf(message.id))
+        } returns mapOf(message.id to text)
+        val items = expectJsonArray()
 
         controller.list(ctx)
+
+        assertEquals(listOf(header.output(contact.id, text)), items.captured.toList())
+        verifySingleTransaction()
     }
 
     @Test
@@ -92,21 +106,35 @@ internal class MessagingControllerImplTest : ControllerTest() {
             false, AuthorInfo(UNVERIFIED), NO_AUTO_DELETE_TIMER
         )
 
-        expectGetContact()
-        every { conversationManager.getMessageHeaders(contact.id) } returns listOf(request)
-        every { ctx.json(listOf(request.output(contact.id))) } returns ctx
+        expectGetContactInTransaction()
+        every { conversationManager.getMessageHeaders(txn, contact.id) } returns listOf(request)
+        every { messagingManager.getMessageTexts(txn, emptyList()) } returns emptyMap()
+        val items = expectJsonArray()
 
         controller.list(ctx)
+
+        assertEquals(listOf(request.output(contact.id)), items.captured.toList())
     }
 
     @Test
     fun testEmptyList() {
-        every { ctx.pathParam("contactId") } returns contact.id.int.toString()
-        every { contactManager.getContact(contact.id) } returns contact
-        every { conversationManager.getMessageHeaders(contact.id) } returns emptyList()
-        every { ctx.json(emptyList<Any>()) } returns ctx
+        expectGetContactInTransaction()
+        every { conversationManager.getMessageHeaders(txn, contact.id) } returns emptyList()
+        every { messagingManager.getMessageTexts(txn, emptyList()) } returns emptyMap()
+        val items = expectJsonArray()
 
         controller.list(ctx)
+
+        assertEquals(emptyList<Any>(), items.captured.toList())
+    }
+
+    @Test
+    fun listNotModified() {
+        every { ctx.pathParam("contactId") } returns contact.id.int.toString()
+        every { resourceVersions.getConversationETag(contact.id) } returns eTag
+        expectETag(true)
+
+        assertEquals(ctx, controller.list(ctx))
     }
 
     @Test
@@ -122,9 +150,11 @@ internal class MessagingControllerImplTest : ControllerTest() {
         val event = MessagesAckedEvent(contact.id, messageIds)
 
         every {
-            webSocketController.sendEvent(
+            webSocketController.sendCoalescedEvent(
                 EVENT_MESSAGES_ACKED,
-                event.output()
+                contact.id,
+                event.output(),
+                any()
             )
         } just runs
 
@@ -139,9 +169,11 @@ internal class MessagingControllerImplTest : ControllerTest() {
         val event = MessagesSentEvent(contact.id, messageIds, 1234)
 
         every {
-            webSocketController.sendEvent(
+            webSocketController.sendCoalescedEvent(
                 EVENT_MESSAGES_SENT,
-                event.output()
+                contact.id,
+                event.output(),
+                any()
             )
         } just runs
 
@@ -150,7 +182,13 @@ internal class MessagingControllerImplTest : ControllerTest() {
 
     @Test
     fun listNonexistentContactId() {
-        testNonexistentContactId { controller.list(ctx) }
+        expectTransaction()
+        every { ctx.pathParam("contactId") } returns "42"
+        every { resourceVersions.getConversationETag(ContactId(42)) } returns eTag
+        expectETag(false)
+        every { contactManager.getContact(txn, ContactId(42)) } throws NoSuchContactException()
+
+        assertThrows(NotFoundResponse::class.java) { controller.list(ctx) }
     }
 
     @Test
@@ -169,6 +207,7 @@ internal class MessagingControllerImplTest : ControllerTest() {
             )
         } returns privateMessage
         every { messagingManager.addLocalMessage(privateMessage) } just runs
+        every { resourceVersions.conversationChanged(contact.id) } just runs
         every { ctx.json(capture(slot)) } returns ctx
 
         controller.write(ctx)
@@ -221,6 +260,7 @@ internal class MessagingControllerImplTest : ControllerTest() {
         every { ctx.getFromJson(objectMapper, "messageId") } returns messageIdString
         every { Base64.decode(messageIdString) } returns message.id.bytes
         every { conversationManager.setReadFlag(group.id, message.id, true) } just Runs
+        every { resourceVersions.conversationChanged(contact.id) } just runs
         every { ctx.json(messageIdString) } returns ctx
 
         controller.markMessageRead(ctx)
@@ -288,6 +328,25 @@ internal class MessagingControllerImplTest : ControllerTest() {
         assertJsonEquals(json, event.output())
     }
 
+    @Test
+    fun testMergeMessageIds() {
+        val messageId1 = MessageId(getRandomId())
+        val messageId2 = MessageId(getRandomId())
+        val event1 = MessagesSentEvent(contact.id, listOf(messageId1), 1234)
+        val event2 = MessagesSentEvent(contact.id, listOf(messageId2), 1234)
+
+        val json = """
+            {
+                "contactId": ${contact.id.int},
+                "messageIds": [
+                    ${toJson(messageId1.bytes)},
+                    ${toJson(messageId2.bytes)}
+                ]
+            }
+        """
+        assertJsonEquals(json, mergeMessageIds(event1.output(), event2.output()))
+    }
+
     @Test
     fun testOutputPrivateMessageHeader() {
         val json = """
@@ -358,6 +417,7 @@ internal class MessagingControllerImplTest : ControllerTest() {
         val result = DeletionResult()
         every { ctx.pathParam("contactId") } returns "1"
         every { conversationManager.deleteAllMessages(ContactId(1)) } returns result
+        every { resourceVersions.conversationChanged(ContactId(1)) } just runs
         every { ctx.json(result.output()) } returns ctx
         controller.deleteAllMessages(ctx)
     }
@@ -403,6 +463,21 @@ internal class MessagingControllerImplTest : ControllerTest() {
         every { contactManager.getContact(contact.id) } returns contact
     }
 
+    private fun expectGetContactInTransaction() {
+        expectTransaction()
+        every { ctx.pathParam("contactId") } returns contact.id.int.toString()
+        every { resourceVersions.getConversationETag(contact.id) } returns eTag
+        expectETag(false)
+        every { contactManager.getContact(txn, contact.id) } returns contact
+    }
+
+    private fun expectTransaction() {
+        val dbSlot = slot<DbCallable<Any, DbException>>()
+        every { db.transactionWithResult(true, capture(dbSlot)) } answers {
+            dbSlot.captured.call(txn)
+        }
+    }
+
     private fun testNonexistentContactId(function: () -> Context) {
         every { ctx.pathParam("contactId") } returns "42"
         every { contactManager.getContact(ContactId(42)) } throws NoSuchContactException()
@@ -0,0 +1,57 @@
+package org.briarproject.briar.headless.messaging
+
+import io.javalin.core.util.Header.ETAG
+import okhttp3.Response
+import org.briarproject.briar.headless.IntegrationTest
+import org.briarproject.briar.headless.url
+import org.json.JSONArray
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertNotEquals
+import org.junit.jupiter.api.Test
+
+class MessagingControllerIntegrationTest : IntegrationTest() {
+
+    private val messages = 10
+
+    private val Response.jsonArray: JSONArray get() = JSONArray(body?.use { it.string() })
+
+    @Test
+    fun `listing messages returns all messages`() {
+        val contactId = testDataCreator.addContact("contact", true, false).id.int
+        for (i in 1..messages) {
+            val response = post("$url/messages/$contactId", """{"text": "message $i"}""")
+            assertEquals(200, response.code)
+        }
+
+        val response = get("$url/messages/$contactId")
+        assertEquals(200, response.code)
+        assertEquals(messages, response.jsonArray.length())
+    }
+
+    @Test
+    fun `unchanged conversation is not sent again`() {
+        val contactId = testDataCreator.addContact("contact1", true, false).id.int
+        var response = get("$url/messages/$contactId")
+        assertEquals(200, response.code)
+        val eTag = response.header(ETAG)!!
+
+        response = getIfNoneMatch("$url/messages/$contactId", eTag)
+        assertEquals(304, response.code)
+        assertEquals(eTag, response.header(ETAG))
+
+        // writing a message changes the entity tag
+        response = post("$url/messages/$contactId", """{"text": "message"}""")
+        assertEquals(200, response.code)
+        response = getIfNoneMatch("$url/messages/$contactId", eTag)
+        assertEquals(200, response.code)
+        assertEquals(1, response.jsonArray.length())
+        assertNotEquals(eTag, response.header(ETAG))
+    }
+
+    @Test
+    fun `listing messages of non-existing contact`() {
+        val response = get("$url/messages/42")
+        assertEquals(404, response.code)
+    }
+
+}
@@ -0,0 +1,81 @@
+package org.briarproject.briar.headless.sync
+
+import io.mockk.every
+import io.mockk.mockk
+import org.briarproject.bramble.api.plugin.TransportId
+import org.briarproject.bramble.api.sync.RecordTypes.ACK
+import org.briarproject.bramble.api.sync.RecordTypes.MESSAGE
+import org.briarproject.bramble.api.sync.metrics.Histogram
+import org.briarproject.bramble.api.sync.metrics.RecordMetrics
+import org.briarproject.bramble.api.sync.metrics.SyncMetrics
+import org.briarproject.bramble.api.sync.metrics.SyncMetricsManager
+import org.briarproject.bramble.util.StringUtils.getRandomString
+import org.briarproject.briar.headless.ControllerTest
+import org.junit.jupiter.api.Test
+
+internal class SyncControllerTest : ControllerTest() {
+
+    private val syncMetricsManager = mockk<SyncMetricsManager>()
+
+    private val controller = SyncControllerImpl(syncMetricsManager)
+
+    private val transportId = TransportId(getRandomString(5))
+    private val histogram = Histogram(2, 5, 4, longArrayOf(1, 2, 4), longArrayOf(1, 0, 1, 0))
+    private val emptyHistogram = Histogram(0, 0, 0, longArrayOf(1), longArrayOf(0, 0))
+    private val metrics = SyncMetrics(
+        contact.id, transportId,
+        mapOf(MESSAGE to RecordMetrics(3, 1234)),
+        mapOf(ACK to RecordMetrics(1, 37)),
+        histogram, histogram, emptyHistogram, emptyHistogram
+    )
+
+    @Test
+    fun listMetrics() {
+        every { syncMetricsManager.syncMetrics } returns listOf(metrics)
+        every { ctx.json(listOf(metrics.output())) } returns ctx
+
+        controller.listMetrics(ctx)
+    }
+
+    @Test
+    fun listEmptyMetrics() {
+        every { syncMetricsManager.syncMetrics } returns emptyList()
+        every { ctx.json(emptyList<Any>()) } returns ctx
+
+        controller.listMetrics(ctx)
+    }
+
+    @Test
+    fun outputSyncMetrics() {
+        val json = """
+            {
+                "contactId": ${contact.id.int},
+                "transportId": "${transportId.string}",
+                "sent": {
+                    "message": { "records": 3, "bytes": 1234 }
+                },
+                "received": {
+                    "ack": { "records": 1, "bytes": 37 }
+                },
+                "batchDbTime": {
+                    "count": 2, "sum": 5, "max": 4, "mean": 2.5,
+                    "upperBounds": [1, 2, 4], "bucketCounts": [1, 0, 1, 0]
+                },
+                "batchIoTime": {
+                    "count": 2, "sum": 5, "max": 4, "mean": 2.5,
+                    "upperBounds": [1, 2, 4], "bucketCounts": [1, 0, 1, 0]
+                },
+                "writerQueueDepth": {
+                    "count": 0, "sum": 0, "max": 0, "mean": 0.0,
+                    "upperBounds": [1], "bucketCounts": [0, 0]
+                },
+                "timeToFirstRecord": {
+                    "count": 0, "sum": 0, "max": 0, "mean": 0.0,
+                    "upperBounds": [1], "bucketCounts": [0, 0]
+                }
+            }
+        """
+        assertJsonEquals(json, metrics.output())
+    }
+
+}